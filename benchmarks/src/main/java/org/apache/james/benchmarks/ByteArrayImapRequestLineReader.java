@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.apache.james.imap.api.display.HumanReadableText;
+import org.apache.james.imap.decode.ImapRequestLineReader;
+import org.apache.james.protocols.imap.DecodingException;
+import org.apache.james.protocols.imap.utils.EolInputStream;
+import org.apache.james.protocols.imap.utils.FixedLengthInputStream;
+
+/**
+ * {@link ImapRequestLineReader} reading an in memory request, so that the
+ * decoding benchmarks do not measure any IO
+ */
+public class ByteArrayImapRequestLineReader extends ImapRequestLineReader {
+
+    private final byte[] request;
+    private int position;
+
+    public ByteArrayImapRequestLineReader(byte[] request) {
+        this.request = request;
+    }
+
+    @Override
+    public char nextChar() throws DecodingException {
+        if (!nextSeen) {
+            if (position >= request.length) {
+                throw new DecodingException(HumanReadableText.ILLEGAL_ARGUMENTS, "Unexpected end of stream.");
+            }
+            nextSeen = true;
+            nextChar = (char) request[position++];
+        }
+        return nextChar;
+    }
+
+    @Override
+    public InputStream read(int size, boolean extraCRLF) throws DecodingException {
+        nextSeen = false;
+        nextChar = 0;
+        ByteArrayInputStream remaining = new ByteArrayInputStream(request, position, request.length - position);
+        position = Math.min(request.length, position + size);
+        FixedLengthInputStream in = new FixedLengthInputStream(remaining, size);
+        if (extraCRLF) {
+            return new EolInputStream(this, in);
+        } else {
+            return in;
+        }
+    }
+
+    @Override
+    protected void commandContinuationRequest() throws DecodingException {
+        // Literals are already available in memory
+    }
+}
@@ -0,0 +1,157 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.james.protocols.netty.AbstractAsyncServer;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.handler.codec.frame.DelimiterBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.Delimiters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Line round trip latency of an {@link AbstractAsyncServer} holding an
+ * increasing number of open connections, with heap and with direct channel
+ * buffers. Each invocation sends a line on the next connection and waits for
+ * it to be echoed, so that all the connections stay registered but mostly
+ * idle, as IMAP IDLE clients are.
+ * 
+ * Opening 10000 connections needs a file descriptor limit of at least 20000
+ * for the benchmark process.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectionScalingBenchmark {
+
+    private static final byte[] LINE = "A001 NOOP\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    private static class EchoServer extends AbstractAsyncServer {
+
+        @Override
+        protected ChannelPipelineFactory createPipelineFactory(ChannelGroup group) {
+            return () -> {
+                ChannelPipeline pipeline = Channels.pipeline();
+                pipeline.addLast("framer", new DelimiterBasedFrameDecoder(MAX_LINE_LENGTH, false, Delimiters.lineDelimiter()));
+                pipeline.addLast("echo", new SimpleChannelUpstreamHandler() {
+                    @Override
+                    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+                        ChannelBuffer line = (ChannelBuffer) e.getMessage();
+                        ctx.getChannel().write(line);
+                    }
+                });
+                return pipeline;
+            };
+        }
+    }
+
+    @Param({"100", "1000", "10000"})
+    public int connections;
+
+    @Param({"heap", "direct"})
+    public String bufferFactory;
+
+    private EchoServer server;
+    private List<SocketChannel> clients;
+    private AtomicInteger nextClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new EchoServer();
+        server.setListenAddresses(new InetSocketAddress("127.0.0.1", 0));
+        server.setUseDirectBuffers(bufferFactory.equals("direct"));
+        server.bind();
+        InetSocketAddress address = server.getListenAddresses().get(0);
+
+        clients = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            SocketChannel client = SocketChannel.open(address);
+            client.socket().setTcpNoDelay(true);
+            clients.add(client);
+        }
+        nextClient = new AtomicInteger();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (SocketChannel client : clients) {
+            client.close();
+        }
+        server.unbind();
+    }
+
+    @Benchmark
+    public int roundTrip() throws IOException {
+        return echo();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public int concurrentRoundTrip() throws IOException {
+        return echo();
+    }
+
+    private int echo() throws IOException {
+        SocketChannel client = clients.get(Math.floorMod(nextClient.getAndIncrement(), connections));
+        synchronized (client) {
+            client.write(ByteBuffer.wrap(LINE));
+            ByteBuffer response = ByteBuffer.allocate(LINE.length);
+            while (response.hasRemaining()) {
+                if (client.read(response) < 0) {
+                    throw new IOException("Connection closed by the server");
+                }
+            }
+            return response.get(0);
+        }
+    }
+}
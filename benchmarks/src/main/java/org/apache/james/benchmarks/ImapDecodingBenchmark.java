@@ -0,0 +1,100 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Flags;
+
+import org.apache.james.imap.api.message.IdRange;
+import org.apache.james.imap.api.message.request.SearchKey;
+import org.apache.james.imap.decode.parser.SearchCommandParser;
+import org.apache.james.protocols.imap.DecodingException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding of IMAP requests arguments by the {@link org.apache.james.imap.decode.ImapRequestLineReader}
+ * and the {@link SearchCommandParser}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImapDecodingBenchmark {
+
+    private static final byte[] SEARCH = bytes("UNSEEN FROM \"bob@example.com\" SINCE 1-Feb-2016 NOT DELETED "
+        + "OR SUBJECT \"report\" BODY \"invoice\" UID 1:1000,2000:*\r\n");
+    private static final byte[] SEQUENCE_SET = bytes("1:100,150,200:300,400,500:*\r\n");
+    private static final byte[] FLAG_LIST = bytes("(\\Seen \\Answered \\Flagged $Forwarded)\r\n");
+    private static final byte[] LOGIN = bytes("a001 LOGIN \"bob@example.com\" {8}\r\nsecret!!\r\n");
+
+    private SearchCommandParser searchCommandParser;
+
+    private static byte[] bytes(String request) {
+        try {
+            return request.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        searchCommandParser = new SearchCommandParser();
+    }
+
+    @Benchmark
+    public SearchKey decodeSearch() throws Exception {
+        return searchCommandParser.decode(null, new ByteArrayImapRequestLineReader(SEARCH));
+    }
+
+    @Benchmark
+    public IdRange[] decodeSequenceSet() throws DecodingException {
+        return new ByteArrayImapRequestLineReader(SEQUENCE_SET).parseIdRange();
+    }
+
+    @Benchmark
+    public Flags decodeFlagList() throws DecodingException {
+        return new ByteArrayImapRequestLineReader(FLAG_LIST).flagList();
+    }
+
+    @Benchmark
+    public String decodeLogin() throws DecodingException {
+        ByteArrayImapRequestLineReader reader = new ByteArrayImapRequestLineReader(LOGIN);
+        reader.tag();
+        reader.atom();
+        reader.astring();
+        String password = reader.astring();
+        reader.eol();
+        return password;
+    }
+}
@@ -0,0 +1,129 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Flags;
+
+import org.apache.james.imap.encode.ImapResponseComposer;
+import org.apache.james.imap.encode.ImapResponseWriter;
+import org.apache.james.imap.encode.base.ImapResponseComposerImpl;
+import org.apache.james.imap.message.response.Literal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of IMAP responses by the {@link ImapResponseComposerImpl}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImapEncodingBenchmark {
+
+    private static final int FETCHED_MESSAGES = 100;
+
+    private CountingImapResponseWriter writer;
+    private ImapResponseComposer composer;
+    private Flags flags;
+
+    @Setup
+    public void setUp() {
+        writer = new CountingImapResponseWriter();
+        composer = new ImapResponseComposerImpl(writer);
+        flags = new Flags();
+        flags.add(Flags.Flag.SEEN);
+        flags.add(Flags.Flag.ANSWERED);
+        flags.add("$Forwarded");
+    }
+
+    @Benchmark
+    public long encodeFetchFlags() throws IOException {
+        for (int msn = 1; msn <= FETCHED_MESSAGES; msn++) {
+            composer.untagged()
+                .message(msn)
+                .message("FETCH")
+                .openParen()
+                .message("FLAGS")
+                .flags(flags)
+                .message("UID")
+                .message(1000 + msn)
+                .message("MODSEQ")
+                .openParen()
+                .message(123456789L + msn)
+                .closeParen()
+                .closeParen()
+                .end();
+        }
+        composer.tag("a001").message("OK").message("FETCH completed").end();
+        composer.flush();
+        return writer.getWrittenBytes();
+    }
+
+    @Benchmark
+    public long encodeList() throws IOException {
+        composer.untagged()
+            .message("LIST")
+            .openParen()
+            .message("\\HasNoChildren")
+            .closeParen()
+            .quote(".")
+            .mailbox("INBOX.Archives.2016.Reports")
+            .end();
+        composer.flush();
+        return writer.getWrittenBytes();
+    }
+
+    /**
+     * Counts the written bytes, so that nothing gets optimized away, without
+     * retaining them
+     */
+    private static class CountingImapResponseWriter implements ImapResponseWriter {
+
+        private long writtenBytes;
+
+        public void write(Literal literal) throws IOException {
+            writtenBytes += literal.size();
+        }
+
+        public void write(byte[] buffer) throws IOException {
+            writtenBytes += buffer.length;
+        }
+
+        public void flush() throws IOException {
+        }
+
+        public long getWrittenBytes() {
+            return writtenBytes;
+        }
+    }
+}
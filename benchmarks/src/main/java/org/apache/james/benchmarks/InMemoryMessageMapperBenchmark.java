@@ -0,0 +1,187 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Flags;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.inmemory.InMemoryId;
+import org.apache.james.mailbox.inmemory.InMemoryMailboxSessionMapperFactory;
+import org.apache.james.mailbox.inmemory.InMemoryMessageId;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxConstants;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.SearchQuery;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
+import org.apache.james.mailbox.store.search.SimpleMessageSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Append, fetch and search on the {@link org.apache.james.mailbox.inmemory.mail.InMemoryMessageMapper}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryMessageMapperBenchmark {
+
+    private static final int MESSAGE_COUNT = 1000;
+    private static final int APPEND_BATCH_SIZE = 10000;
+    private static final long UID_VALIDITY = 42;
+
+    private static final String CONTENT = "Return-Path: <bob@example.com>\r\n"
+        + "Message-ID: <1234567890.0.1451606400000@example.com>\r\n"
+        + "Date: Fri, 1 Jan 2016 00:00:00 +0000\r\n"
+        + "From: Bob <bob@example.com>\r\n"
+        + "To: Alice <alice@example.org>\r\n"
+        + "Subject: Quarterly report %d\r\n"
+        + "\r\n"
+        + "Please find the figures of the quarter attached.\r\n";
+
+    private static class MailboxFixture {
+
+        private final InMemoryMessageId.Factory messageIdFactory = new InMemoryMessageId.Factory();
+        private final MailboxSession session;
+        private final InMemoryMailboxSessionMapperFactory mapperFactory;
+        private final MessageMapper messageMapper;
+        private final Mailbox mailbox;
+        private int appended;
+
+        public MailboxFixture() throws Exception {
+            session = new MockMailboxSession("user");
+            mapperFactory = new InMemoryMailboxSessionMapperFactory();
+            SimpleMailbox inbox = new SimpleMailbox(new MailboxPath(MailboxConstants.USER_NAMESPACE, "user", "INBOX"), UID_VALIDITY);
+            inbox.setMailboxId(InMemoryId.of(1));
+            mapperFactory.createMailboxMapper(session).save(inbox);
+            mailbox = inbox;
+            messageMapper = mapperFactory.createMessageMapper(session);
+        }
+
+        public MessageMetaData append() throws Exception {
+            String content = String.format(CONTENT, appended++);
+            PropertyBuilder propertyBuilder = new PropertyBuilder();
+            propertyBuilder.setTextualLineCount(1L);
+            MailboxMessage message = new SimpleMailboxMessage(messageIdFactory.generate(), new Date(), content.length(),
+                content.indexOf("\r\n\r\n") + 4, new SharedByteArrayInputStream(content.getBytes("US-ASCII")),
+                new Flags(), propertyBuilder, mailbox.getMailboxId());
+            return messageMapper.add(mailbox, message);
+        }
+    }
+
+    /**
+     * A fresh mailbox for each iteration, so that appends do not grow it
+     * without bounds
+     */
+    @State(Scope.Thread)
+    public static class EmptyMailboxState {
+
+        private MailboxFixture fixture;
+
+        @Setup(Level.Iteration)
+        public void setUp() throws Exception {
+            fixture = new MailboxFixture();
+        }
+    }
+
+    /**
+     * A mailbox holding {@link #MESSAGE_COUNT} messages, shared by the read
+     * only benchmarks
+     */
+    @State(Scope.Thread)
+    public static class FilledMailboxState {
+
+        private MailboxFixture fixture;
+        private SimpleMessageSearchIndex searchIndex;
+        private SearchQuery searchQuery;
+
+        @Setup
+        public void setUp() throws Exception {
+            fixture = new MailboxFixture();
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                fixture.append();
+            }
+            searchIndex = new SimpleMessageSearchIndex(fixture.mapperFactory, fixture.mapperFactory);
+            searchQuery = new SearchQuery();
+            searchQuery.andCriteria(SearchQuery.headerContains("Subject", "report 42"));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5, batchSize = APPEND_BATCH_SIZE)
+    @Measurement(iterations = 10, batchSize = APPEND_BATCH_SIZE)
+    public MessageMetaData append(EmptyMailboxState state) throws Exception {
+        return state.fixture.append();
+    }
+
+    @Benchmark
+    public int fetchMetadata(FilledMailboxState state) throws Exception {
+        Iterator<MailboxMessage> messages = state.fixture.messageMapper.findInMailbox(state.fixture.mailbox,
+            MessageRange.range(MessageUid.of(1), MessageUid.of(100)), FetchType.Metadata, -1);
+        int count = 0;
+        while (messages.hasNext()) {
+            messages.next();
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public MailboxMessage fetchFull(FilledMailboxState state) throws Exception {
+        return state.fixture.messageMapper.findInMailbox(state.fixture.mailbox,
+            MessageRange.one(MessageUid.of(MESSAGE_COUNT / 2)), FetchType.Full, 1).next();
+    }
+
+    @Benchmark
+    public int searchSubject(FilledMailboxState state) throws Exception {
+        Iterator<MessageUid> uids = state.searchIndex.search(state.fixture.session, state.fixture.mailbox, state.searchQuery);
+        int count = 0;
+        while (uids.hasNext()) {
+            uids.next();
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.internet.AddressException;
+
+import org.apache.mailet.MailAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of {@link MailAddress}, done for every envelope recipient
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MailAddressBenchmark {
+
+    private String simpleAddress;
+    private String quotedAddress;
+    private String domainLiteralAddress;
+
+    @Setup
+    public void setUp() {
+        simpleAddress = "alice.smith@mail.example.org";
+        quotedAddress = "\"alice smith\"@mail.example.org";
+        domainLiteralAddress = "alice@[192.0.2.1]";
+    }
+
+    @Benchmark
+    public MailAddress parseSimpleAddress() throws AddressException {
+        return new MailAddress(simpleAddress);
+    }
+
+    @Benchmark
+    public MailAddress parseQuotedAddress() throws AddressException {
+        return new MailAddress(quotedAddress);
+    }
+
+    @Benchmark
+    public MailAddress parseDomainLiteralAddress() throws AddressException {
+        return new MailAddress(domainLiteralAddress);
+    }
+}
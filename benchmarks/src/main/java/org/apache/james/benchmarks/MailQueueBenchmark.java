@@ -0,0 +1,125 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.james.core.MailImpl;
+import org.apache.james.lifecycle.api.LifecycleUtil;
+import org.apache.james.queue.api.MailQueue.MailQueueItem;
+import org.apache.james.queue.api.ManageableMailQueue;
+import org.apache.james.queue.api.RawMailQueueItemDecoratorFactory;
+import org.apache.james.queue.file.FileMailQueue;
+import org.apache.james.queue.file.SegmentedLogMailQueue;
+import org.apache.mailet.MailAddress;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * Enqueue then dequeue throughput of the {@link FileMailQueue} and of the
+ * {@link SegmentedLogMailQueue}, with and without fsync. The concurrent
+ * variant shows the effect of grouping the fsyncs of concurrent enqueuers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MailQueueBenchmark {
+
+    private static final String QUEUE_NAME = "spool";
+    private static final int MESSAGE_SIZE = 10 * 1024;
+
+    @Param({"file", "segmentedLog"})
+    public String engine;
+
+    @Param({"true", "false"})
+    public boolean sync;
+
+    private File directory;
+    private ManageableMailQueue queue;
+    private MimeMessage message;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("mailqueue-benchmark").toFile();
+        if (engine.equals("file")) {
+            queue = new FileMailQueue(new RawMailQueueItemDecoratorFactory(), directory, QUEUE_NAME, sync, NOPLogger.NOP_LOGGER);
+        } else {
+            queue = new SegmentedLogMailQueue(new RawMailQueueItemDecoratorFactory(), directory, QUEUE_NAME, sync, NOPLogger.NOP_LOGGER);
+        }
+
+        message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setSubject("Benchmark");
+        char[] body = new char[MESSAGE_SIZE];
+        Arrays.fill(body, 'a');
+        message.setText(new String(body));
+        message.saveChanges();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        LifecycleUtil.dispose(queue);
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public void enqueueDequeue() throws Exception {
+        roundTrip();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void concurrentEnqueueDequeue() throws Exception {
+        roundTrip();
+    }
+
+    private void roundTrip() throws Exception {
+        MailImpl mail = new MailImpl(MailImpl.getId(), new MailAddress("sender@example.com"),
+            Arrays.asList(new MailAddress("recipient@example.org")), message);
+        queue.enQueue(mail);
+        MailQueueItem item = queue.deQueue();
+        item.getMail().getMessage().getSize();
+        item.done(true);
+    }
+}
@@ -0,0 +1,170 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.commons.configuration.DefaultConfigurationBuilder;
+import org.apache.james.core.MailImpl;
+import org.apache.james.mailetcontainer.api.mock.MockMailetContext;
+import org.apache.james.mailetcontainer.api.mock.MockMailetLoader;
+import org.apache.james.mailetcontainer.api.mock.MockMatcherLoader;
+import org.apache.james.mailetcontainer.impl.camel.CamelCompositeProcessor;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.apache.mailet.base.GenericMailet;
+import org.apache.mailet.base.GenericMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * Mails per second going through a root processor of ten matcher/mailet
+ * pairs, one of them splitting the mail, then through the transport
+ * processor, with the Camel and the compiled engines. Run it through the
+ * {@link BenchmarkRunner} to also get the allocation rate of each engine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MailetPipelineBenchmark {
+
+    private static final int PAIRS = 10;
+
+    @Param({"camel", "compiled"})
+    public String engine;
+
+    private CamelCompositeProcessor processor;
+    private MimeMessage message;
+    private List<MailAddress> recipients;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        StringBuilder xml = new StringBuilder("<processors engine=\"").append(engine).append("\">");
+        xml.append("<processor state=\"root\">");
+        for (int i = 0; i < PAIRS - 1; i++) {
+            xml.append("<mailet match=\"").append(AllRecipients.class.getName())
+                .append("\" class=\"").append(SetAttribute.class.getName()).append("\"/>");
+        }
+        xml.append("<mailet match=\"").append(FirstRecipient.class.getName())
+            .append("\" class=\"").append(ToProcessor.class.getName()).append("\"><processor>transport</processor></mailet>");
+        xml.append("<mailet match=\"").append(AllRecipients.class.getName())
+            .append("\" class=\"").append(ToProcessor.class.getName()).append("\"><processor>transport</processor></mailet>");
+        xml.append("</processor>");
+        xml.append("<processor state=\"transport\">");
+        xml.append("<mailet match=\"").append(AllRecipients.class.getName())
+            .append("\" class=\"").append(ToProcessor.class.getName()).append("\"><processor>ghost</processor></mailet>");
+        xml.append("</processor>");
+        xml.append("<processor state=\"error\"/>");
+        xml.append("</processors>");
+
+        DefaultConfigurationBuilder config = new DefaultConfigurationBuilder();
+        config.load(new ByteArrayInputStream(xml.toString().getBytes()));
+
+        processor = new CamelCompositeProcessor(new NoopMetricFactory());
+        processor.setLog(NOPLogger.NOP_LOGGER);
+        processor.setCamelContext(new DefaultCamelContext());
+        processor.setMailetLoader(new MockMailetLoader());
+        processor.setMatcherLoader(new MockMatcherLoader());
+        processor.setMailetContext(new MockMailetContext());
+        processor.configure(config);
+        processor.init();
+
+        message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setSubject("Benchmark");
+        message.setText("Benchmark");
+        message.saveChanges();
+        recipients = Arrays.asList(new MailAddress("a@example.org"), new MailAddress("b@example.org"),
+            new MailAddress("c@example.org"), new MailAddress("d@example.org"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        processor.dispose();
+        processor.destroy();
+    }
+
+    @Benchmark
+    public void service() throws Exception {
+        MailImpl mail = new MailImpl(MailImpl.getId(), new MailAddress("sender@example.com"), recipients, message);
+        processor.service(mail);
+    }
+
+    public static class AllRecipients extends GenericMatcher {
+        @Override
+        public Collection<MailAddress> match(Mail mail) {
+            return mail.getRecipients();
+        }
+    }
+
+    public static class FirstRecipient extends GenericMatcher {
+        @Override
+        public Collection<MailAddress> match(Mail mail) {
+            return Collections.singletonList(mail.getRecipients().iterator().next());
+        }
+    }
+
+    public static class SetAttribute extends GenericMailet {
+        @Override
+        public void service(Mail mail) {
+            mail.setAttribute("benchmark", Boolean.TRUE);
+        }
+    }
+
+    public static class ToProcessor extends GenericMailet {
+        private String state;
+
+        @Override
+        public void init() throws MessagingException {
+            state = getInitParameter("processor");
+        }
+
+        @Override
+        public void service(Mail mail) {
+            mail.setState(state);
+        }
+    }
+}
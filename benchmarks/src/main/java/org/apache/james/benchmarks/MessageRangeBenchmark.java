@@ -0,0 +1,77 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.model.MessageRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link MessageRange} computations done when expunging, copying or fetching
+ * large sets of messages
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageRangeBenchmark {
+
+    private static final int UID_COUNT = 10000;
+
+    private List<MessageUid> uidsWithGaps;
+    private MessageRange largeRange;
+
+    @Setup
+    public void setUp() {
+        uidsWithGaps = new ArrayList<MessageUid>(UID_COUNT);
+        for (long uid = 1; uidsWithGaps.size() < UID_COUNT; uid++) {
+            // Every seventh message is missing, as after some expunges
+            if (uid % 7 != 0) {
+                uidsWithGaps.add(MessageUid.of(uid));
+            }
+        }
+        largeRange = MessageRange.range(MessageUid.of(1), MessageUid.of(100000));
+    }
+
+    @Benchmark
+    public List<MessageRange> toRanges() {
+        return MessageRange.toRanges(uidsWithGaps);
+    }
+
+    @Benchmark
+    public List<MessageRange> split() {
+        return largeRange.split(100);
+    }
+}
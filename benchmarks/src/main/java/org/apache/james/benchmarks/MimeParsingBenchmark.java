@@ -0,0 +1,109 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.store.MimeDescriptorImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Computation of the MIME structure of a message, as done for BODYSTRUCTURE
+ * fetches, by {@link MimeDescriptorImpl#build(java.io.InputStream)}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MimeParsingBenchmark {
+
+    private static final String CRLF = "\r\n";
+
+    private byte[] simpleMessage;
+    private byte[] multipartMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            body.append("This is line ").append(i).append(" of a plain text body which is long enough to be realistic.").append(CRLF);
+        }
+
+        simpleMessage = (headers("text/plain; charset=UTF-8") + CRLF + body).getBytes("US-ASCII");
+
+        String boundary = "----=_Part_0_1234567890";
+        StringBuilder multipart = new StringBuilder()
+            .append(headers("multipart/mixed; boundary=\"" + boundary + "\""))
+            .append(CRLF)
+            .append("--").append(boundary).append(CRLF)
+            .append("Content-Type: text/plain; charset=UTF-8").append(CRLF)
+            .append("Content-Transfer-Encoding: quoted-printable").append(CRLF)
+            .append(CRLF)
+            .append(body)
+            .append("--").append(boundary).append(CRLF)
+            .append("Content-Type: text/html; charset=UTF-8").append(CRLF)
+            .append(CRLF)
+            .append("<html><body><p>").append(body).append("</p></body></html>").append(CRLF)
+            .append("--").append(boundary).append(CRLF)
+            .append("Content-Type: application/pdf; name=\"report.pdf\"").append(CRLF)
+            .append("Content-Disposition: attachment; filename=\"report.pdf\"").append(CRLF)
+            .append("Content-Transfer-Encoding: base64").append(CRLF)
+            .append(CRLF);
+        for (int i = 0; i < 100; i++) {
+            multipart.append("JVBERi0xLjQKJcfsj6IKNSAwIG9iago8PC9MZW5ndGggNiAwIFIvRmlsdGVyIC9GbGF0ZURlY29k").append(CRLF);
+        }
+        multipart.append("--").append(boundary).append("--").append(CRLF);
+        multipartMessage = multipart.toString().getBytes("US-ASCII");
+    }
+
+    private String headers(String contentType) {
+        return "Return-Path: <bob@example.com>" + CRLF
+            + "Received: from mx.example.com (mx.example.com [192.0.2.1]) by james.example.org with SMTP" + CRLF
+            + "Message-ID: <1234567890.0.1451606400000@example.com>" + CRLF
+            + "Date: Fri, 1 Jan 2016 00:00:00 +0000" + CRLF
+            + "From: Bob <bob@example.com>" + CRLF
+            + "To: Alice <alice@example.org>" + CRLF
+            + "Subject: Quarterly report" + CRLF
+            + "MIME-Version: 1.0" + CRLF
+            + "Content-Type: " + contentType + CRLF;
+    }
+
+    @Benchmark
+    public MimeDescriptorImpl buildSimpleMessage() throws Exception {
+        return MimeDescriptorImpl.build(new ByteArrayInputStream(simpleMessage));
+    }
+
+    @Benchmark
+    public MimeDescriptorImpl buildMultipartMessage() throws Exception {
+        return MimeDescriptorImpl.build(new ByteArrayInputStream(multipartMessage));
+    }
+}
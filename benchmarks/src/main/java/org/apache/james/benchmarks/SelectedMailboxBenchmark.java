@@ -0,0 +1,110 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.imap.processor.base.UidMsnIndex;
+import org.apache.james.mailbox.MessageUid;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.base.Optional;
+
+/**
+ * Message sequence number operations of a selected mailbox, as done by
+ * {@link org.apache.james.imap.processor.base.SelectedMailboxImpl} through its
+ * {@link UidMsnIndex}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SelectedMailboxBenchmark {
+
+    @Param({"1000", "100000"})
+    public int messageCount;
+
+    private List<MessageUid> uids;
+    private List<MessageUid> expungedUids;
+    private UidMsnIndex index;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        uids = new ArrayList<MessageUid>(messageCount);
+        expungedUids = new ArrayList<MessageUid>();
+        for (int i = 1; i <= messageCount; i++) {
+            MessageUid uid = MessageUid.of(i * 2);
+            uids.add(uid);
+            if (i % 10 == 0) {
+                expungedUids.add(uid);
+            }
+        }
+        index = select();
+    }
+
+    private UidMsnIndex select() {
+        UidMsnIndex selected = new UidMsnIndex();
+        for (MessageUid uid : uids) {
+            selected.add(uid);
+        }
+        return selected;
+    }
+
+    @Benchmark
+    public int msn() {
+        return index.msn(uids.get(random.nextInt(messageCount)));
+    }
+
+    @Benchmark
+    public Optional<MessageUid> uid() {
+        return index.uid(random.nextInt(messageCount) + 1);
+    }
+
+    @Benchmark
+    public UidMsnIndex selectMailbox() {
+        return select();
+    }
+
+    /**
+     * Expunging mutates the index, hence it is selected again on each
+     * invocation: subtract {@link #selectMailbox()} to get the expunge cost
+     */
+    @Benchmark
+    public List<Integer> selectMailboxAndExpunge() {
+        return select().remove(expungedUids);
+    }
+}
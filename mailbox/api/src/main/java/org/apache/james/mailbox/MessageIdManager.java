@@ -20,6 +20,8 @@
 package org.apache.james.mailbox;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.mail.Flags;
 
@@ -39,4 +41,17 @@ public interface MessageIdManager {
     void delete(MessageId messageId, List<MailboxId> mailboxIds, MailboxSession mailboxSession) throws MailboxException;
 
     void setInMailboxes(MessageId messageId, List<MailboxId> mailboxIds, MailboxSession mailboxSession) throws MailboxException;
+
+    /**
+     * Add a message readable by <code>sourceSession</code> to each of the <code>targets</code> mailboxes, mapped to
+     * the session of their owner. The message is resolved once for all targets and implementations should share its
+     * content rather than storing it again.
+     *
+     * Rights and quotas are checked for each target separately: a target the message can not be added to does not
+     * prevent adding it to the others.
+     *
+     * @return the targets the message could not be added to
+     * @throws MailboxException when the message can not be read by <code>sourceSession</code>
+     */
+    Set<MailboxId> copyInMailboxes(MessageId messageId, MailboxSession sourceSession, Map<MailboxId, MailboxSession> targets) throws MailboxException;
 }
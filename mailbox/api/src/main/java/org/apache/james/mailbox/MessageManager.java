@@ -159,6 +159,25 @@ public interface MessageManager {
      */
     MessageResultIterator getMessages(MessageRange set, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException;
 
+    /**
+     * Gets the messages in the given range having a MODSEQ strictly greater
+     * than <code>modSeq</code>, as needed by the CONDSTORE CHANGEDSINCE fetch
+     * modifier. Implementations should select these messages at the storage
+     * level instead of loading the whole range. Messages may be returned in
+     * MODSEQ order rather than in uid order.
+     * 
+     * @param set
+     * @param modSeq
+     *            only messages with a greater MODSEQ are returned
+     * @param fetchGroup
+     *            data to fetch
+     * @param mailboxSession
+     *            not null
+     * @return MessageResult with the fields defined by FetchGroup
+     * @throws MailboxException
+     */
+    MessageResultIterator getMessagesChangedSince(MessageRange set, long modSeq, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException;
+
 
     /**
      * Gets the id of the referenced mailbox
@@ -2,19 +2,60 @@ package org.apache.james.mailbox.caching;
 
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxListenerSupport;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.caching.distributed.CacheInvalidationBroadcaster;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
+import org.apache.james.mailbox.store.event.EventFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
 /**
  * A MailboxListener that invalidates the configured caches in response to Events
  *
+ * When a {@link CacheInvalidationBroadcaster} is given, the invalidations are also
+ * propagated to the caches of the other nodes of the cluster.
+ *
+ * The id of the mailbox an event belongs to is taken from the event when it carries
+ * its mailbox, and otherwise resolved through the given {@link MailboxSessionMapperFactory}.
+ *
  */
 public class CacheInvalidatingMailboxListener implements MailboxListener {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidatingMailboxListener.class);
+
     private final MailboxByPathCache mailboxCacheByPath;
     private final MailboxMetadataCache mailboxMetadataCache;
+    private final Optional<MessageContentCache> messageContentCache;
+    private final Optional<CacheInvalidationBroadcaster> broadcaster;
+    private final Optional<MailboxSessionMapperFactory> mapperFactory;
 
     public CacheInvalidatingMailboxListener(MailboxByPathCache mailboxCacheByPath, MailboxMetadataCache mailboxMetadataCache) {
+        this(mailboxCacheByPath, mailboxMetadataCache, Optional.<MessageContentCache>absent(), Optional.<CacheInvalidationBroadcaster>absent());
+    }
+
+    public CacheInvalidatingMailboxListener(MailboxByPathCache mailboxCacheByPath, MailboxMetadataCache mailboxMetadataCache,
+                                            MessageContentCache messageContentCache) {
+        this(mailboxCacheByPath, mailboxMetadataCache, Optional.of(messageContentCache), Optional.<CacheInvalidationBroadcaster>absent());
+    }
+
+    public CacheInvalidatingMailboxListener(MailboxByPathCache mailboxCacheByPath, MailboxMetadataCache mailboxMetadataCache,
+                                            Optional<MessageContentCache> messageContentCache,
+                                            Optional<CacheInvalidationBroadcaster> broadcaster) {
+        this(mailboxCacheByPath, mailboxMetadataCache, messageContentCache, broadcaster, Optional.<MailboxSessionMapperFactory>absent());
+    }
+
+    public CacheInvalidatingMailboxListener(MailboxByPathCache mailboxCacheByPath, MailboxMetadataCache mailboxMetadataCache,
+                                            Optional<MessageContentCache> messageContentCache,
+                                            Optional<CacheInvalidationBroadcaster> broadcaster,
+                                            Optional<MailboxSessionMapperFactory> mapperFactory) {
         this.mailboxCacheByPath = mailboxCacheByPath;
         this.mailboxMetadataCache = mailboxMetadataCache;
+        this.messageContentCache = messageContentCache;
+        this.broadcaster = broadcaster;
+        this.mapperFactory = mapperFactory;
     }
 
     /**
@@ -43,25 +84,59 @@ public class CacheInvalidatingMailboxListener implements MailboxListener {
         // TODO this needs for sure to be smarter
         try {
             if (event instanceof MessageEvent) {
-                // invalidate the metadata caches
-                invalidateMetadata(event);
+                Optional<MailboxId> mailboxId = mailboxId(event);
+                if (mailboxId.isPresent()) {
+                    // invalidate the metadata caches
+                    invalidateMetadata(mailboxId.get());
+                    if (messageContentCache.isPresent()) {
+                        invalidateContent(mailboxId.get(), event);
+                    }
+                } else {
+                    LOGGER.warn("Unable to resolve the id of mailbox {}, its cached metadata is not invalidated", event.getMailboxPath());
+                }
             }
-            invalidateMailbox(event);
         } catch (MailboxException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            LOGGER.error("Error while invalidating the caches of mailbox " + event.getMailboxPath(), e);
+        } finally {
+            invalidateMailbox(event);
         }
 
     }
 
-    private void invalidateMetadata(Event event) throws MailboxException {
+    private Optional<MailboxId> mailboxId(Event event) throws MailboxException {
+        if (event instanceof EventFactory.MailboxAware) {
+            return Optional.of(((EventFactory.MailboxAware) event).getMailbox().getMailboxId());
+        }
+        if (mapperFactory.isPresent()) {
+            return Optional.of(mailboxCacheByPath.findMailboxByPath(event.getMailboxPath(),
+                mapperFactory.get().getMailboxMapper(event.getSession())).getMailboxId());
+        }
+        return Optional.absent();
+    }
+
+    private void invalidateMetadata(MailboxId mailboxId) {
         //HMM, race conditions welcome?
-        mailboxMetadataCache.invalidate(mailboxCacheByPath.findMailboxByPath(event.getMailboxPath(), null));
+        mailboxMetadataCache.invalidate(mailboxId);
+        if (broadcaster.isPresent()) {
+            broadcaster.get().invalidate(mailboxId);
+        }
 
     }
 
+    private void invalidateContent(MailboxId mailboxId, Event event) {
+        // Entries of deleted mailboxes are never requested again, and get evicted over time
+        if (event instanceof Expunged || event instanceof FlagsUpdated) {
+            for (MessageUid uid : ((MessageEvent) event).getUids()) {
+                messageContentCache.get().invalidate(mailboxId, uid);
+            }
+        }
+    }
+
     private void invalidateMailbox(Event event) {
         mailboxCacheByPath.invalidate(event.getMailboxPath());
+        if (broadcaster.isPresent()) {
+            broadcaster.get().invalidate(event.getMailboxPath());
+        }
     }
 
 }
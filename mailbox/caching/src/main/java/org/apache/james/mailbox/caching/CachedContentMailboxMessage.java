@@ -0,0 +1,181 @@
+package org.apache.james.mailbox.caching;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Date;
+import java.util.List;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MessageAttachment;
+import org.apache.james.mailbox.model.MessageId;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.Property;
+
+import com.google.common.base.Optional;
+
+/**
+ * A MailboxMessage fetched as metadata from the underlying MessageMapper, whose
+ * content is served from a {@link MessageContentCache}
+ * 
+ */
+public class CachedContentMailboxMessage implements MailboxMessage {
+
+    private final MailboxMessage metadata;
+    private final CachedMessageContent content;
+
+    public CachedContentMailboxMessage(MailboxMessage metadata, CachedMessageContent content) {
+        this.metadata = metadata;
+        this.content = content;
+    }
+
+    @Override
+    public InputStream getHeaderContent() throws IOException {
+        Optional<InputStream> headers = content.getHeaderContent();
+        if (headers.isPresent()) {
+            return headers.get();
+        }
+        return metadata.getHeaderContent();
+    }
+
+    @Override
+    public InputStream getBodyContent() throws IOException {
+        Optional<InputStream> body = content.getBodyContent();
+        if (body.isPresent()) {
+            return body.get();
+        }
+        return metadata.getBodyContent();
+    }
+
+    @Override
+    public InputStream getFullContent() throws IOException {
+        Optional<InputStream> headers = content.getHeaderContent();
+        Optional<InputStream> body = content.getBodyContent();
+        if (headers.isPresent() && body.isPresent()) {
+            return new SequenceInputStream(headers.get(), body.get());
+        }
+        return metadata.getFullContent();
+    }
+
+    @Override
+    public List<Property> getProperties() {
+        Optional<List<Property>> properties = content.getProperties();
+        if (properties.isPresent()) {
+            return properties.get();
+        }
+        return metadata.getProperties();
+    }
+
+    @Override
+    public MessageId getMessageId() {
+        return metadata.getMessageId();
+    }
+
+    @Override
+    public Date getInternalDate() {
+        return metadata.getInternalDate();
+    }
+
+    @Override
+    public String getMediaType() {
+        return metadata.getMediaType();
+    }
+
+    @Override
+    public String getSubType() {
+        return metadata.getSubType();
+    }
+
+    @Override
+    public long getBodyOctets() {
+        return metadata.getBodyOctets();
+    }
+
+    @Override
+    public long getFullContentOctets() {
+        return metadata.getFullContentOctets();
+    }
+
+    @Override
+    public Long getTextualLineCount() {
+        return metadata.getTextualLineCount();
+    }
+
+    @Override
+    public List<MessageAttachment> getAttachments() {
+        return metadata.getAttachments();
+    }
+
+    @Override
+    public MailboxId getMailboxId() {
+        return metadata.getMailboxId();
+    }
+
+    @Override
+    public MessageUid getUid() {
+        return metadata.getUid();
+    }
+
+    @Override
+    public void setUid(MessageUid uid) {
+        metadata.setUid(uid);
+    }
+
+    @Override
+    public void setModSeq(long modSeq) {
+        metadata.setModSeq(modSeq);
+    }
+
+    @Override
+    public long getModSeq() {
+        return metadata.getModSeq();
+    }
+
+    @Override
+    public boolean isAnswered() {
+        return metadata.isAnswered();
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return metadata.isDeleted();
+    }
+
+    @Override
+    public boolean isDraft() {
+        return metadata.isDraft();
+    }
+
+    @Override
+    public boolean isFlagged() {
+        return metadata.isFlagged();
+    }
+
+    @Override
+    public boolean isRecent() {
+        return metadata.isRecent();
+    }
+
+    @Override
+    public boolean isSeen() {
+        return metadata.isSeen();
+    }
+
+    @Override
+    public void setFlags(Flags flags) {
+        metadata.setFlags(flags);
+    }
+
+    @Override
+    public Flags createFlags() {
+        return metadata.createFlags();
+    }
+
+    @Override
+    public int compareTo(MailboxMessage other) {
+        return metadata.compareTo(other);
+    }
+}
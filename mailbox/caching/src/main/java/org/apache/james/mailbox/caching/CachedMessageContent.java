@@ -0,0 +1,22 @@
+package org.apache.james.mailbox.caching;
+
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.james.mailbox.store.mail.model.Property;
+
+import com.google.common.base.Optional;
+
+/**
+ * The part of a message content held by a {@link MessageContentCache}
+ * 
+ */
+public interface CachedMessageContent {
+
+    Optional<InputStream> getHeaderContent();
+
+    Optional<List<Property>> getProperties();
+
+    Optional<InputStream> getBodyContent();
+
+}
@@ -15,6 +15,8 @@ import org.apache.james.mailbox.store.mail.NoopAttachmentMapper;
 import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.user.SubscriptionMapper;
 
+import com.google.common.base.Optional;
+
 /**
  * A MailboxSessionMapperFactory that uses the underlying MailboxSessionMapperFactory to provide
  * caching variants of MessageMapper and MailboxMapper built around the MessageMapper and MailboxMapper
@@ -27,17 +29,29 @@ public class CachingMailboxSessionMapperFactory extends
 	private final MailboxSessionMapperFactory underlying;
 	private final MailboxByPathCache mailboxByPathCache;
 	private final MailboxMetadataCache mailboxMetadataCache;
+	private final Optional<MessageContentCache> messageContentCache;
 
 	public CachingMailboxSessionMapperFactory(MailboxSessionMapperFactory underlying, MailboxByPathCache mailboxByPathCache, MailboxMetadataCache mailboxMetadataCache) {
+		this(underlying, mailboxByPathCache, mailboxMetadataCache, Optional.<MessageContentCache>absent());
+	}
+
+	public CachingMailboxSessionMapperFactory(MailboxSessionMapperFactory underlying, MailboxByPathCache mailboxByPathCache, MailboxMetadataCache mailboxMetadataCache,
+	                                          MessageContentCache messageContentCache) {
+		this(underlying, mailboxByPathCache, mailboxMetadataCache, Optional.of(messageContentCache));
+	}
+
+	private CachingMailboxSessionMapperFactory(MailboxSessionMapperFactory underlying, MailboxByPathCache mailboxByPathCache, MailboxMetadataCache mailboxMetadataCache,
+	                                           Optional<MessageContentCache> messageContentCache) {
 		this.underlying = underlying;
 		this.mailboxByPathCache = mailboxByPathCache;
 		this.mailboxMetadataCache = mailboxMetadataCache;
+		this.messageContentCache = messageContentCache;
 	}
 	
 	@Override
 	public MessageMapper createMessageMapper(MailboxSession session)
 			throws MailboxException {
-		return new CachingMessageMapper(underlying.createMessageMapper(session), mailboxMetadataCache);
+		return new CachingMessageMapper(underlying.createMessageMapper(session), mailboxMetadataCache, messageContentCache);
 	}
 
     @Override
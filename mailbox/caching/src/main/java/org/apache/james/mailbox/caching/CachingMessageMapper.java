@@ -1,6 +1,8 @@
 package org.apache.james.mailbox.caching;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -18,20 +20,29 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterators;
 
 /**
  * A MessageMapper implementation that uses a MailboxMetadataCache to cache the information
- * from the underlying MessageMapper
+ * from the underlying MessageMapper, and optionally a MessageContentCache to serve the headers
+ * and bodies of recently fetched messages
  * 
  */
 public class CachingMessageMapper implements MessageMapper {
 
     private final MessageMapper underlying;
     private final MailboxMetadataCache cache;
+    private final Optional<MessageContentCache> contentCache;
 
     public CachingMessageMapper(MessageMapper underlying, MailboxMetadataCache cache) {
+        this(underlying, cache, Optional.<MessageContentCache>absent());
+    }
+
+    public CachingMessageMapper(MessageMapper underlying, MailboxMetadataCache cache, Optional<MessageContentCache> contentCache) {
         this.underlying = underlying;
         this.cache = cache;
+        this.contentCache = contentCache;
     }
 
     @Override
@@ -49,14 +60,79 @@ public class CachingMessageMapper implements MessageMapper {
                                                       MessageRange set,
                                                       org.apache.james.mailbox.store.mail.MessageMapper.FetchType type,
                                                       int limit) throws MailboxException {
+        if (contentCache.isPresent() && (type == FetchType.Headers || type == FetchType.Body)) {
+            return findInMailboxThroughContentCache(mailbox, set, type, limit);
+        }
         return underlying.findInMailbox(mailbox, set, type, limit);
     }
 
+    /**
+     * Fetch the metadata of the messages, which carry their modseq, and only fetch the content
+     * of the messages missing from the content cache.
+     * 
+     * When nothing of the mailbox is cached, the content is directly fetched. Otherwise the missing
+     * messages, including those whose body is too big to be cached, are fetched by a single request
+     * spanning from the first to the last of them.
+     */
+    private Iterator<MailboxMessage> findInMailboxThroughContentCache(Mailbox mailbox, MessageRange set, FetchType type, int limit)
+            throws MailboxException {
+        if (!contentCache.get().contains(mailbox.getMailboxId())) {
+            return fetchAndCache(mailbox, set, type, limit);
+        }
+        Map<MessageUid, MailboxMessage> messages = new LinkedHashMap<MessageUid, MailboxMessage>();
+        MessageUid firstMissingUid = null;
+        MessageUid lastMissingUid = null;
+        Iterator<MailboxMessage> metadata = underlying.findInMailbox(mailbox, set, FetchType.Metadata, limit);
+        while (metadata.hasNext()) {
+            MailboxMessage message = metadata.next();
+            Optional<CachedMessageContent> content = contentCache.get()
+                .get(message.getMailboxId(), message.getUid(), message.getModSeq(), type);
+            if (content.isPresent()) {
+                messages.put(message.getUid(), new CachedContentMailboxMessage(message, content.get()));
+            } else {
+                messages.put(message.getUid(), null);
+                if (firstMissingUid == null || message.getUid().compareTo(firstMissingUid) < 0) {
+                    firstMissingUid = message.getUid();
+                }
+                if (lastMissingUid == null || message.getUid().compareTo(lastMissingUid) > 0) {
+                    lastMissingUid = message.getUid();
+                }
+            }
+        }
+        if (firstMissingUid != null) {
+            Iterator<MailboxMessage> loaded = underlying.findInMailbox(mailbox, MessageRange.range(firstMissingUid, lastMissingUid), type, -1);
+            while (loaded.hasNext()) {
+                MailboxMessage message = loaded.next();
+                if (messages.containsKey(message.getUid()) && messages.get(message.getUid()) == null) {
+                    contentCache.get().put(message, type);
+                    messages.put(message.getUid(), message);
+                }
+            }
+        }
+        return Iterators.filter(messages.values().iterator(), Predicates.notNull());
+    }
+
+    private Iterator<MailboxMessage> fetchAndCache(Mailbox mailbox, MessageRange set, FetchType type, int limit)
+            throws MailboxException {
+        List<MailboxMessage> messages = new ArrayList<MailboxMessage>();
+        Iterator<MailboxMessage> loaded = underlying.findInMailbox(mailbox, set, type, limit);
+        while (loaded.hasNext()) {
+            MailboxMessage message = loaded.next();
+            contentCache.get().put(message, type);
+            messages.add(message);
+        }
+        return messages.iterator();
+    }
+
     @Override
     public Map<MessageUid, MessageMetaData> expungeMarkedForDeletionInMailbox(
             Mailbox mailbox, MessageRange set) throws MailboxException {
         invalidateMetadata(mailbox);
-        return underlying.expungeMarkedForDeletionInMailbox(mailbox, set);
+        Map<MessageUid, MessageMetaData> expunged = underlying.expungeMarkedForDeletionInMailbox(mailbox, set);
+        for (MessageUid uid : expunged.keySet()) {
+            invalidateContent(mailbox, uid);
+        }
+        return expunged;
     }
 
     @Override
@@ -83,6 +159,7 @@ public class CachingMessageMapper implements MessageMapper {
     public void delete(Mailbox mailbox, MailboxMessage message)
             throws MailboxException {
         invalidateMetadata(mailbox);
+        invalidateContent(mailbox, message.getUid());
         underlying.delete(mailbox, message);
 
     }
@@ -139,6 +216,12 @@ public class CachingMessageMapper implements MessageMapper {
 
     }
 
+    private void invalidateContent(Mailbox mailbox, MessageUid uid) {
+        if (contentCache.isPresent()) {
+            contentCache.get().invalidate(mailbox.getMailboxId(), uid);
+        }
+    }
+
     @Override
     public MessageMetaData move(Mailbox mailbox, MailboxMessage original) throws MailboxException {
         throw new UnsupportedOperationException("Move is not yet supported");
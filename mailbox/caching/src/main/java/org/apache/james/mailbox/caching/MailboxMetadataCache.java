@@ -2,6 +2,7 @@ package org.apache.james.mailbox.caching;
 
 import org.apache.james.mailbox.MessageUid;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxId;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 
@@ -31,6 +32,8 @@ public interface MailboxMetadataCache {
 
 	void invalidate(Mailbox mailbox);
 
+	void invalidate(MailboxId mailboxId);
+
 //	public abstract void invalidate(MailboxPath mailboxPath);
 
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package org.apache.james.mailbox.caching;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the header block, the properties and the small bodies of recently
+ * fetched messages. Entries are keyed by mailbox id and uid, and are only
+ * returned for the modseq they were stored with, so that a flag change can
+ * never serve stale content.
+ * 
+ */
+public interface MessageContentCache {
+
+    /**
+     * @return the cached content of the given message, if it is enough to
+     *         answer a fetch of the given {@link FetchType}
+     */
+    Optional<CachedMessageContent> get(MailboxId mailboxId, MessageUid uid, long modSeq, FetchType fetchType);
+
+    /**
+     * Store the content of a message fetched from the underlying mapper with
+     * the given {@link FetchType}
+     */
+    void put(MailboxMessage message, FetchType fetchType) throws MailboxException;
+
+    void invalidate(MailboxId mailboxId, MessageUid uid);
+
+    /**
+     * @return true if the content of some messages of the given mailbox is cached
+     */
+    boolean contains(MailboxId mailboxId);
+
+    CacheStats stats();
+
+}
@@ -0,0 +1,110 @@
+package org.apache.james.mailbox.caching.distributed;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Set;
+
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MailboxPath;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A batch of cache invalidations sent by a node to the other nodes of the cluster.
+ * 
+ * The binary form is versioned and only holds the origin node, the time the batch
+ * was sent at, and the invalidated mailbox paths and ids.
+ *
+ */
+public class CacheInvalidation {
+
+    private static final byte VERSION = 1;
+
+    private final String origin;
+    private final long timestamp;
+    private final Set<MailboxPath> mailboxPaths;
+    private final Set<MailboxId> mailboxIds;
+
+    public CacheInvalidation(String origin, long timestamp, Set<MailboxPath> mailboxPaths, Set<MailboxId> mailboxIds) {
+        this.origin = origin;
+        this.timestamp = timestamp;
+        this.mailboxPaths = ImmutableSet.copyOf(mailboxPaths);
+        this.mailboxIds = ImmutableSet.copyOf(mailboxIds);
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Set<MailboxPath> getMailboxPaths() {
+        return mailboxPaths;
+    }
+
+    public Set<MailboxId> getMailboxIds() {
+        return mailboxIds;
+    }
+
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(VERSION);
+        output.writeUTF(origin);
+        output.writeLong(timestamp);
+        output.writeInt(mailboxPaths.size());
+        for (MailboxPath path : mailboxPaths) {
+            writeNullable(output, path.getNamespace());
+            writeNullable(output, path.getUser());
+            writeNullable(output, path.getName());
+        }
+        output.writeInt(mailboxIds.size());
+        for (MailboxId mailboxId : mailboxIds) {
+            output.writeUTF(mailboxId.serialize());
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    public static CacheInvalidation fromBytes(byte[] serialized, MailboxId.Factory mailboxIdFactory) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(serialized));
+        byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported cache invalidation version " + version);
+        }
+        String origin = input.readUTF();
+        long timestamp = input.readLong();
+        ImmutableSet.Builder<MailboxPath> mailboxPaths = ImmutableSet.builder();
+        int pathCount = input.readInt();
+        for (int i = 0; i < pathCount; i++) {
+            String namespace = readNullable(input);
+            String user = readNullable(input);
+            mailboxPaths.add(new MailboxPath(namespace, user, readNullable(input)));
+        }
+        ImmutableSet.Builder<MailboxId> mailboxIds = ImmutableSet.builder();
+        int idCount = input.readInt();
+        for (int i = 0; i < idCount; i++) {
+            mailboxIds.add(mailboxIdFactory.fromString(input.readUTF()));
+        }
+        return new CacheInvalidation(origin, timestamp, mailboxPaths.build(), mailboxIds.build());
+    }
+
+    private static void writeNullable(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream input) throws IOException {
+        if (input.readBoolean()) {
+            return input.readUTF();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,167 @@
+package org.apache.james.mailbox.caching.distributed;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.caching.MailboxByPathCache;
+import org.apache.james.mailbox.caching.MailboxMetadataCache;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.publisher.MessageConsumer;
+import org.apache.james.mailbox.store.publisher.MessageReceiver;
+import org.apache.james.mailbox.store.publisher.Publisher;
+import org.apache.james.mailbox.store.publisher.Topic;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the MailboxByPathCache and MailboxMetadataCache of the nodes of a cluster coherent.
+ * 
+ * The invalidations done on this node are coalesced and published as a single
+ * {@link CacheInvalidation} at most every maxDelay milliseconds, or as soon as maxBatchSize
+ * invalidations are pending, through the given {@link Publisher}. Invalidations received
+ * through the {@link MessageConsumer} from the other nodes are applied to the local caches,
+ * so that their entries are dropped within maxDelay plus the transport latency.
+ * 
+ * The lag between publication and reception is recorded, in milliseconds, in the
+ * cacheInvalidationLag metric. Divided by the cacheInvalidationsReceived metric, it gives
+ * the average lag, provided that the clocks of the nodes are synchronized.
+ *
+ */
+public class CacheInvalidationBroadcaster implements MessageReceiver {
+
+    public static final long DEFAULT_MAX_DELAY_MS = 100;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidationBroadcaster.class);
+
+    private final String nodeId;
+    private final Publisher publisher;
+    private final Topic topic;
+    private final MailboxId.Factory mailboxIdFactory;
+    private final MailboxByPathCache mailboxByPathCache;
+    private final MailboxMetadataCache mailboxMetadataCache;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Metric publishedMetric;
+    private final Metric receivedMetric;
+    private final Metric lagMetric;
+    private Set<MailboxPath> pendingPaths;
+    private Set<MailboxId> pendingIds;
+
+    public CacheInvalidationBroadcaster(Publisher publisher, MessageConsumer messageConsumer, String topic,
+                                        MailboxId.Factory mailboxIdFactory, MailboxByPathCache mailboxByPathCache,
+                                        MailboxMetadataCache mailboxMetadataCache, MetricFactory metricFactory) throws Exception {
+        this(publisher, messageConsumer, topic, mailboxIdFactory, mailboxByPathCache, mailboxMetadataCache, metricFactory,
+            DEFAULT_MAX_DELAY_MS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    public CacheInvalidationBroadcaster(Publisher publisher, MessageConsumer messageConsumer, String topic,
+                                        MailboxId.Factory mailboxIdFactory, MailboxByPathCache mailboxByPathCache,
+                                        MailboxMetadataCache mailboxMetadataCache, MetricFactory metricFactory,
+                                        long maxDelayMs, int maxBatchSize) throws Exception {
+        this.nodeId = UUID.randomUUID().toString();
+        this.publisher = publisher;
+        this.topic = new Topic(topic);
+        this.mailboxIdFactory = mailboxIdFactory;
+        this.mailboxByPathCache = mailboxByPathCache;
+        this.mailboxMetadataCache = mailboxMetadataCache;
+        this.maxBatchSize = maxBatchSize;
+        this.publishedMetric = metricFactory.generate("cacheInvalidationsPublished");
+        this.receivedMetric = metricFactory.generate("cacheInvalidationsReceived");
+        this.lagMetric = metricFactory.generate("cacheInvalidationLag");
+        this.pendingPaths = new HashSet<MailboxPath>();
+        this.pendingIds = new HashSet<MailboxId>();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor();
+        this.scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, maxDelayMs, maxDelayMs, TimeUnit.MILLISECONDS);
+        messageConsumer.setMessageReceiver(this);
+        messageConsumer.init(this.topic);
+    }
+
+    public void invalidate(MailboxPath mailboxPath) {
+        boolean full;
+        synchronized (this) {
+            pendingPaths.add(mailboxPath);
+            full = pendingPaths.size() + pendingIds.size() >= maxBatchSize;
+        }
+        if (full) {
+            flushAsynchronously();
+        }
+    }
+
+    public void invalidate(MailboxId mailboxId) {
+        boolean full;
+        synchronized (this) {
+            pendingIds.add(mailboxId);
+            full = pendingPaths.size() + pendingIds.size() >= maxBatchSize;
+        }
+        if (full) {
+            flushAsynchronously();
+        }
+    }
+
+    private void flushAsynchronously() {
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    public void flush() {
+        Set<MailboxPath> paths;
+        Set<MailboxId> ids;
+        synchronized (this) {
+            if (pendingPaths.isEmpty() && pendingIds.isEmpty()) {
+                return;
+            }
+            paths = pendingPaths;
+            ids = pendingIds;
+            pendingPaths = new HashSet<MailboxPath>();
+            pendingIds = new HashSet<MailboxId>();
+        }
+        try {
+            publisher.publish(topic, new CacheInvalidation(nodeId, System.currentTimeMillis(), paths, ids).toBytes());
+            publishedMetric.increment();
+        } catch (Throwable t) {
+            LOGGER.error("Error while publishing cache invalidations", t);
+        }
+    }
+
+    @Override
+    public void receiveSerializedEvent(byte[] serializedEvent) {
+        try {
+            CacheInvalidation invalidation = CacheInvalidation.fromBytes(serializedEvent, mailboxIdFactory);
+            if (invalidation.getOrigin().equals(nodeId)) {
+                return;
+            }
+            for (MailboxPath mailboxPath : invalidation.getMailboxPaths()) {
+                mailboxByPathCache.invalidate(mailboxPath);
+            }
+            for (MailboxId mailboxId : invalidation.getMailboxIds()) {
+                mailboxMetadataCache.invalidate(mailboxId);
+            }
+            receivedMetric.increment();
+            lagMetric.add((int) Math.max(0, System.currentTimeMillis() - invalidation.getTimestamp()));
+        } catch (Exception e) {
+            LOGGER.error("Error while receiving cache invalidations", e);
+        }
+    }
+
+    public void destroy() {
+        scheduler.shutdown();
+        flush();
+    }
+}
@@ -60,11 +60,18 @@ public class GuavaMailboxMetadataCache extends AbstractGuavaCache implements Mai
 	
 	@Override
 	public void invalidate(Mailbox mailbox) {
-		cacheCountMessagesInMailbox.invalidate(mailbox);
-		cacheCountUnseenMessagesInMailbox.invalidate(mailbox);
-		cacheFindFirstUnseenMessageUid.invalidate(mailbox);
-		lastUidWrapper.invalidate(mailbox);
-		highestModSeqWrapper.invalidate(mailbox);
+		if (mailbox != null) {
+			invalidate(mailbox.getMailboxId());
+		}
+	}
+
+	@Override
+	public void invalidate(MailboxId mailboxId) {
+		cacheCountMessagesInMailbox.invalidate(mailboxId);
+		cacheCountUnseenMessagesInMailbox.invalidate(mailboxId);
+		cacheFindFirstUnseenMessageUid.invalidate(mailboxId);
+		cacheGetLastUid.invalidate(mailboxId);
+		cacheGetHighestModSeq.invalidate(mailboxId);
 	}
 
 	
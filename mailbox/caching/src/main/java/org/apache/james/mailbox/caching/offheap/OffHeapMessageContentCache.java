@@ -0,0 +1,327 @@
+package org.apache.james.mailbox.caching.offheap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.caching.CachedMessageContent;
+import org.apache.james.mailbox.caching.MessageContentCache;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.Property;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleProperty;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
+import com.google.common.io.ByteStreams;
+
+/**
+ * MessageContentCache keeping the header blocks and the bodies smaller than a
+ * configurable size in direct ByteBuffers, out of the Java heap.
+ * 
+ * The cache is bounded by the number of bytes it holds. Entries are evicted in
+ * least recently used order, and a new entry is only admitted in place of
+ * the evicted ones if it was requested more often recently (TinyLFU). This keeps
+ * one time fetches, like a client synchronizing a whole mailbox, from flushing
+ * the newest messages every client keeps fetching.
+ * 
+ * The memory of an evicted entry is given back once its ByteBuffer is garbage
+ * collected.
+ *
+ */
+public class OffHeapMessageContentCache implements MessageContentCache {
+
+    public static final int DEFAULT_MAX_BODY_SIZE = 16 * 1024;
+    private static final int AVERAGE_ENTRY_SIZE = 4 * 1024;
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final long maxBytes;
+    private final int maxBodySize;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final Map<MailboxId, Integer> entryCounts;
+    private final FrequencySketch sketch;
+    private long usedBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public OffHeapMessageContentCache(long maxBytes) {
+        this(maxBytes, DEFAULT_MAX_BODY_SIZE);
+    }
+
+    public OffHeapMessageContentCache(long maxBytes, int maxBodySize) {
+        Preconditions.checkArgument(maxBytes > 0, "maxBytes should be positive");
+        Preconditions.checkArgument(maxBodySize >= 0, "maxBodySize should not be negative");
+        this.maxBytes = maxBytes;
+        this.maxBodySize = maxBodySize;
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+        this.entryCounts = new HashMap<MailboxId, Integer>();
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, maxBytes / AVERAGE_ENTRY_SIZE));
+    }
+
+    @Override
+    public synchronized Optional<CachedMessageContent> get(MailboxId mailboxId, MessageUid uid, long modSeq, FetchType fetchType) {
+        Key key = new Key(mailboxId, uid);
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            missCount++;
+            return Optional.absent();
+        }
+        if (entry.modSeq != modSeq) {
+            remove(key);
+            missCount++;
+            return Optional.absent();
+        }
+        if (!entry.canServe(fetchType)) {
+            missCount++;
+            return Optional.absent();
+        }
+        hitCount++;
+        return Optional.<CachedMessageContent>of(entry);
+    }
+
+    @Override
+    public void put(MailboxMessage message, FetchType fetchType) throws MailboxException {
+        try {
+            byte[] headers = null;
+            List<Property> properties = null;
+            byte[] body = null;
+            if (fetchType == FetchType.Headers || fetchType == FetchType.Full) {
+                headers = toByteArray(message.getHeaderContent());
+                properties = copyOf(message.getProperties());
+            }
+            if ((fetchType == FetchType.Body || fetchType == FetchType.Full) && message.getBodyOctets() <= maxBodySize) {
+                body = toByteArray(message.getBodyContent());
+            }
+            if (headers != null || body != null) {
+                put(new Key(message.getMailboxId(), message.getUid()), message.getModSeq(), headers, properties, body);
+            }
+        } catch (IOException e) {
+            throw new MailboxException("Unable to cache the content of message " + message.getUid(), e);
+        }
+    }
+
+    private synchronized void put(Key key, long modSeq, byte[] headers, List<Property> properties, byte[] body) {
+        Entry existing = entries.get(key);
+        boolean merge = existing != null && existing.modSeq == modSeq;
+        long weight = ENTRY_OVERHEAD + length(headers) + length(body);
+        if (merge) {
+            // The content fetched now completes the one already cached
+            weight += (headers == null ? capacity(existing.headers) : 0) + (body == null ? capacity(existing.body) : 0);
+        }
+        if (weight > maxBytes) {
+            return;
+        }
+        if (!makeRoom(key, existing, weight)) {
+            return;
+        }
+
+        Entry entry;
+        if (merge) {
+            entry = new Entry(modSeq,
+                headers != null ? allocate(headers) : existing.headers,
+                properties != null ? properties : existing.properties,
+                body != null ? allocate(body) : existing.body);
+        } else {
+            entry = new Entry(modSeq, allocate(headers), properties, allocate(body));
+        }
+        if (existing != null) {
+            remove(key);
+        }
+        entries.put(key, entry);
+        usedBytes += entry.weight();
+        Integer count = entryCounts.get(key.mailboxId);
+        entryCounts.put(key.mailboxId, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * Evict least recently used entries until the given weight fits, as long as
+     * they are less frequently accessed than the new entry
+     */
+    private boolean makeRoom(Key key, Entry existing, long weight) {
+        long available = maxBytes - usedBytes;
+        if (existing != null) {
+            available += existing.weight();
+        }
+        if (available >= weight) {
+            return true;
+        }
+        int candidateFrequency = sketch.frequency(key);
+        List<Key> victims = new ArrayList<Key>();
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (available < weight && eldest.hasNext()) {
+            Map.Entry<Key, Entry> victim = eldest.next();
+            if (victim.getKey().equals(key)) {
+                continue;
+            }
+            if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+                return false;
+            }
+            victims.add(victim.getKey());
+            available += victim.getValue().weight();
+        }
+        if (available < weight) {
+            return false;
+        }
+        for (Key victim : victims) {
+            remove(victim);
+            evictionCount++;
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void invalidate(MailboxId mailboxId, MessageUid uid) {
+        remove(new Key(mailboxId, uid));
+    }
+
+    @Override
+    public synchronized boolean contains(MailboxId mailboxId) {
+        return entryCounts.containsKey(mailboxId);
+    }
+
+    @Override
+    public synchronized CacheStats stats() {
+        return new CacheStats(hitCount, missCount, 0, 0, 0, evictionCount);
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    private void remove(Key key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.weight();
+            int count = entryCounts.get(key.mailboxId);
+            if (count == 1) {
+                entryCounts.remove(key.mailboxId);
+            } else {
+                entryCounts.put(key.mailboxId, count - 1);
+            }
+        }
+    }
+
+    private static byte[] toByteArray(InputStream inputStream) throws IOException {
+        try {
+            return ByteStreams.toByteArray(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static List<Property> copyOf(List<Property> properties) {
+        List<Property> copy = new ArrayList<Property>(properties.size());
+        for (Property property : properties) {
+            copy.add(new SimpleProperty(property));
+        }
+        return copy;
+    }
+
+    private static ByteBuffer allocate(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static int capacity(ByteBuffer buffer) {
+        return buffer == null ? 0 : buffer.capacity();
+    }
+
+    private static class Key {
+        private final MailboxId mailboxId;
+        private final MessageUid uid;
+
+        Key(MailboxId mailboxId, MessageUid uid) {
+            this.mailboxId = mailboxId;
+            this.uid = uid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key other = (Key) o;
+                return Objects.equal(mailboxId, other.mailboxId)
+                    && Objects.equal(uid, other.uid);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(mailboxId, uid);
+        }
+    }
+
+    private static class Entry implements CachedMessageContent {
+        private final long modSeq;
+        private final ByteBuffer headers;
+        private final List<Property> properties;
+        private final ByteBuffer body;
+
+        Entry(long modSeq, ByteBuffer headers, List<Property> properties, ByteBuffer body) {
+            this.modSeq = modSeq;
+            this.headers = headers;
+            this.properties = properties;
+            this.body = body;
+        }
+
+        boolean canServe(FetchType fetchType) {
+            switch (fetchType) {
+            case Headers:
+                return headers != null;
+            case Body:
+                return body != null;
+            case Full:
+                return headers != null && body != null;
+            default:
+                return false;
+            }
+        }
+
+        long weight() {
+            return ENTRY_OVERHEAD + capacity(headers) + capacity(body);
+        }
+
+        @Override
+        public Optional<InputStream> getHeaderContent() {
+            if (headers == null) {
+                return Optional.absent();
+            }
+            return Optional.<InputStream>of(new ByteBufferInputStream(headers));
+        }
+
+        @Override
+        public Optional<List<Property>> getProperties() {
+            return Optional.fromNullable(properties);
+        }
+
+        @Override
+        public Optional<InputStream> getBodyContent() {
+            if (body == null) {
+                return Optional.absent();
+            }
+            return Optional.<InputStream>of(new ByteBufferInputStream(body));
+        }
+    }
+}
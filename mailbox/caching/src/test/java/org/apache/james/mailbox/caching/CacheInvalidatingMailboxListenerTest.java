@@ -0,0 +1,170 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.caching;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.apache.james.mailbox.MailboxListener;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.caching.distributed.CacheInvalidationBroadcaster;
+import org.apache.james.mailbox.exception.MailboxNotFoundException;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageMetaData;
+import org.apache.james.mailbox.model.TestId;
+import org.apache.james.mailbox.model.UpdatedFlags;
+import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
+import org.apache.james.mailbox.store.event.EventFactory;
+import org.apache.james.mailbox.store.mail.MailboxMapper;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+public class CacheInvalidatingMailboxListenerTest {
+
+    private static final TestId MAILBOX_ID = TestId.of(1);
+    private static final MailboxPath INBOX = new MailboxPath("#private", "user", "INBOX");
+    private static final MessageUid UID = MessageUid.of(42);
+
+    private MailboxByPathCache mailboxByPathCache;
+    private MailboxMetadataCache mailboxMetadataCache;
+    private MessageContentCache messageContentCache;
+    private CacheInvalidationBroadcaster broadcaster;
+    private MailboxSessionMapperFactory mapperFactory;
+    private MailboxSession session;
+    private SimpleMailbox mailbox;
+
+    @Before
+    public void setUp() {
+        mailboxByPathCache = mock(MailboxByPathCache.class);
+        mailboxMetadataCache = mock(MailboxMetadataCache.class);
+        messageContentCache = mock(MessageContentCache.class);
+        broadcaster = mock(CacheInvalidationBroadcaster.class);
+        mapperFactory = mock(MailboxSessionMapperFactory.class);
+        session = new MockMailboxSession("user");
+        mailbox = new SimpleMailbox(INBOX, 42, MAILBOX_ID);
+    }
+
+    @Test
+    public void eventShouldTakeTheMailboxIdFromTheEvent() throws Exception {
+        CacheInvalidatingMailboxListener testee = listener(Optional.<MailboxSessionMapperFactory>absent());
+
+        testee.event(new EventFactory().expunged(session, ImmutableMap.<MessageUid, MessageMetaData>of(UID, mock(MessageMetaData.class)), mailbox));
+
+        verify(mailboxMetadataCache).invalidate(MAILBOX_ID);
+        verify(messageContentCache).invalidate(MAILBOX_ID, UID);
+        verify(mailboxByPathCache, never()).findMailboxByPath(any(MailboxPath.class), any(MailboxMapper.class));
+    }
+
+    @Test
+    public void eventShouldBroadcastInvalidations() throws Exception {
+        CacheInvalidatingMailboxListener testee = listener(Optional.<MailboxSessionMapperFactory>absent());
+
+        testee.event(new EventFactory().flagsUpdated(session, ImmutableList.of(UID), mailbox, ImmutableList.<UpdatedFlags>of()));
+
+        verify(broadcaster).invalidate(MAILBOX_ID);
+        verify(broadcaster).invalidate(INBOX);
+    }
+
+    @Test
+    public void eventShouldResolveTheMailboxIdThroughTheMapperWhenTheEventDoesNotCarryTheMailbox() throws Exception {
+        MailboxMapper mailboxMapper = mock(MailboxMapper.class);
+        when(mapperFactory.getMailboxMapper(session)).thenReturn(mailboxMapper);
+        when(mailboxByPathCache.findMailboxByPath(INBOX, mailboxMapper)).thenReturn(mailbox);
+        CacheInvalidatingMailboxListener testee = listener(Optional.of(mapperFactory));
+
+        testee.event(new PathOnlyExpunged(session, INBOX));
+
+        verify(mailboxMetadataCache).invalidate(MAILBOX_ID);
+        verify(messageContentCache).invalidate(MAILBOX_ID, UID);
+    }
+
+    @Test
+    public void eventShouldInvalidateThePathWhenTheMailboxCannotBeFound() throws Exception {
+        MailboxMapper mailboxMapper = mock(MailboxMapper.class);
+        when(mapperFactory.getMailboxMapper(session)).thenReturn(mailboxMapper);
+        when(mailboxByPathCache.findMailboxByPath(INBOX, mailboxMapper)).thenThrow(new MailboxNotFoundException(INBOX));
+        CacheInvalidatingMailboxListener testee = listener(Optional.of(mapperFactory));
+
+        testee.event(new PathOnlyExpunged(session, INBOX));
+
+        verify(mailboxByPathCache).invalidate(INBOX);
+        verify(mailboxMetadataCache, never()).invalidate(any(MailboxId.class));
+    }
+
+    @Test
+    public void eventShouldOnlyInvalidateThePathWhenTheMailboxIdCannotBeResolved() throws Exception {
+        CacheInvalidatingMailboxListener testee = listener(Optional.<MailboxSessionMapperFactory>absent());
+
+        testee.event(new PathOnlyExpunged(session, INBOX));
+
+        verify(mailboxByPathCache).invalidate(INBOX);
+        verify(mailboxByPathCache, never()).findMailboxByPath(any(MailboxPath.class), any(MailboxMapper.class));
+        verify(mailboxMetadataCache, never()).invalidate(any(MailboxId.class));
+    }
+
+    @Test
+    public void eventShouldInvalidateThePathOfMailboxEvents() throws Exception {
+        CacheInvalidatingMailboxListener testee = listener(Optional.<MailboxSessionMapperFactory>absent());
+
+        testee.event(new EventFactory().mailboxDeleted(session, mailbox));
+
+        verify(mailboxByPathCache).invalidate(INBOX);
+        verify(mailboxMetadataCache, never()).invalidate(any(MailboxId.class));
+    }
+
+    private CacheInvalidatingMailboxListener listener(Optional<MailboxSessionMapperFactory> mapperFactory) {
+        return new CacheInvalidatingMailboxListener(mailboxByPathCache, mailboxMetadataCache,
+            Optional.of(messageContentCache), Optional.of(broadcaster), mapperFactory);
+    }
+
+    /**
+     * An expunge event only carrying the path of its mailbox, like the events of other implementations
+     * than the store one
+     */
+    private static class PathOnlyExpunged extends MailboxListener.Expunged {
+
+        PathOnlyExpunged(MailboxSession session, MailboxPath path) {
+            super(session, path);
+        }
+
+        @Override
+        public List<MessageUid> getUids() {
+            return ImmutableList.of(UID);
+        }
+
+        @Override
+        public MessageMetaData getMetaData(MessageUid uid) {
+            return null;
+        }
+    }
+}
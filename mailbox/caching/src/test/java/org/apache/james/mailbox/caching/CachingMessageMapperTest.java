@@ -0,0 +1,209 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.caching;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.mail.Flags;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.caching.offheap.OffHeapMessageContentCache;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.TestId;
+import org.apache.james.mailbox.model.TestMessageId;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+public class CachingMessageMapperTest {
+
+    private static final TestId MAILBOX_ID = TestId.of(1);
+    private static final long MOD_SEQ = 36;
+    private static final String HEADERS = "Subject: test\r\n\r\n";
+    private static final String BODY = "body\r\n";
+
+    private MessageMapper underlying;
+    private MessageContentCache contentCache;
+    private SimpleMailbox mailbox;
+    private CachingMessageMapper testee;
+
+    @Before
+    public void setUp() {
+        underlying = mock(MessageMapper.class);
+        contentCache = new OffHeapMessageContentCache(1024 * 1024);
+        mailbox = new SimpleMailbox(new MailboxPath("#private", "user", "INBOX"), 42, MAILBOX_ID);
+        testee = new CachingMessageMapper(underlying, mock(MailboxMetadataCache.class), Optional.of(contentCache));
+    }
+
+    @Test
+    public void findInMailboxShouldFetchContentOnceWhenCacheIsCold() throws Exception {
+        MessageRange range = MessageRange.all();
+        when(underlying.findInMailbox(mailbox, range, FetchType.Headers, -1))
+            .thenReturn(messages(message(1, MOD_SEQ), message(2, MOD_SEQ)));
+
+        List<MailboxMessage> result = Lists.newArrayList(testee.findInMailbox(mailbox, range, FetchType.Headers, -1));
+
+        assertThat(uids(result)).containsExactly(MessageUid.of(1), MessageUid.of(2));
+        verify(underlying).findInMailbox(mailbox, range, FetchType.Headers, -1);
+        verifyNoMoreInteractions(underlying);
+    }
+
+    @Test
+    public void findInMailboxShouldFillTheCacheWhenCacheIsCold() throws Exception {
+        MessageRange range = MessageRange.all();
+        when(underlying.findInMailbox(mailbox, range, FetchType.Headers, -1))
+            .thenReturn(messages(message(1, MOD_SEQ)));
+
+        testee.findInMailbox(mailbox, range, FetchType.Headers, -1);
+
+        assertThat(contentCache.get(MAILBOX_ID, MessageUid.of(1), MOD_SEQ, FetchType.Headers).isPresent()).isTrue();
+    }
+
+    @Test
+    public void findInMailboxShouldOnlyFetchMetadataWhenAllMessagesAreCached() throws Exception {
+        MessageRange range = MessageRange.all();
+        contentCache.put(message(1, MOD_SEQ), FetchType.Headers);
+        contentCache.put(message(2, MOD_SEQ), FetchType.Headers);
+        when(underlying.findInMailbox(mailbox, range, FetchType.Metadata, -1))
+            .thenReturn(messages(message(1, MOD_SEQ), message(2, MOD_SEQ)));
+
+        List<MailboxMessage> result = Lists.newArrayList(testee.findInMailbox(mailbox, range, FetchType.Headers, -1));
+
+        assertThat(result).hasSize(2);
+        assertThat(result.get(0)).isInstanceOf(CachedContentMailboxMessage.class);
+        assertThat(result.get(1)).isInstanceOf(CachedContentMailboxMessage.class);
+        assertThat(asString(result.get(0).getHeaderContent())).isEqualTo(HEADERS);
+        verify(underlying).findInMailbox(mailbox, range, FetchType.Metadata, -1);
+        verifyNoMoreInteractions(underlying);
+    }
+
+    @Test
+    public void findInMailboxShouldMergeCachedAndFetchedMessagesInUidOrder() throws Exception {
+        MessageRange range = MessageRange.all();
+        contentCache.put(message(1, MOD_SEQ), FetchType.Headers);
+        contentCache.put(message(3, MOD_SEQ), FetchType.Headers);
+        when(underlying.findInMailbox(mailbox, range, FetchType.Metadata, -1))
+            .thenReturn(messages(message(1, MOD_SEQ), message(2, MOD_SEQ), message(3, MOD_SEQ), message(4, MOD_SEQ)));
+        when(underlying.findInMailbox(mailbox, MessageRange.range(MessageUid.of(2), MessageUid.of(4)), FetchType.Headers, -1))
+            .thenReturn(messages(message(2, MOD_SEQ), message(3, MOD_SEQ), message(4, MOD_SEQ)));
+
+        List<MailboxMessage> result = Lists.newArrayList(testee.findInMailbox(mailbox, range, FetchType.Headers, -1));
+
+        assertThat(uids(result)).containsExactly(MessageUid.of(1), MessageUid.of(2), MessageUid.of(3), MessageUid.of(4));
+        assertThat(result.get(0)).isInstanceOf(CachedContentMailboxMessage.class);
+        assertThat(result.get(1)).isNotInstanceOf(CachedContentMailboxMessage.class);
+        assertThat(result.get(2)).isInstanceOf(CachedContentMailboxMessage.class);
+        assertThat(result.get(3)).isNotInstanceOf(CachedContentMailboxMessage.class);
+    }
+
+    @Test
+    public void findInMailboxShouldFetchMissingMessagesWithASingleRequest() throws Exception {
+        MessageRange range = MessageRange.all();
+        MessageRange missing = MessageRange.range(MessageUid.of(2), MessageUid.of(4));
+        contentCache.put(message(1, MOD_SEQ), FetchType.Headers);
+        contentCache.put(message(3, MOD_SEQ), FetchType.Headers);
+        when(underlying.findInMailbox(mailbox, range, FetchType.Metadata, -1))
+            .thenReturn(messages(message(1, MOD_SEQ), message(2, MOD_SEQ), message(3, MOD_SEQ), message(4, MOD_SEQ)));
+        when(underlying.findInMailbox(mailbox, missing, FetchType.Headers, -1))
+            .thenReturn(messages(message(2, MOD_SEQ), message(3, MOD_SEQ), message(4, MOD_SEQ)));
+
+        testee.findInMailbox(mailbox, range, FetchType.Headers, -1);
+
+        verify(underlying).findInMailbox(mailbox, range, FetchType.Metadata, -1);
+        verify(underlying).findInMailbox(mailbox, missing, FetchType.Headers, -1);
+        verifyNoMoreInteractions(underlying);
+    }
+
+    @Test
+    public void findInMailboxShouldRefetchMessagesWhoseModSeqChanged() throws Exception {
+        MessageRange range = MessageRange.one(MessageUid.of(1));
+        contentCache.put(message(1, MOD_SEQ), FetchType.Headers);
+        when(underlying.findInMailbox(mailbox, range, FetchType.Metadata, -1))
+            .thenReturn(messages(message(1, MOD_SEQ + 1)));
+        when(underlying.findInMailbox(mailbox, range, FetchType.Headers, -1))
+            .thenReturn(messages(message(1, MOD_SEQ + 1)));
+
+        List<MailboxMessage> result = Lists.newArrayList(testee.findInMailbox(mailbox, range, FetchType.Headers, -1));
+
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0)).isNotInstanceOf(CachedContentMailboxMessage.class);
+        assertThat(contentCache.get(MAILBOX_ID, MessageUid.of(1), MOD_SEQ + 1, FetchType.Headers).isPresent()).isTrue();
+    }
+
+    @Test
+    public void findInMailboxShouldNotUseTheContentCacheForFullFetches() throws Exception {
+        MessageRange range = MessageRange.all();
+        contentCache.put(message(1, MOD_SEQ), FetchType.Headers);
+        when(underlying.findInMailbox(mailbox, range, FetchType.Full, -1))
+            .thenReturn(messages(message(1, MOD_SEQ)));
+
+        testee.findInMailbox(mailbox, range, FetchType.Full, -1);
+
+        verify(underlying).findInMailbox(mailbox, range, FetchType.Full, -1);
+        verifyNoMoreInteractions(underlying);
+    }
+
+    private SimpleMailboxMessage message(long uid, long modSeq) {
+        byte[] content = (HEADERS + BODY).getBytes(Charsets.US_ASCII);
+        SimpleMailboxMessage message = new SimpleMailboxMessage(TestMessageId.of(uid), new Date(), content.length,
+            HEADERS.length(), new SharedByteArrayInputStream(content), new Flags(), new PropertyBuilder(), MAILBOX_ID);
+        message.setUid(MessageUid.of(uid));
+        message.setModSeq(modSeq);
+        return message;
+    }
+
+    private Iterator<MailboxMessage> messages(MailboxMessage... messages) {
+        return ImmutableList.copyOf(messages).iterator();
+    }
+
+    private List<MessageUid> uids(List<MailboxMessage> messages) {
+        List<MessageUid> uids = Lists.newArrayList();
+        for (MailboxMessage message : messages) {
+            uids.add(message.getUid());
+        }
+        return uids;
+    }
+
+    private String asString(InputStream inputStream) throws Exception {
+        return new String(ByteStreams.toByteArray(inputStream), Charsets.US_ASCII);
+    }
+}
@@ -0,0 +1,180 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.caching.distributed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.mailbox.caching.MailboxByPathCache;
+import org.apache.james.mailbox.caching.MailboxMetadataCache;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.TestId;
+import org.apache.james.mailbox.store.publisher.MessageConsumer;
+import org.apache.james.mailbox.store.publisher.Publisher;
+import org.apache.james.mailbox.store.publisher.Topic;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.collect.ImmutableSet;
+
+public class CacheInvalidationBroadcasterTest {
+
+    private static final String TOPIC = "cacheInvalidations";
+    private static final long MAX_DELAY_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_BATCH_SIZE = 3;
+    private static final MailboxPath INBOX = new MailboxPath("#private", "user", "INBOX");
+    private static final TestId MAILBOX_ID = TestId.of(1);
+    private static final MailboxId.Factory MAILBOX_ID_FACTORY = new TestId.Factory();
+
+    private Publisher publisher;
+    private MessageConsumer messageConsumer;
+    private MailboxByPathCache mailboxByPathCache;
+    private MailboxMetadataCache mailboxMetadataCache;
+    private CacheInvalidationBroadcaster testee;
+
+    @Before
+    public void setUp() throws Exception {
+        publisher = mock(Publisher.class);
+        messageConsumer = mock(MessageConsumer.class);
+        mailboxByPathCache = mock(MailboxByPathCache.class);
+        mailboxMetadataCache = mock(MailboxMetadataCache.class);
+        testee = new CacheInvalidationBroadcaster(publisher, messageConsumer, TOPIC, MAILBOX_ID_FACTORY,
+            mailboxByPathCache, mailboxMetadataCache, new NoopMetricFactory(), MAX_DELAY_MS, MAX_BATCH_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        testee.destroy();
+    }
+
+    @Test
+    public void constructorShouldRegisterAsReceiverOfTheTopic() throws Exception {
+        verify(messageConsumer).setMessageReceiver(testee);
+        verify(messageConsumer).init(new Topic(TOPIC));
+    }
+
+    @Test
+    public void flushShouldPublishPendingInvalidationsAsASingleMessage() throws Exception {
+        testee.invalidate(INBOX);
+        testee.invalidate(MAILBOX_ID);
+
+        testee.flush();
+
+        CacheInvalidation published = publishedInvalidation();
+        assertThat(published.getMailboxPaths()).containsOnly(INBOX);
+        assertThat(published.getMailboxIds()).containsOnly(MAILBOX_ID);
+    }
+
+    @Test
+    public void flushShouldCoalesceDuplicatedInvalidations() throws Exception {
+        testee.invalidate(MAILBOX_ID);
+        testee.invalidate(MAILBOX_ID);
+
+        testee.flush();
+
+        assertThat(publishedInvalidation().getMailboxIds()).containsOnly(MAILBOX_ID);
+    }
+
+    @Test
+    public void flushShouldNotPublishWhenNothingIsPending() {
+        testee.flush();
+
+        verify(publisher, never()).publish(any(Topic.class), any(byte[].class));
+    }
+
+    @Test
+    public void flushShouldNotPublishTwiceTheSameInvalidations() throws Exception {
+        testee.invalidate(MAILBOX_ID);
+        testee.flush();
+
+        testee.flush();
+
+        verify(publisher).publish(any(Topic.class), any(byte[].class));
+    }
+
+    @Test
+    public void invalidateShouldPublishOnceMaxBatchSizeIsReached() {
+        testee.invalidate(TestId.of(1));
+        testee.invalidate(TestId.of(2));
+        testee.invalidate(INBOX);
+
+        verify(publisher, timeout(1000)).publish(any(Topic.class), any(byte[].class));
+    }
+
+    @Test
+    public void destroyShouldPublishPendingInvalidations() {
+        testee.invalidate(MAILBOX_ID);
+
+        testee.destroy();
+
+        verify(publisher).publish(any(Topic.class), any(byte[].class));
+    }
+
+    @Test
+    public void receiveSerializedEventShouldInvalidateLocalCaches() throws Exception {
+        byte[] invalidation = new CacheInvalidation("otherNode", System.currentTimeMillis(),
+            ImmutableSet.of(INBOX), ImmutableSet.<MailboxId>of(MAILBOX_ID)).toBytes();
+
+        testee.receiveSerializedEvent(invalidation);
+
+        verify(mailboxByPathCache).invalidate(INBOX);
+        verify(mailboxMetadataCache).invalidate(MAILBOX_ID);
+    }
+
+    @Test
+    public void receiveSerializedEventShouldIgnoreInvalidationsPublishedByThisNode() throws Exception {
+        testee.invalidate(INBOX);
+        testee.invalidate(MAILBOX_ID);
+        testee.flush();
+
+        testee.receiveSerializedEvent(publishedBytes());
+
+        verifyZeroInteractions(mailboxByPathCache, mailboxMetadataCache);
+    }
+
+    @Test
+    public void receiveSerializedEventShouldIgnoreCorruptedInvalidations() {
+        testee.receiveSerializedEvent(new byte[] {42});
+
+        verifyZeroInteractions(mailboxByPathCache, mailboxMetadataCache);
+    }
+
+    private CacheInvalidation publishedInvalidation() throws Exception {
+        return CacheInvalidation.fromBytes(publishedBytes(), MAILBOX_ID_FACTORY);
+    }
+
+    private byte[] publishedBytes() {
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(publisher).publish(eq(new Topic(TOPIC)), captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,83 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.caching.distributed;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.TestId;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+public class CacheInvalidationTest {
+
+    private static final String ORIGIN = "origin";
+    private static final long TIMESTAMP = 1234567890L;
+    private static final MailboxPath INBOX = new MailboxPath("#private", "user", "INBOX");
+    private static final MailboxPath SHARED = new MailboxPath("#shared", null, "shared");
+    private static final MailboxId.Factory MAILBOX_ID_FACTORY = new TestId.Factory();
+
+    @Test
+    public void fromBytesShouldReadWhatToBytesWrote() throws Exception {
+        CacheInvalidation invalidation = new CacheInvalidation(ORIGIN, TIMESTAMP,
+            ImmutableSet.of(INBOX, SHARED), ImmutableSet.<MailboxId>of(TestId.of(1), TestId.of(2)));
+
+        CacheInvalidation deserialized = CacheInvalidation.fromBytes(invalidation.toBytes(), MAILBOX_ID_FACTORY);
+
+        assertThat(deserialized.getOrigin()).isEqualTo(ORIGIN);
+        assertThat(deserialized.getTimestamp()).isEqualTo(TIMESTAMP);
+        assertThat(deserialized.getMailboxPaths()).containsOnly(INBOX, SHARED);
+        assertThat(deserialized.getMailboxIds()).containsOnly(TestId.of(1), TestId.of(2));
+    }
+
+    @Test
+    public void fromBytesShouldReadEmptyInvalidation() throws Exception {
+        CacheInvalidation invalidation = new CacheInvalidation(ORIGIN, TIMESTAMP,
+            ImmutableSet.<MailboxPath>of(), ImmutableSet.<MailboxId>of());
+
+        CacheInvalidation deserialized = CacheInvalidation.fromBytes(invalidation.toBytes(), MAILBOX_ID_FACTORY);
+
+        assertThat(deserialized.getMailboxPaths()).isEmpty();
+        assertThat(deserialized.getMailboxIds()).isEmpty();
+    }
+
+    @Test(expected = IOException.class)
+    public void fromBytesShouldThrowOnUnknownVersion() throws Exception {
+        byte[] serialized = new CacheInvalidation(ORIGIN, TIMESTAMP,
+            ImmutableSet.of(INBOX), ImmutableSet.<MailboxId>of()).toBytes();
+        serialized[0] = 2;
+
+        CacheInvalidation.fromBytes(serialized, MAILBOX_ID_FACTORY);
+    }
+
+    @Test(expected = IOException.class)
+    public void fromBytesShouldThrowOnTruncatedInvalidation() throws Exception {
+        byte[] serialized = new CacheInvalidation(ORIGIN, TIMESTAMP,
+            ImmutableSet.of(INBOX), ImmutableSet.<MailboxId>of(TestId.of(1))).toBytes();
+        byte[] truncated = new byte[serialized.length - 3];
+        System.arraycopy(serialized, 0, truncated, 0, truncated.length);
+
+        CacheInvalidation.fromBytes(truncated, MAILBOX_ID_FACTORY);
+    }
+}
@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.caching.offheap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+    private static final String KEY = "key";
+
+    private FrequencySketch sketch;
+
+    @Before
+    public void setUp() {
+        sketch = new FrequencySketch(1024);
+    }
+
+    @Test
+    public void frequencyShouldBeZeroForUnknownKey() {
+        assertThat(sketch.frequency(KEY)).isEqualTo(0);
+    }
+
+    @Test
+    public void frequencyShouldCountIncrements() {
+        sketch.increment(KEY);
+        sketch.increment(KEY);
+        sketch.increment(KEY);
+
+        assertThat(sketch.frequency(KEY)).isEqualTo(3);
+    }
+
+    @Test
+    public void frequencyShouldSaturateAtFifteen() {
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(KEY);
+        }
+
+        assertThat(sketch.frequency(KEY)).isEqualTo(15);
+    }
+
+    @Test
+    public void frequencyShouldBeHalvedOnceTheSampleIsReached() {
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(KEY);
+        }
+
+        int key = 0;
+        while (sketch.frequency(KEY) == 15 && key < 1000000) {
+            sketch.increment(key++);
+        }
+
+        assertThat(sketch.frequency(KEY)).isEqualTo(7);
+    }
+}
@@ -0,0 +1,211 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.caching.offheap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.InputStream;
+import java.util.Date;
+
+import javax.mail.Flags;
+import javax.mail.util.SharedByteArrayInputStream;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.caching.CachedMessageContent;
+import org.apache.james.mailbox.model.TestId;
+import org.apache.james.mailbox.model.TestMessageId;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+
+public class OffHeapMessageContentCacheTest {
+
+    private static final TestId MAILBOX_ID = TestId.of(1);
+    private static final TestId OTHER_MAILBOX_ID = TestId.of(2);
+    private static final MessageUid UID_1 = MessageUid.of(1);
+    private static final MessageUid UID_2 = MessageUid.of(2);
+    private static final MessageUid UID_3 = MessageUid.of(3);
+    private static final MessageUid UID_4 = MessageUid.of(4);
+    private static final long MOD_SEQ = 36;
+    private static final String HEADERS = "Subject: test\r\n\r\n";
+    private static final String BODY = "body\r\n";
+    private static final int ENTRY_WEIGHT = 128 + HEADERS.length();
+    private static final int MAX_BODY_SIZE = 32;
+
+    private OffHeapMessageContentCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new OffHeapMessageContentCache(3 * ENTRY_WEIGHT, MAX_BODY_SIZE);
+    }
+
+    @Test
+    public void getShouldReturnAbsentWhenNotCached() {
+        assertThat(cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Headers).isPresent()).isFalse();
+    }
+
+    @Test
+    public void getShouldReturnCachedHeaders() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+
+        Optional<CachedMessageContent> content = cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Headers);
+
+        assertThat(content.isPresent()).isTrue();
+        assertThat(asString(content.get().getHeaderContent().get())).isEqualTo(HEADERS);
+        assertThat(content.get().getBodyContent().isPresent()).isFalse();
+    }
+
+    @Test
+    public void getShouldReturnAbsentForBodyWhenOnlyHeadersAreCached() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+
+        assertThat(cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Body).isPresent()).isFalse();
+    }
+
+    @Test
+    public void putShouldCompleteTheEntryOfTheSameModSeq() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Body);
+
+        Optional<CachedMessageContent> content = cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Full);
+
+        assertThat(content.isPresent()).isTrue();
+        assertThat(asString(content.get().getHeaderContent().get())).isEqualTo(HEADERS);
+        assertThat(asString(content.get().getBodyContent().get())).isEqualTo(BODY);
+    }
+
+    @Test
+    public void putShouldNotCacheBodyAboveMaxBodySize() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, Strings.repeat("a", MAX_BODY_SIZE + 1)), FetchType.Body);
+
+        assertThat(cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Body).isPresent()).isFalse();
+        assertThat(cache.contains(MAILBOX_ID)).isFalse();
+    }
+
+    @Test
+    public void getShouldReturnAbsentWhenModSeqChanged() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+
+        assertThat(cache.get(MAILBOX_ID, UID_1, MOD_SEQ + 1, FetchType.Headers).isPresent()).isFalse();
+    }
+
+    @Test
+    public void getShouldDropStaleEntry() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+
+        cache.get(MAILBOX_ID, UID_1, MOD_SEQ + 1, FetchType.Headers);
+
+        assertThat(cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Headers).isPresent()).isFalse();
+        assertThat(cache.getUsedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void invalidateShouldRemoveEntry() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+
+        cache.invalidate(MAILBOX_ID, UID_1);
+
+        assertThat(cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Headers).isPresent()).isFalse();
+        assertThat(cache.getUsedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void containsShouldOnlyReturnTrueForMailboxesWithEntries() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+
+        assertThat(cache.contains(MAILBOX_ID)).isTrue();
+        assertThat(cache.contains(OTHER_MAILBOX_ID)).isFalse();
+    }
+
+    @Test
+    public void containsShouldReturnFalseOnceAllEntriesOfTheMailboxAreRemoved() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+        cache.put(message(MAILBOX_ID, UID_2, MOD_SEQ, BODY), FetchType.Headers);
+
+        cache.invalidate(MAILBOX_ID, UID_1);
+        cache.invalidate(MAILBOX_ID, UID_2);
+
+        assertThat(cache.contains(MAILBOX_ID)).isFalse();
+    }
+
+    @Test
+    public void putShouldEvictLeastRecentlyUsedEntryWhenNewEntryIsMoreFrequent() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+        cache.put(message(MAILBOX_ID, UID_2, MOD_SEQ, BODY), FetchType.Headers);
+        cache.put(message(MAILBOX_ID, UID_3, MOD_SEQ, BODY), FetchType.Headers);
+        cache.get(MAILBOX_ID, UID_4, MOD_SEQ, FetchType.Headers);
+        cache.get(MAILBOX_ID, UID_4, MOD_SEQ, FetchType.Headers);
+
+        cache.put(message(MAILBOX_ID, UID_4, MOD_SEQ, BODY), FetchType.Headers);
+
+        assertThat(cache.get(MAILBOX_ID, UID_4, MOD_SEQ, FetchType.Headers).isPresent()).isTrue();
+        assertThat(cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Headers).isPresent()).isFalse();
+        assertThat(cache.get(MAILBOX_ID, UID_2, MOD_SEQ, FetchType.Headers).isPresent()).isTrue();
+        assertThat(cache.stats().evictionCount()).isEqualTo(1);
+        assertThat(cache.getUsedBytes()).isEqualTo(3 * ENTRY_WEIGHT);
+    }
+
+    @Test
+    public void putShouldNotAdmitEntryLessFrequentThanTheEvictionCandidate() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+        cache.put(message(MAILBOX_ID, UID_2, MOD_SEQ, BODY), FetchType.Headers);
+        cache.put(message(MAILBOX_ID, UID_3, MOD_SEQ, BODY), FetchType.Headers);
+        cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Headers);
+        cache.get(MAILBOX_ID, UID_2, MOD_SEQ, FetchType.Headers);
+        cache.get(MAILBOX_ID, UID_3, MOD_SEQ, FetchType.Headers);
+
+        cache.put(message(MAILBOX_ID, UID_4, MOD_SEQ, BODY), FetchType.Headers);
+
+        assertThat(cache.get(MAILBOX_ID, UID_4, MOD_SEQ, FetchType.Headers).isPresent()).isFalse();
+        assertThat(cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Headers).isPresent()).isTrue();
+        assertThat(cache.stats().evictionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void statsShouldCountHitsAndMisses() throws Exception {
+        cache.put(message(MAILBOX_ID, UID_1, MOD_SEQ, BODY), FetchType.Headers);
+
+        cache.get(MAILBOX_ID, UID_1, MOD_SEQ, FetchType.Headers);
+        cache.get(MAILBOX_ID, UID_2, MOD_SEQ, FetchType.Headers);
+
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+        assertThat(cache.stats().missCount()).isEqualTo(1);
+    }
+
+    private SimpleMailboxMessage message(TestId mailboxId, MessageUid uid, long modSeq, String body) {
+        byte[] content = (HEADERS + body).getBytes(Charsets.US_ASCII);
+        SimpleMailboxMessage message = new SimpleMailboxMessage(TestMessageId.of(uid.asLong()), new Date(), content.length,
+            HEADERS.length(), new SharedByteArrayInputStream(content), new Flags(), new PropertyBuilder(), mailboxId);
+        message.setUid(uid);
+        message.setModSeq(modSeq);
+        return message;
+    }
+
+    private String asString(InputStream inputStream) throws Exception {
+        return new String(ByteStreams.toByteArray(inputStream), Charsets.US_ASCII);
+    }
+}
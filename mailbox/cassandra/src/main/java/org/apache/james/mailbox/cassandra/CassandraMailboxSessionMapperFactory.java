@@ -25,6 +25,7 @@ import javax.inject.Named;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.cassandra.mail.CassandraAnnotationMapper;
 import org.apache.james.mailbox.cassandra.mail.CassandraApplicableFlagDAO;
+import org.apache.james.mailbox.cassandra.mail.CassandraBlobsDAO;
 import org.apache.james.mailbox.cassandra.mail.CassandraAttachmentMapper;
 import org.apache.james.mailbox.cassandra.mail.CassandraFirstUnseenDAO;
 import org.apache.james.mailbox.cassandra.mail.CassandraIndexTableHandler;
@@ -38,6 +39,8 @@ import org.apache.james.mailbox.cassandra.mail.CassandraMessageIdDAO;
 import org.apache.james.mailbox.cassandra.mail.CassandraMessageIdMapper;
 import org.apache.james.mailbox.cassandra.mail.CassandraMessageIdToImapUidDAO;
 import org.apache.james.mailbox.cassandra.mail.CassandraMessageMapper;
+import org.apache.james.mailbox.cassandra.mail.CassandraModSeqIndexDAO;
+import org.apache.james.mailbox.cassandra.mail.CassandraModSeqIndexMigration;
 import org.apache.james.mailbox.cassandra.mail.CassandraModSeqProvider;
 import org.apache.james.mailbox.cassandra.mail.CassandraUidProvider;
 import org.apache.james.mailbox.cassandra.mail.*;
@@ -75,6 +78,9 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
     private final CassandraFirstUnseenDAO firstUnseenDAO;
     private final CassandraApplicableFlagDAO applicableFlagDAO;
     private final CassandraDeletedMessageDAO deletedMessageDAO;
+    private final CassandraModSeqIndexDAO modSeqIndexDAO;
+    private final CassandraModSeqIndexMigration modSeqIndexMigration;
+    private final CassandraBlobsDAO blobsDAO;
     private int maxRetry;
 
     @Inject
@@ -82,7 +88,8 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
                                                 CassandraMessageDAO messageDAO, CassandraMessageIdDAO messageIdDAO, CassandraMessageIdToImapUidDAO imapUidDAO,
                                                 CassandraMailboxCounterDAO mailboxCounterDAO, CassandraMailboxRecentsDAO mailboxRecentsDAO, CassandraMailboxDAO mailboxDAO,
                                                 CassandraMailboxPathDAO mailboxPathDAO, CassandraFirstUnseenDAO firstUnseenDAO, CassandraApplicableFlagDAO applicableFlagDAO,
-                                                CassandraDeletedMessageDAO deletedMessageDAO, @Named(CassandraMailboxDAO.MAX_ACL_RETRY) Integer maxRetry) {
+                                                CassandraDeletedMessageDAO deletedMessageDAO, CassandraModSeqIndexDAO modSeqIndexDAO, CassandraBlobsDAO blobsDAO,
+                                                @Named(CassandraMailboxDAO.MAX_ACL_RETRY) Integer maxRetry) {
         this.uidProvider = uidProvider;
         this.modSeqProvider = modSeqProvider;
         this.session = session;
@@ -95,13 +102,17 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
         this.mailboxPathDAO = mailboxPathDAO;
         this.firstUnseenDAO = firstUnseenDAO;
         this.deletedMessageDAO = deletedMessageDAO;
+        this.modSeqIndexDAO = modSeqIndexDAO;
         this.applicableFlagDAO = applicableFlagDAO;
+        this.blobsDAO = blobsDAO;
         this.indexTableHandler = new CassandraIndexTableHandler(
             mailboxRecentsDAO,
             mailboxCounterDAO,
             firstUnseenDAO,
             applicableFlagDAO,
-            deletedMessageDAO);
+            deletedMessageDAO,
+            modSeqIndexDAO);
+        this.modSeqIndexMigration = new CassandraModSeqIndexMigration(mailboxDAO, messageIdDAO, modSeqIndexDAO);
         this.maxRetry = maxRetry;
     }
 
@@ -118,10 +129,12 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
         CassandraMailboxPathDAO mailboxPathDAO,
         CassandraFirstUnseenDAO firstUnseenDAO,
         CassandraApplicableFlagDAO applicableFlagDAO,
-        CassandraDeletedMessageDAO deletedMesageDAO) {
+        CassandraDeletedMessageDAO deletedMesageDAO,
+        CassandraModSeqIndexDAO modSeqIndexDAO) {
 
         this(uidProvider, modSeqProvider, session, messageDAO, messageIdDAO, imapUidDAO, mailboxCounterDAO,
-             mailboxRecentsDAO, mailboxDAO, mailboxPathDAO, firstUnseenDAO, applicableFlagDAO, deletedMesageDAO, DEFAULT_MAX_RETRY);
+             mailboxRecentsDAO, mailboxDAO, mailboxPathDAO, firstUnseenDAO, applicableFlagDAO, deletedMesageDAO, modSeqIndexDAO,
+             new CassandraBlobsDAO(session), DEFAULT_MAX_RETRY);
     }
 
     @Override
@@ -140,7 +153,9 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
                                           applicableFlagDAO,
                                           indexTableHandler,
                                           firstUnseenDAO,
-                                          deletedMessageDAO);
+                                          deletedMessageDAO,
+                                          modSeqIndexDAO,
+                                          modSeqIndexMigration);
     }
 
     @Override
@@ -157,7 +172,7 @@ public class CassandraMailboxSessionMapperFactory extends MailboxSessionMapperFa
 
     @Override
     public AttachmentMapper createAttachmentMapper(MailboxSession mailboxSession) {
-        return new CassandraAttachmentMapper(session);
+        return new CassandraAttachmentMapper(session, blobsDAO);
     }
 
     @Override
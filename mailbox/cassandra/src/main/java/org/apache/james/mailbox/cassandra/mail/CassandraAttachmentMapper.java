@@ -23,6 +23,7 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.in;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.apache.james.mailbox.cassandra.table.CassandraAttachmentTable.BLOB_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraAttachmentTable.FIELDS;
 import static org.apache.james.mailbox.cassandra.table.CassandraAttachmentTable.ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraAttachmentTable.PAYLOAD;
@@ -31,18 +32,19 @@ import static org.apache.james.mailbox.cassandra.table.CassandraAttachmentTable.
 import static org.apache.james.mailbox.cassandra.table.CassandraAttachmentTable.TYPE;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.CassandraUtils;
 import org.apache.james.mailbox.exception.AttachmentNotFoundException;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.Attachment;
 import org.apache.james.mailbox.model.AttachmentId;
 import org.apache.james.mailbox.store.mail.AttachmentMapper;
+import org.apache.james.util.CompletableFutureUtil;
 
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
@@ -52,14 +54,21 @@ import com.github.fge.lambdas.ThrownByLambdaException;
 import com.github.steveash.guavate.Guavate;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableList.Builder;
 
 public class CassandraAttachmentMapper implements AttachmentMapper {
 
+    private static final String ATTACHMENT_OWNER_PREFIX = "attachment:";
+
     private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final CassandraBlobsDAO blobsDAO;
 
     public CassandraAttachmentMapper(Session session) {
+        this(session, new CassandraBlobsDAO(session));
+    }
+
+    public CassandraAttachmentMapper(Session session, CassandraBlobsDAO blobsDAO) {
         this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.blobsDAO = blobsDAO;
     }
 
     @Override
@@ -78,17 +87,29 @@ public class CassandraAttachmentMapper implements AttachmentMapper {
             select(FIELDS)
                 .from(TABLE_NAME)
                 .where(eq(ID, attachmentId.getId())))
-            .thenApply(optional -> optional.map(this::attachment))
+            .thenCompose(optional -> optional
+                .map(row -> attachment(row).thenApply(Optional::of))
+                .orElse(CompletableFuture.completedFuture(Optional.empty())))
             .join()
             .orElseThrow(() -> new AttachmentNotFoundException(attachmentId.getId()));
     }
 
-    private Attachment attachment(Row row) {
-        return Attachment.builder()
+    private CompletableFuture<Attachment> attachment(Row row) {
+        return payload(row)
+            .thenApply(bytes -> Attachment.builder()
                 .attachmentId(AttachmentId.from(row.getString(ID)))
-                .bytes(row.getBytes(PAYLOAD).array())
+                .bytes(bytes)
                 .type(row.getString(TYPE))
-                .build();
+                .build());
+    }
+
+    private CompletableFuture<byte[]> payload(Row row) {
+        String blobId = row.getString(BLOB_ID);
+        if (blobId == null) {
+            return CompletableFuture.completedFuture(row.getBytes(PAYLOAD).array());
+        }
+        return blobsDAO.read(BlobId.from(blobId))
+            .thenApply(bytes -> bytes.orElseThrow(() -> new IllegalStateException("Missing blob " + blobId + " for attachment " + row.getString(ID))));
     }
 
     @Override
@@ -108,13 +129,13 @@ public class CassandraAttachmentMapper implements AttachmentMapper {
             select(FIELDS)
                 .from(TABLE_NAME)
                 .where(in(ID, ids)))
-            .thenApply(this::attachments);
+            .thenCompose(this::attachments);
     }
 
-    private List<Attachment> attachments(ResultSet resultSet) {
-        Builder<Attachment> builder = ImmutableList.<Attachment> builder();
-        resultSet.forEach(row -> builder.add(attachment(row)));
-        return builder.build();
+    private CompletableFuture<List<Attachment>> attachments(ResultSet resultSet) {
+        return CompletableFutureUtil.allOf(CassandraUtils.convertToStream(resultSet)
+                .map(this::attachment))
+            .thenApply(attachments -> attachments.collect(Guavate.toImmutableList()));
     }
 
     @Override
@@ -127,13 +148,14 @@ public class CassandraAttachmentMapper implements AttachmentMapper {
     }
 
     private CompletableFuture<Void> asyncStoreAttachment(Attachment attachment) throws IOException {
-        return cassandraAsyncExecutor.executeVoid(
-            insertInto(TABLE_NAME)
-                .value(ID, attachment.getAttachmentId().getId())
-                .value(PAYLOAD, ByteBuffer.wrap(IOUtils.toByteArray(attachment.getStream())))
-                .value(TYPE, attachment.getType())
-                .value(SIZE, attachment.getSize())
-        );
+        return blobsDAO.save(attachment.getStream(), ATTACHMENT_OWNER_PREFIX + attachment.getAttachmentId().getId())
+            .thenCompose(blobId -> cassandraAsyncExecutor.executeVoid(
+                insertInto(TABLE_NAME)
+                    .value(ID, attachment.getAttachmentId().getId())
+                    .value(BLOB_ID, blobId.getId())
+                    .value(TYPE, attachment.getType())
+                    .value(SIZE, attachment.getSize())
+            ));
     }
 
     @Override
@@ -0,0 +1,367 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.addAll;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.removeAll;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.CHUNKS;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.CHUNK_SIZE;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.SIZE;
+import static org.apache.james.mailbox.cassandra.table.CassandraBlobTable.TABLE_NAME;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import javax.inject.Inject;
+
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.CassandraConstants;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable.BlobParts;
+import org.apache.james.mailbox.cassandra.table.CassandraBlobTable.BlobReferences;
+import org.apache.james.util.CompletableFutureUtil;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.github.steveash.guavate.Guavate;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Ints;
+
+/**
+ * Stores binary content as a list of fixed size chunks.
+ *
+ * Content is read and written chunk by chunk, and a range of a blob can be read without loading the chunks outside of
+ * this range.
+ *
+ * Blobs with the same content are shared between their owners, for instance the messages they are the header or the
+ * body of. The owners of a content are kept in the {@link BlobReferences} table, keyed by the hash of the content,
+ * along with the generation of the rows holding it. This table is only updated with lightweight transactions:
+ * <ul>
+ *     <li>{@link #save(InputStream, String)} writes the content under a new generation, then either creates the
+ *     reference row with this generation, or adds its owner to the existing one and drops its own rows.</li>
+ *     <li>{@link #delete(BlobId, String)} removes its owner, and deletes the reference row when it has no owner left.
+ *     Only then are the rows of this generation deleted.</li>
+ * </ul>
+ * As a generation is never referenced again once its reference row is deleted, saves and deletions of the same
+ * content do not depend on client clocks. Adding or removing an owner twice has no effect, so both operations can be
+ * retried.
+ */
+public class CassandraBlobsDAO {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_CHUNKS_WRITTEN_CONCURRENTLY = 4;
+    private static final int MAX_REFERENCE_RETRIES = 10;
+    private static final String GENERATION_SEPARATOR = "_";
+
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final PreparedStatement insert;
+    private final PreparedStatement insertPart;
+    private final PreparedStatement select;
+    private final PreparedStatement selectPart;
+    private final PreparedStatement delete;
+    private final PreparedStatement deletePart;
+    private final PreparedStatement insertReference;
+    private final PreparedStatement addOwner;
+    private final PreparedStatement removeOwner;
+    private final PreparedStatement deleteUnownedReference;
+    private final int chunkSize;
+
+    @Inject
+    public CassandraBlobsDAO(Session session) {
+        this(session, DEFAULT_CHUNK_SIZE);
+    }
+
+    @VisibleForTesting
+    CassandraBlobsDAO(Session session, int chunkSize) {
+        Preconditions.checkArgument(chunkSize > 0, "'chunkSize' should be strictly positive");
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.chunkSize = chunkSize;
+        this.insert = session.prepare(insertInto(TABLE_NAME)
+            .value(ID, bindMarker(ID))
+            .value(CHUNKS, bindMarker(CHUNKS))
+            .value(SIZE, bindMarker(SIZE))
+            .value(CHUNK_SIZE, bindMarker(CHUNK_SIZE)));
+        this.insertPart = session.prepare(insertInto(BlobParts.TABLE_NAME)
+            .value(BlobParts.ID, bindMarker(BlobParts.ID))
+            .value(BlobParts.DATA, bindMarker(BlobParts.DATA)));
+        this.select = session.prepare(select()
+            .from(TABLE_NAME)
+            .where(eq(ID, bindMarker(ID))));
+        this.selectPart = session.prepare(select()
+            .from(BlobParts.TABLE_NAME)
+            .where(eq(BlobParts.ID, bindMarker(BlobParts.ID))));
+        this.delete = session.prepare(QueryBuilder.delete()
+            .from(TABLE_NAME)
+            .where(eq(ID, bindMarker(ID))));
+        this.deletePart = session.prepare(QueryBuilder.delete()
+            .from(BlobParts.TABLE_NAME)
+            .where(eq(BlobParts.ID, bindMarker(BlobParts.ID))));
+        this.insertReference = session.prepare(insertInto(BlobReferences.TABLE_NAME)
+            .value(BlobReferences.ID, bindMarker(BlobReferences.ID))
+            .value(BlobReferences.GENERATION, bindMarker(BlobReferences.GENERATION))
+            .value(BlobReferences.OWNERS, bindMarker(BlobReferences.OWNERS))
+            .ifNotExists());
+        this.addOwner = session.prepare(update(BlobReferences.TABLE_NAME)
+            .with(addAll(BlobReferences.OWNERS, bindMarker(BlobReferences.OWNERS)))
+            .where(eq(BlobReferences.ID, bindMarker(BlobReferences.ID)))
+            .onlyIf(eq(BlobReferences.GENERATION, bindMarker(BlobReferences.GENERATION))));
+        this.removeOwner = session.prepare(update(BlobReferences.TABLE_NAME)
+            .with(removeAll(BlobReferences.OWNERS, bindMarker(BlobReferences.OWNERS)))
+            .where(eq(BlobReferences.ID, bindMarker(BlobReferences.ID)))
+            .onlyIf(eq(BlobReferences.GENERATION, bindMarker(BlobReferences.GENERATION))));
+        this.deleteUnownedReference = session.prepare(QueryBuilder.delete()
+            .from(BlobReferences.TABLE_NAME)
+            .where(eq(BlobReferences.ID, bindMarker(BlobReferences.ID)))
+            .onlyIf(eq(BlobReferences.GENERATION, bindMarker(BlobReferences.GENERATION)))
+            .and(eq(BlobReferences.OWNERS, null)));
+    }
+
+    /**
+     * Reads <code>content</code> chunk by chunk and stores it on behalf of <code>owner</code>.
+     *
+     * At most {@link #MAX_CHUNKS_WRITTEN_CONCURRENTLY} chunks are held in memory at the same time. The blob is only
+     * referenced once all its chunks are written.
+     *
+     * The owner is to be removed with {@link #delete(BlobId, String)}. Saving the same content again for the same
+     * owner has no effect on its references.
+     */
+    public CompletableFuture<BlobId> save(InputStream content, String owner) throws IOException {
+        UUID generation = UUID.randomUUID();
+        HashingInputStream hashingStream = new HashingInputStream(Hashing.sha256(), content);
+        List<String> chunkIds = new ArrayList<>();
+        LinkedList<CompletableFuture<Void>> pendingWrites = new LinkedList<>();
+        long size = 0;
+        byte[] buffer = new byte[chunkSize];
+        int read;
+        while ((read = ByteStreams.read(hashingStream, buffer, 0, chunkSize)) > 0) {
+            byte[] chunk = Arrays.copyOf(buffer, read);
+            String chunkId = generation + GENERATION_SEPARATOR + chunkIds.size();
+            chunkIds.add(chunkId);
+            size += read;
+            if (pendingWrites.size() >= MAX_CHUNKS_WRITTEN_CONCURRENTLY) {
+                pendingWrites.removeFirst().join();
+            }
+            pendingWrites.add(cassandraAsyncExecutor.executeVoid(insertPart.bind()
+                .setString(BlobParts.ID, chunkId)
+                .setBytes(BlobParts.DATA, ByteBuffer.wrap(chunk))));
+        }
+        String hash = hashingStream.hash().toString();
+        BlobId blobId = blobId(hash, generation);
+        long blobSize = size;
+        return CompletableFuture.allOf(pendingWrites.toArray(new CompletableFuture[pendingWrites.size()]))
+            .thenCompose(any -> cassandraAsyncExecutor.executeVoid(insert.bind()
+                .setString(ID, blobId.getId())
+                .setList(CHUNKS, chunkIds)
+                .setLong(SIZE, blobSize)
+                .setInt(CHUNK_SIZE, chunkSize)))
+            .thenCompose(any -> addReference(hash, generation, owner, MAX_REFERENCE_RETRIES))
+            .thenCompose(referencedGeneration -> {
+                if (referencedGeneration.equals(generation)) {
+                    return CompletableFuture.completedFuture(blobId);
+                }
+                return deleteRows(blobId.getId(), chunkIds)
+                    .thenApply(any -> blobId(hash, referencedGeneration));
+            });
+    }
+
+    /**
+     * @return the generation the owner was added to: <code>generation</code> when the content was not referenced yet,
+     * the generation of the existing reference otherwise
+     */
+    private CompletableFuture<UUID> addReference(String hash, UUID generation, String owner, int remainingRetries) {
+        return cassandraAsyncExecutor.executeSingleRow(insertReference.bind()
+                .setString(BlobReferences.ID, hash)
+                .setUUID(BlobReferences.GENERATION, generation)
+                .setSet(BlobReferences.OWNERS, ImmutableSet.of(owner)))
+            .thenApply(Optional::get)
+            .thenCompose(row -> {
+                if (row.getBool(CassandraConstants.LIGHTWEIGHT_TRANSACTION_APPLIED)) {
+                    return CompletableFuture.completedFuture(generation);
+                }
+                UUID existingGeneration = row.getUUID(BlobReferences.GENERATION);
+                return cassandraAsyncExecutor.executeReturnApplied(addOwner.bind()
+                        .setSet(BlobReferences.OWNERS, ImmutableSet.of(owner))
+                        .setString(BlobReferences.ID, hash)
+                        .setUUID(BlobReferences.GENERATION, existingGeneration))
+                    .thenCompose(applied -> {
+                        if (applied) {
+                            return CompletableFuture.completedFuture(existingGeneration);
+                        }
+                        if (remainingRetries <= 0) {
+                            throw new IllegalStateException("Can not reference blob " + hash + " for " + owner);
+                        }
+                        return addReference(hash, generation, owner, remainingRetries - 1);
+                    });
+            });
+    }
+
+    public CompletableFuture<Optional<byte[]>> read(BlobId blobId) {
+        return cassandraAsyncExecutor.executeSingleRow(select.bind().setString(ID, blobId.getId()))
+            .thenCompose(row -> row
+                .map(this::readAllChunks)
+                .map(future -> future.thenApply(Optional::of))
+                .orElse(CompletableFuture.completedFuture(Optional.empty())));
+    }
+
+    /**
+     * Reads at most <code>length</code> bytes of a blob, starting at <code>offset</code>. Only the chunks
+     * overlapping this range are read.
+     */
+    public CompletableFuture<Optional<byte[]>> read(BlobId blobId, long offset, long length) {
+        Preconditions.checkArgument(offset >= 0, "'offset' should be positive");
+        Preconditions.checkArgument(length >= 0, "'length' should be positive");
+        return cassandraAsyncExecutor.executeSingleRow(select.bind().setString(ID, blobId.getId()))
+            .thenCompose(row -> row
+                .map(value -> readRange(value, offset, length))
+                .map(future -> future.thenApply(Optional::of))
+                .orElse(CompletableFuture.completedFuture(Optional.empty())));
+    }
+
+    /**
+     * Removes <code>owner</code> from the owners of a blob, added by {@link #save(InputStream, String)}. The blob and
+     * its chunks are deleted once it has no owner left.
+     *
+     * The deletion of an unowned reference is attempted even when the owner was already removed, so that retrying an
+     * interrupted deletion completes it.
+     */
+    public CompletableFuture<Void> delete(BlobId blobId, String owner) {
+        Optional<UUID> generation = generation(blobId);
+        if (!generation.isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String hash = hash(blobId);
+        return cassandraAsyncExecutor.executeReturnApplied(removeOwner.bind()
+                .setSet(BlobReferences.OWNERS, ImmutableSet.of(owner))
+                .setString(BlobReferences.ID, hash)
+                .setUUID(BlobReferences.GENERATION, generation.get()))
+            .thenCompose(any -> cassandraAsyncExecutor.executeReturnApplied(deleteUnownedReference.bind()
+                .setString(BlobReferences.ID, hash)
+                .setUUID(BlobReferences.GENERATION, generation.get())))
+            .thenCompose(unowned -> {
+                if (!unowned) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return deleteRows(blobId);
+            });
+    }
+
+    private CompletableFuture<Void> deleteRows(BlobId blobId) {
+        return cassandraAsyncExecutor.executeSingleRow(select.bind().setString(ID, blobId.getId()))
+            .thenCompose(row -> row
+                .map(value -> deleteRows(blobId.getId(), value.getList(CHUNKS, String.class)))
+                .orElse(CompletableFuture.completedFuture(null)));
+    }
+
+    /**
+     * Chunks are deleted before the blob row listing them, so that an interrupted deletion can be completed.
+     */
+    private CompletableFuture<Void> deleteRows(String id, List<String> chunkIds) {
+        return CompletableFuture.allOf(chunkIds.stream()
+                .map(chunkId -> cassandraAsyncExecutor.executeVoid(deletePart.bind().setString(BlobParts.ID, chunkId)))
+                .toArray(CompletableFuture[]::new))
+            .thenCompose(any -> cassandraAsyncExecutor.executeVoid(delete.bind().setString(ID, id)));
+    }
+
+    private BlobId blobId(String hash, UUID generation) {
+        return BlobId.from(hash + GENERATION_SEPARATOR + generation);
+    }
+
+    private String hash(BlobId blobId) {
+        return blobId.getId().substring(0, blobId.getId().indexOf(GENERATION_SEPARATOR));
+    }
+
+    private Optional<UUID> generation(BlobId blobId) {
+        int separator = blobId.getId().indexOf(GENERATION_SEPARATOR);
+        if (separator < 0) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(UUID.fromString(blobId.getId().substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private CompletableFuture<byte[]> readAllChunks(Row row) {
+        return readChunks(row.getList(CHUNKS, String.class));
+    }
+
+    private CompletableFuture<byte[]> readRange(Row row, long offset, long length) {
+        long end = Math.min(row.getLong(SIZE), offset + length);
+        if (offset >= end) {
+            return CompletableFuture.completedFuture(new byte[0]);
+        }
+        int storedChunkSize = row.getInt(CHUNK_SIZE);
+        int firstChunk = Ints.checkedCast(offset / storedChunkSize);
+        int lastChunk = Ints.checkedCast((end - 1) / storedChunkSize);
+        int start = Ints.checkedCast(offset - (long) firstChunk * storedChunkSize);
+        int rangeLength = Ints.checkedCast(end - offset);
+        return readChunks(row.getList(CHUNKS, String.class).subList(firstChunk, lastChunk + 1))
+            .thenApply(bytes -> Arrays.copyOfRange(bytes, start, start + rangeLength));
+    }
+
+    private CompletableFuture<byte[]> readChunks(List<String> chunkIds) {
+        return CompletableFutureUtil.allOf(chunkIds.stream().map(this::readChunk))
+            .thenApply(chunks -> concat(chunks.collect(Guavate.toImmutableList())));
+    }
+
+    private CompletableFuture<byte[]> readChunk(String chunkId) {
+        return cassandraAsyncExecutor.executeSingleRow(selectPart.bind().setString(BlobParts.ID, chunkId))
+            .thenApply(row -> row
+                .map(value -> toArray(value.getBytes(BlobParts.DATA)))
+                .orElseThrow(() -> new IllegalStateException("Missing blob part " + chunkId)));
+    }
+
+    private byte[] toArray(ByteBuffer byteBuffer) {
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        return bytes;
+    }
+
+    private byte[] concat(List<byte[]> chunks) {
+        int size = chunks.stream().mapToInt(chunk -> chunk.length).sum();
+        byte[] result = new byte[size];
+        int position = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, result, position, chunk.length);
+            position += chunk.length;
+        }
+        return result;
+    }
+}
@@ -37,18 +37,21 @@ public class CassandraIndexTableHandler {
     private final CassandraFirstUnseenDAO firstUnseenDAO;
     private final CassandraApplicableFlagDAO applicableFlagDAO;
     private final CassandraDeletedMessageDAO deletedMessageDAO;
+    private final CassandraModSeqIndexDAO modSeqIndexDAO;
 
     @Inject
     public CassandraIndexTableHandler(CassandraMailboxRecentsDAO mailboxRecentDAO,
                                       CassandraMailboxCounterDAO mailboxCounterDAO,
                                       CassandraFirstUnseenDAO firstUnseenDAO,
                                       CassandraApplicableFlagDAO applicableFlagDAO,
-                                      CassandraDeletedMessageDAO deletedMessageDAO) {
+                                      CassandraDeletedMessageDAO deletedMessageDAO,
+                                      CassandraModSeqIndexDAO modSeqIndexDAO) {
         this.mailboxRecentDAO = mailboxRecentDAO;
         this.mailboxCounterDAO = mailboxCounterDAO;
         this.firstUnseenDAO = firstUnseenDAO;
         this.applicableFlagDAO = applicableFlagDAO;
         this.deletedMessageDAO = deletedMessageDAO;
+        this.modSeqIndexDAO = modSeqIndexDAO;
     }
 
     public CompletableFuture<Void> updateIndexOnDelete(ComposedMessageIdWithMetaData composedMessageIdWithMetaData, CassandraId mailboxId) {
@@ -58,6 +61,7 @@ public class CassandraIndexTableHandler {
             mailboxRecentDAO.removeFromRecent(mailboxId, composedMessageIdWithMetaData.getComposedMessageId().getUid()),
             mailboxCounterDAO.decrementCount(mailboxId),
             deletedMessageDAO.removeDeleted(mailboxId, uid),
+            modSeqIndexDAO.remove(mailboxId, composedMessageIdWithMetaData.getModSeq(), uid),
             decrementUnseenOnDelete(mailboxId, composedMessageIdWithMetaData.getFlags()));
     }
 
@@ -70,6 +74,7 @@ public class CassandraIndexTableHandler {
             addRecentOnSave(mailboxId, message),
             incrementUnseenOnSave(mailboxId, flags),
             mailboxCounterDAO.incrementCount(mailboxId),
+            modSeqIndexDAO.add(mailboxId, message.getModSeq(), message.getUid()),
             applicableFlagDAO.updateApplicableFlags(mailboxId, flags));
     }
 
@@ -78,7 +83,8 @@ public class CassandraIndexTableHandler {
                                        manageRecentOnFlagsUpdate(mailboxId, updatedFlags),
                                        updateFirstUnseenOnFlagsUpdate(mailboxId, updatedFlags),
                                        applicableFlagDAO.updateApplicableFlags(mailboxId, updatedFlags.getNewFlags()),
-                                       updateDeletedOnFlagsUpdate(mailboxId, updatedFlags));
+                                       updateDeletedOnFlagsUpdate(mailboxId, updatedFlags),
+                                       modSeqIndexDAO.add(mailboxId, updatedFlags.getModSeq(), updatedFlags.getUid()));
     }
 
     private CompletableFuture<Void> updateDeletedOnFlagsUpdate(CassandraId mailboxId, UpdatedFlags updatedFlags) {
@@ -24,15 +24,19 @@ import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.in;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.set;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.update;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageIds.MESSAGE_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.ATTACHMENTS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_BLOB_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_OCTECTS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.BODY_START_OCTET;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FIELDS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.FULL_CONTENT_OCTETS;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADERS;
+import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_BLOB_ID;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.HEADER_CONTENT;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.INTERNAL_DATE;
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.METADATA;
@@ -41,8 +45,8 @@ import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TAB
 import static org.apache.james.mailbox.cassandra.table.CassandraMessageTable.TEXTUAL_LINE_COUNT;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
@@ -74,6 +78,7 @@ import org.apache.james.mailbox.model.MessageAttachment;
 import org.apache.james.mailbox.model.MessageId;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.Property;
 import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleProperty;
@@ -96,8 +101,8 @@ import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableListMultimap;
-import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
 
 public class CassandraMessageDAO {
 
@@ -107,14 +112,27 @@ public class CassandraMessageDAO {
     private final Factory messageIdFactory;
     private final PreparedStatement insert;
     private final PreparedStatement delete;
+    private final PreparedStatement updateProperties;
+    private final PreparedStatement selectBody;
+    private final PreparedStatement selectBlobIds;
+    private final CassandraBlobsDAO blobsDAO;
 
-    @Inject
     public CassandraMessageDAO(Session session, CassandraTypesProvider typesProvider, CassandraMessageId.Factory messageIdFactory) {
+        this(session, typesProvider, messageIdFactory, new CassandraBlobsDAO(session));
+    }
+
+    @Inject
+    public CassandraMessageDAO(Session session, CassandraTypesProvider typesProvider, CassandraMessageId.Factory messageIdFactory,
+                               CassandraBlobsDAO blobsDAO) {
         this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.blobsDAO = blobsDAO;
         this.typesProvider = typesProvider;
         this.messageIdFactory = messageIdFactory;
         this.insert = prepareInsert(session);
         this.delete = prepareDelete(session);
+        this.updateProperties = prepareUpdateProperties(session);
+        this.selectBody = prepareSelectBody(session);
+        this.selectBlobIds = prepareSelectBlobIds(session);
     }
 
     private PreparedStatement prepareInsert(Session session) {
@@ -124,48 +142,82 @@ public class CassandraMessageDAO {
                 .value(BODY_START_OCTET, bindMarker(BODY_START_OCTET))
                 .value(FULL_CONTENT_OCTETS, bindMarker(FULL_CONTENT_OCTETS))
                 .value(BODY_OCTECTS, bindMarker(BODY_OCTECTS))
-                .value(BODY_CONTENT, bindMarker(BODY_CONTENT))
-                .value(HEADER_CONTENT, bindMarker(HEADER_CONTENT))
+                .value(BODY_BLOB_ID, bindMarker(BODY_BLOB_ID))
+                .value(HEADER_BLOB_ID, bindMarker(HEADER_BLOB_ID))
                 .value(PROPERTIES, bindMarker(PROPERTIES))
                 .value(TEXTUAL_LINE_COUNT, bindMarker(TEXTUAL_LINE_COUNT))
                 .value(ATTACHMENTS, bindMarker(ATTACHMENTS)));
     }
 
+    private PreparedStatement prepareUpdateProperties(Session session) {
+        return session.prepare(update(TABLE_NAME)
+                .with(set(PROPERTIES, bindMarker(PROPERTIES)))
+                .where(eq(MESSAGE_ID, bindMarker(MESSAGE_ID))));
+    }
+
+    private PreparedStatement prepareSelectBody(Session session) {
+        return session.prepare(select(MESSAGE_ID, BODY_BLOB_ID, BODY_CONTENT)
+                .from(TABLE_NAME)
+                .where(eq(MESSAGE_ID, bindMarker(MESSAGE_ID))));
+    }
+
+    private PreparedStatement prepareSelectBlobIds(Session session) {
+        return session.prepare(select(HEADER_BLOB_ID, BODY_BLOB_ID)
+                .from(TABLE_NAME)
+                .where(eq(MESSAGE_ID, bindMarker(MESSAGE_ID))));
+    }
+
     private PreparedStatement prepareDelete(Session session) {
         return session.prepare(QueryBuilder.delete()
                 .from(TABLE_NAME)
                 .where(eq(MESSAGE_ID, bindMarker(MESSAGE_ID))));
     }
 
+    public CompletableFuture<Void> updateProperties(CassandraMessageId messageId, List<Property> properties) {
+        return cassandraAsyncExecutor.executeVoid(updateProperties.bind()
+            .setUUID(MESSAGE_ID, messageId.get())
+            .setList(PROPERTIES, toUDTs(properties)));
+    }
+
+    private List<UDTValue> toUDTs(List<Property> properties) {
+        return properties.stream()
+            .map(x -> typesProvider.getDefinedUserType(PROPERTIES)
+                .newValue()
+                .setString(Properties.NAMESPACE, x.getNamespace())
+                .setString(Properties.NAME, x.getLocalName())
+                .setString(Properties.VALUE, x.getValue()))
+            .collect(Collectors.toList());
+    }
+
     public CompletableFuture<Void> save(MailboxMessage message) throws MailboxException {
         try {
-            CassandraMessageId messageId = (CassandraMessageId) message.getMessageId();
-            BoundStatement boundStatement = insert.bind()
-                .setUUID(MESSAGE_ID, messageId.get())
-                .setDate(INTERNAL_DATE, message.getInternalDate())
-                .setInt(BODY_START_OCTET, (int) (message.getFullContentOctets() - message.getBodyOctets()))
-                .setLong(FULL_CONTENT_OCTETS, message.getFullContentOctets())
-                .setLong(BODY_OCTECTS, message.getBodyOctets())
-                .setBytes(BODY_CONTENT, toByteBuffer(message.getBodyContent()))
-                .setBytes(HEADER_CONTENT, toByteBuffer(message.getHeaderContent()))
-                .setList(PROPERTIES, message.getProperties().stream()
-                    .map(x -> typesProvider.getDefinedUserType(PROPERTIES)
-                        .newValue()
-                        .setString(Properties.NAMESPACE, x.getNamespace())
-                        .setString(Properties.NAME, x.getLocalName())
-                        .setString(Properties.VALUE, x.getValue()))
-                    .collect(Collectors.toList()))
-                .setList(ATTACHMENTS, message.getAttachments().stream()
-                    .map(this::toUDT)
-                    .collect(Collectors.toList()));
-
-            return cassandraAsyncExecutor.executeVoid(setTextualLineCount(boundStatement, message.getTextualLineCount()));
-
+            String owner = message.getMessageId().serialize();
+            CompletableFuture<BlobId> headerBlobId = blobsDAO.save(message.getHeaderContent(), owner);
+            CompletableFuture<BlobId> bodyBlobId = blobsDAO.save(message.getBodyContent(), owner);
+            return headerBlobId.thenCombine(bodyBlobId, Pair::of)
+                .thenCompose(blobIds -> cassandraAsyncExecutor.executeVoid(boundWriteStatement(message, blobIds)));
         } catch (IOException e) {
             throw new MailboxException("Error saving mail", e);
         }
     }
 
+    private BoundStatement boundWriteStatement(MailboxMessage message, Pair<BlobId, BlobId> headerAndBodyBlobIds) {
+        CassandraMessageId messageId = (CassandraMessageId) message.getMessageId();
+        BoundStatement boundStatement = insert.bind()
+            .setUUID(MESSAGE_ID, messageId.get())
+            .setDate(INTERNAL_DATE, message.getInternalDate())
+            .setInt(BODY_START_OCTET, (int) (message.getFullContentOctets() - message.getBodyOctets()))
+            .setLong(FULL_CONTENT_OCTETS, message.getFullContentOctets())
+            .setLong(BODY_OCTECTS, message.getBodyOctets())
+            .setString(HEADER_BLOB_ID, headerAndBodyBlobIds.getLeft().getId())
+            .setString(BODY_BLOB_ID, headerAndBodyBlobIds.getRight().getId())
+            .setList(PROPERTIES, toUDTs(message.getProperties()))
+            .setList(ATTACHMENTS, message.getAttachments().stream()
+                .map(this::toUDT)
+                .collect(Collectors.toList()));
+        return setTextualLineCount(boundStatement, message.getTextualLineCount());
+    }
+
     private BoundStatement setTextualLineCount(BoundStatement boundStatement, Long textualLineCount) {
         return Optional.ofNullable(textualLineCount)
                .map(value -> boundStatement.setLong(TEXTUAL_LINE_COUNT, value))
@@ -181,10 +233,6 @@ public class CassandraMessageDAO {
             .setBool(Attachments.IS_INLINE, messageAttachment.isInline());
     }
 
-    private ByteBuffer toByteBuffer(InputStream stream) throws IOException {
-        return ByteBuffer.wrap(ByteStreams.toByteArray(stream));
-    }
-
     public CompletableFuture<Stream<Pair<MessageWithoutAttachment, Stream<MessageAttachmentRepresentation>>>> retrieveMessages(List<ComposedMessageIdWithMetaData> messageIds, FetchType fetchType, Optional<Integer> limit) {
         return CompletableFutureUtil.allOf(
             messageIds.stream()
@@ -192,16 +240,16 @@ public class CassandraMessageDAO {
                 .values()
                 .stream()
                 .map((List<ComposedMessageIdWithMetaData> ids) -> retrieveRows(ids, fetchType, limit)
-                    .thenApply(resultSet -> toMessagesWithAttachmentRepresentation(messageIds, fetchType, resultSet))))
+                    .thenCompose(resultSet -> toMessagesWithAttachmentRepresentation(messageIds, fetchType, resultSet))))
             .thenApply(stream -> stream.flatMap(Function.identity()));
     }
 
-    private Stream<Pair<MessageWithoutAttachment, Stream<MessageAttachmentRepresentation>>> toMessagesWithAttachmentRepresentation(List<ComposedMessageIdWithMetaData> messageIds, FetchType fetchType, ResultSet resultSet) {
+    private CompletableFuture<Stream<Pair<MessageWithoutAttachment, Stream<MessageAttachmentRepresentation>>>> toMessagesWithAttachmentRepresentation(List<ComposedMessageIdWithMetaData> messageIds, FetchType fetchType, ResultSet resultSet) {
         ImmutableListMultimap<MessageId, Row> messagesById = CassandraUtils.convertToStream(resultSet)
             .collect(Guavate.toImmutableListMultimap(row -> messageIdFactory.of(row.getUUID(MESSAGE_ID)), row -> row));
-        return messageIds.stream()
+        return CompletableFutureUtil.allOf(messageIds.stream()
             .filter(composedId -> !messagesById.get(composedId.getComposedMessageId().getMessageId()).isEmpty())
-            .map(composedId -> message(messagesById.get(composedId.getComposedMessageId().getMessageId()).get(0), composedId, fetchType));
+            .map(composedId -> message(messagesById.get(composedId.getComposedMessageId().getMessageId()).get(0), composedId, fetchType)));
     }
 
     private CompletableFuture<ResultSet> retrieveRows(List<ComposedMessageIdWithMetaData> messageIds, FetchType fetchType, Optional<Integer> limit) {
@@ -222,22 +270,22 @@ public class CassandraMessageDAO {
                         .collect(Collectors.toList())));
     }
 
-    private Pair<MessageWithoutAttachment, Stream<MessageAttachmentRepresentation>> message(Row row,ComposedMessageIdWithMetaData messageIdWithMetaData, FetchType fetchType) {
+    private CompletableFuture<Pair<MessageWithoutAttachment, Stream<MessageAttachmentRepresentation>>> message(Row row,ComposedMessageIdWithMetaData messageIdWithMetaData, FetchType fetchType) {
         ComposedMessageId messageId = messageIdWithMetaData.getComposedMessageId();
 
-        MessageWithoutAttachment messageWithoutAttachment =
-            new MessageWithoutAttachment(
+        return buildContent(row, fetchType)
+            .thenApply(content -> new MessageWithoutAttachment(
                 messageId.getMessageId(),
                 row.getDate(INTERNAL_DATE),
                 row.getLong(FULL_CONTENT_OCTETS),
                 row.getInt(BODY_START_OCTET),
-                buildContent(row, fetchType),
+                content,
                 messageIdWithMetaData.getFlags(),
                 getPropertyBuilder(row),
                 messageId.getMailboxId(),
                 messageId.getUid(),
-                messageIdWithMetaData.getModSeq());
-        return Pair.of(messageWithoutAttachment, getAttachments(row, fetchType));
+                messageIdWithMetaData.getModSeq()))
+            .thenApply(messageWithoutAttachment -> Pair.of(messageWithoutAttachment, getAttachments(row, fetchType)));
     }
 
     private PropertyBuilder getPropertyBuilder(Row row) {
@@ -297,38 +345,93 @@ public class CassandraMessageDAO {
         return selectStatement.limit(limit.get());
     }
 
+    /**
+     * Deletes a message, and removes it from the owners of its header and body blobs once it is no longer readable.
+     */
     public CompletableFuture<Void> delete(CassandraMessageId messageId) {
-        return cassandraAsyncExecutor.executeVoid(delete.bind()
-            .setUUID(MESSAGE_ID, messageId.get()));
+        return cassandraAsyncExecutor.executeSingleRow(selectBlobIds.bind()
+                .setUUID(MESSAGE_ID, messageId.get()))
+            .thenCompose(row -> cassandraAsyncExecutor.executeVoid(delete.bind()
+                    .setUUID(MESSAGE_ID, messageId.get()))
+                .thenCompose(any -> row
+                    .map(value -> deleteBlobs(value, messageId.serialize()))
+                    .orElse(CompletableFuture.completedFuture(null))));
+    }
+
+    private CompletableFuture<Void> deleteBlobs(Row row, String owner) {
+        return CompletableFuture.allOf(
+            deleteBlob(row.getString(HEADER_BLOB_ID), owner),
+            deleteBlob(row.getString(BODY_BLOB_ID), owner));
     }
 
-    private SharedByteArrayInputStream buildContent(Row row, FetchType fetchType) {
+    private CompletableFuture<Void> deleteBlob(String blobId, String owner) {
+        if (blobId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return blobsDAO.delete(BlobId.from(blobId), owner);
+    }
+
+    private CompletableFuture<SharedByteArrayInputStream> buildContent(Row row, FetchType fetchType) {
         switch (fetchType) {
             case Full:
-                return new SharedByteArrayInputStream(getFullContent(row));
+                return getFieldContent(HEADER_BLOB_ID, HEADER_CONTENT, row)
+                    .thenCombine(getFieldContent(BODY_BLOB_ID, BODY_CONTENT, row), Bytes::concat)
+                    .thenApply(SharedByteArrayInputStream::new);
             case Headers:
-                return new SharedByteArrayInputStream(getFieldContent(HEADER_CONTENT, row));
+                return getFieldContent(HEADER_BLOB_ID, HEADER_CONTENT, row)
+                    .thenApply(SharedByteArrayInputStream::new);
             case Body:
-                return new SharedByteArrayInputStream(getBodyContent(row));
+                return getFieldContent(BODY_BLOB_ID, BODY_CONTENT, row)
+                    .thenApply(data -> Bytes.concat(new byte[row.getInt(BODY_START_OCTET)], data))
+                    .thenApply(SharedByteArrayInputStream::new);
             case Metadata:
-                return new SharedByteArrayInputStream(new byte[]{});
+                return CompletableFuture.completedFuture(new SharedByteArrayInputStream(new byte[]{}));
             default:
                 throw new RuntimeException("Unknown FetchType " + fetchType);
         }
     }
 
-    private byte[] getFullContent(Row row) {
-        return Bytes.concat(getFieldContent(HEADER_CONTENT, row), getFieldContent(BODY_CONTENT, row));
+    private CompletableFuture<byte[]> getFieldContent(String blobIdField, String legacyField, Row row) {
+        String blobId = row.getString(blobIdField);
+        if (blobId == null) {
+            return CompletableFuture.completedFuture(getLegacyFieldContent(legacyField, row));
+        }
+        return blobsDAO.read(BlobId.from(blobId))
+            .thenApply(data -> data.orElseThrow(() -> new IllegalStateException("Missing blob " + blobId + " for message " + row.getUUID(MESSAGE_ID))));
+    }
+
+    /**
+     * Reads at most <code>length</code> bytes of the body of a message, starting at <code>offset</code> in this body.
+     * Only the blob chunks overlapping this range are read.
+     */
+    public CompletableFuture<Optional<byte[]>> readBodyRange(CassandraMessageId messageId, long offset, long length) {
+        return cassandraAsyncExecutor.executeSingleRow(selectBody.bind()
+                .setUUID(MESSAGE_ID, messageId.get()))
+            .thenCompose(row -> row
+                .map(value -> readBodyRange(value, offset, length).thenApply(Optional::of))
+                .orElse(CompletableFuture.completedFuture(Optional.empty())));
     }
 
-    private byte[] getBodyContent(Row row) {
-        return Bytes.concat(new byte[row.getInt(BODY_START_OCTET)], getFieldContent(BODY_CONTENT, row));
+    private CompletableFuture<byte[]> readBodyRange(Row row, long offset, long length) {
+        String blobId = row.getString(BODY_BLOB_ID);
+        if (blobId == null) {
+            byte[] body = getLegacyFieldContent(BODY_CONTENT, row);
+            int start = Ints.saturatedCast(Math.min(offset, body.length));
+            int end = Ints.saturatedCast(Math.min(body.length, offset + length));
+            return CompletableFuture.completedFuture(Arrays.copyOfRange(body, start, end));
+        }
+        return blobsDAO.read(BlobId.from(blobId), offset, length)
+            .thenApply(data -> data.orElseThrow(() -> new IllegalStateException("Missing blob " + blobId + " for message " + row.getUUID(MESSAGE_ID))));
     }
 
-    private byte[] getFieldContent(String field, Row row) {
-        byte[] headerContent = new byte[row.getBytes(field).remaining()];
-        row.getBytes(field).get(headerContent);
-        return headerContent;
+    private byte[] getLegacyFieldContent(String field, Row row) {
+        ByteBuffer byteBuffer = row.getBytes(field);
+        if (byteBuffer == null) {
+            return new byte[]{};
+        }
+        byte[] content = new byte[byteBuffer.remaining()];
+        byteBuffer.get(content);
+        return content;
     }
 
     public static class MessageAttachmentRepresentation {
@@ -22,6 +22,7 @@ package org.apache.james.mailbox.cassandra.mail;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.in;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.lte;
 import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
@@ -42,6 +43,7 @@ import static org.apache.james.mailbox.cassandra.table.Flag.USER;
 import static org.apache.james.mailbox.cassandra.table.Flag.USER_FLAGS;
 import static org.apache.james.mailbox.cassandra.table.MessageIdToImapUid.MOD_SEQ;
 
+import java.util.Collection;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
@@ -65,6 +67,7 @@ import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.github.steveash.guavate.Guavate;
 import com.google.common.collect.ImmutableSet;
 
 public class CassandraMessageIdDAO {
@@ -77,6 +80,7 @@ public class CassandraMessageIdDAO {
     private final PreparedStatement delete;
     private final PreparedStatement insert;
     private final PreparedStatement select;
+    private final PreparedStatement selectUids;
     private final PreparedStatement selectAllUids;
     private final PreparedStatement selectUidGte;
     private final PreparedStatement selectUidRange;
@@ -90,6 +94,7 @@ public class CassandraMessageIdDAO {
         this.insert = prepareInsert(session);
         this.update = prepareUpdate(session);
         this.select = prepareSelect(session);
+        this.selectUids = prepareSelectUids(session);
         this.selectAllUids = prepareSelectAllUids(session);
         this.selectUidGte = prepareSelectUidGte(session);
         this.selectUidRange = prepareSelectUidRange(session);
@@ -140,6 +145,13 @@ public class CassandraMessageIdDAO {
                 .and(eq(IMAP_UID, bindMarker(IMAP_UID))));
     }
 
+    private PreparedStatement prepareSelectUids(Session session) {
+        return session.prepare(select(FIELDS)
+                .from(TABLE_NAME)
+                .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+                .and(in(IMAP_UID, bindMarker(IMAP_UID))));
+    }
+
     private PreparedStatement prepareSelectAllUids(Session session) {
         return session.prepare(select(FIELDS)
                 .from(TABLE_NAME)
@@ -206,6 +218,20 @@ public class CassandraMessageIdDAO {
         return selectOneRow(mailboxId, uid).thenApply(this::asOptionalOfCassandraMessageId);
     }
 
+    /**
+     * Retrieve the given uids of a mailbox with a single query. Missing uids are ignored.
+     */
+    public CompletableFuture<Stream<ComposedMessageIdWithMetaData>> retrieve(CassandraId mailboxId, Collection<MessageUid> uids) {
+        if (uids.isEmpty()) {
+            return CompletableFuture.completedFuture(Stream.of());
+        }
+        return toMessageIds(cassandraAsyncExecutor.execute(selectUids.bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setList(IMAP_UID, uids.stream()
+                    .map(MessageUid::asLong)
+                    .collect(Guavate.toImmutableList()))));
+    }
+
     private Optional<ComposedMessageIdWithMetaData> asOptionalOfCassandraMessageId(ResultSet resultSet) {
         if (resultSet.isExhausted()) {
             return Optional.empty();
@@ -163,13 +163,32 @@ public class CassandraMessageIdMapper implements MessageIdMapper {
             .modSeq(mailboxMessage.getModSeq())
             .build();
         messageDAO.save(mailboxMessage)
-            .thenCompose(voidValue -> CompletableFuture.allOf(
-                imapUidDAO.insert(composedMessageIdWithMetaData),
-                messageIdDAO.insert(composedMessageIdWithMetaData)))
-            .thenCompose(voidValue -> indexTableHandler.updateIndexOnAdd(mailboxMessage, mailboxId))
+            .thenCompose(voidValue -> insertIds(mailboxMessage, composedMessageIdWithMetaData))
+            .join();
+    }
+
+    @Override
+    public void copyInMailbox(MailboxMessage mailboxMessage) throws MailboxException {
+        CassandraId mailboxId = (CassandraId) mailboxMessage.getMailboxId();
+        mailboxMapper.findMailboxById(mailboxId);
+        CassandraMessageId messageId = (CassandraMessageId) mailboxMessage.getMessageId();
+        ComposedMessageIdWithMetaData composedMessageIdWithMetaData = ComposedMessageIdWithMetaData.builder()
+            .composedMessageId(new ComposedMessageId(mailboxId, messageId, mailboxMessage.getUid()))
+            .flags(mailboxMessage.createFlags())
+            .modSeq(mailboxMessage.getModSeq())
+            .build();
+        insertIds(mailboxMessage, composedMessageIdWithMetaData)
             .join();
     }
 
+    private CompletableFuture<Void> insertIds(MailboxMessage mailboxMessage, ComposedMessageIdWithMetaData composedMessageIdWithMetaData) {
+        CassandraId mailboxId = (CassandraId) mailboxMessage.getMailboxId();
+        return CompletableFuture.allOf(
+                imapUidDAO.insert(composedMessageIdWithMetaData),
+                messageIdDAO.insert(composedMessageIdWithMetaData))
+            .thenCompose(voidValue -> indexTableHandler.updateIndexOnAdd(mailboxMessage, mailboxId));
+    }
+
     @Override
     public void delete(MessageId messageId, List<MailboxId> mailboxIds) {
         CassandraMessageId cassandraMessageId = (CassandraMessageId) messageId;
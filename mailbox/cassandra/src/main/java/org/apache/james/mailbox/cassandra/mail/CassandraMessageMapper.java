@@ -19,12 +19,17 @@
 
 package org.apache.james.mailbox.cassandra.mail;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -49,10 +54,15 @@ import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.FlagsUpdateCalculator;
 import org.apache.james.mailbox.store.SimpleMessageMetaData;
-import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.ChangedSinceMessageMapper;
+import org.apache.james.mailbox.store.mail.PropertiesUpdatingMessageMapper;
+import org.apache.james.mailbox.store.mail.RangedContentMessageMapper;
+import org.apache.james.mailbox.store.mail.ReservingMessageMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.Property;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
+import org.apache.james.util.CompletableFutureUtil;
 import org.apache.james.util.FluentFutureStream;
 import org.apache.james.util.OptionalConverter;
 import org.slf4j.Logger;
@@ -61,9 +71,12 @@ import org.slf4j.LoggerFactory;
 import com.github.steveash.guavate.Guavate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
 
-public class CassandraMessageMapper implements MessageMapper {
+public class CassandraMessageMapper implements ReservingMessageMapper, PropertiesUpdatingMessageMapper, ChangedSinceMessageMapper,
+    RangedContentMessageMapper {
     private static final Logger LOGGER = LoggerFactory.getLogger(CassandraMessageMapper.class);
+    private static final int INDEX_PAGE_SIZE = 1000;
     public static final MailboxCounters INITIAL_COUNTERS =  MailboxCounters.builder()
         .count(0L)
         .unseen(0L)
@@ -83,12 +96,16 @@ public class CassandraMessageMapper implements MessageMapper {
     private final CassandraFirstUnseenDAO firstUnseenDAO;
     private final AttachmentLoader attachmentLoader;
     private final CassandraDeletedMessageDAO deletedMessageDAO;
+    private final CassandraModSeqIndexDAO modSeqIndexDAO;
+    private final CassandraModSeqIndexMigration modSeqIndexMigration;
+    private final Map<CassandraId, ReservedUidAndModSeqBlock> reservedBlocks;
 
     public CassandraMessageMapper(CassandraUidProvider uidProvider, CassandraModSeqProvider modSeqProvider,
                                   MailboxSession mailboxSession, int maxRetries, CassandraAttachmentMapper attachmentMapper,
                                   CassandraMessageDAO messageDAO, CassandraMessageIdDAO messageIdDAO, CassandraMessageIdToImapUidDAO imapUidDAO,
                                   CassandraMailboxCounterDAO mailboxCounterDAO, CassandraMailboxRecentsDAO mailboxRecentDAO, CassandraApplicableFlagDAO applicableFlagDAO,
-                                  CassandraIndexTableHandler indexTableHandler, CassandraFirstUnseenDAO firstUnseenDAO, CassandraDeletedMessageDAO deletedMessageDAO) {
+                                  CassandraIndexTableHandler indexTableHandler, CassandraFirstUnseenDAO firstUnseenDAO, CassandraDeletedMessageDAO deletedMessageDAO,
+                                  CassandraModSeqIndexDAO modSeqIndexDAO, CassandraModSeqIndexMigration modSeqIndexMigration) {
         this.uidProvider = uidProvider;
         this.modSeqProvider = modSeqProvider;
         this.mailboxSession = mailboxSession;
@@ -103,6 +120,9 @@ public class CassandraMessageMapper implements MessageMapper {
         this.attachmentLoader = new AttachmentLoader(attachmentMapper);
         this.applicableFlagDAO = applicableFlagDAO;
         this.deletedMessageDAO = deletedMessageDAO;
+        this.modSeqIndexDAO = modSeqIndexDAO;
+        this.modSeqIndexMigration = modSeqIndexMigration;
+        this.reservedBlocks = new HashMap<>();
     }
 
     @Override
@@ -172,6 +192,84 @@ public class CassandraMessageMapper implements MessageMapper {
                 .collect(Guavate.toImmutableList());
     }
 
+    @Override
+    public Iterator<MailboxMessage> findChangedSinceInMailbox(Mailbox mailbox, MessageRange set, long modSeq, FetchType ftype, int max) throws MailboxException {
+        CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
+        return retrieveMessages(retrieveChangedMessageIds(mailboxId, set, modSeq, max), ftype, Optional.empty())
+                .join()
+                .map(SimpleMailboxMessage -> (MailboxMessage) SimpleMailboxMessage)
+                .sorted(Comparator.comparing(MailboxMessage::getModSeq))
+                .iterator();
+    }
+
+    /**
+     * The MODSEQ index is read by pages, starting after the MODSEQ of the last entry of the previous page, until
+     * <code>max</code> current entries of the range are found. MODSEQs are never shared by two messages of a mailbox,
+     * hence no entry is skipped between two pages.
+     */
+    private List<ComposedMessageIdWithMetaData> retrieveChangedMessageIds(CassandraId mailboxId, MessageRange set, long modSeq, int max) {
+        if (!modSeqIndexDAO.isIndexed(mailboxId).join()) {
+            modSeqIndexMigration.migrateInBackground(mailboxId);
+            return firstMessageIds(retrieveMessageIds(mailboxId, set)
+                    .stream()
+                    .filter(metadata -> metadata.getModSeq() > modSeq), max);
+        }
+        int pageSize = max > 0 ? max : INDEX_PAGE_SIZE;
+        List<ComposedMessageIdWithMetaData> changedMessageIds = new ArrayList<>();
+        long cursor = modSeq;
+        while (max <= 0 || changedMessageIds.size() < max) {
+            List<Pair<MessageUid, Long>> indexEntries = modSeqIndexDAO.retrieveChangedSince(mailboxId, cursor, pageSize)
+                    .join()
+                    .collect(Guavate.toImmutableList());
+            changedMessageIds.addAll(retrieveCurrentMessageIds(mailboxId, set, indexEntries));
+            if (indexEntries.size() < pageSize) {
+                break;
+            }
+            cursor = Iterables.getLast(indexEntries).getRight();
+        }
+        return firstMessageIds(changedMessageIds.stream(), max);
+    }
+
+    private List<ComposedMessageIdWithMetaData> firstMessageIds(Stream<ComposedMessageIdWithMetaData> messageIds, int max) {
+        return messageIds
+                .sorted(Comparator.comparing(ComposedMessageIdWithMetaData::getModSeq))
+                .limit(max > 0 ? max : Long.MAX_VALUE)
+                .collect(Guavate.toImmutableList());
+    }
+
+    /**
+     * @return the metadata of the messages of the range having a current entry in the given page of the index, in the
+     * index order. Outdated entries are removed.
+     */
+    private List<ComposedMessageIdWithMetaData> retrieveCurrentMessageIds(CassandraId mailboxId, MessageRange set, List<Pair<MessageUid, Long>> indexEntries) {
+        List<Pair<MessageUid, Long>> entriesInRange = indexEntries.stream()
+                .filter(entry -> set.includes(entry.getLeft()))
+                .collect(Guavate.toImmutableList());
+        Map<MessageUid, ComposedMessageIdWithMetaData> currentMetadata = messageIdDAO.retrieve(mailboxId,
+                entriesInRange.stream()
+                    .map(Pair::getLeft)
+                    .distinct()
+                    .collect(Guavate.toImmutableList()))
+                .join()
+                .collect(Collectors.toMap(metadata -> metadata.getComposedMessageId().getUid(), Function.identity()));
+
+        CompletableFutureUtil.allOf(
+                entriesInRange.stream()
+                    .filter(entry -> !isCurrentIndexEntry(entry, currentMetadata))
+                    .map(entry -> modSeqIndexDAO.remove(mailboxId, entry.getRight(), entry.getLeft())))
+                .join();
+
+        return entriesInRange.stream()
+                .filter(entry -> isCurrentIndexEntry(entry, currentMetadata))
+                .map(entry -> currentMetadata.get(entry.getLeft()))
+                .collect(Guavate.toImmutableList());
+    }
+
+    private boolean isCurrentIndexEntry(Pair<MessageUid, Long> entry, Map<MessageUid, ComposedMessageIdWithMetaData> currentMetadata) {
+        ComposedMessageIdWithMetaData metadata = currentMetadata.get(entry.getLeft());
+        return metadata != null && metadata.getModSeq() == entry.getRight();
+    }
+
     private CompletableFuture<Stream<SimpleMailboxMessage>> retrieveMessages(List<ComposedMessageIdWithMetaData> messageIds, FetchType fetchType, Optional<Integer> limit) {
         CompletableFuture<Stream<Pair<CassandraMessageDAO.MessageWithoutAttachment, Stream<CassandraMessageDAO.MessageAttachmentRepresentation>>>>
             messageRepresentations = messageDAO.retrieveMessages(messageIds, fetchType, limit);
@@ -254,15 +352,7 @@ public class CassandraMessageMapper implements MessageMapper {
     @Override
     public MessageMetaData add(Mailbox mailbox, MailboxMessage message) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
-
-        CompletableFuture<Optional<MessageUid>> uidFuture = uidProvider.nextUid(mailboxId);
-        CompletableFuture<Optional<Long>> modseqFuture = modSeqProvider.nextModSeq(mailboxId);
-        CompletableFuture.allOf(uidFuture, modseqFuture).join();
-
-        message.setUid(uidFuture.join()
-            .orElseThrow(() -> new MailboxException("Can not find a UID to save " + message.getMessageId() + " in " + mailboxId)));
-        message.setModSeq(modseqFuture.join()
-            .orElseThrow(() -> new MailboxException("Can not find a MODSEQ to save " + message.getMessageId() + " in " + mailboxId)));
+        assignUidAndModSeq(mailboxId, message);
 
         save(mailbox, message)
             .thenCompose(voidValue -> indexTableHandler.updateIndexOnAdd(message, mailboxId))
@@ -270,6 +360,61 @@ public class CassandraMessageMapper implements MessageMapper {
         return new SimpleMessageMetaData(message);
     }
 
+    private void assignUidAndModSeq(CassandraId mailboxId, MailboxMessage message) throws MailboxException {
+        Optional<ReservedUidAndModSeqBlock.UidAndModSeq> reserved = Optional.ofNullable(reservedBlocks.get(mailboxId))
+            .flatMap(ReservedUidAndModSeqBlock::next);
+        if (reserved.isPresent()) {
+            message.setUid(reserved.get().getUid());
+            message.setModSeq(reserved.get().getModSeq());
+        } else {
+            CompletableFuture<Optional<MessageUid>> uidFuture = uidProvider.nextUid(mailboxId);
+            CompletableFuture<Optional<Long>> modseqFuture = modSeqProvider.nextModSeq(mailboxId);
+            CompletableFuture.allOf(uidFuture, modseqFuture).join();
+
+            message.setUid(uidFuture.join()
+                .orElseThrow(() -> new MailboxException("Can not find a UID to save " + message.getMessageId() + " in " + mailboxId)));
+            message.setModSeq(modseqFuture.join()
+                .orElseThrow(() -> new MailboxException("Can not find a MODSEQ to save " + message.getMessageId() + " in " + mailboxId)));
+        }
+    }
+
+    @Override
+    public void reserveUidsAndModSeqs(Mailbox mailbox, int count) throws MailboxException {
+        CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
+
+        CompletableFuture<Optional<MessageUid>> uidFuture = uidProvider.nextUids(mailboxId, count);
+        CompletableFuture<Optional<Long>> modseqFuture = modSeqProvider.nextModSeqs(mailboxId, count);
+        CompletableFuture.allOf(uidFuture, modseqFuture).join();
+
+        MessageUid lastUid = uidFuture.join()
+            .orElseThrow(() -> new MailboxException("Can not reserve " + count + " UIDs in " + mailboxId));
+        long lastModSeq = modseqFuture.join()
+            .orElseThrow(() -> new MailboxException("Can not reserve " + count + " MODSEQs in " + mailboxId));
+        reservedBlocks.put(mailboxId, ReservedUidAndModSeqBlock.fromLastValues(lastUid, lastModSeq, count));
+    }
+
+    @Override
+    public void releaseReservation(Mailbox mailbox) {
+        reservedBlocks.remove(mailbox.getMailboxId());
+    }
+
+    @Override
+    public void updateProperties(MailboxMessage message, List<Property> properties) {
+        messageDAO.updateProperties((CassandraMessageId) message.getMessageId(), properties).join();
+    }
+
+    @Override
+    public InputStream readContentRange(MailboxMessage message, long offset, long length) throws MailboxException {
+        long bodyStartOctet = message.getFullContentOctets() - message.getBodyOctets();
+        if (offset < bodyStartOctet) {
+            throw new MailboxException("Only ranges of the body of message " + message.getMessageId() + " can be read");
+        }
+        return messageDAO.readBodyRange((CassandraMessageId) message.getMessageId(), offset - bodyStartOctet, length)
+            .join()
+            .map(ByteArrayInputStream::new)
+            .orElseThrow(() -> new MailboxException("Message " + message.getMessageId() + " was deleted while being read"));
+    }
+
     @Override
     public Iterator<UpdatedFlags> updateFlags(Mailbox mailbox, FlagsUpdateCalculator flagUpdateCalculator, MessageRange set) throws MailboxException {
         CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
@@ -288,10 +433,20 @@ public class CassandraMessageMapper implements MessageMapper {
         return transaction.run();
     }
 
+    /**
+     * The copy keeps the message id of the original message, whose content is already stored. Only the indexes of
+     * the target mailbox are thus written.
+     */
     @Override
     public MessageMetaData copy(Mailbox mailbox, MailboxMessage original) throws MailboxException {
+        CassandraId mailboxId = (CassandraId) mailbox.getMailboxId();
         original.setFlags(new FlagsBuilder().add(original.createFlags()).add(Flag.RECENT).build());
-        return add(mailbox, original);
+        assignUidAndModSeq(mailboxId, original);
+
+        insertIds(original, mailboxId)
+            .thenCompose(voidValue -> indexTableHandler.updateIndexOnAdd(original, mailboxId))
+            .join();
+        return new SimpleMessageMetaData(original);
     }
 
     @Override
@@ -0,0 +1,181 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.delete;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gt;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.insertInto;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.select;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.MAILBOX_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.MOD_SEQ;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.TABLE_NAME;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.UID;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import javax.inject.Inject;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.james.backends.cassandra.utils.CassandraAsyncExecutor;
+import org.apache.james.backends.cassandra.utils.CassandraUtils;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.IndexedMailboxes;
+
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+
+/**
+ * Index of the messages of a mailbox ordered by MODSEQ, used to answer CHANGEDSINCE queries without reading the
+ * whole mailbox.
+ *
+ * An entry is written each time a message gets a new MODSEQ. Entries carrying an outdated MODSEQ are not removed
+ * on flags updates: readers are expected to check them against the current message metadata and remove them with
+ * {@link #remove(CassandraId, long, MessageUid)}.
+ *
+ * Messages stored before the index was introduced have no entry. Mailboxes are thus marked once all their messages
+ * are indexed by the {@link CassandraModSeqIndexMigration} (see {@link #markIndexed(CassandraId)}), and the index
+ * should not be trusted for other mailboxes.
+ */
+public class CassandraModSeqIndexDAO {
+    private static final String PAGE_SIZE = "page_size";
+
+    private final CassandraAsyncExecutor cassandraAsyncExecutor;
+    private final PreparedStatement addStatement;
+    private final PreparedStatement deleteStatement;
+    private final PreparedStatement selectChangedSinceStatement;
+    private final PreparedStatement selectChangedSincePageStatement;
+    private final PreparedStatement markIndexedStatement;
+    private final PreparedStatement selectIndexedStatement;
+
+    @Inject
+    public CassandraModSeqIndexDAO(Session session) {
+        this.cassandraAsyncExecutor = new CassandraAsyncExecutor(session);
+        this.addStatement = prepareAddStatement(session);
+        this.deleteStatement = prepareDeleteStatement(session);
+        this.selectChangedSinceStatement = prepareChangedSinceStatement(session);
+        this.selectChangedSincePageStatement = prepareChangedSincePageStatement(session);
+        this.markIndexedStatement = prepareMarkIndexedStatement(session);
+        this.selectIndexedStatement = prepareSelectIndexedStatement(session);
+    }
+
+    private PreparedStatement prepareAddStatement(Session session) {
+        return session.prepare(insertInto(TABLE_NAME)
+            .value(MAILBOX_ID, bindMarker(MAILBOX_ID))
+            .value(MOD_SEQ, bindMarker(MOD_SEQ))
+            .value(UID, bindMarker(UID)));
+    }
+
+    private PreparedStatement prepareDeleteStatement(Session session) {
+        return session.prepare(delete()
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(eq(MOD_SEQ, bindMarker(MOD_SEQ)))
+            .and(eq(UID, bindMarker(UID))));
+    }
+
+    private PreparedStatement prepareChangedSinceStatement(Session session) {
+        return session.prepare(select(MOD_SEQ, UID)
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(gt(MOD_SEQ, bindMarker(MOD_SEQ))));
+    }
+
+    private PreparedStatement prepareChangedSincePageStatement(Session session) {
+        return session.prepare(select(MOD_SEQ, UID)
+            .from(TABLE_NAME)
+            .where(eq(MAILBOX_ID, bindMarker(MAILBOX_ID)))
+            .and(gt(MOD_SEQ, bindMarker(MOD_SEQ)))
+            .limit(bindMarker(PAGE_SIZE)));
+    }
+
+    private PreparedStatement prepareMarkIndexedStatement(Session session) {
+        return session.prepare(insertInto(IndexedMailboxes.TABLE_NAME)
+            .value(IndexedMailboxes.MAILBOX_ID, bindMarker(IndexedMailboxes.MAILBOX_ID)));
+    }
+
+    private PreparedStatement prepareSelectIndexedStatement(Session session) {
+        return session.prepare(select(IndexedMailboxes.MAILBOX_ID)
+            .from(IndexedMailboxes.TABLE_NAME)
+            .where(eq(IndexedMailboxes.MAILBOX_ID, bindMarker(IndexedMailboxes.MAILBOX_ID))));
+    }
+
+    public CompletableFuture<Void> add(CassandraId mailboxId, long modSeq, MessageUid uid) {
+        return cassandraAsyncExecutor.executeVoid(addStatement.bind()
+            .setUUID(MAILBOX_ID, mailboxId.asUuid())
+            .setLong(MOD_SEQ, modSeq)
+            .setLong(UID, uid.asLong()));
+    }
+
+    public CompletableFuture<Void> remove(CassandraId mailboxId, long modSeq, MessageUid uid) {
+        return cassandraAsyncExecutor.executeVoid(deleteStatement.bind()
+            .setUUID(MAILBOX_ID, mailboxId.asUuid())
+            .setLong(MOD_SEQ, modSeq)
+            .setLong(UID, uid.asLong()));
+    }
+
+    /**
+     * @return the (uid, modSeq) entries having a MODSEQ strictly greater than <code>modSeq</code>. Outdated entries
+     * may be returned, and a same uid may appear several times.
+     */
+    public CompletableFuture<Stream<Pair<MessageUid, Long>>> retrieveChangedSince(CassandraId mailboxId, long modSeq) {
+        return cassandraAsyncExecutor.execute(selectChangedSinceStatement.bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(MOD_SEQ, modSeq))
+            .thenApply(this::toEntries);
+    }
+
+    /**
+     * @return at most <code>pageSize</code> (uid, modSeq) entries having a MODSEQ strictly greater than
+     * <code>modSeq</code>, ordered by MODSEQ. Following pages are read by passing the MODSEQ of the last returned
+     * entry.
+     */
+    public CompletableFuture<Stream<Pair<MessageUid, Long>>> retrieveChangedSince(CassandraId mailboxId, long modSeq, int pageSize) {
+        return cassandraAsyncExecutor.execute(selectChangedSincePageStatement.bind()
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(MOD_SEQ, modSeq)
+                .setInt(PAGE_SIZE, pageSize))
+            .thenApply(this::toEntries);
+    }
+
+    private Stream<Pair<MessageUid, Long>> toEntries(ResultSet resultSet) {
+        return CassandraUtils.convertToStream(resultSet)
+            .map(row -> Pair.of(MessageUid.of(row.getLong(UID)), row.getLong(MOD_SEQ)));
+    }
+
+    /**
+     * Mark the given mailbox as having all its messages indexed.
+     */
+    public CompletableFuture<Void> markIndexed(CassandraId mailboxId) {
+        return cassandraAsyncExecutor.executeVoid(markIndexedStatement.bind()
+            .setUUID(IndexedMailboxes.MAILBOX_ID, mailboxId.asUuid()));
+    }
+
+    public CompletableFuture<Boolean> isIndexed(CassandraId mailboxId) {
+        return cassandraAsyncExecutor.executeSingleRow(selectIndexedStatement.bind()
+                .setUUID(IndexedMailboxes.MAILBOX_ID, mailboxId.asUuid()))
+            .thenApply(Optional::isPresent);
+    }
+}
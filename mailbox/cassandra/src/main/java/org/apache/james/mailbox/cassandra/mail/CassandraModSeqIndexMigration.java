@@ -0,0 +1,99 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.inject.Inject;
+
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.util.CompletableFutureUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fills the MODSEQ index of mailboxes holding messages stored before the index was introduced, then marks them as
+ * indexed (see {@link CassandraModSeqIndexDAO}).
+ *
+ * Messages added or updated while a mailbox is migrated are indexed by the {@link CassandraIndexTableHandler}, and
+ * the outdated entries written meanwhile are removed when read.
+ */
+public class CassandraModSeqIndexMigration {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraModSeqIndexMigration.class);
+
+    private final CassandraMailboxDAO mailboxDAO;
+    private final CassandraMessageIdDAO messageIdDAO;
+    private final CassandraModSeqIndexDAO modSeqIndexDAO;
+    private final Set<CassandraId> runningMigrations;
+
+    @Inject
+    public CassandraModSeqIndexMigration(CassandraMailboxDAO mailboxDAO, CassandraMessageIdDAO messageIdDAO, CassandraModSeqIndexDAO modSeqIndexDAO) {
+        this.mailboxDAO = mailboxDAO;
+        this.messageIdDAO = messageIdDAO;
+        this.modSeqIndexDAO = modSeqIndexDAO;
+        this.runningMigrations = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Index every mailbox not indexed yet.
+     */
+    public CompletableFuture<Void> migrateAllMailboxes() {
+        return mailboxDAO.retrieveAllMailboxes()
+            .thenCompose(mailboxes -> CompletableFutureUtil.allOf(
+                mailboxes.map(mailbox -> migrateIfNeeded((CassandraId) mailbox.getMailboxId()))))
+            .thenApply(any -> null);
+    }
+
+    /**
+     * Index the given mailbox without waiting for it. Nothing is done if the mailbox is already being indexed.
+     */
+    public void migrateInBackground(CassandraId mailboxId) {
+        if (!runningMigrations.add(mailboxId)) {
+            return;
+        }
+        migrateIfNeeded(mailboxId)
+            .whenComplete((any, error) -> {
+                runningMigrations.remove(mailboxId);
+                if (error != null) {
+                    LOGGER.warn("Failed indexing the MODSEQs of mailbox {}", mailboxId, error);
+                }
+            });
+    }
+
+    private CompletableFuture<Void> migrateIfNeeded(CassandraId mailboxId) {
+        return modSeqIndexDAO.isIndexed(mailboxId)
+            .thenCompose(indexed -> {
+                if (indexed) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return migrate(mailboxId);
+            });
+    }
+
+    public CompletableFuture<Void> migrate(CassandraId mailboxId) {
+        return messageIdDAO.retrieveMessages(mailboxId, MessageRange.all())
+            .thenCompose(messages -> CompletableFutureUtil.allOf(
+                messages.map(message -> modSeqIndexDAO.add(mailboxId, message.getModSeq(), message.getComposedMessageId().getUid()))))
+            .thenCompose(any -> modSeqIndexDAO.markIndexed(mailboxId));
+    }
+}
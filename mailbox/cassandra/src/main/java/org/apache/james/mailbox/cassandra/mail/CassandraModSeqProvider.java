@@ -46,6 +46,7 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
 
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Session;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 
 public class CassandraModSeqProvider implements ModSeqProvider {
@@ -150,8 +151,8 @@ public class CassandraModSeqProvider implements ModSeqProvider {
                 .orElse(FIRST_MODSEQ));
     }
 
-    private CompletableFuture<Optional<ModSeq>> tryInsertModSeq(CassandraId mailboxId, ModSeq modSeq) {
-        ModSeq nextModSeq = modSeq.next();
+    private CompletableFuture<Optional<ModSeq>> tryInsertModSeq(CassandraId mailboxId, ModSeq modSeq, int count) {
+        ModSeq nextModSeq = modSeq.add(count);
         return cassandraAsyncExecutor.executeReturnApplied(
             insert.bind()
                 .setUUID(MAILBOX_ID, mailboxId.asUuid())
@@ -159,8 +160,8 @@ public class CassandraModSeqProvider implements ModSeqProvider {
             .thenApply(success -> successToModSeq(nextModSeq, success));
     }
 
-    private CompletableFuture<Optional<ModSeq>> tryUpdateModSeq(CassandraId mailboxId, ModSeq modSeq) {
-        ModSeq nextModSeq = modSeq.next();
+    private CompletableFuture<Optional<ModSeq>> tryUpdateModSeq(CassandraId mailboxId, ModSeq modSeq, int count) {
+        ModSeq nextModSeq = modSeq.add(count);
         return cassandraAsyncExecutor.executeReturnApplied(
             update.bind()
                 .setUUID(MAILBOX_ID, mailboxId.asUuid())
@@ -177,25 +178,35 @@ public class CassandraModSeqProvider implements ModSeqProvider {
     }
     
     public CompletableFuture<Optional<Long>> nextModSeq(CassandraId mailboxId) {
+        return nextModSeqs(mailboxId, 1);
+    }
+
+    /**
+     * Reserve <code>count</code> contiguous mod-sequences using a single lightweight transaction.
+     *
+     * @return the last mod-sequence of the reserved block. The first one is the returned value minus <code>count - 1</code>.
+     */
+    public CompletableFuture<Optional<Long>> nextModSeqs(CassandraId mailboxId, int count) {
+        Preconditions.checkArgument(count > 0, "At least one modseq should be reserved");
         return findHighestModSeq(mailboxId)
             .thenCompose(modSeq -> {
                 if (modSeq.isFirst()) {
-                    return tryInsertModSeq(mailboxId, FIRST_MODSEQ);
+                    return tryInsertModSeq(mailboxId, FIRST_MODSEQ, count);
                 }
-                return tryUpdateModSeq(mailboxId, modSeq);
+                return tryUpdateModSeq(mailboxId, modSeq, count);
             }).thenCompose(firstInsert -> {
                     if (firstInsert.isPresent()) {
                         return CompletableFuture.completedFuture(firstInsert);
                     }
-                    return handleRetries(mailboxId);
+                    return handleRetries(mailboxId, count);
                 })
             .thenApply(optional -> optional.map(ModSeq::getValue));
     }
 
-    private CompletableFuture<Optional<ModSeq>> handleRetries(CassandraId mailboxId) {
+    private CompletableFuture<Optional<ModSeq>> handleRetries(CassandraId mailboxId, int count) {
         return runner.executeAsyncAndRetrieveObject(
             () -> findHighestModSeq(mailboxId)
-                .thenCompose(newModSeq -> tryUpdateModSeq(mailboxId, newModSeq)));
+                .thenCompose(newModSeq -> tryUpdateModSeq(mailboxId, newModSeq, count)));
     }
 
     private static class ModSeq {
@@ -205,8 +216,8 @@ public class CassandraModSeqProvider implements ModSeqProvider {
             this.value = value;
         }
         
-        public ModSeq next() {
-            return new ModSeq(value + 1);
+        public ModSeq add(int count) {
+            return new ModSeq(value + count);
         }
         
         public long getValue() {
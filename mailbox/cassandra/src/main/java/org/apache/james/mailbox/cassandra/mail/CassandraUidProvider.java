@@ -47,6 +47,7 @@ import org.apache.james.util.OptionalConverter;
 
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.Session;
+import com.google.common.base.Preconditions;
 
 public class CassandraUidProvider implements UidProvider {
     private static final int DEFAULT_MAX_RETRY = 100000;
@@ -81,7 +82,7 @@ public class CassandraUidProvider implements UidProvider {
 
     private PreparedStatement prepareInsert(Session session) {
         return session.prepare(insertInto(TABLE_NAME)
-            .value(NEXT_UID, MessageUid.MIN_VALUE.asLong())
+            .value(NEXT_UID, bindMarker(NEXT_UID))
             .value(MAILBOX_ID, bindMarker(MAILBOX_ID))
             .ifNotExists());
     }
@@ -105,12 +106,22 @@ public class CassandraUidProvider implements UidProvider {
     }
 
     public CompletableFuture<Optional<MessageUid>> nextUid(CassandraId cassandraId) {
+        return nextUids(cassandraId, 1);
+    }
+
+    /**
+     * Reserve <code>count</code> contiguous uids using a single lightweight transaction.
+     *
+     * @return the last uid of the reserved block. The first one is the returned uid minus <code>count - 1</code>.
+     */
+    public CompletableFuture<Optional<MessageUid>> nextUids(CassandraId cassandraId, int count) {
+        Preconditions.checkArgument(count > 0, "At least one uid should be reserved");
         return findHighestUid(cassandraId)
             .thenCompose(optional -> {
                 if (optional.isPresent()) {
-                    return tryUpdateUid(cassandraId, optional);
+                    return tryUpdateUid(cassandraId, optional, count);
                 }
-                return tryInsert(cassandraId);
+                return tryInsert(cassandraId, count);
             })
             .thenCompose(optional -> {
                 if (optional.isPresent()) {
@@ -118,7 +129,7 @@ public class CassandraUidProvider implements UidProvider {
                 }
                 return runner.executeAsyncAndRetrieveObject(
                     () -> findHighestUid(cassandraId)
-                        .thenCompose(readUid -> tryUpdateUid(cassandraId, readUid)));
+                        .thenCompose(readUid -> tryUpdateUid(cassandraId, readUid, count)));
             });
     }
 
@@ -134,25 +145,27 @@ public class CassandraUidProvider implements UidProvider {
             .thenApply(optional -> optional.map(row -> MessageUid.of(row.getLong(NEXT_UID))));
     }
 
-    private CompletableFuture<Optional<MessageUid>> tryUpdateUid(CassandraId mailboxId, Optional<MessageUid> uid) {
+    private CompletableFuture<Optional<MessageUid>> tryUpdateUid(CassandraId mailboxId, Optional<MessageUid> uid, int count) {
         if (uid.isPresent()) {
-            MessageUid nextUid = uid.get().next();
+            MessageUid lastReservedUid = MessageUid.of(uid.get().asLong() + count);
             return executor.executeReturnApplied(
                 updateStatement.bind()
                     .setUUID(MAILBOX_ID, mailboxId.asUuid())
                     .setLong(CONDITION, uid.get().asLong())
-                    .setLong(NEXT_UID, nextUid.asLong()))
-                .thenApply(success -> successToUid(nextUid, success));
+                    .setLong(NEXT_UID, lastReservedUid.asLong()))
+                .thenApply(success -> successToUid(lastReservedUid, success));
         } else {
-            return tryInsert(mailboxId);
+            return tryInsert(mailboxId, count);
         }
     }
 
-    private CompletableFuture<Optional<MessageUid>> tryInsert(CassandraId mailboxId) {
+    private CompletableFuture<Optional<MessageUid>> tryInsert(CassandraId mailboxId, int count) {
+        MessageUid lastReservedUid = MessageUid.of(MessageUid.MIN_VALUE.asLong() + count - 1);
         return executor.executeReturnApplied(
             insertStatement.bind()
-                .setUUID(MAILBOX_ID, mailboxId.asUuid()))
-            .thenApply(success -> successToUid(MessageUid.MIN_VALUE, success));
+                .setUUID(MAILBOX_ID, mailboxId.asUuid())
+                .setLong(NEXT_UID, lastReservedUid.asLong()))
+            .thenApply(success -> successToUid(lastReservedUid, success));
     }
 
     private Optional<MessageUid> successToUid(MessageUid uid, Boolean success) {
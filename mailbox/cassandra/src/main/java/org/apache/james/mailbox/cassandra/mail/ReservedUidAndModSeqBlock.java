@@ -0,0 +1,78 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import java.util.Optional;
+
+import org.apache.james.mailbox.MessageUid;
+
+/**
+ * Locally hands out uids and mod-sequences from a block previously reserved in Cassandra.
+ *
+ * Not thread safe: a block belongs to the mapper of a single {@link org.apache.james.mailbox.MailboxSession}.
+ */
+class ReservedUidAndModSeqBlock {
+
+    public static class UidAndModSeq {
+        private final MessageUid uid;
+        private final long modSeq;
+
+        private UidAndModSeq(MessageUid uid, long modSeq) {
+            this.uid = uid;
+            this.modSeq = modSeq;
+        }
+
+        public MessageUid getUid() {
+            return uid;
+        }
+
+        public long getModSeq() {
+            return modSeq;
+        }
+    }
+
+    public static ReservedUidAndModSeqBlock fromLastValues(MessageUid lastUid, long lastModSeq, int count) {
+        return new ReservedUidAndModSeqBlock(lastUid.asLong() - count + 1, lastModSeq - count + 1, count);
+    }
+
+    private long nextUid;
+    private long nextModSeq;
+    private int remaining;
+
+    private ReservedUidAndModSeqBlock(long firstUid, long firstModSeq, int count) {
+        this.nextUid = firstUid;
+        this.nextModSeq = firstModSeq;
+        this.remaining = count;
+    }
+
+    public Optional<UidAndModSeq> next() {
+        if (remaining == 0) {
+            return Optional.empty();
+        }
+        UidAndModSeq result = new UidAndModSeq(MessageUid.of(nextUid), nextModSeq);
+        nextUid++;
+        nextModSeq++;
+        remaining--;
+        return Optional.of(result);
+    }
+
+    public int remaining() {
+        return remaining;
+    }
+}
@@ -47,6 +47,7 @@ public class CassandraAttachmentModule implements CassandraModule {
                     .ifNotExists()
                     .addPartitionKey(CassandraAttachmentTable.ID, text())
                     .addColumn(CassandraAttachmentTable.PAYLOAD, blob())
+                    .addColumn(CassandraAttachmentTable.BLOB_ID, text())
                     .addColumn(CassandraAttachmentTable.TYPE, text())
                     .addColumn(CassandraAttachmentTable.SIZE, bigint())));
         index = Collections.emptyList();
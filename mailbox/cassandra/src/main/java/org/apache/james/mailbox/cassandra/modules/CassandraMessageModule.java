@@ -95,6 +95,8 @@ public class CassandraMessageModule implements CassandraModule {
                     .addColumn(CassandraMessageTable.FULL_CONTENT_OCTETS, bigint())
                     .addColumn(CassandraMessageTable.BODY_CONTENT, blob())
                     .addColumn(CassandraMessageTable.HEADER_CONTENT, blob())
+                    .addColumn(CassandraMessageTable.BODY_BLOB_ID, text())
+                    .addColumn(CassandraMessageTable.HEADER_BLOB_ID, text())
                     .addUDTListColumn(CassandraMessageTable.ATTACHMENTS, SchemaBuilder.frozen(CassandraMessageTable.ATTACHMENTS))
                     .addUDTListColumn(CassandraMessageTable.PROPERTIES, SchemaBuilder.frozen(CassandraMessageTable.PROPERTIES))));
         index = Collections.emptyList();
@@ -0,0 +1,74 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.modules;
+
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.schemabuilder.SchemaBuilder;
+import com.google.common.collect.ImmutableList;
+import org.apache.james.backends.cassandra.components.CassandraIndex;
+import org.apache.james.backends.cassandra.components.CassandraModule;
+import org.apache.james.backends.cassandra.components.CassandraTable;
+import org.apache.james.backends.cassandra.components.CassandraType;
+import org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.IndexedMailboxes;
+
+import java.util.List;
+
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.MAILBOX_ID;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.MOD_SEQ;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.TABLE_NAME;
+import static org.apache.james.mailbox.cassandra.table.CassandraModSeqIndexTable.UID;
+
+public class CassandraModSeqIndexModule implements CassandraModule {
+
+    private final List<CassandraTable> tables;
+    private final List<CassandraIndex> index;
+    private final List<CassandraType> types;
+
+    public CassandraModSeqIndexModule() {
+        tables = ImmutableList.of(new CassandraTable(TABLE_NAME,
+            SchemaBuilder.createTable(TABLE_NAME)
+                .ifNotExists()
+                .addPartitionKey(MAILBOX_ID, DataType.timeuuid())
+                .addClusteringColumn(MOD_SEQ, DataType.bigint())
+                .addClusteringColumn(UID, DataType.bigint())),
+            new CassandraTable(IndexedMailboxes.TABLE_NAME,
+                SchemaBuilder.createTable(IndexedMailboxes.TABLE_NAME)
+                    .ifNotExists()
+                    .addPartitionKey(IndexedMailboxes.MAILBOX_ID, DataType.timeuuid())));
+        index = ImmutableList.of();
+        types = ImmutableList.of();
+    }
+
+    @Override
+    public List<CassandraTable> moduleTables() {
+        return tables;
+    }
+
+    @Override
+    public List<CassandraIndex> moduleIndex() {
+        return index;
+    }
+
+    @Override
+    public List<CassandraType> moduleTypes() {
+        return types;
+    }
+
+}
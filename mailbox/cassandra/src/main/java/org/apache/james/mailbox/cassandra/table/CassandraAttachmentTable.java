@@ -26,6 +26,7 @@ public interface CassandraAttachmentTable {
     String PAYLOAD = "payload";
     String TYPE = "type";
     String SIZE = "size";
-    String[] FIELDS = { ID, PAYLOAD, TYPE, SIZE };
+    String BLOB_ID = "blobId";
+    String[] FIELDS = { ID, PAYLOAD, BLOB_ID, TYPE, SIZE };
 
 }
@@ -0,0 +1,219 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.mailbox.cassandra.modules.CassandraBlobModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+public class CassandraBlobsDAOTest {
+
+    private static final int CHUNK_SIZE = 10;
+    private static final String OWNER = "owner";
+    private static final String OTHER_OWNER = "other";
+
+    private CassandraCluster cassandra;
+    private CassandraBlobsDAO testee;
+
+    @Before
+    public void setUp() {
+        cassandra = CassandraCluster.create(new CassandraBlobModule());
+        cassandra.ensureAllTables();
+
+        testee = new CassandraBlobsDAO(cassandra.getConf(), CHUNK_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        cassandra.clearAllTables();
+    }
+
+    @Test
+    public void readShouldReturnEmptyWhenBlobDoesNotExist() {
+        assertThat(testee.read(BlobId.from("unknown")).join()).isEmpty();
+    }
+
+    @Test
+    public void readShouldReturnSavedEmptyContent() throws Exception {
+        BlobId blobId = testee.save(new ByteArrayInputStream(new byte[0]), OWNER).join();
+
+        assertThat(testee.read(blobId).join().get()).isEmpty();
+    }
+
+    @Test
+    public void readShouldReturnSavedContentSmallerThanAChunk() throws Exception {
+        byte[] content = "small".getBytes(StandardCharsets.UTF_8);
+
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        assertThat(testee.read(blobId).join().get()).isEqualTo(content);
+    }
+
+    @Test
+    public void readShouldReturnSavedContentSpanningSeveralChunks() throws Exception {
+        byte[] content = Strings.repeat("0123456789", 100).concat("tail").getBytes(StandardCharsets.UTF_8);
+
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        assertThat(testee.read(blobId).join().get()).isEqualTo(content);
+    }
+
+    @Test
+    public void saveShouldReturnTheSameIdForIdenticalContents() throws Exception {
+        byte[] content = "same content for both".getBytes(StandardCharsets.UTF_8);
+
+        BlobId blobId1 = testee.save(new ByteArrayInputStream(content), OWNER).join();
+        BlobId blobId2 = testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        assertThat(blobId1).isEqualTo(blobId2);
+    }
+
+    @Test
+    public void saveShouldReturnDifferentIdsForDifferentContents() throws Exception {
+        BlobId blobId1 = testee.save(new ByteArrayInputStream("content 1".getBytes(StandardCharsets.UTF_8)), OWNER).join();
+        BlobId blobId2 = testee.save(new ByteArrayInputStream("content 2".getBytes(StandardCharsets.UTF_8)), OWNER).join();
+
+        assertThat(blobId1).isNotEqualTo(blobId2);
+    }
+
+    @Test
+    public void readRangeShouldReturnBytesAcrossChunks() throws Exception {
+        byte[] content = "abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        assertThat(new String(testee.read(blobId, 8, 5).join().get(), StandardCharsets.UTF_8)).isEqualTo("ijklm");
+    }
+
+    @Test
+    public void readRangeShouldBeTruncatedAtTheEndOfTheBlob() throws Exception {
+        byte[] content = "abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        assertThat(new String(testee.read(blobId, 22, 100).join().get(), StandardCharsets.UTF_8)).isEqualTo("wxyz");
+    }
+
+    @Test
+    public void readRangeShouldReturnEmptyArrayWhenOffsetIsAfterTheEnd() throws Exception {
+        byte[] content = "abc".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        assertThat(testee.read(blobId, 10, 5).join().get()).isEmpty();
+    }
+
+    @Test
+    public void deleteShouldRemoveTheBlobWhenNoLongerReferenced() throws Exception {
+        BlobId blobId = testee.save(new ByteArrayInputStream("content spanning chunks".getBytes(StandardCharsets.UTF_8)), OWNER).join();
+
+        testee.delete(blobId, OWNER).join();
+
+        assertThat(testee.read(blobId).join()).isEmpty();
+    }
+
+    @Test
+    public void deleteShouldKeepTheBlobWhenStillReferenced() throws Exception {
+        byte[] content = "content spanning chunks".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+        testee.save(new ByteArrayInputStream(content), OTHER_OWNER).join();
+
+        testee.delete(blobId, OWNER).join();
+
+        assertThat(testee.read(blobId).join().get()).isEqualTo(content);
+    }
+
+    @Test
+    public void deleteShouldRemoveTheBlobOnceAllOwnersAreRemoved() throws Exception {
+        byte[] content = "content spanning chunks".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+        testee.save(new ByteArrayInputStream(content), OTHER_OWNER).join();
+
+        testee.delete(blobId, OWNER).join();
+        testee.delete(blobId, OTHER_OWNER).join();
+
+        assertThat(testee.read(blobId).join()).isEmpty();
+    }
+
+    @Test
+    public void saveShouldNotAddAReferenceWhenTheOwnerAlreadyReferencesTheBlob() throws Exception {
+        byte[] content = "content spanning chunks".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+        testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        testee.delete(blobId, OWNER).join();
+
+        assertThat(testee.read(blobId).join()).isEmpty();
+    }
+
+    @Test
+    public void deleteShouldNotRemoveOtherOwnersWhenCalledTwice() throws Exception {
+        byte[] content = "content spanning chunks".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+        testee.save(new ByteArrayInputStream(content), OTHER_OWNER).join();
+
+        testee.delete(blobId, OWNER).join();
+        testee.delete(blobId, OWNER).join();
+
+        assertThat(testee.read(blobId).join().get()).isEqualTo(content);
+    }
+
+    @Test
+    public void deleteShouldKeepOtherBlobsWithCommonChunks() throws Exception {
+        byte[] otherContent = "0123456789other".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream("0123456789tail".getBytes(StandardCharsets.UTF_8)), OWNER).join();
+        BlobId otherBlobId = testee.save(new ByteArrayInputStream(otherContent), OWNER).join();
+
+        testee.delete(blobId, OWNER).join();
+
+        assertThat(testee.read(otherBlobId).join().get()).isEqualTo(otherContent);
+    }
+
+    @Test
+    public void deleteShouldNotFailWhenBlobDoesNotExist() {
+        testee.delete(BlobId.from("unknown"), OWNER).join();
+    }
+
+    @Test
+    public void deleteShouldNotFailWhenOwnerDoesNotReferenceTheBlob() throws Exception {
+        byte[] content = "content spanning chunks".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        testee.delete(blobId, OTHER_OWNER).join();
+
+        assertThat(testee.read(blobId).join().get()).isEqualTo(content);
+    }
+
+    @Test
+    public void saveShouldStoreAgainADeletedBlob() throws Exception {
+        byte[] content = "content spanning chunks".getBytes(StandardCharsets.UTF_8);
+        BlobId blobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+        testee.delete(blobId, OWNER).join();
+
+        BlobId savedAgainBlobId = testee.save(new ByteArrayInputStream(content), OWNER).join();
+
+        assertThat(testee.read(savedAgainBlobId).join().get()).isEqualTo(content);
+    }
+}
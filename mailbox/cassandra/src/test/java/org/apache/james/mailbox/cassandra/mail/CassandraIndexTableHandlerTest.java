@@ -29,6 +29,7 @@ import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 
 import com.github.steveash.guavate.Guavate;
+import org.apache.commons.lang3.tuple.Pair;
 import org.apache.james.backends.cassandra.CassandraCluster;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
 import org.apache.james.mailbox.FlagsBuilder;
@@ -37,6 +38,7 @@ import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.mailbox.cassandra.CassandraMessageId;
 import org.apache.james.mailbox.cassandra.modules.CassandraApplicableFlagsModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraDeletedMessageModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqIndexModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraFirstUnseenModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraMailboxCounterModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraMailboxRecentsModule;
@@ -67,6 +69,7 @@ public class CassandraIndexTableHandlerTest {
     private CassandraFirstUnseenDAO firstUnseenDAO;
     private CassandraIndexTableHandler testee;
     private CassandraDeletedMessageDAO deletedMessageDAO;
+    private CassandraModSeqIndexDAO modSeqIndexDAO;
     private Mailbox mailbox;
 
     @Before
@@ -77,7 +80,8 @@ public class CassandraIndexTableHandlerTest {
                 new CassandraMailboxRecentsModule(),
                 new CassandraFirstUnseenModule(),
                 new CassandraApplicableFlagsModule(),
-                new CassandraDeletedMessageModule()));
+                new CassandraDeletedMessageModule(),
+                new CassandraModSeqIndexModule()));
         cassandra.ensureAllTables();
 
         mailboxCounterDAO = new CassandraMailboxCounterDAO(cassandra.getConf());
@@ -85,12 +89,14 @@ public class CassandraIndexTableHandlerTest {
         firstUnseenDAO = new CassandraFirstUnseenDAO(cassandra.getConf());
         applicableFlagDAO = new CassandraApplicableFlagDAO(cassandra.getConf());
         deletedMessageDAO = new CassandraDeletedMessageDAO(cassandra.getConf());
+        modSeqIndexDAO = new CassandraModSeqIndexDAO(cassandra.getConf());
 
         testee = new CassandraIndexTableHandler(mailboxRecentsDAO,
                                                 mailboxCounterDAO,
                                                 firstUnseenDAO,
                                                 applicableFlagDAO,
-                                                deletedMessageDAO);
+                                                deletedMessageDAO,
+                                                modSeqIndexDAO);
 
         mailbox = new SimpleMailbox(new MailboxPath("#private", "user", "name"),
             UID_VALIDITY,
@@ -697,4 +703,60 @@ public class CassandraIndexTableHandlerTest {
         Flags applicableFlag = applicableFlagDAO.retrieveApplicableFlag(MAILBOX_ID).join().get();
         assertThat(applicableFlag).isEqualTo(new FlagsBuilder().add(Flag.ANSWERED, Flag.DRAFT, Flag.DELETED).build());
     }
+
+    @Test
+    public void updateIndexOnAddShouldIndexModSeq() throws Exception {
+        MailboxMessage message = mock(MailboxMessage.class);
+        when(message.createFlags()).thenReturn(new Flags());
+        when(message.getUid()).thenReturn(MESSAGE_UID);
+        when(message.getModSeq()).thenReturn(MODSEQ);
+
+        testee.updateIndexOnAdd(message, MAILBOX_ID).join();
+
+        assertThat(modSeqIndexDAO.retrieveChangedSince(MAILBOX_ID, MODSEQ - 1)
+                .join()
+                .collect(Guavate.toImmutableList()))
+            .containsOnly(Pair.of(MESSAGE_UID, MODSEQ));
+    }
+
+    @Test
+    public void updateIndexOnFlagsUpdateShouldIndexNewModSeq() throws Exception {
+        MailboxMessage message = mock(MailboxMessage.class);
+        when(message.createFlags()).thenReturn(new Flags());
+        when(message.getUid()).thenReturn(MESSAGE_UID);
+        when(message.getModSeq()).thenReturn(MODSEQ);
+        testee.updateIndexOnAdd(message, MAILBOX_ID).join();
+
+        testee.updateIndexOnFlagsUpdate(MAILBOX_ID, UpdatedFlags.builder()
+            .uid(MESSAGE_UID)
+            .newFlags(new Flags(Flags.Flag.SEEN))
+            .oldFlags(new Flags())
+            .modSeq(MODSEQ + 1)
+            .build()).join();
+
+        assertThat(modSeqIndexDAO.retrieveChangedSince(MAILBOX_ID, MODSEQ)
+                .join()
+                .collect(Guavate.toImmutableList()))
+            .containsOnly(Pair.of(MESSAGE_UID, MODSEQ + 1));
+    }
+
+    @Test
+    public void updateIndexOnDeleteShouldRemoveModSeqIndexEntry() throws Exception {
+        MailboxMessage message = mock(MailboxMessage.class);
+        when(message.createFlags()).thenReturn(new Flags());
+        when(message.getUid()).thenReturn(MESSAGE_UID);
+        when(message.getModSeq()).thenReturn(MODSEQ);
+        testee.updateIndexOnAdd(message, MAILBOX_ID).join();
+
+        testee.updateIndexOnDelete(new ComposedMessageIdWithMetaData(
+                new ComposedMessageId(MAILBOX_ID, CASSANDRA_MESSAGE_ID, MESSAGE_UID),
+                new Flags(),
+                MODSEQ),
+            MAILBOX_ID).join();
+
+        assertThat(modSeqIndexDAO.retrieveChangedSince(MAILBOX_ID, 0)
+                .join()
+                .collect(Guavate.toImmutableList()))
+            .isEmpty();
+    }
 }
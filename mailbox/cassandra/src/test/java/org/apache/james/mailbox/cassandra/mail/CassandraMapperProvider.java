@@ -32,7 +32,9 @@ import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraAnnotationModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraApplicableFlagsModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraAttachmentModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraBlobModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraDeletedMessageModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqIndexModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraFirstUnseenModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraMailboxCounterModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
@@ -67,10 +69,12 @@ public class CassandraMapperProvider implements MapperProvider {
         new CassandraModSeqModule(),
         new CassandraUidModule(),
         new CassandraAttachmentModule(),
+        new CassandraBlobModule(),
         new CassandraAnnotationModule(),
         new CassandraFirstUnseenModule(),
         new CassandraApplicableFlagsModule(),
-        new CassandraDeletedMessageModule()));
+        new CassandraDeletedMessageModule(),
+        new CassandraModSeqIndexModule()));
     public static final int MAX_ACL_RETRY = 10;
 
     private final MessageUidProvider messageUidProvider;
@@ -106,6 +110,7 @@ public class CassandraMapperProvider implements MapperProvider {
         CassandraMailboxPathDAO mailboxPathDAO = new CassandraMailboxPathDAO(cassandra.getConf(), cassandra.getTypesProvider());
         CassandraFirstUnseenDAO firstUnseenDAO = new CassandraFirstUnseenDAO(cassandra.getConf());
         CassandraDeletedMessageDAO deletedMessageDAO = new CassandraDeletedMessageDAO(cassandra.getConf());
+        CassandraModSeqIndexDAO modSeqIndexDAO = new CassandraModSeqIndexDAO(cassandra.getConf());
         return new CassandraMailboxSessionMapperFactory(
             new CassandraUidProvider(cassandra.getConf()),
             cassandraModSeqProvider,
@@ -119,7 +124,8 @@ public class CassandraMapperProvider implements MapperProvider {
             mailboxPathDAO,
             firstUnseenDAO,
             new CassandraApplicableFlagDAO(cassandra.getConf()),
-            deletedMessageDAO);
+            deletedMessageDAO,
+            modSeqIndexDAO);
     }
 
     @Override
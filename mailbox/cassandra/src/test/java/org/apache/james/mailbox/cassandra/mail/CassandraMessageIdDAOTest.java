@@ -40,6 +40,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+
 public class CassandraMessageIdDAOTest {
 
     private CassandraCluster cassandra;
@@ -518,4 +520,43 @@ public class CassandraMessageIdDAOTest {
 
         assertThat(messages).containsOnly(composedMessageIdWithMetaData);
     }
+
+    @Test
+    public void retrieveShouldReturnOnlyTheGivenUids() {
+        CassandraId mailboxId = CassandraId.timeBased();
+        ComposedMessageIdWithMetaData composedMessageIdWithMetaData = ComposedMessageIdWithMetaData.builder()
+                .composedMessageId(new ComposedMessageId(mailboxId, messageIdFactory.generate(), MessageUid.of(1)))
+                .flags(new Flags())
+                .modSeq(1)
+                .build();
+        ComposedMessageIdWithMetaData composedMessageIdWithMetaData2 = ComposedMessageIdWithMetaData.builder()
+                .composedMessageId(new ComposedMessageId(mailboxId, messageIdFactory.generate(), MessageUid.of(2)))
+                .flags(new Flags())
+                .modSeq(2)
+                .build();
+        ComposedMessageIdWithMetaData composedMessageIdWithMetaData3 = ComposedMessageIdWithMetaData.builder()
+                .composedMessageId(new ComposedMessageId(mailboxId, messageIdFactory.generate(), MessageUid.of(3)))
+                .flags(new Flags())
+                .modSeq(3)
+                .build();
+        CompletableFuture.allOf(testee.insert(composedMessageIdWithMetaData),
+                testee.insert(composedMessageIdWithMetaData2),
+                testee.insert(composedMessageIdWithMetaData3))
+        .join();
+
+        List<ComposedMessageIdWithMetaData> messages = testee.retrieve(mailboxId, ImmutableList.of(MessageUid.of(1), MessageUid.of(3), MessageUid.of(4)))
+                .join()
+                .collect(Collectors.toList());
+
+        assertThat(messages).containsOnly(composedMessageIdWithMetaData, composedMessageIdWithMetaData3);
+    }
+
+    @Test
+    public void retrieveShouldReturnEmptyWhenNoUids() {
+        List<ComposedMessageIdWithMetaData> messages = testee.retrieve(CassandraId.timeBased(), ImmutableList.of())
+                .join()
+                .collect(Collectors.toList());
+
+        assertThat(messages).isEmpty();
+    }
 }
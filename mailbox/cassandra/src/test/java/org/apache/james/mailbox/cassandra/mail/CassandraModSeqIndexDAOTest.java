@@ -0,0 +1,163 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqIndexModule;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.steveash.guavate.Guavate;
+
+public class CassandraModSeqIndexDAOTest {
+    public static final CassandraId MAILBOX_ID = CassandraId.of(UUID.fromString("110e8400-e29b-11d4-a716-446655440000"));
+    public static final CassandraId OTHER_MAILBOX_ID = CassandraId.of(UUID.fromString("120e8400-e29b-11d4-a716-446655440000"));
+    public static final MessageUid UID_1 = MessageUid.of(1);
+    public static final MessageUid UID_2 = MessageUid.of(2);
+
+    private CassandraCluster cassandra;
+    private CassandraModSeqIndexDAO testee;
+
+    @Before
+    public void setUp() {
+        cassandra = CassandraCluster.create(
+            new CassandraModSeqIndexModule());
+        cassandra.ensureAllTables();
+
+        testee = new CassandraModSeqIndexDAO(cassandra.getConf());
+    }
+
+    @After
+    public void tearDown() {
+        cassandra.clearAllTables();
+    }
+
+    @Test
+    public void retrieveChangedSinceShouldReturnEmptyByDefault() {
+        List<Pair<MessageUid, Long>> result = testee.retrieveChangedSince(MAILBOX_ID, 0)
+            .join()
+            .collect(Guavate.toImmutableList());
+
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void retrieveChangedSinceShouldOnlyReturnEntriesWithGreaterModSeq() {
+        testee.add(MAILBOX_ID, 5, UID_1).join();
+        testee.add(MAILBOX_ID, 6, UID_2).join();
+
+        List<Pair<MessageUid, Long>> result = testee.retrieveChangedSince(MAILBOX_ID, 5)
+            .join()
+            .collect(Guavate.toImmutableList());
+
+        assertThat(result).containsExactly(Pair.of(UID_2, 6L));
+    }
+
+    @Test
+    public void retrieveChangedSinceShouldReturnEveryModSeqOfAMessage() {
+        testee.add(MAILBOX_ID, 5, UID_1).join();
+        testee.add(MAILBOX_ID, 7, UID_1).join();
+
+        List<Pair<MessageUid, Long>> result = testee.retrieveChangedSince(MAILBOX_ID, 0)
+            .join()
+            .collect(Guavate.toImmutableList());
+
+        assertThat(result).containsExactly(Pair.of(UID_1, 5L), Pair.of(UID_1, 7L));
+    }
+
+    @Test
+    public void retrieveChangedSinceShouldNotReturnEntriesOfOtherMailboxes() {
+        testee.add(OTHER_MAILBOX_ID, 5, UID_1).join();
+
+        List<Pair<MessageUid, Long>> result = testee.retrieveChangedSince(MAILBOX_ID, 0)
+            .join()
+            .collect(Guavate.toImmutableList());
+
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void retrieveChangedSinceShouldReturnAtMostPageSizeEntriesOrderedByModSeq() {
+        testee.add(MAILBOX_ID, 7, UID_1).join();
+        testee.add(MAILBOX_ID, 5, UID_2).join();
+        testee.add(MAILBOX_ID, 9, UID_1).join();
+
+        List<Pair<MessageUid, Long>> result = testee.retrieveChangedSince(MAILBOX_ID, 0, 2)
+            .join()
+            .collect(Guavate.toImmutableList());
+
+        assertThat(result).containsExactly(Pair.of(UID_2, 5L), Pair.of(UID_1, 7L));
+    }
+
+    @Test
+    public void retrieveChangedSinceShouldReturnTheFollowingPageAfterTheGivenModSeq() {
+        testee.add(MAILBOX_ID, 5, UID_2).join();
+        testee.add(MAILBOX_ID, 7, UID_1).join();
+        testee.add(MAILBOX_ID, 9, UID_1).join();
+
+        List<Pair<MessageUid, Long>> result = testee.retrieveChangedSince(MAILBOX_ID, 7, 2)
+            .join()
+            .collect(Guavate.toImmutableList());
+
+        assertThat(result).containsExactly(Pair.of(UID_1, 9L));
+    }
+
+    @Test
+    public void removeShouldOnlyRemoveTheGivenEntry() {
+        testee.add(MAILBOX_ID, 5, UID_1).join();
+        testee.add(MAILBOX_ID, 7, UID_1).join();
+
+        testee.remove(MAILBOX_ID, 5, UID_1).join();
+
+        List<Pair<MessageUid, Long>> result = testee.retrieveChangedSince(MAILBOX_ID, 0)
+            .join()
+            .collect(Guavate.toImmutableList());
+
+        assertThat(result).containsExactly(Pair.of(UID_1, 7L));
+    }
+
+    @Test
+    public void isIndexedShouldReturnFalseByDefault() {
+        assertThat(testee.isIndexed(MAILBOX_ID).join()).isFalse();
+    }
+
+    @Test
+    public void isIndexedShouldReturnTrueWhenMarkedIndexed() {
+        testee.markIndexed(MAILBOX_ID).join();
+
+        assertThat(testee.isIndexed(MAILBOX_ID).join()).isTrue();
+    }
+
+    @Test
+    public void markIndexedShouldNotAffectOtherMailboxes() {
+        testee.markIndexed(MAILBOX_ID).join();
+
+        assertThat(testee.isIndexed(OTHER_MAILBOX_ID).join()).isFalse();
+    }
+}
@@ -0,0 +1,159 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import javax.mail.Flags;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.james.backends.cassandra.CassandraCluster;
+import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.cassandra.CassandraId;
+import org.apache.james.mailbox.cassandra.CassandraMessageId;
+import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraMessageModule;
+import org.apache.james.mailbox.cassandra.modules.CassandraModSeqIndexModule;
+import org.apache.james.mailbox.model.ComposedMessageId;
+import org.apache.james.mailbox.model.ComposedMessageIdWithMetaData;
+import org.apache.james.mailbox.model.MailboxConstants;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.store.mail.model.impl.SimpleMailbox;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.steveash.guavate.Guavate;
+
+public class CassandraModSeqIndexMigrationTest {
+    public static final int MAX_ACL_RETRY = 10;
+    public static final MessageUid UID_1 = MessageUid.of(1);
+    public static final MessageUid UID_2 = MessageUid.of(2);
+
+    private CassandraCluster cassandra;
+    private CassandraMailboxDAO mailboxDAO;
+    private CassandraMessageIdDAO messageIdDAO;
+    private CassandraModSeqIndexDAO modSeqIndexDAO;
+    private CassandraMessageId.Factory messageIdFactory;
+    private CassandraModSeqIndexMigration testee;
+
+    @Before
+    public void setUp() {
+        cassandra = CassandraCluster.create(new CassandraModuleComposite(
+            new CassandraMailboxModule(),
+            new CassandraAclModule(),
+            new CassandraMessageModule(),
+            new CassandraModSeqIndexModule()));
+        cassandra.ensureAllTables();
+
+        messageIdFactory = new CassandraMessageId.Factory();
+        mailboxDAO = new CassandraMailboxDAO(cassandra.getConf(), cassandra.getTypesProvider(), MAX_ACL_RETRY);
+        messageIdDAO = new CassandraMessageIdDAO(cassandra.getConf(), messageIdFactory);
+        modSeqIndexDAO = new CassandraModSeqIndexDAO(cassandra.getConf());
+        testee = new CassandraModSeqIndexMigration(mailboxDAO, messageIdDAO, modSeqIndexDAO);
+    }
+
+    @After
+    public void tearDown() {
+        cassandra.clearAllTables();
+    }
+
+    @Test
+    public void migrateShouldIndexTheMessagesOfTheMailbox() {
+        CassandraId mailboxId = CassandraId.timeBased();
+        insertMessage(mailboxId, UID_1, 5);
+        insertMessage(mailboxId, UID_2, 3);
+
+        testee.migrate(mailboxId).join();
+
+        assertThat(retrieveIndexEntries(mailboxId)).containsExactly(Pair.of(UID_2, 3L), Pair.of(UID_1, 5L));
+    }
+
+    @Test
+    public void migrateShouldMarkTheMailboxAsIndexed() {
+        CassandraId mailboxId = CassandraId.timeBased();
+        insertMessage(mailboxId, UID_1, 5);
+
+        testee.migrate(mailboxId).join();
+
+        assertThat(modSeqIndexDAO.isIndexed(mailboxId).join()).isTrue();
+    }
+
+    @Test
+    public void migrateShouldNotIndexOtherMailboxes() {
+        CassandraId mailboxId = CassandraId.timeBased();
+        CassandraId otherMailboxId = CassandraId.timeBased();
+        insertMessage(otherMailboxId, UID_1, 5);
+
+        testee.migrate(mailboxId).join();
+
+        assertThat(retrieveIndexEntries(otherMailboxId)).isEmpty();
+        assertThat(modSeqIndexDAO.isIndexed(otherMailboxId).join()).isFalse();
+    }
+
+    @Test
+    public void migrateAllMailboxesShouldIndexEveryMailbox() {
+        CassandraId mailboxId = saveMailbox("abcd");
+        CassandraId otherMailboxId = saveMailbox("defg");
+        insertMessage(mailboxId, UID_1, 5);
+        insertMessage(otherMailboxId, UID_1, 7);
+
+        testee.migrateAllMailboxes().join();
+
+        assertThat(retrieveIndexEntries(mailboxId)).containsExactly(Pair.of(UID_1, 5L));
+        assertThat(retrieveIndexEntries(otherMailboxId)).containsExactly(Pair.of(UID_1, 7L));
+    }
+
+    @Test
+    public void migrateAllMailboxesShouldSkipIndexedMailboxes() {
+        CassandraId mailboxId = saveMailbox("abcd");
+        insertMessage(mailboxId, UID_1, 5);
+        modSeqIndexDAO.markIndexed(mailboxId).join();
+
+        testee.migrateAllMailboxes().join();
+
+        assertThat(retrieveIndexEntries(mailboxId)).isEmpty();
+    }
+
+    private CassandraId saveMailbox(String name) {
+        CassandraId mailboxId = CassandraId.timeBased();
+        mailboxDAO.save(new SimpleMailbox(new MailboxPath(MailboxConstants.USER_NAMESPACE, "user", name), 145, mailboxId)).join();
+        return mailboxId;
+    }
+
+    private void insertMessage(CassandraId mailboxId, MessageUid uid, long modSeq) {
+        messageIdDAO.insert(ComposedMessageIdWithMetaData.builder()
+                .composedMessageId(new ComposedMessageId(mailboxId, messageIdFactory.generate(), uid))
+                .flags(new Flags())
+                .modSeq(modSeq)
+                .build())
+            .join();
+    }
+
+    private List<Pair<MessageUid, Long>> retrieveIndexEntries(CassandraId mailboxId) {
+        return modSeqIndexDAO.retrieveChangedSince(mailboxId, 0)
+            .join()
+            .collect(Guavate.toImmutableList());
+    }
+}
@@ -25,6 +25,7 @@ import java.util.stream.LongStream;
 
 import org.apache.james.backends.cassandra.CassandraCluster;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
+import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule;
@@ -101,4 +102,19 @@ public class CassandraModSeqProviderTest {
             .count();
         assertThat(nbValues).isEqualTo(nbEntries);
     }
+
+    @Test
+    public void nextModSeqsShouldReserveABlockWhenNoModSeqYet() throws Exception {
+        long lastReserved = modSeqProvider.nextModSeqs((CassandraId) mailbox.getMailboxId(), 10).join().get();
+
+        assertThat(lastReserved).isEqualTo(10);
+    }
+
+    @Test
+    public void nextModSeqShouldFollowTheReservedBlock() throws Exception {
+        modSeqProvider.nextModSeq(null, mailbox);
+        modSeqProvider.nextModSeqs((CassandraId) mailbox.getMailboxId(), 10).join();
+
+        assertThat(modSeqProvider.nextModSeq(null, mailbox)).isEqualTo(12);
+    }
 }
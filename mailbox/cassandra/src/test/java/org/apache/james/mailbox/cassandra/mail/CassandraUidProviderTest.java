@@ -26,6 +26,7 @@ import java.util.stream.LongStream;
 import org.apache.james.backends.cassandra.CassandraCluster;
 import org.apache.james.backends.cassandra.init.CassandraModuleComposite;
 import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.cassandra.CassandraId;
 import org.apache.james.mailbox.cassandra.modules.CassandraAclModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraMailboxModule;
 import org.apache.james.mailbox.cassandra.modules.CassandraUidModule;
@@ -103,4 +104,19 @@ public class CassandraUidProviderTest {
             .count();
         assertThat(nbValues).isEqualTo(nbEntries);
     }
+
+    @Test
+    public void nextUidsShouldReserveABlockWhenNoUidYet() throws Exception {
+        MessageUid lastReserved = uidProvider.nextUids((CassandraId) mailbox.getMailboxId(), 10).join().get();
+
+        assertThat(lastReserved).isEqualTo(MessageUid.of(10));
+    }
+
+    @Test
+    public void nextUidShouldFollowTheReservedBlock() throws Exception {
+        uidProvider.nextUid(null, mailbox);
+        uidProvider.nextUids((CassandraId) mailbox.getMailboxId(), 10).join();
+
+        assertThat(uidProvider.nextUid(null, mailbox)).isEqualTo(MessageUid.of(12));
+    }
 }
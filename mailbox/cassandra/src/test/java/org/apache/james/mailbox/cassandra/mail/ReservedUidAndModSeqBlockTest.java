@@ -0,0 +1,60 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.cassandra.mail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.james.mailbox.MessageUid;
+import org.junit.Test;
+
+public class ReservedUidAndModSeqBlockTest {
+
+    @Test
+    public void nextShouldStartAtTheFirstReservedValues() {
+        ReservedUidAndModSeqBlock block = ReservedUidAndModSeqBlock.fromLastValues(MessageUid.of(12), 25, 3);
+
+        ReservedUidAndModSeqBlock.UidAndModSeq first = block.next().get();
+
+        assertThat(first.getUid()).isEqualTo(MessageUid.of(10));
+        assertThat(first.getModSeq()).isEqualTo(23);
+    }
+
+    @Test
+    public void nextShouldHandOutAscendingValues() {
+        ReservedUidAndModSeqBlock block = ReservedUidAndModSeqBlock.fromLastValues(MessageUid.of(12), 25, 3);
+
+        block.next();
+        ReservedUidAndModSeqBlock.UidAndModSeq second = block.next().get();
+
+        assertThat(second.getUid()).isEqualTo(MessageUid.of(11));
+        assertThat(second.getModSeq()).isEqualTo(24);
+    }
+
+    @Test
+    public void nextShouldReturnEmptyOnceTheBlockIsExhausted() {
+        ReservedUidAndModSeqBlock block = ReservedUidAndModSeqBlock.fromLastValues(MessageUid.of(12), 25, 3);
+
+        block.next();
+        block.next();
+        block.next();
+
+        assertThat(block.next().isPresent()).isFalse();
+        assertThat(block.remaining()).isEqualTo(0);
+    }
+}
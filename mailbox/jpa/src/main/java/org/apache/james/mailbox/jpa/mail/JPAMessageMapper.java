@@ -18,6 +18,7 @@
  ****************************************************************/
 package org.apache.james.mailbox.jpa.mail;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -45,13 +46,16 @@ import org.apache.james.mailbox.model.MessageRange.Type;
 import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.FlagsUpdateCalculator;
 import org.apache.james.mailbox.store.SimpleMessageMetaData;
+import org.apache.james.mailbox.store.mail.ChangedSinceMessageMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.MessageUtils;
 import org.apache.james.mailbox.store.mail.MessageUtils.MessageChangedFlags;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
+import org.apache.james.mailbox.store.mail.PropertiesUpdatingMessageMapper;
 import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.Property;
 import org.apache.james.mailbox.store.mail.utils.ApplicableFlagCalculator;
 import org.apache.openjpa.persistence.ArgumentException;
 
@@ -61,7 +65,7 @@ import com.google.common.collect.ImmutableList;
 /**
  * JPA implementation of a {@link MessageMapper}. This class is not thread-safe!
  */
-public class JPAMessageMapper extends JPATransactionalMapper implements MessageMapper {
+public class JPAMessageMapper extends JPATransactionalMapper implements MessageMapper, ChangedSinceMessageMapper, PropertiesUpdatingMessageMapper {
     private static final int UNLIMIT_MAX_SIZE = -1;
     private final MessageUtils messageMetadataMapper;
 
@@ -116,6 +120,44 @@ public class JPAMessageMapper extends JPATransactionalMapper implements MessageM
         }
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<MailboxMessage> findChangedSinceInMailbox(Mailbox mailbox, MessageRange set, long modSeq, FetchType type, int max)
+            throws MailboxException {
+        try {
+            JPAId mailboxId = (JPAId) mailbox.getMailboxId();
+            Query query = getEntityManager().createNamedQuery("findChangedMessagesInMailboxBetweenUIDs")
+                    .setParameter("idParam", mailboxId.getRawId())
+                    .setParameter("fromParam", set.getUidFrom().asLong())
+                    .setParameter("toParam", set.getUidTo().asLong())
+                    .setParameter("modSeqParam", modSeq);
+            if (max > 0) {
+                query.setMaxResults(max);
+            }
+            List<MailboxMessage> results = new ArrayList<MailboxMessage>(query.getResultList());
+            if (max > 0 && results.size() == max) {
+                results.addAll(findFollowingMessagesWithSameModSeq(mailboxId, set, results.get(results.size() - 1)));
+            }
+            return results.iterator();
+        } catch (PersistenceException e) {
+            throw new MailboxException("Search of messages changed since " + modSeq + " in MessageRange " + set + " failed in mailbox " + mailbox, e);
+        }
+    }
+
+    /**
+     * Messages sharing the MODSEQ of the last message of a limited result are returned along with it, so that the
+     * following messages can be read starting after that MODSEQ.
+     */
+    @SuppressWarnings("unchecked")
+    private List<MailboxMessage> findFollowingMessagesWithSameModSeq(JPAId mailboxId, MessageRange set, MailboxMessage last) {
+        return getEntityManager().createNamedQuery("findMessagesInMailboxBetweenUIDsWithModSeq")
+                .setParameter("idParam", mailboxId.getRawId())
+                .setParameter("fromParam", last.getUid().next().asLong())
+                .setParameter("toParam", set.getUidTo().asLong())
+                .setParameter("modSeqParam", last.getModSeq())
+                .getResultList();
+    }
+
     /**
      * @see org.apache.james.mailbox.store.mail.MessageMapper#countMessagesInMailbox(Mailbox)
      */
@@ -156,8 +198,23 @@ public class JPAMessageMapper extends JPATransactionalMapper implements MessageM
         }
     }
 
+    @Override
+    public void updateProperties(MailboxMessage message, List<Property> properties) throws MailboxException {
+        try {
+            AbstractJPAMailboxMessage jpaMessage = getEntityManager().find(AbstractJPAMailboxMessage.class, buildKey((JPAId) message.getMailboxId(), message));
+            if (jpaMessage != null) {
+                jpaMessage.setProperties(properties);
+            }
+        } catch (PersistenceException e) {
+            throw new MailboxException("Update of the properties of message " + message + " failed", e);
+        }
+    }
+
     private AbstractJPAMailboxMessage.MailboxIdUidKey buildKey(Mailbox mailbox, MailboxMessage message) {
-        JPAId mailboxId = (JPAId) mailbox.getMailboxId();
+        return buildKey((JPAId) mailbox.getMailboxId(), message);
+    }
+
+    private AbstractJPAMailboxMessage.MailboxIdUidKey buildKey(JPAId mailboxId, MailboxMessage message) {
         AbstractJPAMailboxMessage.MailboxIdUidKey key = new AbstractJPAMailboxMessage.MailboxIdUidKey();
         key.mailbox = mailboxId.getRawId();
         key.uid = message.getUid().asLong();
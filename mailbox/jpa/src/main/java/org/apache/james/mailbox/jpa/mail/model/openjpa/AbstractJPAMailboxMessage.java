@@ -75,6 +75,8 @@ import com.google.common.base.Objects;
         @NamedQuery(name = "findMessagesInMailboxBetweenUIDs", query = "SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam ORDER BY message.uid ASC"),
         @NamedQuery(name = "findMessagesInMailboxWithUID", query = "SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid=:uidParam ORDER BY message.uid ASC"),
         @NamedQuery(name = "findMessagesInMailboxAfterUID", query = "SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid>=:uidParam ORDER BY message.uid ASC"),
+        @NamedQuery(name = "findChangedMessagesInMailboxBetweenUIDs", query = "SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.modSeq > :modSeqParam ORDER BY message.modSeq ASC, message.uid ASC"),
+        @NamedQuery(name = "findMessagesInMailboxBetweenUIDsWithModSeq", query = "SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.modSeq = :modSeqParam ORDER BY message.uid ASC"),
         @NamedQuery(name = "findDeletedMessagesInMailbox", query = "SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.deleted=TRUE ORDER BY message.uid ASC"),
         @NamedQuery(name = "findDeletedMessagesInMailboxBetweenUIDs", query = "SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid BETWEEN :fromParam AND :toParam AND message.deleted=TRUE ORDER BY message.uid ASC"),
         @NamedQuery(name = "findDeletedMessagesInMailboxWithUID", query = "SELECT message FROM MailboxMessage message WHERE message.mailbox.mailboxId = :idParam AND message.uid=:uidParam AND message.deleted=TRUE ORDER BY message.uid ASC"),
@@ -218,7 +220,7 @@ public abstract class AbstractJPAMailboxMessage implements MailboxMessage {
     private Long textualLineCount;
 
     /** Meta data for this message */
-    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+    @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER, orphanRemoval = true)
     @OrderBy("line")
     @ElementJoinColumns({ @ElementJoinColumn(name = "MAILBOX_ID", referencedColumnName = "MAILBOX_ID"),
             @ElementJoinColumn(name = "MAIL_UID", referencedColumnName = "MAIL_UID") })
@@ -355,6 +357,19 @@ public abstract class AbstractJPAMailboxMessage implements MailboxMessage {
         return new ArrayList<Property>(properties);
     }
 
+    /**
+     * Replaces the meta-data properties of this message.
+     *
+     * @param properties new meta-data, not null
+     */
+    public void setProperties(List<Property> properties) {
+        this.properties.clear();
+        int order = 0;
+        for (Property property : properties) {
+            this.properties.add(new JPAProperty(property, order++));
+        }
+    }
+
     /**
      * Gets the number of CRLF in a textual document.
      * 
@@ -19,8 +19,11 @@
 
 package org.apache.james.mailbox.inmemory;
 
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.mail.Flags;
@@ -122,6 +125,31 @@ public class InMemoryMessageIdManager implements MessageIdManager {
         }
     }
 
+    @Override
+    public Set<MailboxId> copyInMailboxes(MessageId messageId, MailboxSession sourceSession, Map<MailboxId, MailboxSession> targets) throws MailboxException {
+        List<MessageResult> messages = getMessages(ImmutableList.of(messageId), FetchGroupImpl.FULL_CONTENT, sourceSession);
+        if (messages.isEmpty()) {
+            throw new MailboxException("Message " + messageId.serialize() + " can not be read by " + sourceSession.getUser().getUserName());
+        }
+
+        MessageResult referenceMessage = Iterables.getLast(messages);
+        Set<MailboxId> failedTargets = new HashSet<MailboxId>();
+        for (Map.Entry<MailboxId, MailboxSession> target : targets.entrySet()) {
+            try {
+                filterOnMailboxSession(ImmutableList.of(target.getKey()), target.getValue());
+                mailboxManager.getMailbox(target.getKey(), target.getValue())
+                    .appendMessage(referenceMessage.getFullContent().getInputStream(), referenceMessage.getInternalDate(),
+                        target.getValue(), referenceMessage.getFlags().contains(Flags.Flag.RECENT), referenceMessage.getFlags());
+            } catch (MailboxException e) {
+                target.getValue().getLog().info("Can not add message " + messageId.serialize() + " to mailbox " + target.getKey().serialize(), e);
+                failedTargets.add(target.getKey());
+            } catch (IOException e) {
+                throw new MailboxException("Can not read content of message " + messageId.serialize(), e);
+            }
+        }
+        return failedTargets;
+    }
+
     private List<MailboxId> getUsersMailboxIds(final MailboxSession mailboxSession) throws MailboxException {
         return FluentIterable.from(mailboxManager.search(userMailboxes(mailboxSession), mailboxSession))
             .transform(getMailboxIdFromMetadata()).toList();
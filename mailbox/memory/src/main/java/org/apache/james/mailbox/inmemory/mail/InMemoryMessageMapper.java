@@ -19,8 +19,10 @@
 
 package org.apache.james.mailbox.inmemory.mail;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -29,7 +31,9 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
+import javax.mail.util.SharedByteArrayInputStream;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MessageUid;
 import org.apache.james.mailbox.exception.MailboxException;
@@ -38,16 +42,32 @@ import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.store.SimpleMessageMetaData;
 import org.apache.james.mailbox.store.mail.AbstractMessageMapper;
+import org.apache.james.mailbox.store.mail.ChangedSinceMessageMapper;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
+import org.apache.james.mailbox.store.mail.PropertiesUpdatingMessageMapper;
 import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.Property;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.mail.model.impl.SimpleMailboxMessage;
 import org.apache.james.mailbox.store.mail.utils.ApplicableFlagCalculator;
 
-public class InMemoryMessageMapper extends AbstractMessageMapper {
+import com.google.common.collect.ComparisonChain;
+import com.google.common.primitives.Ints;
+
+public class InMemoryMessageMapper extends AbstractMessageMapper implements ChangedSinceMessageMapper, PropertiesUpdatingMessageMapper {
     private final Map<InMemoryId, Map<MessageUid, MailboxMessage>> mailboxByUid;
     private static final int INITIAL_SIZE = 256;
+    private static final Comparator<MailboxMessage> MODSEQ_THEN_UID = new Comparator<MailboxMessage>() {
+        @Override
+        public int compare(MailboxMessage message1, MailboxMessage message2) {
+            return ComparisonChain.start()
+                .compare(message1.getModSeq(), message2.getModSeq())
+                .compare(message1.getUid(), message2.getUid())
+                .result();
+        }
+    };
 
     public InMemoryMessageMapper(MailboxSession session, UidProvider uidProvider,
             ModSeqProvider modSeqProvider) {
@@ -116,6 +136,32 @@ public class InMemoryMessageMapper extends AbstractMessageMapper {
         return results.iterator();
     }
 
+    @Override
+    public Iterator<MailboxMessage> findChangedSinceInMailbox(Mailbox mailbox, MessageRange set, long modSeq, FetchType type, int max)
+            throws MailboxException {
+        List<MailboxMessage> results = new ArrayList<MailboxMessage>();
+        for (MailboxMessage member : getMembershipByUidForMailbox(mailbox).values()) {
+            if (member.getModSeq() > modSeq && set.includes(member.getUid())) {
+                results.add(member);
+            }
+        }
+
+        Collections.sort(results, MODSEQ_THEN_UID);
+        if (max > 0 && results.size() > max) {
+            results = results.subList(0, lastIndexWithSameModSeq(results, max - 1) + 1);
+        }
+        return results.iterator();
+    }
+
+    private int lastIndexWithSameModSeq(List<MailboxMessage> messages, int index) {
+        long modSeq = messages.get(index).getModSeq();
+        int lastIndex = index;
+        while (lastIndex + 1 < messages.size() && messages.get(lastIndex + 1).getModSeq() == modSeq) {
+            lastIndex++;
+        }
+        return lastIndex;
+    }
+
     @Override
     public List<MessageUid> findRecentMessageUidsInMailbox(Mailbox mailbox) throws MailboxException {
         final List<MessageUid> results = new ArrayList<MessageUid>();
@@ -187,6 +233,31 @@ public class InMemoryMessageMapper extends AbstractMessageMapper {
         return save(mailbox, message);
     }
 
+    @Override
+    public void updateProperties(MailboxMessage message, List<Property> properties) throws MailboxException {
+        Map<MessageUid, MailboxMessage> membership = getMembershipByUidForId((InMemoryId) message.getMailboxId());
+        MailboxMessage stored = membership.get(message.getUid());
+        if (stored == null) {
+            return;
+        }
+        PropertyBuilder propertyBuilder = new PropertyBuilder(properties);
+        propertyBuilder.setTextualLineCount(stored.getTextualLineCount());
+        SimpleMailboxMessage updated = new SimpleMailboxMessage(stored.getMessageId(), stored.getInternalDate(),
+            stored.getFullContentOctets(), Ints.checkedCast(stored.getFullContentOctets() - stored.getBodyOctets()),
+            copyFullContent(stored), stored.createFlags(), propertyBuilder, stored.getMailboxId(), stored.getAttachments());
+        updated.setUid(stored.getUid());
+        updated.setModSeq(stored.getModSeq());
+        membership.put(stored.getUid(), updated);
+    }
+
+    private SharedByteArrayInputStream copyFullContent(MailboxMessage message) throws MailboxException {
+        try {
+            return new SharedByteArrayInputStream(IOUtils.toByteArray(message.getFullContent()));
+        } catch (IOException e) {
+            throw new MailboxException("Unable to read message " + message.getUid(), e);
+        }
+    }
+
     @Override
     protected MessageMetaData save(Mailbox mailbox, MailboxMessage message) throws MailboxException {
         SimpleMailboxMessage copy = SimpleMailboxMessage.copy(mailbox.getMailboxId(), message);
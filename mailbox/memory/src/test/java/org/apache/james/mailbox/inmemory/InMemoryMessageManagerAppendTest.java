@@ -0,0 +1,197 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.inmemory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Set;
+
+import javax.mail.Flags;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageManager;
+import org.apache.james.mailbox.acl.UnionMailboxACLResolver;
+import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.FetchGroupImpl;
+import org.apache.james.mailbox.model.MailboxConstants;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.store.Authenticator;
+import org.apache.james.mailbox.store.Authorizator;
+import org.apache.james.mailbox.store.NoMailboxPathLocker;
+import org.apache.james.mailbox.store.mail.model.impl.MessageParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+public class InMemoryMessageManagerAppendTest {
+
+    private static final String USERNAME = "user@domain.tld";
+    private static final int APPEND_IN_MEMORY_THRESHOLD = 1024;
+    private static final File TEMPORARY_DIRECTORY = new File(System.getProperty("java.io.tmpdir"));
+
+    private InMemoryMailboxManager mailboxManager;
+    private MailboxSession mailboxSession;
+    private MessageManager messageManager;
+    private Set<String> temporaryFilesBeforeTest;
+
+    @Before
+    public void setUp() throws Exception {
+        Authenticator noAuthenticator = null;
+        Authorizator noAuthorizator = null;
+        mailboxManager = new InMemoryMailboxManager(new InMemoryMailboxSessionMapperFactory(), noAuthenticator, noAuthorizator,
+                new NoMailboxPathLocker(), new UnionMailboxACLResolver(), null, new MessageParser(), new InMemoryMessageId.Factory());
+        mailboxManager.setAppendInMemoryThreshold(APPEND_IN_MEMORY_THRESHOLD);
+        mailboxManager.init();
+
+        mailboxSession = new MockMailboxSession(USERNAME);
+        MailboxPath inbox = new MailboxPath(MailboxConstants.USER_NAMESPACE, USERNAME, "INBOX");
+        mailboxManager.createMailbox(inbox, mailboxSession);
+        messageManager = mailboxManager.getMailbox(inbox, mailboxSession);
+        temporaryFilesBeforeTest = temporaryFiles();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mailboxManager.logout(mailboxSession, true);
+    }
+
+    @Test
+    public void appendMessageShouldNotCreateTemporaryFileWhenMessageIsBelowThreshold() throws Exception {
+        TemporaryFilesRecordingInputStream message = new TemporaryFilesRecordingInputStream(message(APPEND_IN_MEMORY_THRESHOLD / 2));
+
+        messageManager.appendMessage(message, new Date(), mailboxSession, true, new Flags());
+
+        assertThat(message.getTemporaryFilesAtEndOfStream()).isEmpty();
+    }
+
+    @Test
+    public void appendMessageShouldSpillToTemporaryFileWhenMessageIsAboveThreshold() throws Exception {
+        TemporaryFilesRecordingInputStream message = new TemporaryFilesRecordingInputStream(message(APPEND_IN_MEMORY_THRESHOLD * 2));
+
+        messageManager.appendMessage(message, new Date(), mailboxSession, true, new Flags());
+
+        assertThat(message.getTemporaryFilesAtEndOfStream()).hasSize(1);
+    }
+
+    @Test
+    public void appendMessageShouldDeleteTemporaryFileWhenMessageIsAboveThreshold() throws Exception {
+        messageManager.appendMessage(new ByteArrayInputStream(message(APPEND_IN_MEMORY_THRESHOLD * 2)), new Date(), mailboxSession, true, new Flags());
+
+        assertThat(newTemporaryFiles()).isEmpty();
+    }
+
+    @Test
+    public void appendMessageShouldStoreContentWhenMessageIsBelowThreshold() throws Exception {
+        byte[] message = message(APPEND_IN_MEMORY_THRESHOLD / 2);
+
+        messageManager.appendMessage(new ByteArrayInputStream(message), new Date(), mailboxSession, true, new Flags());
+
+        assertThat(IOUtils.toByteArray(storedMessage().getFullContent().getInputStream())).isEqualTo(message);
+    }
+
+    @Test
+    public void appendMessageShouldStoreContentWhenMessageIsAboveThreshold() throws Exception {
+        byte[] message = message(APPEND_IN_MEMORY_THRESHOLD * 2);
+
+        messageManager.appendMessage(new ByteArrayInputStream(message), new Date(), mailboxSession, true, new Flags());
+
+        assertThat(IOUtils.toByteArray(storedMessage().getFullContent().getInputStream())).isEqualTo(message);
+    }
+
+    @Test
+    public void appendMessageShouldStoreBodyWhenMessageIsAboveThreshold() throws Exception {
+        byte[] message = message(APPEND_IN_MEMORY_THRESHOLD * 2);
+
+        messageManager.appendMessage(new ByteArrayInputStream(message), new Date(), mailboxSession, true, new Flags());
+
+        assertThat(IOUtils.toString(storedMessage().getBody().getInputStream(), Charsets.US_ASCII))
+            .isEqualTo(body(APPEND_IN_MEMORY_THRESHOLD * 2));
+    }
+
+    private MessageResult storedMessage() throws Exception {
+        MessageResultIterator messages = messageManager.getMessages(MessageRange.all(), FetchGroupImpl.FULL_CONTENT, mailboxSession);
+        assertThat(messages.hasNext()).isTrue();
+        return messages.next();
+    }
+
+    private byte[] message(int size) {
+        return ("Subject: test\r\n\r\n" + body(size)).getBytes(Charsets.US_ASCII);
+    }
+
+    private String body(int size) {
+        return Strings.repeat("0123456789abcdef\r\n", size / 18 + 1);
+    }
+
+    private Set<String> newTemporaryFiles() {
+        return Sets.difference(temporaryFiles(), temporaryFilesBeforeTest);
+    }
+
+    private static Set<String> temporaryFiles() {
+        String[] names = TEMPORARY_DIRECTORY.list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("imap") && name.endsWith(".msg");
+            }
+        });
+        if (names == null) {
+            return ImmutableSet.of();
+        }
+        return ImmutableSet.copyOf(names);
+    }
+
+    /**
+     * Records the temporary files existing once the whole message was read: the content is then entirely copied to
+     * the append buffer, which has spilled to a file if the message is above the threshold.
+     */
+    private class TemporaryFilesRecordingInputStream extends ProxyInputStream {
+
+        private Set<String> temporaryFilesAtEndOfStream;
+
+        TemporaryFilesRecordingInputStream(byte[] content) {
+            super(new ByteArrayInputStream(content));
+        }
+
+        @Override
+        protected void afterRead(int n) throws IOException {
+            if (n == -1 && temporaryFilesAtEndOfStream == null) {
+                temporaryFilesAtEndOfStream = ImmutableSet.copyOf(newTemporaryFiles());
+            }
+        }
+
+        public Set<String> getTemporaryFilesAtEndOfStream() {
+            return temporaryFilesAtEndOfStream;
+        }
+    }
+}
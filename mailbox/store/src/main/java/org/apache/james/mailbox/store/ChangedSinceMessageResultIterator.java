@@ -0,0 +1,56 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResultIterator;
+
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * {@link MessageResultIterator} skipping the results of an other {@link MessageResultIterator} which MODSEQ is not
+ * greater than a given value.
+ */
+class ChangedSinceMessageResultIterator extends AbstractIterator<MessageResult> implements MessageResultIterator {
+
+    private final MessageResultIterator wrapped;
+    private final long changedSince;
+
+    ChangedSinceMessageResultIterator(MessageResultIterator wrapped, long changedSince) {
+        this.wrapped = wrapped;
+        this.changedSince = changedSince;
+    }
+
+    @Override
+    protected MessageResult computeNext() {
+        while (wrapped.hasNext()) {
+            MessageResult result = wrapped.next();
+            if (result.getModSeq() > changedSince) {
+                return result;
+            }
+        }
+        return endOfData();
+    }
+
+    @Override
+    public MailboxException getException() {
+        return wrapped.getException();
+    }
+}
@@ -20,37 +20,205 @@
 package org.apache.james.mailbox.store;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.apache.james.metrics.api.TimeMetric;
 import org.msgpack.core.Preconditions;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Splits a {@link MessageRange} into batches of at most <code>batchSize</code> messages and applies a
+ * {@link BatchedOperation} on each of them.
+ *
+ * When <code>parallelism</code> is greater than one, batches are executed by a pool of <code>parallelism</code>
+ * threads, shared by all callers, so that at most <code>parallelism</code> batches are in flight at any time. A
+ * concurrent {@link BatchedOperation} must therefore not share non thread safe state, such as the mappers cached
+ * in a MailboxSession, between batches (see {@link #isConcurrent()}). Results are always returned in UID order.
+ * On the first failure, no further batch is started, the batches already running are awaited, and the failure is
+ * propagated to the caller.
+ */
 public class MessageBatcher {
 
     public static final int NO_BATCH_SIZE = 0;
+    public static final int SEQUENTIAL = 1;
 
     public interface BatchedOperation {
         List<MessageRange> execute(MessageRange messageRange) throws MailboxException;
     }
 
     private final int moveBatchSize;
+    private final int parallelism;
+    private final MetricFactory metricFactory;
+    private final String metricPrefix;
+    private final Metric inFlightBatches;
+    private ExecutorService executorService;
+    private boolean shutdown;
 
     public MessageBatcher(int moveBatchSize) {
+        this(moveBatchSize, SEQUENTIAL, new NoopMetricFactory(), "messageBatch");
+    }
+
+    public MessageBatcher(int moveBatchSize, int parallelism, MetricFactory metricFactory, String metricPrefix) {
         Preconditions.checkArgument(moveBatchSize >= NO_BATCH_SIZE);
+        Preconditions.checkArgument(parallelism >= SEQUENTIAL);
         this.moveBatchSize = moveBatchSize;
+        this.parallelism = parallelism;
+        this.metricFactory = metricFactory;
+        this.metricPrefix = metricPrefix;
+        this.inFlightBatches = metricFactory.generate(metricPrefix + "-inFlightBatches");
+    }
+
+    /**
+     * @return true when batches may be executed concurrently, by other threads than the caller's
+     */
+    public boolean isConcurrent() {
+        return moveBatchSize > 0 && parallelism > SEQUENTIAL;
     }
 
     public List<MessageRange> batchMessages(MessageRange set, BatchedOperation batchedOperation) throws MailboxException {
         if (moveBatchSize > 0) {
+            List<MessageRange> batches = set.split(moveBatchSize);
+            if (isConcurrent() && batches.size() > 1) {
+                return batchConcurrently(batches, batchedOperation);
+            }
             List<MessageRange> movedRanges = new ArrayList<MessageRange>();
-            for (MessageRange messageRange : set.split(moveBatchSize)) {
-                movedRanges.addAll(batchedOperation.execute(messageRange));
+            for (MessageRange messageRange : batches) {
+                movedRanges.addAll(executeBatch(messageRange, batchedOperation));
             }
             return movedRanges;
         } else {
-            return batchedOperation.execute(set);
+            return executeBatch(set, batchedOperation);
+        }
+    }
+
+    /**
+     * Stops the threads used for concurrent batching. Batches submitted afterward are rejected.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+    }
+
+    private List<MessageRange> batchConcurrently(List<MessageRange> batches, BatchedOperation batchedOperation) throws MailboxException {
+        ExecutorService executor = getExecutorService();
+        AtomicBoolean failed = new AtomicBoolean(false);
+        Iterator<MessageRange> pendingBatches = batches.iterator();
+        LinkedList<Future<List<MessageRange>>> runningBatches = new LinkedList<Future<List<MessageRange>>>();
+        List<MessageRange> movedRanges = new ArrayList<MessageRange>();
+
+        while (runningBatches.size() < parallelism && pendingBatches.hasNext()) {
+            runningBatches.add(executor.submit(batchTask(pendingBatches.next(), batchedOperation, failed)));
+        }
+        while (!runningBatches.isEmpty()) {
+            Future<List<MessageRange>> oldestBatch = runningBatches.removeFirst();
+            try {
+                movedRanges.addAll(getResult(oldestBatch));
+            } catch (MailboxException e) {
+                failed.set(true);
+                awaitTermination(runningBatches);
+                throw e;
+            } catch (RuntimeException e) {
+                failed.set(true);
+                awaitTermination(runningBatches);
+                throw e;
+            }
+            if (pendingBatches.hasNext()) {
+                runningBatches.add(executor.submit(batchTask(pendingBatches.next(), batchedOperation, failed)));
+            }
+        }
+        return movedRanges;
+    }
+
+    private Callable<List<MessageRange>> batchTask(final MessageRange messageRange, final BatchedOperation batchedOperation,
+                                                  final AtomicBoolean failed) {
+        return new Callable<List<MessageRange>>() {
+            @Override
+            public List<MessageRange> call() throws MailboxException {
+                if (failed.get()) {
+                    return new ArrayList<MessageRange>();
+                }
+                try {
+                    return executeBatch(messageRange, batchedOperation);
+                } catch (MailboxException e) {
+                    failed.set(true);
+                    throw e;
+                } catch (RuntimeException e) {
+                    failed.set(true);
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private List<MessageRange> executeBatch(MessageRange messageRange, BatchedOperation batchedOperation) throws MailboxException {
+        TimeMetric timeMetric = metricFactory.timer(metricPrefix + "-batchLatency");
+        inFlightBatches.increment();
+        try {
+            return batchedOperation.execute(messageRange);
+        } finally {
+            inFlightBatches.decrement();
+            timeMetric.stopAndPublish();
+        }
+    }
+
+    private List<MessageRange> getResult(Future<List<MessageRange>> batch) throws MailboxException {
+        try {
+            return batch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailboxException("Interrupted while waiting for a message batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MailboxException) {
+                throw (MailboxException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new MailboxException("Error while executing a message batch", e.getCause());
+        }
+    }
+
+    private void awaitTermination(List<Future<List<MessageRange>>> runningBatches) {
+        for (Future<List<MessageRange>> runningBatch : runningBatches) {
+            try {
+                runningBatch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // The first failure is the one reported
+            }
+        }
+    }
+
+    private synchronized ExecutorService getExecutorService() throws MailboxException {
+        if (shutdown) {
+            throw new MailboxException("Message batcher " + metricPrefix + " is shut down");
+        }
+        if (executorService == null) {
+            executorService = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder()
+                    .setNameFormat(metricPrefix + "-%d")
+                    .setDaemon(true)
+                    .build());
         }
+        return executorService;
     }
 
 }
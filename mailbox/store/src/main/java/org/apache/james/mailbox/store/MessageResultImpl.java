@@ -40,6 +40,7 @@ import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MimeDescriptor;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.Message;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
 import org.apache.james.mailbox.store.streaming.InputStreamContent;
 import org.apache.james.mailbox.store.streaming.InputStreamContent.Type;
 import org.apache.james.mime4j.MimeException;
@@ -329,10 +330,14 @@ public class MessageResultImpl implements MessageResult {
     public MimeDescriptor getMimeDescriptor() throws MailboxException {
         
         // check if we need to create the MimeDescriptor which is done in a lazy fashion because
-        // it can be relative expensive on big messages and slow mailbox implementations
+        // it can be relative expensive on big messages and slow mailbox implementations.
+        // Messages appended with their MIME structure stored in their properties do not need to be parsed again.
         if (mimeDescriptor == null) {
             try {
-                if (MimeDescriptorImpl.isComposite(message.getMediaType())) {
+                String mimeStructure = new PropertyBuilder(message.getProperties()).getMimeStructure();
+                if (mimeStructure != null) {
+                    mimeDescriptor = MimeStructureSerializer.deserialize(mimeStructure);
+                } else if (MimeDescriptorImpl.isComposite(message.getMediaType())) {
                     mimeDescriptor = MimeDescriptorImpl.build(getFullContent().getInputStream());
                 } else {
                     mimeDescriptor = new LazyMimeDescriptor(this, message);
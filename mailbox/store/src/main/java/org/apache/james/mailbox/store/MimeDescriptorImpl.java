@@ -92,9 +92,19 @@ public class MimeDescriptorImpl implements MimeDescriptor {
             }
             next = parser.next();
         }
+        return build(parser, headers);
+    }
 
+    /**
+     * Build the descriptor of the entity the given parser is positioned on, once its headers were read. This allows
+     * callers already parsing the message headers to get its MIME structure without parsing it a second time.
+     *
+     * @param parser parser using a {@link DefaultBodyDescriptorBuilder}, in {@link RecursionMode#M_NO_RECURSE} mode
+     * @param headers the headers of the entity
+     */
+    public static MimeDescriptorImpl build(MimeTokenStream parser, Collection<MessageResult.Header> headers) throws IOException, MimeException {
         final MimeDescriptorImpl mimeDescriptorImpl;
-        switch (next) {
+        switch (parser.getState()) {
             case T_BODY:
                 mimeDescriptorImpl = simplePartDescriptor(parser, headers);
                 break;
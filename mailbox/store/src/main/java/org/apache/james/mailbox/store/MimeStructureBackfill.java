@@ -0,0 +1,134 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.PropertiesUpdatingMessageMapper;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.streaming.MimePartOffsetsOutputStream;
+import org.apache.james.mailbox.store.transaction.Mapper;
+import org.apache.james.mime4j.MimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes and stores the MIME structure of the composite messages of a mailbox that were appended before
+ * {@link StoreMessageManager} started to store it, so that they are no longer parsed on each BODYSTRUCTURE fetch.
+ *
+ * Messages are read by batches of <code>batchSize</code> messages. Messages that already have their MIME structure
+ * stored are left untouched, hence the backfill can be interrupted and run again.
+ */
+public class MimeStructureBackfill {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MimeStructureBackfill.class);
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private final MailboxSessionMapperFactory mapperFactory;
+    private final int batchSize;
+
+    public MimeStructureBackfill(MailboxSessionMapperFactory mapperFactory) {
+        this(mapperFactory, DEFAULT_BATCH_SIZE);
+    }
+
+    public MimeStructureBackfill(MailboxSessionMapperFactory mapperFactory, int batchSize) {
+        this.mapperFactory = mapperFactory;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Computes and stores the MIME structure, along the offsets of its body parts, of the composite messages of
+     * the given mailbox.
+     *
+     * @return the number of messages whose MIME structure was stored
+     */
+    public long backfill(MailboxPath path, MailboxSession session) throws MailboxException {
+        Mailbox mailbox = mapperFactory.getMailboxMapper(session).findMailboxByPath(path);
+        MessageMapper messageMapper = mapperFactory.getMessageMapper(session);
+        if (!(messageMapper instanceof PropertiesUpdatingMessageMapper)) {
+            throw new MailboxException("Message properties can not be updated by " + messageMapper.getClass().getName());
+        }
+        PropertiesUpdatingMessageMapper propertiesUpdatingMapper = (PropertiesUpdatingMessageMapper) messageMapper;
+
+        long updatedCount = 0;
+        MessageUid from = MessageUid.MIN_VALUE;
+        while (true) {
+            Iterator<MailboxMessage> messages = messageMapper.findInMailbox(mailbox, MessageRange.from(from), FetchType.Full, batchSize);
+            if (!messages.hasNext()) {
+                return updatedCount;
+            }
+            while (messages.hasNext()) {
+                MailboxMessage message = messages.next();
+                if (backfill(propertiesUpdatingMapper, message)) {
+                    updatedCount++;
+                }
+                from = message.getUid().next();
+            }
+        }
+    }
+
+    private boolean backfill(final PropertiesUpdatingMessageMapper messageMapper, final MailboxMessage message) throws MailboxException {
+        final PropertyBuilder propertyBuilder = new PropertyBuilder(message.getProperties());
+        if (propertyBuilder.getMimeStructure() != null || !MimeDescriptorImpl.isComposite(message.getMediaType())) {
+            return false;
+        }
+        try {
+            propertyBuilder.setMimeStructure(computeMimeStructure(message));
+        } catch (Exception e) {
+            LOGGER.warn("Can not compute MIME structure of message " + message.getUid() + ": " + e.getMessage(), e);
+            return false;
+        }
+        messageMapper.execute(new Mapper.VoidTransaction() {
+            @Override
+            public void runVoid() throws MailboxException {
+                messageMapper.updateProperties(message, propertyBuilder.toProperties());
+            }
+        });
+        return true;
+    }
+
+    private String computeMimeStructure(MailboxMessage message) throws IOException, MimeException, MailboxException {
+        MimePartOffsetsOutputStream partOffsets = new MimePartOffsetsOutputStream();
+        InputStream content = new TeeInputStream(message.getFullContent(), partOffsets, true);
+        try {
+            MimeDescriptor descriptor = MimeDescriptorImpl.build(content);
+            byte[] discard = new byte[4096];
+            while (content.read(discard) != -1) {
+                // consume the epilogue so that the offsets of the last parts are known
+            }
+            partOffsets.close();
+            return MimeStructureSerializer.serialize(descriptor, partOffsets.getPartOffsets());
+        } finally {
+            content.close();
+        }
+    }
+}
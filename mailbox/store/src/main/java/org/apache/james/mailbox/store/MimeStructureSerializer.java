@@ -0,0 +1,273 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailbox.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.apache.james.mailbox.store.streaming.PartOffsets;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+
+/**
+ * Converts a {@link MimeDescriptor} tree to and from a compact JSON form, so that the MIME structure computed
+ * at append time can be stored along the message properties and served later without parsing the content again.
+ *
+ * The {@link PartOffsets} of the leaf body parts can be stored as well. They allow to read a single part from the
+ * stored content instead of loading and parsing the whole message.
+ *
+ * Only the fields BODYSTRUCTURE needs are stored. Part headers are not: the headers of the message are read from
+ * its stored header content, and those of a body part from its offsets. The only exception are the headers making
+ * the ENVELOPE of embedded messages, which BODYSTRUCTURE includes for message/rfc822 parts.
+ */
+public class MimeStructureSerializer {
+
+    private static final String BODY_OCTETS = "o";
+    private static final String LINES = "l";
+    private static final String TYPE = "t";
+    private static final String SUB_TYPE = "s";
+    private static final String CONTENT_ID = "id";
+    private static final String CONTENT_DESCRIPTION = "de";
+    private static final String TRANSFER_ENCODING = "te";
+    private static final String HEADERS = "h";
+    private static final String CONTENT_TYPE_PARAMETERS = "tp";
+    private static final String LANGUAGES = "la";
+    private static final String DISPOSITION = "di";
+    private static final String DISPOSITION_PARAMETERS = "dp";
+    private static final String EMBEDDED_MESSAGE = "em";
+    private static final String PARTS = "p";
+    private static final String LOCATION = "lo";
+    private static final String MD5 = "md";
+    private static final String HEADER_START = "ps";
+    private static final String BODY_START = "bs";
+    private static final String BODY_END = "be";
+    private static final String MULTIPART = "multipart";
+    private static final ImmutableSet<String> ENVELOPE_HEADERS = ImmutableSet.of("date", "subject", "from", "sender", "reply-to",
+        "to", "cc", "bcc", "in-reply-to", "message-id");
+    private static final boolean STORE_ENVELOPE_HEADERS = true;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static String serialize(MimeDescriptor descriptor) throws MailboxException {
+        return serialize(descriptor, null);
+    }
+
+    /**
+     * Serialize <code>descriptor</code> along the offsets of its leaf body parts. The offsets of a part are only kept
+     * when they match its descriptor, offsets not matching the parsed structure are thus silently dropped.
+     *
+     * @param offsets offsets of the message entities, possibly null
+     */
+    public static String serialize(MimeDescriptor descriptor, PartOffsets offsets) throws MailboxException {
+        try {
+            return objectMapper.writeValueAsString(toJson(descriptor, offsets, !STORE_ENVELOPE_HEADERS));
+        } catch (IOException e) {
+            throw new MailboxException("Unable to serialize MIME structure", e);
+        }
+    }
+
+    public static MimeDescriptor deserialize(String json) throws MailboxException {
+        try {
+            return fromJson(objectMapper.readTree(json));
+        } catch (IOException e) {
+            throw new MailboxException("Unable to deserialize MIME structure", e);
+        }
+    }
+
+    /**
+     * Find the offsets of the body part at the given IMAP part path, when they were stored.
+     *
+     * Only leaf body parts reached through multiparts have their offsets stored. Absent is returned for other parts,
+     * as well as for missing ones.
+     */
+    public static Optional<PartOffsets> findPartOffsets(String json, int[] path) throws MailboxException {
+        if (path == null || path.length == 0) {
+            return Optional.absent();
+        }
+        try {
+            JsonNode node = objectMapper.readTree(json);
+            for (int position : path) {
+                if (!MULTIPART.equalsIgnoreCase(textOrNull(node, TYPE))) {
+                    return Optional.absent();
+                }
+                JsonNode parts = node.path(PARTS);
+                if (position < 1 || position > parts.size()) {
+                    return Optional.absent();
+                }
+                node = parts.get(position - 1);
+            }
+            if (!node.has(BODY_START)) {
+                return Optional.absent();
+            }
+            return Optional.of(new PartOffsets(
+                node.get(HEADER_START).asLong(),
+                node.get(BODY_START).asLong(),
+                node.get(BODY_END).asLong(),
+                ImmutableList.<PartOffsets>of()));
+        } catch (IOException e) {
+            throw new MailboxException("Unable to deserialize MIME structure", e);
+        }
+    }
+
+    private static ObjectNode toJson(MimeDescriptor descriptor, PartOffsets offsets, boolean storeEnvelopeHeaders) throws MailboxException {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put(BODY_OCTETS, descriptor.getBodyOctets());
+        node.put(LINES, descriptor.getLines());
+        putIfNotNull(node, TYPE, descriptor.getMimeType());
+        putIfNotNull(node, SUB_TYPE, descriptor.getMimeSubType());
+        putIfNotNull(node, CONTENT_ID, descriptor.getContentID());
+        putIfNotNull(node, CONTENT_DESCRIPTION, descriptor.getContentDescription());
+        putIfNotNull(node, TRANSFER_ENCODING, descriptor.getTransferContentEncoding());
+        putIfNotNull(node, DISPOSITION, descriptor.getDisposition());
+        putIfNotNull(node, LOCATION, descriptor.getContentLocation());
+        putIfNotNull(node, MD5, descriptor.getContentMD5());
+        putMap(node, CONTENT_TYPE_PARAMETERS, descriptor.contentTypeParameters());
+        putMap(node, DISPOSITION_PARAMETERS, descriptor.getDispositionParams());
+        if (descriptor.getLanguages() != null && !descriptor.getLanguages().isEmpty()) {
+            ArrayNode languages = node.putArray(LANGUAGES);
+            for (String language : descriptor.getLanguages()) {
+                languages.add(language);
+            }
+        }
+        if (storeEnvelopeHeaders) {
+            putEnvelopeHeaders(node, descriptor);
+        }
+        if (descriptor.embeddedMessage() != null) {
+            node.set(EMBEDDED_MESSAGE, toJson(descriptor.embeddedMessage(), null, STORE_ENVELOPE_HEADERS));
+        }
+        List<MimeDescriptor> parts = Lists.newArrayList(descriptor.parts());
+        if (!parts.isEmpty()) {
+            boolean partOffsetsMatch = offsets != null && offsets.getParts().size() == parts.size();
+            ArrayNode partsNode = node.putArray(PARTS);
+            for (int i = 0; i < parts.size(); i++) {
+                partsNode.add(toJson(parts.get(i), partOffsetsMatch ? offsets.getParts().get(i) : null, !STORE_ENVELOPE_HEADERS));
+            }
+        } else if (offsets != null && matches(descriptor, offsets)) {
+            node.put(HEADER_START, offsets.getHeaderStart());
+            node.put(BODY_START, offsets.getBodyStart());
+            node.put(BODY_END, offsets.getBodyEnd());
+        }
+        return node;
+    }
+
+    private static void putEnvelopeHeaders(ObjectNode node, MimeDescriptor descriptor) throws MailboxException {
+        ArrayNode headers = objectMapper.createArrayNode();
+        for (Iterator<MessageResult.Header> it = descriptor.headers(); it.hasNext();) {
+            MessageResult.Header header = it.next();
+            if (ENVELOPE_HEADERS.contains(header.getName().toLowerCase(Locale.US))) {
+                headers.addArray().add(header.getName()).add(header.getValue());
+            }
+        }
+        if (headers.size() > 0) {
+            node.set(HEADERS, headers);
+        }
+    }
+
+    private static boolean matches(MimeDescriptor descriptor, PartOffsets offsets) {
+        return !MimeDescriptorImpl.isComposite(descriptor.getMimeType())
+            && offsets.getBodyStart() != PartOffsets.UNKNOWN
+            && offsets.getBodyEnd() != PartOffsets.UNKNOWN
+            && offsets.getBodyLength() == descriptor.getBodyOctets();
+    }
+
+    private static MimeDescriptorImpl fromJson(JsonNode node) {
+        List<MessageResult.Header> headers = new ArrayList<MessageResult.Header>();
+        for (JsonNode header : node.path(HEADERS)) {
+            headers.add(new ResultHeader(header.get(0).asText(), header.get(1).asText()));
+        }
+        List<String> languages = new ArrayList<String>();
+        for (JsonNode language : node.path(LANGUAGES)) {
+            languages.add(language.asText());
+        }
+        List<MimeDescriptor> parts = new ArrayList<MimeDescriptor>();
+        for (JsonNode part : node.path(PARTS)) {
+            parts.add(fromJson(part));
+        }
+        MimeDescriptor embeddedMessage = null;
+        if (node.has(EMBEDDED_MESSAGE)) {
+            embeddedMessage = fromJson(node.get(EMBEDDED_MESSAGE));
+        }
+        return new MimeDescriptorImpl(
+            node.path(BODY_OCTETS).asLong(),
+            textOrNull(node, CONTENT_DESCRIPTION),
+            textOrNull(node, CONTENT_ID),
+            node.path(LINES).asLong(-1),
+            textOrNull(node, SUB_TYPE),
+            textOrNull(node, TYPE),
+            textOrNull(node, TRANSFER_ENCODING),
+            headers,
+            readMap(node, CONTENT_TYPE_PARAMETERS),
+            languages,
+            textOrNull(node, DISPOSITION),
+            readMap(node, DISPOSITION_PARAMETERS),
+            embeddedMessage,
+            parts,
+            textOrNull(node, LOCATION),
+            textOrNull(node, MD5));
+    }
+
+    private static void putIfNotNull(ObjectNode node, String field, String value) {
+        if (value != null) {
+            node.put(field, value);
+        }
+    }
+
+    private static void putMap(ObjectNode node, String field, Map<String, String> values) {
+        if (values != null && !values.isEmpty()) {
+            ObjectNode mapNode = node.putObject(field);
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                mapNode.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        return value.asText();
+    }
+
+    private static Map<String, String> readMap(JsonNode node, String field) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.path(field).fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> entry = fields.next();
+            values.put(entry.getKey(), entry.getValue().asText());
+        }
+        return values;
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.james.mailbox.store;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -26,22 +27,31 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.Content;
 import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
 import org.apache.james.mailbox.model.MessageResult.MimePath;
+import org.apache.james.mailbox.store.mail.RangedContentMessageMapper;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.streaming.ByteContent;
 import org.apache.james.mailbox.store.streaming.PartContentBuilder;
+import org.apache.james.mailbox.store.streaming.PartOffsets;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.parser.AbstractContentHandler;
 import org.apache.james.mime4j.parser.MimeStreamParser;
+import org.apache.james.mime4j.stream.EntityState;
 import org.apache.james.mime4j.stream.Field;
 import org.apache.james.mime4j.stream.MimeConfig;
+import org.apache.james.mime4j.stream.MimeTokenStream;
 import org.apache.james.mime4j.stream.RawField;
 import org.apache.james.mime4j.util.ByteSequence;
 import org.apache.james.mime4j.util.ContentUtil;
 
+import com.google.common.base.Optional;
+
 /**
  *
  */
@@ -53,6 +63,15 @@ public class ResultUtils {
 
     static final Charset US_ASCII = Charset.forName("US-ASCII");
 
+    private static final int RANGED_PART_CONTENT = FetchGroup.MIME_CONTENT | FetchGroup.MIME_HEADERS;
+
+    private static final MimeConfig MIME_ENTITY_CONFIG = MimeConfig.custom()
+        .setMaxContentLen(-1)
+        .setMaxHeaderCount(-1)
+        .setMaxHeaderLen(-1)
+        .setMaxLineLen(-1)
+        .build();
+
     public static List<MessageResult.Header> createHeaders(MailboxMessage document) throws IOException {
         final List<MessageResult.Header> results = new ArrayList<MessageResult.Header>();
         MimeConfig config = MimeConfig.custom().setMaxLineLen(-1).setMaxHeaderLen(-1).build();
@@ -111,24 +130,7 @@ public class ResultUtils {
 
             MessageResultImpl messageResult = new MessageResultImpl(message);
             if (fetchGroup != null) {
-                int content = fetchGroup.content();
-
-                if ((content & FetchGroup.HEADERS) > 0) {
-                    content -= FetchGroup.HEADERS;
-                }
-                if ((content & FetchGroup.BODY_CONTENT) > 0) {
-                    content -= FetchGroup.BODY_CONTENT;
-                }
-                if ((content & FetchGroup.FULL_CONTENT) > 0) {
-                    content -= FetchGroup.FULL_CONTENT;
-                }
-                if ((content & FetchGroup.MIME_DESCRIPTOR) > 0) {
-                    content -= FetchGroup.MIME_DESCRIPTOR;
-                }
-                if (content != 0) {
-                    throw new UnsupportedOperationException("Unsupported result: " + content);
-                }
-
+                checkSupportedContent(fetchGroup);
                 addPartContent(fetchGroup, message, messageResult);
             }
             return messageResult;
@@ -141,6 +143,111 @@ public class ResultUtils {
 
     }
 
+    /**
+     * Can the part contents of the given {@link FetchGroup} be read from ranges of the stored content?
+     *
+     * This is the case for the MIME body and MIME headers of body parts (BODY[x.y] and BODY[x.y.MIME]).
+     */
+    public static boolean canLoadPartContentFromRanges(FetchGroup fetchGroup) {
+        Collection<FetchGroup.PartContentDescriptor> partContent = fetchGroup.getPartContentDescriptors();
+        if (partContent == null || partContent.isEmpty()) {
+            return false;
+        }
+        for (FetchGroup.PartContentDescriptor descriptor : partContent) {
+            if ((descriptor.content() & ~RANGED_PART_CONTENT) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the {@link MessageResult} for the given {@link MailboxMessage} and {@link FetchGroup}, reading the
+     * requested part contents as ranges of the stored content, located thanks to the stored MIME structure. The
+     * message itself only needs to be loaded with the content required by the other parts of the {@link FetchGroup}.
+     *
+     * @return the result, or absent when a requested part can not be located: the full content is then needed
+     * @throws MailboxException
+     */
+    public static Optional<MessageResult> loadMessageResult(MailboxMessage message, FetchGroup fetchGroup, RangedContentMessageMapper mapper) throws MailboxException {
+        String mimeStructure = new PropertyBuilder(message.getProperties()).getMimeStructure();
+        if (mimeStructure == null) {
+            return Optional.absent();
+        }
+        try {
+            checkSupportedContent(fetchGroup);
+            MessageResultImpl messageResult = new MessageResultImpl(message);
+            for (FetchGroup.PartContentDescriptor descriptor : fetchGroup.getPartContentDescriptors()) {
+                Optional<PartOffsets> offsets = MimeStructureSerializer.findPartOffsets(mimeStructure, path(descriptor.path()));
+                if (!offsets.isPresent()) {
+                    return Optional.absent();
+                }
+                addRangedPartContent(descriptor, offsets.get(), message, mapper, messageResult);
+            }
+            return Optional.<MessageResult>of(messageResult);
+        } catch (IOException e) {
+            throw new MailboxException("Unable to parse message", e);
+        } catch (MimeException e) {
+            throw new MailboxException("Unable to parse message", e);
+        }
+    }
+
+    private static void checkSupportedContent(FetchGroup fetchGroup) {
+        int content = fetchGroup.content();
+
+        if ((content & FetchGroup.HEADERS) > 0) {
+            content -= FetchGroup.HEADERS;
+        }
+        if ((content & FetchGroup.BODY_CONTENT) > 0) {
+            content -= FetchGroup.BODY_CONTENT;
+        }
+        if ((content & FetchGroup.FULL_CONTENT) > 0) {
+            content -= FetchGroup.FULL_CONTENT;
+        }
+        if ((content & FetchGroup.MIME_DESCRIPTOR) > 0) {
+            content -= FetchGroup.MIME_DESCRIPTOR;
+        }
+        if (content != 0) {
+            throw new UnsupportedOperationException("Unsupported result: " + content);
+        }
+    }
+
+    private static void addRangedPartContent(FetchGroup.PartContentDescriptor descriptor, PartOffsets offsets,
+            MailboxMessage message, RangedContentMessageMapper mapper, MessageResultImpl messageResult)
+            throws MailboxException, IOException, MimeException {
+        final MimePath mimePath = descriptor.path();
+        final int content = descriptor.content();
+        if ((content & MessageResult.FetchGroup.MIME_CONTENT) > 0) {
+            byte[] body = readRange(mapper, message, offsets.getBodyStart(), offsets.getBodyLength());
+            messageResult.setMimeBodyContent(mimePath, new ByteContent(body));
+        }
+        if ((content & MessageResult.FetchGroup.MIME_HEADERS) > 0) {
+            byte[] headers = readRange(mapper, message, offsets.getHeaderStart(), offsets.getBodyStart() - offsets.getHeaderStart());
+            messageResult.setMimeHeaders(mimePath, parseHeaders(headers).iterator());
+        }
+    }
+
+    private static byte[] readRange(RangedContentMessageMapper mapper, MailboxMessage message, long offset, long length) throws MailboxException, IOException {
+        InputStream range = mapper.readContentRange(message, offset, length);
+        try {
+            return IOUtils.toByteArray(range);
+        } finally {
+            range.close();
+        }
+    }
+
+    private static List<MessageResult.Header> parseHeaders(byte[] headers) throws IOException, MimeException {
+        List<MessageResult.Header> results = new ArrayList<MessageResult.Header>();
+        MimeTokenStream parser = new MimeTokenStream(MIME_ENTITY_CONFIG);
+        parser.parse(new ByteArrayInputStream(headers));
+        for (EntityState state = parser.getState(); state != EntityState.T_END_HEADER && state != EntityState.T_END_OF_STREAM; state = parser.next()) {
+            if (state == EntityState.T_FIELD) {
+                results.add(new ResultHeader(parser.getField().getName(), parser.getField().getBody().trim()));
+            }
+        }
+        return results;
+    }
+
     private static void addPartContent(FetchGroup fetchGroup,
                                        MailboxMessage message, MessageResultImpl messageResult)
             throws MailboxException, IOException,
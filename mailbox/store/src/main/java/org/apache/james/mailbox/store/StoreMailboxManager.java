@@ -28,6 +28,7 @@ import java.util.Random;
 import java.util.Set;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import org.apache.james.mailbox.MailboxListener;
@@ -82,6 +83,8 @@ import org.apache.james.mailbox.store.search.MessageSearchIndex;
 import org.apache.james.mailbox.store.search.SimpleMessageSearchIndex;
 import org.apache.james.mailbox.store.transaction.Mapper;
 import org.apache.james.mailbox.store.transaction.TransactionalMapper;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.NoopMetricFactory;
 import org.slf4j.Logger;
 
 import com.google.common.base.Optional;
@@ -101,6 +104,7 @@ public class StoreMailboxManager implements MailboxManager {
 
     public static final char SQL_WILDCARD_CHAR = '%';
     public static final int DEFAULT_FETCH_BATCH_SIZE = 200;
+    public static final int DEFAULT_APPEND_IN_MEMORY_THRESHOLD = 100 * 1024;
 
     private MailboxEventDispatcher dispatcher;
     private DelegatingMailboxListener delegatingListener;
@@ -120,6 +124,16 @@ public class StoreMailboxManager implements MailboxManager {
 
     private MessageBatcher moveBatcher;
 
+    private int copyBatchSize = MessageBatcher.NO_BATCH_SIZE;
+
+    private int moveBatchSize = MessageBatcher.NO_BATCH_SIZE;
+
+    private int copyBatchParallelism = MessageBatcher.SEQUENTIAL;
+
+    private int moveBatchParallelism = MessageBatcher.SEQUENTIAL;
+
+    private MetricFactory metricFactory = new NoopMetricFactory();
+
     private final MailboxPathLocker locker;
 
     private MessageSearchIndex index;
@@ -134,6 +148,8 @@ public class StoreMailboxManager implements MailboxManager {
 
     private int fetchBatchSize = DEFAULT_FETCH_BATCH_SIZE;
 
+    private int appendInMemoryThreshold = DEFAULT_APPEND_IN_MEMORY_THRESHOLD;
+
     private final MessageParser messageParser;
     private final Factory messageIdFactory;
 
@@ -209,17 +225,58 @@ public class StoreMailboxManager implements MailboxManager {
     }
 
     public void setCopyBatchSize(int copyBatchSize) {
-        this.copyBatcher = new MessageBatcher(copyBatchSize);
+        this.copyBatchSize = copyBatchSize;
+        this.copyBatcher = replaceBatcher(copyBatcher, copyBatchSize, copyBatchParallelism, "mailboxCopyBatch");
     }
 
     public void setMoveBatchSize(int moveBatchSize) {
-        this.moveBatcher = new MessageBatcher(moveBatchSize);
+        this.moveBatchSize = moveBatchSize;
+        this.moveBatcher = replaceBatcher(moveBatcher, moveBatchSize, moveBatchParallelism, "mailboxMoveBatch");
+    }
+
+    /**
+     * Number of copy batches executed concurrently, each within its own MailboxSession. Only relevant when a copy
+     * batch size is set.
+     */
+    public void setCopyBatchParallelism(int copyBatchParallelism) {
+        this.copyBatchParallelism = copyBatchParallelism;
+        setCopyBatchSize(copyBatchSize);
+    }
+
+    /**
+     * Number of move batches executed concurrently, each within its own MailboxSession. Only relevant when a move
+     * batch size is set.
+     */
+    public void setMoveBatchParallelism(int moveBatchParallelism) {
+        this.moveBatchParallelism = moveBatchParallelism;
+        setMoveBatchSize(moveBatchSize);
+    }
+
+    public void setMetricFactory(MetricFactory metricFactory) {
+        this.metricFactory = metricFactory;
+        setCopyBatchSize(copyBatchSize);
+        setMoveBatchSize(moveBatchSize);
     }
 
     public void setFetchBatchSize(int fetchBatchSize) {
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    private MessageBatcher replaceBatcher(MessageBatcher previousBatcher, int batchSize, int parallelism, String metricPrefix) {
+        if (previousBatcher != null) {
+            previousBatcher.shutdown();
+        }
+        return new MessageBatcher(batchSize, parallelism, metricFactory, metricPrefix);
+    }
+
+    /**
+     * Messages smaller than this size, in bytes, are appended from an in-memory buffer, without creating a
+     * temporary file. Use 0 to always spool appended messages to disk.
+     */
+    public void setAppendInMemoryThreshold(int appendInMemoryThreshold) {
+        this.appendInMemoryThreshold = appendInMemoryThreshold;
+    }
+
 
     /**
      * Init the {@link MailboxManager}
@@ -253,10 +310,10 @@ public class StoreMailboxManager implements MailboxManager {
             this.addGlobalListener((MailboxListener) quotaUpdater, null);
         }
         if (copyBatcher == null) {
-            copyBatcher = new MessageBatcher(MessageBatcher.NO_BATCH_SIZE);
+            setCopyBatchSize(copyBatchSize);
         }
         if (moveBatcher == null) {
-            moveBatcher = new MessageBatcher(MessageBatcher.NO_BATCH_SIZE);
+            setMoveBatchSize(moveBatchSize);
         }
         if (hasCapability(MailboxCapabilities.Annotation)) {
             MailboxSession session = null;
@@ -264,6 +321,19 @@ public class StoreMailboxManager implements MailboxManager {
         }
     }
 
+    /**
+     * Stops the threads used by concurrent copy and move batches
+     */
+    @PreDestroy
+    public void destroy() {
+        if (copyBatcher != null) {
+            copyBatcher.shutdown();
+        }
+        if (moveBatcher != null) {
+            moveBatcher.shutdown();
+        }
+    }
+
     @Override
     public EnumSet<MailboxCapabilities> getSupportedMailboxCapabilities() {
         return EnumSet.noneOf(MailboxCapabilities.class);
@@ -493,6 +563,7 @@ public class StoreMailboxManager implements MailboxManager {
 
             StoreMessageManager messageManager = createMessageManager(mailboxRow, session);
             messageManager.setFetchBatchSize(fetchBatchSize);
+            messageManager.setAppendInMemoryThreshold(appendInMemoryThreshold);
             return messageManager;
         }
     }
@@ -517,6 +588,7 @@ public class StoreMailboxManager implements MailboxManager {
 
         StoreMessageManager messageManager = createMessageManager(mailboxRow, session);
         messageManager.setFetchBatchSize(fetchBatchSize);
+        messageManager.setAppendInMemoryThreshold(appendInMemoryThreshold);
         return messageManager;
     }
 
@@ -665,9 +737,15 @@ public class StoreMailboxManager implements MailboxManager {
     
     private List<MessageRange> copyMessages(MessageRange set, final MailboxSession session,
             final StoreMessageManager toMailbox, final StoreMessageManager fromMailbox) throws MailboxException {
-        return copyBatcher.batchMessages(set, new MessageBatcher.BatchedOperation() {
+        final MessageBatcher batcher = copyBatcher;
+        return batcher.batchMessages(set, new MessageBatcher.BatchedOperation() {
             public List<MessageRange> execute(MessageRange messageRange) throws MailboxException {
-                return fromMailbox.copyTo(messageRange, toMailbox, session);
+                MailboxSession batchSession = createBatchSession(batcher, session);
+                try {
+                    return fromMailbox.copyTo(messageRange, toMailbox, batchSession);
+                } finally {
+                    endBatchSession(session, batchSession);
+                }
             }
         });
     }
@@ -677,13 +755,47 @@ public class StoreMailboxManager implements MailboxManager {
         final StoreMessageManager toMailbox = (StoreMessageManager) getMailbox(to, session);
         final StoreMessageManager fromMailbox = (StoreMessageManager) getMailbox(from, session);
 
-        return moveBatcher.batchMessages(set, new MessageBatcher.BatchedOperation() {
+        final MessageBatcher batcher = moveBatcher;
+        return batcher.batchMessages(set, new MessageBatcher.BatchedOperation() {
             public List<MessageRange> execute(MessageRange messageRange) throws MailboxException {
-                return fromMailbox.moveTo(messageRange, toMailbox, session);
+                MailboxSession batchSession = createBatchSession(batcher, session);
+                try {
+                    return fromMailbox.moveTo(messageRange, toMailbox, batchSession);
+                } finally {
+                    endBatchSession(session, batchSession);
+                }
             }
         });
     }
 
+    /**
+     * Concurrent batches can not share the caller's session, as the mappers it caches are not thread safe. They get
+     * a session of their own, for the same user and with the same session id, so that listeners still see the
+     * events as coming from the caller.
+     */
+    private MailboxSession createBatchSession(MessageBatcher batcher, MailboxSession session) {
+        if (!batcher.isConcurrent()) {
+            return session;
+        }
+        return new SimpleMailboxSession(session.getSessionId(), session.getUser().getUserName(), session.getUser().getPassword(),
+            session.getLog(), session.getUser().getLocalePreferences(), sharedSpaces(session),
+            session.getOtherUsersSpace(), session.getPathDelimiter(), session.getType());
+    }
+
+    private List<String> sharedSpaces(MailboxSession session) {
+        if (session.getSharedSpaces() == null) {
+            return new ArrayList<String>();
+        }
+        return new ArrayList<String>(session.getSharedSpaces());
+    }
+
+    private void endBatchSession(MailboxSession session, MailboxSession batchSession) {
+        if (batchSession != session) {
+            endProcessingRequest(batchSession);
+            batchSession.close();
+        }
+    }
+
     @Override
     public List<MailboxMetaData> search(MailboxQuery mailboxExpression, MailboxSession session)
             throws MailboxException {
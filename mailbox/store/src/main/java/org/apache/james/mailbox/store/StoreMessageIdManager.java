@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.mail.Flags;
@@ -181,6 +182,41 @@ public class StoreMessageIdManager implements MessageIdManager {
         }
     }
 
+    @Override
+    public Set<MailboxId> copyInMailboxes(MessageId messageId, MailboxSession sourceSession, Map<MailboxId, MailboxSession> targets) throws MailboxException {
+        MessageIdMapper sourceMessageIdMapper = mailboxSessionMapperFactory.getMessageIdMapper(sourceSession);
+        MailboxMapper sourceMailboxMapper = mailboxSessionMapperFactory.getMailboxMapper(sourceSession);
+
+        Optional<MailboxMessage> sourceMessage = FluentIterable.from(sourceMessageIdMapper.find(ImmutableList.of(messageId), MessageMapper.FetchType.Metadata))
+            .filter(belongsToUser(sourceSession, sourceMailboxMapper))
+            .first();
+        if (!sourceMessage.isPresent()) {
+            throw new MailboxException("Message " + messageId.serialize() + " can not be read by " + sourceSession.getUser().getUserName());
+        }
+
+        Set<MailboxId> failedTargets = new HashSet<MailboxId>();
+        for (Map.Entry<MailboxId, MailboxSession> target : targets.entrySet()) {
+            try {
+                MailboxMapper mailboxMapper = mailboxSessionMapperFactory.getMailboxMapper(target.getValue());
+                allowOnMailboxSession(ImmutableList.of(target.getKey()), target.getValue(), mailboxMapper);
+                validateQuota(ImmutableList.of(target.getKey()), ImmutableList.<MailboxId>of(), target.getValue(), sourceMessage.get());
+                copyInMailbox(sourceMessage.get(), target.getKey(), target.getValue());
+            } catch (MailboxException e) {
+                target.getValue().getLog().info("Can not add message " + messageId.serialize() + " to mailbox " + target.getKey().serialize(), e);
+                failedTargets.add(target.getKey());
+            }
+        }
+        return failedTargets;
+    }
+
+    private void copyInMailbox(MailboxMessage sourceMessage, MailboxId mailboxId, MailboxSession mailboxSession) throws MailboxException {
+        SimpleMailboxMessage copy = SimpleMailboxMessage.copy(mailboxId, sourceMessage);
+        assignUidAndModSeq(mailboxSession, copy);
+        mailboxSessionMapperFactory.getMessageIdMapper(mailboxSession).copyInMailbox(copy);
+        dispatcher.added(mailboxSession, new SimpleMessageMetaData(copy),
+            mailboxSessionMapperFactory.getMailboxMapper(mailboxSession).findMailboxById(mailboxId));
+    }
+
     protected MailboxMessage createMessage(Date internalDate, int size, int bodyStartOctet, SharedInputStream content, Flags flags, PropertyBuilder propertyBuilder, List<MessageAttachment> attachments, MailboxId mailboxId) throws MailboxException {
         return new SimpleMailboxMessage(messageIdFactory.generate(), internalDate, size, bodyStartOctet, content, flags, propertyBuilder, mailboxId, attachments);
     }
@@ -234,12 +270,16 @@ public class StoreMessageIdManager implements MessageIdManager {
     }
 
     private MessageMetaData save(MailboxSession mailboxSession, MessageIdMapper messageIdMapper, MailboxMessage mailboxMessage) throws MailboxException {
+        assignUidAndModSeq(mailboxSession, mailboxMessage);
+        messageIdMapper.save(mailboxMessage);
+        return new SimpleMessageMetaData(mailboxMessage.getUid(), mailboxMessage.getModSeq(), mailboxMessage.createFlags(), mailboxMessage.getFullContentOctets(), mailboxMessage.getInternalDate(), mailboxMessage.getMessageId());
+    }
+
+    private void assignUidAndModSeq(MailboxSession mailboxSession, MailboxMessage mailboxMessage) throws MailboxException {
         long modSeq = mailboxSessionMapperFactory.getModSeqProvider().nextModSeq(mailboxSession, mailboxMessage.getMailboxId());
         MessageUid uid = mailboxSessionMapperFactory.getUidProvider().nextUid(mailboxSession, mailboxMessage.getMailboxId());
         mailboxMessage.setModSeq(modSeq);
         mailboxMessage.setUid(uid);
-        messageIdMapper.save(mailboxMessage);
-        return new SimpleMessageMetaData(uid, modSeq, mailboxMessage.createFlags(), mailboxMessage.getFullContentOctets(), mailboxMessage.getInternalDate(), mailboxMessage.getMessageId());
     }
 
     private Function<MailboxMessage, MessageResult> messageResultConverter(final MessageResult.FetchGroup fetchGroup) {
@@ -19,8 +19,6 @@
 
 package org.apache.james.mailbox.store;
 
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -34,10 +32,13 @@ import java.util.TreeMap;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 import javax.mail.internet.SharedInputStream;
+import javax.mail.util.SharedByteArrayInputStream;
 import javax.mail.util.SharedFileInputStream;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.james.mailbox.MailboxListener;
 import org.apache.james.mailbox.MailboxPathLocker;
 import org.apache.james.mailbox.MailboxSession;
@@ -62,8 +63,10 @@ import org.apache.james.mailbox.model.MessageId;
 import org.apache.james.mailbox.model.MessageId.Factory;
 import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
 import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.model.MimeDescriptor;
 import org.apache.james.mailbox.model.SearchQuery;
 import org.apache.james.mailbox.model.SimpleMailboxACL;
 import org.apache.james.mailbox.model.UpdatedFlags;
@@ -71,8 +74,10 @@ import org.apache.james.mailbox.quota.QuotaManager;
 import org.apache.james.mailbox.quota.QuotaRootResolver;
 import org.apache.james.mailbox.store.event.MailboxEventDispatcher;
 import org.apache.james.mailbox.store.mail.AttachmentMapper;
+import org.apache.james.mailbox.store.mail.ChangedSinceMessageMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.ReservingMessageMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 import org.apache.james.mailbox.store.mail.model.impl.MessageParser;
@@ -82,6 +87,8 @@ import org.apache.james.mailbox.store.quota.QuotaChecker;
 import org.apache.james.mailbox.store.search.MessageSearchIndex;
 import org.apache.james.mailbox.store.streaming.BodyOffsetInputStream;
 import org.apache.james.mailbox.store.streaming.CountingInputStream;
+import org.apache.james.mailbox.store.streaming.MimePartOffsetsOutputStream;
+import org.apache.james.mailbox.store.streaming.PartOffsets;
 import org.apache.james.mailbox.store.transaction.Mapper;
 import org.apache.james.mime4j.MimeException;
 import org.apache.james.mime4j.message.DefaultBodyDescriptorBuilder;
@@ -163,6 +170,8 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
     
     private int fetchBatchSize;
 
+    private int appendInMemoryThreshold = StoreMailboxManager.DEFAULT_APPEND_IN_MEMORY_THRESHOLD;
+
     public StoreMessageManager(MailboxSessionMapperFactory mapperFactory, MessageSearchIndex index, MailboxEventDispatcher dispatcher, 
             MailboxPathLocker locker, Mailbox mailbox, MailboxACLResolver aclResolver, GroupMembershipResolver groupMembershipResolver,
             QuotaManager quotaManager, QuotaRootResolver quotaRootResolver, MessageParser messageParser, MessageId.Factory messageIdFactory) throws MailboxException {
@@ -183,6 +192,14 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         this.fetchBatchSize = fetchBatchSize;
     }
 
+    /**
+     * Messages smaller than this size, in bytes, are buffered in memory while being appended. Larger ones are
+     * spooled to a temporary file.
+     */
+    public void setAppendInMemoryThreshold(int appendInMemoryThreshold) {
+        this.appendInMemoryThreshold = appendInMemoryThreshold;
+    }
+
     protected Factory getMessageIdFactory() {
         return messageIdFactory;
     }
@@ -288,24 +305,24 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
     @Override
     public ComposedMessageId appendMessage(InputStream msgIn, Date internalDate, final MailboxSession mailboxSession, boolean isRecent, Flags flagsToBeSet) throws MailboxException {
 
-        File file = null;
         TeeInputStream tmpMsgIn = null;
         BodyOffsetInputStream bIn = null;
-        FileOutputStream out = null;
-        SharedFileInputStream contentIn = null;
+        DeferredFileOutputStream out = null;
+        InputStream contentIn = null;
 
         if (!isWriteable(mailboxSession)) {
             throw new ReadOnlyException(getMailboxPath(), mailboxSession.getPathDelimiter());
         }
 
         try {
-            // Create a temporary file and copy the message to it. We will work
-            // with the file as
-            // source for the InputStream
-            file = File.createTempFile("imap", ".msg");
-            out = new FileOutputStream(file);
+            // Copy the message to a buffer which is kept in memory for small messages
+            // and spilled to a temporary file once it grows above the threshold. We will
+            // work with this buffer as source for the InputStream
+            out = new DeferredFileOutputStream(appendInMemoryThreshold, "imap", ".msg", null);
 
-            tmpMsgIn = new TeeInputStream(msgIn, out);
+            // Record the offsets of the MIME parts while the message is copied
+            MimePartOffsetsOutputStream partOffsets = new MimePartOffsetsOutputStream();
+            tmpMsgIn = new TeeInputStream(msgIn, new TeeOutputStream(out, partOffsets));
 
             bIn = new BodyOffsetInputStream(tmpMsgIn);
             // Disable line length... This should be handled by the smtp server
@@ -318,11 +335,13 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
             parser.setRecursionMode(RecursionMode.M_NO_RECURSE);
             parser.parse(bIn);
             final HeaderImpl header = new HeaderImpl();
+            final List<MessageResult.Header> resultHeaders = new ArrayList<MessageResult.Header>();
 
             EntityState next = parser.next();
             while (next != EntityState.T_BODY && next != EntityState.T_END_OF_STREAM && next != EntityState.T_START_MULTIPART) {
                 if (next == EntityState.T_FIELD) {
                     header.addField(parser.getField());
+                    resultHeaders.add(new ResultHeader(parser.getField().getName(), parser.getField().getBody().trim()));
                 }
                 next = parser.next();
             }
@@ -378,6 +397,12 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
                 }
                 propertyBuilder.setTextualLineCount(lines);
             }
+            // The MIME structure of composite messages is built while parsing their body, so that it does not need
+            // to be parsed again on BODYSTRUCTURE fetches
+            MimeDescriptor mimeStructure = null;
+            if (MimeDescriptorImpl.isComposite(mediaType)) {
+                mimeStructure = extractMimeStructure(parser, resultHeaders);
+            }
 
             final Flags flags;
             if (flagsToBeSet == null) {
@@ -405,13 +430,24 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
             if (bodyStartOctet == -1) {
                 bodyStartOctet = 0;
             }
-            contentIn = new SharedFileInputStream(file);
-            final int size = (int) file.length();
+            out.close();
+            partOffsets.close();
+            if (mimeStructure != null) {
+                propertyBuilder.setMimeStructure(serializeMimeStructure(mimeStructure, partOffsets.getPartOffsets()));
+            }
+            final SharedInputStream sharedContent;
+            if (out.isInMemory()) {
+                sharedContent = new SharedByteArrayInputStream(out.getData());
+            } else {
+                sharedContent = new SharedFileInputStream(out.getFile());
+            }
+            contentIn = (InputStream) sharedContent;
+            final int size = (int) out.getByteCount();
 
-            final List<MessageAttachment> attachments = extractAttachments(contentIn);
+            final List<MessageAttachment> attachments = extractAttachments(sharedContent);
             propertyBuilder.setHasAttachment(hasNonInlinedAttachment(attachments));
 
-            final MailboxMessage message = createMessage(internalDate, size, bodyStartOctet, contentIn, flags, propertyBuilder, attachments);
+            final MailboxMessage message = createMessage(internalDate, size, bodyStartOctet, sharedContent, flags, propertyBuilder, attachments);
 
             new QuotaChecker(quotaManager, quotaRootResolver, mailbox).tryAddition(1, size);
 
@@ -440,9 +476,9 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
             IOUtils.closeQuietly(out);
             IOUtils.closeQuietly(contentIn);
 
-            // delete the temporary file if one was specified
-            if (file != null) {
-                if (!file.delete()) {
+            // delete the temporary file if the message was spooled to one
+            if (out != null && out.getFile() != null) {
+                if (!out.getFile().delete()) {
                     // Don't throw an IOException. The message could be appended
                     // and the temporary file
                     // will be deleted hopefully some day
@@ -461,9 +497,27 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         });
     }
 
-    private List<MessageAttachment> extractAttachments(SharedFileInputStream contentIn) {
+    private MimeDescriptor extractMimeStructure(MimeTokenStream parser, List<MessageResult.Header> headers) {
         try {
-            return messageParser.retrieveAttachments(contentIn);
+            return MimeDescriptorImpl.build(parser, headers);
+        } catch (Exception e) {
+            LOG.warn("Error while computing mail's MIME structure: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private String serializeMimeStructure(MimeDescriptor mimeStructure, PartOffsets partOffsets) {
+        try {
+            return MimeStructureSerializer.serialize(mimeStructure, partOffsets);
+        } catch (MailboxException e) {
+            LOG.warn("Error while serializing mail's MIME structure: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private List<MessageAttachment> extractAttachments(SharedInputStream contentIn) {
+        try {
+            return messageParser.retrieveAttachments(contentIn.newStream(0, -1));
         } catch (Exception e) {
             LOG.warn("Error while parsing mail's attachments: " + e.getMessage(), e);
             return ImmutableList.of();
@@ -699,6 +753,19 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         return new StoreMessageResultIterator(messageMapper, mailbox, set, fetchBatchSize, fetchGroup);
     }
 
+    /**
+     * The selection is done by the {@link MessageMapper} when it is a {@link ChangedSinceMessageMapper}, otherwise the
+     * whole range is read and filtered.
+     */
+    @Override
+    public MessageResultIterator getMessagesChangedSince(MessageRange set, long modSeq, FetchGroup fetchGroup, MailboxSession mailboxSession) throws MailboxException {
+        final MessageMapper messageMapper = mapperFactory.getMessageMapper(mailboxSession);
+        if (messageMapper instanceof ChangedSinceMessageMapper) {
+            return new StoreMessageResultIterator((ChangedSinceMessageMapper) messageMapper, mailbox, set, modSeq, fetchBatchSize, fetchGroup);
+        }
+        return new ChangedSinceMessageResultIterator(getMessages(set, fetchGroup, mailboxSession), modSeq);
+    }
+
     /**
      * Return a List which holds all uids of recent messages and optional reset
      * the recent flag on the messages for the uids
@@ -754,18 +821,23 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         final List<MessageMetaData> copiedRows = new ArrayList<MessageMetaData>();
         final MessageMapper messageMapper = mapperFactory.getMessageMapper(session);
         QuotaChecker quotaChecker = new QuotaChecker(quotaManager, quotaRootResolver, mailbox);
+        Iterator<MailboxMessage> originalMessages = reserveUidsAndModSeqsFor(originalRows, session);
 
-        while (originalRows.hasNext()) {
-            final MailboxMessage originalMessage = originalRows.next();
-            quotaChecker.tryAddition(1, originalMessage.getFullContentOctets());
-            MessageMetaData data = messageMapper.execute(new Mapper.Transaction<MessageMetaData>() {
-                public MessageMetaData run() throws MailboxException {
-                    return messageMapper.copy(getMailboxEntity(), originalMessage);
+        try {
+            while (originalMessages.hasNext()) {
+                final MailboxMessage originalMessage = originalMessages.next();
+                quotaChecker.tryAddition(1, originalMessage.getFullContentOctets());
+                MessageMetaData data = messageMapper.execute(new Mapper.Transaction<MessageMetaData>() {
+                    public MessageMetaData run() throws MailboxException {
+                        return messageMapper.copy(getMailboxEntity(), originalMessage);
 
-                }
+                    }
 
-            });
-            copiedRows.add(data);
+                });
+                copiedRows.add(data);
+            }
+        } finally {
+            releaseUidAndModSeqReservation(session);
         }
         return copiedRows.iterator();
     }
@@ -774,21 +846,60 @@ public class StoreMessageManager implements org.apache.james.mailbox.MessageMana
         final List<MessageMetaData> movedRows = new ArrayList<MessageMetaData>();
         final List<MessageMetaData> originalRowsCopy = new ArrayList<MessageMetaData>();
         final MessageMapper messageMapper = mapperFactory.getMessageMapper(session);
+        Iterator<MailboxMessage> originalMessages = reserveUidsAndModSeqsFor(originalRows, session);
 
-        while (originalRows.hasNext()) {
-            final MailboxMessage originalMessage = originalRows.next();
-            originalRowsCopy.add(new SimpleMessageMetaData(originalMessage));
-            MessageMetaData data = messageMapper.execute(new Mapper.Transaction<MessageMetaData>() {
-                public MessageMetaData run() throws MailboxException {
-                    return messageMapper.move(getMailboxEntity(), originalMessage);
-                }
+        try {
+            while (originalMessages.hasNext()) {
+                final MailboxMessage originalMessage = originalMessages.next();
+                originalRowsCopy.add(new SimpleMessageMetaData(originalMessage));
+                MessageMetaData data = messageMapper.execute(new Mapper.Transaction<MessageMetaData>() {
+                    public MessageMetaData run() throws MailboxException {
+                        return messageMapper.move(getMailboxEntity(), originalMessage);
+                    }
 
-            });
-            movedRows.add(data);
+                });
+                movedRows.add(data);
+            }
+        } finally {
+            releaseUidAndModSeqReservation(session);
         }
         return new MoveResult(movedRows.iterator(), originalRowsCopy.iterator());
 	}
 
+    /**
+     * When the underlying {@link MessageMapper} allocates uids and mod-sequences by blocks, reserve one block for all
+     * the given messages. The messages are then copied or moved within the destination lock, and the block released
+     * right after, so that the values are handed out only while this batch is being stored.
+     */
+    private Iterator<MailboxMessage> reserveUidsAndModSeqsFor(Iterator<MailboxMessage> originalRows, MailboxSession session) throws MailboxException {
+        if (!(mapperFactory.getMessageMapper(session) instanceof ReservingMessageMapper)) {
+            return originalRows;
+        }
+        List<MailboxMessage> originalMessages = ImmutableList.copyOf(originalRows);
+        reserveUidsAndModSeqs(originalMessages.size(), session);
+        return originalMessages.iterator();
+    }
+
+    /**
+     * Reserve uids and mod-sequences for the <code>count</code> next messages added to this mailbox, when the
+     * underlying {@link MessageMapper} supports it. This is a no-op otherwise.
+     *
+     * Callers are expected to call {@link #releaseUidAndModSeqReservation(MailboxSession)} once done.
+     */
+    public void reserveUidsAndModSeqs(int count, MailboxSession session) throws MailboxException {
+        MessageMapper messageMapper = mapperFactory.getMessageMapper(session);
+        if (count > 1 && messageMapper instanceof ReservingMessageMapper) {
+            ((ReservingMessageMapper) messageMapper).reserveUidsAndModSeqs(getMailboxEntity(), count);
+        }
+    }
+
+    public void releaseUidAndModSeqReservation(MailboxSession session) throws MailboxException {
+        MessageMapper messageMapper = mapperFactory.getMessageMapper(session);
+        if (messageMapper instanceof ReservingMessageMapper) {
+            ((ReservingMessageMapper) messageMapper).releaseReservation(getMailboxEntity());
+        }
+    }
+
 
     private SortedMap<MessageUid, MessageMetaData> copy(MessageRange set, StoreMessageManager to, MailboxSession session) throws MailboxException {
         Iterator<MailboxMessage> originalRows = retrieveOriginalRows(set, session);
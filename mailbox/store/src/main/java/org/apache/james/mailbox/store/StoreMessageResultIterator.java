@@ -1,314 +1,423 @@
-/****************************************************************
- * Licensed to the Apache Software Foundation (ASF) under one   *
- * or more contributor license agreements.  See the NOTICE file *
- * distributed with this work for additional information        *
- * regarding copyright ownership.  The ASF licenses this file   *
- * to you under the Apache License, Version 2.0 (the            *
- * "License"); you may not use this file except in compliance   *
- * with the License.  You may obtain a copy of the License at   *
- *                                                              *
- *   http://www.apache.org/licenses/LICENSE-2.0                 *
- *                                                              *
- * Unless required by applicable law or agreed to in writing,   *
- * software distributed under the License is distributed on an  *
- * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
- * KIND, either express or implied.  See the License for the    *
- * specific language governing permissions and limitations      *
- * under the License.                                           *
- ****************************************************************/
-package org.apache.james.mailbox.store;
-
-import java.util.Date;
-import java.util.Iterator;
-import java.util.List;
-import java.util.NoSuchElementException;
-
-import javax.mail.Flags;
-
-import org.apache.james.mailbox.MessageUid;
-import org.apache.james.mailbox.exception.MailboxException;
-import org.apache.james.mailbox.model.Content;
-import org.apache.james.mailbox.model.Headers;
-import org.apache.james.mailbox.model.MailboxId;
-import org.apache.james.mailbox.model.MessageAttachment;
-import org.apache.james.mailbox.model.MessageId;
-import org.apache.james.mailbox.model.MessageRange;
-import org.apache.james.mailbox.model.MessageRange.Type;
-import org.apache.james.mailbox.model.MessageResult;
-import org.apache.james.mailbox.model.MessageResult.FetchGroup;
-import org.apache.james.mailbox.model.MessageResultIterator;
-import org.apache.james.mailbox.model.MimeDescriptor;
-import org.apache.james.mailbox.store.mail.MessageMapper;
-import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
-import org.apache.james.mailbox.store.mail.model.Mailbox;
-import org.apache.james.mailbox.store.mail.model.MailboxMessage;
-
-import com.google.common.base.Objects;
-
-public class StoreMessageResultIterator implements MessageResultIterator {
-
-    private Iterator<MailboxMessage> next = null;
-    private MailboxException exception;
-    private final Mailbox mailbox;
-    private final FetchGroup group;
-    private final MessageUid from;
-    private MessageUid cursor;
-    private final MessageUid to;
-    private final int batchSize;
-    private final Type type;
-    private final MessageMapper mapper;
-    private final FetchType ftype;
-
-    public StoreMessageResultIterator(MessageMapper mapper, Mailbox mailbox, MessageRange range, int batchSize, org.apache.james.mailbox.model.MessageResult.FetchGroup group) {
-        this.mailbox = mailbox;
-        this.group = group;
-        this.mapper = mapper;
-        this.from = range.getUidFrom();
-        this.cursor = this.from;
-        this.to = range.getUidTo();
-        this.batchSize = batchSize;
-        this.type = range.getType();
-        this.ftype = getFetchType(group);
-    }
-
-    /**
-     * Use the passed {@link FetchGroup} and calculate the right
-     * {@link FetchType} for it
-     * 
-     * @param group
-     * @return fetchType
-     */
-    private static FetchType getFetchType(FetchGroup group) {
-        int content = group.content();
-        boolean headers = false;
-        boolean body = false;
-        boolean full = false;
-
-        if ((content & FetchGroup.HEADERS) > 0) {
-            headers = true;
-            content -= FetchGroup.HEADERS;
-        }
-        if (group.getPartContentDescriptors().size() > 0) {
-            full = true;
-        }
-        if ((content & FetchGroup.BODY_CONTENT ) > 0 ) {
-            body = true;
-            content -= FetchGroup.BODY_CONTENT;
-        }
-
-        if ((content & FetchGroup.FULL_CONTENT) > 0) {
-            full = true;
-            content -= FetchGroup.FULL_CONTENT;
-        }
-
-        if ((content & FetchGroup.MIME_DESCRIPTOR) > 0) {
-            // If we need the mimedescriptor we MAY need the full content later
-            // too.
-            // This gives us no other choice then request it
-            full = true;
-            content -= FetchGroup.MIME_DESCRIPTOR;
-        }
-        if (full || (body && headers)) {
-            return FetchType.Full;
-        } else if (body) {
-            return FetchType.Body;
-        } else if (headers) {
-            return FetchType.Headers;
-        } else {
-            return FetchType.Metadata;
-        }
-    }
-
-    @Override
-    public boolean hasNext() {
-        if (cursor.compareTo(to) > 0) 
-          return false;
-
-        if (next == null || !next.hasNext()) {
-            try {
-                readBatch();
-            } catch (MailboxException e) {
-                this.exception = e;
-                return false;
-            }
-        }
-        
-        return next.hasNext();
-    }
-
-    private void readBatch() throws MailboxException {
-        MessageRange range;
-        switch (type) {
-        default:
-        case ALL:
-            // In case of all, we start on cursor and don't specify a to
-            range = MessageRange.from(cursor);
-            break;
-        case FROM:
-            range = MessageRange.from(cursor);
-            break;
-        case ONE:
-            range = MessageRange.one(cursor);
-            break;
-        case RANGE:
-            range = MessageRange.range(cursor, to);
-            break;
-        }
-        next = mapper.findInMailbox(mailbox, range, ftype, batchSize);
-    }
-
-    @Override
-    public MessageResult next() {
-        if (!hasNext()) {
-          throw new NoSuchElementException();
-        }
-        
-        final MailboxMessage message = next.next();
-        MessageResult result;
-        try {
-            result = ResultUtils.loadMessageResult(message, group);
-            cursor = result.getUid();
-        } catch (MailboxException e) {
-            result = new UnloadedMessageResult(message, e);
-        }
-
-        cursor = cursor.next();
-        return result;
-    }
-
-    @Override
-    public void remove() {
-        throw new UnsupportedOperationException("Read only");
-    }
-
-    @Override
-    public MailboxException getException() {
-        return exception;
-    }
-
-    private static final class UnloadedMessageResult implements MessageResult {
-        private final MailboxException exception;
-
-        private final Date internalDate;
-
-        private final long size;
-
-        private final MessageUid uid;
-
-        private final Flags flags;
-
-        private final MessageId messageId;
-
-        private long modSeq = -1;
-
-        private final MailboxId mailboxId;
-
-        public UnloadedMessageResult(MailboxMessage message, MailboxException exception) {
-            super();
-            internalDate = message.getInternalDate();
-            size = message.getFullContentOctets();
-            uid = message.getUid();
-            flags = message.createFlags();
-            modSeq = message.getModSeq();
-            mailboxId = message.getMailboxId();
-            messageId = message.getMessageId();
-            this.exception = exception;
-        }
-
-        @Override
-        public MailboxId getMailboxId() {
-            return mailboxId;
-        }
-
-        public Flags getFlags() {
-            return flags;
-        }
-
-        public Content getFullContent() throws MailboxException {
-            throw exception;
-        }
-
-        public Date getInternalDate() {
-            return internalDate;
-        }
-
-        public Content getBody() throws MailboxException {
-            throw exception;
-        }
-
-        public long getSize() {
-            return size;
-        }
-
-        public MessageUid getUid() {
-            return uid;
-        }
-
-        @Override
-        public MessageId getMessageId() {
-            return messageId;
-        }
-        
-        public int compareTo(MessageResult that) {
-            return uid.compareTo(that.getUid());
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hashCode(exception, internalDate, size, uid, flags, modSeq, messageId);
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj instanceof UnloadedMessageResult) {
-                UnloadedMessageResult that = (UnloadedMessageResult)obj;
-                return (size == that.size) && (uid.equals(that.uid)) && (modSeq == that.modSeq) && exception.equals(that.exception)
-                        && internalDate.equals(that.internalDate) && flags.equals(that.flags);
-            }
-            return false;
-        }
-
-        public Content getFullContent(MimePath path) throws MailboxException {
-            throw exception;
-        }
-
-        public Iterator<Header> iterateHeaders(MimePath path) throws MailboxException {
-            throw exception;
-        }
-
-        public Iterator<Header> iterateMimeHeaders(MimePath path) throws MailboxException {
-            throw exception;
-        }
-
-        public Content getBody(MimePath path) throws MailboxException {
-            throw exception;
-        }
-
-        public Content getMimeBody(MimePath path) throws MailboxException {
-            throw exception;
-        }
-
-        public MimeDescriptor getMimeDescriptor() throws MailboxException {
-            throw exception;
-        }
-
-        public long getModSeq() {
-            return modSeq;
-        }
-
-        @Override
-        public Headers getHeaders() throws MailboxException {
-            throw exception;
-        }
-
-        @Override
-        public List<MessageAttachment> getAttachments() throws MailboxException {
-            throw exception;
-        }
-
-    }
-
-}
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.mail.Flags;
+
+import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.Content;
+import org.apache.james.mailbox.model.Headers;
+import org.apache.james.mailbox.model.MailboxId;
+import org.apache.james.mailbox.model.MessageAttachment;
+import org.apache.james.mailbox.model.MessageId;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageRange.Type;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResult.FetchGroup;
+import org.apache.james.mailbox.model.MessageResultIterator;
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.apache.james.mailbox.store.mail.ChangedSinceMessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper;
+import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.RangedContentMessageMapper;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+
+public class StoreMessageResultIterator implements MessageResultIterator {
+
+    private static final long NO_CHANGED_SINCE = -1;
+    private static final int UNLIMITED = -1;
+
+    private Iterator<MailboxMessage> next = null;
+    private Map<MessageUid, MailboxMessage> fullContents = ImmutableMap.of();
+    private MailboxException exception;
+    private final Mailbox mailbox;
+    private final FetchGroup group;
+    private final MessageUid from;
+    private MessageUid cursor;
+    private final MessageUid to;
+    private final MessageRange range;
+    private final int batchSize;
+    private final Type type;
+    private final MessageMapper mapper;
+    private final FetchType ftype;
+    private final boolean rangedPartContent;
+    private final long changedSince;
+    private long modSeqCursor;
+
+    public StoreMessageResultIterator(MessageMapper mapper, Mailbox mailbox, MessageRange range, int batchSize, org.apache.james.mailbox.model.MessageResult.FetchGroup group) {
+        this(mapper, mailbox, range, batchSize, group, NO_CHANGED_SINCE);
+    }
+
+    /**
+     * Iterate over the messages of the range having a MODSEQ greater than <code>changedSince</code>. These are
+     * selected by the mapper, by batches of <code>batchSize</code> messages, and returned in MODSEQ order.
+     */
+    public StoreMessageResultIterator(ChangedSinceMessageMapper mapper, Mailbox mailbox, MessageRange range, long changedSince, int batchSize, FetchGroup group) {
+        this(mapper, mailbox, range, batchSize, group, changedSince);
+    }
+
+    private StoreMessageResultIterator(MessageMapper mapper, Mailbox mailbox, MessageRange range, int batchSize, FetchGroup group, long changedSince) {
+        this.mailbox = mailbox;
+        this.group = group;
+        this.mapper = mapper;
+        this.from = range.getUidFrom();
+        this.cursor = this.from;
+        this.to = range.getUidTo();
+        this.range = range;
+        this.batchSize = batchSize;
+        this.type = range.getType();
+        this.rangedPartContent = mapper instanceof RangedContentMessageMapper && ResultUtils.canLoadPartContentFromRanges(group);
+        this.ftype = getFetchType(group, rangedPartContent);
+        this.changedSince = changedSince;
+        this.modSeqCursor = changedSince;
+    }
+
+    /**
+     * Use the passed {@link FetchGroup} and calculate the right
+     * {@link FetchType} for it
+     * 
+     * @param group
+     * @param rangedPartContent true when the part contents are read from ranges of the stored content
+     * @return fetchType
+     */
+    private static FetchType getFetchType(FetchGroup group, boolean rangedPartContent) {
+        int content = group.content();
+        boolean headers = false;
+        boolean body = false;
+        boolean full = false;
+
+        if ((content & FetchGroup.HEADERS) > 0) {
+            headers = true;
+            content -= FetchGroup.HEADERS;
+        }
+        if (group.getPartContentDescriptors().size() > 0 && !rangedPartContent) {
+            full = true;
+        }
+        if ((content & FetchGroup.BODY_CONTENT ) > 0 ) {
+            body = true;
+            content -= FetchGroup.BODY_CONTENT;
+        }
+
+        if ((content & FetchGroup.FULL_CONTENT) > 0) {
+            full = true;
+            content -= FetchGroup.FULL_CONTENT;
+        }
+
+        if ((content & FetchGroup.MIME_DESCRIPTOR) > 0) {
+            // The MIME structure of composite messages is stored along their properties, and the descriptor of other
+            // messages is built from their headers. Messages stored without their MIME structure are loaded again
+            // with their full content.
+            headers = true;
+            content -= FetchGroup.MIME_DESCRIPTOR;
+        }
+        if (full || (body && headers)) {
+            return FetchType.Full;
+        } else if (body) {
+            return FetchType.Body;
+        } else if (headers) {
+            return FetchType.Headers;
+        } else {
+            return FetchType.Metadata;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (changedSince == NO_CHANGED_SINCE && cursor.compareTo(to) > 0)
+          return false;
+
+        if (next == null || !next.hasNext()) {
+            try {
+                readBatch();
+            } catch (MailboxException e) {
+                this.exception = e;
+                return false;
+            }
+        }
+        
+        return next.hasNext();
+    }
+
+    private void readBatch() throws MailboxException {
+        Iterator<MailboxMessage> batch;
+        if (changedSince != NO_CHANGED_SINCE) {
+            // Changed messages are returned in MODSEQ order: the next batch starts after the last returned MODSEQ
+            batch = ((ChangedSinceMessageMapper) mapper).findChangedSinceInMailbox(mailbox, range, modSeqCursor, ftype, batchSize);
+        } else {
+            batch = mapper.findInMailbox(mailbox, nextRange(), ftype, batchSize);
+        }
+        List<MailboxMessage> messages = ImmutableList.copyOf(batch);
+        if (!messages.isEmpty()) {
+            modSeqCursor = Iterables.getLast(messages).getModSeq();
+        }
+        fullContents = loadFullContents(messages);
+        next = messages.iterator();
+    }
+
+    private MessageRange nextRange() {
+        switch (type) {
+        default:
+        case ALL:
+            // In case of all, we start on cursor and don't specify a to
+            return MessageRange.from(cursor);
+        case FROM:
+            return MessageRange.from(cursor);
+        case ONE:
+            return MessageRange.one(cursor);
+        case RANGE:
+            return MessageRange.range(cursor, to);
+        }
+    }
+
+    /**
+     * Messages stored before their MIME structure was, and that can not be served without it, are loaded again with
+     * their full content. This is done once per batch, with one query per contiguous range of such messages.
+     */
+    private Map<MessageUid, MailboxMessage> loadFullContents(List<MailboxMessage> messages) throws MailboxException {
+        List<MessageUid> uids = new ArrayList<MessageUid>();
+        for (MailboxMessage message : messages) {
+            if (needsFullContent(message)) {
+                uids.add(message.getUid());
+            }
+        }
+        if (uids.isEmpty()) {
+            return ImmutableMap.of();
+        }
+        Map<MessageUid, MailboxMessage> result = new HashMap<MessageUid, MailboxMessage>();
+        for (MessageRange uidRange : MessageRange.toRanges(uids)) {
+            Iterator<MailboxMessage> fullMessages = mapper.findInMailbox(mailbox, uidRange, FetchType.Full, UNLIMITED);
+            while (fullMessages.hasNext()) {
+                MailboxMessage fullMessage = fullMessages.next();
+                result.put(fullMessage.getUid(), fullMessage);
+            }
+        }
+        return result;
+    }
+
+    private boolean needsFullContent(MailboxMessage message) {
+        return ftype != FetchType.Full
+            && (rangedPartContent || needsStoredMimeStructure(message))
+            && new PropertyBuilder(message.getProperties()).getMimeStructure() == null;
+    }
+
+    @Override
+    public MessageResult next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        
+        final MailboxMessage message = next.next();
+        MessageResult result;
+        try {
+            result = loadMessageResult(message);
+            cursor = result.getUid();
+        } catch (MailboxException e) {
+            result = new UnloadedMessageResult(message, e);
+        }
+
+        cursor = cursor.next();
+        return result;
+    }
+
+    private MessageResult loadMessageResult(MailboxMessage message) throws MailboxException {
+        if (ftype == FetchType.Full) {
+            return ResultUtils.loadMessageResult(message, group);
+        }
+        if (needsFullContent(message)) {
+            return ResultUtils.loadMessageResult(loadFullContent(message), group);
+        }
+        if (rangedPartContent) {
+            Optional<MessageResult> result = ResultUtils.loadMessageResult(message, group, (RangedContentMessageMapper) mapper);
+            if (result.isPresent()) {
+                return result.get();
+            }
+            return ResultUtils.loadMessageResult(loadFullContent(message), group);
+        }
+        return ResultUtils.loadMessageResult(message, group);
+    }
+
+    private boolean needsStoredMimeStructure(MailboxMessage message) {
+        return (group.content() & FetchGroup.MIME_DESCRIPTOR) > 0 && MimeDescriptorImpl.isComposite(message.getMediaType());
+    }
+
+    private MailboxMessage loadFullContent(MailboxMessage message) throws MailboxException {
+        MailboxMessage fullMessage = fullContents.get(message.getUid());
+        if (fullMessage != null) {
+            return fullMessage;
+        }
+        Iterator<MailboxMessage> messages = mapper.findInMailbox(mailbox, MessageRange.one(message.getUid()), FetchType.Full, 1);
+        if (!messages.hasNext()) {
+            throw new MailboxException("Message " + message.getUid() + " was deleted while being fetched");
+        }
+        return messages.next();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Read only");
+    }
+
+    @Override
+    public MailboxException getException() {
+        return exception;
+    }
+
+    private static final class UnloadedMessageResult implements MessageResult {
+        private final MailboxException exception;
+
+        private final Date internalDate;
+
+        private final long size;
+
+        private final MessageUid uid;
+
+        private final Flags flags;
+
+        private final MessageId messageId;
+
+        private long modSeq = -1;
+
+        private final MailboxId mailboxId;
+
+        public UnloadedMessageResult(MailboxMessage message, MailboxException exception) {
+            super();
+            internalDate = message.getInternalDate();
+            size = message.getFullContentOctets();
+            uid = message.getUid();
+            flags = message.createFlags();
+            modSeq = message.getModSeq();
+            mailboxId = message.getMailboxId();
+            messageId = message.getMessageId();
+            this.exception = exception;
+        }
+
+        @Override
+        public MailboxId getMailboxId() {
+            return mailboxId;
+        }
+
+        public Flags getFlags() {
+            return flags;
+        }
+
+        public Content getFullContent() throws MailboxException {
+            throw exception;
+        }
+
+        public Date getInternalDate() {
+            return internalDate;
+        }
+
+        public Content getBody() throws MailboxException {
+            throw exception;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public MessageUid getUid() {
+            return uid;
+        }
+
+        @Override
+        public MessageId getMessageId() {
+            return messageId;
+        }
+        
+        public int compareTo(MessageResult that) {
+            return uid.compareTo(that.getUid());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(exception, internalDate, size, uid, flags, modSeq, messageId);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof UnloadedMessageResult) {
+                UnloadedMessageResult that = (UnloadedMessageResult)obj;
+                return (size == that.size) && (uid.equals(that.uid)) && (modSeq == that.modSeq) && exception.equals(that.exception)
+                        && internalDate.equals(that.internalDate) && flags.equals(that.flags);
+            }
+            return false;
+        }
+
+        public Content getFullContent(MimePath path) throws MailboxException {
+            throw exception;
+        }
+
+        public Iterator<Header> iterateHeaders(MimePath path) throws MailboxException {
+            throw exception;
+        }
+
+        public Iterator<Header> iterateMimeHeaders(MimePath path) throws MailboxException {
+            throw exception;
+        }
+
+        public Content getBody(MimePath path) throws MailboxException {
+            throw exception;
+        }
+
+        public Content getMimeBody(MimePath path) throws MailboxException {
+            throw exception;
+        }
+
+        public MimeDescriptor getMimeDescriptor() throws MailboxException {
+            throw exception;
+        }
+
+        public long getModSeq() {
+            return modSeq;
+        }
+
+        @Override
+        public Headers getHeaders() throws MailboxException {
+            throw exception;
+        }
+
+        @Override
+        public List<MessageAttachment> getAttachments() throws MailboxException {
+            throw exception;
+        }
+
+    }
+
+}
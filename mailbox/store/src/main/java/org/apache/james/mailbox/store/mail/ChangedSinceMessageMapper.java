@@ -0,0 +1,52 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import java.util.Iterator;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+
+/**
+ * A {@link MessageMapper} able to select, on the storage side, the messages whose MODSEQ is greater than a given value.
+ *
+ * This allows CONDSTORE fetches and searches (CHANGEDSINCE, MODSEQ) to only load the changed messages instead of
+ * loading the whole range and discarding the unchanged ones.
+ */
+public interface ChangedSinceMessageMapper extends MessageMapper {
+
+    /**
+     * Return a {@link Iterator} over the messages of the given {@link MessageRange} which have a MODSEQ strictly greater
+     * than <code>modSeq</code>, ordered by MODSEQ then by uid.
+     *
+     * Messages sharing the MODSEQ of the last returned message are all returned, even beyond the limit. The following
+     * messages can hence be read by passing the MODSEQ of the last returned message.
+     *
+     * @param mailbox The mailbox to search
+     * @param set message range to search
+     * @param modSeq only messages with a greater MODSEQ are returned
+     * @param type
+     * @param limit the maximal count of messages returned. A limit lower or equal to 0 means no limit
+     * @throws MailboxException
+     */
+    Iterator<MailboxMessage> findChangedSinceInMailbox(Mailbox mailbox, MessageRange set, long modSeq, FetchType type, int limit)
+            throws MailboxException;
+}
@@ -40,6 +40,12 @@ public interface MessageIdMapper {
 
     void save(MailboxMessage mailboxMessage) throws MailboxNotFoundException, MailboxException;
 
+    /**
+     * Add an already stored message to the mailbox of the given {@link MailboxMessage}, without storing its
+     * content again.
+     */
+    void copyInMailbox(MailboxMessage mailboxMessage) throws MailboxNotFoundException, MailboxException;
+
     void delete(MessageId messageId);
 
     void delete(MessageId messageId, List<MailboxId> mailboxIds);
@@ -0,0 +1,43 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import java.io.InputStream;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+
+/**
+ * A {@link MessageMapper} able to read a range of the content of a stored message without loading the whole content.
+ *
+ * Combined with the part offsets stored along the MIME structure, this allows to serve the body parts of a message
+ * (BODY[x.y] and BODY[x.y.MIME] IMAP fetches) without loading and parsing the whole message.
+ */
+public interface RangedContentMessageMapper extends MessageMapper {
+
+    /**
+     * Read at most <code>length</code> bytes of the full content of the given message, starting at <code>offset</code>
+     *
+     * @param message the message, possibly loaded with {@link FetchType#Metadata}
+     * @param offset position in the full content of the message
+     * @param length maximum number of bytes to read
+     * @throws MailboxException
+     */
+    InputStream readContentRange(MailboxMessage message, long offset, long length) throws MailboxException;
+}
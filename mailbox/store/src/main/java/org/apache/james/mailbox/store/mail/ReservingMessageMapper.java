@@ -0,0 +1,42 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.mail;
+
+import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.store.mail.model.Mailbox;
+
+/**
+ * A {@link MessageMapper} able to allocate uids and mod-sequences of a {@link Mailbox} by blocks.
+ *
+ * Once a block is reserved, the following add, copy and move operations on this {@link Mailbox} take their uid and
+ * mod-sequence from it, without accessing the underlying {@link UidProvider} and {@link ModSeqProvider}, until the
+ * block is exhausted or released. Values of a released block that were not handed out are lost.
+ */
+public interface ReservingMessageMapper extends MessageMapper {
+
+    /**
+     * Reserve <code>count</code> contiguous uids and mod-sequences for the given {@link Mailbox}
+     */
+    void reserveUidsAndModSeqs(Mailbox mailbox, int count) throws MailboxException;
+
+    /**
+     * Release the block reserved for the given {@link Mailbox}, if any
+     */
+    void releaseReservation(Mailbox mailbox);
+}
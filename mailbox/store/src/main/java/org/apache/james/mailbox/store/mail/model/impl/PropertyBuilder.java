@@ -59,6 +59,12 @@ public class PropertyBuilder {
     private static final int INITIAL_CAPACITY = 32;
     public static final String JAMES_INTERNALS = "JAMES_INTERNALS";
     public static final String HAS_ATTACHMENT = "HAS_ATTACHMENT";
+    public static final String MIME_STRUCTURE = "MIME_STRUCTURE";
+    /**
+     * Property values are bounded by some backends (1024 characters for JPA), hence the
+     * serialized MIME structure is split in several ordered values of this length.
+     */
+    public static final int MIME_STRUCTURE_CHUNK_LENGTH = 1000;
 
     public static Predicate<Property> isHasAttachmentProperty() {
         return new Predicate<Property>() {
@@ -238,6 +244,40 @@ public class PropertyBuilder {
         setProperty(JAMES_INTERNALS, HAS_ATTACHMENT, Boolean.toString(value));
     }
 
+    /**
+     * Sets the serialized MIME structure of the message.
+     *
+     * @param value serialized MIME structure, or null to remove
+     */
+    public void setMimeStructure(String value) {
+        if (value == null) {
+            setProperty(JAMES_INTERNALS, MIME_STRUCTURE, (List<String>) null);
+            return;
+        }
+        List<String> chunks = new ArrayList<String>();
+        for (int start = 0; start < value.length(); start += MIME_STRUCTURE_CHUNK_LENGTH) {
+            chunks.add(value.substring(start, Math.min(value.length(), start + MIME_STRUCTURE_CHUNK_LENGTH)));
+        }
+        setProperty(JAMES_INTERNALS, MIME_STRUCTURE, chunks);
+    }
+
+    /**
+     * Gets the serialized MIME structure of the message.
+     *
+     * @return serialized MIME structure, or null when it was not stored
+     */
+    public String getMimeStructure() {
+        List<String> chunks = getValues(JAMES_INTERNALS, MIME_STRUCTURE);
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String chunk : chunks) {
+            builder.append(chunk);
+        }
+        return builder.toString();
+    }
+
     /**
      * Gets the MIME content subtype.
      * 
@@ -40,8 +40,11 @@ import org.apache.james.mailbox.model.MultimailboxesSearchQuery;
 import org.apache.james.mailbox.model.SearchQuery;
 import org.apache.james.mailbox.model.SearchQuery.ConjunctionCriterion;
 import org.apache.james.mailbox.model.SearchQuery.Criterion;
+import org.apache.james.mailbox.model.SearchQuery.ModSeqCriterion;
+import org.apache.james.mailbox.model.SearchQuery.NumericOperator;
 import org.apache.james.mailbox.model.SearchQuery.UidCriterion;
 import org.apache.james.mailbox.model.SearchQuery.UidRange;
+import org.apache.james.mailbox.store.mail.ChangedSinceMessageMapper;
 import org.apache.james.mailbox.store.mail.MailboxMapperFactory;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
@@ -50,6 +53,7 @@ import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
 
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
@@ -98,6 +102,60 @@ public class SimpleMessageSearchIndex implements MessageSearchIndex {
 		}
 		return null;
 	}
+
+    /**
+     * Walks down the query tree's conjunctions to find a mod-sequence such that only the messages having a greater
+     * mod-sequence can match
+     */
+    private static Optional<Long> findConjugatedChangedSince(List<Criterion> crits) {
+        for (Criterion crit : crits) {
+            Optional<Long> changedSince = changedSince(crit);
+            if (changedSince.isPresent()) {
+                return changedSince;
+            }
+        }
+        return Optional.absent();
+    }
+
+    private static Optional<Long> changedSince(Criterion crit) {
+        if (crit instanceof ModSeqCriterion) {
+            NumericOperator operator = ((ModSeqCriterion) crit).getOperator();
+            switch (operator.getType()) {
+            case GREATER_THAN:
+                return Optional.of(operator.getValue());
+            case EQUALS:
+                return Optional.of(operator.getValue() - 1);
+            default:
+                return Optional.absent();
+            }
+        }
+        if (crit instanceof ConjunctionCriterion) {
+            ConjunctionCriterion conjunction = (ConjunctionCriterion) crit;
+            switch (conjunction.getType()) {
+            case AND:
+                return findConjugatedChangedSince(conjunction.getCriteria());
+            case OR:
+                return lowestChangedSince(conjunction.getCriteria());
+            default:
+                return Optional.absent();
+            }
+        }
+        return Optional.absent();
+    }
+
+    private static Optional<Long> lowestChangedSince(List<Criterion> crits) {
+        Optional<Long> lowest = Optional.absent();
+        for (Criterion crit : crits) {
+            Optional<Long> changedSince = changedSince(crit);
+            if (!changedSince.isPresent()) {
+                return Optional.absent();
+            }
+            if (!lowest.isPresent() || changedSince.get() < lowest.get()) {
+                lowest = changedSince;
+            }
+        }
+        return lowest;
+    }
     
     @Override
     public Iterator<MessageUid> search(MailboxSession session, final Mailbox mailbox, SearchQuery query) throws MailboxException {
@@ -137,8 +195,16 @@ public class SimpleMessageSearchIndex implements MessageSearchIndex {
                 }
             }
         } else {
-        	// we have to fetch all messages
-            Iterator<MailboxMessage> messages = mapper.findInMailbox(mailbox, MessageRange.all(), FetchType.Full, -1);
+            Optional<Long> changedSince = findConjugatedChangedSince(query.getCriterias());
+            Iterator<MailboxMessage> messages;
+            if (changedSince.isPresent() && mapper instanceof ChangedSinceMessageMapper) {
+                // if there is a conjugated mod-sequence criterion in the query tree we can optimize by
+                // only fetching the messages changed since this mod-sequence
+                messages = ((ChangedSinceMessageMapper) mapper).findChangedSinceInMailbox(mailbox, MessageRange.all(), changedSince.get(), FetchType.Full, -1);
+            } else {
+                // we have to fetch all messages
+                messages = mapper.findInMailbox(mailbox, MessageRange.all(), FetchType.Full, -1);
+            }
             while(messages.hasNext()) {
             	MailboxMessage m = messages.next();
             	hitSet.add(m);
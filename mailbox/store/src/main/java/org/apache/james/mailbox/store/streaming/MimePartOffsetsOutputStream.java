@@ -0,0 +1,300 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * {@link OutputStream} which records the {@link PartOffsets} of the MIME entities of the message written to it.
+ *
+ * Only the lines needed to follow the multipart boundaries are looked at: the Content-Type header of each entity and
+ * the first bytes of each body line. This allows to compute the offsets while the message is copied, without parsing
+ * it again. Messages not following RFC 2046 may lead to offsets not matching the MIME parser view, callers are thus
+ * expected to check them against the parsed structure before relying on them.
+ *
+ *  IMPORTANT: This class is not thread-safe!
+ */
+public class MimePartOffsetsOutputStream extends OutputStream {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final Pattern BOUNDARY = Pattern.compile("(?:^|;)\\s*boundary\\s*=\\s*(?:\"([^\"]*)\"|([^;\\s]+))", Pattern.CASE_INSENSITIVE);
+    private static final String CONTENT_TYPE = "content-type:";
+    // RFC 2046 limits boundaries to 70 characters
+    private static final int MAX_KEPT_LINE_LENGTH = 1024;
+    private static final int MAX_CONTENT_TYPE_LENGTH = 16 * 1024;
+
+    private static class Entity {
+        private final long headerStart;
+        private final List<Entity> parts = new ArrayList<Entity>();
+        private long bodyStart = PartOffsets.UNKNOWN;
+        private long bodyEnd = PartOffsets.UNKNOWN;
+        private byte[] delimiter;
+
+        private Entity(long headerStart) {
+            this.headerStart = headerStart;
+        }
+
+        private Entity openPart() {
+            if (parts.isEmpty()) {
+                return null;
+            }
+            Entity last = parts.get(parts.size() - 1);
+            if (last.bodyEnd != PartOffsets.UNKNOWN) {
+                return null;
+            }
+            return last;
+        }
+
+        private PartOffsets toPartOffsets() {
+            List<PartOffsets> partOffsets = new ArrayList<PartOffsets>();
+            for (Entity part : parts) {
+                partOffsets.add(part.toPartOffsets());
+            }
+            return new PartOffsets(headerStart, bodyStart, bodyEnd, partOffsets);
+        }
+    }
+
+    private final Entity message = new Entity(0);
+    // Open multiparts, the innermost first
+    private final LinkedList<Entity> multiparts = new LinkedList<Entity>();
+    private final byte[] line = new byte[MAX_KEPT_LINE_LENGTH];
+    private Entity current = message;
+    private boolean inHeader = true;
+    private StringBuilder contentType;
+    private boolean inContentType;
+    private long position = 0;
+    private long lineStart = 0;
+    private int lineLength = 0;
+    private int previousByte = -1;
+    private int previousLineBreakLength = 0;
+    private boolean closed = false;
+
+    @Override
+    public void write(int b) {
+        position++;
+        if (b == '\n') {
+            endLine(1);
+        } else {
+            if (lineLength < MAX_KEPT_LINE_LENGTH) {
+                line[lineLength] = (byte) b;
+            }
+            lineLength++;
+        }
+        previousByte = b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (!inHeader && multiparts.isEmpty()) {
+            // No more boundary to look for: the remaining content is a single body
+            position += len;
+            return;
+        }
+        for (int i = off; i < off + len; i++) {
+            write(b[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (lineLength > 0) {
+                endLine(0);
+            }
+            long end = position;
+            for (Entity multipart : multiparts) {
+                endOpenPart(multipart, end);
+            }
+            multiparts.clear();
+            message.bodyEnd = end;
+        }
+    }
+
+    /**
+     * @return the offsets of the message and of its parts. Parts whose end was not found have an unknown end.
+     */
+    public PartOffsets getPartOffsets() {
+        return message.toPartOffsets();
+    }
+
+    private void endLine(int lineBreakLength) {
+        int length = lineLength;
+        if (lineBreakLength > 0 && length > 0 && previousByte == '\r') {
+            length--;
+            lineBreakLength++;
+        }
+        if (inHeader) {
+            headerLine(length);
+        } else {
+            bodyLine(length);
+        }
+        previousLineBreakLength = lineBreakLength;
+        lineStart = position;
+        lineLength = 0;
+    }
+
+    private void headerLine(int length) {
+        if (length == 0) {
+            endHeader();
+            return;
+        }
+        if (isDelimiter(length)) {
+            // Entity without body: the delimiter directly follows its headers
+            current.bodyStart = lineStart;
+            inHeader = false;
+            inContentType = false;
+            contentType = null;
+            bodyLine(length);
+            return;
+        }
+        int kept = Math.min(length, MAX_KEPT_LINE_LENGTH);
+        if (line[0] == ' ' || line[0] == '\t') {
+            if (inContentType) {
+                appendToContentType(0, kept);
+            }
+        } else {
+            inContentType = startsWithIgnoreCase(CONTENT_TYPE, kept);
+            if (inContentType) {
+                contentType = new StringBuilder();
+                appendToContentType(CONTENT_TYPE.length(), kept);
+            }
+        }
+    }
+
+    private void appendToContentType(int from, int to) {
+        if (contentType.length() < MAX_CONTENT_TYPE_LENGTH) {
+            contentType.append(new String(line, from, to - from, US_ASCII));
+        }
+    }
+
+    private void endHeader() {
+        inHeader = false;
+        inContentType = false;
+        current.bodyStart = position;
+        String boundary = multipartBoundary();
+        contentType = null;
+        if (boundary != null) {
+            current.delimiter = ("--" + boundary).getBytes(US_ASCII);
+            multiparts.addFirst(current);
+        }
+    }
+
+    private String multipartBoundary() {
+        if (contentType == null) {
+            return null;
+        }
+        String value = contentType.toString().trim();
+        if (!value.toLowerCase(Locale.US).startsWith("multipart/")) {
+            return null;
+        }
+        Matcher matcher = BOUNDARY.matcher(value.substring(value.indexOf('/')));
+        if (!matcher.find()) {
+            return null;
+        }
+        String boundary = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+        if (boundary.isEmpty()) {
+            return null;
+        }
+        return boundary;
+    }
+
+    private boolean isDelimiter(int length) {
+        for (Entity multipart : multiparts) {
+            if (startsWith(multipart.delimiter, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void bodyLine(int length) {
+        int depth = 0;
+        for (Entity multipart : multiparts) {
+            if (startsWith(multipart.delimiter, length)) {
+                delimiterLine(depth, multipart, length);
+                return;
+            }
+            depth++;
+        }
+    }
+
+    private void delimiterLine(int depth, Entity multipart, int length) {
+        long bodyEnd = lineStart - previousLineBreakLength;
+        for (int i = 0; i < depth; i++) {
+            Entity inner = multiparts.removeFirst();
+            endOpenPart(inner, bodyEnd);
+        }
+        endOpenPart(multipart, bodyEnd);
+        if (isCloseDelimiter(multipart.delimiter.length, length)) {
+            multiparts.removeFirst();
+            current = multipart;
+        } else {
+            Entity part = new Entity(position);
+            multipart.parts.add(part);
+            current = part;
+            inHeader = true;
+        }
+    }
+
+    private void endOpenPart(Entity multipart, long bodyEnd) {
+        Entity part = multipart.openPart();
+        if (part != null && part.bodyStart != PartOffsets.UNKNOWN) {
+            part.bodyEnd = Math.max(part.bodyStart, bodyEnd);
+        }
+    }
+
+    private boolean isCloseDelimiter(int delimiterLength, int length) {
+        return length >= delimiterLength + 2
+            && delimiterLength + 2 <= MAX_KEPT_LINE_LENGTH
+            && line[delimiterLength] == '-'
+            && line[delimiterLength + 1] == '-';
+    }
+
+    private boolean startsWith(byte[] prefix, int length) {
+        if (length < prefix.length || prefix.length > MAX_KEPT_LINE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWithIgnoreCase(String prefix, int length) {
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (Character.toLowerCase((char) line[i]) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,99 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import java.util.List;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Position of a MIME entity within the full content of a message: its headers span from <code>headerStart</code>
+ * to <code>bodyStart</code> and its body from <code>bodyStart</code> to <code>bodyEnd</code> (exclusive). The body
+ * of a part excludes the line break preceding the next boundary delimiter.
+ *
+ * A <code>bodyEnd</code> of -1 means the end of the entity was not found.
+ */
+public class PartOffsets {
+
+    public static final long UNKNOWN = -1;
+
+    private final long headerStart;
+    private final long bodyStart;
+    private final long bodyEnd;
+    private final List<PartOffsets> parts;
+
+    public PartOffsets(long headerStart, long bodyStart, long bodyEnd, List<PartOffsets> parts) {
+        this.headerStart = headerStart;
+        this.bodyStart = bodyStart;
+        this.bodyEnd = bodyEnd;
+        this.parts = ImmutableList.copyOf(parts);
+    }
+
+    public long getHeaderStart() {
+        return headerStart;
+    }
+
+    public long getBodyStart() {
+        return bodyStart;
+    }
+
+    public long getBodyEnd() {
+        return bodyEnd;
+    }
+
+    public long getBodyLength() {
+        return bodyEnd - bodyStart;
+    }
+
+    /**
+     * @return the offsets of the body parts of this entity when it is a multipart, an empty list otherwise
+     */
+    public List<PartOffsets> getParts() {
+        return parts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof PartOffsets) {
+            PartOffsets that = (PartOffsets) o;
+            return Objects.equal(this.headerStart, that.headerStart)
+                && Objects.equal(this.bodyStart, that.bodyStart)
+                && Objects.equal(this.bodyEnd, that.bodyEnd)
+                && Objects.equal(this.parts, that.parts);
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(headerStart, bodyStart, bodyEnd, parts);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("headerStart", headerStart)
+            .add("bodyStart", bodyStart)
+            .add("bodyEnd", bodyEnd)
+            .add("parts", parts)
+            .toString();
+    }
+}
@@ -432,6 +432,45 @@ public abstract class AbstractCombinationManagerTest {
             .isEqualTo(new FlagsBuilder().add(Flag.ANSWERED, Flag.DELETED).build());
     }
 
+    @Test
+    public void copyMessagesFromMailboxManagerShouldAssignAscendingUidsAndModSeqsInSourceOrder() throws Exception {
+        List<MessageId> sourceOrder = appendMessagesInMailbox1(3);
+
+        mailboxManager.copyMessages(MessageRange.all(), mailbox1.getMailboxId(), mailbox2.getMailboxId(), session);
+
+        assertMessagesInMailbox2AreInOrder(sourceOrder);
+    }
+
+    @Test
+    public void moveMessagesFromMailboxManagerShouldAssignAscendingUidsAndModSeqsInSourceOrder() throws Exception {
+        List<MessageId> sourceOrder = appendMessagesInMailbox1(3);
+
+        mailboxManager.moveMessages(MessageRange.all(), MailboxManagerFixture.MAILBOX_PATH1, MailboxManagerFixture.MAILBOX_PATH2, session);
+
+        assertMessagesInMailbox2AreInOrder(sourceOrder);
+    }
+
+    private List<MessageId> appendMessagesInMailbox1(int count) throws Exception {
+        ImmutableList.Builder<MessageId> messageIds = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            messageIds.add(messageManager1.appendMessage(new ByteArrayInputStream(MAIL_CONTENT), new Date(), session, false, FLAGS).getMessageId());
+        }
+        return messageIds.build();
+    }
+
+    private void assertMessagesInMailbox2AreInOrder(List<MessageId> expectedMessageIds) throws Exception {
+        List<MessageResult> messages = ImmutableList.copyOf(messageManager2.getMessages(MessageRange.all(), FetchGroupImpl.MINIMAL, session));
+
+        assertThat(messages).extractingResultOf("getMessageId")
+            .containsExactlyElementsOf(expectedMessageIds);
+        for (int i = 1; i < messages.size(); i++) {
+            assertThat(messages.get(i).getUid()).isGreaterThan(messages.get(i - 1).getUid());
+            assertThat(messages.get(i).getModSeq()).isGreaterThan(messages.get(i - 1).getModSeq());
+        }
+        assertThat(messageManager2.getMetaData(false, session, FetchGroup.NO_COUNT).getHighestModSeq())
+            .isEqualTo(messages.get(messages.size() - 1).getModSeq());
+    }
+
     private Predicate<MessageResult> messageInMailbox2() {
         return new Predicate<MessageResult>() {
             @Override
@@ -30,20 +30,28 @@ import java.util.List;
 import javax.mail.Flags;
 import javax.mail.Flags.Flag;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
 import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.mock.MockMailboxSession;
+import org.apache.james.mailbox.model.FetchGroupImpl;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MessageAttachment;
 import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MessageResult.FetchGroup;
+import org.apache.james.mailbox.model.MessageResult.MimePath;
 import org.apache.james.mailbox.store.mail.AttachmentMapper;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
+import org.apache.james.mailbox.store.mail.PropertiesUpdatingMessageMapper;
 import org.apache.james.mailbox.store.mail.model.Mailbox;
 import org.apache.james.mailbox.store.mail.model.MailboxMessage;
+import org.apache.james.mailbox.store.mail.model.impl.PropertyBuilder;
+import org.apache.james.mailbox.store.streaming.PartContentBuilder;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -207,5 +215,133 @@ public abstract class AbstractMailboxManagerAttachmentTest {
         List<MessageAttachment> user2Attachments = user2Messages.next().getAttachments();
         assertThat(attachments.equals(user2Attachments)).isTrue();
     }
-}
 
+    @Test
+    public void appendMessageShouldStoreMimeStructureWhenCompositeMail() throws Exception {
+        byte[] mail = IOUtils.toByteArray(ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml"));
+        inboxMessageManager.appendMessage(new ByteArrayInputStream(mail), SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+
+        String mimeStructure = storedMimeStructure();
+
+        assertThat(MimeStructureSerializer.serialize(MimeStructureSerializer.deserialize(mimeStructure)))
+            .isEqualTo(MimeStructureSerializer.serialize(MimeDescriptorImpl.build(new ByteArrayInputStream(mail))));
+    }
+
+    @Test
+    public void appendMessageShouldStorePartOffsetsWhenCompositeMail() throws Exception {
+        InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml");
+        inboxMessageManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+
+        String mimeStructure = storedMimeStructure();
+
+        assertThat(MimeStructureSerializer.findPartOffsets(mimeStructure, new int[] {1, 1}).isPresent()).isTrue();
+        assertThat(MimeStructureSerializer.findPartOffsets(mimeStructure, new int[] {1, 2}).isPresent()).isTrue();
+        assertThat(MimeStructureSerializer.findPartOffsets(mimeStructure, new int[] {2}).isPresent()).isTrue();
+    }
+
+    @Test
+    public void appendMessageShouldNotStoreMimeStructureWhenSimpleMail() throws Exception {
+        InputStream mailInputStream = new ByteArrayInputStream("Subject: Test\n\nBody".getBytes());
+        inboxMessageManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+
+        assertThat(storedMimeStructure()).isNull();
+    }
+
+    @Test
+    public void getMessagesShouldReturnMimeBodyOfParts() throws Exception {
+        byte[] mail = IOUtils.toByteArray(ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml"));
+        inboxMessageManager.appendMessage(new ByteArrayInputStream(mail), SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+
+        assertMimeBodiesOfPartsAreReturned(mail);
+    }
+
+    @Test
+    public void getMessagesShouldReturnMimeBodyOfPartsWhenStoredWithoutMimeStructure() throws Exception {
+        byte[] mail = IOUtils.toByteArray(ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml"));
+        inboxMessageManager.appendMessage(new ByteArrayInputStream(mail), SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+        removeStoredMimeStructure();
+
+        assertMimeBodiesOfPartsAreReturned(mail);
+    }
+
+    @Test
+    public void getMessagesShouldReturnMimeHeadersOfParts() throws Exception {
+        InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml");
+        inboxMessageManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+        MimePath mimePath = mimePath(2);
+        FetchGroupImpl fetchGroup = new FetchGroupImpl(FetchGroup.MINIMAL);
+        fetchGroup.addPartContent(mimePath, FetchGroup.MIME_HEADERS);
+
+        MessageResult result = inboxMessageManager.getMessages(MessageRange.all(), fetchGroup, mailboxSession).next();
+
+        MessageResult.Header contentType = result.iterateMimeHeaders(mimePath).next();
+        assertThat(contentType.getName()).isEqualTo("Content-Type");
+        assertThat(contentType.getValue()).startsWith("application/octet-stream;");
+    }
+
+    @Test
+    public void mimeStructureBackfillShouldStoreMimeStructureWhenStoredWithoutIt() throws Exception {
+        InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml");
+        inboxMessageManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+        String appendedMimeStructure = storedMimeStructure();
+        removeStoredMimeStructure();
+
+        long backfilledCount = new MimeStructureBackfill(getMailboxSessionMapperFactory()).backfill(inboxPath, mailboxSession);
+
+        assertThat(backfilledCount).isEqualTo(1);
+        assertThat(storedMimeStructure()).isEqualTo(appendedMimeStructure);
+    }
+
+    @Test
+    public void mimeStructureBackfillShouldNotUpdateMessagesHavingMimeStructure() throws Exception {
+        InputStream mailInputStream = ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml");
+        inboxMessageManager.appendMessage(mailInputStream, SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+        inboxMessageManager.appendMessage(new ByteArrayInputStream("Subject: Test\n\nBody".getBytes()), SUN_SEP_9TH_2001, mailboxSession, true, new Flags(Flags.Flag.RECENT));
+
+        long backfilledCount = new MimeStructureBackfill(getMailboxSessionMapperFactory()).backfill(inboxPath, mailboxSession);
+
+        assertThat(backfilledCount).isEqualTo(0);
+    }
+
+    private void assertMimeBodiesOfPartsAreReturned(byte[] mail) throws Exception {
+        for (int[] path : new int[][] {{1, 1}, {1, 2}, {2}}) {
+            MimePath mimePath = mimePath(path);
+            FetchGroupImpl fetchGroup = new FetchGroupImpl(FetchGroup.MINIMAL);
+            fetchGroup.addPartContent(mimePath, FetchGroup.MIME_CONTENT);
+
+            MessageResult result = inboxMessageManager.getMessages(MessageRange.all(), fetchGroup, mailboxSession).next();
+
+            assertThat(result.getMimeBody(mimePath).getInputStream()).hasContentEqualTo(new ByteArrayInputStream(mimeBody(mail, path)));
+        }
+    }
+
+    private byte[] mimeBody(byte[] mail, int[] path) throws Exception {
+        PartContentBuilder builder = new PartContentBuilder();
+        builder.parse(new ByteArrayInputStream(mail));
+        for (int position : path) {
+            builder.to(position);
+        }
+        return IOUtils.toByteArray(builder.getMimeBodyContent().getInputStream());
+    }
+
+    private MimePath mimePath(final int... positions) {
+        return new MimePath() {
+            @Override
+            public int[] getPositions() {
+                return positions;
+            }
+        };
+    }
+
+    private String storedMimeStructure() throws Exception {
+        MailboxMessage message = messageMapper.findInMailbox(inbox, MessageRange.all(), FetchType.Metadata, 1).next();
+        return new PropertyBuilder(message.getProperties()).getMimeStructure();
+    }
+
+    private void removeStoredMimeStructure() throws Exception {
+        MailboxMessage message = messageMapper.findInMailbox(inbox, MessageRange.all(), FetchType.Metadata, 1).next();
+        PropertyBuilder propertyBuilder = new PropertyBuilder(message.getProperties());
+        propertyBuilder.setMimeStructure(null);
+        ((PropertiesUpdatingMessageMapper) messageMapper).updateProperties(message, propertyBuilder.toProperties());
+    }
+}
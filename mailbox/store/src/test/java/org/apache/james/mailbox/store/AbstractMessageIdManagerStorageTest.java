@@ -24,6 +24,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import java.util.AbstractMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.mail.Flags;
 
@@ -32,6 +33,7 @@ import org.apache.james.mailbox.MailboxSession.SessionType;
 import org.apache.james.mailbox.MessageIdManager;
 import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.MessageUid;
+import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.exception.MailboxNotFoundException;
 import org.apache.james.mailbox.manager.MailboxManagerFixture;
 import org.apache.james.mailbox.mock.MockMailboxSession;
@@ -293,6 +295,40 @@ public abstract class AbstractMessageIdManagerStorageTest {
         messageIdManager.setInMailboxes(messageId, ImmutableList.of(mailbox1.getMailboxId(), mailbox4.getMailboxId()), session);
     }
 
+    @Test
+    public void copyInMailboxesShouldReturnMailboxNotBelongingToMailboxSession() throws Exception {
+        MessageId messageId = testingData.persist(mailbox1.getMailboxId(), messageUid1, FLAGS, session);
+
+        Set<MailboxId> failedTargets = messageIdManager.copyInMailboxes(messageId, session, ImmutableMap.of(mailbox2.getMailboxId(), otherSession));
+
+        assertThat(failedTargets).containsOnly(mailbox2.getMailboxId());
+    }
+
+    @Test
+    public void copyInMailboxesShouldThrowExceptionWhenSourceSessionCanNotReadMessage() throws Exception {
+        expectedException.expect(MailboxException.class);
+
+        MessageId messageId = testingData.persist(mailbox4.getMailboxId(), messageUid1, FLAGS, otherSession);
+
+        messageIdManager.copyInMailboxes(messageId, session, ImmutableMap.of(mailbox1.getMailboxId(), session));
+    }
+
+    @Test
+    public void copyInMailboxesShouldCopyInAllowedMailboxesWhenOneTargetIsNotAllowed() throws Exception {
+        MessageId messageId = testingData.persist(mailbox1.getMailboxId(), messageUid1, FLAGS, session);
+
+        Set<MailboxId> failedTargets = messageIdManager.copyInMailboxes(messageId, session, ImmutableMap.of(
+            mailbox2.getMailboxId(), session,
+            mailbox3.getMailboxId(), otherSession));
+
+        List<MailboxId> messageMailboxIds = FluentIterable.from(messageIdManager.getMessages(ImmutableList.of(messageId), FetchGroupImpl.MINIMAL, session))
+            .transform(getMailboxId())
+            .toList();
+
+        assertThat(failedTargets).containsOnly(mailbox3.getMailboxId());
+        assertThat(messageMailboxIds).containsOnly(mailbox1.getMailboxId(), mailbox2.getMailboxId());
+    }
+
     @Test
     public void setInMailboxesShouldIgnoreMessagesBelongingToOtherUsers() throws Exception {
         MessageId messageId = testingData.persist(mailbox4.getMailboxId(), messageUid1, FLAGS, otherSession);
@@ -22,10 +22,12 @@ package org.apache.james.mailbox.store;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.james.mailbox.MessageUid;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.metrics.api.NoopMetricFactory;
 import org.junit.Test;
 
 import com.google.common.collect.Lists;
@@ -71,4 +73,140 @@ public class MessageBatcherTest {
         new MessageBatcher(-1);
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void messageBatcherShouldThrowOnNonPositiveParallelism() throws Exception {
+        new MessageBatcher(5, 0, new NoopMetricFactory(), "test");
+    }
+
+    @Test
+    public void messageBatcherShouldNotBeConcurrentWithoutBatchSize() throws Exception {
+        assertThat(new MessageBatcher(MessageBatcher.NO_BATCH_SIZE, 4, new NoopMetricFactory(), "test").isConcurrent()).isFalse();
+    }
+
+    @Test
+    public void messageBatcherShouldBeConcurrentWithBatchSizeAndParallelism() throws Exception {
+        assertThat(new MessageBatcher(2, 4, new NoopMetricFactory(), "test").isConcurrent()).isTrue();
+    }
+
+    @Test
+    public void batchMessagesShouldKeepUidOrder() throws Exception {
+        MessageBatcher messageBatcher = new MessageBatcher(2, MessageBatcher.SEQUENTIAL, new NoopMetricFactory(), "test");
+
+        assertThat(messageBatcher.batchMessages(MessageRange.range(MessageUid.of(1), MessageUid.of(10)), incrementBatcher))
+            .containsExactly(MessageRange.range(MessageUid.of(2), MessageUid.of(4)),
+                MessageRange.range(MessageUid.of(4), MessageUid.of(6)),
+                MessageRange.range(MessageUid.of(6), MessageUid.of(8)),
+                MessageRange.range(MessageUid.of(8), MessageUid.of(10)),
+                MessageRange.range(MessageUid.of(10), MessageUid.of(12)));
+    }
+
+    @Test
+    public void batchMessagesShouldNotExecuteBatchesAfterAFailure() throws Exception {
+        MessageBatcher messageBatcher = new MessageBatcher(1, MessageBatcher.SEQUENTIAL, new NoopMetricFactory(), "test");
+        final AtomicInteger executedBatches = new AtomicInteger();
+
+        try {
+            messageBatcher.batchMessages(MessageRange.range(MessageUid.of(1), MessageUid.of(100)), new MessageBatcher.BatchedOperation() {
+                public List<MessageRange> execute(MessageRange messageRange) throws MailboxException {
+                    executedBatches.incrementAndGet();
+                    throw new MailboxException();
+                }
+            });
+        } catch (MailboxException e) {
+            // expected
+        }
+
+        assertThat(executedBatches.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void batchMessagesShouldKeepUidOrderWhenConcurrent() throws Exception {
+        MessageBatcher messageBatcher = new MessageBatcher(2, 4, new NoopMetricFactory(), "test");
+
+        try {
+            assertThat(messageBatcher.batchMessages(MessageRange.range(MessageUid.of(1), MessageUid.of(10)), incrementBatcher))
+                .containsExactly(MessageRange.range(MessageUid.of(2), MessageUid.of(4)),
+                    MessageRange.range(MessageUid.of(4), MessageUid.of(6)),
+                    MessageRange.range(MessageUid.of(6), MessageUid.of(8)),
+                    MessageRange.range(MessageUid.of(8), MessageUid.of(10)),
+                    MessageRange.range(MessageUid.of(10), MessageUid.of(12)));
+        } finally {
+            messageBatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void batchMessagesShouldNotExceedParallelism() throws Exception {
+        MessageBatcher messageBatcher = new MessageBatcher(1, 2, new NoopMetricFactory(), "test");
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        try {
+            messageBatcher.batchMessages(MessageRange.range(MessageUid.of(1), MessageUid.of(20)), new MessageBatcher.BatchedOperation() {
+                public List<MessageRange> execute(MessageRange messageRange) throws MailboxException {
+                    int current = inFlight.incrementAndGet();
+                    synchronized (maxInFlight) {
+                        maxInFlight.set(Math.max(maxInFlight.get(), current));
+                    }
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        throw new MailboxException("interrupted", e);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                    return Lists.newArrayList(messageRange);
+                }
+            });
+        } finally {
+            messageBatcher.shutdown();
+        }
+
+        assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+    }
+
+    @Test(expected = MailboxException.class)
+    public void batchMessagesShouldPropagateExceptionsWhenConcurrent() throws Exception {
+        MessageBatcher messageBatcher = new MessageBatcher(2, 4, new NoopMetricFactory(), "test");
+
+        try {
+            messageBatcher.batchMessages(MessageRange.range(MessageUid.of(1), MessageUid.of(10)), new MessageBatcher.BatchedOperation() {
+                public List<MessageRange> execute(MessageRange messageRange) throws MailboxException {
+                    throw new MailboxException();
+                }
+            });
+        } finally {
+            messageBatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void batchMessagesShouldNotStartNewBatchesAfterAFailureWhenConcurrent() throws Exception {
+        MessageBatcher messageBatcher = new MessageBatcher(1, 2, new NoopMetricFactory(), "test");
+        final AtomicInteger executedBatches = new AtomicInteger();
+
+        try {
+            messageBatcher.batchMessages(MessageRange.range(MessageUid.of(1), MessageUid.of(100)), new MessageBatcher.BatchedOperation() {
+                public List<MessageRange> execute(MessageRange messageRange) throws MailboxException {
+                    executedBatches.incrementAndGet();
+                    throw new MailboxException();
+                }
+            });
+        } catch (MailboxException e) {
+            // expected
+        } finally {
+            messageBatcher.shutdown();
+        }
+
+        assertThat(executedBatches.get()).isLessThanOrEqualTo(3);
+    }
+
+    @Test(expected = MailboxException.class)
+    public void batchMessagesShouldFailWhenConcurrentBatcherIsShutDown() throws Exception {
+        MessageBatcher messageBatcher = new MessageBatcher(2, 4, new NoopMetricFactory(), "test");
+        messageBatcher.shutdown();
+
+        messageBatcher.batchMessages(MessageRange.range(MessageUid.of(1), MessageUid.of(10)), incrementBatcher);
+    }
+
 }
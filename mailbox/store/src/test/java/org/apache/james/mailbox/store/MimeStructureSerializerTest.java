@@ -0,0 +1,203 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.james.mailbox.model.MessageResult;
+import org.apache.james.mailbox.model.MimeDescriptor;
+import org.apache.james.mailbox.store.streaming.MimePartOffsetsOutputStream;
+import org.apache.james.mailbox.store.streaming.PartContentBuilder;
+import org.apache.james.mailbox.store.streaming.PartOffsets;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class MimeStructureSerializerTest {
+
+    @Test
+    public void deserializeShouldReturnSerializedStructure() throws Exception {
+        MimeDescriptor descriptor = MimeDescriptorImpl.build(ClassLoader.getSystemResourceAsStream("eml/embeddedAttachmentWithAttachment.eml"));
+
+        String json = MimeStructureSerializer.serialize(descriptor);
+
+        assertThat(MimeStructureSerializer.serialize(MimeStructureSerializer.deserialize(json))).isEqualTo(json);
+    }
+
+    @Test
+    public void deserializeShouldKeepPartsProperties() throws Exception {
+        MimeDescriptor descriptor = MimeDescriptorImpl.build(ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml"));
+
+        MimeDescriptor deserialized = MimeStructureSerializer.deserialize(MimeStructureSerializer.serialize(descriptor));
+
+        assertThat(deserialized.getMimeType()).isEqualTo(descriptor.getMimeType());
+        assertThat(deserialized.getMimeSubType()).isEqualTo(descriptor.getMimeSubType());
+        assertThat(deserialized.contentTypeParameters()).isEqualTo(descriptor.contentTypeParameters());
+        Iterator<MimeDescriptor> expectedParts = descriptor.parts();
+        Iterator<MimeDescriptor> actualParts = deserialized.parts();
+        while (expectedParts.hasNext()) {
+            MimeDescriptor expectedPart = expectedParts.next();
+            MimeDescriptor actualPart = actualParts.next();
+            assertThat(actualPart.getMimeType()).isEqualTo(expectedPart.getMimeType());
+            assertThat(actualPart.getBodyOctets()).isEqualTo(expectedPart.getBodyOctets());
+            assertThat(actualPart.getLines()).isEqualTo(expectedPart.getLines());
+            assertThat(actualPart.getDispositionParams()).isEqualTo(expectedPart.getDispositionParams());
+        }
+        assertThat(actualParts.hasNext()).isFalse();
+    }
+
+    @Test
+    public void serializeShouldNotStoreHeadersOfMessageAndParts() throws Exception {
+        MimeDescriptor descriptor = MimeDescriptorImpl.build(ClassLoader.getSystemResourceAsStream("eml/oneAttachmentAndSomeTextInlined.eml"));
+
+        MimeDescriptor deserialized = MimeStructureSerializer.deserialize(MimeStructureSerializer.serialize(descriptor));
+
+        assertThat(deserialized.headers().hasNext()).isFalse();
+        assertThat(deserialized.parts().next().headers().hasNext()).isFalse();
+    }
+
+    @Test
+    public void deserializeShouldKeepEnvelopeHeadersOfEmbeddedMessages() throws Exception {
+        MimeDescriptor descriptor = MimeDescriptorImpl.build(ClassLoader.getSystemResourceAsStream("eml/embeddedAttachmentWithAttachment.eml"));
+
+        MimeDescriptor deserialized = MimeStructureSerializer.deserialize(MimeStructureSerializer.serialize(descriptor));
+
+        Iterator<MimeDescriptor> parts = deserialized.parts();
+        parts.next();
+        List<String> headerNames = new ArrayList<String>();
+        for (Iterator<MessageResult.Header> headers = parts.next().embeddedMessage().headers(); headers.hasNext();) {
+            MessageResult.Header header = headers.next();
+            headerNames.add(header.getName());
+            if (header.getName().equals("Subject")) {
+                assertThat(header.getValue()).contains("EmbeddedAttachment");
+            }
+        }
+        assertThat(headerNames).contains("Subject", "From", "To", "Date").doesNotContain("Received", "X-Sieve");
+    }
+
+    @Test
+    public void findPartOffsetsShouldLocateMimeBodyOfLeafParts() throws Exception {
+        byte[] message = read("eml/oneAttachmentAndSomeTextInlined.eml");
+        String json = serializeWithPartOffsets(message);
+
+        for (int[] path : new int[][] {{1, 1}, {1, 2}, {2}}) {
+            PartOffsets offsets = MimeStructureSerializer.findPartOffsets(json, path).get();
+            assertThat(range(message, offsets.getBodyStart(), offsets.getBodyEnd())).isEqualTo(mimeBody(message, path));
+        }
+    }
+
+    @Test
+    public void findPartOffsetsShouldLocateMimeHeadersOfLeafParts() throws Exception {
+        byte[] message = read("eml/oneAttachmentAndSomeTextInlined.eml");
+        String json = serializeWithPartOffsets(message);
+
+        PartOffsets offsets = MimeStructureSerializer.findPartOffsets(json, new int[] {2}).get();
+
+        assertThat(new String(range(message, offsets.getHeaderStart(), offsets.getBodyStart())))
+            .startsWith("Content-Type: application/octet-stream;")
+            .endsWith("\r\n\r\n");
+    }
+
+    @Test
+    public void findPartOffsetsShouldBeAbsentForMultipartParts() throws Exception {
+        String json = serializeWithPartOffsets(read("eml/oneAttachmentAndSomeTextInlined.eml"));
+
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {1}).isPresent()).isFalse();
+    }
+
+    @Test
+    public void findPartOffsetsShouldBeAbsentForMissingParts() throws Exception {
+        String json = serializeWithPartOffsets(read("eml/oneAttachmentAndSomeTextInlined.eml"));
+
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {3}).isPresent()).isFalse();
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {1, 3}).isPresent()).isFalse();
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {2, 1}).isPresent()).isFalse();
+    }
+
+    @Test
+    public void findPartOffsetsShouldBeAbsentForEmbeddedMessages() throws Exception {
+        String json = serializeWithPartOffsets(read("eml/embeddedAttachmentWithAttachment.eml"));
+
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {1}).isPresent()).isTrue();
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {2}).isPresent()).isFalse();
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {2, 1}).isPresent()).isFalse();
+    }
+
+    @Test
+    public void findPartOffsetsShouldBeAbsentWhenSerializedWithoutOffsets() throws Exception {
+        byte[] message = read("eml/oneAttachmentAndSomeTextInlined.eml");
+        String json = MimeStructureSerializer.serialize(MimeDescriptorImpl.build(new ByteArrayInputStream(message)));
+
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {2}).isPresent()).isFalse();
+    }
+
+    @Test
+    public void serializeShouldDropPartOffsetsNotMatchingTheStructure() throws Exception {
+        byte[] message = read("eml/embeddedAttachmentWithAttachment.eml");
+        PartOffsets wrongOffsets = new PartOffsets(0, 0, 10, ImmutableList.of(
+            new PartOffsets(0, 0, 1, ImmutableList.<PartOffsets>of()),
+            new PartOffsets(0, 0, 1, ImmutableList.<PartOffsets>of())));
+
+        String json = MimeStructureSerializer.serialize(MimeDescriptorImpl.build(new ByteArrayInputStream(message)), wrongOffsets);
+
+        assertThat(MimeStructureSerializer.findPartOffsets(json, new int[] {1}).isPresent()).isFalse();
+    }
+
+    @Test
+    public void deserializeShouldIgnorePartOffsets() throws Exception {
+        byte[] message = read("eml/oneAttachmentAndSomeTextInlined.eml");
+        MimeDescriptor descriptor = MimeDescriptorImpl.build(new ByteArrayInputStream(message));
+
+        MimeDescriptor deserialized = MimeStructureSerializer.deserialize(serializeWithPartOffsets(message));
+
+        assertThat(MimeStructureSerializer.serialize(deserialized)).isEqualTo(MimeStructureSerializer.serialize(descriptor));
+    }
+
+    private byte[] read(String resource) throws Exception {
+        return IOUtils.toByteArray(ClassLoader.getSystemResourceAsStream(resource));
+    }
+
+    private String serializeWithPartOffsets(byte[] message) throws Exception {
+        MimePartOffsetsOutputStream partOffsets = new MimePartOffsetsOutputStream();
+        partOffsets.write(message, 0, message.length);
+        partOffsets.close();
+        return MimeStructureSerializer.serialize(MimeDescriptorImpl.build(new ByteArrayInputStream(message)), partOffsets.getPartOffsets());
+    }
+
+    private byte[] range(byte[] message, long start, long end) {
+        byte[] result = new byte[(int) (end - start)];
+        System.arraycopy(message, (int) start, result, 0, result.length);
+        return result;
+    }
+
+    private byte[] mimeBody(byte[] message, int[] path) throws Exception {
+        PartContentBuilder builder = new PartContentBuilder();
+        builder.parse(new ByteArrayInputStream(message));
+        for (int position : path) {
+            builder.to(position);
+        }
+        return IOUtils.toByteArray(builder.getMimeBodyContent().getInputStream());
+    }
+}
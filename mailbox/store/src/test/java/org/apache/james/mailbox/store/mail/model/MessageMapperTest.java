@@ -27,6 +27,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import java.io.IOException;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -44,6 +45,7 @@ import org.apache.james.mailbox.model.MessageMetaData;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.UpdatedFlags;
 import org.apache.james.mailbox.store.FlagsUpdateCalculator;
+import org.apache.james.mailbox.store.mail.ChangedSinceMessageMapper;
 import org.apache.james.mailbox.store.mail.MailboxMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper;
 import org.apache.james.mailbox.store.mail.MessageMapper.FetchType;
@@ -61,6 +63,7 @@ import org.xenei.junit.contract.ContractTest;
 import org.xenei.junit.contract.IProducer;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
 @Contract(MapperProvider.class)
@@ -454,6 +457,108 @@ public class MessageMapperTest<T extends MapperProvider> {
         assertMessages(Lists.newArrayList(retrievedMessageIterator)).containOnly(message1, message2, message3, message5);
     }
 
+    @ContractTest
+    public void findChangedSinceInMailboxShouldReturnMessagesWithAGreaterModSeq() throws MailboxException, IOException {
+        Assume.assumeTrue(messageMapper instanceof ChangedSinceMessageMapper);
+        saveMessages();
+
+        Iterator<MailboxMessage> retrievedMessageIterator = ((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), message3.getModSeq(), FetchType.Full, LIMIT);
+
+        assertMessages(Lists.newArrayList(retrievedMessageIterator)).containOnly(message4, message5);
+    }
+
+    @ContractTest
+    public void findChangedSinceInMailboxShouldReturnMessagesWhichFlagsWereUpdated() throws MailboxException {
+        Assume.assumeTrue(messageMapper instanceof ChangedSinceMessageMapper);
+        saveMessages();
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flag.SEEN), FlagsUpdateMode.ADD), MessageRange.one(message2.getUid()));
+
+        Iterator<MailboxMessage> retrievedMessageIterator = ((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), modSeq, FetchType.Metadata, LIMIT);
+
+        assertThat(Lists.newArrayList(retrievedMessageIterator)).extracting("uid").containsOnly(message2.getUid());
+    }
+
+    @ContractTest
+    public void findChangedSinceInMailboxShouldReturnMessagesWhichFlagsWereUpdatedAfterAPreviousSearch() throws MailboxException {
+        Assume.assumeTrue(messageMapper instanceof ChangedSinceMessageMapper);
+        saveMessages();
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        ((ChangedSinceMessageMapper) messageMapper).findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), modSeq, FetchType.Metadata, LIMIT);
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flag.SEEN), FlagsUpdateMode.ADD), MessageRange.one(message2.getUid()));
+
+        Iterator<MailboxMessage> retrievedMessageIterator = ((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), modSeq, FetchType.Metadata, LIMIT);
+
+        assertThat(Lists.newArrayList(retrievedMessageIterator)).extracting("uid").containsOnly(message2.getUid());
+    }
+
+    @ContractTest
+    public void findChangedSinceInMailboxShouldReturnTheFirstMessagesWhenLimited() throws MailboxException, IOException {
+        Assume.assumeTrue(messageMapper instanceof ChangedSinceMessageMapper);
+        saveMessages();
+
+        Iterator<MailboxMessage> retrievedMessageIterator = ((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), message1.getModSeq(), FetchType.Full, 2);
+
+        assertMessages(Lists.newArrayList(retrievedMessageIterator)).containOnly(message2, message3);
+    }
+
+    @ContractTest
+    public void findChangedSinceInMailboxShouldReturnMessagesOrderedByModSeq() throws MailboxException {
+        Assume.assumeTrue(messageMapper instanceof ChangedSinceMessageMapper);
+        saveMessages();
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flag.SEEN), FlagsUpdateMode.ADD), MessageRange.one(message1.getUid()));
+
+        Iterator<MailboxMessage> retrievedMessageIterator = ((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), message3.getModSeq(), FetchType.Metadata, LIMIT);
+
+        assertThat(Lists.newArrayList(retrievedMessageIterator)).extracting("uid")
+            .containsExactly(message4.getUid(), message5.getUid(), message1.getUid());
+    }
+
+    @ContractTest
+    public void findChangedSinceInMailboxShouldAllowReadingTheFollowingMessagesFromTheLastReturnedModSeq() throws MailboxException {
+        Assume.assumeTrue(messageMapper instanceof ChangedSinceMessageMapper);
+        saveMessages();
+        long modSeq = messageMapper.getHighestModSeq(benwaInboxMailbox);
+        messageMapper.updateFlags(benwaInboxMailbox, new FlagsUpdateCalculator(new Flags(Flag.SEEN), FlagsUpdateMode.ADD), MessageRange.all());
+
+        List<MailboxMessage> firstMessages = Lists.newArrayList(((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), modSeq, FetchType.Metadata, 2));
+        long lastModSeq = firstMessages.get(firstMessages.size() - 1).getModSeq();
+        List<MailboxMessage> followingMessages = Lists.newArrayList(((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), lastModSeq, FetchType.Metadata, LIMIT));
+
+        assertThat(Iterables.concat(firstMessages, followingMessages)).extracting("uid")
+            .containsOnly(message1.getUid(), message2.getUid(), message3.getUid(), message4.getUid(), message5.getUid())
+            .doesNotHaveDuplicates();
+    }
+
+    @ContractTest
+    public void findChangedSinceInMailboxShouldRespectTheRange() throws MailboxException, IOException {
+        Assume.assumeTrue(messageMapper instanceof ChangedSinceMessageMapper);
+        saveMessages();
+
+        Iterator<MailboxMessage> retrievedMessageIterator = ((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.range(message1.getUid(), message2.getUid()), 0, FetchType.Full, LIMIT);
+
+        assertMessages(Lists.newArrayList(retrievedMessageIterator)).containOnly(message1, message2);
+    }
+
+    @ContractTest
+    public void findChangedSinceInMailboxShouldNotReturnDeletedMessages() throws MailboxException {
+        Assume.assumeTrue(messageMapper instanceof ChangedSinceMessageMapper);
+        saveMessages();
+        messageMapper.delete(benwaInboxMailbox, message5);
+
+        assertThat(((ChangedSinceMessageMapper) messageMapper)
+            .findChangedSinceInMailbox(benwaInboxMailbox, MessageRange.all(), message4.getModSeq(), FetchType.Metadata, LIMIT))
+            .isEmpty();
+    }
+
     @ContractTest
     public void getHighestMoseqShouldBeEqualToZeroOnEmptyMailbox() throws MailboxException {
         assertThat(messageMapper.getHighestModSeq(benwaInboxMailbox)).isEqualTo(0);
@@ -23,6 +23,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 import org.junit.Test;
 
+import com.google.common.base.Strings;
+
 public class PropertyBuilderTest {
 
     @Test
@@ -46,4 +48,33 @@ public class PropertyBuilderTest {
             .containsOnly(new SimpleProperty(PropertyBuilder.JAMES_INTERNALS, PropertyBuilder.HAS_ATTACHMENT, "true"));
     }
 
+    @Test
+    public void getMimeStructureShouldReturnNullWhenNotSet() {
+        assertThat(new PropertyBuilder().getMimeStructure()).isNull();
+    }
+
+    @Test
+    public void setMimeStructureShouldSplitLongValues() {
+        String mimeStructure = Strings.repeat("a", PropertyBuilder.MIME_STRUCTURE_CHUNK_LENGTH * 2 + 1);
+        PropertyBuilder propertyBuilder = new PropertyBuilder();
+        propertyBuilder.setMimeStructure(mimeStructure);
+        assertThat(propertyBuilder.getValues(PropertyBuilder.JAMES_INTERNALS, PropertyBuilder.MIME_STRUCTURE)).hasSize(3);
+    }
+
+    @Test
+    public void getMimeStructureShouldReturnValueSplitBySetMimeStructure() {
+        String mimeStructure = Strings.repeat("abc", PropertyBuilder.MIME_STRUCTURE_CHUNK_LENGTH);
+        PropertyBuilder propertyBuilder = new PropertyBuilder();
+        propertyBuilder.setMimeStructure(mimeStructure);
+        assertThat(new PropertyBuilder(propertyBuilder.toProperties()).getMimeStructure()).isEqualTo(mimeStructure);
+    }
+
+    @Test
+    public void setMimeStructureShouldRemovePreviousChunksWhenNull() {
+        PropertyBuilder propertyBuilder = new PropertyBuilder();
+        propertyBuilder.setMimeStructure("abc");
+        propertyBuilder.setMimeStructure(null);
+        assertThat(propertyBuilder.toProperties()).isEmpty();
+    }
+
 }
@@ -0,0 +1,136 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.mailbox.store.streaming;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class MimePartOffsetsOutputStreamTest {
+
+    private static final String NESTED_MULTIPART = "Subject: test\r\n"
+        + "Content-Type: multipart/mixed;\r\n"
+        + " boundary=\"outer\"\r\n"
+        + "\r\n"
+        + "preamble\r\n"
+        + "--outer\r\n"
+        + "Content-Type: text/plain\r\n"
+        + "\r\n"
+        + "first\r\n"
+        + "line\r\n"
+        + "--outer\r\n"
+        + "Content-Type: multipart/alternative; boundary=inner\r\n"
+        + "\r\n"
+        + "--inner\r\n"
+        + "\r\n"
+        + "second\r\n"
+        + "--inner\r\n"
+        + "Content-Type: text/html\r\n"
+        + "\r\n"
+        + "<p>third</p>\r\n"
+        + "--inner--\r\n"
+        + "--outer--\r\n"
+        + "epilogue\r\n";
+
+    @Test
+    public void partOffsetsShouldLocateBodiesOfNestedParts() {
+        PartOffsets offsets = offsetsOf(NESTED_MULTIPART);
+
+        assertThat(offsets.getParts()).hasSize(2);
+        assertThat(body(NESTED_MULTIPART, offsets.getParts().get(0))).isEqualTo("first\r\nline");
+        assertThat(offsets.getParts().get(1).getParts()).hasSize(2);
+        assertThat(body(NESTED_MULTIPART, offsets.getParts().get(1).getParts().get(0))).isEqualTo("second");
+        assertThat(body(NESTED_MULTIPART, offsets.getParts().get(1).getParts().get(1))).isEqualTo("<p>third</p>");
+    }
+
+    @Test
+    public void partOffsetsShouldLocateHeadersOfParts() {
+        PartOffsets offsets = offsetsOf(NESTED_MULTIPART);
+
+        assertThat(headers(NESTED_MULTIPART, offsets.getParts().get(0))).isEqualTo("Content-Type: text/plain\r\n\r\n");
+        assertThat(headers(NESTED_MULTIPART, offsets.getParts().get(1).getParts().get(0))).isEqualTo("\r\n");
+    }
+
+    @Test
+    public void partOffsetsShouldNotDependOnWriteBoundaries() {
+        byte[] content = NESTED_MULTIPART.getBytes(Charsets.US_ASCII);
+        MimePartOffsetsOutputStream byteByByte = new MimePartOffsetsOutputStream();
+        for (byte b : content) {
+            byteByByte.write(b);
+        }
+        byteByByte.close();
+
+        assertThat(byteByByte.getPartOffsets()).isEqualTo(offsetsOf(NESTED_MULTIPART));
+    }
+
+    @Test
+    public void partOffsetsShouldSupportLineFeedSeparatedMessages() {
+        String message = NESTED_MULTIPART.replace("\r\n", "\n");
+
+        PartOffsets offsets = offsetsOf(message);
+
+        assertThat(body(message, offsets.getParts().get(0))).isEqualTo("first\nline");
+        assertThat(body(message, offsets.getParts().get(1).getParts().get(1))).isEqualTo("<p>third</p>");
+    }
+
+    @Test
+    public void partOffsetsShouldEndUnterminatedPartsAtEndOfContent() {
+        String message = "Content-Type: multipart/mixed; boundary=b\r\n"
+            + "\r\n"
+            + "--b\r\n"
+            + "\r\n"
+            + "truncated";
+
+        PartOffsets offsets = offsetsOf(message);
+
+        assertThat(body(message, offsets.getParts().get(0))).isEqualTo("truncated");
+    }
+
+    @Test
+    public void partOffsetsShouldHaveNoPartWhenNotMultipart() {
+        String message = "Content-Type: text/plain\r\n"
+            + "\r\n"
+            + "--b\r\n"
+            + "body\r\n";
+
+        PartOffsets offsets = offsetsOf(message);
+
+        assertThat(offsets.getParts()).isEmpty();
+        assertThat(offsets.getBodyStart()).isEqualTo(28);
+    }
+
+    private PartOffsets offsetsOf(String message) {
+        byte[] content = message.getBytes(Charsets.US_ASCII);
+        MimePartOffsetsOutputStream outputStream = new MimePartOffsetsOutputStream();
+        outputStream.write(content, 0, 7);
+        outputStream.write(content, 7, content.length - 7);
+        outputStream.close();
+        return outputStream.getPartOffsets();
+    }
+
+    private String body(String message, PartOffsets offsets) {
+        return message.substring((int) offsets.getBodyStart(), (int) offsets.getBodyEnd());
+    }
+
+    private String headers(String message, PartOffsets offsets) {
+        return message.substring((int) offsets.getHeaderStart(), (int) offsets.getBodyStart());
+    }
+}
@@ -36,6 +36,7 @@ import org.apache.james.mailbox.model.MailboxPath;
 import org.apache.james.mailbox.model.MessageRange;
 import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.model.MessageResult.FetchGroup;
+import org.apache.james.mailbox.store.StoreMessageManager;
 import org.apache.james.mailbox.store.streaming.InputStreamContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -120,18 +121,23 @@ public class MailboxCopierImpl implements MailboxCopier {
 
                 int j=0;
                 Iterator<MessageResult> messageResultIterator = srcMessageManager.getMessages(MessageRange.all(), GROUP, srcMailboxSession);
-                
-                while (messageResultIterator.hasNext()) {
+                reserveUidsAndModSeqs(dstMessageManager, srcMessageManager.getMessageCount(srcMailboxSession), dstMailboxSession);
+
+                try {
+                    while (messageResultIterator.hasNext()) {
 
-                    MessageResult messageResult = messageResultIterator.next();
-                    InputStreamContent content = (InputStreamContent) messageResult.getFullContent();
+                        MessageResult messageResult = messageResultIterator.next();
+                        InputStreamContent content = (InputStreamContent) messageResult.getFullContent();
 
-                    dstMailboxManager.startProcessingRequest(dstMailboxSession);
-                    dstMessageManager.appendMessage(content.getInputStream(), messageResult.getInternalDate(), dstMailboxSession, messageResult.getFlags().contains(Flag.RECENT), messageResult.getFlags());
-                    dstMailboxManager.endProcessingRequest(dstMailboxSession);
-                    log.info("MailboxMessage #" + j + " appended in destination mailbox with path=" + mailboxPath.toString());
-                    j++;
+                        dstMailboxManager.startProcessingRequest(dstMailboxSession);
+                        dstMessageManager.appendMessage(content.getInputStream(), messageResult.getInternalDate(), dstMailboxSession, messageResult.getFlags().contains(Flag.RECENT), messageResult.getFlags());
+                        dstMailboxManager.endProcessingRequest(dstMailboxSession);
+                        log.info("MailboxMessage #" + j + " appended in destination mailbox with path=" + mailboxPath.toString());
+                        j++;
 
+                    }
+                } finally {
+                    releaseUidAndModSeqReservation(dstMessageManager, dstMailboxSession);
                 }
                 dstMailboxManager.endProcessingRequest(dstMailboxSession);
 
@@ -151,6 +157,22 @@ public class MailboxCopierImpl implements MailboxCopier {
 
     }
     
+    /**
+     * Allocate uids and mod-sequences of the destination mailbox by a single block when the destination
+     * mailbox manager supports it.
+     */
+    private void reserveUidsAndModSeqs(MessageManager dstMessageManager, long count, MailboxSession dstMailboxSession) throws MailboxException {
+        if (dstMessageManager instanceof StoreMessageManager) {
+            ((StoreMessageManager) dstMessageManager).reserveUidsAndModSeqs((int) Math.min(count, Integer.MAX_VALUE), dstMailboxSession);
+        }
+    }
+
+    private void releaseUidAndModSeqReservation(MessageManager dstMessageManager, MailboxSession dstMailboxSession) throws MailboxException {
+        if (dstMessageManager instanceof StoreMessageManager) {
+            ((StoreMessageManager) dstMessageManager).releaseUidAndModSeqReservation(dstMailboxSession);
+        }
+    }
+
     /**
      * Set the logger.
      * 
@@ -35,8 +35,11 @@ import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
 import org.apache.james.mailbox.inmemory.InMemoryMailboxSessionMapperFactory;
 import org.apache.james.mailbox.mock.MockMailboxManager;
+import org.apache.james.mailbox.model.FetchGroupImpl;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.mailbox.model.MailboxPath;
+import org.apache.james.mailbox.model.MessageRange;
+import org.apache.james.mailbox.model.MessageResult;
 import org.apache.james.mailbox.store.Authenticator;
 import org.apache.james.mailbox.store.Authorizator;
 import org.apache.james.mailbox.store.StoreMailboxManager;
@@ -46,6 +49,8 @@ import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * Test class for the {@link MailboxCopierImpl} implementation.
  * 
@@ -123,6 +128,26 @@ public class MailboxCopierTest {
         
     }
     
+    @Test
+    public void copyMailboxesShouldAssignAscendingUidsAndModSeqsInDestination() throws MailboxException, IOException {
+        ((StoreMailboxManager) srcMemMailboxManager).init();
+        ((StoreMailboxManager) dstMemMailboxManager).init();
+        srcMemMailboxManager = new MockMailboxManager(srcMemMailboxManager).getMockMailboxManager();
+
+        mailboxCopier.copyMailboxes(srcMemMailboxManager, dstMemMailboxManager);
+
+        MailboxSession mailboxSession = dstMemMailboxManager.createSystemSession("manager", LoggerFactory.getLogger("dst-mailbox-copier"));
+        for (MailboxPath mailboxPath: dstMemMailboxManager.list(mailboxSession)) {
+            MessageManager messageManager = dstMemMailboxManager.getMailbox(mailboxPath, mailboxSession);
+            List<MessageResult> messages = ImmutableList.copyOf(messageManager.getMessages(MessageRange.all(), FetchGroupImpl.MINIMAL, mailboxSession));
+            for (int i = 1; i < messages.size(); i++) {
+                assertThat(messages.get(i).getUid()).isGreaterThan(messages.get(i - 1).getUid());
+                assertThat(messages.get(i).getModSeq()).isGreaterThan(messages.get(i - 1).getModSeq());
+            }
+        }
+        dstMemMailboxManager.logout(mailboxSession, true);
+    }
+
     /**
      * Utility method to assert the number of mailboxes and messages per mailbox
      * are the ones expected.
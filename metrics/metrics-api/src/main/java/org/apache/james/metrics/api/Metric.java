@@ -25,4 +25,6 @@ public interface Metric {
 
     void decrement();
 
+    void add(int value);
+
 }
@@ -34,6 +34,10 @@ public class NoopMetricFactory implements MetricFactory {
         @Override
         public void decrement() {
         }
+
+        @Override
+        public void add(int value) {
+        }
         
     }
 
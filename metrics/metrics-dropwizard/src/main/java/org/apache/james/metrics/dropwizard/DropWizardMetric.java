@@ -40,4 +40,9 @@ public class DropWizardMetric implements Metric {
     public void decrement() {
         counter.dec();
     }
+
+    @Override
+    public void add(int value) {
+        counter.inc(value);
+    }
 }
@@ -40,4 +40,9 @@ public class DefaultMetric implements Metric {
         value.decrementAndGet();
     }
 
+    @Override
+    public void add(int value) {
+        this.value.addAndGet(value);
+    }
+
 }
@@ -20,6 +20,7 @@
 package org.apache.james.imap.api.process;
 
 import java.util.Collection;
+import java.util.List;
 
 import javax.mail.Flags;
 
@@ -150,6 +151,17 @@ public interface SelectedMailbox {
      */
     int remove(MessageUid uid);
 
+    /**
+     * Removes the given UIDs, as if {@link #remove(MessageUid)} was called for
+     * each of them in the iteration order of the collection.
+     * 
+     * @param uids
+     *            not null
+     * @return the message sequence numbers that the UIDs held at the time of
+     *         their removal, in the same order
+     */
+    List<Integer> remove(Collection<MessageUid> uids);
+
     /**
      * Return a Collection which holds all uids reflecting the Messages which
      * flags were updated
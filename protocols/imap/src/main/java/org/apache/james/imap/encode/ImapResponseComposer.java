@@ -150,6 +150,14 @@ public interface ImapResponseComposer {
      */
     ImapResponseComposer end() throws IOException;
 
+    /**
+     * Flush all the responses written so far to the socket. Writers may
+     * coalesce the lines written by {@link #end()} until this is called.
+     * 
+     * @throws IOException
+     */
+    void flush() throws IOException;
+
     /**
      * Write a tag
      * 
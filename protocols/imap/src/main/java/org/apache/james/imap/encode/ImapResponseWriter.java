@@ -51,4 +51,11 @@ public interface ImapResponseWriter {
      */
     void write(byte[] buffer) throws IOException;
 
+    /**
+     * Writes any response bytes buffered by this writer to the client
+     * 
+     * @throws IOException
+     */
+    void flush() throws IOException;
+
 }
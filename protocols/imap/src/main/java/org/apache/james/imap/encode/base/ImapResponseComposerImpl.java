@@ -171,6 +171,13 @@ public class ImapResponseComposerImpl implements ImapConstants, ImapResponseComp
         return this;
     }
 
+    /**
+     * @see org.apache.james.imap.encode.ImapResponseComposer#flush()
+     */
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
     /**
      * @see
      * org.apache.james.imap.encode.ImapResponseComposer#tag(java.lang.String)
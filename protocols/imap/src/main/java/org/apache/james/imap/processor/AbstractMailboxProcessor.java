@@ -182,21 +182,16 @@ abstract public class AbstractMailboxProcessor<M extends ImapRequest> extends Ab
     }
 
     private void addExpungedResponses(SelectedMailbox selected, Collection<MessageUid> expungedUids, ImapProcessor.Responder responder) {
-        for (MessageUid uid : expungedUids) {
-
-            // we need to remove the message in the loop to the sequence numbers
-            // are updated correctly.
-            // See 7.4.1. EXPUNGE Response
-            final int msn = selected.remove(uid);
+        // each sequence number takes the previous removals into account.
+        // See 7.4.1. EXPUNGE Response
+        for (Integer msn : selected.remove(expungedUids)) {
             ExpungeResponse response = new ExpungeResponse(msn);
             responder.respond(response);
         }
     }
     
     private void addVanishedResponse(SelectedMailbox selected, Collection<MessageUid> expungedUids, ImapProcessor.Responder responder) {
-        for (MessageUid uid : expungedUids) {
-            selected.remove(uid);
-        }
+        selected.remove(expungedUids);
         UidRange[] uidRange = uidRanges(MessageRange.toRanges(expungedUids));
         responder.respond(new VanishedResponse(uidRange, false));
     }
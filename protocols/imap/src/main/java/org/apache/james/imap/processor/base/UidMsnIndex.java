@@ -0,0 +1,178 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.apache.james.mailbox.MessageUid;
+
+import com.google.common.base.Optional;
+
+/**
+ * Compact index between message sequence numbers and uids of a selected mailbox.
+ * 
+ * Uids are kept as a sorted array of primitive longs, so that the MSN of a message is simply its position in the
+ * array plus one. Lookups are binary searches and expunging several messages compacts the array once.
+ * 
+ * This class is not thread safe.
+ */
+public class UidMsnIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long[] EMPTY = new long[0];
+
+    private long[] uids = EMPTY;
+    private int size = 0;
+
+    /**
+     * Add the given uid, if not already present
+     */
+    public void add(MessageUid uid) {
+        long value = uid.asLong();
+        if (size == 0 || value > uids[size - 1]) {
+            ensureCapacity(size + 1);
+            uids[size] = value;
+            size++;
+            return;
+        }
+        int position = Arrays.binarySearch(uids, 0, size, value);
+        if (position < 0) {
+            int insertionPoint = -(position + 1);
+            ensureCapacity(size + 1);
+            System.arraycopy(uids, insertionPoint, uids, insertionPoint + 1, size - insertionPoint);
+            uids[insertionPoint] = value;
+            size++;
+        }
+    }
+
+    /**
+     * Return the msn of the given uid or {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     */
+    public int msn(MessageUid uid) {
+        int position = Arrays.binarySearch(uids, 0, size, uid.asLong());
+        if (position < 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        return position + 1;
+    }
+
+    public Optional<MessageUid> uid(int msn) {
+        if (msn < 1 || msn > size) {
+            return Optional.absent();
+        }
+        return Optional.of(MessageUid.of(uids[msn - 1]));
+    }
+
+    /**
+     * Remove the given uid
+     * 
+     * @return the msn the uid held before or {@link SelectedMailbox#NO_SUCH_MESSAGE}
+     */
+    public int remove(MessageUid uid) {
+        int position = Arrays.binarySearch(uids, 0, size, uid.asLong());
+        if (position < 0) {
+            return SelectedMailbox.NO_SUCH_MESSAGE;
+        }
+        System.arraycopy(uids, position + 1, uids, position, size - position - 1);
+        size--;
+        return position + 1;
+    }
+
+    /**
+     * Remove the given uids, as if {@link #remove(MessageUid)} was called for each of them in the iteration order of
+     * the collection. When this order is ascending, the array is compacted only once.
+     * 
+     * @return the msn each uid held at the time of its removal, in the same order
+     */
+    public List<Integer> remove(Collection<MessageUid> uidsToRemove) {
+        List<Integer> result = new ArrayList<Integer>(uidsToRemove.size());
+        if (!isAscending(uidsToRemove)) {
+            for (MessageUid uid : uidsToRemove) {
+                result.add(remove(uid));
+            }
+            return result;
+        }
+
+        int removedCount = 0;
+        int readPosition = 0;
+        int writePosition = 0;
+        for (MessageUid uid : uidsToRemove) {
+            int position = Arrays.binarySearch(uids, readPosition, size, uid.asLong());
+            if (position < 0) {
+                result.add(SelectedMailbox.NO_SUCH_MESSAGE);
+                continue;
+            }
+            int keptCount = position - readPosition;
+            System.arraycopy(uids, readPosition, uids, writePosition, keptCount);
+            writePosition += keptCount;
+            readPosition = position + 1;
+            result.add(position + 1 - removedCount);
+            removedCount++;
+        }
+        System.arraycopy(uids, readPosition, uids, writePosition, size - readPosition);
+        size -= removedCount;
+        return result;
+    }
+
+    public Optional<MessageUid> getFirstUid() {
+        if (size == 0) {
+            return Optional.absent();
+        }
+        return Optional.of(MessageUid.of(uids[0]));
+    }
+
+    public Optional<MessageUid> getLastUid() {
+        if (size == 0) {
+            return Optional.absent();
+        }
+        return Optional.of(MessageUid.of(uids[size - 1]));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        uids = EMPTY;
+        size = 0;
+    }
+
+    private boolean isAscending(Collection<MessageUid> values) {
+        MessageUid previous = null;
+        for (MessageUid value : values) {
+            if (previous != null && value.compareTo(previous) <= 0) {
+                return false;
+            }
+            previous = value;
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > uids.length) {
+            int newCapacity = Math.max(Math.max(INITIAL_CAPACITY, uids.length + (uids.length >> 1)), capacity);
+            uids = Arrays.copyOf(uids, newCapacity);
+        }
+    }
+}
@@ -77,4 +77,8 @@ public class ByteImapResponseWriter implements ImapConstants, ImapResponseWriter
         out.write(buffer);
     }
 
+    public void flush() throws IOException {
+        out.flush();
+    }
+
 }
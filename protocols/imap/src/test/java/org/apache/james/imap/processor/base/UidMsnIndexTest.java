@@ -0,0 +1,168 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imap.processor.base;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.james.imap.api.process.SelectedMailbox;
+import org.apache.james.mailbox.MessageUid;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+public class UidMsnIndexTest {
+
+    private static final MessageUid UID_1 = MessageUid.of(1);
+    private static final MessageUid UID_3 = MessageUid.of(3);
+    private static final MessageUid UID_5 = MessageUid.of(5);
+    private static final MessageUid UID_7 = MessageUid.of(7);
+    private static final MessageUid UID_9 = MessageUid.of(9);
+
+    private UidMsnIndex testee;
+
+    @Before
+    public void setUp() {
+        testee = new UidMsnIndex();
+    }
+
+    @Test
+    public void msnShouldReturnNoSuchMessageWhenEmpty() {
+        assertThat(testee.msn(UID_1)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void uidShouldReturnAbsentWhenEmpty() {
+        assertThat(testee.uid(1)).isEqualTo(Optional.<MessageUid>absent());
+    }
+
+    @Test
+    public void msnShouldBeThePositionOfTheUid() {
+        testee.add(UID_1);
+        testee.add(UID_3);
+        testee.add(UID_5);
+
+        assertThat(testee.msn(UID_3)).isEqualTo(2);
+        assertThat(testee.uid(3)).isEqualTo(Optional.of(UID_5));
+    }
+
+    @Test
+    public void addShouldKeepUidsSorted() {
+        testee.add(UID_5);
+        testee.add(UID_1);
+        testee.add(UID_3);
+
+        assertThat(testee.msn(UID_1)).isEqualTo(1);
+        assertThat(testee.msn(UID_5)).isEqualTo(3);
+        assertThat(testee.getFirstUid()).isEqualTo(Optional.of(UID_1));
+        assertThat(testee.getLastUid()).isEqualTo(Optional.of(UID_5));
+    }
+
+    @Test
+    public void addShouldBeIdempotent() {
+        testee.add(UID_1);
+        testee.add(UID_1);
+
+        assertThat(testee.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void addShouldGrowBeyondInitialCapacity() {
+        for (int i = 1; i <= 1000; i++) {
+            testee.add(MessageUid.of(i));
+        }
+
+        assertThat(testee.size()).isEqualTo(1000);
+        assertThat(testee.msn(MessageUid.of(1000))).isEqualTo(1000);
+    }
+
+    @Test
+    public void uidShouldReturnAbsentForOutOfRangeMsn() {
+        testee.add(UID_1);
+
+        assertThat(testee.uid(0)).isEqualTo(Optional.<MessageUid>absent());
+        assertThat(testee.uid(2)).isEqualTo(Optional.<MessageUid>absent());
+        assertThat(testee.uid(SelectedMailbox.NO_SUCH_MESSAGE)).isEqualTo(Optional.<MessageUid>absent());
+    }
+
+    @Test
+    public void removeShouldRenumberFollowingMessages() {
+        testee.add(UID_1);
+        testee.add(UID_3);
+        testee.add(UID_5);
+
+        assertThat(testee.remove(UID_3)).isEqualTo(2);
+        assertThat(testee.msn(UID_5)).isEqualTo(2);
+        assertThat(testee.msn(UID_3)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+    }
+
+    @Test
+    public void removeShouldReturnNoSuchMessageWhenUnknownUid() {
+        testee.add(UID_1);
+
+        assertThat(testee.remove(UID_3)).isEqualTo(SelectedMailbox.NO_SUCH_MESSAGE);
+        assertThat(testee.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void removeSeveralShouldReturnSequenceNumbersAtRemovalTime() {
+        testee.add(UID_1);
+        testee.add(UID_3);
+        testee.add(UID_5);
+        testee.add(UID_7);
+        testee.add(UID_9);
+
+        assertThat(testee.remove(ImmutableList.of(UID_3, UID_5, UID_9))).containsExactly(2, 2, 3);
+        assertThat(testee.msn(UID_1)).isEqualTo(1);
+        assertThat(testee.msn(UID_7)).isEqualTo(2);
+        assertThat(testee.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void removeSeveralShouldHandleUnknownUids() {
+        testee.add(UID_1);
+        testee.add(UID_5);
+
+        assertThat(testee.remove(ImmutableList.of(UID_3, UID_5))).containsExactly(SelectedMailbox.NO_SUCH_MESSAGE, 2);
+        assertThat(testee.getLastUid()).isEqualTo(Optional.of(UID_1));
+    }
+
+    @Test
+    public void removeSeveralShouldHandleUnorderedUids() {
+        testee.add(UID_1);
+        testee.add(UID_3);
+        testee.add(UID_5);
+
+        assertThat(testee.remove(ImmutableList.of(UID_5, UID_1))).containsExactly(3, 1);
+        assertThat(testee.msn(UID_3)).isEqualTo(1);
+    }
+
+    @Test
+    public void clearShouldRemoveAllUids() {
+        testee.add(UID_1);
+        testee.add(UID_3);
+
+        testee.clear();
+
+        assertThat(testee.size()).isEqualTo(0);
+        assertThat(testee.getFirstUid()).isEqualTo(Optional.<MessageUid>absent());
+    }
+}
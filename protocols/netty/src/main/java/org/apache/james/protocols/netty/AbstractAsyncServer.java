@@ -28,6 +28,7 @@ import java.util.concurrent.Executors;
 
 import org.apache.james.protocols.api.ProtocolServer;
 import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.group.ChannelGroup;
@@ -56,6 +57,8 @@ public abstract class AbstractAsyncServer implements ProtocolServer{
     private final ChannelGroup channels = new DefaultChannelGroup();
 
     private volatile int ioWorker = DEFAULT_IO_WORKER_COUNT;
+
+    private volatile boolean useDirectBuffers = false;
     
     private List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
     
@@ -84,6 +87,29 @@ public abstract class AbstractAsyncServer implements ProtocolServer{
     }
     
 
+    /**
+     * Set if the accepted channels should allocate their buffers from a
+     * {@link DirectChannelBufferFactory} instead of the heap. The direct
+     * buffers are sliced out of preallocated chunks, which lowers the garbage
+     * produced by reads when many connections are open. Default is
+     * <code>false</code>
+     * 
+     * @param useDirectBuffers
+     */
+    public void setUseDirectBuffers(boolean useDirectBuffers) {
+        if (started) throw new IllegalStateException("Can only be set when the server is not running");
+        this.useDirectBuffers = useDirectBuffers;
+    }
+
+    /**
+     * Return <code>true</code> if the accepted channels use direct buffers
+     * 
+     * @return useDirectBuffers
+     */
+    public boolean isUsingDirectBuffers() {
+        return useDirectBuffers;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.apache.james.protocols.api.ProtocolServer#bind()
@@ -117,6 +143,9 @@ public abstract class AbstractAsyncServer implements ProtocolServer{
         bootstrap.setOption("backlog", backlog);
         bootstrap.setOption("reuseAddress", true);
         bootstrap.setOption("child.tcpNoDelay", true);
+        if (useDirectBuffers) {
+            bootstrap.setOption("child.bufferFactory", DirectChannelBufferFactory.getInstance());
+        }
     }
     
     protected ServerSocketChannelFactory createSocketChannelFactory() {
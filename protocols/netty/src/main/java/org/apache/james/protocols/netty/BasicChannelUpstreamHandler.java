@@ -140,7 +140,7 @@ public class BasicChannelUpstreamHandler extends SimpleChannelUpstreamHandler {
             ChannelBuffer buf = (ChannelBuffer) e.getMessage();      
             LineHandler lHandler=  (LineHandler) lineHandlers.getLast();
             long start = System.currentTimeMillis();            
-            Response response = lHandler.onLine(pSession,buf.toByteBuffer());
+            Response response = lHandler.onLine(pSession,LineBuffers.toLine(buf));
             long executionTime = System.currentTimeMillis() - start;
 
             for (ProtocolHandlerResultHandler resultHandler : resultHandlers) {
@@ -0,0 +1,58 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.protocols.netty;
+
+import java.nio.ByteBuffer;
+
+import org.apache.james.protocols.api.handler.LineHandler;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Conversion of the frames received from the channel to the lines given to
+ * {@link LineHandler}s.
+ */
+final class LineBuffers {
+
+    private LineBuffers() {
+    }
+
+    /**
+     * Return the readable bytes of the frame as a {@link ByteBuffer}.
+     * 
+     * {@link LineHandler}s use {@link ByteBuffer#array()} when available and
+     * expect it to hold exactly the line. Frames which are not backed by such
+     * an array, like the direct buffers, are copied to the heap.
+     * 
+     * @param frame
+     * @return line
+     */
+    static ByteBuffer toLine(ChannelBuffer frame) {
+        if (frame.hasArray()
+                && frame.arrayOffset() == 0
+                && frame.readerIndex() == 0
+                && frame.readableBytes() == frame.array().length) {
+            return frame.toByteBuffer();
+        }
+        byte[] line = new byte[frame.readableBytes()];
+        frame.getBytes(frame.readerIndex(), line);
+        return ByteBuffer.wrap(line);
+    }
+
+}
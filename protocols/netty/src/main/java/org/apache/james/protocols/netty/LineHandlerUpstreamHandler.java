@@ -47,7 +47,7 @@ public class LineHandlerUpstreamHandler<S extends ProtocolSession> extends Simpl
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {        
         ChannelBuffer buf = (ChannelBuffer) e.getMessage();      
 
-        Response response = handler.onLine(session, buf.toByteBuffer()); 
+        Response response = handler.onLine(session, LineBuffers.toLine(buf)); 
         if (response != null) {
             // TODO: This kind of sucks but I was not able to come up with something more elegant here
             ((ProtocolSessionImpl)session).getProtocolTransport().writeResponse(response, session);
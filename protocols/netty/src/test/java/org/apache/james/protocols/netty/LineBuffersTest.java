@@ -0,0 +1,65 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.protocols.netty;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.junit.Test;
+
+public class LineBuffersTest {
+
+    private static final byte[] LINE = "NOOP\r\n".getBytes();
+
+    @Test
+    public void toLineShouldNotCopyExactHeapBuffers() {
+        ChannelBuffer frame = ChannelBuffers.wrappedBuffer(LINE);
+
+        ByteBuffer line = LineBuffers.toLine(frame);
+
+        assertSame(LINE, line.array());
+    }
+
+    @Test
+    public void toLineShouldCopyDirectBuffersToTheHeap() {
+        ChannelBuffer frame = DirectChannelBufferFactory.getInstance().getBuffer(LINE, 0, LINE.length);
+
+        ByteBuffer line = LineBuffers.toLine(frame);
+
+        assertTrue(line.hasArray());
+        assertArrayEquals(LINE, line.array());
+    }
+
+    @Test
+    public void toLineShouldOnlyKeepTheReadableBytesOfSlices() {
+        ChannelBuffer frame = ChannelBuffers.wrappedBuffer("A001 NOOP\r\n".getBytes()).slice(5, LINE.length);
+
+        ByteBuffer line = LineBuffers.toLine(frame);
+
+        assertArrayEquals(LINE, line.array());
+    }
+
+}
@@ -21,6 +21,8 @@ package org.apache.james.protocols.smtp;
 import java.util.List;
 
 import org.apache.james.protocols.netty.HandlerConstants;
+import org.apache.james.protocols.smtp.core.DataCmdHandler.ChunkArgument;
+import org.apache.james.protocols.smtp.core.esmtp.ChunkingEsmtpExtension;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
@@ -33,10 +35,18 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Splitter;
 import com.google.common.collect.FluentIterable;
 
+/**
+ * Splits the input into lines and detects STARTTLS command injection. When the {@link ChunkingEsmtpExtension}
+ * is loaded, the octets of a BDAT chunk (RFC 3030) are not split into lines but passed on in bulk, as they
+ * arrive.
+ */
 public class AllButStartTlsDelimiterChannelHandler extends DelimiterBasedFrameDecoder {
 
     private static final String STARTTLS = "starttls";
+    private static final String BDAT = "BDAT ";
     private final ChannelPipeline pipeline;
+    private long chunkRemaining;
+    private boolean messageData;
 
     public AllButStartTlsDelimiterChannelHandler(ChannelPipeline pipeline, int maxFrameLength, boolean stripDelimiter, ChannelBuffer[] delimiters) {
         super(maxFrameLength, stripDelimiter, delimiters);
@@ -45,19 +55,83 @@ public class AllButStartTlsDelimiterChannelHandler extends DelimiterBasedFrameDe
 
     @Override
     protected Object decode(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+        if (chunkRemaining > 0) {
+            return readChunk(buffer);
+        }
         SMTPSession session = (SMTPSession) pipeline.getContext(HandlerConstants.CORE_HANDLER).getAttachment();
+        if (session != null && session.pollMessageDataStart()) {
+            messageData = true;
+        }
+        boolean chunking = session != null && ChunkingEsmtpExtension.isEnabled(session);
 
         if (session == null || session.needsCommandInjectionDetection()) {
-            String trimedLowerCasedInput = readAll(buffer).trim().toLowerCase();
+            String trimedLowerCasedInput = readCommands(buffer, chunking).trim().toLowerCase();
             if (hasCommandInjection(trimedLowerCasedInput)) {
                 throw new CommandInjectionDetectedException();
             }
         }
-        return super.decode(ctx, channel, buffer);
+        Object frame = super.decode(ctx, channel, buffer);
+        if (frame != null) {
+            ChannelBuffer line = (ChannelBuffer) frame;
+            if (messageData) {
+                messageData = !isTerminator(line);
+            } else if (chunking) {
+                chunkRemaining = chunkSize(line);
+            }
+        }
+        return frame;
+    }
+
+    private ChannelBuffer readChunk(ChannelBuffer buffer) {
+        if (!buffer.readable()) {
+            return null;
+        }
+        int length = (int) Math.min(chunkRemaining, buffer.readableBytes());
+        chunkRemaining -= length;
+        return buffer.readBytes(length);
+    }
+
+    /**
+     * Message content sent after DATA may contain lines which look like a BDAT command, so BDAT
+     * is only looked for again once the content was terminated
+     */
+    private boolean isTerminator(ChannelBuffer line) {
+        return line.readableBytes() <= 3 && line.toString(Charsets.US_ASCII).trim().equals(".");
+    }
+
+    private long chunkSize(ChannelBuffer line) {
+        if (line.readableBytes() <= BDAT.length()) {
+            return 0;
+        }
+        String command = line.toString(Charsets.US_ASCII).trim();
+        if (!command.regionMatches(true, 0, BDAT, 0, BDAT.length())) {
+            return 0;
+        }
+        ChunkArgument chunk = ChunkArgument.parse(command.substring(BDAT.length()));
+        if (chunk == null) {
+            return 0;
+        }
+        return chunk.getSize();
     }
 
-    private String readAll(ChannelBuffer buffer) {
-        return buffer.toString(Charsets.US_ASCII);
+    /**
+     * Read the buffered input, leaving out the octets of BDAT chunks as they are message content
+     */
+    private String readCommands(ChannelBuffer buffer, boolean chunking) {
+        if (!chunking) {
+            return buffer.toString(Charsets.US_ASCII);
+        }
+        StringBuilder commands = new StringBuilder();
+        int index = buffer.readerIndex();
+        int end = buffer.writerIndex();
+        while (index < end) {
+            int eol = buffer.indexOf(index, end, (byte) '\n');
+            int next = eol < 0 ? end : eol + 1;
+            ChannelBuffer line = buffer.slice(index, next - index);
+            commands.append(line.toString(Charsets.US_ASCII));
+            index = (int) Math.min(end, next + chunkSize(line));
+        }
+        return commands.toString();
     }
 
     private boolean hasCommandInjection(String trimedLowerCasedInput) {
@@ -57,6 +57,21 @@ public interface SMTPSession extends ProtocolSession{
     void startDetectingCommadInjection();
 
     void stopDetectingCommandInjection();
+
+    /**
+     * Signal that a DATA command was accepted and dot-terminated message
+     * content follows.
+     */
+    void startMessageData();
+
+    /**
+     * Return <code>true</code> once for every call of {@link #startMessageData()}.
+     * The framing layer uses this to avoid reading message content lines as
+     * BDAT commands.
+     *
+     * @return message data started
+     */
+    boolean pollMessageDataStart();
     
     /**
      * Set if reallying is allowed
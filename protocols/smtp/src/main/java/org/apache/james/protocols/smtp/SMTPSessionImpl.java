@@ -37,6 +37,7 @@ public class SMTPSessionImpl extends ProtocolSessionImpl implements SMTPSession
     
     private boolean relayingAllowed;
     private boolean needsCommandInjectionDetection;
+    private volatile boolean messageDataStarted;
     
     public SMTPSessionImpl(Logger logger, ProtocolTransport transport, SMTPConfiguration config) {
         super(logger, transport, config);
@@ -59,6 +60,20 @@ public class SMTPSessionImpl extends ProtocolSessionImpl implements SMTPSession
         needsCommandInjectionDetection = false;
     }
 
+    @Override
+    public void startMessageData() {
+        messageDataStarted = true;
+    }
+
+    @Override
+    public boolean pollMessageDataStart() {
+        if (messageDataStarted) {
+            messageDataStarted = false;
+            return true;
+        }
+        return false;
+    }
+
     /**
      * @see org.apache.james.protocols.smtp.SMTPSession#isRelayingAllowed()
      */
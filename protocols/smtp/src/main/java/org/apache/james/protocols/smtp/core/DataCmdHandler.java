@@ -45,11 +45,12 @@ import org.apache.james.protocols.smtp.MailEnvelopeImpl;
 import org.apache.james.protocols.smtp.SMTPResponse;
 import org.apache.james.protocols.smtp.SMTPRetCode;
 import org.apache.james.protocols.smtp.SMTPSession;
+import org.apache.james.protocols.smtp.core.esmtp.ChunkingEsmtpExtension;
 import org.apache.james.protocols.smtp.dsn.DSNStatus;
 
 
 /**
-  * handles DATA command
+  * handles DATA command and the BDAT command of the CHUNKING extension (RFC 3030)
  */
 public class DataCmdHandler implements CommandHandler<SMTPSession>, ExtensibleHandler {
 
@@ -57,7 +58,14 @@ public class DataCmdHandler implements CommandHandler<SMTPSession>, ExtensibleHa
     private static final Response NO_SENDER = new SMTPResponse(SMTPRetCode.BAD_SEQUENCE, DSNStatus.getStatus(DSNStatus.PERMANENT,DSNStatus.DELIVERY_OTHER)+" No sender specified").immutable();
     private static final Response UNEXPECTED_ARG = new SMTPResponse(SMTPRetCode.SYNTAX_ERROR_COMMAND_UNRECOGNIZED, DSNStatus.getStatus(DSNStatus.PERMANENT,DSNStatus.DELIVERY_INVALID_ARG)+" Unexpected argument provided with DATA command").immutable();
     private static final Response DATA_READY = new SMTPResponse(SMTPRetCode.DATA_READY, "Ok Send data ending with <CRLF>.<CRLF>").immutable();
-    private static final Collection<String> COMMANDS = Collections.unmodifiableCollection(Arrays.asList("DATA"));
+    private static final Response INVALID_CHUNK = new SMTPResponse(SMTPRetCode.SYNTAX_ERROR_ARGUMENTS, DSNStatus.getStatus(DSNStatus.PERMANENT,DSNStatus.DELIVERY_INVALID_ARG)+" Invalid BDAT chunk size").immutable();
+    private static final Response DATA_DURING_CHUNKING = new SMTPResponse(SMTPRetCode.BAD_SEQUENCE, DSNStatus.getStatus(DSNStatus.PERMANENT,DSNStatus.DELIVERY_OTHER)+" DATA not allowed after BDAT in the same transaction").immutable();
+    private static final Response CHUNKING_NOT_SUPPORTED = new SMTPResponse(SMTPRetCode.SYNTAX_ERROR_COMMAND_UNRECOGNIZED, DSNStatus.getStatus(DSNStatus.PERMANENT,DSNStatus.DELIVERY_INVALID_CMD)+" Command BDAT unrecognized.").immutable();
+    private static final Response MESSAGE_ABORTED = new SMTPResponse(SMTPRetCode.LOCAL_ERROR, DSNStatus.getStatus(DSNStatus.TRANSIENT,DSNStatus.UNDEFINED_STATUS)+" Message aborted").immutable();
+    private static final String BDAT = "BDAT";
+    private static final Collection<String> COMMANDS = Collections.unmodifiableCollection(Arrays.asList("DATA", BDAT));
+    private static final String CHUNKED_MESSAGE = "CHUNKED_MESSAGE";
+    private static final int MAX_CHUNK_LINE_LENGTH = 8192;
 
     public static final class DataConsumerLineHandler implements LineHandler<SMTPSession> {
 
@@ -111,6 +119,209 @@ public class DataCmdHandler implements CommandHandler<SMTPSession>, ExtensibleHa
         }
     }
    
+    /**
+     * The argument of a BDAT command: the size of the chunk in octets and whether it is the last one
+     */
+    public static final class ChunkArgument {
+
+        private static final String LAST = "LAST";
+        private static final int MAX_SIZE_DIGITS = 18;
+
+        private final long size;
+        private final boolean last;
+
+        private ChunkArgument(long size, boolean last) {
+            this.size = size;
+            this.last = last;
+        }
+
+        /**
+         * Parse the argument of a BDAT command. The framing layer and the {@link DataCmdHandler} both use this,
+         * so they agree on how many octets follow the command line.
+         *
+         * @param argument
+         * @return chunkArgument or <code>null</code> if the argument is not valid
+         */
+        public static ChunkArgument parse(String argument) {
+            if (argument == null) {
+                return null;
+            }
+            String[] parts = argument.trim().split(" +");
+            if (parts.length > 2 || (parts.length == 2 && !LAST.equalsIgnoreCase(parts[1]))) {
+                return null;
+            }
+            String size = parts[0];
+            if (size.length() == 0 || size.length() > MAX_SIZE_DIGITS) {
+                return null;
+            }
+            for (int i = 0; i < size.length(); i++) {
+                char c = size.charAt(i);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+            }
+            return new ChunkArgument(Long.parseLong(size), parts.length == 2);
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isLast() {
+            return last;
+        }
+    }
+
+    /**
+     * Transaction state of a message received with BDAT. The chunks are split into lines, which get dot-stuffed
+     * and passed to the DATA line handler, so the {@link DataLineFilter}'s see the same input as for DATA. A line
+     * which is not terminated within a chunk is carried over to the next one.
+     * 
+     * Lines are passed as slices of the chunk, only the lines spanning chunks or needing dot-stuffing are copied.
+     */
+    private static final class ChunkedMessage {
+
+        private static final byte[] CRLF = new byte[] {'\r', '\n'};
+
+        private final LineHandler<SMTPSession> dataLineHandler;
+        private byte[] partial = new byte[0];
+        private int partialLength;
+
+        public ChunkedMessage(LineHandler<SMTPSession> dataLineHandler) {
+            this.dataLineHandler = dataLineHandler;
+        }
+
+        public Response append(SMTPSession session, ByteBuffer chunk, boolean last) {
+            byte[] data;
+            int offset;
+            if (chunk.hasArray()) {
+                data = chunk.array();
+                offset = chunk.arrayOffset() + chunk.position();
+            } else {
+                data = new byte[chunk.remaining()];
+                chunk.get(data);
+                offset = 0;
+            }
+            int end = offset + chunk.remaining();
+            int start = offset;
+            for (int i = offset; i < end; i++) {
+                // 10 is "\n"
+                if (data[i] == 10) {
+                    Response response = writeLine(session, data, start, i + 1 - start);
+                    start = i + 1;
+                    if (response != null) {
+                        return response;
+                    }
+                }
+            }
+            carry(data, start, end - start);
+            if (partialLength > MAX_CHUNK_LINE_LENGTH) {
+                return session.newLineTooLongResponse();
+            }
+            if (last && partialLength > 0) {
+                // The last chunk does not need to end with CRLF, but the DATA line handler expects complete lines
+                return writeLine(session, CRLF, 0, CRLF.length);
+            }
+            return null;
+        }
+
+        public Response terminate(SMTPSession session) {
+            return dataLineHandler.onLine(session, ByteBuffer.wrap(new byte[] {'.', '\r', '\n'}));
+        }
+
+        private Response writeLine(SMTPSession session, byte[] data, int offset, int length) {
+            // 46 is "."
+            if (partialLength == 0 && data[offset] != 46) {
+                // The DATA line handler rewinds the line, so it must start at position 0 of the buffer
+                return dataLineHandler.onLine(session, ByteBuffer.wrap(data, offset, length).slice());
+            }
+            int stuffing = (partialLength > 0 ? partial[0] : data[offset]) == 46 ? 1 : 0;
+            byte[] line = new byte[stuffing + partialLength + length];
+            if (stuffing == 1) {
+                line[0] = 46;
+            }
+            System.arraycopy(partial, 0, line, stuffing, partialLength);
+            System.arraycopy(data, offset, line, stuffing + partialLength, length);
+            partialLength = 0;
+            return dataLineHandler.onLine(session, ByteBuffer.wrap(line));
+        }
+
+        private void carry(byte[] data, int offset, int length) {
+            if (partialLength + length > partial.length) {
+                partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+            }
+            System.arraycopy(data, offset, partial, partialLength, length);
+            partialLength += length;
+        }
+    }
+
+    /**
+     * Receives the octets of one BDAT chunk, which the framing layer passes on in bulk instead of splitting them
+     * into lines. If the BDAT command was rejected the chunk is still consumed, as required by RFC 3030, and the
+     * rejection is returned once it is complete.
+     */
+    private static final class ChunkLineHandler implements LineHandler<SMTPSession> {
+
+        private final ChunkArgument chunk;
+        private final ChunkedMessage message;
+        private Response response;
+        private long remaining;
+
+        public ChunkLineHandler(ChunkArgument chunk, ChunkedMessage message, Response response) {
+            this.chunk = chunk;
+            this.message = message;
+            this.response = response;
+            this.remaining = chunk.getSize();
+        }
+
+        public Response onLine(SMTPSession session, ByteBuffer line) {
+            remaining -= line.remaining();
+            boolean pushed = true;
+            if (response == null) {
+                int depth = session.getPushedLineHandlerCount();
+                response = message.append(session, line, remaining <= 0 && chunk.isLast());
+                // A DATA line filter may end the message early, the DATA line handler then pops this handler
+                pushed = session.getPushedLineHandlerCount() == depth;
+                if (!pushed && response == null) {
+                    response = MESSAGE_ABORTED;
+                }
+            }
+            if (remaining > 0) {
+                if (!pushed) {
+                    session.pushLineHandler(this);
+                }
+                return null;
+            }
+            if (pushed) {
+                session.popLineHandler();
+            }
+            if (response != null) {
+                if (message != null) {
+                    // A failed chunk fails the whole transaction, see RFC 3030 4.2
+                    session.resetState();
+                }
+                return response;
+            }
+            if (!chunk.isLast()) {
+                return new SMTPResponse(SMTPRetCode.MAIL_OK, DSNStatus.getStatus(DSNStatus.SUCCESS,DSNStatus.UNDEFINED_STATUS) + " " + chunk.getSize() + " octets received");
+            }
+            session.setAttachment(CHUNKED_MESSAGE, null, ProtocolSession.State.Transaction);
+            // The DATA line handler pops itself once it received the terminator
+            session.pushLineHandler(message.dataLineHandler);
+            return message.terminate(session);
+        }
+
+        @Override
+        public void init(Configuration config) throws ConfigurationException {
+
+        }
+
+        @Override
+        public void destroy() {
+
+        }
+    }
+   
     public final static String MAILENV = "MAILENV";
 
     private final MetricFactory metricFactory;
@@ -141,10 +352,17 @@ public class DataCmdHandler implements CommandHandler<SMTPSession>, ExtensibleHa
         session.stopDetectingCommandInjection();
         try {
             String parameters = request.getArgument();
+            if (BDAT.equals(request.getCommand())) {
+                return doBDAT(session, parameters);
+            }
             Response response = doDATAFilter(session, parameters);
 
             if (response == null) {
-                return doDATA(session, parameters);
+                response = doDATA(session, parameters);
+                if (SMTPRetCode.DATA_READY.equals(response.getRetCode())) {
+                    session.startMessageData();
+                }
+                return response;
             } else {
                 return response;
             }
@@ -172,6 +390,46 @@ public class DataCmdHandler implements CommandHandler<SMTPSession>, ExtensibleHa
         return DATA_READY;
     }
     
+    /**
+     * Handler method called upon receipt of a BDAT command. The first chunk of a message opens the
+     * transaction like DATA does, the chunk itself is consumed by a pushed {@link LineHandler}.
+     *
+     * @param session SMTP session object
+     * @param argument the argument passed in with the command by the SMTP client
+     */
+    protected Response doBDAT(SMTPSession session, String argument) {
+        if (!ChunkingEsmtpExtension.isEnabled(session)) {
+            // Without the extension the framing layer does not pass chunks on, whatever follows is read as commands
+            return CHUNKING_NOT_SUPPORTED;
+        }
+        ChunkArgument chunk = ChunkArgument.parse(argument);
+        if (chunk == null) {
+            return INVALID_CHUNK;
+        }
+        ChunkedMessage message = (ChunkedMessage) session.getAttachment(CHUNKED_MESSAGE, ProtocolSession.State.Transaction);
+        Response response = null;
+        if (message == null) {
+            response = doDATAFilter(session, null);
+            if (response == null) {
+                response = doDATA(session, null);
+                if (SMTPRetCode.DATA_READY.equals(response.getRetCode())) {
+                    // doDATA pushed the DATA line handler, the chunks are passed to it by the ChunkLineHandler
+                    session.popLineHandler();
+                    message = new ChunkedMessage(lineHandler);
+                    session.setAttachment(CHUNKED_MESSAGE, message, ProtocolSession.State.Transaction);
+                    response = null;
+                }
+            }
+        }
+        ChunkLineHandler chunkLineHandler = new ChunkLineHandler(chunk, message, response);
+        session.pushLineHandler(chunkLineHandler);
+        if (chunk.getSize() == 0) {
+            // No octets follow, so complete the chunk right away
+            return chunkLineHandler.onLine(session, ByteBuffer.wrap(new byte[0]));
+        }
+        return null;
+    }
+
     protected MailEnvelope createEnvelope(SMTPSession session, MailAddress sender, List<MailAddress> recipients) {
         MailEnvelopeImpl env = new MailEnvelopeImpl();
         env.setRecipients(recipients);
@@ -219,6 +477,9 @@ public class DataCmdHandler implements CommandHandler<SMTPSession>, ExtensibleHa
         if ((argument != null) && (argument.length() > 0)) {
             return UNEXPECTED_ARG;
         }
+        if (session.getAttachment(CHUNKED_MESSAGE, ProtocolSession.State.Transaction) != null) {
+            return DATA_DURING_CHUNKING;
+        }
         if (session.getAttachment(SMTPSession.SENDER, ProtocolSession.State.Transaction) == null) {
             return NO_SENDER;
         } else if (session.getAttachment(SMTPSession.RCPT_LIST, ProtocolSession.State.Transaction) == null) {
@@ -113,7 +113,8 @@ public class DataLineMessageHookHandler implements DataLineFilter, ExtensibleHan
     private byte[] readBytes(ByteBuffer line) {
         line.rewind();
         byte[] bline;
-        if (line.hasArray()) {
+        // the line may be a slice of a larger array
+        if (line.hasArray() && line.arrayOffset() == 0 && line.array().length == line.remaining()) {
             bline = line.array();
         } else {
             bline = new byte[line.remaining()];
@@ -0,0 +1,79 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.protocols.smtp.core.esmtp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.james.protocols.api.ProtocolSession.State;
+import org.apache.james.protocols.api.Response;
+import org.apache.james.protocols.api.handler.ConnectHandler;
+import org.apache.james.protocols.smtp.AllButStartTlsDelimiterChannelHandler;
+import org.apache.james.protocols.smtp.SMTPSession;
+import org.apache.james.protocols.smtp.core.DataCmdHandler;
+
+/**
+ * Advertises the CHUNKING extension defined in RFC 3030. The BDAT command itself is handled by the
+ * {@link DataCmdHandler}.
+ * 
+ * Only add this handler if the server frames its input with the {@link AllButStartTlsDelimiterChannelHandler},
+ * which passes the octets of a chunk on without splitting them into lines. BDAT commands are neither framed
+ * as chunks nor accepted on connections of a server without this handler.
+ */
+public class ChunkingEsmtpExtension implements EhloExtension, ConnectHandler<SMTPSession> {
+
+    private final static List<String> FEATURES = Collections.unmodifiableList(Arrays.asList("CHUNKING"));
+    private final static String CHUNKING_ENABLED = "CHUNKING_ENABLED";
+
+    /**
+     * @return <code>true</code> if the CHUNKING extension is loaded for the connection of the given session
+     */
+    public static boolean isEnabled(SMTPSession session) {
+        return session.getAttachment(CHUNKING_ENABLED, State.Connection) != null;
+    }
+
+    /**
+     * @see org.apache.james.protocols.api.handler.ConnectHandler#onConnect(org.apache.james.protocols.api.ProtocolSession)
+     */
+    public Response onConnect(SMTPSession session) {
+        session.setAttachment(CHUNKING_ENABLED, Boolean.TRUE, State.Connection);
+        return null;
+    }
+
+    @Override
+    public void init(Configuration config) throws ConfigurationException {
+
+    }
+
+    @Override
+    public void destroy() {
+
+    }
+
+    /**
+     * @see org.apache.james.protocols.smtp.core.esmtp.EhloExtension#getImplementedEsmtpFeatures(org.apache.james.protocols.smtp.SMTPSession)
+     */
+    public List<String> getImplementedEsmtpFeatures(SMTPSession session) {
+        return FEATURES;
+    }
+
+}
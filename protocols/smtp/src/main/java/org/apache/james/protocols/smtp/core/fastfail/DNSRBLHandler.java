@@ -132,55 +132,66 @@ public class DNSRBLHandler implements RcptHook {
             String reversedOctets = sb.toString();
 
             if (whitelist != null) {
-                String[] rblList = whitelist;
-                for (String rbl : rblList) {
-                    if (resolve(reversedOctets + rbl)) {
-                        if (session.getLogger().isInfoEnabled()) {
-                            session.getLogger().info("Connection from " + ipAddress + " whitelisted by " + rbl);
-                        }
-
-                        return;
-                    } else {
-                        if (session.getLogger().isDebugEnabled()) {
-                            session.getLogger().debug("IpAddress " + session.getRemoteAddress().getAddress() + " not listed on " + rbl);
-                        }
+                String rbl = findListingRBL(session, reversedOctets, whitelist);
+                if (rbl != null) {
+                    if (session.getLogger().isInfoEnabled()) {
+                        session.getLogger().info("Connection from " + ipAddress + " whitelisted by " + rbl);
                     }
+
+                    return;
                 }
             }
 
             if (blacklist != null) {
-                String[] rblList = blacklist;
-                for (String rbl : rblList) {
-                    if (resolve(reversedOctets + rbl)) {
-                        if (session.getLogger().isInfoEnabled()) {
-                            session.getLogger().info("Connection from " + ipAddress + " restricted by " + rbl + " to SMTP AUTH/postmaster/abuse.");
-                        }
-
-                        // we should try to retrieve details
-                        if (getDetail) {
-                            Collection<String> txt = resolveTXTRecords(reversedOctets + rbl);
+                String rbl = findListingRBL(session, reversedOctets, blacklist);
+                if (rbl != null) {
+                    if (session.getLogger().isInfoEnabled()) {
+                        session.getLogger().info("Connection from " + ipAddress + " restricted by " + rbl + " to SMTP AUTH/postmaster/abuse.");
+                    }
 
-                            // Check if we found a txt record
-                            if (!txt.isEmpty()) {
-                                // Set the detail
-                                String blocklistedDetail = txt.iterator().next().toString();
+                    // we should try to retrieve details
+                    if (getDetail) {
+                        Collection<String> txt = resolveTXTRecords(reversedOctets + rbl);
 
-                                session.setAttachment(RBL_DETAIL_MAIL_ATTRIBUTE_NAME, blocklistedDetail, State.Connection);
-                            }
-                        }
+                        // Check if we found a txt record
+                        if (!txt.isEmpty()) {
+                            // Set the detail
+                            String blocklistedDetail = txt.iterator().next().toString();
 
-                        session.setAttachment(RBL_BLOCKLISTED_MAIL_ATTRIBUTE_NAME, "true", State.Connection);
-                        return;
-                    } else {
-                        // if it is unknown, it isn't blocked
-                        if (session.getLogger().isDebugEnabled()) {
-                            session.getLogger().debug("unknown host exception thrown:" + rbl);
+                            session.setAttachment(RBL_DETAIL_MAIL_ATTRIBUTE_NAME, blocklistedDetail, State.Connection);
                         }
                     }
 
+                    session.setAttachment(RBL_BLOCKLISTED_MAIL_ATTRIBUTE_NAME, "true", State.Connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the first of the given rbl servers listing the reversed octets,
+     * or null if none list them.
+     * 
+     * This implementation checks each rbl server in turn with {@link #resolve(String)}. Sub-classes may override this
+     * to check them concurrently.
+     * 
+     * @param session
+     * @param reversedOctets the reversed octets of the ip address, followed by a dot
+     * @param rblList the rbl servers to check
+     * @return listingRBL
+     */
+    protected String findListingRBL(SMTPSession session, String reversedOctets, String[] rblList) {
+        for (String rbl : rblList) {
+            if (resolve(reversedOctets + rbl)) {
+                return rbl;
+            } else {
+                // if it is unknown, it isn't listed
+                if (session.getLogger().isDebugEnabled()) {
+                    session.getLogger().debug("IpAddress " + session.getRemoteAddress().getAddress() + " not listed on " + rbl);
                 }
             }
         }
+        return null;
     }
     
     /**
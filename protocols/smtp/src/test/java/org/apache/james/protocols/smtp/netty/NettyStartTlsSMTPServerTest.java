@@ -20,6 +20,8 @@ package org.apache.james.protocols.smtp.netty;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.util.Locale;
@@ -49,12 +51,15 @@ import org.apache.james.protocols.smtp.AllButStartTlsLineDelimiterChannelHandler
 import org.apache.james.protocols.smtp.SMTPConfigurationImpl;
 import org.apache.james.protocols.smtp.SMTPProtocol;
 import org.apache.james.protocols.smtp.SMTPProtocolHandlerChain;
+import org.apache.james.protocols.smtp.core.esmtp.ChunkingEsmtpExtension;
 import org.apache.james.protocols.smtp.utils.TestMessageHook;
 import org.assertj.core.api.AssertDelegateTarget;
 import org.junit.After;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.io.CharStreams;
 import com.sun.mail.smtp.SMTPTransport;
 
 public class NettyStartTlsSMTPServerTest {
@@ -101,6 +106,20 @@ public class NettyStartTlsSMTPServerTest {
         return new SMTPProtocol(chain, new SMTPConfigurationImpl(), new MockLogger());
     }
 
+    private Protocol createChunkingProtocol(ProtocolHandler handler) throws WiringException {
+        SMTPProtocolHandlerChain chain = new SMTPProtocolHandlerChain(new NoopMetricFactory());
+        chain.add(new ChunkingEsmtpExtension());
+        chain.add(handler);
+        chain.wireExtensibleHandlers();
+        return new SMTPProtocol(chain, new SMTPConfigurationImpl(), new MockLogger());
+    }
+
+    private void sendEnvelope() throws Exception {
+        smtpsClient.sendCommand("EHLO localhost");
+        smtpsClient.sendCommand("MAIL FROM:<me@sender>");
+        smtpsClient.sendCommand("RCPT TO:<rcpt@domain>");
+    }
+
     @Test
     public void connectShouldReturnTrueWhenConnecting() throws Exception {
         server = createServer(createProtocol(Optional.<ProtocolHandler> absent()), Encryption.createStartTls(BogusSslContextFactory.getServerContext()));
@@ -238,4 +257,56 @@ public class NettyStartTlsSMTPServerTest {
             }
         }
     }
+
+    @Test
+    public void bdatShouldBeRejectedWhenChunkingIsNotLoaded() throws Exception {
+        server = createServer(createProtocol(Optional.<ProtocolHandler> absent()), Encryption.createStartTls(BogusSslContextFactory.getServerContext()));
+        smtpsClient = createClient();
+
+        server.bind();
+        InetSocketAddress bindedAddress = new ProtocolServerUtils(server).retrieveBindedAddress();
+        smtpsClient.connect(bindedAddress.getAddress().getHostAddress(), bindedAddress.getPort());
+        sendEnvelope();
+
+        smtpsClient.sendCommand("BDAT 6 LAST\r\nNOOP");
+        assertThat(smtpsClient.getReplyCode()).isEqualTo(SMTPReply.UNRECOGNIZED_COMMAND);
+    }
+
+    @Test
+    public void bdatShouldQueueTheMessageWhenChunkingIsLoaded() throws Exception {
+        TestMessageHook hook = new TestMessageHook();
+        server = createServer(createChunkingProtocol(hook), Encryption.createStartTls(BogusSslContextFactory.getServerContext()));
+        smtpsClient = createClient();
+
+        server.bind();
+        InetSocketAddress bindedAddress = new ProtocolServerUtils(server).retrieveBindedAddress();
+        smtpsClient.connect(bindedAddress.getAddress().getHostAddress(), bindedAddress.getPort());
+        sendEnvelope();
+
+        smtpsClient.sendCommand("BDAT 6 LAST\r\nNOOP");
+        assertThat(SMTPReply.isPositiveCompletion(smtpsClient.getReplyCode())).isTrue();
+        assertThat(hook.getQueued()).hasSize(1);
+    }
+
+    @Test
+    public void bdatShouldKeepLinesStartingWithADot() throws Exception {
+        TestMessageHook hook = new TestMessageHook();
+        server = createServer(createChunkingProtocol(hook), Encryption.createStartTls(BogusSslContextFactory.getServerContext()));
+        smtpsClient = createClient();
+
+        server.bind();
+        InetSocketAddress bindedAddress = new ProtocolServerUtils(server).retrieveBindedAddress();
+        smtpsClient.connect(bindedAddress.getAddress().getHostAddress(), bindedAddress.getPort());
+        sendEnvelope();
+
+        smtpsClient.sendCommand("BDAT 9 LAST\r\n.\r\n.dot");
+        assertThat(SMTPReply.isPositiveCompletion(smtpsClient.getReplyCode())).isTrue();
+        assertThat(hook.getQueued()).hasSize(1);
+        InputStream content = hook.getQueued().get(0).getMessageInputStream();
+        try {
+            assertThat(CharStreams.toString(new InputStreamReader(content, Charsets.US_ASCII))).endsWith("\r\n.\r\n.dot\r\n");
+        } finally {
+            content.close();
+        }
+    }
 }
@@ -54,6 +54,16 @@ public class BaseFakeSMTPSession implements SMTPSession {
         throw new UnsupportedOperationException("Unimplemented Stub Method");
     }
 
+    @Override
+    public void startMessageData() {
+        throw new UnsupportedOperationException("Unimplemented Stub Method");
+    }
+
+    @Override
+    public boolean pollMessageDataStart() {
+        throw new UnsupportedOperationException("Unimplemented Stub Method");
+    }
+
     /**
      * @see org.apache.james.protocols.smtp.SMTPSession#getConnectionState()
      */
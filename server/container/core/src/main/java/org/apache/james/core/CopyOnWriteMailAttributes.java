@@ -0,0 +1,324 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.core;
+
+import org.apache.mailet.MailAddress;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Attributes of a {@link MailImpl}, possibly shared with the mails it was
+ * copied from or to.
+ * <p>
+ * Copying a mail only increments a reference count. The backing map is copied
+ * the first time a shared instance is written to, or when a value that is not
+ * known to be immutable is read from it, so that a mutation is never visible to
+ * another mail. Only those mutable values are deep-cloned through serialization;
+ * immutable values are always shared.
+ * </p>
+ * <p>
+ * A mutable value handed out by, or given to, an instance that is not shared
+ * may still be referenced by the caller. Once that happened the map is copied,
+ * with its mutable values cloned, as soon as it gets shared.
+ * </p>
+ * <p>
+ * Instances are not thread safe, but mails sharing a map can be used from
+ * different threads.
+ * </p>
+ */
+class CopyOnWriteMailAttributes {
+
+    /**
+     * Types whose instances can be shared between mails without cloning.
+     * Compared by exact class so that mutable subclasses are still cloned.
+     */
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class, MailAddress.class));
+
+    /**
+     * Used internally to track the mails sharing a map. It is important that
+     * this is static otherwise it will keep a reference to the owning object.
+     */
+    private static class AttributesReferenceTracker {
+
+        private final HashMap<String, Object> attributes;
+
+        private int referenceCount = 1;
+
+        /**
+         * Whether a mutable value of the map may be referenced outside of it
+         */
+        private boolean mutableValuesExposed;
+
+        public AttributesReferenceTracker(HashMap<String, Object> attributes, boolean mutableValuesExposed) {
+            this.attributes = attributes;
+            this.mutableValuesExposed = mutableValuesExposed;
+        }
+
+        /**
+         * Share the tracked map with one more mail, or return a copy of it if
+         * its mutable values may be referenced by the caller of the owning mail.
+         */
+        public synchronized AttributesReferenceTracker share() {
+            if (mutableValuesExposed) {
+                return new AttributesReferenceTracker(copyOf(attributes), false);
+            }
+            referenceCount++;
+            return this;
+        }
+
+        /**
+         * @return false if the map is not shared, in which case the caller
+         *         still owns it
+         */
+        public synchronized boolean releaseIfShared() {
+            if (referenceCount <= 1) {
+                return false;
+            }
+            referenceCount--;
+            return true;
+        }
+
+        public synchronized boolean isShared() {
+            return referenceCount > 1;
+        }
+
+        public synchronized void exposeMutableValues() {
+            mutableValuesExposed = true;
+        }
+
+        /**
+         * Copy the tracked map for a mail that stops sharing it. Values that may
+         * be mutated are cloned, the others are shared with the remaining mails.
+         *
+         * @return the copy, or null if the map is not shared
+         */
+        public synchronized HashMap<String, Object> copyAndReleaseIfShared() {
+            if (referenceCount <= 1) {
+                return null;
+            }
+            HashMap<String, Object> copy = copyOf(attributes);
+            referenceCount--;
+            return copy;
+        }
+
+        /**
+         * Like {@link #copyAndReleaseIfShared()} but without cloning the values.
+         */
+        public synchronized HashMap<String, Object> snapshotAndReleaseIfShared() {
+            if (referenceCount <= 1) {
+                return null;
+            }
+            HashMap<String, Object> snapshot = new HashMap<String, Object>(attributes);
+            referenceCount--;
+            return snapshot;
+        }
+
+    }
+
+    private AttributesReferenceTracker tracker;
+
+    public CopyOnWriteMailAttributes() {
+        this(new AttributesReferenceTracker(new HashMap<String, Object>(), false));
+    }
+
+    /**
+     * @param attributes map owned by the new instance, it is neither copied nor
+     *                   shared. As the caller keeps a reference to it, its
+     *                   values are cloned if the instance gets shared.
+     */
+    public CopyOnWriteMailAttributes(HashMap<String, Object> attributes) {
+        this.tracker = new AttributesReferenceTracker(attributes, true);
+    }
+
+    private CopyOnWriteMailAttributes(AttributesReferenceTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /**
+     * Create an instance holding a private copy of the given attributes.
+     * Mutable values are cloned.
+     *
+     * @param attributes attributes of a foreign mail implementation
+     */
+    public static CopyOnWriteMailAttributes copyOf(Map<String, ?> attributes) {
+        HashMap<String, Object> copy = new HashMap<String, Object>();
+        for (Map.Entry<String, ?> entry : attributes.entrySet()) {
+            copy.put(entry.getKey(), cloneIfMutable(entry.getValue()));
+        }
+        return new CopyOnWriteMailAttributes(new AttributesReferenceTracker(copy, false));
+    }
+
+    /**
+     * Create an instance sharing the attributes of this one until either of
+     * them is written to.
+     */
+    public synchronized CopyOnWriteMailAttributes share() {
+        return new CopyOnWriteMailAttributes(tracker.share());
+    }
+
+    /**
+     * Stop sharing the attributes with other mails, so that they no longer
+     * need to copy them on write. Used once the owning mail is disposed: its
+     * attributes stay readable but their values are not cloned.
+     */
+    public synchronized void release() {
+        HashMap<String, Object> snapshot = tracker.snapshotAndReleaseIfShared();
+        if (snapshot != null) {
+            // the values are still referenced by the other mails
+            tracker = new AttributesReferenceTracker(snapshot, true);
+        }
+    }
+
+    public synchronized Serializable get(String key) {
+        Object value = tracker.attributes.get(key);
+        if (value != null && !isImmutable(value)) {
+            value = getAttributesForWriting().get(key);
+        }
+        return (Serializable) value;
+    }
+
+    public synchronized Serializable put(String key, Serializable value) {
+        HashMap<String, Object> attributes = ownAttributes();
+        if (value != null && !isImmutable(value)) {
+            tracker.exposeMutableValues();
+        }
+        return (Serializable) attributes.put(key, value);
+    }
+
+    public synchronized Serializable remove(String key) {
+        return (Serializable) ownAttributes().remove(key);
+    }
+
+    public synchronized void clear() {
+        if (tracker.releaseIfShared()) {
+            tracker = new AttributesReferenceTracker(new HashMap<String, Object>(), false);
+        } else {
+            tracker.attributes.clear();
+        }
+    }
+
+    public synchronized Iterator<String> names() {
+        if (tracker.isShared()) {
+            return Collections.unmodifiableSet(tracker.attributes.keySet()).iterator();
+        }
+        return tracker.attributes.keySet().iterator();
+    }
+
+    public synchronized boolean isEmpty() {
+        return tracker.attributes.isEmpty();
+    }
+
+    /**
+     * Return the attributes without copying them. The result must not be
+     * modified.
+     */
+    public synchronized HashMap<String, Object> getAttributesForReading() {
+        return tracker.attributes;
+    }
+
+    /**
+     * Return a map owned by this instance only, copying the shared one if
+     * needed. As the caller can keep references to its values, they are cloned
+     * if the instance gets shared later on.
+     */
+    public synchronized HashMap<String, Object> getAttributesForWriting() {
+        HashMap<String, Object> attributes = ownAttributes();
+        tracker.exposeMutableValues();
+        return attributes;
+    }
+
+    /**
+     * Copy the shared map if needed. Checking whether it is shared and
+     * releasing it is atomic, so that two mails sharing a map never both
+     * write to it.
+     */
+    private HashMap<String, Object> ownAttributes() {
+        HashMap<String, Object> copy = tracker.copyAndReleaseIfShared();
+        if (copy != null) {
+            tracker = new AttributesReferenceTracker(copy, false);
+        }
+        return tracker.attributes;
+    }
+
+    private static HashMap<String, Object> copyOf(HashMap<String, Object> attributes) {
+        HashMap<String, Object> copy = new HashMap<String, Object>(attributes);
+        for (Map.Entry<String, Object> entry : copy.entrySet()) {
+            entry.setValue(cloneIfMutable(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return IMMUTABLE_TYPES.contains(value.getClass()) || value instanceof Enum;
+    }
+
+    private static Object cloneIfMutable(Object value) {
+        if (value == null || isImmutable(value)) {
+            return value;
+        }
+        try {
+            return cloneSerializableObject(value);
+        } catch (IOException e) {
+            // not actually serializable: it can only be shared
+            return value;
+        } catch (ClassNotFoundException e) {
+            // should never happen as we just serialized it
+            return value;
+        }
+    }
+
+    /**
+     * This methods provide cloning for serializable objects. Mail Attributes
+     * are Serializable but not Clonable so we need a deep copy
+     *
+     * @param o Object to be cloned
+     * @return the cloned Object
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private static Object cloneSerializableObject(Object o) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(b);
+        out.writeObject(o);
+        out.flush();
+        out.close();
+        ByteArrayInputStream bi = new ByteArrayInputStream(b.toByteArray());
+        ObjectInputStream in = new ObjectInputStream(bi);
+        return in.readObject();
+    }
+
+}
@@ -28,12 +28,8 @@ import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.ParseException;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OptionalDataException;
 import java.io.OutputStream;
 import java.io.Serializable;
@@ -109,14 +105,14 @@ public class MailImpl implements Disposable, Mail {
     /**
      * Attributes added to this MailImpl instance
      */
-    private Map<String, Object> attributes;
+    private CopyOnWriteMailAttributes attributes;
 
     /**
      * A constructor that creates a new, uninitialized MailImpl
      */
     public MailImpl() {
         setState(Mail.DEFAULT);
-        attributes = new HashMap<String, Object>();
+        attributes = new CopyOnWriteMailAttributes();
     }
 
     /**
@@ -151,33 +147,28 @@ public class MailImpl implements Disposable, Mail {
     }
 
     /**
+     * Create a copy of the input mail with the given name. The attributes of
+     * a {@link MailImpl} are shared copy-on-write with the copy: they are only
+     * duplicated once either mail modifies them.
+     *
      * @param mail
      * @param newName
      * @throws MessagingException
      */
-    @SuppressWarnings("unchecked")
     public MailImpl(Mail mail, String newName) throws MessagingException {
         this(newName, mail.getSender(), mail.getRecipients(), mail.getMessage());
         setRemoteHost(mail.getRemoteHost());
         setRemoteAddr(mail.getRemoteAddr());
         setLastUpdated(mail.getLastUpdated());
-        try {
-            if (mail instanceof MailImpl) {
-                setAttributesRaw((HashMap<String, Object>) cloneSerializableObject(((MailImpl) mail).getAttributesRaw()));
-            } else {
-                HashMap<String, Object> attribs = new HashMap<String, Object>();
-                for (Iterator<String> i = mail.getAttributeNames(); i.hasNext(); ) {
-                    String hashKey = i.next();
-                    attribs.put(hashKey, cloneSerializableObject(mail.getAttribute(hashKey)));
-                }
-                setAttributesRaw(attribs);
+        if (mail instanceof MailImpl) {
+            attributes = ((MailImpl) mail).attributes.share();
+        } else {
+            HashMap<String, Object> attribs = new HashMap<String, Object>();
+            for (Iterator<String> i = mail.getAttributeNames(); i.hasNext(); ) {
+                String hashKey = i.next();
+                attribs.put(hashKey, mail.getAttribute(hashKey));
             }
-        } catch (IOException e) {
-            // should never happen for in memory streams
-            setAttributesRaw(new HashMap<String, Object>());
-        } catch (ClassNotFoundException e) {
-            // should never happen as we just serialized it
-            setAttributesRaw(new HashMap<String, Object>());
+            attributes = CopyOnWriteMailAttributes.copyOf(attribs);
         }
     }
 
@@ -505,10 +496,10 @@ public class MailImpl implements Disposable, Mail {
         // the following is under try/catch to be backwards compatible
         // with messages created with James version <= 2.2.0a8
         try {
-            attributes = (HashMap<String, Object>) in.readObject();
+            attributes = new CopyOnWriteMailAttributes((HashMap<String, Object>) in.readObject());
         } catch (OptionalDataException ode) {
             if (ode.eof) {
-                attributes = new HashMap<String, Object>();
+                attributes = new CopyOnWriteMailAttributes();
             } else {
                 throw ode;
             }
@@ -530,13 +521,14 @@ public class MailImpl implements Disposable, Mail {
         out.writeObject(remoteHost);
         out.writeObject(remoteAddr);
         out.writeObject(lastUpdated);
-        out.writeObject(attributes);
+        out.writeObject(attributes.getAttributesForReading());
     }
 
     @Override
     public void dispose() {
         LifecycleUtil.dispose(message);
         message = null;
+        attributes.release();
     }
 
     /**
@@ -553,7 +545,7 @@ public class MailImpl implements Disposable, Mail {
      * @since 2.2.0
      */
     public Map<String, Object> getAttributesRaw() {
-        return attributes;
+        return attributes.getAttributesForWriting();
     }
 
     /**
@@ -570,22 +562,22 @@ public class MailImpl implements Disposable, Mail {
      * @since 2.2.0
      */
     public void setAttributesRaw(HashMap<String, Object> attr) {
-        this.attributes = (attr == null) ? new HashMap<String, Object>() : attr;
+        this.attributes = (attr == null) ? new CopyOnWriteMailAttributes() : new CopyOnWriteMailAttributes(attr);
     }
 
     @Override
     public Serializable getAttribute(String key) {
-        return (Serializable) attributes.get(key);
+        return attributes.get(key);
     }
 
     @Override
     public Serializable setAttribute(String key, Serializable object) {
-        return (Serializable) attributes.put(key, object);
+        return attributes.put(key, object);
     }
 
     @Override
     public Serializable removeAttribute(String key) {
-        return (Serializable) attributes.remove(key);
+        return attributes.remove(key);
     }
 
     @Override
@@ -595,7 +587,7 @@ public class MailImpl implements Disposable, Mail {
 
     @Override
     public Iterator<String> getAttributeNames() {
-        return attributes.keySet().iterator();
+        return attributes.names();
     }
 
     @Override
@@ -603,26 +595,6 @@ public class MailImpl implements Disposable, Mail {
         return !attributes.isEmpty();
     }
 
-    /**
-     * This methods provide cloning for serializable objects. Mail Attributes
-     * are Serializable but not Clonable so we need a deep copy
-     *
-     * @param o Object to be cloned
-     * @return the cloned Object
-     * @throws IOException
-     * @throws ClassNotFoundException
-     */
-    private static Object cloneSerializableObject(Object o) throws IOException, ClassNotFoundException {
-        ByteArrayOutputStream b = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(b);
-        out.writeObject(o);
-        out.flush();
-        out.close();
-        ByteArrayInputStream bi = new ByteArrayInputStream(b.toByteArray());
-        ObjectInputStream in = new ObjectInputStream(bi);
-        return in.readObject();
-    }
-
     private static final java.util.Random random = new java.util.Random(); // Used
     // to
     // generate
@@ -28,6 +28,7 @@ import javax.mail.internet.MimeMessage;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.Iterator;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -107,4 +108,145 @@ public class MailImplTest extends MailTestAllImplementations {
         helperTestInitialState(duplicate);
         helperTestMessageSize(duplicate, 0);
     }
+
+    @Test
+    public void testCopySharesAttributes() throws MessagingException {
+        MailImpl mail = new MailImpl();
+        mail.setName("mail");
+        mail.setAttribute("immutable", "value");
+        ArrayList<String> list = new ArrayList<String>();
+        list.add("item");
+        mail.setAttribute("mutable", list);
+
+        MailImpl copy = new MailImpl(mail, "copy");
+        assertSame("immutable value is not cloned", mail.getAttribute("immutable"), copy.getAttribute("immutable"));
+        assertEquals("mutable value is copied", list, copy.getAttribute("mutable"));
+        assertNotSame("mutable value is cloned", list, copy.getAttribute("mutable"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCopyAttributesAreIsolated() throws MessagingException {
+        MailImpl mail = new MailImpl();
+        mail.setName("mail");
+        mail.setAttribute("key", "value");
+        mail.setAttribute("mutable", new ArrayList<String>());
+
+        MailImpl copy = new MailImpl(mail, "copy");
+        copy.setAttribute("key", "other");
+        copy.setAttribute("added", "value");
+        ((ArrayList<String>) copy.getAttribute("mutable")).add("item");
+        mail.removeAttribute("mutable");
+
+        assertEquals("original unchanged", "value", mail.getAttribute("key"));
+        assertNull("addition not visible", mail.getAttribute("added"));
+        assertNull("removal applied", mail.getAttribute("mutable"));
+        assertEquals("copy modified", "other", copy.getAttribute("key"));
+        assertEquals("copy mutation kept", 1, ((ArrayList<String>) copy.getAttribute("mutable")).size());
+    }
+
+    @Test
+    public void testCopyRemoveAllAttributesIsIsolated() throws MessagingException {
+        MailImpl mail = new MailImpl();
+        mail.setName("mail");
+        mail.setAttribute("key", "value");
+
+        MailImpl copy = new MailImpl(mail, "copy");
+        copy.removeAllAttributes();
+
+        assertFalse("copy cleared", copy.hasAttributes());
+        assertEquals("original unchanged", "value", mail.getAttribute("key"));
+    }
+
+    @Test
+    public void testSharedAttributeNamesCanBeIteratedWhileWriting() throws MessagingException {
+        MailImpl mail = new MailImpl();
+        mail.setName("mail");
+        mail.setAttribute("a", "1");
+        mail.setAttribute("b", "2");
+        MailImpl copy = new MailImpl(mail, "copy");
+
+        for (Iterator<String> names = copy.getAttributeNames(); names.hasNext(); ) {
+            copy.removeAttribute(names.next());
+        }
+
+        assertFalse("copy emptied", copy.hasAttributes());
+        assertTrue("original untouched", mail.hasAttributes());
+    }
+
+    @Test
+    public void testDisposedCopyKeepsAttributes() throws MessagingException {
+        MailImpl mail = new MailImpl();
+        mail.setName("mail");
+        mail.setAttribute("key", "value");
+        MailImpl copy = new MailImpl(mail, "copy");
+
+        copy.dispose();
+        mail.setAttribute("key", "other");
+
+        assertEquals("disposed copy unchanged", "value", copy.getAttribute("key"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMutableValueReadBeforeCopyIsNotShared() throws MessagingException {
+        MailImpl mail = new MailImpl();
+        mail.setName("mail");
+        mail.setAttribute("mutable", new ArrayList<String>());
+        ArrayList<String> list = (ArrayList<String>) mail.getAttribute("mutable");
+
+        MailImpl copy = new MailImpl(mail, "copy");
+        list.add("item");
+
+        assertTrue("copy unchanged", ((ArrayList<String>) copy.getAttribute("mutable")).isEmpty());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMutableValueSetBeforeCopyIsNotShared() throws MessagingException {
+        MailImpl mail = new MailImpl();
+        mail.setName("mail");
+        ArrayList<String> list = new ArrayList<String>();
+        mail.setAttribute("mutable", list);
+
+        MailImpl copy = new MailImpl(mail, "copy");
+        list.add("item");
+
+        assertTrue("copy unchanged", ((ArrayList<String>) copy.getAttribute("mutable")).isEmpty());
+    }
+
+    @Test
+    public void testCopiesCanBeWrittenConcurrently() throws Exception {
+        final MailImpl mail = new MailImpl();
+        mail.setName("mail");
+        mail.setAttribute("key", "value");
+        Thread[] threads = new Thread[8];
+        final MailImpl[] copies = new MailImpl[threads.length];
+        for (int i = 0; i < threads.length; i++) {
+            copies[i] = new MailImpl(mail, "copy" + i);
+        }
+        for (int i = 0; i < threads.length; i++) {
+            final MailImpl copy = copies[i];
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        copy.setAttribute("key" + j, copy.getName());
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull("original unchanged", mail.getAttribute("key0"));
+        for (MailImpl copy : copies) {
+            assertEquals("copy keeps shared value", "value", copy.getAttribute("key"));
+            for (int j = 0; j < 100; j++) {
+                assertEquals("copy sees its own writes only", copy.getName(), copy.getAttribute("key" + j));
+            }
+        }
+    }
 }
@@ -18,8 +18,13 @@
  ****************************************************************/
 package org.apache.james.modules.mailbox;
 
+import java.io.FileNotFoundException;
+
 import javax.inject.Singleton;
 
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
 import org.apache.james.adapter.mailbox.store.UserRepositoryAuthenticator;
 import org.apache.james.adapter.mailbox.store.UserRepositoryAuthorizator;
 import org.apache.james.backends.cassandra.components.CassandraModule;
@@ -33,6 +38,7 @@ import org.apache.james.mailbox.cassandra.CassandraMailboxManager;
 import org.apache.james.mailbox.cassandra.CassandraMailboxSessionMapperFactory;
 import org.apache.james.mailbox.cassandra.CassandraMessageId;
 import org.apache.james.mailbox.cassandra.CassandraSubscriptionManager;
+import org.apache.james.mailbox.cassandra.mail.CassandraBlobsDAO;
 import org.apache.james.mailbox.cassandra.mail.CassandraMailboxDAO;
 import org.apache.james.mailbox.cassandra.mail.CassandraMessageDAO;
 import org.apache.james.mailbox.cassandra.mail.CassandraMessageIdDAO;
@@ -45,6 +51,7 @@ import org.apache.james.mailbox.model.MessageId;
 import org.apache.james.mailbox.store.Authenticator;
 import org.apache.james.mailbox.store.Authorizator;
 import org.apache.james.mailbox.store.MailboxSessionMapperFactory;
+import org.apache.james.mailbox.store.MessageBatcher;
 import org.apache.james.mailbox.store.NoMailboxPathLocker;
 import org.apache.james.mailbox.store.StoreAttachmentManager;
 import org.apache.james.mailbox.store.StoreMessageIdManager;
@@ -54,8 +61,12 @@ import org.apache.james.mailbox.store.mail.MailboxMapperFactory;
 import org.apache.james.mailbox.store.mail.MessageMapperFactory;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.UidProvider;
+import org.apache.james.metrics.api.MetricFactory;
 import org.apache.james.modules.Names;
 import org.apache.james.utils.MailboxManagerDefinition;
+import org.apache.james.utils.PropertiesProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
@@ -66,6 +77,8 @@ import com.google.inject.name.Named;
 
 public class CassandraMailboxModule extends AbstractModule {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(CassandraMailboxModule.class);
+
     @Override
     protected void configure() {
         install(new DefaultEventModule());
@@ -84,6 +97,7 @@ public class CassandraMailboxModule extends AbstractModule {
         bind(UserRepositoryAuthorizator.class).in(Scopes.SINGLETON);
         bind(CassandraId.Factory.class).in(Scopes.SINGLETON);
         bind(CassandraMessageId.Factory.class).in(Scopes.SINGLETON);
+        bind(CassandraBlobsDAO.class).in(Scopes.SINGLETON);
         bind(CassandraMessageDAO.class).in(Scopes.SINGLETON);
         bind(CassandraMessageIdDAO.class).in(Scopes.SINGLETON);
         bind(CassandraMessageIdToImapUidDAO.class).in(Scopes.SINGLETON);
@@ -119,21 +133,38 @@ public class CassandraMailboxModule extends AbstractModule {
         cassandraDataDefinitions.addBinding().to(org.apache.james.mailbox.cassandra.modules.CassandraUidModule.class);
         cassandraDataDefinitions.addBinding().to(org.apache.james.mailbox.cassandra.modules.CassandraModSeqModule.class);
         cassandraDataDefinitions.addBinding().to(org.apache.james.mailbox.cassandra.modules.CassandraAttachmentModule.class);
+        cassandraDataDefinitions.addBinding().to(org.apache.james.mailbox.cassandra.modules.CassandraBlobModule.class);
         cassandraDataDefinitions.addBinding().to(org.apache.james.mailbox.cassandra.modules.CassandraAnnotationModule.class);
 
         cassandraDataDefinitions.addBinding().to(org.apache.james.mailbox.cassandra.modules.CassandraApplicableFlagsModule.class);
 
         cassandraDataDefinitions.addBinding().to(org.apache.james.mailbox.cassandra.modules.CassandraDeletedMessageModule.class);
+        cassandraDataDefinitions.addBinding().to(org.apache.james.mailbox.cassandra.modules.CassandraModSeqIndexModule.class);
 
 
         Multibinder.newSetBinder(binder(), MailboxManagerDefinition.class).addBinding().to(CassandraMailboxManagerDefinition.class);
     }
 
     @Provides @Named(Names.MAILBOXMANAGER_NAME) @Singleton
-    public MailboxManager provideMailboxManager(CassandraMailboxManager cassandraMailboxManager) throws MailboxException {
+    public MailboxManager provideMailboxManager(CassandraMailboxManager cassandraMailboxManager, MetricFactory metricFactory,
+                                                PropertiesProvider propertiesProvider) throws MailboxException, ConfigurationException {
+        cassandraMailboxManager.setMetricFactory(metricFactory);
+        configureBatches(cassandraMailboxManager, propertiesProvider);
         cassandraMailboxManager.init();
         return cassandraMailboxManager;
     }
+
+    private void configureBatches(CassandraMailboxManager cassandraMailboxManager, PropertiesProvider propertiesProvider) throws ConfigurationException {
+        try {
+            PropertiesConfiguration configuration = propertiesProvider.getConfiguration("cassandra");
+            cassandraMailboxManager.setCopyBatchParallelism(configuration.getInt("mailbox.copy.batch.parallelism", MessageBatcher.SEQUENTIAL));
+            cassandraMailboxManager.setCopyBatchSize(configuration.getInt("mailbox.copy.batch.size", MessageBatcher.NO_BATCH_SIZE));
+            cassandraMailboxManager.setMoveBatchParallelism(configuration.getInt("mailbox.move.batch.parallelism", MessageBatcher.SEQUENTIAL));
+            cassandraMailboxManager.setMoveBatchSize(configuration.getInt("mailbox.move.batch.size", MessageBatcher.NO_BATCH_SIZE));
+        } catch (FileNotFoundException e) {
+            LOGGER.info("No cassandra.properties file. COPY and MOVE are not batched.");
+        }
+    }
     
     @Singleton
     private static class CassandraMailboxManagerDefinition extends MailboxManagerDefinition {
@@ -23,9 +23,13 @@ import javax.jms.ConnectionFactory;
 
 import org.apache.activemq.store.PersistenceAdapter;
 import org.apache.activemq.store.kahadb.KahaDBPersistenceAdapter;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.james.queue.activemq.ActiveMQMailQueueFactory;
 import org.apache.james.queue.activemq.EmbeddedActiveMQ;
 import org.apache.james.queue.api.MailQueueFactory;
+import org.apache.james.queue.jms.DequeueConfiguration;
+import org.apache.james.utils.ConfigurationProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,10 +57,29 @@ public class ActiveMQQueueModule extends AbstractModule {
 
     @Provides
     @Singleton
-    public MailQueueFactory createActiveMailQueueFactory(ActiveMQMailQueueFactory activeMQMailQueueFactory) {
+    public MailQueueFactory createActiveMailQueueFactory(ActiveMQMailQueueFactory activeMQMailQueueFactory, ConfigurationProvider configurationProvider)
+            throws ConfigurationException {
         activeMQMailQueueFactory.setUseJMX(true);
         activeMQMailQueueFactory.setLog(LOGGER);
+        activeMQMailQueueFactory.setDequeueConfiguration(dequeueConfiguration(configurationProvider));
         activeMQMailQueueFactory.init();
         return activeMQMailQueueFactory;
     }
+
+    /**
+     * The dequeue element of the optional queue.xml file, by default one consumer per dequeued mail
+     */
+    private DequeueConfiguration dequeueConfiguration(ConfigurationProvider configurationProvider) throws ConfigurationException {
+        HierarchicalConfiguration queueConfiguration;
+        try {
+            queueConfiguration = configurationProvider.getConfiguration("queue");
+        } catch (ConfigurationException e) {
+            LOGGER.info("No queue configuration found, mails are dequeued with one consumer each");
+            return DequeueConfiguration.PER_DEQUEUE;
+        }
+        if (queueConfiguration.configurationsAt("dequeue").isEmpty()) {
+            return DequeueConfiguration.PER_DEQUEUE;
+        }
+        return DequeueConfiguration.from(queueConfiguration.configurationAt("dequeue"));
+    }
 }
@@ -22,13 +22,20 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
+import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
 import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.james.lifecycle.api.Configurable;
+import org.apache.james.metrics.api.MetricFactory;
 import org.apache.james.rrt.api.RecipientRewriteTable;
 import org.apache.james.rrt.jpa.JPARecipientRewriteTable;
+import org.apache.james.rrt.lib.BloomFilteredRecipientRewriteTable;
+import org.apache.james.rrt.lib.CachingRecipientRewriteTable;
+import org.apache.james.rrt.lib.CachingRecipientRewriteTableConfiguration;
+import org.apache.james.user.lib.util.MembershipPrefilterConfiguration;
 import org.apache.james.utils.ConfigurationPerformer;
 import org.apache.james.utils.ConfigurationProvider;
 import org.slf4j.Logger;
@@ -40,13 +47,42 @@ public class JPARecipientRewriteTableModule extends AbstractModule {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(RecipientRewriteTable.class);
 
+    /**
+     * The database may be shared by several nodes, whose prefilters would
+     * miss the keys added by the others until they are refreshed.
+     */
+    private static final boolean PREFILTER_ENABLED_BY_DEFAULT = false;
+
+    /**
+     * Cached resolutions would miss the modifications done on the other
+     * nodes sharing the database until they expire.
+     */
+    private static final boolean CACHE_ENABLED_BY_DEFAULT = false;
+
     @Override
     public void configure() {
         bind(JPARecipientRewriteTable.class).in(Scopes.SINGLETON);
-        bind(RecipientRewriteTable.class).to(JPARecipientRewriteTable.class);
         Multibinder.newSetBinder(binder(), ConfigurationPerformer.class).addBinding().to(JPARecipientRewriteTablePerformer.class);
     }
 
+    @Provides
+    @Singleton
+    public RecipientRewriteTable provideRecipientRewriteTable(JPARecipientRewriteTable recipientRewriteTable, MetricFactory metricFactory,
+                                                              ConfigurationProvider configurationProvider) throws ConfigurationException {
+        HierarchicalConfiguration configuration = configurationProvider.getConfiguration("recipientrewritetable");
+        MembershipPrefilterConfiguration prefilterConfiguration = MembershipPrefilterConfiguration.from(configuration, PREFILTER_ENABLED_BY_DEFAULT);
+        CachingRecipientRewriteTableConfiguration cacheConfiguration = CachingRecipientRewriteTableConfiguration.from(configuration, CACHE_ENABLED_BY_DEFAULT);
+        RecipientRewriteTable prefiltered = recipientRewriteTable;
+        if (prefilterConfiguration.isEnabled()) {
+            prefiltered = new BloomFilteredRecipientRewriteTable(recipientRewriteTable, metricFactory, prefilterConfiguration);
+        }
+        if (!cacheConfiguration.isEnabled()) {
+            return prefiltered;
+        }
+        return new CachingRecipientRewriteTable(prefiltered, metricFactory,
+            cacheConfiguration.getMaximumSize(), cacheConfiguration.getExpirationInSeconds());
+    }
+
     @Singleton
     public static class JPARecipientRewriteTablePerformer implements ConfigurationPerformer {
 
@@ -22,13 +22,17 @@ import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.inject.AbstractModule;
 import com.google.inject.Inject;
+import com.google.inject.Provides;
 import com.google.inject.Scopes;
 import com.google.inject.Singleton;
 import com.google.inject.multibindings.Multibinder;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.james.lifecycle.api.Configurable;
+import org.apache.james.metrics.api.MetricFactory;
 import org.apache.james.user.api.UsersRepository;
 import org.apache.james.user.jpa.JPAUsersRepository;
+import org.apache.james.user.lib.BloomFilteredUsersRepository;
+import org.apache.james.user.lib.util.MembershipPrefilterConfiguration;
 import org.apache.james.utils.ConfigurationPerformer;
 import org.apache.james.utils.ConfigurationProvider;
 import org.slf4j.Logger;
@@ -40,14 +44,31 @@ public class JPAUsersRepositoryModule extends AbstractModule {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JPAUsersRepositoryModule.class);
 
+    /**
+     * The database may be shared by several nodes, whose prefilters would
+     * miss the keys added by the others until they are refreshed.
+     */
+    private static final boolean PREFILTER_ENABLED_BY_DEFAULT = false;
+
     @Override
     public void configure() {
         bind(JPAUsersRepository.class).in(Scopes.SINGLETON);
-        bind(UsersRepository.class).to(JPAUsersRepository.class);
 
         Multibinder.newSetBinder(binder(), ConfigurationPerformer.class).addBinding().to(JPAUsersRepositoryConfigurationPerformer.class);
     }
 
+    @Provides
+    @Singleton
+    public UsersRepository provideUsersRepository(JPAUsersRepository usersRepository, MetricFactory metricFactory,
+                                                  ConfigurationProvider configurationProvider) throws ConfigurationException {
+        MembershipPrefilterConfiguration prefilterConfiguration = MembershipPrefilterConfiguration.from(
+            configurationProvider.getConfiguration("usersrepository"), PREFILTER_ENABLED_BY_DEFAULT);
+        if (!prefilterConfiguration.isEnabled()) {
+            return usersRepository;
+        }
+        return new BloomFilteredUsersRepository(usersRepository, metricFactory, prefilterConfiguration);
+    }
+
     @Singleton
     public static class JPAUsersRepositoryConfigurationPerformer implements ConfigurationPerformer {
 
@@ -56,6 +56,7 @@ import org.apache.james.mailbox.store.mail.MessageMapperFactory;
 import org.apache.james.mailbox.store.mail.ModSeqProvider;
 import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.mail.model.DefaultMessageId;
+import org.apache.james.metrics.api.MetricFactory;
 import org.apache.james.modules.Names;
 import org.apache.james.utils.MailboxManagerDefinition;
 import org.apache.james.utils.PropertiesProvider;
@@ -105,7 +106,8 @@ public class JPAMailboxModule extends AbstractModule {
     }
 
     @Provides @Named(Names.MAILBOXMANAGER_NAME) @Singleton
-    public MailboxManager provideMailboxManager(OpenJPAMailboxManager jpaMailboxManager) throws MailboxException {
+    public MailboxManager provideMailboxManager(OpenJPAMailboxManager jpaMailboxManager, MetricFactory metricFactory) throws MailboxException {
+        jpaMailboxManager.setMetricFactory(metricFactory);
         jpaMailboxManager.init();
         return jpaMailboxManager;
     }
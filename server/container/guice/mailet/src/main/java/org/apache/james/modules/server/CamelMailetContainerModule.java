@@ -37,7 +37,7 @@ import org.apache.james.mailetcontainer.impl.JamesMailSpooler;
 import org.apache.james.mailetcontainer.impl.JamesMailetContext;
 import org.apache.james.mailetcontainer.impl.MatcherMailetPair;
 import org.apache.james.mailetcontainer.impl.camel.CamelCompositeProcessor;
-import org.apache.james.mailetcontainer.impl.camel.CamelMailetProcessor;
+import org.apache.james.mailetcontainer.lib.AbstractStateMailetProcessor;
 import org.apache.james.queue.api.MailQueueFactory;
 import org.apache.james.transport.mailets.RemoveMimeHeader;
 import org.apache.james.transport.matchers.All;
@@ -150,8 +150,8 @@ public class CamelMailetContainerModule extends AbstractModule {
         private void checkProcessors() throws ConfigurationException {
             MailProcessor mailProcessor = Optional.ofNullable(camelCompositeProcessor.getProcessor("transport"))
                 .orElseThrow(() -> new RuntimeException("JMAP needs a transport processor"));
-            if (mailProcessor instanceof CamelMailetProcessor) {
-                List<MatcherMailetPair> matcherMailetPairs = ((CamelMailetProcessor) mailProcessor).getPairs();
+            if (mailProcessor instanceof AbstractStateMailetProcessor) {
+                List<MatcherMailetPair> matcherMailetPairs = ((AbstractStateMailetProcessor) mailProcessor).getPairs();
                 for (TransportProcessorCheck check : transportProcessorCheckSet) {
                     check.check(matcherMailetPairs);
                 }
@@ -59,6 +59,7 @@ import org.apache.james.mailbox.store.mail.UidProvider;
 import org.apache.james.mailbox.store.search.MessageSearchIndex;
 import org.apache.james.mailbox.store.search.SimpleMessageSearchIndex;
 import org.apache.james.mailbox.store.user.SubscriptionMapperFactory;
+import org.apache.james.metrics.api.MetricFactory;
 import org.apache.james.modules.Names;
 
 import com.google.inject.AbstractModule;
@@ -113,7 +114,8 @@ public class MemoryMailboxModule extends AbstractModule {
     }
 
     @Provides @Named(Names.MAILBOXMANAGER_NAME) @Singleton
-    public MailboxManager provideMailboxManager(InMemoryMailboxManager mailboxManager) throws MailboxException {
+    public MailboxManager provideMailboxManager(InMemoryMailboxManager mailboxManager, MetricFactory metricFactory) throws MailboxException {
+        mailboxManager.setMetricFactory(metricFactory);
         mailboxManager.init();
         return mailboxManager;
     }
@@ -0,0 +1,179 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.rrt.lib;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.rrt.api.RecipientRewriteTable;
+import org.apache.james.rrt.api.RecipientRewriteTableException;
+import org.apache.james.user.lib.util.MembershipPrefilter;
+import org.apache.james.user.lib.util.MembershipPrefilterConfiguration;
+
+/**
+ * {@link RecipientRewriteTable} decorator answering
+ * {@link #getMappings(String, String)} without querying the underlying table
+ * when none of the mapping sources it would look up (user@domain, user@* and
+ * *@domain) exists, using a {@link MembershipPrefilter} over the mapping
+ * sources.
+ * 
+ * Sources added through this decorator are taken into account immediately.
+ * Sources added through another instance are only seen once the prefilter is
+ * refreshed: until then they have no mapping, see
+ * {@link MembershipPrefilterConfiguration}.
+ */
+public class BloomFilteredRecipientRewriteTable implements RecipientRewriteTable {
+
+    public static final String METRIC_PREFIX = "recipientRewriteTable";
+
+    private final RecipientRewriteTable delegate;
+    private final MembershipPrefilter prefilter;
+
+    public BloomFilteredRecipientRewriteTable(RecipientRewriteTable delegate, MetricFactory metricFactory) {
+        this(delegate, metricFactory, MembershipPrefilterConfiguration.DEFAULT);
+    }
+
+    public BloomFilteredRecipientRewriteTable(RecipientRewriteTable delegate, MetricFactory metricFactory, MembershipPrefilterConfiguration configuration) {
+        this.delegate = delegate;
+        this.prefilter = new MembershipPrefilter(METRIC_PREFIX, mappingSources(delegate), metricFactory, configuration);
+    }
+
+    public BloomFilteredRecipientRewriteTable(RecipientRewriteTable delegate, MembershipPrefilter prefilter) {
+        this.delegate = delegate;
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * Key source to be given to a {@link MembershipPrefilter} used by this
+     * decorator.
+     */
+    public static Callable<Iterator<String>> mappingSources(final RecipientRewriteTable recipientRewriteTable) {
+        return new Callable<Iterator<String>>() {
+            @Override
+            public Iterator<String> call() throws RecipientRewriteTableException {
+                Map<String, Mappings> allMappings = recipientRewriteTable.getAllMappings();
+                if (allMappings == null) {
+                    return Collections.<String>emptyList().iterator();
+                }
+                return allMappings.keySet().iterator();
+            }
+        };
+    }
+
+    private static String source(String user, String domain) {
+        return fixed(user) + "@" + fixed(domain);
+    }
+
+    private static String fixed(String part) {
+        if (part == null) {
+            return WILDCARD;
+        }
+        return part;
+    }
+
+    @Override
+    public Mappings getMappings(String user, String domain) throws ErrorMappingException, RecipientRewriteTableException {
+        if (!prefilter.mightContainAny(source(user, domain), source(user, WILDCARD), source(WILDCARD, domain))) {
+            return null;
+        }
+        return delegate.getMappings(user, domain);
+    }
+
+    @Override
+    public void addRegexMapping(String user, String domain, String regex) throws RecipientRewriteTableException {
+        prefilter.add(source(user, domain));
+        delegate.addRegexMapping(user, domain, regex);
+    }
+
+    @Override
+    public void removeRegexMapping(String user, String domain, String regex) throws RecipientRewriteTableException {
+        delegate.removeRegexMapping(user, domain, regex);
+        removeSourceIfUnused(user, domain);
+    }
+
+    @Override
+    public void addAddressMapping(String user, String domain, String address) throws RecipientRewriteTableException {
+        prefilter.add(source(user, domain));
+        delegate.addAddressMapping(user, domain, address);
+    }
+
+    @Override
+    public void removeAddressMapping(String user, String domain, String address) throws RecipientRewriteTableException {
+        delegate.removeAddressMapping(user, domain, address);
+        removeSourceIfUnused(user, domain);
+    }
+
+    @Override
+    public void addErrorMapping(String user, String domain, String error) throws RecipientRewriteTableException {
+        prefilter.add(source(user, domain));
+        delegate.addErrorMapping(user, domain, error);
+    }
+
+    @Override
+    public void removeErrorMapping(String user, String domain, String error) throws RecipientRewriteTableException {
+        delegate.removeErrorMapping(user, domain, error);
+        removeSourceIfUnused(user, domain);
+    }
+
+    @Override
+    public Mappings getUserDomainMappings(String user, String domain) throws RecipientRewriteTableException {
+        return delegate.getUserDomainMappings(user, domain);
+    }
+
+    @Override
+    public void addMapping(String user, String domain, String mapping) throws RecipientRewriteTableException {
+        prefilter.add(source(user, domain));
+        delegate.addMapping(user, domain, mapping);
+    }
+
+    @Override
+    public void removeMapping(String user, String domain, String mapping) throws RecipientRewriteTableException {
+        delegate.removeMapping(user, domain, mapping);
+        removeSourceIfUnused(user, domain);
+    }
+
+    @Override
+    public Map<String, Mappings> getAllMappings() throws RecipientRewriteTableException {
+        return delegate.getAllMappings();
+    }
+
+    @Override
+    public void addAliasDomainMapping(String aliasDomain, String realDomain) throws RecipientRewriteTableException {
+        prefilter.add(source(WILDCARD, aliasDomain));
+        delegate.addAliasDomainMapping(aliasDomain, realDomain);
+    }
+
+    @Override
+    public void removeAliasDomainMapping(String aliasDomain, String realDomain) throws RecipientRewriteTableException {
+        delegate.removeAliasDomainMapping(aliasDomain, realDomain);
+        removeSourceIfUnused(WILDCARD, aliasDomain);
+    }
+
+    private void removeSourceIfUnused(String user, String domain) throws RecipientRewriteTableException {
+        Mappings remaining = delegate.getUserDomainMappings(user, domain);
+        if (remaining == null || remaining.isEmpty()) {
+            prefilter.remove(source(user, domain));
+        }
+    }
+
+}
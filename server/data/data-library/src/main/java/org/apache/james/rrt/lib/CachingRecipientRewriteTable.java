@@ -0,0 +1,259 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.rrt.lib;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.rrt.api.RecipientRewriteTable;
+import org.apache.james.rrt.api.RecipientRewriteTableException;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * {@link RecipientRewriteTable} decorator caching the fully resolved result of
+ * {@link #getMappings(String, String)}, including the absence of mappings and
+ * error mappings.
+ * 
+ * A resolved mapping chain depends on the mappings of several addresses, so
+ * the whole cache is invalidated by any modification done through this
+ * decorator. Modifications done through another instance, for instance on
+ * another node of a cluster, are only seen once cached entries expire.
+ */
+public class CachingRecipientRewriteTable implements RecipientRewriteTable {
+
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+    public static final long DEFAULT_EXPIRATION_IN_SECONDS = 60;
+    public static final String HIT_METRIC_NAME = "recipientRewriteTableCacheHit";
+    public static final String MISS_METRIC_NAME = "recipientRewriteTableCacheMiss";
+
+    private static class Key {
+        private final String user;
+        private final String domain;
+
+        private Key(String user, String domain) {
+            this.user = user;
+            this.domain = domain;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key other = (Key) o;
+                return Objects.equal(user, other.user)
+                    && Objects.equal(domain, other.domain);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(user, domain);
+        }
+    }
+
+    /**
+     * Outcome of a resolution: either some mappings, no mapping at all, or an
+     * error mapping.
+     */
+    private static class Resolution {
+        private final Mappings mappings;
+        private final String error;
+
+        private Resolution(Mappings mappings, String error) {
+            this.mappings = mappings;
+            this.error = error;
+        }
+
+        private Mappings get() throws ErrorMappingException {
+            if (error != null) {
+                throw new ErrorMappingException(error);
+            }
+            return mappings;
+        }
+    }
+
+    private final RecipientRewriteTable delegate;
+    private final Cache<Key, Resolution> resolutions;
+    /**
+     * Incremented on each invalidation, so that resolutions computed
+     * concurrently with a modification are not kept.
+     */
+    private final AtomicLong generation;
+    private final Metric hitMetric;
+    private final Metric missMetric;
+
+    public CachingRecipientRewriteTable(RecipientRewriteTable delegate, MetricFactory metricFactory) {
+        this(delegate, metricFactory, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRATION_IN_SECONDS);
+    }
+
+    public CachingRecipientRewriteTable(RecipientRewriteTable delegate, MetricFactory metricFactory, long maximumSize, long expirationInSeconds) {
+        Preconditions.checkArgument(maximumSize >= 0, "maximumSize should not be negative");
+        Preconditions.checkArgument(expirationInSeconds > 0, "expirationInSeconds should be strictly positive");
+        this.delegate = delegate;
+        this.resolutions = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(expirationInSeconds, TimeUnit.SECONDS)
+            .build();
+        this.generation = new AtomicLong();
+        this.hitMetric = metricFactory.generate(HIT_METRIC_NAME);
+        this.missMetric = metricFactory.generate(MISS_METRIC_NAME);
+    }
+
+    @Override
+    public Mappings getMappings(String user, String domain) throws ErrorMappingException, RecipientRewriteTableException {
+        Key key = new Key(user, domain);
+        Resolution cached = resolutions.getIfPresent(key);
+        if (cached != null) {
+            hitMetric.increment();
+            return cached.get();
+        }
+        missMetric.increment();
+        long resolutionGeneration = generation.get();
+        Resolution resolution = resolve(user, domain);
+        resolutions.put(key, resolution);
+        if (generation.get() != resolutionGeneration) {
+            resolutions.invalidate(key);
+        }
+        return resolution.get();
+    }
+
+    private Resolution resolve(String user, String domain) throws RecipientRewriteTableException {
+        try {
+            return new Resolution(delegate.getMappings(user, domain), null);
+        } catch (ErrorMappingException e) {
+            return new Resolution(null, e.getMessage());
+        }
+    }
+
+    /**
+     * Drop all the cached resolutions.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        resolutions.invalidateAll();
+    }
+
+    @Override
+    public void addRegexMapping(String user, String domain, String regex) throws RecipientRewriteTableException {
+        try {
+            delegate.addRegexMapping(user, domain, regex);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void removeRegexMapping(String user, String domain, String regex) throws RecipientRewriteTableException {
+        try {
+            delegate.removeRegexMapping(user, domain, regex);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void addAddressMapping(String user, String domain, String address) throws RecipientRewriteTableException {
+        try {
+            delegate.addAddressMapping(user, domain, address);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void removeAddressMapping(String user, String domain, String address) throws RecipientRewriteTableException {
+        try {
+            delegate.removeAddressMapping(user, domain, address);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void addErrorMapping(String user, String domain, String error) throws RecipientRewriteTableException {
+        try {
+            delegate.addErrorMapping(user, domain, error);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void removeErrorMapping(String user, String domain, String error) throws RecipientRewriteTableException {
+        try {
+            delegate.removeErrorMapping(user, domain, error);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public Mappings getUserDomainMappings(String user, String domain) throws RecipientRewriteTableException {
+        return delegate.getUserDomainMappings(user, domain);
+    }
+
+    @Override
+    public void addMapping(String user, String domain, String mapping) throws RecipientRewriteTableException {
+        try {
+            delegate.addMapping(user, domain, mapping);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void removeMapping(String user, String domain, String mapping) throws RecipientRewriteTableException {
+        try {
+            delegate.removeMapping(user, domain, mapping);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public Map<String, Mappings> getAllMappings() throws RecipientRewriteTableException {
+        return delegate.getAllMappings();
+    }
+
+    @Override
+    public void addAliasDomainMapping(String aliasDomain, String realDomain) throws RecipientRewriteTableException {
+        try {
+            delegate.addAliasDomainMapping(aliasDomain, realDomain);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    @Override
+    public void removeAliasDomainMapping(String aliasDomain, String realDomain) throws RecipientRewriteTableException {
+        try {
+            delegate.removeAliasDomainMapping(aliasDomain, realDomain);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+}
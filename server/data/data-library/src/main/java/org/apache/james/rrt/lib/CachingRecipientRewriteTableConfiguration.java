@@ -0,0 +1,96 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.rrt.lib;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.ConversionException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Describes whether and how a {@link org.apache.james.rrt.api.RecipientRewriteTable} is decorated with a
+ * {@link CachingRecipientRewriteTable}.
+ * <p>
+ * Cached resolutions only see the modifications done through the same JVM. When several nodes share the same
+ * mappings, a modification done on another node is only seen once the cached resolutions expire, so the cache should
+ * only be enabled on single node deployments, or when such a delay is acceptable.
+ * </p>
+ */
+public class CachingRecipientRewriteTableConfiguration {
+
+    public static final CachingRecipientRewriteTableConfiguration DISABLED = new CachingRecipientRewriteTableConfiguration(false,
+        CachingRecipientRewriteTable.DEFAULT_MAXIMUM_SIZE, CachingRecipientRewriteTable.DEFAULT_EXPIRATION_IN_SECONDS);
+
+    /**
+     * Read the cache element of a recipient rewrite table configuration, for instance
+     *
+     * <pre>
+     * &lt;cache enabled="true" maximumSize="10000" expirationInSeconds="60"/&gt;
+     * </pre>
+     *
+     * @param enabledByDefault whether the cache is enabled when the enabled
+     *            attribute is missing
+     */
+    public static CachingRecipientRewriteTableConfiguration from(HierarchicalConfiguration config, boolean enabledByDefault) throws ConfigurationException {
+        try {
+            if (!config.getBoolean("cache[@enabled]", enabledByDefault)) {
+                return DISABLED;
+            }
+            return new CachingRecipientRewriteTableConfiguration(true,
+                config.getLong("cache[@maximumSize]", CachingRecipientRewriteTable.DEFAULT_MAXIMUM_SIZE),
+                config.getLong("cache[@expirationInSeconds]", CachingRecipientRewriteTable.DEFAULT_EXPIRATION_IN_SECONDS));
+        } catch (ConversionException e) {
+            throw new ConfigurationException("Invalid cache configuration", e);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid cache configuration", e);
+        }
+    }
+
+    private final boolean enabled;
+    private final long maximumSize;
+    private final long expirationInSeconds;
+
+    public CachingRecipientRewriteTableConfiguration(boolean enabled, long maximumSize, long expirationInSeconds) {
+        Preconditions.checkArgument(maximumSize >= 0, "maximumSize should not be negative");
+        Preconditions.checkArgument(expirationInSeconds > 0, "expirationInSeconds should be strictly positive");
+        this.enabled = enabled;
+        this.maximumSize = maximumSize;
+        this.expirationInSeconds = expirationInSeconds;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getExpirationInSeconds() {
+        return expirationInSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "CachingRecipientRewriteTableConfiguration{enabled=" + enabled + ", maximumSize=" + maximumSize
+            + ", expirationInSeconds=" + expirationInSeconds + "}";
+    }
+}
@@ -28,6 +28,12 @@ import java.util.regex.PatternSyntaxException;
 import org.apache.james.rrt.api.RecipientRewriteTable;
 import org.apache.mailet.MailAddress;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
 /**
  * This helper class contains methods for the RecipientRewriteTable implementations
  */
@@ -36,6 +42,19 @@ public class RecipientRewriteTableUtil {
     private RecipientRewriteTableUtil() {
     }
 
+    /**
+     * Regex mappings are evaluated for each lookup: keep their compiled
+     * patterns.
+     */
+    private static final LoadingCache<String, Pattern> COMPILED_PATTERNS = CacheBuilder.newBuilder()
+        .maximumSize(1000)
+        .build(new CacheLoader<String, Pattern>() {
+            @Override
+            public Pattern load(String regex) {
+                return Pattern.compile(regex);
+            }
+        });
+
     // @deprecated QUERY is deprecated - SQL queries are now located in
     // sqlResources.xml
     public static final String QUERY = "select RecipientRewriteTable.target_address from RecipientRewriteTable, RecipientRewriteTable as VUTDomains where (RecipientRewriteTable.user like ? or RecipientRewriteTable.user like '\\%') and (RecipientRewriteTable.domain like ? or (RecipientRewriteTable.domain like '%*%' and VUTDomains.domain like ?)) order by concat(RecipientRewriteTable.user,'@',RecipientRewriteTable.domain) desc limit 1";
@@ -70,7 +89,7 @@ public class RecipientRewriteTableUtil {
         // log("regex: address = " + address.toString());
         // log("regex: replace = " + targetString.substring(msgPos + 1));
 
-        Pattern pattern = Pattern.compile(targetString.substring(identifierLength, msgPos));
+        Pattern pattern = compile(targetString.substring(identifierLength, msgPos));
         Matcher match = pattern.matcher(address.toString());
 
         if (match.matches()) {
@@ -83,6 +102,14 @@ public class RecipientRewriteTableUtil {
         return result;
     }
 
+    private static Pattern compile(String regex) {
+        try {
+            return COMPILED_PATTERNS.getUnchecked(regex);
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
     /**
      * Returns a named string, replacing parameters with the values set.
      * 
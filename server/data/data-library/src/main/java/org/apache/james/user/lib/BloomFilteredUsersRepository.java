@@ -0,0 +1,136 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.user.lib;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.user.api.UsersRepository;
+import org.apache.james.user.api.UsersRepositoryException;
+import org.apache.james.user.api.model.User;
+import org.apache.james.user.lib.util.MembershipPrefilter;
+import org.apache.james.user.lib.util.MembershipPrefilterConfiguration;
+import org.apache.mailet.MailAddress;
+
+/**
+ * {@link UsersRepository} decorator answering {@link #contains(String)} and
+ * {@link #test(String, String)} without querying the underlying repository
+ * for users that definitely do not exist, using a {@link MembershipPrefilter}
+ * over the user names.
+ * 
+ * Users added through this decorator are taken into account immediately.
+ * Users added through another instance, for instance on another node of a
+ * cluster, are only seen once the prefilter is refreshed: until then they are
+ * reported as missing, see {@link MembershipPrefilterConfiguration}. Removed
+ * users may still be looked up in the underlying repository until then.
+ */
+public class BloomFilteredUsersRepository implements UsersRepository {
+
+    public static final String METRIC_PREFIX = "usersRepository";
+
+    private final UsersRepository delegate;
+    private final MembershipPrefilter prefilter;
+
+    public BloomFilteredUsersRepository(UsersRepository delegate, MetricFactory metricFactory) {
+        this(delegate, metricFactory, MembershipPrefilterConfiguration.DEFAULT);
+    }
+
+    public BloomFilteredUsersRepository(UsersRepository delegate, MetricFactory metricFactory, MembershipPrefilterConfiguration configuration) {
+        this.delegate = delegate;
+        this.prefilter = new MembershipPrefilter(METRIC_PREFIX, userNames(delegate), metricFactory, configuration);
+    }
+
+    public BloomFilteredUsersRepository(UsersRepository delegate, MembershipPrefilter prefilter) {
+        this.delegate = delegate;
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * Key source to be given to a {@link MembershipPrefilter} used by this
+     * decorator.
+     */
+    public static Callable<Iterator<String>> userNames(final UsersRepository usersRepository) {
+        return new Callable<Iterator<String>>() {
+            @Override
+            public Iterator<String> call() throws UsersRepositoryException {
+                return usersRepository.list();
+            }
+        };
+    }
+
+    @Override
+    public void addUser(String username, String password) throws UsersRepositoryException {
+        prefilter.add(username);
+        delegate.addUser(username, password);
+    }
+
+    @Override
+    public User getUserByName(String name) throws UsersRepositoryException {
+        return delegate.getUserByName(name);
+    }
+
+    @Override
+    public void updateUser(User user) throws UsersRepositoryException {
+        delegate.updateUser(user);
+    }
+
+    @Override
+    public void removeUser(String name) throws UsersRepositoryException {
+        delegate.removeUser(name);
+        prefilter.remove(name);
+    }
+
+    @Override
+    public boolean contains(String name) throws UsersRepositoryException {
+        return prefilter.mightContainAny(name) && delegate.contains(name);
+    }
+
+    @Override
+    public boolean test(String name, String password) throws UsersRepositoryException {
+        return prefilter.mightContainAny(name) && delegate.test(name, password);
+    }
+
+    @Override
+    public int countUsers() throws UsersRepositoryException {
+        return delegate.countUsers();
+    }
+
+    @Override
+    public Iterator<String> list() throws UsersRepositoryException {
+        return delegate.list();
+    }
+
+    @Override
+    public boolean supportVirtualHosting() throws UsersRepositoryException {
+        return delegate.supportVirtualHosting();
+    }
+
+    @Override
+    public String getUser(MailAddress mailAddress) throws UsersRepositoryException {
+        return delegate.getUser(mailAddress);
+    }
+
+    @Override
+    public boolean isAdministrator(String username) throws UsersRepositoryException {
+        return delegate.isAdministrator(username);
+    }
+
+}
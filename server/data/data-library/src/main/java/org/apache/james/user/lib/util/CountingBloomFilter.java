@@ -0,0 +1,182 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.user.lib.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+
+/**
+ * Bloom filter over {@link String} keys, backed by 4 bits counters instead of
+ * single bits so that keys can be removed.
+ * 
+ * A counter reaching its maximum value is never decremented again, so that an
+ * overflow can only cause false positives. {@link #remove(String)} must only
+ * be called for keys that were previously added.
+ * 
+ * This class is thread safe. Counters are updated with compare and set
+ * operations, and lookups do not lock.
+ */
+public class CountingBloomFilter {
+
+    private static final int BITS_PER_COUNTER = 4;
+    private static final int COUNTERS_PER_WORD = Long.SIZE / BITS_PER_COUNTER;
+    private static final long MAX_COUNT = (1L << BITS_PER_COUNTER) - 1;
+    private static final long MIN_COUNTER_COUNT = COUNTERS_PER_WORD;
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /**
+     * Create a filter sized for the given number of keys and false positive
+     * probability, using at most maxMemoryInBytes for its counters.
+     */
+    public static CountingBloomFilter create(long expectedInsertions, double falsePositiveProbability, long maxMemoryInBytes) {
+        Preconditions.checkArgument(expectedInsertions > 0, "expectedInsertions should be strictly positive");
+        Preconditions.checkArgument(falsePositiveProbability > 0 && falsePositiveProbability < 1, "falsePositiveProbability should be in ]0, 1[");
+        Preconditions.checkArgument(maxMemoryInBytes > 0, "maxMemoryInBytes should be strictly positive");
+        long maxCounterCount = Math.min(maxMemoryInBytes * Byte.SIZE / BITS_PER_COUNTER, (long) Integer.MAX_VALUE * COUNTERS_PER_WORD);
+        long counterCount = Math.max(MIN_COUNTER_COUNT, Math.min(optimalCounterCount(expectedInsertions, falsePositiveProbability), maxCounterCount));
+        return new CountingBloomFilter(counterCount, optimalHashFunctionCount(expectedInsertions, counterCount));
+    }
+
+    private static long optimalCounterCount(long expectedInsertions, double falsePositiveProbability) {
+        return (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+    }
+
+    private static int optimalHashFunctionCount(long expectedInsertions, long counterCount) {
+        return Math.max(1, (int) Math.round((double) counterCount / expectedInsertions * Math.log(2)));
+    }
+
+    private final AtomicLongArray words;
+    private final long counterCount;
+    private final int hashFunctionCount;
+
+    private CountingBloomFilter(long counterCount, int hashFunctionCount) {
+        int wordCount = (int) ((counterCount + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD);
+        this.words = new AtomicLongArray(wordCount);
+        this.counterCount = (long) wordCount * COUNTERS_PER_WORD;
+        this.hashFunctionCount = hashFunctionCount;
+    }
+
+    public void add(String key) {
+        for (long index : indexes(key)) {
+            increment(index);
+        }
+    }
+
+    public void remove(String key) {
+        if (!mightContain(key)) {
+            return;
+        }
+        for (long index : indexes(key)) {
+            decrement(index);
+        }
+    }
+
+    /**
+     * @return false if the key was definitely not added, true if it might have
+     *         been
+     */
+    public boolean mightContain(String key) {
+        for (long index : indexes(key)) {
+            if (count(index) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Memory used by the counters.
+     */
+    public long getMemoryInBytes() {
+        return (long) words.length() * Long.SIZE / Byte.SIZE;
+    }
+
+    public int getHashFunctionCount() {
+        return hashFunctionCount;
+    }
+
+    /**
+     * False positive probability once the given number of keys are stored.
+     */
+    public double expectedFalsePositiveProbability(long insertions) {
+        return Math.pow(1 - Math.exp(-(double) hashFunctionCount * insertions / counterCount), hashFunctionCount);
+    }
+
+    private long[] indexes(String key) {
+        byte[] hash = HASH_FUNCTION.hashString(key, Charsets.UTF_8).asBytes();
+        long hash1 = Longs.fromByteArray(hash);
+        long hash2 = Longs.fromByteArray(Arrays.copyOfRange(hash, Longs.BYTES, 2 * Longs.BYTES));
+        long[] indexes = new long[hashFunctionCount];
+        long combinedHash = hash1;
+        for (int i = 0; i < hashFunctionCount; i++) {
+            indexes[i] = (combinedHash & Long.MAX_VALUE) % counterCount;
+            combinedHash += hash2;
+        }
+        return indexes;
+    }
+
+    private long count(long index) {
+        return (words.get(wordIndex(index)) >>> shift(index)) & MAX_COUNT;
+    }
+
+    private void increment(long index) {
+        int wordIndex = wordIndex(index);
+        int shift = shift(index);
+        while (true) {
+            long word = words.get(wordIndex);
+            if (((word >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                return;
+            }
+            if (words.compareAndSet(wordIndex, word, word + (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private void decrement(long index) {
+        int wordIndex = wordIndex(index);
+        int shift = shift(index);
+        while (true) {
+            long word = words.get(wordIndex);
+            long count = (word >>> shift) & MAX_COUNT;
+            if (count == 0 || count == MAX_COUNT) {
+                return;
+            }
+            if (words.compareAndSet(wordIndex, word, word - (1L << shift))) {
+                return;
+            }
+        }
+    }
+
+    private int wordIndex(long index) {
+        return (int) (index / COUNTERS_PER_WORD);
+    }
+
+    private int shift(long index) {
+        return (int) (index % COUNTERS_PER_WORD) * BITS_PER_COUNTER;
+    }
+
+}
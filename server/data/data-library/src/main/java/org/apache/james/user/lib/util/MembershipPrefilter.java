@@ -0,0 +1,298 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.user.lib.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * In memory membership prefilter over the keys of a repository, backed by a
+ * {@link CountingBloomFilter}.
+ * 
+ * The filter is built from a full listing of the keys in a background thread,
+ * and kept up to date by {@link #add(String)} and {@link #remove(String)} for
+ * the modifications done through this JVM. It is rebuilt every refresh
+ * interval in order to take into account modifications done elsewhere, for
+ * instance on another node of a cluster, and as soon as more keys were added
+ * than it was sized for.
+ * 
+ * Until the first listing completes, or if it fails, every key is reported as
+ * possibly present. Keys are compared case insensitively.
+ * 
+ * A removal only updates the filter for keys added through {@link #add(String)}
+ * since it was built: a key added on another node may not be in this filter,
+ * and decrementing its counters would hide other keys. Other removed keys stay
+ * reported as possibly present until the next rebuild.
+ */
+public class MembershipPrefilter {
+
+    public static final long DEFAULT_EXPECTED_INSERTIONS = 100000;
+    public static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+    public static final long DEFAULT_MAX_MEMORY_IN_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_REFRESH_INTERVAL_IN_SECONDS = 60;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MembershipPrefilter.class);
+    private static final int PPM = 1000000;
+
+    private final String name;
+    private final Callable<Iterator<String>> keySource;
+    private final Executor rebuildExecutor;
+    private final long expectedInsertions;
+    private final double falsePositiveProbability;
+    private final long maxMemoryInBytes;
+    private final long refreshIntervalInMillis;
+
+    private volatile Generation generation;
+    private volatile long capacity;
+    private volatile long nextRebuild;
+    private final AtomicLong insertions;
+    private final AtomicBoolean rebuilding;
+    /**
+     * Keys added while a listing is in progress, replayed in the rebuilt
+     * filter.
+     */
+    private final Queue<String> addedDuringRebuild;
+
+    private final Metric definiteNegativeMetric;
+    private final Metric possiblePositiveMetric;
+    private final Metric unavailableMetric;
+    private final Metric sizeMetric;
+    private final Metric memoryMetric;
+    private final Metric falsePositivePpmMetric;
+    private long publishedSize;
+    private long publishedMemory;
+    private int publishedFalsePositivePpm;
+
+    public MembershipPrefilter(String name, Callable<Iterator<String>> keySource, MetricFactory metricFactory) {
+        this(name, keySource, metricFactory, DEFAULT_EXPECTED_INSERTIONS, DEFAULT_FALSE_POSITIVE_PROBABILITY,
+            DEFAULT_MAX_MEMORY_IN_BYTES, DEFAULT_REFRESH_INTERVAL_IN_SECONDS);
+    }
+
+    public MembershipPrefilter(String name, Callable<Iterator<String>> keySource, MetricFactory metricFactory,
+                               MembershipPrefilterConfiguration configuration) {
+        this(name, keySource, metricFactory, configuration.getExpectedInsertions(), configuration.getFalsePositiveProbability(),
+            configuration.getMaxMemoryInBytes(), configuration.getRefreshIntervalInSeconds());
+    }
+
+    public MembershipPrefilter(String name, Callable<Iterator<String>> keySource, MetricFactory metricFactory,
+                               long expectedInsertions, double falsePositiveProbability, long maxMemoryInBytes,
+                               long refreshIntervalInSeconds) {
+        this(name, keySource, metricFactory, expectedInsertions, falsePositiveProbability, maxMemoryInBytes,
+            refreshIntervalInSeconds, Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat(name + "-prefilter-rebuild").build()));
+    }
+
+    public MembershipPrefilter(String name, Callable<Iterator<String>> keySource, MetricFactory metricFactory,
+                               long expectedInsertions, double falsePositiveProbability, long maxMemoryInBytes,
+                               long refreshIntervalInSeconds, Executor rebuildExecutor) {
+        Preconditions.checkArgument(expectedInsertions > 0, "expectedInsertions should be strictly positive");
+        Preconditions.checkArgument(falsePositiveProbability > 0 && falsePositiveProbability < 1, "falsePositiveProbability should be in ]0, 1[");
+        Preconditions.checkArgument(maxMemoryInBytes > 0, "maxMemoryInBytes should be strictly positive");
+        Preconditions.checkArgument(refreshIntervalInSeconds > 0, "refreshIntervalInSeconds should be strictly positive");
+        this.name = name;
+        this.keySource = keySource;
+        this.rebuildExecutor = rebuildExecutor;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.maxMemoryInBytes = maxMemoryInBytes;
+        this.refreshIntervalInMillis = TimeUnit.SECONDS.toMillis(refreshIntervalInSeconds);
+        this.insertions = new AtomicLong();
+        this.rebuilding = new AtomicBoolean();
+        this.addedDuringRebuild = new ConcurrentLinkedQueue<String>();
+        this.definiteNegativeMetric = metricFactory.generate(name + "PrefilterDefiniteNegative");
+        this.possiblePositiveMetric = metricFactory.generate(name + "PrefilterPossiblePositive");
+        this.unavailableMetric = metricFactory.generate(name + "PrefilterUnavailable");
+        this.sizeMetric = metricFactory.generate(name + "PrefilterSize");
+        this.memoryMetric = metricFactory.generate(name + "PrefilterMemoryInBytes");
+        this.falsePositivePpmMetric = metricFactory.generate(name + "PrefilterFalsePositivePpm");
+    }
+
+    /**
+     * @return false if none of the given keys is present, true if one of them
+     *         might be, or if the filter is not built yet
+     */
+    public boolean mightContainAny(String... keys) {
+        rebuildIfNeeded();
+        Generation current = generation;
+        if (current == null) {
+            unavailableMetric.increment();
+            return true;
+        }
+        for (String key : keys) {
+            if (current.filter.mightContain(normalize(key))) {
+                possiblePositiveMetric.increment();
+                return true;
+            }
+        }
+        definiteNegativeMetric.increment();
+        return false;
+    }
+
+    /**
+     * Record a key added to the underlying repository. Should be called
+     * before the key is actually added, so that lookups never miss it.
+     */
+    public void add(String key) {
+        String normalizedKey = normalize(key);
+        if (rebuilding.get()) {
+            addedDuringRebuild.add(normalizedKey);
+        }
+        Generation current = generation;
+        if (current != null) {
+            current.add(normalizedKey);
+            if (insertions.incrementAndGet() > capacity) {
+                nextRebuild = 0;
+            }
+        }
+    }
+
+    /**
+     * Record a key removed from the underlying repository. The filter is only
+     * updated if the key was added through {@link #add(String)} since it was
+     * built, otherwise the key stays reported as possibly present until the
+     * next rebuild.
+     */
+    public void remove(String key) {
+        Generation current = generation;
+        if (current != null) {
+            current.removeIfAdded(normalize(key));
+        }
+    }
+
+    public boolean isReady() {
+        return generation != null;
+    }
+
+    private String normalize(String key) {
+        return key.toLowerCase(Locale.US);
+    }
+
+    private void rebuildIfNeeded() {
+        if (System.currentTimeMillis() >= nextRebuild && rebuilding.compareAndSet(false, true)) {
+            nextRebuild = System.currentTimeMillis() + refreshIntervalInMillis;
+            try {
+                rebuildExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        rebuild();
+                    }
+                });
+            } catch (RuntimeException e) {
+                rebuilding.set(false);
+                LOGGER.warn("Could not schedule the rebuild of the {} prefilter", name, e);
+            }
+        }
+    }
+
+    private void rebuild() {
+        try {
+            List<String> keys = new ArrayList<String>();
+            Iterator<String> iterator = keySource.call();
+            while (iterator.hasNext()) {
+                keys.add(normalize(iterator.next()));
+            }
+            long newCapacity = Math.max(expectedInsertions, 2L * keys.size());
+            CountingBloomFilter newFilter = CountingBloomFilter.create(newCapacity, falsePositiveProbability, maxMemoryInBytes);
+            for (String key : keys) {
+                newFilter.add(key);
+            }
+            Generation newGeneration = new Generation(newFilter);
+            insertions.set(keys.size());
+            capacity = newCapacity;
+            generation = newGeneration;
+            replayAddedDuringRebuild(newGeneration);
+            rebuilding.set(false);
+            // keys added between the first replay and the end of the rebuild
+            replayAddedDuringRebuild(newGeneration);
+            publishMetrics(newFilter, keys.size(), newCapacity);
+        } catch (Exception e) {
+            LOGGER.warn("Could not rebuild the {} prefilter", name, e);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private void replayAddedDuringRebuild(Generation newGeneration) {
+        String key;
+        while ((key = addedDuringRebuild.poll()) != null) {
+            newGeneration.add(key);
+            insertions.incrementAndGet();
+        }
+    }
+
+    private synchronized void publishMetrics(CountingBloomFilter newFilter, long size, long newCapacity) {
+        sizeMetric.add((int) (size - publishedSize));
+        publishedSize = size;
+        memoryMetric.add((int) (newFilter.getMemoryInBytes() - publishedMemory));
+        publishedMemory = newFilter.getMemoryInBytes();
+        int falsePositivePpm = (int) Math.round(newFilter.expectedFalsePositiveProbability(newCapacity) * PPM);
+        falsePositivePpmMetric.add(falsePositivePpm - publishedFalsePositivePpm);
+        publishedFalsePositivePpm = falsePositivePpm;
+    }
+
+    /**
+     * A filter together with the keys added to it after the listing it was
+     * built from, which are the only ones that can safely be removed from it.
+     */
+    private static class Generation {
+
+        private final CountingBloomFilter filter;
+        private final Set<String> addedKeys;
+
+        private Generation(CountingBloomFilter filter) {
+            this.filter = filter;
+            this.addedKeys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        }
+
+        private void add(String key) {
+            if (addedKeys.add(key)) {
+                filter.add(key);
+            }
+        }
+
+        private void removeIfAdded(String key) {
+            if (addedKeys.remove(key)) {
+                filter.remove(key);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.user.lib.util;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.ConversionException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Describes whether and how a repository is decorated with a
+ * {@link MembershipPrefilter}.
+ * <p>
+ * A prefilter only sees the keys added through its own JVM between two
+ * refreshes. When several nodes share the same repository, a key added on
+ * another node is reported as definitely absent until the next refresh, so
+ * the prefilter should only be enabled on single node deployments, or when
+ * such a delay is acceptable.
+ * </p>
+ */
+public class MembershipPrefilterConfiguration {
+
+    public static final MembershipPrefilterConfiguration DISABLED = new MembershipPrefilterConfiguration(false,
+        MembershipPrefilter.DEFAULT_EXPECTED_INSERTIONS, MembershipPrefilter.DEFAULT_FALSE_POSITIVE_PROBABILITY,
+        MembershipPrefilter.DEFAULT_MAX_MEMORY_IN_BYTES, MembershipPrefilter.DEFAULT_REFRESH_INTERVAL_IN_SECONDS);
+
+    public static final MembershipPrefilterConfiguration DEFAULT = new MembershipPrefilterConfiguration(true,
+        MembershipPrefilter.DEFAULT_EXPECTED_INSERTIONS, MembershipPrefilter.DEFAULT_FALSE_POSITIVE_PROBABILITY,
+        MembershipPrefilter.DEFAULT_MAX_MEMORY_IN_BYTES, MembershipPrefilter.DEFAULT_REFRESH_INTERVAL_IN_SECONDS);
+
+    /**
+     * Read the prefilter element of a repository configuration, for instance
+     *
+     * <pre>
+     * &lt;prefilter enabled="true" expectedInsertions="100000" falsePositiveProbability="0.01"
+     *     maxMemoryInBytes="67108864" refreshIntervalInSeconds="60"/&gt;
+     * </pre>
+     *
+     * @param enabledByDefault whether the prefilter is enabled when the
+     *            enabled attribute is missing
+     */
+    public static MembershipPrefilterConfiguration from(HierarchicalConfiguration config, boolean enabledByDefault) throws ConfigurationException {
+        try {
+            if (!config.getBoolean("prefilter[@enabled]", enabledByDefault)) {
+                return DISABLED;
+            }
+            return new MembershipPrefilterConfiguration(true,
+                config.getLong("prefilter[@expectedInsertions]", MembershipPrefilter.DEFAULT_EXPECTED_INSERTIONS),
+                config.getDouble("prefilter[@falsePositiveProbability]", MembershipPrefilter.DEFAULT_FALSE_POSITIVE_PROBABILITY),
+                config.getLong("prefilter[@maxMemoryInBytes]", MembershipPrefilter.DEFAULT_MAX_MEMORY_IN_BYTES),
+                config.getLong("prefilter[@refreshIntervalInSeconds]", MembershipPrefilter.DEFAULT_REFRESH_INTERVAL_IN_SECONDS));
+        } catch (ConversionException e) {
+            throw new ConfigurationException("Invalid prefilter configuration", e);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid prefilter configuration", e);
+        }
+    }
+
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double falsePositiveProbability;
+    private final long maxMemoryInBytes;
+    private final long refreshIntervalInSeconds;
+
+    public MembershipPrefilterConfiguration(boolean enabled, long expectedInsertions, double falsePositiveProbability,
+                                            long maxMemoryInBytes, long refreshIntervalInSeconds) {
+        Preconditions.checkArgument(expectedInsertions > 0, "expectedInsertions should be strictly positive");
+        Preconditions.checkArgument(falsePositiveProbability > 0 && falsePositiveProbability < 1, "falsePositiveProbability should be in ]0, 1[");
+        Preconditions.checkArgument(maxMemoryInBytes > 0, "maxMemoryInBytes should be strictly positive");
+        Preconditions.checkArgument(refreshIntervalInSeconds > 0, "refreshIntervalInSeconds should be strictly positive");
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.maxMemoryInBytes = maxMemoryInBytes;
+        this.refreshIntervalInSeconds = refreshIntervalInSeconds;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public double getFalsePositiveProbability() {
+        return falsePositiveProbability;
+    }
+
+    public long getMaxMemoryInBytes() {
+        return maxMemoryInBytes;
+    }
+
+    public long getRefreshIntervalInSeconds() {
+        return refreshIntervalInSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "MembershipPrefilterConfiguration{enabled=" + enabled + ", expectedInsertions=" + expectedInsertions
+            + ", falsePositiveProbability=" + falsePositiveProbability + ", maxMemoryInBytes=" + maxMemoryInBytes
+            + ", refreshIntervalInSeconds=" + refreshIntervalInSeconds + "}";
+    }
+}
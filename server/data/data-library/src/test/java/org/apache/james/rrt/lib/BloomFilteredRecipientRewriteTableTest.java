@@ -0,0 +1,160 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.rrt.lib;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.rrt.api.RecipientRewriteTable;
+import org.apache.james.user.lib.util.MembershipPrefilter;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class BloomFilteredRecipientRewriteTableTest {
+
+    private static final String USER = "user";
+    private static final String OTHER_USER = "other";
+    private static final String DOMAIN = "domain.org";
+    private static final String OTHER_DOMAIN = "other.org";
+    private static final Mappings MAPPINGS = MappingsImpl.fromRawString("target@domain.org");
+
+    private RecipientRewriteTable delegate;
+    private BloomFilteredRecipientRewriteTable testee;
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(RecipientRewriteTable.class);
+        when(delegate.getAllMappings()).thenReturn(ImmutableMap.of(USER + "@" + DOMAIN, MAPPINGS));
+        testee = new BloomFilteredRecipientRewriteTable(delegate, prefilter());
+    }
+
+    private MembershipPrefilter prefilter() {
+        return new MembershipPrefilter("test",
+            BloomFilteredRecipientRewriteTable.mappingSources(delegate),
+            mock(MetricFactory.class, RETURNS_MOCKS),
+            MembershipPrefilter.DEFAULT_EXPECTED_INSERTIONS,
+            MembershipPrefilter.DEFAULT_FALSE_POSITIVE_PROBABILITY,
+            MembershipPrefilter.DEFAULT_MAX_MEMORY_IN_BYTES,
+            MembershipPrefilter.DEFAULT_REFRESH_INTERVAL_IN_SECONDS,
+            MoreExecutors.directExecutor());
+    }
+
+    @Test
+    public void getMappingsShouldNotQueryTheDelegateForUnknownSources() throws Exception {
+        assertThat(testee.getMappings(OTHER_USER, DOMAIN)).isNull();
+        verify(delegate, never()).getMappings(OTHER_USER, DOMAIN);
+    }
+
+    @Test
+    public void getMappingsShouldQueryTheDelegateForKnownSources() throws Exception {
+        when(delegate.getMappings(USER, DOMAIN)).thenReturn(MAPPINGS);
+
+        assertThat(testee.getMappings(USER, DOMAIN)).isEqualTo(MAPPINGS);
+    }
+
+    @Test
+    public void getMappingsShouldQueryTheDelegateWhenTheDomainHasAWildcardMapping() throws Exception {
+        when(delegate.getAllMappings()).thenReturn(ImmutableMap.of(RecipientRewriteTable.WILDCARD + "@" + DOMAIN, MAPPINGS));
+        testee = new BloomFilteredRecipientRewriteTable(delegate, prefilter());
+        when(delegate.getMappings(OTHER_USER, DOMAIN)).thenReturn(MAPPINGS);
+
+        assertThat(testee.getMappings(OTHER_USER, DOMAIN)).isEqualTo(MAPPINGS);
+    }
+
+    @Test
+    public void getMappingsShouldQueryTheDelegateWhenTheUserHasAWildcardMapping() throws Exception {
+        when(delegate.getAllMappings()).thenReturn(ImmutableMap.of(USER + "@" + RecipientRewriteTable.WILDCARD, MAPPINGS));
+        testee = new BloomFilteredRecipientRewriteTable(delegate, prefilter());
+        when(delegate.getMappings(USER, OTHER_DOMAIN)).thenReturn(MAPPINGS);
+
+        assertThat(testee.getMappings(USER, OTHER_DOMAIN)).isEqualTo(MAPPINGS);
+    }
+
+    @Test
+    public void getMappingsShouldQueryTheDelegateWhenTheListingFails() throws Exception {
+        when(delegate.getAllMappings()).thenThrow(new RuntimeException());
+        testee = new BloomFilteredRecipientRewriteTable(delegate, prefilter());
+        when(delegate.getMappings(OTHER_USER, DOMAIN)).thenReturn(MAPPINGS);
+
+        assertThat(testee.getMappings(OTHER_USER, DOMAIN)).isEqualTo(MAPPINGS);
+    }
+
+    @Test
+    public void getMappingsShouldSeeAddedMappings() throws Exception {
+        assertThat(testee.getMappings(OTHER_USER, DOMAIN)).isNull();
+        when(delegate.getMappings(OTHER_USER, DOMAIN)).thenReturn(MAPPINGS);
+
+        testee.addAddressMapping(OTHER_USER, DOMAIN, "target@domain.org");
+
+        assertThat(testee.getMappings(OTHER_USER, DOMAIN)).isEqualTo(MAPPINGS);
+    }
+
+    @Test
+    public void getMappingsShouldSeeAddedAliasDomains() throws Exception {
+        when(delegate.getMappings(OTHER_USER, OTHER_DOMAIN)).thenReturn(MAPPINGS);
+
+        testee.addAliasDomainMapping(OTHER_DOMAIN, DOMAIN);
+
+        assertThat(testee.getMappings(OTHER_USER, OTHER_DOMAIN)).isEqualTo(MAPPINGS);
+    }
+
+    @Test
+    public void getMappingsShouldNotQueryTheDelegateOnceTheLastMappingOfASourceIsRemoved() throws Exception {
+        testee.addAddressMapping(OTHER_USER, DOMAIN, "target@domain.org");
+        when(delegate.getUserDomainMappings(OTHER_USER, DOMAIN)).thenReturn(null);
+
+        testee.removeAddressMapping(OTHER_USER, DOMAIN, "target@domain.org");
+
+        assertThat(testee.getMappings(OTHER_USER, DOMAIN)).isNull();
+        verify(delegate, never()).getMappings(OTHER_USER, DOMAIN);
+    }
+
+    @Test
+    public void getMappingsShouldQueryTheDelegateWhileASourceHasMappingsLeft() throws Exception {
+        testee.addAddressMapping(OTHER_USER, DOMAIN, "target@domain.org");
+        testee.addAddressMapping(OTHER_USER, DOMAIN, "other@domain.org");
+        when(delegate.getUserDomainMappings(OTHER_USER, DOMAIN)).thenReturn(MappingsImpl.fromRawString("other@domain.org"));
+        when(delegate.getMappings(OTHER_USER, DOMAIN)).thenReturn(MappingsImpl.fromRawString("other@domain.org"));
+
+        testee.removeAddressMapping(OTHER_USER, DOMAIN, "target@domain.org");
+
+        assertThat(testee.getMappings(OTHER_USER, DOMAIN)).isEqualTo(MappingsImpl.fromRawString("other@domain.org"));
+    }
+
+    @Test
+    public void removingTheLastMappingOfAListedSourceShouldKeepQueryingTheDelegateUntilTheNextRefresh() throws Exception {
+        testee.getMappings(OTHER_USER, DOMAIN);
+        when(delegate.getUserDomainMappings(anyString(), anyString())).thenReturn(null);
+
+        testee.removeAddressMapping(USER, DOMAIN, "target@domain.org");
+        testee.getMappings(USER, DOMAIN);
+
+        verify(delegate).getMappings(USER, DOMAIN);
+    }
+
+}
@@ -0,0 +1,78 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.rrt.lib;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringReader;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.junit.Test;
+
+public class CachingRecipientRewriteTableConfigurationTest {
+
+    @Test
+    public void fromShouldReturnDisabledWhenNotEnabledByDefault() throws Exception {
+        assertThat(CachingRecipientRewriteTableConfiguration.from(configuration("<recipientrewritetable/>"), false))
+            .isSameAs(CachingRecipientRewriteTableConfiguration.DISABLED);
+    }
+
+    @Test
+    public void fromShouldUseDefaultsWhenEnabledByDefault() throws Exception {
+        CachingRecipientRewriteTableConfiguration configuration = CachingRecipientRewriteTableConfiguration.from(configuration("<recipientrewritetable/>"), true);
+
+        assertThat(configuration.isEnabled()).isTrue();
+        assertThat(configuration.getMaximumSize()).isEqualTo(CachingRecipientRewriteTable.DEFAULT_MAXIMUM_SIZE);
+        assertThat(configuration.getExpirationInSeconds()).isEqualTo(CachingRecipientRewriteTable.DEFAULT_EXPIRATION_IN_SECONDS);
+    }
+
+    @Test
+    public void fromShouldReturnDisabledWhenExplicitlyDisabled() throws Exception {
+        assertThat(CachingRecipientRewriteTableConfiguration.from(configuration("<recipientrewritetable><cache enabled=\"false\"/></recipientrewritetable>"), true)
+            .isEnabled()).isFalse();
+    }
+
+    @Test
+    public void fromShouldReadTheConfiguredValues() throws Exception {
+        CachingRecipientRewriteTableConfiguration configuration = CachingRecipientRewriteTableConfiguration.from(configuration(
+            "<recipientrewritetable><cache enabled=\"true\" maximumSize=\"500\" expirationInSeconds=\"10\"/></recipientrewritetable>"), false);
+
+        assertThat(configuration.isEnabled()).isTrue();
+        assertThat(configuration.getMaximumSize()).isEqualTo(500);
+        assertThat(configuration.getExpirationInSeconds()).isEqualTo(10);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void fromShouldRejectNonPositiveExpiration() throws Exception {
+        CachingRecipientRewriteTableConfiguration.from(configuration("<recipientrewritetable><cache enabled=\"true\" expirationInSeconds=\"0\"/></recipientrewritetable>"), false);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void fromShouldRejectNonNumericMaximumSize() throws Exception {
+        CachingRecipientRewriteTableConfiguration.from(configuration("<recipientrewritetable><cache enabled=\"true\" maximumSize=\"many\"/></recipientrewritetable>"), false);
+    }
+
+    private XMLConfiguration configuration(String xml) throws ConfigurationException {
+        XMLConfiguration configuration = new XMLConfiguration();
+        configuration.load(new StringReader(xml));
+        return configuration;
+    }
+}
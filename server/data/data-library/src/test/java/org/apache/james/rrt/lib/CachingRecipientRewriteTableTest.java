@@ -0,0 +1,115 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.rrt.lib;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.rrt.api.RecipientRewriteTable;
+import org.apache.james.rrt.api.RecipientRewriteTable.ErrorMappingException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingRecipientRewriteTableTest {
+
+    private static final String USER = "user";
+    private static final String DOMAIN = "domain.org";
+
+    private RecipientRewriteTable delegate;
+    private CachingRecipientRewriteTable testee;
+
+    @Before
+    public void setUp() {
+        delegate = mock(RecipientRewriteTable.class);
+        testee = new CachingRecipientRewriteTable(delegate, mock(MetricFactory.class, RETURNS_MOCKS));
+    }
+
+    @Test
+    public void getMappingsShouldResolveOnlyOnce() throws Exception {
+        Mappings mappings = MappingsImpl.fromRawString("target@domain.org");
+        when(delegate.getMappings(USER, DOMAIN)).thenReturn(mappings);
+
+        assertThat(testee.getMappings(USER, DOMAIN)).isEqualTo(mappings);
+        assertThat(testee.getMappings(USER, DOMAIN)).isEqualTo(mappings);
+        verify(delegate, times(1)).getMappings(USER, DOMAIN);
+    }
+
+    @Test
+    public void getMappingsShouldCacheAbsenceOfMapping() throws Exception {
+        when(delegate.getMappings(USER, DOMAIN)).thenReturn(null);
+
+        assertThat(testee.getMappings(USER, DOMAIN)).isNull();
+        assertThat(testee.getMappings(USER, DOMAIN)).isNull();
+        verify(delegate, times(1)).getMappings(USER, DOMAIN);
+    }
+
+    @Test
+    public void getMappingsShouldCacheErrorMappings() throws Exception {
+        when(delegate.getMappings(USER, DOMAIN)).thenThrow(new ErrorMappingException("554 bounce"));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                testee.getMappings(USER, DOMAIN);
+                throw new AssertionError("ErrorMappingException expected");
+            } catch (ErrorMappingException e) {
+                assertThat(e.getMessage()).isEqualTo("554 bounce");
+            }
+        }
+        verify(delegate, times(1)).getMappings(USER, DOMAIN);
+    }
+
+    @Test
+    public void addMappingShouldInvalidateCachedResolutions() throws Exception {
+        Mappings mappings = MappingsImpl.fromRawString("target@domain.org");
+        when(delegate.getMappings(USER, DOMAIN)).thenReturn(null, mappings);
+
+        testee.getMappings(USER, DOMAIN);
+        testee.addMapping(USER, DOMAIN, "target@domain.org");
+
+        assertThat(testee.getMappings(USER, DOMAIN)).isEqualTo(mappings);
+        verify(delegate).addMapping(USER, DOMAIN, "target@domain.org");
+    }
+
+    @Test
+    public void removeMappingShouldInvalidateCachedResolutions() throws Exception {
+        Mappings mappings = MappingsImpl.fromRawString("target@domain.org");
+        when(delegate.getMappings(USER, DOMAIN)).thenReturn(mappings, null);
+
+        testee.getMappings(USER, DOMAIN);
+        testee.removeMapping(USER, DOMAIN, "target@domain.org");
+
+        assertThat(testee.getMappings(USER, DOMAIN)).isNull();
+        verify(delegate).removeMapping(USER, DOMAIN, "target@domain.org");
+    }
+
+    @Test
+    public void addAliasDomainMappingShouldInvalidateCachedResolutionsOfOtherAddresses() throws Exception {
+        testee.getMappings(USER, DOMAIN);
+        testee.addAliasDomainMapping("alias.org", DOMAIN);
+        testee.getMappings(USER, DOMAIN);
+
+        verify(delegate, times(2)).getMappings(USER, DOMAIN);
+    }
+}
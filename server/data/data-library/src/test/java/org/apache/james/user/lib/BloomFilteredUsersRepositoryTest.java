@@ -0,0 +1,133 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.user.lib;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.user.api.UsersRepository;
+import org.apache.james.user.lib.util.MembershipPrefilter;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class BloomFilteredUsersRepositoryTest {
+
+    private static final String USER = "user@domain.org";
+    private static final String OTHER_USER = "other@domain.org";
+
+    private UsersRepository delegate;
+    private BloomFilteredUsersRepository testee;
+
+    @Before
+    public void setUp() throws Exception {
+        delegate = mock(UsersRepository.class);
+        when(delegate.list()).thenReturn(ImmutableList.of(USER).iterator());
+        MembershipPrefilter prefilter = new MembershipPrefilter("test",
+            BloomFilteredUsersRepository.userNames(delegate),
+            mock(MetricFactory.class, RETURNS_MOCKS),
+            MembershipPrefilter.DEFAULT_EXPECTED_INSERTIONS,
+            MembershipPrefilter.DEFAULT_FALSE_POSITIVE_PROBABILITY,
+            MembershipPrefilter.DEFAULT_MAX_MEMORY_IN_BYTES,
+            MembershipPrefilter.DEFAULT_REFRESH_INTERVAL_IN_SECONDS,
+            MoreExecutors.directExecutor());
+        testee = new BloomFilteredUsersRepository(delegate, prefilter);
+    }
+
+    @Test
+    public void containsShouldNotQueryTheDelegateForUnknownUsers() throws Exception {
+        assertThat(testee.contains(OTHER_USER)).isFalse();
+        verify(delegate, never()).contains(OTHER_USER);
+    }
+
+    @Test
+    public void containsShouldQueryTheDelegateForPossibleUsers() throws Exception {
+        when(delegate.contains(USER)).thenReturn(true);
+
+        assertThat(testee.contains(USER)).isTrue();
+    }
+
+    @Test
+    public void containsShouldIgnoreCase() throws Exception {
+        when(delegate.contains("User@Domain.org")).thenReturn(true);
+
+        assertThat(testee.contains("User@Domain.org")).isTrue();
+    }
+
+    @Test
+    public void testShouldNotQueryTheDelegateForUnknownUsers() throws Exception {
+        assertThat(testee.test(OTHER_USER, "password")).isFalse();
+        verify(delegate, never()).test(OTHER_USER, "password");
+    }
+
+    @Test
+    public void containsShouldSeeAddedUsers() throws Exception {
+        assertThat(testee.contains(OTHER_USER)).isFalse();
+        when(delegate.contains(OTHER_USER)).thenReturn(true);
+
+        testee.addUser(OTHER_USER, "password");
+
+        assertThat(testee.contains(OTHER_USER)).isTrue();
+    }
+
+    @Test
+    public void containsShouldNotQueryTheDelegateForRemovedUsers() throws Exception {
+        testee.addUser(OTHER_USER, "password");
+
+        testee.removeUser(OTHER_USER);
+
+        assertThat(testee.contains(OTHER_USER)).isFalse();
+        verify(delegate, never()).contains(OTHER_USER);
+    }
+
+    @Test
+    public void containsShouldQueryTheDelegateForRemovedListedUsersUntilTheNextRefresh() throws Exception {
+        testee.contains(OTHER_USER);
+
+        testee.removeUser(USER);
+
+        assertThat(testee.contains(USER)).isFalse();
+        verify(delegate).contains(USER);
+    }
+
+    @Test
+    public void containsShouldQueryTheDelegateWhenTheListingFails() throws Exception {
+        when(delegate.list()).thenThrow(new RuntimeException());
+        BloomFilteredUsersRepository failingTestee = new BloomFilteredUsersRepository(delegate,
+            new MembershipPrefilter("test", BloomFilteredUsersRepository.userNames(delegate),
+                mock(MetricFactory.class, RETURNS_MOCKS),
+                MembershipPrefilter.DEFAULT_EXPECTED_INSERTIONS,
+                MembershipPrefilter.DEFAULT_FALSE_POSITIVE_PROBABILITY,
+                MembershipPrefilter.DEFAULT_MAX_MEMORY_IN_BYTES,
+                MembershipPrefilter.DEFAULT_REFRESH_INTERVAL_IN_SECONDS,
+                MoreExecutors.directExecutor()));
+        when(delegate.contains(OTHER_USER)).thenReturn(true);
+
+        assertThat(failingTestee.contains(OTHER_USER)).isTrue();
+    }
+
+}
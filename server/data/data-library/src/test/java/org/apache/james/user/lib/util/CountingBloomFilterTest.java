@@ -0,0 +1,115 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.user.lib.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class CountingBloomFilterTest {
+
+    private static final long MAX_MEMORY = 1024 * 1024;
+
+    @Test
+    public void mightContainShouldReturnFalseWhenEmpty() {
+        CountingBloomFilter filter = CountingBloomFilter.create(100, 0.01, MAX_MEMORY);
+
+        assertThat(filter.mightContain("user@domain.org")).isFalse();
+    }
+
+    @Test
+    public void mightContainShouldReturnTrueForAddedKeys() {
+        CountingBloomFilter filter = CountingBloomFilter.create(1000, 0.01, MAX_MEMORY);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user" + i + "@domain.org");
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.mightContain("user" + i + "@domain.org")).isTrue();
+        }
+    }
+
+    @Test
+    public void removeShouldForgetTheKey() {
+        CountingBloomFilter filter = CountingBloomFilter.create(100, 0.01, MAX_MEMORY);
+        filter.add("user@domain.org");
+
+        filter.remove("user@domain.org");
+
+        assertThat(filter.mightContain("user@domain.org")).isFalse();
+    }
+
+    @Test
+    public void removeShouldKeepKeysAddedTwice() {
+        CountingBloomFilter filter = CountingBloomFilter.create(100, 0.01, MAX_MEMORY);
+        filter.add("user@domain.org");
+        filter.add("user@domain.org");
+
+        filter.remove("user@domain.org");
+
+        assertThat(filter.mightContain("user@domain.org")).isTrue();
+    }
+
+    @Test
+    public void removeShouldKeepOtherKeys() {
+        CountingBloomFilter filter = CountingBloomFilter.create(1000, 0.01, MAX_MEMORY);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user" + i + "@domain.org");
+        }
+
+        for (int i = 0; i < 1000; i += 2) {
+            filter.remove("user" + i + "@domain.org");
+        }
+
+        for (int i = 1; i < 1000; i += 2) {
+            assertThat(filter.mightContain("user" + i + "@domain.org")).isTrue();
+        }
+    }
+
+    @Test
+    public void falsePositiveRateShouldBeCloseToTheConfiguredOne() {
+        CountingBloomFilter filter = CountingBloomFilter.create(10000, 0.01, MAX_MEMORY);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("user" + i + "@domain.org");
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain("other" + i + "@domain.org")) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives).isLessThan(200);
+    }
+
+    @Test
+    public void createShouldRespectMaxMemory() {
+        CountingBloomFilter filter = CountingBloomFilter.create(1000000, 0.01, 1024);
+
+        assertThat(filter.getMemoryInBytes()).isEqualTo(1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void createShouldRejectInvalidFalsePositiveProbability() {
+        CountingBloomFilter.create(100, 1, MAX_MEMORY);
+    }
+
+}
@@ -0,0 +1,83 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.user.lib.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringReader;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.junit.Test;
+
+public class MembershipPrefilterConfigurationTest {
+
+    @Test
+    public void fromShouldReturnDisabledWhenNotEnabledByDefault() throws Exception {
+        assertThat(MembershipPrefilterConfiguration.from(configuration("<usersrepository/>"), false))
+            .isSameAs(MembershipPrefilterConfiguration.DISABLED);
+    }
+
+    @Test
+    public void fromShouldUseDefaultsWhenEnabledByDefault() throws Exception {
+        MembershipPrefilterConfiguration configuration = MembershipPrefilterConfiguration.from(configuration("<usersrepository/>"), true);
+
+        assertThat(configuration.isEnabled()).isTrue();
+        assertThat(configuration.getExpectedInsertions()).isEqualTo(MembershipPrefilter.DEFAULT_EXPECTED_INSERTIONS);
+        assertThat(configuration.getFalsePositiveProbability()).isEqualTo(MembershipPrefilter.DEFAULT_FALSE_POSITIVE_PROBABILITY);
+        assertThat(configuration.getMaxMemoryInBytes()).isEqualTo(MembershipPrefilter.DEFAULT_MAX_MEMORY_IN_BYTES);
+        assertThat(configuration.getRefreshIntervalInSeconds()).isEqualTo(MembershipPrefilter.DEFAULT_REFRESH_INTERVAL_IN_SECONDS);
+    }
+
+    @Test
+    public void fromShouldReturnDisabledWhenExplicitlyDisabled() throws Exception {
+        assertThat(MembershipPrefilterConfiguration.from(configuration("<usersrepository><prefilter enabled=\"false\"/></usersrepository>"), true)
+            .isEnabled()).isFalse();
+    }
+
+    @Test
+    public void fromShouldReadTheConfiguredValues() throws Exception {
+        MembershipPrefilterConfiguration configuration = MembershipPrefilterConfiguration.from(configuration(
+            "<usersrepository><prefilter enabled=\"true\" expectedInsertions=\"1000\" falsePositiveProbability=\"0.001\" "
+                + "maxMemoryInBytes=\"4096\" refreshIntervalInSeconds=\"10\"/></usersrepository>"), false);
+
+        assertThat(configuration.isEnabled()).isTrue();
+        assertThat(configuration.getExpectedInsertions()).isEqualTo(1000);
+        assertThat(configuration.getFalsePositiveProbability()).isEqualTo(0.001);
+        assertThat(configuration.getMaxMemoryInBytes()).isEqualTo(4096);
+        assertThat(configuration.getRefreshIntervalInSeconds()).isEqualTo(10);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void fromShouldRejectInvalidFalsePositiveProbability() throws Exception {
+        MembershipPrefilterConfiguration.from(configuration("<usersrepository><prefilter enabled=\"true\" falsePositiveProbability=\"1\"/></usersrepository>"), false);
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void fromShouldRejectNonNumericMemoryLimit() throws Exception {
+        MembershipPrefilterConfiguration.from(configuration("<usersrepository><prefilter enabled=\"true\" maxMemoryInBytes=\"many\"/></usersrepository>"), false);
+    }
+
+    private XMLConfiguration configuration(String xml) throws ConfigurationException {
+        XMLConfiguration configuration = new XMLConfiguration();
+        configuration.load(new StringReader(xml));
+        return configuration;
+    }
+}
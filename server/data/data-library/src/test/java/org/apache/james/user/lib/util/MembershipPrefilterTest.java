@@ -0,0 +1,232 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.user.lib.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+import org.apache.james.metrics.api.MetricFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MembershipPrefilterTest {
+
+    private static final long MAX_MEMORY = 1024 * 1024;
+    private static final long REFRESH_INTERVAL_IN_SECONDS = 3600;
+
+    private List<String> listedKeys;
+    private List<Runnable> pendingRebuilds;
+    private int listings;
+
+    @Before
+    public void setUp() {
+        listedKeys = new ArrayList<String>();
+        pendingRebuilds = new ArrayList<Runnable>();
+        listings = 0;
+    }
+
+    @Test
+    public void mightContainAnyShouldReturnTrueUntilTheFilterIsBuilt() {
+        MembershipPrefilter prefilter = prefilter(100, 0.01);
+
+        assertThat(prefilter.mightContainAny("unknown")).isTrue();
+        assertThat(prefilter.isReady()).isFalse();
+    }
+
+    @Test
+    public void mightContainAnyShouldReturnFalseForUnlistedKeysOnceBuilt() {
+        listedKeys.add("listed");
+        MembershipPrefilter prefilter = builtPrefilter(100, 0.01);
+
+        assertThat(prefilter.mightContainAny("listed")).isTrue();
+        assertThat(prefilter.mightContainAny("unknown")).isFalse();
+        assertThat(prefilter.mightContainAny("unknown", "LISTED")).isTrue();
+    }
+
+    @Test
+    public void mightContainAnyShouldReturnTrueWhenTheListingFails() {
+        MembershipPrefilter prefilter = new MembershipPrefilter("test", new Callable<Iterator<String>>() {
+            @Override
+            public Iterator<String> call() throws Exception {
+                throw new Exception("listing failure");
+            }
+        }, mock(MetricFactory.class, RETURNS_MOCKS), 100, 0.01, MAX_MEMORY, REFRESH_INTERVAL_IN_SECONDS, capturingExecutor());
+        prefilter.mightContainAny("unknown");
+        runPendingRebuilds();
+
+        assertThat(prefilter.mightContainAny("unknown")).isTrue();
+    }
+
+    @Test
+    public void addShouldBeSeenImmediately() {
+        MembershipPrefilter prefilter = builtPrefilter(100, 0.01);
+
+        prefilter.add("added");
+
+        assertThat(prefilter.mightContainAny("added")).isTrue();
+    }
+
+    @Test
+    public void rebuildShouldReplayTheKeysAddedDuringTheListing() {
+        listedKeys.add("listed");
+        MembershipPrefilter prefilter = prefilter(100, 0.01);
+        prefilter.mightContainAny("listed");
+
+        prefilter.add("added");
+        runPendingRebuilds();
+
+        assertThat(prefilter.mightContainAny("listed")).isTrue();
+        assertThat(prefilter.mightContainAny("added")).isTrue();
+        assertThat(prefilter.mightContainAny("unknown")).isFalse();
+    }
+
+    @Test
+    public void rebuildShouldReplayTheKeysAddedDuringTheRefreshListing() {
+        MembershipPrefilter prefilter = builtPrefilter(2, 0.01);
+        prefilter.add("first");
+        prefilter.add("second");
+        prefilter.add("third");
+        prefilter.mightContainAny("first");
+
+        prefilter.add("added");
+        runPendingRebuilds();
+
+        assertThat(listings).isEqualTo(2);
+        assertThat(prefilter.mightContainAny("added")).isTrue();
+    }
+
+    @Test
+    public void rebuildShouldHappenOnceMoreKeysThanExpectedWereAdded() {
+        MembershipPrefilter prefilter = builtPrefilter(2, 0.01);
+        prefilter.add("first");
+        prefilter.add("second");
+
+        prefilter.add("third");
+        prefilter.mightContainAny("first");
+
+        assertThat(pendingRebuilds).hasSize(1);
+    }
+
+    @Test
+    public void rebuildShouldForgetKeysRemovedElsewhere() {
+        listedKeys.add("removed");
+        MembershipPrefilter prefilter = builtPrefilter(2, 0.01);
+        listedKeys.clear();
+        prefilter.add("first");
+        prefilter.add("second");
+        prefilter.add("third");
+        prefilter.mightContainAny("first");
+
+        runPendingRebuilds();
+
+        assertThat(prefilter.mightContainAny("removed")).isFalse();
+    }
+
+    @Test
+    public void removeShouldForgetKeysAddedSinceTheFilterWasBuilt() {
+        MembershipPrefilter prefilter = builtPrefilter(100, 0.01);
+        prefilter.add("added");
+
+        prefilter.remove("ADDED");
+
+        assertThat(prefilter.mightContainAny("added")).isFalse();
+    }
+
+    @Test
+    public void removeShouldKeepListedKeysUntilTheNextRebuild() {
+        listedKeys.add("listed");
+        MembershipPrefilter prefilter = builtPrefilter(100, 0.01);
+
+        prefilter.remove("listed");
+
+        assertThat(prefilter.mightContainAny("listed")).isTrue();
+    }
+
+    @Test
+    public void removeShouldKeepKeysListedAndAdded() {
+        listedKeys.add("listed");
+        MembershipPrefilter prefilter = builtPrefilter(100, 0.01);
+        prefilter.add("listed");
+
+        prefilter.remove("listed");
+
+        assertThat(prefilter.mightContainAny("listed")).isTrue();
+    }
+
+    @Test
+    public void removeOfKeysUnknownToTheFilterShouldNotHideOtherKeys() {
+        for (int i = 0; i < 100; i++) {
+            listedKeys.add("listed" + i);
+        }
+        // a high false positive probability makes most unknown keys collide
+        MembershipPrefilter prefilter = builtPrefilter(100, 0.5);
+
+        for (int i = 0; i < 1000; i++) {
+            prefilter.remove("addedElsewhere" + i);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(prefilter.mightContainAny("listed" + i)).isTrue();
+        }
+    }
+
+    private MembershipPrefilter builtPrefilter(long expectedInsertions, double falsePositiveProbability) {
+        MembershipPrefilter prefilter = prefilter(expectedInsertions, falsePositiveProbability);
+        prefilter.mightContainAny("any");
+        runPendingRebuilds();
+        return prefilter;
+    }
+
+    private MembershipPrefilter prefilter(long expectedInsertions, double falsePositiveProbability) {
+        return new MembershipPrefilter("test", new Callable<Iterator<String>>() {
+            @Override
+            public Iterator<String> call() {
+                listings++;
+                return new ArrayList<String>(listedKeys).iterator();
+            }
+        }, mock(MetricFactory.class, RETURNS_MOCKS), expectedInsertions, falsePositiveProbability, MAX_MEMORY,
+            REFRESH_INTERVAL_IN_SECONDS, capturingExecutor());
+    }
+
+    private Executor capturingExecutor() {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingRebuilds.add(command);
+            }
+        };
+    }
+
+    private void runPendingRebuilds() {
+        List<Runnable> rebuilds = new ArrayList<Runnable>(pendingRebuilds);
+        pendingRebuilds.clear();
+        for (Runnable rebuild : rebuilds) {
+            rebuild.run();
+        }
+    }
+
+}
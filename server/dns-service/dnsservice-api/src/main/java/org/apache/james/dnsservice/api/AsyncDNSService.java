@@ -0,0 +1,50 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.dnsservice.api;
+
+import java.net.InetAddress;
+import java.util.Collection;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Asynchronous counterpart of the {@link DNSService} lookups issued in bulk by
+ * fast-fail checks (DNSBL, URIBL), so that many queries can be in flight at
+ * once.
+ */
+public interface AsyncDNSService {
+
+    /**
+     * Resolve the given hostname to an InetAddress based on the DNS Server.
+     * 
+     * @see DNSService#getByName(String)
+     * @return a future of the resolved InetAddress, failing with an
+     *         {@link java.net.UnknownHostException} if the host is not resolved
+     */
+    ListenableFuture<InetAddress> getByNameAsync(String host);
+
+    /**
+     * Get a collection of DNS TXT Records
+     * 
+     * @see DNSService#findTXTRecords(String)
+     * @return a future of the TXT record values, empty if none are found
+     */
+    ListenableFuture<Collection<String>> findTXTRecordsAsync(String hostname);
+
+}
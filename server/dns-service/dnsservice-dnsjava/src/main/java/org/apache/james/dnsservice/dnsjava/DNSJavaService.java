@@ -20,6 +20,7 @@ package org.apache.james.dnsservice.dnsjava;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.james.dnsservice.api.AsyncDNSService;
 import org.apache.james.dnsservice.api.DNSService;
 import org.apache.james.dnsservice.api.DNSServiceMBean;
 import org.apache.james.dnsservice.api.TemporaryResolutionException;
@@ -43,7 +44,13 @@ import org.xbill.DNS.TXTRecord;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
@@ -52,11 +59,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
 
 /**
  * Provides DNS client functionality to services running inside James
  */
-public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled, Configurable {
+public class DNSJavaService implements DNSService, AsyncDNSService, DNSServiceMBean, LogEnabled, Configurable {
 
     /**
      * A resolver instance used to retrieve DNS records. This is a reference to
@@ -75,6 +84,18 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
      */
     private int maxCacheSize = 50000;
 
+    /**
+     * Number of threads running asynchronous lookups.
+     */
+    private int asyncLookupThreads = 16;
+
+    /**
+     * Runs the asynchronous lookups. DNSJava's own asynchronous resolution
+     * bypasses the cache and search paths and starts a thread per query, so
+     * the usual lookups are run on a bounded pool instead.
+     */
+    private ListeningExecutorService asyncLookupExecutor;
+
     /**
      * Whether the DNS response is required to be authoritative
      */
@@ -169,6 +190,11 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
         dnsCredibility = authoritative ? Credibility.AUTH_ANSWER : Credibility.NONAUTH_ANSWER;
 
         maxCacheSize = configuration.getInt("maxcachesize", maxCacheSize);
+
+        asyncLookupThreads = configuration.getInt("asyncLookupThreads", asyncLookupThreads);
+        if (asyncLookupThreads < 1) {
+            throw new ConfigurationException("asyncLookupThreads should be strictly positive");
+        }
     }
 
     @PostConstruct
@@ -219,9 +245,22 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
         localHostName = addr.getHostName();
         localAddress = addr.getHostAddress();
 
+        asyncLookupExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(asyncLookupThreads,
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("dnsjava-async-lookup-%d")
+                .build()));
+
         logger.debug("DNSService ...init end");
     }
 
+    @PreDestroy
+    public void dispose() {
+        if (asyncLookupExecutor != null) {
+            asyncLookupExecutor.shutdownNow();
+        }
+    }
+
     /**
      * Return the list of DNS servers in use by this service
      *
@@ -485,6 +524,26 @@ public class DNSJavaService implements DNSService, DNSServiceMBean, LogEnabled,
         return txtR;
     }
 
+    @Override
+    public ListenableFuture<InetAddress> getByNameAsync(final String host) {
+        return asyncLookupExecutor.submit(new Callable<InetAddress>() {
+            @Override
+            public InetAddress call() throws Exception {
+                return getByName(host);
+            }
+        });
+    }
+
+    @Override
+    public ListenableFuture<Collection<String>> findTXTRecordsAsync(final String hostname) {
+        return asyncLookupExecutor.submit(new Callable<Collection<String>>() {
+            @Override
+            public Collection<String> call() throws Exception {
+                return findTXTRecords(hostname);
+            }
+        });
+    }
+
     @Override
     public String getHostName(InetAddress addr) {
         String result;
@@ -41,6 +41,7 @@ import org.xbill.DNS.Zone;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -84,6 +85,7 @@ public class DNSJavaServiceTest {
     @After
     public void tearDown() throws Exception {
         dnsServer.setCache(null);
+        dnsServer.dispose();
         dnsServer = null;
         Lookup.setDefaultCache(defaultCache, DClass.IN);
         Lookup.setDefaultResolver(defaultResolver);
@@ -129,6 +131,16 @@ public class DNSJavaServiceTest {
         assertEquals("pippo.com.inbound.mxlogic.net.", records.iterator().next());
     }
 
+    @Test
+    public void getByNameAsyncShouldResolveARecords() throws Exception {
+        doAnswer(new ZoneCacheLookupRecordsAnswer(loadZone("pippo.com.")))
+                .when(mockedCache).lookupRecords(any(Name.class), anyInt(), anyInt());
+        dnsServer.setCache(mockedCache);
+
+        InetAddress address = dnsServer.getByNameAsync("mail.pippo.com.").get();
+        assertEquals("216.183.119.114", address.getHostAddress());
+    }
+
     @Test
     public void testMXCatches() throws Exception {
         doAnswer(new ZoneCacheLookupRecordsAnswer(loadZone("test-zone.com.")))
@@ -0,0 +1,75 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.dnsservice.library;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+
+import org.apache.james.dnsservice.api.AsyncDNSService;
+import org.apache.james.dnsservice.api.DNSService;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * {@link AsyncDNSService} view of a {@link DNSService} which does not support
+ * asynchronous lookups: each lookup is performed in the calling thread and
+ * returns an already completed future.
+ */
+public class BlockingAsyncDNSService implements AsyncDNSService {
+
+    /**
+     * Return the given DNSService itself when it supports asynchronous
+     * lookups, a blocking view of it otherwise.
+     */
+    public static AsyncDNSService of(DNSService dnsService) {
+        if (dnsService instanceof AsyncDNSService) {
+            return (AsyncDNSService) dnsService;
+        }
+        return new BlockingAsyncDNSService(dnsService);
+    }
+
+    private final DNSService dnsService;
+
+    public BlockingAsyncDNSService(DNSService dnsService) {
+        this.dnsService = dnsService;
+    }
+
+    @Override
+    public ListenableFuture<InetAddress> getByNameAsync(String host) {
+        try {
+            return Futures.immediateFuture(dnsService.getByName(host));
+        } catch (UnknownHostException e) {
+            return Futures.immediateFailedFuture(e);
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+    @Override
+    public ListenableFuture<Collection<String>> findTXTRecordsAsync(String hostname) {
+        try {
+            return Futures.immediateFuture(dnsService.findTXTRecords(hostname));
+        } catch (RuntimeException e) {
+            return Futures.immediateFailedFuture(e);
+        }
+    }
+
+}
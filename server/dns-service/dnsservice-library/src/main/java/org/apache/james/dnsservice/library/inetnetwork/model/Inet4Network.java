@@ -63,6 +63,33 @@ public class Inet4Network implements InetNetwork {
         }
     }
 
+    /**
+     * @return the bytes of the network address, the subnet mask being applied
+     */
+    public byte[] getNetworkAddress() {
+        return network.getAddress();
+    }
+
+    /**
+     * Return the number of leading bits of the subnet mask, or -1 if the mask
+     * is not contiguous and can not be written in CIDR notation.
+     * 
+     * @return prefixLength
+     */
+    public int getPrefixLength() {
+        byte[] mask = netmask.getAddress();
+        int length = 0;
+        while (length < mask.length * 8 && (mask[length / 8] & (0x80 >>> (length % 8))) != 0) {
+            length++;
+        }
+        for (int bit = length; bit < mask.length * 8; bit++) {
+            if ((mask[bit / 8] & (0x80 >>> (bit % 8))) != 0) {
+                return -1;
+            }
+        }
+        return length;
+    }
+
     @Override
     public String toString() {
         return network.getHostAddress() + "/" + netmask.getHostAddress();
@@ -61,6 +61,23 @@ public class Inet6Network implements InetNetwork {
         }
     }
 
+    /**
+     * @return the bytes of the network address, the subnet mask being applied
+     */
+    public byte[] getNetworkAddress() {
+        return network.getAddress();
+    }
+
+    /**
+     * Return the number of leading bits of the subnet mask actually applied by
+     * {@link #contains(InetAddress)}.
+     * 
+     * @return prefixLength
+     */
+    public int getPrefixLength() {
+        return maskByteCount(netmask) * 8;
+    }
+
     @Override
     public String toString() {
         return network.getHostAddress() + "/" + netmask;
@@ -78,15 +95,24 @@ public class Inet6Network implements InetNetwork {
 
     private static InetAddress maskIP(InetAddress ip, Integer mask) {
         byte[] maskBytes = new byte[16];
-        int i = 0;
-        while (mask > 0) {
+        for (int i = 0; i < maskByteCount(mask); i++) {
             maskBytes[i] = (byte) 255;
-            i++;
-            mask = (mask >> 1);
         }
         return maskIP(ip.getAddress(), maskBytes);
     }
 
+    /**
+     * The mask covers as many bytes as the given netmask has significant bits.
+     */
+    private static int maskByteCount(Integer mask) {
+        int count = 0;
+        while (mask > 0) {
+            count++;
+            mask = (mask >> 1);
+        }
+        return count;
+    }
+
     /**
      * Return InetAddress generated of the passed arguments. Return Null if any
      * error occurs
@@ -0,0 +1,209 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.dnsservice.library.netmatcher;
+
+/**
+ * Binary radix (PATRICIA) trie of network prefixes of a single address
+ * family.
+ * 
+ * Each node holds a prefix and only branches where two stored prefixes
+ * diverge, so a lookup visits at most one node per distinct prefix length on
+ * the path of the address and never allocates. The trie is built once and
+ * never modified afterwards: a new trie is built to change the networks.
+ */
+class InetNetworkTrie {
+
+    private static class Node {
+        private final byte[] prefix;
+        private final int prefixLength;
+        private boolean network;
+        private Node zero;
+        private Node one;
+
+        private Node(byte[] address, int prefixLength, boolean network) {
+            this.prefix = mask(address, prefixLength);
+            this.prefixLength = prefixLength;
+            this.network = network;
+        }
+
+        private Node child(int bit) {
+            return bit == 0 ? zero : one;
+        }
+
+        private void setChild(int bit, Node child) {
+            if (bit == 0) {
+                zero = child;
+            } else {
+                one = child;
+            }
+        }
+    }
+
+    private final int addressLength;
+    private final Node root;
+    private int size;
+
+    /**
+     * @param addressLength
+     *            the length in bytes of the addresses stored in this trie
+     */
+    InetNetworkTrie(int addressLength) {
+        this.addressLength = addressLength;
+        this.root = new Node(new byte[addressLength], 0, false);
+    }
+
+    /**
+     * Add a network to the trie.
+     * 
+     * @param address
+     *            the network address
+     * @param prefixLength
+     *            the number of leading bits of the address identifying the
+     *            network
+     */
+    void add(byte[] address, int prefixLength) {
+        if (address.length != addressLength) {
+            throw new IllegalArgumentException("Expecting an address of " + addressLength + " bytes, got " + address.length);
+        }
+        if (prefixLength < 0 || prefixLength > addressLength * 8) {
+            throw new IllegalArgumentException("Invalid prefix length " + prefixLength);
+        }
+        Node node = root;
+        while (node.prefixLength < prefixLength) {
+            int bit = bit(address, node.prefixLength);
+            Node child = node.child(bit);
+            if (child == null) {
+                node.setChild(bit, new Node(address, prefixLength, true));
+                size++;
+                return;
+            }
+            int common = Math.min(commonPrefixLength(child.prefix, address, child.prefixLength), prefixLength);
+            if (common == child.prefixLength) {
+                node = child;
+                continue;
+            }
+            Node branch = new Node(address, common, common == prefixLength);
+            branch.setChild(bit(child.prefix, common), child);
+            if (common < prefixLength) {
+                branch.setChild(bit(address, common), new Node(address, prefixLength, true));
+            }
+            node.setChild(bit, branch);
+            size++;
+            return;
+        }
+        if (!node.network) {
+            node.network = true;
+            size++;
+        }
+    }
+
+    /**
+     * Return the length of the longest stored prefix containing the given
+     * address.
+     * 
+     * @param address
+     *            the address bytes, as returned by
+     *            {@link java.net.InetAddress#getAddress()}
+     * @return the prefix length of the matching network, or -1 if none match
+     */
+    int longestMatch(byte[] address) {
+        if (address.length != addressLength) {
+            return -1;
+        }
+        int longest = -1;
+        int checked = 0;
+        Node node = root;
+        while (node != null && matches(node.prefix, address, checked, node.prefixLength)) {
+            if (node.network) {
+                longest = node.prefixLength;
+            }
+            if (node.prefixLength == addressLength * 8) {
+                break;
+            }
+            checked = node.prefixLength;
+            node = node.child(bit(address, checked));
+        }
+        return longest;
+    }
+
+    /**
+     * @return true if the given address is contained by any stored network
+     */
+    boolean contains(byte[] address) {
+        return longestMatch(address) >= 0;
+    }
+
+    /**
+     * @return the number of distinct networks stored
+     */
+    int size() {
+        return size;
+    }
+
+    private static int bit(byte[] address, int index) {
+        return (address[index >>> 3] >>> (7 - (index & 7))) & 1;
+    }
+
+    /**
+     * Compare the bits in the [from, to) range, the bits before having already
+     * been checked.
+     */
+    private static boolean matches(byte[] prefix, byte[] address, int from, int to) {
+        int index = from;
+        while (index < to && (index & 7) != 0) {
+            if (bit(prefix, index) != bit(address, index)) {
+                return false;
+            }
+            index++;
+        }
+        while (to - index >= 8) {
+            if (prefix[index >>> 3] != address[index >>> 3]) {
+                return false;
+            }
+            index += 8;
+        }
+        while (index < to) {
+            if (bit(prefix, index) != bit(address, index)) {
+                return false;
+            }
+            index++;
+        }
+        return true;
+    }
+
+    private static int commonPrefixLength(byte[] left, byte[] right, int limit) {
+        int index = 0;
+        while (index < limit && bit(left, index) == bit(right, index)) {
+            index++;
+        }
+        return index;
+    }
+
+    private static byte[] mask(byte[] address, int prefixLength) {
+        byte[] masked = new byte[address.length];
+        int fullBytes = prefixLength >>> 3;
+        System.arraycopy(address, 0, masked, 0, fullBytes);
+        int remainingBits = prefixLength & 7;
+        if (remainingBits != 0) {
+            masked[fullBytes] = (byte) (address[fullBytes] & (0xFF << (8 - remainingBits)));
+        }
+        return masked;
+    }
+
+}
@@ -20,15 +20,18 @@ package org.apache.james.dnsservice.library.netmatcher;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.apache.james.dnsservice.api.DNSService;
 import org.apache.james.dnsservice.library.inetnetwork.InetNetworkBuilder;
+import org.apache.james.dnsservice.library.inetnetwork.model.Inet4Network;
+import org.apache.james.dnsservice.library.inetnetwork.model.Inet6Network;
 import org.apache.james.dnsservice.library.inetnetwork.model.InetNetwork;
 
 import com.google.common.base.Splitter;
@@ -38,19 +41,92 @@ import com.google.common.base.Splitter;
  * 
  * NetMatcher provides a means for checking whether a particular IPv4 or IPv6
  * address or domain name is within a set of subnets.
+ * 
+ * Networks are indexed in one radix trie per address family, so the cost of a
+ * match does not depend on the number of configured networks. The networks
+ * can be replaced at runtime with {@link #reload(Collection)} without blocking
+ * concurrent matches.
  */
 public class NetMatcher {
     public static final String NETS_SEPARATOR = ", ";
 
+    private static final int IPV4_ADDRESS_LENGTH = 4;
+    private static final int IPV6_ADDRESS_LENGTH = 16;
+
+    /**
+     * Immutable view of the configured networks, swapped as a whole on reload.
+     */
+    private static class Networks {
+        private final SortedSet<InetNetwork> all;
+        private final InetNetworkTrie ipV4Trie;
+        private final InetNetworkTrie ipV6Trie;
+        /**
+         * Networks which can not be expressed as a prefix, e.g. IPv4 networks
+         * with a non contiguous netmask, matched one by one.
+         */
+        private final List<InetNetwork> others;
+
+        private Networks(SortedSet<InetNetwork> all) {
+            this.all = all;
+            this.ipV4Trie = new InetNetworkTrie(IPV4_ADDRESS_LENGTH);
+            this.ipV6Trie = new InetNetworkTrie(IPV6_ADDRESS_LENGTH);
+            this.others = new ArrayList<InetNetwork>();
+            for (InetNetwork network : all) {
+                index(network);
+            }
+        }
+
+        private void index(InetNetwork network) {
+            if (network instanceof Inet4Network && ((Inet4Network) network).getPrefixLength() >= 0) {
+                Inet4Network inet4Network = (Inet4Network) network;
+                ipV4Trie.add(inet4Network.getNetworkAddress(), inet4Network.getPrefixLength());
+            } else if (network instanceof Inet6Network) {
+                Inet6Network inet6Network = (Inet6Network) network;
+                ipV6Trie.add(inet6Network.getNetworkAddress(), inet6Network.getPrefixLength());
+            } else {
+                others.add(network);
+            }
+        }
+
+        private boolean contains(byte[] address) {
+            switch (address.length) {
+            case IPV4_ADDRESS_LENGTH:
+                return ipV4Trie.contains(address) || othersContain(address);
+            case IPV6_ADDRESS_LENGTH:
+                return ipV6Trie.contains(address) || othersContain(address);
+            default:
+                return false;
+            }
+        }
+
+        private boolean othersContain(byte[] address) {
+            if (others.isEmpty()) {
+                return false;
+            }
+            InetAddress ip;
+            try {
+                ip = InetAddress.getByAddress(address);
+            } catch (UnknownHostException e) {
+                return false;
+            }
+            for (InetNetwork network : others) {
+                if (network.contains(ip)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     /**
      * The DNS Service used to build InetNetworks.
      */
     private final DNSService dnsServer;
 
     /**
-     * The Set of InetNetwork to match against.
+     * The networks to match against.
      */
-    private SortedSet<InetNetwork> networks;
+    private volatile Networks networks;
 
     /**
      * Create a new instance of Netmatcher.
@@ -62,7 +138,7 @@ public class NetMatcher {
      */
     public NetMatcher(String[] nets, DNSService dnsServer) {
         this.dnsServer = dnsServer;
-        initInetNetworks(nets);
+        this.networks = buildNetworks(Arrays.asList(nets));
     }
 
     /**
@@ -75,13 +151,24 @@ public class NetMatcher {
      */
     public NetMatcher(Collection<String> nets, DNSService dnsServer) {
         this.dnsServer = dnsServer;
-        initInetNetworks(nets);
+        this.networks = buildNetworks(nets);
     }
 
     public NetMatcher(String commaSeparatedNets, DNSService dnsServer) {
         this.dnsServer = dnsServer;
         List<String> nets = Splitter.on(NETS_SEPARATOR).splitToList(commaSeparatedNets);
-        initInetNetworks(nets);
+        this.networks = buildNetworks(nets);
+    }
+
+    /**
+     * Replace the networks to match against. Matches running concurrently
+     * keep on using the previous networks until the new ones are fully built.
+     * 
+     * @param nets
+     *            a Collection which holds all networks
+     */
+    public void reload(Collection<String> nets) {
+        networks = buildNetworks(nets);
     }
 
     /**
@@ -115,21 +202,25 @@ public class NetMatcher {
      * @return true if match the network
      */
     public boolean matchInetNetwork(InetAddress ip) {
+        return matchInetNetwork(ip.getAddress());
+    }
 
-        boolean sameNet = false;
-
-        for (Iterator<InetNetwork> iter = networks.iterator(); (!sameNet) && iter.hasNext();) {
-            InetNetwork network = iter.next();
-            sameNet = network.contains(ip);
-        }
-
-        return sameNet;
-
+    /**
+     * Return true if the passed raw address match a network which was used to
+     * construct the Netmatcher.
+     * 
+     * @param address
+     *            the address bytes in network byte order: 4 bytes for IPv4,
+     *            16 bytes for IPv6
+     * @return true if match the network
+     */
+    public boolean matchInetNetwork(byte[] address) {
+        return networks.contains(address);
     }
 
     @Override
     public String toString() {
-        return networks.toString();
+        return networks.all.toString();
     }
 
     /**
@@ -142,24 +233,14 @@ public class NetMatcher {
     }
 
     /**
-     * Init the class with the given networks.
+     * Build the networks to match against.
      * 
      * @param nets
      *            a Collection which holds all networks
      */
-    private void initInetNetworks(Collection<String> nets) {
-        initInetNetworks(nets.toArray(new String[nets.size()]));
-    }
-
-    /**
-     * Init the class with the given networks.
-     * 
-     * @param nets
-     *            a String[] which holds all networks
-     */
-    private void initInetNetworks(String[] nets) {
+    private Networks buildNetworks(Collection<String> nets) {
 
-        networks = new TreeSet<InetNetwork>(new Comparator<InetNetwork>() {
+        SortedSet<InetNetwork> all = new TreeSet<InetNetwork>(new Comparator<InetNetwork>() {
             public int compare(InetNetwork in1, InetNetwork in2) {
                 return in1.toString().compareTo(in2.toString());
             }
@@ -170,12 +251,13 @@ public class NetMatcher {
         for (String net : nets) {
             try {
                 InetNetwork inet = inetNetwork.getFromString(net);
-                networks.add(inet);
+                all.add(inet);
             } catch (UnknownHostException uhe) {
                 log("Cannot resolve address: " + uhe.getMessage());
             }
         }
 
+        return new Networks(all);
     }
 
 }
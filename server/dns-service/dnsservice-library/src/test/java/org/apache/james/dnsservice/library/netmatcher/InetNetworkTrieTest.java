@@ -0,0 +1,113 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.dnsservice.library.netmatcher;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class InetNetworkTrieTest {
+
+    private InetNetworkTrie trie;
+
+    @Before
+    public void setUp() {
+        trie = new InetNetworkTrie(4);
+    }
+
+    @Test
+    public void emptyTrieShouldNotMatch() throws UnknownHostException {
+        assertEquals(-1, trie.longestMatch(address("10.0.0.1")));
+    }
+
+    @Test
+    public void longestMatchShouldReturnMostSpecificPrefix() throws UnknownHostException {
+        trie.add(address("10.0.0.0"), 8);
+        trie.add(address("10.1.2.0"), 24);
+        trie.add(address("10.1.0.0"), 16);
+
+        assertEquals(24, trie.longestMatch(address("10.1.2.3")));
+        assertEquals(16, trie.longestMatch(address("10.1.3.3")));
+        assertEquals(8, trie.longestMatch(address("10.2.3.3")));
+        assertEquals(-1, trie.longestMatch(address("11.1.2.3")));
+    }
+
+    @Test
+    public void siblingPrefixesShouldBeDistinguished() throws UnknownHostException {
+        trie.add(address("192.168.1.0"), 25);
+        trie.add(address("192.168.1.128"), 26);
+
+        assertEquals(25, trie.longestMatch(address("192.168.1.127")));
+        assertEquals(26, trie.longestMatch(address("192.168.1.130")));
+        assertEquals(-1, trie.longestMatch(address("192.168.1.200")));
+    }
+
+    @Test
+    public void addShouldIgnoreHostBits() throws UnknownHostException {
+        trie.add(address("172.16.33.44"), 16);
+
+        assertEquals(16, trie.longestMatch(address("172.16.0.1")));
+    }
+
+    @Test
+    public void zeroLengthPrefixShouldMatchEverything() throws UnknownHostException {
+        trie.add(address("0.0.0.0"), 0);
+
+        assertEquals(0, trie.longestMatch(address("203.0.113.7")));
+    }
+
+    @Test
+    public void hostPrefixShouldMatchOnlyThatHost() throws UnknownHostException {
+        trie.add(address("127.0.0.1"), 32);
+
+        assertEquals(32, trie.longestMatch(address("127.0.0.1")));
+        assertEquals(-1, trie.longestMatch(address("127.0.0.2")));
+    }
+
+    @Test
+    public void sizeShouldCountDistinctNetworks() throws UnknownHostException {
+        trie.add(address("10.0.0.0"), 8);
+        trie.add(address("10.0.0.0"), 8);
+        trie.add(address("10.1.0.0"), 16);
+        trie.add(address("10.2.0.0"), 16);
+
+        assertEquals(3, trie.size());
+    }
+
+    @Test
+    public void longestMatchShouldRejectAddressOfOtherFamily() throws UnknownHostException {
+        trie.add(address("0.0.0.0"), 0);
+
+        assertEquals(-1, trie.longestMatch(address("::1")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addShouldRejectTooLongPrefix() throws UnknownHostException {
+        trie.add(address("10.0.0.0"), 33);
+    }
+
+    private byte[] address(String ip) throws UnknownHostException {
+        return InetAddress.getByName(ip).getAddress();
+    }
+
+}
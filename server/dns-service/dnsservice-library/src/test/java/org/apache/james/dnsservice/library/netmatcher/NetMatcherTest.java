@@ -18,7 +18,10 @@
  ****************************************************************/
 package org.apache.james.dnsservice.library.netmatcher;
 
+import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+
 import org.apache.james.dnsservice.api.mock.DNSFixture;
 import static org.junit.Assert.assertEquals;
 import org.junit.Test;
@@ -109,4 +112,59 @@ public class NetMatcherTest {
         assertEquals(false, netMatcher.matchInetNetwork("192.168.1.254"));
         assertEquals(false, netMatcher.matchInetNetwork("192.169.1.254"));
     }
+
+    /**
+     * Test matching raw address bytes.
+     * @throws UnknownHostException
+     */
+    @Test
+    public void testMatchAddressBytes() throws UnknownHostException {
+
+        netMatcher = new NetMatcher(DNSFixture.LOCALHOST_IP_V4_ADDRESSES, DNSFixture.DNS_SERVER_IPV4_MOCK);
+
+        assertEquals(true, netMatcher.matchInetNetwork(new byte[]{(byte) 172, 16, 15, (byte) 254}));
+        assertEquals(false, netMatcher.matchInetNetwork(new byte[]{(byte) 192, (byte) 169, 1, (byte) 254}));
+        assertEquals(false, netMatcher.matchInetNetwork(InetAddress.getByName("::1").getAddress()));
+        assertEquals(false, netMatcher.matchInetNetwork(new byte[]{127, 0}));
+    }
+
+    /**
+     * Test that IPv4 networks with a non contiguous netmask are still matched.
+     */
+    @Test
+    public void testIpV4NonContiguousNetmask() {
+
+        netMatcher = new NetMatcher(new String[]{"10.0.0.1/255.0.255.0"}, DNSFixture.DNS_SERVER_IPV4_MOCK);
+
+        assertEquals(true, netMatcher.matchInetNetwork("10.12.0.34"));
+        assertEquals(false, netMatcher.matchInetNetwork("10.12.1.34"));
+    }
+
+    /**
+     * Test the most specific network does not hide a wider one.
+     */
+    @Test
+    public void testNestedNetworks() {
+
+        netMatcher = new NetMatcher(new String[]{"10.0.0.0/8", "10.1.2.0/24", "10.1.0.0/16"}, DNSFixture.DNS_SERVER_IPV4_MOCK);
+
+        assertEquals(true, netMatcher.matchInetNetwork("10.1.2.3"));
+        assertEquals(true, netMatcher.matchInetNetwork("10.1.3.3"));
+        assertEquals(true, netMatcher.matchInetNetwork("10.200.3.3"));
+        assertEquals(false, netMatcher.matchInetNetwork("11.1.2.3"));
+    }
+
+    /**
+     * Test replacing the networks.
+     */
+    @Test
+    public void testReload() {
+
+        netMatcher = new NetMatcher(DNSFixture.LOCALHOST_IP_V4_ADDRESSES, DNSFixture.DNS_SERVER_IPV4_MOCK);
+        netMatcher.reload(Arrays.asList("10.0.0.0/8"));
+
+        assertEquals("[10.0.0.0/255.0.0.0]", netMatcher.toString());
+        assertEquals(true, netMatcher.matchInetNetwork("10.1.2.3"));
+        assertEquals(false, netMatcher.matchInetNetwork("172.16.15.254"));
+    }
 }
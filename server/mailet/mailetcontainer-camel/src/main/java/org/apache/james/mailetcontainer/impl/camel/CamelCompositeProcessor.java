@@ -25,10 +25,12 @@ import javax.inject.Inject;
 
 import org.apache.camel.CamelContext;
 import org.apache.camel.CamelContextAware;
+import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.james.mailetcontainer.api.MailProcessor;
 import org.apache.james.mailetcontainer.api.MailetLoader;
 import org.apache.james.mailetcontainer.api.MatcherLoader;
+import org.apache.james.mailetcontainer.impl.compiled.CompiledMailetProcessor;
 import org.apache.james.mailetcontainer.lib.AbstractStateCompositeProcessor;
 import org.apache.james.metrics.api.MetricFactory;
 import org.apache.mailet.Mail;
@@ -40,9 +42,17 @@ import org.apache.mailet.MailetContext;
  * 
  * It also offer the {@link AbstractStateCompositeProcessor} implementation
  * which allow to inject {@link Mail} into the routes.
+ * 
+ * A processor configured with <code>engine="compiled"</code>, or all of them
+ * when the attribute is set on the processors element, is run by a
+ * {@link CompiledMailetProcessor} instead of a Camel route.
  */
 public class CamelCompositeProcessor extends AbstractStateCompositeProcessor implements CamelContextAware {
 
+    public static final String ENGINE_ATTRIBUTE = "[@engine]";
+    public static final String CAMEL_ENGINE = "camel";
+    public static final String COMPILED_ENGINE = "compiled";
+
     private final MetricFactory metricFactory;
     private CamelContext camelContext;
     private MailetContext mailetContext;
@@ -107,6 +117,12 @@ public class CamelCompositeProcessor extends AbstractStateCompositeProcessor imp
      * #createMailProcessor(java.lang.String, org.apache.commons.configuration.HierarchicalConfiguration)
      */
     protected MailProcessor createMailProcessor(String name, HierarchicalConfiguration config) throws Exception {
+        String engine = config.getString(ENGINE_ATTRIBUTE, this.config.getString(ENGINE_ATTRIBUTE, CAMEL_ENGINE));
+        if (engine.equals(COMPILED_ENGINE)) {
+            return createCompiledMailProcessor(config);
+        } else if (!engine.equals(CAMEL_ENGINE)) {
+            throw new ConfigurationException("Unknown engine " + engine + " for processor " + name);
+        }
         CamelMailetProcessor processor = new CamelMailetProcessor(metricFactory);
         try {
             processor.setLog(logger);
@@ -125,4 +141,22 @@ public class CamelCompositeProcessor extends AbstractStateCompositeProcessor imp
         }
     }
 
+    private MailProcessor createCompiledMailProcessor(HierarchicalConfiguration config) throws Exception {
+        CompiledMailetProcessor processor = new CompiledMailetProcessor(metricFactory);
+        try {
+            processor.setLog(logger);
+            processor.setMailetContext(mailetContext);
+            processor.setMailetLoader(mailetLoader);
+            processor.setMatcherLoader(matcherLoader);
+            processor.configure(config);
+            processor.setRootMailProcessor(this);
+            processor.init();
+            return processor;
+        } catch (Exception e) {
+            processor.destroy();
+
+            throw e;
+        }
+    }
+
 }
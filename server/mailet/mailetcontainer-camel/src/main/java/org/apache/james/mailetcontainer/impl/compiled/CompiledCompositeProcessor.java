@@ -0,0 +1,85 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailetcontainer.impl.compiled;
+
+import javax.inject.Inject;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.james.mailetcontainer.api.MailProcessor;
+import org.apache.james.mailetcontainer.api.MailetLoader;
+import org.apache.james.mailetcontainer.api.MatcherLoader;
+import org.apache.james.mailetcontainer.lib.AbstractStateCompositeProcessor;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.mailet.MailetContext;
+
+/**
+ * {@link AbstractStateCompositeProcessor} implementation which builds a
+ * {@link CompiledMailetProcessor} for each configured processor.
+ */
+public class CompiledCompositeProcessor extends AbstractStateCompositeProcessor {
+
+    private final MetricFactory metricFactory;
+    private MailetContext mailetContext;
+    private MatcherLoader matcherLoader;
+    private MailetLoader mailetLoader;
+
+    @Inject
+    public CompiledCompositeProcessor(MetricFactory metricFactory) {
+        this.metricFactory = metricFactory;
+    }
+
+    @Inject
+    public void setMatcherLoader(MatcherLoader matcherLoader) {
+        this.matcherLoader = matcherLoader;
+    }
+
+    @Inject
+    public void setMailetLoader(MailetLoader mailetLoader) {
+        this.mailetLoader = mailetLoader;
+    }
+
+    @Inject
+    public void setMailetContext(MailetContext mailetContext) {
+        this.mailetContext = mailetContext;
+    }
+
+    /**
+     * @see org.apache.james.mailetcontainer.lib.AbstractStateCompositeProcessor
+     * #createMailProcessor(java.lang.String, org.apache.commons.configuration.HierarchicalConfiguration)
+     */
+    protected MailProcessor createMailProcessor(String name, HierarchicalConfiguration config) throws Exception {
+        CompiledMailetProcessor processor = new CompiledMailetProcessor(metricFactory);
+        try {
+            processor.setLog(logger);
+            processor.setMailetContext(mailetContext);
+            processor.setMailetLoader(mailetLoader);
+            processor.setMatcherLoader(matcherLoader);
+            processor.configure(config);
+            processor.setRootMailProcessor(this);
+            processor.init();
+            return processor;
+        } catch (Exception e) {
+            processor.destroy();
+
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.mailetcontainer.impl.compiled;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import javax.mail.MessagingException;
+
+import org.apache.james.core.MailImpl;
+import org.apache.james.lifecycle.api.LifecycleUtil;
+import org.apache.james.mailetcontainer.impl.MailetConfigImpl;
+import org.apache.james.mailetcontainer.impl.MatcherMailetPair;
+import org.apache.james.mailetcontainer.impl.ProcessorUtil;
+import org.apache.james.mailetcontainer.lib.AbstractStateMailetProcessor;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.TimeMetric;
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.apache.mailet.Mailet;
+import org.apache.mailet.MailetConfig;
+import org.apache.mailet.Matcher;
+import org.apache.mailet.base.MailetPipelineLogging;
+
+/**
+ * {@link AbstractStateMailetProcessor} implementation which compiles the
+ * {@link MatcherMailetPair}'s into an array of steps executed directly on the
+ * calling thread, without any routing framework.
+ * <p>
+ * It keeps the semantics of the
+ * {@link org.apache.james.mailetcontainer.impl.camel.CamelMailetProcessor}:
+ * a partial match splits the mail, the split mail being processed first; a mail
+ * leaving the state of this processor is handed to the root processor and
+ * {@link Mail#GHOST} mails are disposed. When a split mail fails, the remaining
+ * mail is still processed before the failure is reported.
+ * </p>
+ */
+public class CompiledMailetProcessor extends AbstractStateMailetProcessor {
+
+    private final MetricFactory metricFactory;
+    private Step[] plan;
+    private Step terminatingStep;
+
+    public CompiledMailetProcessor(MetricFactory metricFactory) {
+        this.metricFactory = metricFactory;
+    }
+
+    /**
+     * @see
+     * org.apache.james.mailetcontainer.api.MailProcessor#service(org.apache.mailet.Mail)
+     */
+    public void service(Mail mail) throws MessagingException {
+        try {
+            execute(mail, 0);
+        } catch (MessagingException e) {
+            throw new MessagingException("Unable to process mail " + mail.getName(), e);
+        } catch (RuntimeException e) {
+            throw new MessagingException("Unable to process mail " + mail.getName(), e);
+        }
+    }
+
+    /**
+     * @see
+     * org.apache.james.mailetcontainer.lib.AbstractStateMailetProcessor#setupRouting
+     * (java.util.List)
+     */
+    protected void setupRouting(List<MatcherMailetPair> pairs) throws MessagingException {
+        Step[] steps = new Step[pairs.size()];
+        for (int i = 0; i < steps.length; i++) {
+            MatcherMailetPair pair = pairs.get(i);
+            steps[i] = new Step(pair.getMatcher(), pair.getMailet());
+        }
+        this.plan = steps;
+        this.terminatingStep = new Step(null, new TerminatingMailet());
+    }
+
+    /**
+     * Run the steps of the plan, starting at the given one, until the mail
+     * leaves this processor or reaches the {@link TerminatingMailet}.
+     */
+    private void execute(Mail mail, int firstStep) throws MessagingException {
+        MessagingException splitFailure = null;
+        boolean reachedEnd = true;
+
+        for (int i = firstStep; i < plan.length; i++) {
+            Step step = plan[i];
+            Collection<MailAddress> matchedRcpts = step.match(mail);
+
+            if (matchedRcpts != null) {
+                List<MailAddress> rcpts = new ArrayList<MailAddress>(mail.getRecipients());
+                for (MailAddress matchedRcpt : matchedRcpts) {
+                    rcpts.remove(matchedRcpt);
+                }
+
+                if (rcpts.isEmpty()) {
+                    step.service(mail);
+                } else {
+                    mail.setRecipients(rcpts);
+                    Mail newMail = new MailImpl(mail);
+                    newMail.setRecipients(matchedRcpts);
+                    try {
+                        step.service(newMail);
+                        if (remainsInProcessor(newMail)) {
+                            execute(newMail, i + 1);
+                        }
+                    } catch (MessagingException e) {
+                        if (splitFailure == null) {
+                            splitFailure = e;
+                        }
+                    }
+                }
+            }
+
+            if (!remainsInProcessor(mail)) {
+                reachedEnd = false;
+                break;
+            }
+        }
+
+        if (reachedEnd) {
+            // the mail state did not change till the end of the plan, call the
+            // TerminatingMailet to make sure we don't fall into an endless loop
+            terminatingStep.service(mail);
+        }
+        if (splitFailure != null) {
+            throw splitFailure;
+        }
+    }
+
+    /**
+     * Dispose {@link Mail#GHOST} mails and hand the mails whose state changed
+     * over to the root processor.
+     *
+     * @return true if the mail should go on with the next step
+     */
+    private boolean remainsInProcessor(Mail mail) throws MessagingException {
+        String mailState = mail.getState();
+        if (Mail.GHOST.equals(mailState)) {
+            LifecycleUtil.dispose(mail.getMessage());
+            LifecycleUtil.dispose(mail);
+            return false;
+        }
+        if (!getState().equals(mailState)) {
+            toProcessor(mail);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A compiled {@link MatcherMailetPair}. Everything that does not depend on
+     * the processed mail is resolved once here.
+     */
+    private final class Step {
+
+        private final Matcher matcher;
+        private final Mailet mailet;
+        private final String matcherMetricName;
+        private final String mailetMetricName;
+        private final String onMatchException;
+        private final String onMailetException;
+
+        public Step(Matcher matcher, Mailet mailet) {
+            this.matcher = matcher;
+            this.mailet = mailet;
+            this.matcherMetricName = matcher == null ? null : matcher.getClass().getSimpleName();
+            this.mailetMetricName = mailet.getClass().getSimpleName();
+            this.onMatchException = normalize(getInitAttribute(mailet, "onMatchException"));
+            this.onMailetException = normalize(getInitAttribute(mailet, "onMailetException"));
+        }
+
+        /**
+         * Call the matcher
+         *
+         * @return the matched recipients, or null if none matched
+         */
+        public Collection<MailAddress> match(Mail mail) throws MessagingException {
+            List<MailetProcessorListener> listeners = getListeners();
+            Collection<MailAddress> origRcpts = listeners.isEmpty() ? null : new ArrayList<MailAddress>(mail.getRecipients());
+            Collection<MailAddress> matchedRcpts = null;
+            MessagingException ex = null;
+            long start = System.currentTimeMillis();
+            TimeMetric timeMetric = metricFactory.timer(matcherMetricName);
+            try {
+                try {
+                    matchedRcpts = matcher.match(mail);
+                    if (matchedRcpts != null && matchedRcpts != mail.getRecipients()) {
+                        // Make sure all the objects are MailAddress objects
+                        ProcessorUtil.verifyMailAddresses(matchedRcpts);
+                    }
+                } catch (MessagingException me) {
+                    ex = me;
+                    if (onMatchException.equals("nomatch")) {
+                        matchedRcpts = null;
+                    } else if (onMatchException.equals("matchall")) {
+                        matchedRcpts = mail.getRecipients();
+                    } else {
+                        ProcessorUtil.handleException(me, mail, matcher.getMatcherConfig().getMatcherName(), onMatchException, getLogger());
+                    }
+                }
+                if (matchedRcpts != null && matchedRcpts.isEmpty()) {
+                    matchedRcpts = null;
+                }
+                return matchedRcpts;
+            } finally {
+                timeMetric.stopAndPublish();
+                long complete = System.currentTimeMillis() - start;
+                for (MailetProcessorListener listener : listeners) {
+                    listener.afterMatcher(matcher, mail.getName(), origRcpts, matchedRcpts, complete, ex);
+                }
+            }
+        }
+
+        /**
+         * Call the mailet
+         */
+        public void service(Mail mail) throws MessagingException {
+            long start = System.currentTimeMillis();
+            TimeMetric timeMetric = metricFactory.timer(mailetMetricName);
+            MessagingException ex = null;
+            try {
+                MailetPipelineLogging.logBeginOfMailetProcess(mailet, mail);
+                mailet.service(mail);
+            } catch (MessagingException me) {
+                ex = me;
+                if (onMailetException.equals("ignore")) {
+                    // ignore the exception and continue
+                    // this option should not be used if the mail object can be
+                    // changed by the mailet
+                    ProcessorUtil.verifyMailAddresses(mail.getRecipients());
+                } else {
+                    ProcessorUtil.handleException(me, mail, mailet.getMailetConfig().getMailetName(), onMailetException, getLogger());
+                }
+            } finally {
+                timeMetric.stopAndPublish();
+                MailetPipelineLogging.logEndOfMailetProcess(mailet, mail);
+                long complete = System.currentTimeMillis() - start;
+                if (mail.getRecipients().isEmpty()) {
+                    mail.setState(Mail.GHOST);
+                }
+                for (MailetProcessorListener listener : getListeners()) {
+                    listener.afterMailet(mailet, mail.getName(), mail.getState(), complete, ex);
+                }
+            }
+        }
+
+    }
+
+    private static String getInitAttribute(Mailet mailet, String name) {
+        MailetConfig mailetConfig = mailet.getMailetConfig();
+        if (mailetConfig instanceof MailetConfigImpl) {
+            return ((MailetConfigImpl) mailetConfig).getInitAttribute(name);
+        }
+        return null;
+    }
+
+    private static String normalize(String onException) {
+        if (onException == null) {
+            return Mail.ERROR;
+        }
+        return onException.trim().toLowerCase(Locale.US);
+    }
+
+}
@@ -18,14 +18,21 @@
  ****************************************************************/
 package org.apache.james.mailetcontainer.impl.camel;
 
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
 import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.commons.configuration.DefaultConfigurationBuilder;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.james.mailetcontainer.api.mock.MockMailetContext;
 import org.apache.james.mailetcontainer.api.mock.MockMailetLoader;
 import org.apache.james.mailetcontainer.api.mock.MockMatcherLoader;
+import org.apache.james.mailetcontainer.impl.compiled.CompiledMailetProcessor;
 import org.apache.james.mailetcontainer.lib.AbstractStateCompositeProcessor;
 import org.apache.james.mailetcontainer.lib.AbstractStateCompositeProcessorTest;
 import org.apache.james.metrics.api.NoopMetricFactory;
+import org.junit.Test;
 import org.slf4j.LoggerFactory;
 
 public class CamelCompositeProcessorTest extends AbstractStateCompositeProcessorTest {
@@ -49,4 +56,22 @@ public class CamelCompositeProcessorTest extends AbstractStateCompositeProcessor
 
     }
 
+    @Test
+    public void testEngineSelection() throws Exception {
+        String xml = "<processors engine=\"compiled\">"
+                + "<processor state=\"root\"/>"
+                + "<processor state=\"error\" engine=\"camel\"/>"
+                + "</processors>";
+        DefaultConfigurationBuilder builder = new DefaultConfigurationBuilder();
+        builder.load(new ByteArrayInputStream(xml.getBytes()));
+
+        AbstractStateCompositeProcessor processor = createProcessor(builder);
+        try {
+            assertTrue(processor.getProcessor("root") instanceof CompiledMailetProcessor);
+            assertTrue(processor.getProcessor("error") instanceof CamelMailetProcessor);
+        } finally {
+            processor.dispose();
+        }
+    }
+
 }
@@ -26,7 +26,7 @@ import javax.mail.MessagingException;
 import org.apache.commons.logging.Log;
 import org.apache.james.domainlist.api.DomainList;
 import org.apache.james.mailbox.MailboxManager;
-
+import org.apache.james.mailbox.MessageIdManager;
 import org.apache.james.mailbox.model.MailboxConstants;
 import org.apache.james.metrics.api.MetricFactory;
 import org.apache.james.transport.mailets.delivery.MailDispatcher;
@@ -37,6 +37,8 @@ import org.apache.james.user.api.UsersRepository;
 import org.apache.mailet.Mail;
 import org.apache.mailet.base.GenericMailet;
 
+import com.google.common.base.Optional;
+
 /**
  * Receives a Mail from the Queue and takes care of delivery of the
  * message to local inboxes.
@@ -52,14 +54,21 @@ public class LocalDelivery extends GenericMailet {
     private final MailboxManager mailboxManager;
     private final RecipientRewriteTable recipientRewriteTable;
     private final MetricFactory metricFactory;
+    private final Optional<MessageIdManager> messageIdManager;
     private MailDispatcher mailDispatcher;
 
     @Inject
     public LocalDelivery(org.apache.james.rrt.api.RecipientRewriteTable rrt, UsersRepository usersRepository,
                          @Named("mailboxmanager") MailboxManager mailboxManager, DomainList domainList, MetricFactory metricFactory) {
+        this(rrt, usersRepository, mailboxManager, Optional.<MessageIdManager>absent(), domainList, metricFactory);
+    }
+
+    protected LocalDelivery(org.apache.james.rrt.api.RecipientRewriteTable rrt, UsersRepository usersRepository, MailboxManager mailboxManager,
+                            Optional<MessageIdManager> messageIdManager, DomainList domainList, MetricFactory metricFactory) {
         this.metricFactory = metricFactory;
         this.usersRepository = usersRepository;
         this.mailboxManager = mailboxManager;
+        this.messageIdManager = messageIdManager;
         this.recipientRewriteTable = new RecipientRewriteTable(rrt, domainList);
     }
 
@@ -83,13 +92,14 @@ public class LocalDelivery extends GenericMailet {
 
         mailDispatcher = MailDispatcher.builder()
             .mailStore(SimpleMailStore.builder()
-                .mailboxAppender(new MailboxAppender(mailboxManager, getMailetContext().getLogger()))
+                .mailboxAppender(new MailboxAppender(mailboxManager, messageIdManager, getMailetContext().getLogger()))
                 .usersRepository(usersRepository)
                 .folder(MailboxConstants.INBOX)
                 .metric(metricFactory.generate(LOCAL_DELIVERED_MAILS_METRIC_NAME))
                 .log(log)
                 .build())
             .consume(getInitParameter("consume", true))
+            .singleInstance(messageIdManager.isPresent() && getInitParameter("singleInstance", true))
             .mailetContext(getMailetContext())
             .log(log)
             .build();
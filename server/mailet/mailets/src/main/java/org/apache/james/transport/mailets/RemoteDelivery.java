@@ -25,6 +25,9 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.inject.Inject;
@@ -42,11 +45,13 @@ import org.apache.james.transport.mailets.remoteDelivery.Bouncer;
 import org.apache.james.transport.mailets.remoteDelivery.DeliveryRunnable;
 import org.apache.james.transport.mailets.remoteDelivery.RemoteDeliveryConfiguration;
 import org.apache.james.transport.mailets.remoteDelivery.RemoteDeliverySocketFactory;
+import org.apache.james.transport.mailets.remoteDelivery.SMTPTransportPool;
 import org.apache.mailet.Mail;
 import org.apache.mailet.MailAddress;
 import org.apache.mailet.base.GenericMailet;
 import org.slf4j.Logger;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.HashMultimap;
 
 /**
@@ -117,6 +122,14 @@ import com.google.common.collect.HashMultimap;
  * Note: This facility should be used with extreme care by expert users with a thorough knowledge of the relevant RFCs and
  * the ability to perform their own problem resolutions.</li>
  * <li><b>debug</b> (optional) - a Boolean (true/false) indicating whether debugging is on. Default is false.</li>
+ * <li><b>connectionPool</b> (optional) - a Boolean (true/false) indicating whether SMTP sessions are kept open and reused
+ * for the next mails sent to the same server, a RSET separating the transactions. Default is false.</li>
+ * <li><b>connectionPoolMaxPerHost</b> (optional) - an Integer for the maximum number of idle sessions kept open per server.
+ * Default is 4.</li>
+ * <li><b>connectionPoolIdleTimeout</b> (optional) - a Long for the number of milliseconds after which an idle session is closed.
+ * Default is 30000.</li>
+ * <li><b>connectionPoolMaxMessagesPerConnection</b> (optional) - an Integer for the number of mails after which a session is
+ * closed. Default is 100.</li>
  * </ul>
  */
 public class RemoteDelivery extends GenericMailet {
@@ -139,6 +152,8 @@ public class RemoteDelivery extends GenericMailet {
     private Logger logger;
     private RemoteDeliveryConfiguration configuration;
     private ExecutorService executor;
+    private Optional<SMTPTransportPool> transportPool = Optional.absent();
+    private ScheduledExecutorService transportPoolEvictor;
 
     @Inject
     public RemoteDelivery(DNSService dnsServer, DomainList domainList, MailQueueFactory queueFactory, MetricFactory metricFactory) {
@@ -170,6 +185,9 @@ public class RemoteDelivery extends GenericMailet {
     }
 
     private void initDeliveryThreads() {
+        if (configuration.isConnectionPool()) {
+            initTransportPool();
+        }
         executor = Executors.newFixedThreadPool(configuration.getWorkersThreadCount());
         for (int a = 0; a < configuration.getWorkersThreadCount(); a++) {
             executor.execute(
@@ -180,10 +198,31 @@ public class RemoteDelivery extends GenericMailet {
                     logger,
                     getMailetContext(),
                     new Bouncer(configuration, getMailetContext(), logger),
+                    transportPool,
                     isDestroyed));
         }
     }
 
+    private void initTransportPool() {
+        final SMTPTransportPool pool = new SMTPTransportPool(configuration, metricFactory, logger);
+        transportPool = Optional.of(pool);
+        transportPoolEvictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RemoteDelivery connection pool evictor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = configuration.getConnectionPoolIdleTimeout();
+        transportPoolEvictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                pool.evictIdleConnections();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public String getMailetInfo() {
         return "RemoteDelivery Mailet";
@@ -260,6 +299,10 @@ public class RemoteDelivery extends GenericMailet {
         if (startThreads == THREAD_STATE.START_THREADS) {
             isDestroyed.set(true);
             executor.shutdown();
+            if (transportPool.isPresent()) {
+                transportPoolEvictor.shutdownNow();
+                transportPool.get().close();
+            }
             notifyAll();
         }
     }
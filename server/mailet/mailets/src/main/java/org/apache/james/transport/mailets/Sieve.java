@@ -27,12 +27,15 @@ import javax.mail.MessagingException;
 
 import org.apache.commons.logging.Log;
 import org.apache.james.mailbox.model.MailboxConstants;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.NoopMetricFactory;
 import org.apache.james.sieverepository.api.SieveRepository;
 import org.apache.james.transport.mailets.delivery.MailStore;
 import org.apache.james.transport.mailets.jsieve.CommonsLoggingAdapter;
 import org.apache.james.transport.mailets.jsieve.ResourceLocator;
 import org.apache.james.transport.mailets.jsieve.delivery.SieveExecutor;
 import org.apache.james.transport.mailets.jsieve.delivery.SievePoster;
+import org.apache.james.transport.mailets.jsieve.delivery.SieveScriptCache;
 import org.apache.james.user.api.UsersRepository;
 import org.apache.james.user.api.UsersRepositoryException;
 import org.apache.mailet.Mail;
@@ -45,21 +48,36 @@ import com.google.common.collect.ImmutableList;
 
 /**
  * Execute Sieve scripts for incoming emails, and set the result of the execution as attributes of the mail
+ *
+ * <p>Parsed scripts are cached per recipient and reused as long as the active script is unchanged. The optional
+ * <code>scriptCacheSize</code> parameter bounds the number of cached scripts (default 1000, 0 disables caching).</p>
  */
 public class Sieve extends GenericMailet {
 
+    public static final String SCRIPT_CACHE_SIZE = "scriptCacheSize";
+
     private final UsersRepository usersRepository;
     private final ResourceLocator resourceLocator;
+    private final MetricFactory metricFactory;
     private SieveExecutor sieveExecutor;
 
     @Inject
+    public Sieve(UsersRepository usersRepository, SieveRepository sieveRepository, MetricFactory metricFactory) throws MessagingException {
+        this(usersRepository, new ResourceLocator(sieveRepository, usersRepository), metricFactory);
+    }
+
     public Sieve(UsersRepository usersRepository, SieveRepository sieveRepository) throws MessagingException {
-        this(usersRepository, new ResourceLocator(sieveRepository, usersRepository));
+        this(usersRepository, sieveRepository, new NoopMetricFactory());
     }
 
     public Sieve(UsersRepository usersRepository, ResourceLocator resourceLocator) throws MessagingException {
+        this(usersRepository, resourceLocator, new NoopMetricFactory());
+    }
+
+    public Sieve(UsersRepository usersRepository, ResourceLocator resourceLocator, MetricFactory metricFactory) throws MessagingException {
         this.usersRepository = usersRepository;
         this.resourceLocator = resourceLocator;
+        this.metricFactory = metricFactory;
     }
 
     @Override
@@ -76,12 +94,26 @@ public class Sieve extends GenericMailet {
             .build();
         sieveExecutor = SieveExecutor.builder()
             .resourceLocator(resourceLocator)
+            .scriptCache(new SieveScriptCache(getScriptCacheSize(), metricFactory))
             .mailetContext(getMailetContext())
             .log(log)
             .sievePoster(new SievePoster(usersRepository, MailboxConstants.INBOX))
             .build();
     }
 
+    private int getScriptCacheSize() throws MessagingException {
+        String scriptCacheSize = getInitParameter(SCRIPT_CACHE_SIZE, String.valueOf(SieveScriptCache.DEFAULT_SIZE));
+        try {
+            int size = Integer.parseInt(scriptCacheSize);
+            if (size < 0) {
+                throw new MessagingException(SCRIPT_CACHE_SIZE + " should not be negative: " + scriptCacheSize);
+            }
+            return size;
+        } catch (NumberFormatException e) {
+            throw new MessagingException("Invalid " + SCRIPT_CACHE_SIZE + ": " + scriptCacheSize, e);
+        }
+    }
+
     @Override
     public void service(Mail mail) throws MessagingException {
         List<MailAddress> recipientsWithSuccessfulSieveExecution = executeRetrieveSuccess(mail);
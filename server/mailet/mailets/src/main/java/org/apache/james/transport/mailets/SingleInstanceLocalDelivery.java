@@ -0,0 +1,58 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.transport.mailets;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.james.domainlist.api.DomainList;
+import org.apache.james.mailbox.MailboxManager;
+import org.apache.james.mailbox.MessageIdManager;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.user.api.UsersRepository;
+
+import com.google.common.base.Optional;
+
+/**
+ * {@link LocalDelivery} storing the content of a mail with several local recipients only once,
+ * then adding it to the mailbox of each other recipient through the {@link MessageIdManager}.
+ *
+ * All envelope recipients share the stored content, which therefore carries no Delivered-To header. The
+ * recipients it was delivered to are listed in the {@link org.apache.james.transport.mailets.delivery.MailDispatcher#DELIVERED_TO_ATTRIBUTE}
+ * mail attribute. Recipients the shared content can not be added for, for instance because of their quota, are
+ * retried with their own copy before being bounced. Single instance storage can be turned off with the
+ * <code>singleInstance</code> parameter.
+ *
+ * This mailet requires a mailbox implementation providing a {@link MessageIdManager}.
+ */
+public class SingleInstanceLocalDelivery extends LocalDelivery {
+
+    @Inject
+    public SingleInstanceLocalDelivery(org.apache.james.rrt.api.RecipientRewriteTable rrt, UsersRepository usersRepository,
+                                       @Named("mailboxmanager") MailboxManager mailboxManager, MessageIdManager messageIdManager,
+                                       DomainList domainList, MetricFactory metricFactory) {
+        super(rrt, usersRepository, mailboxManager, Optional.of(messageIdManager), domainList, metricFactory);
+    }
+
+    @Override
+    public String getMailetInfo() {
+        return "Single Instance Local Delivery Mailet";
+    }
+
+}
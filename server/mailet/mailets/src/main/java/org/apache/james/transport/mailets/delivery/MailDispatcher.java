@@ -18,6 +18,7 @@
  ****************************************************************/
 package org.apache.james.transport.mailets.delivery;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -34,11 +35,13 @@ import org.apache.mailet.base.RFC2822Headers;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 public class MailDispatcher {
 
     public static final String DELIVERED_TO = "Delivered-To";
     public static final String[] NO_HEADERS = {};
+    public static final String DELIVERED_TO_ATTRIBUTE = "org.apache.james.transport.mailets.delivery.DeliveredTo";
 
     public static Builder builder() {
         return new Builder();
@@ -48,6 +51,7 @@ public class MailDispatcher {
         public static final boolean CONSUME = true;
         private MailStore mailStore;
         private Optional<Boolean> consume = Optional.absent();
+        private Optional<Boolean> singleInstance = Optional.absent();
         private MailetContext mailetContext;
         private Log log;
 
@@ -56,6 +60,15 @@ public class MailDispatcher {
             return this;
         }
 
+        /**
+         * Store a single copy of the content for all the recipients. This copy carries no Delivered-To header, the
+         * recipients it was delivered to are listed in the {@link MailDispatcher#DELIVERED_TO_ATTRIBUTE} attribute.
+         */
+        public Builder singleInstance(boolean singleInstance) {
+            this.singleInstance = Optional.of(singleInstance);
+            return this;
+        }
+
         public Builder mailStore(MailStore mailStore) {
             this.mailStore = mailStore;
             return this;
@@ -75,19 +88,23 @@ public class MailDispatcher {
             Preconditions.checkNotNull(mailStore);
             Preconditions.checkNotNull(log);
             Preconditions.checkNotNull(mailetContext);
-            return new MailDispatcher(mailStore, consume.or(CONSUME), log, mailetContext);
+            Preconditions.checkArgument(!singleInstance.or(false) || mailStore instanceof MultiRecipientMailStore,
+                "Single instance delivery requires a MultiRecipientMailStore");
+            return new MailDispatcher(mailStore, consume.or(CONSUME), singleInstance.or(false), log, mailetContext);
         }
 
     }
 
     private final MailStore mailStore;
     private final boolean consume;
+    private final boolean singleInstance;
     private final MailetContext mailetContext;
     private final Log log;
 
-    private MailDispatcher(MailStore mailStore, boolean consume, Log log, MailetContext mailetContext) {
+    private MailDispatcher(MailStore mailStore, boolean consume, boolean singleInstance, Log log, MailetContext mailetContext) {
         this.mailStore = mailStore;
         this.consume = consume;
+        this.singleInstance = singleInstance;
         this.log = log;
         this.mailetContext = mailetContext;
     }
@@ -135,9 +152,40 @@ public class MailDispatcher {
         }
     }
 
-    private Collection<MailAddress> deliver(Mail mail, MimeMessage message) {
-        Collection<MailAddress> errors = new Vector<MailAddress>();
+    private Collection<MailAddress> deliver(Mail mail, MimeMessage message) throws MessagingException {
+        if (singleInstance && mail.getRecipients().size() > 1) {
+            return deliverSingleInstance(mail, message);
+        }
+        return deliverEach(mail.getRecipients(), mail, message);
+    }
+
+    /**
+     * All envelope recipients share a single stored instance. As its content is shared, it does not carry any
+     * Delivered-To header, which would disclose the other recipients: the recipients the instance was delivered to
+     * are recorded in the {@link #DELIVERED_TO_ATTRIBUTE} attribute instead. Recipients the shared instance could
+     * not be delivered to are retried one by one with their own Delivered-To header.
+     */
+    private Collection<MailAddress> deliverSingleInstance(Mail mail, MimeMessage message) throws MessagingException {
+        Collection<MailAddress> failedRecipients = ((MultiRecipientMailStore) mailStore).storeMail(mail.getRecipients(), mail);
+
+        ArrayList<String> deliveredTo = new ArrayList<String>();
         for (MailAddress recipient : mail.getRecipients()) {
+            if (!failedRecipients.contains(recipient)) {
+                deliveredTo.add(recipient.toString());
+            }
+        }
+        mail.setAttribute(DELIVERED_TO_ATTRIBUTE, deliveredTo);
+
+        if (failedRecipients.isEmpty()) {
+            return ImmutableList.of();
+        }
+        log.info("Delivering a separate copy to " + failedRecipients.size() + " recipients the shared copy could not be stored for");
+        return deliverEach(ImmutableList.copyOf(failedRecipients), mail, message);
+    }
+
+    private Collection<MailAddress> deliverEach(Collection<MailAddress> recipients, Mail mail, MimeMessage message) {
+        Collection<MailAddress> errors = new Vector<MailAddress>();
+        for (MailAddress recipient : recipients) {
             try {
                 // Add qmail's de facto standard Delivered-To header
                 message.addHeader(DELIVERED_TO, recipient.toString());
@@ -19,7 +19,13 @@
 
 package org.apache.james.transport.mailets.delivery;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.mail.Flags;
 import javax.mail.MessagingException;
@@ -28,12 +34,17 @@ import javax.mail.internet.MimeMessage;
 import org.apache.james.core.MimeMessageInputStream;
 import org.apache.james.mailbox.MailboxManager;
 import org.apache.james.mailbox.MailboxSession;
+import org.apache.james.mailbox.MessageIdManager;
 import org.apache.james.mailbox.MessageManager;
 import org.apache.james.mailbox.exception.BadCredentialsException;
 import org.apache.james.mailbox.exception.MailboxException;
+import org.apache.james.mailbox.model.ComposedMessageId;
+import org.apache.james.mailbox.model.MailboxId;
 import org.apache.james.mailbox.model.MailboxPath;
 import org.slf4j.Logger;
 
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 
 public class MailboxAppender {
@@ -41,16 +52,78 @@ public class MailboxAppender {
     private static final Flags FLAGS = null;
 
     private final MailboxManager mailboxManager;
+    private final Optional<MessageIdManager> messageIdManager;
     private final Logger logger;
 
     public MailboxAppender(MailboxManager mailboxManager, Logger logger) {
+        this(mailboxManager, Optional.<MessageIdManager>absent(), logger);
+    }
+
+    public MailboxAppender(MailboxManager mailboxManager, Optional<MessageIdManager> messageIdManager, Logger logger) {
         this.mailboxManager = mailboxManager;
+        this.messageIdManager = messageIdManager;
         this.logger = logger;
     }
 
-    public void append(MimeMessage mail, String user, String folder) throws MessagingException {
+    public ComposedMessageId append(MimeMessage mail, String user, String folder) throws MessagingException {
         MailboxSession session = createMailboxSession(user);
-        append(mail, user, useSlashAsSeparator(folder, session), session);
+        return append(mail, user, useSlashAsSeparator(folder, session), session);
+    }
+
+    public boolean supportsCopy() {
+        return messageIdManager.isPresent();
+    }
+
+    /**
+     * Add a message already stored in the mailbox of <code>sourceUser</code> to the folder of each user of
+     * <code>folderByUser</code>, sharing the stored content.
+     *
+     * @return the users the message could not be added for
+     */
+    public Collection<String> copy(ComposedMessageId storedMessage, String sourceUser, Map<String, String> folderByUser) throws MessagingException {
+        Preconditions.checkState(supportsCopy(), "Copying messages requires a MessageIdManager");
+        Collection<String> failedUsers = new ArrayList<String>();
+        List<MailboxSession> sessions = new ArrayList<MailboxSession>();
+        Map<MailboxId, MailboxSession> targets = new LinkedHashMap<MailboxId, MailboxSession>();
+        Map<MailboxId, String> userByTarget = new HashMap<MailboxId, String>();
+        MailboxSession sourceSession = createMailboxSession(sourceUser);
+        try {
+            for (Map.Entry<String, String> userFolder : folderByUser.entrySet()) {
+                try {
+                    MailboxSession session = createMailboxSession(userFolder.getKey());
+                    mailboxManager.startProcessingRequest(session);
+                    sessions.add(session);
+                    MailboxId target = retrieveTargetMailbox(userFolder.getKey(), userFolder.getValue(), session);
+                    targets.put(target, session);
+                    userByTarget.put(target, userFolder.getKey());
+                } catch (MessagingException e) {
+                    logger.error("Can not access mailbox of " + userFolder.getKey(), e);
+                    failedUsers.add(userFolder.getKey());
+                } catch (MailboxException e) {
+                    logger.error("Can not access mailbox of " + userFolder.getKey(), e);
+                    failedUsers.add(userFolder.getKey());
+                }
+            }
+            if (!targets.isEmpty()) {
+                for (MailboxId failedTarget : messageIdManager.get().copyInMailboxes(storedMessage.getMessageId(), sourceSession, targets)) {
+                    failedUsers.add(userByTarget.get(failedTarget));
+                }
+            }
+            return failedUsers;
+        } catch (MailboxException e) {
+            throw new MessagingException("Unable to access mailbox.", e);
+        } finally {
+            for (MailboxSession session : sessions) {
+                closeProcessing(session);
+            }
+            closeSourceSession(sourceSession);
+        }
+    }
+
+    private MailboxId retrieveTargetMailbox(String user, String folder, MailboxSession session) throws MessagingException, MailboxException {
+        MailboxPath mailboxPath = new MailboxPath(session.getPersonalSpace(), user, useSlashAsSeparator(folder, session));
+        createMailboxIfNotExist(session, mailboxPath);
+        return mailboxManager.getMailbox(mailboxPath, session).getId();
     }
 
     private String useSlashAsSeparator(String urlPath, MailboxSession session) throws MessagingException {
@@ -64,11 +137,11 @@ public class MailboxAppender {
         return destination;
     }
 
-    private void append(MimeMessage mail, String user, String folder, MailboxSession session) throws MessagingException {
+    private ComposedMessageId append(MimeMessage mail, String user, String folder, MailboxSession session) throws MessagingException {
         mailboxManager.startProcessingRequest(session);
         try {
             MailboxPath mailboxPath = new MailboxPath(session.getPersonalSpace(), user, folder);
-            appendMessageToMailbox(mail, session, mailboxPath);
+            return appendMessageToMailbox(mail, session, mailboxPath);
         } catch (MailboxException e) {
             throw new MessagingException("Unable to access mailbox.", e);
         } finally {
@@ -76,13 +149,13 @@ public class MailboxAppender {
         }
     }
 
-    private void appendMessageToMailbox(MimeMessage mail, MailboxSession session, MailboxPath path) throws MailboxException, MessagingException {
+    private ComposedMessageId appendMessageToMailbox(MimeMessage mail, MailboxSession session, MailboxPath path) throws MailboxException, MessagingException {
         createMailboxIfNotExist(session, path);
         final MessageManager mailbox = mailboxManager.getMailbox(path, session);
         if (mailbox == null) {
             throw new MessagingException("Mailbox " + path + " for user " + session.getUser().getUserName() + " was not found on this server.");
         }
-        mailbox.appendMessage(new MimeMessageInputStream(mail), new Date(), session, IS_RECENT, FLAGS);
+        return mailbox.appendMessage(new MimeMessageInputStream(mail), new Date(), session, IS_RECENT, FLAGS);
     }
 
     private void createMailboxIfNotExist(MailboxSession session, MailboxPath path) throws MailboxException {
@@ -101,6 +174,15 @@ public class MailboxAppender {
         }
     }
 
+    private void closeSourceSession(MailboxSession sourceSession) throws MessagingException {
+        sourceSession.close();
+        try {
+            mailboxManager.logout(sourceSession, true);
+        } catch (MailboxException e) {
+            throw new MessagingException("Can logout from mailbox", e);
+        }
+    }
+
     private void closeProcessing(MailboxSession session) throws MessagingException {
         session.close();
         try {
@@ -19,18 +19,27 @@
 
 package org.apache.james.transport.mailets.delivery;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import javax.mail.MessagingException;
 
 import org.apache.commons.logging.Log;
+import org.apache.james.mailbox.model.ComposedMessageId;
 import org.apache.james.metrics.api.Metric;
 import org.apache.james.user.api.UsersRepository;
 import org.apache.james.user.api.UsersRepositoryException;
 import org.apache.mailet.Mail;
 import org.apache.mailet.MailAddress;
 
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 
-public class SimpleMailStore implements MailStore {
+public class SimpleMailStore implements MultiRecipientMailStore {
 
     public static Builder builder() {
         return new Builder();
@@ -99,6 +108,59 @@ public class SimpleMailStore implements MailStore {
         String locatedFolder = locateFolder(username, mail);
         mailboxAppender.append(mail.getMessage(), username, locatedFolder);
 
+        recordDelivery(recipient, mail, locatedFolder);
+    }
+
+    @Override
+    public Collection<MailAddress> storeMail(Collection<MailAddress> recipients, Mail mail) {
+        Collection<MailAddress> errors = new ArrayList<MailAddress>();
+        Optional<ComposedMessageId> storedMessage = Optional.absent();
+        String storedMessageOwner = null;
+        Map<String, String> folderByUser = new LinkedHashMap<String, String>();
+        ListMultimap<String, MailAddress> recipientsByUser = ArrayListMultimap.create();
+        for (MailAddress recipient : recipients) {
+            try {
+                String username = computeUsername(recipient);
+                String locatedFolder = locateFolder(username, mail);
+                if (storedMessage.isPresent() && mailboxAppender.supportsCopy()) {
+                    folderByUser.put(username, locatedFolder);
+                    recipientsByUser.put(username, recipient);
+                } else {
+                    storedMessage = Optional.fromNullable(mailboxAppender.append(mail.getMessage(), username, locatedFolder));
+                    storedMessageOwner = username;
+                    recordDelivery(recipient, mail, locatedFolder);
+                }
+            } catch (Exception ex) {
+                log.error("Error while storing mail.", ex);
+                errors.add(recipient);
+            }
+        }
+        if (!folderByUser.isEmpty()) {
+            errors.addAll(copy(storedMessage.get(), storedMessageOwner, folderByUser, recipientsByUser, mail));
+        }
+        return errors;
+    }
+
+    private Collection<MailAddress> copy(ComposedMessageId storedMessage, String storedMessageOwner, Map<String, String> folderByUser,
+                                         ListMultimap<String, MailAddress> recipientsByUser, Mail mail) {
+        try {
+            Collection<String> failedUsers = mailboxAppender.copy(storedMessage, storedMessageOwner, folderByUser);
+            Collection<MailAddress> errors = new ArrayList<MailAddress>();
+            for (Map.Entry<String, MailAddress> userRecipient : recipientsByUser.entries()) {
+                if (failedUsers.contains(userRecipient.getKey())) {
+                    errors.add(userRecipient.getValue());
+                } else {
+                    recordDelivery(userRecipient.getValue(), mail, folderByUser.get(userRecipient.getKey()));
+                }
+            }
+            return errors;
+        } catch (Exception ex) {
+            log.error("Error while storing mail.", ex);
+            return recipientsByUser.values();
+        }
+    }
+
+    private void recordDelivery(MailAddress recipient, Mail mail, String locatedFolder) {
         metric.increment();
         log.info("Local delivered mail " + mail.getName() + " successfully from " + DeliveryUtils.prettyPrint(mail.getSender())
             + " to " + DeliveryUtils.prettyPrint(recipient) + " in folder " + locatedFolder);
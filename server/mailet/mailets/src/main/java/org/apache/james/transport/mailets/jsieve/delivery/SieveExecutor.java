@@ -21,10 +21,12 @@
 package org.apache.james.transport.mailets.jsieve.delivery;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.mail.MessagingException;
 
 import org.apache.commons.logging.Log;
+import org.apache.james.metrics.api.NoopMetricFactory;
 import org.apache.james.sieverepository.api.exception.ScriptNotFoundException;
 import org.apache.james.transport.mailets.jsieve.ActionDispatcher;
 import org.apache.james.transport.mailets.jsieve.ResourceLocator;
@@ -41,6 +43,7 @@ import org.apache.mailet.MailetContext;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
 
 public class SieveExecutor {
 
@@ -52,6 +55,7 @@ public class SieveExecutor {
         private MailetContext mailetContext;
         private SievePoster sievePoster;
         private ResourceLocator resourceLocator;
+        private SieveScriptCache scriptCache;
         private Log log;
 
         public Builder sievePoster(SievePoster sievePoster) {
@@ -69,6 +73,11 @@ public class SieveExecutor {
             return this;
         }
 
+        public Builder scriptCache(SieveScriptCache scriptCache) {
+            this.scriptCache = scriptCache;
+            return this;
+        }
+
         public Builder log(Log log) {
             this.log = log;
             return this;
@@ -79,22 +88,32 @@ public class SieveExecutor {
             Preconditions.checkNotNull(resourceLocator);
             Preconditions.checkNotNull(log);
             Preconditions.checkNotNull(sievePoster);
-            return new SieveExecutor(mailetContext, sievePoster, resourceLocator, log);
+            if (scriptCache == null) {
+                scriptCache = new SieveScriptCache(SieveScriptCache.DEFAULT_SIZE, new NoopMetricFactory());
+            }
+            return new SieveExecutor(mailetContext, sievePoster, resourceLocator, scriptCache, log);
         }
     }
 
     private final MailetContext mailetContext;
     private final SievePoster sievePoster;
     private final ResourceLocator resourceLocator;
+    private final SieveScriptCache scriptCache;
     private final SieveFactory factory;
     private final ActionDispatcher actionDispatcher;
     private final Log log;
 
     public SieveExecutor(MailetContext mailetContext, SievePoster sievePoster,
                          ResourceLocator resourceLocator, Log log) throws MessagingException {
+        this(mailetContext, sievePoster, resourceLocator, new SieveScriptCache(SieveScriptCache.DEFAULT_SIZE, new NoopMetricFactory()), log);
+    }
+
+    public SieveExecutor(MailetContext mailetContext, SievePoster sievePoster,
+                         ResourceLocator resourceLocator, SieveScriptCache scriptCache, Log log) throws MessagingException {
         this.mailetContext = mailetContext;
         this.sievePoster = sievePoster;
         this.resourceLocator = resourceLocator;
+        this.scriptCache = scriptCache;
         factory = createFactory(log);
         this.actionDispatcher = new ActionDispatcher();
         this.log = log;
@@ -139,7 +158,8 @@ public class SieveExecutor {
             aMailAdapter.setLog(log);
             // This logging operation is potentially costly
             log.debug("Evaluating " + aMailAdapter.toString() + " against \"" + recipient.asPrettyString() + "\"");
-            factory.evaluate(aMailAdapter, factory.parse(userSieveInformation.getScriptContent()));
+            factory.evaluate(aMailAdapter, scriptCache.get(recipient, userSieveInformation.getScriptActivationDate(),
+                readScript(userSieveInformation), factory));
         } catch (SieveException ex) {
             handleFailure(recipient, aMail, ex);
         }
@@ -151,6 +171,15 @@ public class SieveExecutor {
         }
     }
 
+    private byte[] readScript(ResourceLocator.UserSieveInformation userSieveInformation) throws IOException {
+        InputStream scriptContent = userSieveInformation.getScriptContent();
+        try {
+            return ByteStreams.toByteArray(scriptContent);
+        } finally {
+            scriptContent.close();
+        }
+    }
+
     protected void handleFailure(MailAddress recipient, Mail aMail, Exception ex) throws MessagingException, IOException {
         mailetContext.sendMail(recipient, ImmutableList.of(recipient), SieveFailureMessageComposer.composeMessage(aMail, ex, recipient.toString()));
     }
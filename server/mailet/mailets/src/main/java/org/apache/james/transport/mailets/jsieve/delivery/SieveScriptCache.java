@@ -0,0 +1,126 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.transport.mailets.jsieve.delivery;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.jsieve.SieveFactory;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.parser.generated.ParseException;
+import org.apache.mailet.MailAddress;
+import org.joda.time.DateTime;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+
+/**
+ * Bounded cache of parsed Sieve scripts, one entry per recipient.
+ *
+ * An entry is only reused when both the activation date and the content of the
+ * active script are the ones it was parsed from: storing a new version of the
+ * active script or activating another one (ManageSieve PUTSCRIPT, SETACTIVE)
+ * triggers a new parse for the next delivered mail, whatever the
+ * {@link org.apache.james.sieverepository.api.SieveRepository} implementation.
+ */
+public class SieveScriptCache {
+
+    public static final int DEFAULT_SIZE = 1000;
+    public static final String HIT_METRIC_NAME = "sieveScriptCacheHit";
+    public static final String MISS_METRIC_NAME = "sieveScriptCacheMiss";
+    public static final String SIZE_METRIC_NAME = "sieveScriptCacheSize";
+
+    private static class ParsedScript {
+        private final DateTime activationDate;
+        private final byte[] content;
+        private final Node node;
+
+        private ParsedScript(DateTime activationDate, byte[] content, Node node) {
+            this.activationDate = activationDate;
+            this.content = content;
+            this.node = node;
+        }
+
+        private boolean isParsedFrom(DateTime activationDate, byte[] content) {
+            return Objects.equal(this.activationDate, activationDate)
+                && Arrays.equals(this.content, content);
+        }
+    }
+
+    private final Cache<MailAddress, ParsedScript> scripts;
+    private final Metric hitMetric;
+    private final Metric missMetric;
+    private final Metric sizeMetric;
+
+    /**
+     * @param maximumSize
+     *            maximum number of parsed scripts kept. 0 disables caching.
+     */
+    public SieveScriptCache(long maximumSize, MetricFactory metricFactory) {
+        Preconditions.checkArgument(maximumSize >= 0, "Sieve script cache size should not be negative");
+        this.hitMetric = metricFactory.generate(HIT_METRIC_NAME);
+        this.missMetric = metricFactory.generate(MISS_METRIC_NAME);
+        this.sizeMetric = metricFactory.generate(SIZE_METRIC_NAME);
+        this.scripts = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .removalListener(new RemovalListener<MailAddress, ParsedScript>() {
+                @Override
+                public void onRemoval(RemovalNotification<MailAddress, ParsedScript> notification) {
+                    sizeMetric.decrement();
+                }
+            })
+            .build();
+    }
+
+    /**
+     * Return the parsed active script of the given recipient, parsing it only
+     * if the cached version is missing or stale.
+     */
+    public Node get(MailAddress recipient, DateTime activationDate, byte[] content, SieveFactory factory) throws ParseException {
+        ParsedScript cached = scripts.getIfPresent(recipient);
+        if (cached != null && cached.isParsedFrom(activationDate, content)) {
+            hitMetric.increment();
+            return cached.node;
+        }
+        missMetric.increment();
+        Node node = factory.parse(new ByteArrayInputStream(content));
+        scripts.put(recipient, new ParsedScript(activationDate, content, node));
+        sizeMetric.increment();
+        return node;
+    }
+
+    public void invalidate(MailAddress recipient) {
+        scripts.invalidate(recipient);
+    }
+
+    public void invalidateAll() {
+        scripts.invalidateAll();
+    }
+
+    public long size() {
+        return scripts.size();
+    }
+}
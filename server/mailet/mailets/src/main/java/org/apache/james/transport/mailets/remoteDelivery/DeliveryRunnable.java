@@ -35,6 +35,7 @@ import org.apache.mailet.MailetContext;
 import org.slf4j.Logger;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
 
 public class DeliveryRunnable implements Runnable {
@@ -61,8 +62,17 @@ public class DeliveryRunnable implements Runnable {
 
     public DeliveryRunnable(MailQueue queue, RemoteDeliveryConfiguration configuration, DNSService dnsServer, MetricFactory metricFactory,
                             Logger logger, MailetContext mailetContext, Bouncer bouncer, AtomicBoolean isDestroyed) {
+        this(queue, configuration, dnsServer, metricFactory, logger, mailetContext, bouncer, Optional.<SMTPTransportPool>absent(), isDestroyed);
+    }
+
+    /**
+     * @param transportPool when present, consecutive mails to the same host are sent over the same pooled SMTP session
+     */
+    public DeliveryRunnable(MailQueue queue, RemoteDeliveryConfiguration configuration, DNSService dnsServer, MetricFactory metricFactory,
+                            Logger logger, MailetContext mailetContext, Bouncer bouncer, Optional<SMTPTransportPool> transportPool,
+                            AtomicBoolean isDestroyed) {
         this(queue, configuration, metricFactory, logger, bouncer,
-            new MailDelivrer(configuration, new MailDelivrerToHost(configuration, mailetContext, logger), dnsServer, bouncer, logger),
+            new MailDelivrer(configuration, new MailDelivrerToHost(configuration, mailetContext, transportPool, logger), dnsServer, bouncer, logger),
             isDestroyed, CURRENT_DATE_SUPPLIER);
     }
 
@@ -20,7 +20,6 @@
 package org.apache.james.transport.mailets.remoteDelivery;
 
 import java.io.IOException;
-import java.util.Properties;
 
 import javax.mail.MessagingException;
 import javax.mail.Session;
@@ -32,6 +31,8 @@ import org.apache.mailet.Mail;
 import org.apache.mailet.MailetContext;
 import org.slf4j.Logger;
 
+import com.google.common.base.Optional;
+import com.sun.mail.smtp.SMTPMessage;
 import com.sun.mail.smtp.SMTPTransport;
 
 @SuppressWarnings("deprecation")
@@ -41,19 +42,26 @@ public class MailDelivrerToHost {
     private final RemoteDeliveryConfiguration configuration;
     private final Converter7Bit converter7Bit;
     private final Session session;
+    private final Optional<SMTPTransportPool> transportPool;
     private final Logger logger;
 
     public MailDelivrerToHost(RemoteDeliveryConfiguration remoteDeliveryConfiguration, MailetContext mailetContext, Logger logger) {
+        this(remoteDeliveryConfiguration, mailetContext, Optional.<SMTPTransportPool>absent(), logger);
+    }
+
+    public MailDelivrerToHost(RemoteDeliveryConfiguration remoteDeliveryConfiguration, MailetContext mailetContext,
+                              Optional<SMTPTransportPool> transportPool, Logger logger) {
         this.configuration = remoteDeliveryConfiguration;
         this.converter7Bit = new Converter7Bit(mailetContext);
         this.session = Session.getInstance(configuration.createFinalJavaxProperties());
+        this.transportPool = transportPool;
         this.logger = logger;
     }
 
     public ExecutionResult tryDeliveryToHost(Mail mail, InternetAddress[] addr, HostAddress outgoingMailServer) throws MessagingException {
-        Properties props = getPropertiesForMail(mail);
+        String envelopeFrom = getEnvelopeFrom(mail);
         logger.debug("Attempting delivery of {} to host {} at {} from {}",
-            mail.getName(), outgoingMailServer.getHostName(), outgoingMailServer.getHost(), props.get("mail.smtp.from"));
+            mail.getName(), outgoingMailServer.getHostName(), outgoingMailServer.getHost(), envelopeFrom);
 
         // Many of these properties are only in later JavaMail versions
         // "mail.smtp.ehlo"           //default true
@@ -61,29 +69,76 @@ public class MailDelivrerToHost {
         // "mail.smtp.dsn.ret"        //default to nothing... appended as RET= after MAIL FROM line.
         // "mail.smtp.dsn.notify"     //default to nothing... appended as NOTIFY= after RCPT TO line.
 
+        if (transportPool.isPresent()) {
+            return tryPooledDeliveryToHost(transportPool.get(), mail, addr, outgoingMailServer, envelopeFrom);
+        }
+
         SMTPTransport transport = null;
         try {
             transport = (SMTPTransport) session.getTransport(outgoingMailServer);
-            transport.setLocalHost( props.getProperty("mail.smtp.localhost", configuration.getHeloNameProvider().getHeloName()) );
+            transport.setLocalHost(getLocalHost());
             connect(outgoingMailServer, transport);
-            transport.sendMessage(adaptToTransport(mail.getMessage(), transport), addr);
+            transport.sendMessage(withEnvelope(adaptToTransport(mail.getMessage(), transport), envelopeFrom), addr);
             logger.debug("Mail ({})  sent successfully to {} at {} from {} for {}", mail.getName(), outgoingMailServer.getHostName(),
-                outgoingMailServer.getHost(), props.get("mail.smtp.from"), mail.getRecipients());
+                outgoingMailServer.getHost(), envelopeFrom, mail.getRecipients());
         } finally {
             closeTransport(mail, outgoingMailServer, transport);
         }
         return ExecutionResult.success();
     }
 
-    private Properties getPropertiesForMail(Mail mail) {
-        Properties props = session.getProperties();
+    /**
+     * Send the mail over a pooled session to the host, opening one if none is
+     * idle. The session is only given back to the pool once the mail
+     * transaction succeeded.
+     */
+    private ExecutionResult tryPooledDeliveryToHost(SMTPTransportPool pool, Mail mail, InternetAddress[] addr,
+                                                    HostAddress outgoingMailServer, String envelopeFrom) throws MessagingException {
+        SMTPTransportPool.PooledTransport pooled = pool.borrow(outgoingMailServer).orNull();
+        if (pooled == null) {
+            SMTPTransport transport = (SMTPTransport) session.getTransport(outgoingMailServer);
+            transport.setLocalHost(getLocalHost());
+            pooled = pool.register(outgoingMailServer, transport);
+        }
+        boolean success = false;
+        try {
+            SMTPTransport transport = pooled.getTransport();
+            if (!pooled.isReused()) {
+                connect(outgoingMailServer, transport);
+            }
+            transport.sendMessage(withEnvelope(adaptToTransport(mail.getMessage(), transport), envelopeFrom), addr);
+            success = true;
+            logger.debug("Mail ({})  sent successfully to {} at {} from {} for {}", mail.getName(), outgoingMailServer.getHostName(),
+                outgoingMailServer.getHost(), envelopeFrom, mail.getRecipients());
+        } finally {
+            if (success) {
+                pool.release(pooled);
+            } else {
+                pool.discard(pooled);
+            }
+        }
+        return ExecutionResult.success();
+    }
+
+    private String getEnvelopeFrom(Mail mail) {
         if (mail.getSender() == null) {
-            props.put("mail.smtp.from", "<>");
-        } else {
-            String sender = mail.getSender().toString();
-            props.put("mail.smtp.from", sender);
+            return "<>";
         }
-        return props;
+        return mail.getSender().toString();
+    }
+
+    private String getLocalHost() {
+        return session.getProperties().getProperty("mail.smtp.localhost", configuration.getHeloNameProvider().getHeloName());
+    }
+
+    /**
+     * The envelope sender is carried by the message rather than by the session properties: these are shared by the
+     * delivery threads, and by the pooled transports.
+     */
+    private SMTPMessage withEnvelope(MimeMessage message, String envelopeFrom) throws MessagingException {
+        SMTPMessage smtpMessage = new SMTPMessage(message);
+        smtpMessage.setEnvelopeFrom(envelopeFrom);
+        return smtpMessage;
     }
 
     private void connect(HostAddress outgoingMailServer, SMTPTransport transport) throws MessagingException {
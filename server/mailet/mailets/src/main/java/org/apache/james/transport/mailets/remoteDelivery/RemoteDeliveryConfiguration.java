@@ -59,12 +59,19 @@ public class RemoteDeliveryConfiguration {
     public static final String MAX_RETRIES = "maxRetries";
     public static final String DELAY_TIME = "delayTime";
     public static final String DEBUG = "debug";
+    public static final String CONNECTION_POOL = "connectionPool";
+    public static final String CONNECTION_POOL_MAX_PER_HOST = "connectionPoolMaxPerHost";
+    public static final String CONNECTION_POOL_IDLE_TIMEOUT = "connectionPoolIdleTimeout";
+    public static final String CONNECTION_POOL_MAX_MESSAGES = "connectionPoolMaxMessagesPerConnection";
     public static final int DEFAULT_SMTP_TIMEOUT = 180000;
     public static final String DEFAULT_OUTGOING_QUEUE_NAME = "outgoing";
     public static final int DEFAULT_CONNECTION_TIMEOUT = 60000;
     public static final int DEFAULT_DNS_RETRY_PROBLEM = 0;
     public static final int DEFAULT_MAX_RETRY = 5;
     public static final String ADDRESS_PORT_SEPARATOR = ":";
+    public static final int DEFAULT_CONNECTION_POOL_MAX_PER_HOST = 4;
+    public static final long DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT = 30000;
+    public static final int DEFAULT_CONNECTION_POOL_MAX_MESSAGES = 100;
 
     private final boolean isDebug;
     private final boolean usePriority;
@@ -72,11 +79,15 @@ public class RemoteDeliveryConfiguration {
     private final boolean isSSLEnable;
     private final boolean isBindUsed;
     private final boolean sendPartial;
+    private final boolean connectionPool;
     private final int maxRetries;
     private final long smtpTimeout;
     private final int dnsProblemRetry;
     private final int connectionTimeout;
     private final int workersThreadCount;
+    private final int connectionPoolMaxPerHost;
+    private final long connectionPoolIdleTimeout;
+    private final int connectionPoolMaxMessages;
     private final List<Long> delayTimes;
     private final HeloNameProvider heloNameProvider;
     private final String outGoingQueueName;
@@ -93,6 +104,7 @@ public class RemoteDeliveryConfiguration {
         isSSLEnable = MailetUtil.getInitParameter(mailetConfig, SSL_ENABLE).or(false);
         usePriority = MailetUtil.getInitParameter(mailetConfig, USE_PRIORITY).or(false);
         sendPartial = MailetUtil.getInitParameter(mailetConfig, SENDPARTIAL).or(false);
+        connectionPool = MailetUtil.getInitParameter(mailetConfig, CONNECTION_POOL).or(false);
         outGoingQueueName = Optional.fromNullable(mailetConfig.getInitParameter(OUTGOING)).or(DEFAULT_OUTGOING_QUEUE_NAME);
         bounceProcessor = mailetConfig.getInitParameter(BOUNCE_PROCESSOR);
         bindAddress = mailetConfig.getInitParameter(BIND);
@@ -105,6 +117,9 @@ public class RemoteDeliveryConfiguration {
         dnsProblemRetry = computeDnsProblemRetry(mailetConfig);
         heloNameProvider = new HeloNameProvider(mailetConfig.getInitParameter(HELO_NAME), domainList);
         workersThreadCount = Integer.valueOf(mailetConfig.getInitParameter(DELIVERY_THREADS));
+        connectionPoolMaxPerHost = (int) computePositive(mailetConfig, CONNECTION_POOL_MAX_PER_HOST, DEFAULT_CONNECTION_POOL_MAX_PER_HOST);
+        connectionPoolIdleTimeout = computePositive(mailetConfig, CONNECTION_POOL_IDLE_TIMEOUT, DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT);
+        connectionPoolMaxMessages = (int) computePositive(mailetConfig, CONNECTION_POOL_MAX_MESSAGES, DEFAULT_CONNECTION_POOL_MAX_MESSAGES);
 
         String gatewayPort = mailetConfig.getInitParameter(GATEWAY_PORT);
         String gateway = mailetConfig.getInitParameter(GATEWAY);
@@ -140,6 +155,23 @@ public class RemoteDeliveryConfiguration {
         }
     }
 
+    private long computePositive(MailetConfig mailetConfig, String parameter, long defaultValue) {
+        String value = mailetConfig.getInitParameter(parameter);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            long result = Long.valueOf(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException e) {
+            // fall back to the default value
+        }
+        LOGGER.warn("Invalid {} setting: {}", parameter, value);
+        return defaultValue;
+    }
+
     private int computeConnectionTimeout(MailetConfig mailetConfig) {
         try {
             return Integer.valueOf(
@@ -259,6 +291,22 @@ public class RemoteDeliveryConfiguration {
         return connectionTimeout;
     }
 
+    public boolean isConnectionPool() {
+        return connectionPool;
+    }
+
+    public int getConnectionPoolMaxPerHost() {
+        return connectionPoolMaxPerHost;
+    }
+
+    public long getConnectionPoolIdleTimeout() {
+        return connectionPoolIdleTimeout;
+    }
+
+    public int getConnectionPoolMaxMessages() {
+        return connectionPoolMaxMessages;
+    }
+
     public int getWorkersThreadCount() {
         return workersThreadCount;
     }
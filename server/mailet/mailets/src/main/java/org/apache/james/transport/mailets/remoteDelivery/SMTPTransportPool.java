@@ -0,0 +1,276 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.transport.mailets.remoteDelivery;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.mail.MessagingException;
+
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.mailet.HostAddress;
+import org.slf4j.Logger;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+
+import com.sun.mail.smtp.SMTPTransport;
+
+/**
+ * Keeps the {@link SMTPTransport}s connected (and authenticated) to remote
+ * hosts open between deliveries, so that the mails sent to the same host share
+ * one SMTP session.
+ * <p>
+ * A transport is checked out with {@link #borrow(HostAddress)} and given back
+ * with {@link #release(PooledTransport)} once its mail transaction succeeded,
+ * or {@link #discard(PooledTransport)} otherwise. Before being reused, a
+ * transport is sent a RSET, which both starts a new transaction and checks the
+ * connection is still alive. At most <code>maxPerHost</code> idle transports
+ * are kept per host, each for at most <code>idleTimeout</code> milliseconds
+ * and <code>maxMessages</code> mails.
+ * </p>
+ */
+@SuppressWarnings("deprecation")
+public class SMTPTransportPool {
+
+    public static final String CONNECTIONS_OPENED = "remoteDeliveryConnectionsOpened";
+    public static final String CONNECTIONS_REUSED = "remoteDeliveryConnectionsReused";
+    public static final String CONNECTIONS_CLOSED = "remoteDeliveryConnectionsClosed";
+    public static final String IDLE_CONNECTIONS = "remoteDeliveryIdleConnections";
+    private static final int RSET_EXPECTED_CODE = 250;
+
+    /**
+     * A transport checked out of the pool, or opened to be given to it.
+     */
+    public static class PooledTransport {
+
+        private final String key;
+        private final SMTPTransport transport;
+        private int sentMessages;
+        private long idleSince;
+
+        private PooledTransport(String key, SMTPTransport transport) {
+            this.key = key;
+            this.transport = transport;
+        }
+
+        public SMTPTransport getTransport() {
+            return transport;
+        }
+
+        /**
+         * @return true once a mail was sent through this transport, false for
+         *         a newly opened one which still needs to be connected
+         */
+        public boolean isReused() {
+            return sentMessages > 0;
+        }
+    }
+
+    private final Map<String, Deque<PooledTransport>> idleTransports = new HashMap<String, Deque<PooledTransport>>();
+    private final int maxPerHost;
+    private final long idleTimeout;
+    private final int maxMessages;
+    private final Supplier<Date> dateSupplier;
+    private final Logger logger;
+    private final Metric openedMetric;
+    private final Metric reusedMetric;
+    private final Metric closedMetric;
+    private final Metric idleMetric;
+    private boolean closed;
+
+    public SMTPTransportPool(RemoteDeliveryConfiguration configuration, MetricFactory metricFactory, Logger logger) {
+        this(configuration.getConnectionPoolMaxPerHost(), configuration.getConnectionPoolIdleTimeout(),
+            configuration.getConnectionPoolMaxMessages(), metricFactory, logger, DeliveryRunnable.CURRENT_DATE_SUPPLIER);
+    }
+
+    @VisibleForTesting
+    SMTPTransportPool(int maxPerHost, long idleTimeout, int maxMessages, MetricFactory metricFactory, Logger logger, Supplier<Date> dateSupplier) {
+        this.maxPerHost = maxPerHost;
+        this.idleTimeout = idleTimeout;
+        this.maxMessages = maxMessages;
+        this.dateSupplier = dateSupplier;
+        this.logger = logger;
+        this.openedMetric = metricFactory.generate(CONNECTIONS_OPENED);
+        this.reusedMetric = metricFactory.generate(CONNECTIONS_REUSED);
+        this.closedMetric = metricFactory.generate(CONNECTIONS_CLOSED);
+        this.idleMetric = metricFactory.generate(IDLE_CONNECTIONS);
+    }
+
+    /**
+     * Check out a live idle transport connected to the given host, if any.
+     */
+    public Optional<PooledTransport> borrow(HostAddress host) {
+        String key = keyOf(host);
+        while (true) {
+            PooledTransport pooled = pollIdle(key);
+            if (pooled == null) {
+                return Optional.absent();
+            }
+            if (isExpired(pooled, dateSupplier.get().getTime())) {
+                close(pooled);
+                continue;
+            }
+            try {
+                pooled.transport.issueCommand("RSET", RSET_EXPECTED_CODE);
+                reusedMetric.increment();
+                return Optional.of(pooled);
+            } catch (MessagingException e) {
+                logger.debug("Pooled connection to {} is no longer usable: {}", key, e.getMessage());
+                close(pooled);
+            }
+        }
+    }
+
+    /**
+     * Wrap a newly connected transport so that it can be released to the pool.
+     */
+    public PooledTransport register(HostAddress host, SMTPTransport transport) {
+        openedMetric.increment();
+        return new PooledTransport(keyOf(host), transport);
+    }
+
+    /**
+     * Give back a transport whose last mail transaction completed.
+     */
+    public void release(PooledTransport pooled) {
+        pooled.sentMessages++;
+        pooled.idleSince = dateSupplier.get().getTime();
+        if (pooled.sentMessages < maxMessages && offerIdle(pooled)) {
+            return;
+        }
+        close(pooled);
+    }
+
+    /**
+     * Close a transport that can not be reused.
+     */
+    public void discard(PooledTransport pooled) {
+        close(pooled);
+    }
+
+    /**
+     * Close the transports idle for longer than the idle timeout.
+     */
+    public void evictIdleConnections() {
+        long now = dateSupplier.get().getTime();
+        List<PooledTransport> expired = new ArrayList<PooledTransport>();
+        synchronized (this) {
+            Iterator<Deque<PooledTransport>> hosts = idleTransports.values().iterator();
+            while (hosts.hasNext()) {
+                Deque<PooledTransport> transports = hosts.next();
+                // the least recently used transports are at the tail
+                while (!transports.isEmpty() && isExpired(transports.peekLast(), now)) {
+                    expired.add(transports.pollLast());
+                    idleMetric.decrement();
+                }
+                if (transports.isEmpty()) {
+                    hosts.remove();
+                }
+            }
+        }
+        for (PooledTransport pooled : expired) {
+            close(pooled);
+        }
+    }
+
+    /**
+     * Close all the idle transports. Transports released afterward are closed
+     * as well.
+     */
+    public void close() {
+        List<PooledTransport> idle = new ArrayList<PooledTransport>();
+        synchronized (this) {
+            closed = true;
+            for (Deque<PooledTransport> transports : idleTransports.values()) {
+                idle.addAll(transports);
+                idleMetric.add(-transports.size());
+            }
+            idleTransports.clear();
+        }
+        for (PooledTransport pooled : idle) {
+            close(pooled);
+        }
+    }
+
+    private synchronized PooledTransport pollIdle(String key) {
+        Deque<PooledTransport> transports = idleTransports.get(key);
+        if (transports == null) {
+            return null;
+        }
+        // most recently used first, so that the others can expire
+        PooledTransport pooled = transports.pollFirst();
+        if (transports.isEmpty()) {
+            idleTransports.remove(key);
+        }
+        if (pooled != null) {
+            idleMetric.decrement();
+        }
+        return pooled;
+    }
+
+    private synchronized boolean offerIdle(PooledTransport pooled) {
+        if (closed) {
+            return false;
+        }
+        Deque<PooledTransport> transports = idleTransports.get(pooled.key);
+        if (transports == null) {
+            transports = new ArrayDeque<PooledTransport>();
+            idleTransports.put(pooled.key, transports);
+        }
+        if (transports.size() >= maxPerHost) {
+            return false;
+        }
+        transports.offerFirst(pooled);
+        idleMetric.increment();
+        return true;
+    }
+
+    private boolean isExpired(PooledTransport pooled, long now) {
+        return now - pooled.idleSince >= idleTimeout;
+    }
+
+    private void close(PooledTransport pooled) {
+        closedMetric.increment();
+        try {
+            // sends QUIT, the server may already have closed the connection
+            pooled.transport.close();
+        } catch (MessagingException e) {
+            logger.debug("Error while closing the connection to {}: {}", pooled.key, e.getMessage());
+        }
+    }
+
+    /**
+     * The same IP can be reached under several host names, which matter for
+     * authentication and TLS, hence both are part of the key.
+     */
+    private static String keyOf(HostAddress host) {
+        return host.getHostName() + "/" + host.toString();
+    }
+
+}
@@ -25,8 +25,10 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.mail.MessagingException;
@@ -46,6 +48,8 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
 
 public class MailDispatcherTest {
     private FakeMailContext fakeMailContext;
@@ -79,6 +83,156 @@ public class MailDispatcherTest {
         verifyNoMoreInteractions(mailStore);
     }
 
+    @Test
+    public void dispatchShouldStoreMailOnceForAllRecipientsWhenSingleInstance() throws Exception {
+        MultiRecipientMailStore multiRecipientMailStore = mock(MultiRecipientMailStore.class);
+        MailDispatcher testee = MailDispatcher.builder()
+            .log(mock(Log.class))
+            .mailetContext(fakeMailContext)
+            .mailStore(multiRecipientMailStore)
+            .singleInstance(true)
+            .build();
+
+        FakeMail mail = FakeMail.builder()
+            .sender(MailAddressFixture.OTHER_AT_JAMES)
+            .recipients(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2)
+            .mimeMessage(MimeMessageBuilder.mimeMessageBuilder()
+                .addToRecipient(MailAddressFixture.ANY_AT_JAMES.toString())
+                .addCcRecipient(MailAddressFixture.ANY_AT_JAMES2.toString())
+                .build())
+            .build();
+        testee.dispatch(mail);
+
+        verify(multiRecipientMailStore).storeMail(ImmutableList.of(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2), mail);
+        verifyNoMoreInteractions(multiRecipientMailStore);
+    }
+
+    @Test
+    public void dispatchShouldNotAddDeliveredToHeaderToSharedInstanceWhenSingleInstance() throws Exception {
+        AccumulatorDeliveredToHeaderMailStore accumulator = new AccumulatorDeliveredToHeaderMailStore();
+        MailDispatcher testee = MailDispatcher.builder()
+            .log(mock(Log.class))
+            .mailetContext(fakeMailContext)
+            .mailStore(accumulator)
+            .singleInstance(true)
+            .build();
+
+        FakeMail mail = FakeMail.builder()
+            .sender(MailAddressFixture.OTHER_AT_JAMES)
+            .recipients(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2)
+            .mimeMessage(MimeMessageBuilder.mimeMessageBuilder()
+                .addToRecipient(MailAddressFixture.ANY_AT_JAMES.toString(), MailAddressFixture.ANY_AT_JAMES2.toString())
+                .build())
+            .build();
+        testee.dispatch(mail);
+
+        assertThat(accumulator.getDeliveredToHeaderValues()).containsExactly((String[]) null);
+    }
+
+    @Test
+    public void dispatchShouldRecordDeliveredToOfEachRecipientWhenSingleInstance() throws Exception {
+        MailDispatcher testee = MailDispatcher.builder()
+            .log(mock(Log.class))
+            .mailetContext(fakeMailContext)
+            .mailStore(new AccumulatorDeliveredToHeaderMailStore())
+            .singleInstance(true)
+            .consume(false)
+            .build();
+
+        FakeMail mail = FakeMail.builder()
+            .sender(MailAddressFixture.OTHER_AT_JAMES)
+            .recipients(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2)
+            .mimeMessage(MimeMessageBuilder.defaultMimeMessage())
+            .build();
+        testee.dispatch(mail);
+
+        assertThat((Collection<?>) mail.getAttribute(MailDispatcher.DELIVERED_TO_ATTRIBUTE))
+            .containsExactly(MailAddressFixture.ANY_AT_JAMES.toString(), MailAddressFixture.ANY_AT_JAMES2.toString());
+    }
+
+    @Test
+    public void dispatchShouldShareInstanceWithRecipientsNotListedInHeadersWhenSingleInstance() throws Exception {
+        MultiRecipientMailStore multiRecipientMailStore = mock(MultiRecipientMailStore.class);
+        MailDispatcher testee = MailDispatcher.builder()
+            .log(mock(Log.class))
+            .mailetContext(fakeMailContext)
+            .mailStore(multiRecipientMailStore)
+            .singleInstance(true)
+            .build();
+
+        FakeMail mail = FakeMail.builder()
+            .sender(MailAddressFixture.OTHER_AT_JAMES)
+            .recipients(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2, MailAddressFixture.OTHER_AT_JAMES)
+            .mimeMessage(MimeMessageBuilder.mimeMessageBuilder()
+                .addToRecipient(MailAddressFixture.ANY_AT_JAMES.toString())
+                .build())
+            .build();
+        testee.dispatch(mail);
+
+        verify(multiRecipientMailStore).storeMail(
+            ImmutableList.of(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2, MailAddressFixture.OTHER_AT_JAMES), mail);
+        verifyNoMoreInteractions(multiRecipientMailStore);
+    }
+
+    @Test
+    public void dispatchShouldDeliverOnlyFailedRecipientsSeparatelyWhenSingleInstance() throws Exception {
+        MultiRecipientMailStore multiRecipientMailStore = mock(MultiRecipientMailStore.class);
+        when(multiRecipientMailStore.storeMail(any(Collection.class), any(Mail.class)))
+            .thenReturn(ImmutableList.of(MailAddressFixture.ANY_AT_JAMES2));
+        MailDispatcher testee = MailDispatcher.builder()
+            .log(mock(Log.class))
+            .mailetContext(fakeMailContext)
+            .mailStore(multiRecipientMailStore)
+            .singleInstance(true)
+            .build();
+
+        FakeMail mail = FakeMail.builder()
+            .sender(MailAddressFixture.OTHER_AT_JAMES)
+            .recipients(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2)
+            .mimeMessage(MimeMessageBuilder.defaultMimeMessage())
+            .build();
+        testee.dispatch(mail);
+
+        verify(multiRecipientMailStore).storeMail(ImmutableList.of(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2), mail);
+        verify(multiRecipientMailStore).storeMail(MailAddressFixture.ANY_AT_JAMES2, mail);
+        verifyNoMoreInteractions(multiRecipientMailStore);
+        assertThat(fakeMailContext.getSentMails()).isEmpty();
+    }
+
+    @Test
+    public void dispatchShouldBounceOnlyRecipientsFailingSeparateDeliveryWhenSingleInstance() throws Exception {
+        MultiRecipientMailStore multiRecipientMailStore = mock(MultiRecipientMailStore.class);
+        when(multiRecipientMailStore.storeMail(any(Collection.class), any(Mail.class)))
+            .thenReturn(ImmutableList.of(MailAddressFixture.ANY_AT_JAMES2));
+        doThrow(new MessagingException()).when(multiRecipientMailStore).storeMail(any(MailAddress.class), any(Mail.class));
+        MailDispatcher testee = MailDispatcher.builder()
+            .log(mock(Log.class))
+            .mailetContext(fakeMailContext)
+            .mailStore(multiRecipientMailStore)
+            .singleInstance(true)
+            .build();
+
+        FakeMail mail = FakeMail.builder()
+            .sender(MailAddressFixture.OTHER_AT_JAMES)
+            .recipients(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2)
+            .mimeMessage(MimeMessageBuilder.defaultMimeMessage())
+            .build();
+        testee.dispatch(mail);
+
+        assertThat(fakeMailContext.getSentMails()).hasSize(1);
+        assertThat(fakeMailContext.getSentMails().get(0).getRecipients()).containsOnly(MailAddressFixture.ANY_AT_JAMES2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void buildShouldThrowWhenSingleInstanceWithoutMultiRecipientMailStore() throws Exception {
+        MailDispatcher.builder()
+            .log(mock(Log.class))
+            .mailetContext(fakeMailContext)
+            .mailStore(mailStore)
+            .singleInstance(true)
+            .build();
+    }
+
     @Test
     public void dispatchShouldConsumeMailIfSpecified() throws Exception {
         MailDispatcher testee = MailDispatcher.builder()
@@ -228,7 +382,7 @@ public class MailDispatcherTest {
                 new String[]{MailAddressFixture.ANY_AT_JAMES2.toString()});
     }
 
-    public static class AccumulatorDeliveredToHeaderMailStore implements MailStore {
+    public static class AccumulatorDeliveredToHeaderMailStore implements MultiRecipientMailStore {
         public final List<String[]> deliveredToHeaderValues;
 
         public AccumulatorDeliveredToHeaderMailStore() {
@@ -240,6 +394,16 @@ public class MailDispatcherTest {
             deliveredToHeaderValues.add(mail.getMessage().getHeader(MailDispatcher.DELIVERED_TO));
         }
 
+        @Override
+        public Collection<MailAddress> storeMail(Collection<MailAddress> recipients, Mail mail) {
+            try {
+                deliveredToHeaderValues.add(mail.getMessage().getHeader(MailDispatcher.DELIVERED_TO));
+            } catch (MessagingException e) {
+                throw Throwables.propagate(e);
+            }
+            return ImmutableList.of();
+        }
+
         public List<String[]> getDeliveredToHeaderValues() {
             return deliveredToHeaderValues;
         }
@@ -19,15 +19,19 @@
 
 package org.apache.james.transport.mailets.delivery;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Collection;
+
 import javax.mail.internet.MimeMessage;
 
 import org.apache.commons.logging.Log;
+import org.apache.james.mailbox.model.ComposedMessageId;
 import org.apache.james.metrics.api.Metric;
 import org.apache.james.user.api.UsersRepository;
 import org.apache.james.user.api.UsersRepositoryException;
@@ -38,6 +42,9 @@ import org.apache.mailet.base.test.MimeMessageBuilder;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
 public class SimpleMailStoreTest {
 
     public static final String FOLDER = "FOLDER";
@@ -101,4 +108,73 @@ public class SimpleMailStoreTest {
 
         verify(mailboxAppender).append(any(MimeMessage.class), eq(recipient.toString()), eq(FOLDER));
     }
+
+    @Test
+    public void storeMailShouldCopyTheFirstStoredMessageForOtherRecipients() throws Exception {
+        ComposedMessageId storedMessage = mock(ComposedMessageId.class);
+        when(usersRepository.getUser(MailAddressFixture.ANY_AT_JAMES)).thenReturn("any");
+        when(usersRepository.getUser(MailAddressFixture.OTHER_AT_JAMES)).thenReturn("other");
+        when(mailboxAppender.supportsCopy()).thenReturn(true);
+        when(mailboxAppender.append(any(MimeMessage.class), eq("any"), eq(FOLDER))).thenReturn(storedMessage);
+        FakeMail mail = FakeMail.builder()
+            .mimeMessage(mimeMessage)
+            .build();
+
+        Collection<MailAddress> errors = testee.storeMail(ImmutableList.of(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.OTHER_AT_JAMES), mail);
+
+        assertThat(errors).isEmpty();
+        verify(mailboxAppender).append(any(MimeMessage.class), eq("any"), eq(FOLDER));
+        verify(mailboxAppender).copy(storedMessage, "any", ImmutableMap.of("other", FOLDER));
+    }
+
+    @Test
+    public void storeMailShouldCopyOnceForAllOtherRecipients() throws Exception {
+        ComposedMessageId storedMessage = mock(ComposedMessageId.class);
+        when(usersRepository.getUser(MailAddressFixture.ANY_AT_JAMES)).thenReturn("any");
+        when(usersRepository.getUser(MailAddressFixture.OTHER_AT_JAMES)).thenReturn("other");
+        when(usersRepository.getUser(MailAddressFixture.ANY_AT_JAMES2)).thenReturn("any2");
+        when(mailboxAppender.supportsCopy()).thenReturn(true);
+        when(mailboxAppender.append(any(MimeMessage.class), eq("any"), eq(FOLDER))).thenReturn(storedMessage);
+        FakeMail mail = FakeMail.builder()
+            .mimeMessage(mimeMessage)
+            .build();
+
+        testee.storeMail(ImmutableList.of(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.OTHER_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2), mail);
+
+        verify(mailboxAppender).copy(storedMessage, "any", ImmutableMap.of("other", FOLDER, "any2", FOLDER));
+    }
+
+    @Test
+    public void storeMailShouldReturnRecipientsTheMessageCouldNotBeCopiedFor() throws Exception {
+        ComposedMessageId storedMessage = mock(ComposedMessageId.class);
+        when(usersRepository.getUser(MailAddressFixture.ANY_AT_JAMES)).thenReturn("any");
+        when(usersRepository.getUser(MailAddressFixture.OTHER_AT_JAMES)).thenReturn("other");
+        when(usersRepository.getUser(MailAddressFixture.ANY_AT_JAMES2)).thenReturn("any2");
+        when(mailboxAppender.supportsCopy()).thenReturn(true);
+        when(mailboxAppender.append(any(MimeMessage.class), eq("any"), eq(FOLDER))).thenReturn(storedMessage);
+        when(mailboxAppender.copy(storedMessage, "any", ImmutableMap.of("other", FOLDER, "any2", FOLDER)))
+            .thenReturn(ImmutableList.of("other"));
+        FakeMail mail = FakeMail.builder()
+            .mimeMessage(mimeMessage)
+            .build();
+
+        Collection<MailAddress> errors = testee.storeMail(ImmutableList.of(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.OTHER_AT_JAMES, MailAddressFixture.ANY_AT_JAMES2), mail);
+
+        assertThat(errors).containsOnly(MailAddressFixture.OTHER_AT_JAMES);
+    }
+
+    @Test
+    public void storeMailShouldAppendForEachRecipientWhenCopyIsNotSupported() throws Exception {
+        when(usersRepository.getUser(MailAddressFixture.ANY_AT_JAMES)).thenReturn("any");
+        when(usersRepository.getUser(MailAddressFixture.OTHER_AT_JAMES)).thenReturn("other");
+        when(mailboxAppender.supportsCopy()).thenReturn(false);
+        FakeMail mail = FakeMail.builder()
+            .mimeMessage(mimeMessage)
+            .build();
+
+        testee.storeMail(ImmutableList.of(MailAddressFixture.ANY_AT_JAMES, MailAddressFixture.OTHER_AT_JAMES), mail);
+
+        verify(mailboxAppender).append(any(MimeMessage.class), eq("any"), eq(FOLDER));
+        verify(mailboxAppender).append(any(MimeMessage.class), eq("other"), eq(FOLDER));
+    }
 }
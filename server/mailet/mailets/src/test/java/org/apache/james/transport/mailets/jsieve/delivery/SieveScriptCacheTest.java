@@ -0,0 +1,126 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.transport.mailets.jsieve.delivery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.jsieve.SieveFactory;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.mailet.MailAddress;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class SieveScriptCacheTest {
+
+    private static final DateTime ACTIVATION_DATE = new DateTime(2016, 1, 14, 0, 0);
+    private static final byte[] SCRIPT = "keep;".getBytes(Charsets.UTF_8);
+
+    private MailAddress recipient;
+    private SieveFactory factory;
+    private Metric hitMetric;
+    private Metric missMetric;
+    private SieveScriptCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        recipient = new MailAddress("receiver@domain.com");
+        factory = mock(SieveFactory.class);
+        when(factory.parse(any(InputStream.class))).thenReturn(mock(Node.class), mock(Node.class));
+        MetricFactory metricFactory = mock(MetricFactory.class);
+        hitMetric = mock(Metric.class);
+        missMetric = mock(Metric.class);
+        when(metricFactory.generate(SieveScriptCache.HIT_METRIC_NAME)).thenReturn(hitMetric);
+        when(metricFactory.generate(SieveScriptCache.MISS_METRIC_NAME)).thenReturn(missMetric);
+        when(metricFactory.generate(SieveScriptCache.SIZE_METRIC_NAME)).thenReturn(mock(Metric.class));
+        cache = new SieveScriptCache(10, metricFactory);
+    }
+
+    @Test
+    public void getShouldParseOnlyOnceAnUnchangedScript() throws Exception {
+        Node first = cache.get(recipient, ACTIVATION_DATE, SCRIPT, factory);
+        Node second = cache.get(recipient, ACTIVATION_DATE, SCRIPT.clone(), factory);
+
+        assertThat(second).isSameAs(first);
+        verify(factory, times(1)).parse(any(InputStream.class));
+        verify(missMetric).increment();
+        verify(hitMetric).increment();
+    }
+
+    @Test
+    public void getShouldParseAgainWhenActivationDateChanges() throws Exception {
+        Node first = cache.get(recipient, ACTIVATION_DATE, SCRIPT, factory);
+        Node second = cache.get(recipient, ACTIVATION_DATE.plusMinutes(1), SCRIPT, factory);
+
+        assertThat(second).isNotSameAs(first);
+        verify(factory, times(2)).parse(any(InputStream.class));
+    }
+
+    @Test
+    public void getShouldParseAgainWhenContentChanges() throws Exception {
+        Node first = cache.get(recipient, ACTIVATION_DATE, SCRIPT, factory);
+        Node second = cache.get(recipient, ACTIVATION_DATE, "discard;".getBytes(Charsets.UTF_8), factory);
+
+        assertThat(second).isNotSameAs(first);
+        verify(factory, times(2)).parse(any(InputStream.class));
+    }
+
+    @Test
+    public void getShouldParseAgainAfterInvalidation() throws Exception {
+        cache.get(recipient, ACTIVATION_DATE, SCRIPT, factory);
+        cache.invalidate(recipient);
+        cache.get(recipient, ACTIVATION_DATE, SCRIPT, factory);
+
+        verify(factory, times(2)).parse(any(InputStream.class));
+    }
+
+    @Test
+    public void getShouldNotCacheWhenSizeIsZero() throws Exception {
+        SieveScriptCache disabledCache = new SieveScriptCache(0, mock(MetricFactory.class, RETURNS_MOCKS));
+
+        disabledCache.get(recipient, ACTIVATION_DATE, SCRIPT, factory);
+        disabledCache.get(recipient, ACTIVATION_DATE, SCRIPT, factory);
+
+        assertThat(disabledCache.size()).isEqualTo(0);
+        verify(factory, times(2)).parse(any(InputStream.class));
+    }
+
+    @Test
+    public void cacheShouldBeBounded() throws Exception {
+        SieveScriptCache smallCache = new SieveScriptCache(1, mock(MetricFactory.class, RETURNS_MOCKS));
+
+        smallCache.get(recipient, ACTIVATION_DATE, SCRIPT, factory);
+        smallCache.get(new MailAddress("other@domain.com"), ACTIVATION_DATE, SCRIPT, factory);
+
+        assertThat(smallCache.size()).isEqualTo(1);
+    }
+}
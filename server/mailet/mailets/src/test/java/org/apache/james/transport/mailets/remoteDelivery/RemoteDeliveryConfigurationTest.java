@@ -908,4 +908,47 @@ public class RemoteDeliveryConfigurationTest {
                 MapEntry.entry("mail.smtp.starttls.enable", "true"),
                 MapEntry.entry("mail.smtp.auth", "true"));
     }
+
+    @Test
+    public void connectionPoolShouldBeDisabledByDefault() {
+        FakeMailetConfig mailetConfig = FakeMailetConfig.builder()
+            .setProperty(RemoteDeliveryConfiguration.DELIVERY_THREADS, "1")
+            .build();
+
+        RemoteDeliveryConfiguration configuration = new RemoteDeliveryConfiguration(mailetConfig, mock(DomainList.class));
+
+        assertThat(configuration.isConnectionPool()).isFalse();
+        assertThat(configuration.getConnectionPoolMaxPerHost()).isEqualTo(RemoteDeliveryConfiguration.DEFAULT_CONNECTION_POOL_MAX_PER_HOST);
+        assertThat(configuration.getConnectionPoolIdleTimeout()).isEqualTo(RemoteDeliveryConfiguration.DEFAULT_CONNECTION_POOL_IDLE_TIMEOUT);
+        assertThat(configuration.getConnectionPoolMaxMessages()).isEqualTo(RemoteDeliveryConfiguration.DEFAULT_CONNECTION_POOL_MAX_MESSAGES);
+    }
+
+    @Test
+    public void connectionPoolSettingsShouldBeRetrieved() {
+        FakeMailetConfig mailetConfig = FakeMailetConfig.builder()
+            .setProperty(RemoteDeliveryConfiguration.DELIVERY_THREADS, "1")
+            .setProperty(RemoteDeliveryConfiguration.CONNECTION_POOL, "true")
+            .setProperty(RemoteDeliveryConfiguration.CONNECTION_POOL_MAX_PER_HOST, "8")
+            .setProperty(RemoteDeliveryConfiguration.CONNECTION_POOL_IDLE_TIMEOUT, "60000")
+            .setProperty(RemoteDeliveryConfiguration.CONNECTION_POOL_MAX_MESSAGES, "50")
+            .build();
+
+        RemoteDeliveryConfiguration configuration = new RemoteDeliveryConfiguration(mailetConfig, mock(DomainList.class));
+
+        assertThat(configuration.isConnectionPool()).isTrue();
+        assertThat(configuration.getConnectionPoolMaxPerHost()).isEqualTo(8);
+        assertThat(configuration.getConnectionPoolIdleTimeout()).isEqualTo(60000);
+        assertThat(configuration.getConnectionPoolMaxMessages()).isEqualTo(50);
+    }
+
+    @Test
+    public void connectionPoolMaxPerHostShouldFallBackToDefaultWhenInvalid() {
+        FakeMailetConfig mailetConfig = FakeMailetConfig.builder()
+            .setProperty(RemoteDeliveryConfiguration.DELIVERY_THREADS, "1")
+            .setProperty(RemoteDeliveryConfiguration.CONNECTION_POOL_MAX_PER_HOST, "-1")
+            .build();
+
+        assertThat(new RemoteDeliveryConfiguration(mailetConfig, mock(DomainList.class)).getConnectionPoolMaxPerHost())
+            .isEqualTo(RemoteDeliveryConfiguration.DEFAULT_CONNECTION_POOL_MAX_PER_HOST);
+    }
 }
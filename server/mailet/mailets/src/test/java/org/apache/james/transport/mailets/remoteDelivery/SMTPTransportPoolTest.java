@@ -0,0 +1,172 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.transport.mailets.remoteDelivery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.Date;
+
+import javax.mail.MessagingException;
+
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.apache.mailet.HostAddress;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Supplier;
+import com.sun.mail.smtp.SMTPTransport;
+
+@SuppressWarnings("deprecation")
+public class SMTPTransportPoolTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SMTPTransportPoolTest.class);
+    private static final int MAX_PER_HOST = 2;
+    private static final long IDLE_TIMEOUT = 1000;
+    private static final int MAX_MESSAGES = 3;
+    private static final HostAddress HOST = new HostAddress("mx.domain.com", "smtp://1.2.3.4:25");
+    private static final HostAddress OTHER_HOST = new HostAddress("mx.other.com", "smtp://5.6.7.8:25");
+
+    private long now;
+    private SMTPTransportPool testee;
+
+    @Before
+    public void setUp() {
+        now = 1000000;
+        testee = new SMTPTransportPool(MAX_PER_HOST, IDLE_TIMEOUT, MAX_MESSAGES, new NoopMetricFactory(), LOGGER, new Supplier<Date>() {
+            @Override
+            public Date get() {
+                return new Date(now);
+            }
+        });
+    }
+
+    @Test
+    public void borrowShouldReturnAbsentWhenNoIdleTransport() {
+        assertThat(testee.borrow(HOST).isPresent()).isFalse();
+    }
+
+    @Test
+    public void borrowShouldReturnReleasedTransportAfterReset() throws Exception {
+        SMTPTransport transport = mock(SMTPTransport.class);
+        SMTPTransportPool.PooledTransport pooled = testee.register(HOST, transport);
+        testee.release(pooled);
+
+        SMTPTransportPool.PooledTransport borrowed = testee.borrow(HOST).get();
+
+        assertThat(borrowed.getTransport()).isSameAs(transport);
+        assertThat(borrowed.isReused()).isTrue();
+        verify(transport).issueCommand("RSET", 250);
+    }
+
+    @Test
+    public void borrowShouldNotReturnTransportOfAnotherHost() {
+        testee.release(testee.register(OTHER_HOST, mock(SMTPTransport.class)));
+
+        assertThat(testee.borrow(HOST).isPresent()).isFalse();
+    }
+
+    @Test
+    public void borrowShouldCloseTransportFailingReset() throws Exception {
+        SMTPTransport transport = mock(SMTPTransport.class);
+        doThrow(new MessagingException("closed")).when(transport).issueCommand(anyString(), anyInt());
+        testee.release(testee.register(HOST, transport));
+
+        assertThat(testee.borrow(HOST).isPresent()).isFalse();
+        verify(transport).close();
+    }
+
+    @Test
+    public void borrowShouldCloseExpiredTransport() throws Exception {
+        SMTPTransport transport = mock(SMTPTransport.class);
+        testee.release(testee.register(HOST, transport));
+        now += IDLE_TIMEOUT;
+
+        assertThat(testee.borrow(HOST).isPresent()).isFalse();
+        verify(transport).close();
+    }
+
+    @Test
+    public void releaseShouldCloseTransportWhenHostIsFull() throws Exception {
+        SMTPTransport extra = mock(SMTPTransport.class);
+        testee.release(testee.register(HOST, mock(SMTPTransport.class)));
+        testee.release(testee.register(HOST, mock(SMTPTransport.class)));
+        testee.release(testee.register(HOST, extra));
+
+        verify(extra).close();
+    }
+
+    @Test
+    public void releaseShouldCloseTransportAfterMaxMessages() throws Exception {
+        SMTPTransport transport = mock(SMTPTransport.class);
+        testee.release(testee.register(HOST, transport));
+        testee.release(testee.borrow(HOST).get());
+        testee.release(testee.borrow(HOST).get());
+
+        verify(transport).close();
+        assertThat(testee.borrow(HOST).isPresent()).isFalse();
+    }
+
+    @Test
+    public void discardShouldCloseTransport() throws Exception {
+        SMTPTransport transport = mock(SMTPTransport.class);
+
+        testee.discard(testee.register(HOST, transport));
+
+        verify(transport).close();
+        assertThat(testee.borrow(HOST).isPresent()).isFalse();
+    }
+
+    @Test
+    public void evictIdleConnectionsShouldOnlyCloseExpiredTransports() throws Exception {
+        SMTPTransport expired = mock(SMTPTransport.class);
+        SMTPTransport recent = mock(SMTPTransport.class);
+        testee.release(testee.register(HOST, expired));
+        now += IDLE_TIMEOUT / 2;
+        testee.release(testee.register(HOST, recent));
+        now += IDLE_TIMEOUT / 2;
+
+        testee.evictIdleConnections();
+
+        verify(expired).close();
+        verify(recent, never()).close();
+    }
+
+    @Test
+    public void closeShouldCloseIdleAndLaterReleasedTransports() throws Exception {
+        SMTPTransport idle = mock(SMTPTransport.class);
+        SMTPTransport inUse = mock(SMTPTransport.class);
+        testee.release(testee.register(HOST, idle));
+        SMTPTransportPool.PooledTransport pooled = testee.register(HOST, inUse);
+
+        testee.close();
+        testee.release(pooled);
+
+        verify(idle).close();
+        verify(inUse).close();
+    }
+}
@@ -26,6 +26,9 @@ import java.nio.channels.FileChannel;
 
 import org.apache.james.imap.encode.ImapResponseWriter;
 import org.apache.james.imap.message.response.Literal;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelPipeline;
@@ -39,35 +42,96 @@ import org.jboss.netty.handler.stream.ChunkedStream;
 /**
  * {@link ImapResponseWriter} implementation which writes the data to a
  * {@link Channel}
+ * 
+ * Once {@link #startBuffering()} was called, the response lines are coalesced
+ * in a single {@link ChannelBuffer} which is written to the {@link Channel} on
+ * {@link #flush()}, before any {@link Literal}, or when it grows over the flush
+ * threshold. Otherwise every line is written as soon as it is composed.
  */
 public class ChannelImapResponseWriter implements ImapResponseWriter {
 
+    public static final int DEFAULT_FLUSH_THRESHOLD = 16 * 1024;
+
     private final Channel channel;
 	private final boolean zeroCopy;
+    private final int flushThreshold;
+    private final Metric flushesMetric;
+    private final Metric flushedBytesMetric;
+    private ChannelBuffer pending;
+    private boolean buffering;
 
     public ChannelImapResponseWriter(Channel channel) {
     	this(channel, true);
     }
 
     public ChannelImapResponseWriter(Channel channel, boolean zeroCopy) {
+        this(channel, zeroCopy, DEFAULT_FLUSH_THRESHOLD, new NoopMetricFactory.NoopMetric(), new NoopMetricFactory.NoopMetric());
+    }
+
+    public ChannelImapResponseWriter(Channel channel, boolean zeroCopy, int flushThreshold, Metric flushesMetric, Metric flushedBytesMetric) {
         this.channel = channel;
         this.zeroCopy = zeroCopy;
+        this.flushThreshold = flushThreshold;
+        this.flushesMetric = flushesMetric;
+        this.flushedBytesMetric = flushedBytesMetric;
+    }
+
+    /**
+     * Coalesce the written lines until the next call to {@link #flush()}
+     */
+    public synchronized void startBuffering() {
+        buffering = true;
     }
 
     /**
      * @see org.apache.james.imap.encode.ImapResponseWriter#write(byte[])
      */
-    public void write(byte[] buffer) throws IOException {
+    public synchronized void write(byte[] buffer) {
         if (channel.isConnected()) {
-            channel.write(ChannelBuffers.wrappedBuffer(buffer));
+            if (!buffering) {
+                write(ChannelBuffers.wrappedBuffer(buffer));
+                return;
+            }
+            if (pending == null) {
+                pending = ChannelBuffers.dynamicBuffer(Math.max(buffer.length, 256), channel.getConfig().getBufferFactory());
+            }
+            pending.writeBytes(buffer);
+            if (pending.readableBytes() >= flushThreshold) {
+                writePending();
+            }
         }
     }
 
+    /**
+     * @see org.apache.james.imap.encode.ImapResponseWriter#flush()
+     */
+    public synchronized void flush() {
+        buffering = false;
+        if (channel.isConnected()) {
+            writePending();
+        }
+    }
+
+    private void writePending() {
+        if (pending != null && pending.readable()) {
+            write(pending);
+        }
+        pending = null;
+    }
+
+    private void write(ChannelBuffer buffer) {
+        flushesMetric.increment();
+        flushedBytesMetric.add(buffer.readableBytes());
+        channel.write(buffer);
+    }
+
     /**
      * @see org.apache.james.imap.encode.ImapResponseWriter#write(org.apache.james.imap.message.response.Literal)
      */
-    public void write(Literal literal) throws IOException {
+    public synchronized void write(Literal literal) throws IOException {
         if (channel.isConnected()) {
+            // The lines composed so far have to go out before the literal
+            writePending();
             InputStream in = literal.getInputStream();
             if (in instanceof FileInputStream && channel.getFactory() instanceof NioServerSocketChannelFactory) {
                 FileChannel fc = ((FileInputStream) in).getChannel();
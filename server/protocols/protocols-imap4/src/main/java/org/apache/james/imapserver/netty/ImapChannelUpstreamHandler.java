@@ -74,6 +74,8 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
 
     private final Metric imapConnectionsMetric;
     private final Metric imapCommandsMetric;
+    private final Metric imapFlushesMetric;
+    private final Metric imapFlushedBytesMetric;
     
     public ImapChannelUpstreamHandler(String hello, ImapProcessor processor, ImapEncoder encoder, Logger logger, boolean compress,
                                       boolean plainAuthDisallowed, ImapMetrics imapMetrics) {
@@ -93,6 +95,8 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
         this.plainAuthDisallowed = plainAuthDisallowed;
         this.imapConnectionsMetric = imapMetrics.getConnectionsMetric();
         this.imapCommandsMetric = imapMetrics.getCommandsMetric();
+        this.imapFlushesMetric = imapMetrics.getFlushesMetric();
+        this.imapFlushedBytesMetric = imapMetrics.getFlushedBytesMetric();
     }
 
     private Logger getLogger(Channel channel) {
@@ -101,8 +105,11 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
 
     @Override
     public void channelBound(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
-        ImapSession imapsession = new NettyImapSession(ctx.getChannel(), logger, context, enabledCipherSuites, compress, plainAuthDisallowed);
+        ChannelImapResponseWriter writer = new ChannelImapResponseWriter(ctx.getChannel(), true,
+            ChannelImapResponseWriter.DEFAULT_FLUSH_THRESHOLD, imapFlushesMetric, imapFlushedBytesMetric);
+        ImapSession imapsession = new NettyImapSession(ctx.getChannel(), logger, context, enabledCipherSuites, compress, plainAuthDisallowed, writer);
         attributes.set(ctx.getChannel(), imapsession);
+        ctx.setAttachment(new ImapResponseComposerImpl(writer));
         super.channelBound(ctx, e);
     }
 
@@ -129,11 +136,11 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
         getLogger(ctx.getChannel()).info("Connection established from " + address.getAddress().getHostAddress());
         imapConnectionsMetric.increment();
 
-        ImapResponseComposer response = new ImapResponseComposerImpl(new ChannelImapResponseWriter(ctx.getChannel()));
-        ctx.setAttachment(response);
+        ImapResponseComposer response = (ImapResponseComposer) ctx.getAttachment();
 
         // write hello to client
         response.untagged().message("OK").message(hello).end();
+        response.flush();
         super.channelConnected(ctx, e);
 
     }
@@ -197,7 +204,10 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
 
             }
             final ResponseEncoder responseEncoder = new ResponseEncoder(encoder, response, session);
+            // Coalesce the responses of the command so that they reach the channel in a single write
+            ((NettyImapSession) session).getResponseWriter().startBuffering();
             processor.process(message, responseEncoder, session);
+            response.flush();
 
             if (session.getState() == ImapSessionState.LOGOUT) {
                 // Make sure we close the channel after all the buffers were flushed out
@@ -217,6 +227,7 @@ public class ImapChannelUpstreamHandler extends SimpleChannelUpstreamHandler imp
                 throw failure;
             }
         } finally {
+            response.flush();
             ctx.getPipeline().remove(NettyConstants.HEARTBEAT_HANDLER);
         }
 
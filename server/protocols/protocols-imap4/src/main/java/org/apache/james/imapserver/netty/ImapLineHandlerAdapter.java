@@ -45,7 +45,9 @@ public class ImapLineHandlerAdapter extends SimpleChannelUpstreamHandler {
     public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
         ChannelBuffer buf = (ChannelBuffer) e.getMessage();
         byte data[];
-        if (buf.hasArray()) {
+        // Direct buffers and slices have to be copied, as the handler expects
+        // exactly the line
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.readerIndex() == 0 && buf.readableBytes() == buf.array().length) {
             data = buf.array();
         } else {
             data = new byte[buf.readableBytes()];
@@ -25,13 +25,19 @@ import org.apache.james.metrics.api.MetricFactory;
 public class ImapMetrics {
     private static final String IMAP_COMMANDS = "imapCommands";
     private static final String IMAP_CONNECTIONS = "imapConnections";
+    private static final String IMAP_FLUSHES = "imapFlushes";
+    private static final String IMAP_FLUSHED_BYTES = "imapFlushedBytes";
 
     private final Metric commandsMetric;
     private final Metric connectionsMetric;
+    private final Metric flushesMetric;
+    private final Metric flushedBytesMetric;
 
     public ImapMetrics(MetricFactory metricFactory) {
         commandsMetric = metricFactory.generate(IMAP_COMMANDS);
         connectionsMetric = metricFactory.generate(IMAP_CONNECTIONS);
+        flushesMetric = metricFactory.generate(IMAP_FLUSHES);
+        flushedBytesMetric = metricFactory.generate(IMAP_FLUSHED_BYTES);
     }
 
     public Metric getCommandsMetric() {
@@ -41,4 +47,12 @@ public class ImapMetrics {
     public Metric getConnectionsMetric() {
         return connectionsMetric;
     }
+
+    public Metric getFlushesMetric() {
+        return flushesMetric;
+    }
+
+    public Metric getFlushedBytesMetric() {
+        return flushedBytesMetric;
+    }
 }
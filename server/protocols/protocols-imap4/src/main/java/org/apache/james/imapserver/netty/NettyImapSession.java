@@ -50,9 +50,16 @@ public class NettyImapSession implements ImapSession, NettyConstants {
     private final Channel channel;
     private int handlerCount;
     private final boolean plainAuthDisallowed;
+    private final ChannelImapResponseWriter responseWriter;
 
     public NettyImapSession(Channel channel, Logger log, SSLContext sslContext, String[] enabledCipherSuites, boolean compress, boolean plainAuthDisallowed) {
+        this(channel, log, sslContext, enabledCipherSuites, compress, plainAuthDisallowed, new ChannelImapResponseWriter(channel));
+    }
+
+    public NettyImapSession(Channel channel, Logger log, SSLContext sslContext, String[] enabledCipherSuites, boolean compress, boolean plainAuthDisallowed,
+                            ChannelImapResponseWriter responseWriter) {
         this.channel = channel;
+        this.responseWriter = responseWriter;
         this.log = new ProtocolSessionLogger(channel.getId() + "", new ProtocolLoggerAdapter(log));
         this.sslContext = sslContext;
         this.enabledCipherSuites = enabledCipherSuites;
@@ -70,6 +77,16 @@ public class NettyImapSession implements ImapSession, NettyConstants {
         return channel;
     }
 
+    /**
+     * Return the {@link ChannelImapResponseWriter} used to answer on the
+     * wrapped {@link Channel}
+     * 
+     * @return responseWriter
+     */
+    public ChannelImapResponseWriter getResponseWriter() {
+        return responseWriter;
+    }
+
     /**
      * @see org.apache.james.imap.api.process.ImapSession#logout()
      */
@@ -152,6 +169,9 @@ public class NettyImapSession implements ImapSession, NettyConstants {
             return false;
         channel.setReadable(false);
 
+        // The tagged response of STARTTLS must leave in plain text
+        responseWriter.flush();
+
         SslHandler filter = new SslHandler(sslContext.createSSLEngine(), false);
         filter.getEngine().setUseClientMode(false);
         if (enabledCipherSuites != null && enabledCipherSuites.length > 0) {
@@ -187,6 +207,10 @@ public class NettyImapSession implements ImapSession, NettyConstants {
             return false;
 
         channel.setReadable(false);
+
+        // The tagged response of COMPRESS must leave uncompressed
+        responseWriter.flush();
+
         ZlibDecoder decoder = new ZlibDecoder(ZlibWrapper.NONE);
         ZlibEncoder encoder = new ZlibEncoder(ZlibWrapper.NONE, 5);
 
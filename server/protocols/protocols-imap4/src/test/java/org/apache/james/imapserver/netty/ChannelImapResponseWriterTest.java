@@ -0,0 +1,207 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+
+package org.apache.james.imapserver.netty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.james.imap.message.response.Literal;
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelConfig;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.handler.stream.ChunkedStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.google.common.base.Charsets;
+
+public class ChannelImapResponseWriterTest {
+
+    private static final int FLUSH_THRESHOLD = 10;
+
+    private List<Object> written;
+    private Channel channel;
+    private ChannelImapResponseWriter testee;
+
+    @Before
+    public void setUp() {
+        written = new ArrayList<Object>();
+        channel = mock(Channel.class);
+        ChannelConfig config = mock(ChannelConfig.class);
+        when(config.getBufferFactory()).thenReturn(HeapChannelBufferFactory.getInstance());
+        when(channel.getConfig()).thenReturn(config);
+        when(channel.getFactory()).thenReturn(mock(ChannelFactory.class));
+        when(channel.isConnected()).thenReturn(true);
+        when(channel.write(any())).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                written.add(invocation.getArguments()[0]);
+                return null;
+            }
+        });
+
+        testee = new ChannelImapResponseWriter(channel, false, FLUSH_THRESHOLD,
+            new NoopMetricFactory.NoopMetric(), new NoopMetricFactory.NoopMetric());
+    }
+
+    @Test
+    public void writeShouldWriteEachLineWhenNotBuffering() {
+        testee.write(bytes("a1 OK\r\n"));
+        testee.write(bytes("a2 OK\r\n"));
+
+        assertThat(writtenStrings()).containsExactly("a1 OK\r\n", "a2 OK\r\n");
+    }
+
+    @Test
+    public void writeShouldNotWriteWhenBuffering() {
+        testee.startBuffering();
+
+        testee.write(bytes("* 1\r\n"));
+
+        assertThat(written).isEmpty();
+    }
+
+    @Test
+    public void flushShouldWriteCoalescedLines() {
+        testee.startBuffering();
+        testee.write(bytes("* 1\r\n"));
+        testee.write(bytes("* 2\r\n"));
+
+        testee.flush();
+
+        assertThat(writtenStrings()).containsExactly("* 1\r\n* 2\r\n");
+    }
+
+    @Test
+    public void flushShouldNotWriteWhenNothingIsPending() {
+        testee.startBuffering();
+
+        testee.flush();
+
+        assertThat(written).isEmpty();
+    }
+
+    @Test
+    public void flushShouldStopBuffering() {
+        testee.startBuffering();
+        testee.flush();
+
+        testee.write(bytes("a1 OK\r\n"));
+
+        assertThat(writtenStrings()).containsExactly("a1 OK\r\n");
+    }
+
+    @Test
+    public void writeShouldFlushWhenPendingLinesReachTheThreshold() {
+        testee.startBuffering();
+        testee.write(bytes("* 12\r\n"));
+        testee.write(bytes("* 34\r\n"));
+        testee.write(bytes("* 5\r\n"));
+
+        assertThat(writtenStrings()).containsExactly("* 12\r\n* 34\r\n");
+    }
+
+    @Test
+    public void flushShouldWriteLinesPendingAfterThresholdFlush() {
+        testee.startBuffering();
+        testee.write(bytes("* 12\r\n"));
+        testee.write(bytes("* 34\r\n"));
+        testee.write(bytes("* 5\r\n"));
+
+        testee.flush();
+
+        assertThat(writtenStrings()).containsExactly("* 12\r\n* 34\r\n", "* 5\r\n");
+    }
+
+    @Test
+    public void writeLiteralShouldFlushPendingLinesFirst() throws Exception {
+        testee.startBuffering();
+        testee.write(bytes("* 1 FETCH (BODY[] {5}\r\n"));
+
+        testee.write(literal("hello"));
+
+        assertThat(written).hasSize(2);
+        assertThat(asString(written.get(0))).isEqualTo("* 1 FETCH (BODY[] {5}\r\n");
+        assertThat(written.get(1)).isInstanceOf(ChunkedStream.class);
+    }
+
+    @Test
+    public void writeLiteralShouldKeepBufferingFollowingLines() throws Exception {
+        testee.startBuffering();
+        testee.write(bytes("* 1 FETCH (BODY[] {5}\r\n"));
+        testee.write(literal("hello"));
+
+        testee.write(bytes(")\r\n"));
+
+        assertThat(written).hasSize(2);
+    }
+
+    @Test
+    public void writeShouldBeIgnoredWhenChannelIsNotConnected() {
+        when(channel.isConnected()).thenReturn(false);
+
+        testee.write(bytes("a1 OK\r\n"));
+
+        assertThat(written).isEmpty();
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(Charsets.US_ASCII);
+    }
+
+    private List<String> writtenStrings() {
+        List<String> result = new ArrayList<String>();
+        for (Object buffer : written) {
+            result.add(asString(buffer));
+        }
+        return result;
+    }
+
+    private String asString(Object buffer) {
+        return ((ChannelBuffer) buffer).toString(Charsets.US_ASCII);
+    }
+
+    private Literal literal(final String content) {
+        return new Literal() {
+            @Override
+            public long size() throws IOException {
+                return content.length();
+            }
+
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new ByteArrayInputStream(bytes(content));
+            }
+        };
+    }
+}
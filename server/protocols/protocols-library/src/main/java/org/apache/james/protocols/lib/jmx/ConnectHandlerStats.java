@@ -58,7 +58,8 @@ public class ConnectHandlerStats extends StandardMBean implements HandlerStatsMB
      */
     public void increment(Response response) {
         all.incrementAndGet();
-        if (response.isEndSession()) {
+        // connect handlers which only update the session return no response
+        if (response != null && response.isEndSession()) {
             disconnect.incrementAndGet();
         }
     }
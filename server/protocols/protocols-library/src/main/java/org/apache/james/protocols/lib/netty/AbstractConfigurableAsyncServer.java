@@ -70,6 +70,13 @@ public abstract class AbstractConfigurableAsyncServer extends AbstractAsyncServe
     /** The name of the parameter defining the connection backlog. */
     private static final String BACKLOG_NAME = "connectionBacklog";
 
+    /** The name of the parameter defining the buffers used by the channels. */
+    private static final String BUFFER_FACTORY_NAME = "bufferFactory";
+
+    public static final String HEAP_BUFFER_FACTORY = "heap";
+
+    public static final String DIRECT_BUFFER_FACTORY = "direct";
+
     /** The name of the parameter defining the service hello name. */
     public static final String HELLO_NAME = "helloName";
 
@@ -198,6 +205,16 @@ public abstract class AbstractConfigurableAsyncServer extends AbstractAsyncServe
 
         maxExecutorThreads = config.getInt("maxExecutorCount", DEFAULT_MAX_EXECUTOR_COUNT);
 
+        String bufferFactory = config.getString(BUFFER_FACTORY_NAME, HEAP_BUFFER_FACTORY);
+        if (bufferFactory.equalsIgnoreCase(DIRECT_BUFFER_FACTORY)) {
+            setUseDirectBuffers(true);
+        } else if (bufferFactory.equalsIgnoreCase(HEAP_BUFFER_FACTORY)) {
+            setUseDirectBuffers(false);
+        } else {
+            throw new ConfigurationException("Invalid " + BUFFER_FACTORY_NAME + " " + bufferFactory + ", expecting " + HEAP_BUFFER_FACTORY + " or " + DIRECT_BUFFER_FACTORY);
+        }
+        logger.info(getServiceType() + " uses " + (isUsingDirectBuffers() ? DIRECT_BUFFER_FACTORY : HEAP_BUFFER_FACTORY) + " channel buffers");
+
         
         configureHelloName(config);
 
@@ -38,6 +38,7 @@ import org.apache.james.protocols.smtp.core.RsetCmdHandler;
 import org.apache.james.protocols.smtp.core.UnknownCmdHandler;
 import org.apache.james.protocols.smtp.core.VrfyCmdHandler;
 import org.apache.james.protocols.smtp.core.esmtp.AuthCmdHandler;
+import org.apache.james.protocols.smtp.core.esmtp.ChunkingEsmtpExtension;
 import org.apache.james.protocols.smtp.core.esmtp.EhloCmdHandler;
 import org.apache.james.protocols.smtp.core.esmtp.MailSizeEsmtpExtension;
 import org.apache.james.protocols.smtp.core.esmtp.StartTlsCmdHandler;
@@ -82,6 +83,8 @@ public class CoreCmdHandlerLoader implements HandlersPackage {
         commands.add(VRFYCMDHANDLER);
         String MAILSIZEHOOK = MailSizeEsmtpExtension.class.getName();
         commands.add(MAILSIZEHOOK);
+        String CHUNKINGEXTENSION = ChunkingEsmtpExtension.class.getName();
+        commands.add(CHUNKINGEXTENSION);
         String USERSREPOSITORYAUTHHANDLER = UsersRepositoryAuthHook.class.getName();
         commands.add(USERSREPOSITORYAUTHHANDLER);
         String AUTHREQUIREDTORELAY = AuthRequiredToRelayRcptHook.class.getName();
@@ -79,10 +79,10 @@ public class DataLineJamesMessageHookHandler implements DataLineFilter, Extensib
 
     }
 
-    public Response onLine(SMTPSession session, ByteBuffer lineByteBuffer, LineHandler<SMTPSession> next) {
+    public Response onLine(SMTPSession session, ByteBuffer line, LineHandler<SMTPSession> next) {
 
-        byte[] line = new byte[lineByteBuffer.remaining()];
-        lineByteBuffer.get(line, 0, line.length);
+        int position = line.position();
+        int length = line.remaining();
 
         MimeMessageInputStreamSource mmiss = (MimeMessageInputStreamSource) session.getAttachment(SMTPConstants.DATA_MIMEMESSAGE_STREAMSOURCE, State.Transaction);
 
@@ -91,7 +91,7 @@ public class DataLineJamesMessageHookHandler implements DataLineFilter, Extensib
 
             // 46 is "."
             // Stream terminated
-            if (line.length == 3 && line[0] == 46) {
+            if (length == 3 && line.get(position) == 46) {
                 out.flush();
                 out.close();
 
@@ -135,14 +135,14 @@ public class DataLineJamesMessageHookHandler implements DataLineFilter, Extensib
                 }
 
                 // DotStuffing.
-            } else if (line[0] == 46 && line[1] == 46) {
-                out.write(line, 1, line.length - 1);
+            } else if (length > 1 && line.get(position) == 46 && line.get(position + 1) == 46) {
+                write(out, line, 1);
                 // Standard write
             } else {
                 // TODO: maybe we should handle the Header/Body recognition here
                 // and if needed let a filter to cache the headers to apply some
                 // transformation before writing them to output.
-                out.write(line);
+                write(out, line, 0);
             }
         } catch (IOException e) {
             LifecycleUtil.dispose(mmiss);
@@ -158,6 +158,20 @@ public class DataLineJamesMessageHookHandler implements DataLineFilter, Extensib
         return null;
     }
 
+    /**
+     * Write the line to the spool, skipping the given count of leading bytes. Heap buffers are
+     * written from their backing array, so the line is not copied.
+     */
+    private void write(OutputStream out, ByteBuffer line, int skip) throws IOException {
+        if (line.hasArray()) {
+            out.write(line.array(), line.arrayOffset() + line.position() + skip, line.remaining() - skip);
+        } else {
+            byte[] bytes = new byte[line.remaining()];
+            line.get(bytes);
+            out.write(bytes, skip, bytes.length - skip);
+        }
+    }
+
     protected Response processExtensions(SMTPSession session, Mail mail) {
         if (mail != null && messageHandlers != null) {
             try {
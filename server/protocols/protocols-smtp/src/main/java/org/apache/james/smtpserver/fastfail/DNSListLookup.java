@@ -0,0 +1,150 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.smtpserver.fastfail;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.james.dnsservice.api.AsyncDNSService;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.TimeMetric;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Looks up names in DNS based lists (DNSBL, URIBL) all at once, within an
+ * overall deadline, stopping as soon as one of them is listed.
+ * 
+ * The latency of each lookup is published per list zone, as well as the number
+ * of lookups not answered before the deadline.
+ */
+class DNSListLookup {
+
+    public static final String LATENCY_METRIC_PREFIX = "dnsListLookupLatency:";
+    public static final String TIMEOUT_METRIC_PREFIX = "dnsListLookupTimeout:";
+
+    /**
+     * A name to look up in a given list zone.
+     */
+    public static class Query {
+        private final String name;
+        private final String zone;
+
+        public Query(String name, String zone) {
+            this.name = name;
+            this.zone = zone;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getZone() {
+            return zone;
+        }
+    }
+
+    private final AsyncDNSService dnsService;
+    private final MetricFactory metricFactory;
+    private final long timeoutInMs;
+
+    public DNSListLookup(AsyncDNSService dnsService, MetricFactory metricFactory, long timeoutInMs) {
+        this.dnsService = dnsService;
+        this.metricFactory = metricFactory;
+        this.timeoutInMs = timeoutInMs;
+    }
+
+    /**
+     * Send all the queries and return the first one found listed, or absent
+     * if none is listed before the deadline.
+     */
+    public Optional<Query> firstListed(Collection<Query> queries) {
+        BlockingQueue<Optional<Query>> answers = new LinkedBlockingQueue<Optional<Query>>();
+        List<ListenableFuture<InetAddress>> lookups = new ArrayList<ListenableFuture<InetAddress>>(queries.size());
+        List<Query> sentQueries = new ArrayList<Query>(queries.size());
+        long deadline = System.currentTimeMillis() + timeoutInMs;
+
+        for (Query query : queries) {
+            TimeMetric timeMetric = metricFactory.timer(LATENCY_METRIC_PREFIX + query.getZone());
+            ListenableFuture<InetAddress> lookup = dnsService.getByNameAsync(query.getName());
+            Futures.addCallback(lookup, answerCallback(query, timeMetric, answers));
+            lookups.add(lookup);
+            sentQueries.add(query);
+            if (lookup.isDone() && answers.contains(Optional.of(query))) {
+                // Already answered, for instance by a blocking DNS service: no need to send the other queries
+                break;
+            }
+        }
+
+        Optional<Query> listed = Optional.absent();
+        boolean timedOut = false;
+        try {
+            for (int answered = 0; answered < lookups.size() && !listed.isPresent(); answered++) {
+                long remaining = deadline - System.currentTimeMillis();
+                Optional<Query> answer = answers.poll(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+                if (answer == null) {
+                    timedOut = true;
+                    break;
+                }
+                listed = answer;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        cancelPendingLookups(lookups, sentQueries, timedOut);
+        return listed;
+    }
+
+    private FutureCallback<InetAddress> answerCallback(final Query query, final TimeMetric timeMetric, final BlockingQueue<Optional<Query>> answers) {
+        return new FutureCallback<InetAddress>() {
+            @Override
+            public void onSuccess(InetAddress result) {
+                timeMetric.stopAndPublish();
+                answers.add(Optional.of(query));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (!(t instanceof CancellationException)) {
+                    timeMetric.stopAndPublish();
+                }
+                // Not listed, or the list could not be reached
+                answers.add(Optional.<Query>absent());
+            }
+        };
+    }
+
+    private void cancelPendingLookups(List<ListenableFuture<InetAddress>> lookups, List<Query> sentQueries, boolean timedOut) {
+        for (int i = 0; i < lookups.size(); i++) {
+            ListenableFuture<InetAddress> lookup = lookups.get(i);
+            if (lookup.cancel(true) && timedOut) {
+                metricFactory.generate(TIMEOUT_METRIC_PREFIX + sentQueries.get(i).getZone()).increment();
+            }
+        }
+    }
+}
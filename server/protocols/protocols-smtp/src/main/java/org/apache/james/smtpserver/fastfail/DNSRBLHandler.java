@@ -20,8 +20,10 @@ package org.apache.james.smtpserver.fastfail;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import javax.inject.Inject;
 
@@ -29,17 +31,44 @@ import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.james.dnsservice.api.DNSService;
+import org.apache.james.dnsservice.library.BlockingAsyncDNSService;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.NoopMetricFactory;
 import org.apache.james.protocols.api.handler.ProtocolHandler;
+import org.apache.james.protocols.smtp.SMTPSession;
 
+import com.google.common.base.Optional;
+
+/**
+ * Checks the remote address against the configured DNSRBL servers. All the
+ * servers of a list are queried at once, waiting at most <code>timeout</code>
+ * milliseconds (default 5000) for them to answer.
+ */
 public class DNSRBLHandler extends org.apache.james.protocols.smtp.core.fastfail.DNSRBLHandler implements ProtocolHandler {
 
+    public static final long DEFAULT_TIMEOUT_IN_MS = 5000;
+
     private DNSService dns;
+    private MetricFactory metricFactory = new NoopMetricFactory();
+    private long timeoutInMs = DEFAULT_TIMEOUT_IN_MS;
 
     @Inject
     public void setDNSService(DNSService dns) {
         this.dns = dns;
     }
 
+    @Inject
+    public void setMetricFactory(MetricFactory metricFactory) {
+        this.metricFactory = metricFactory;
+    }
+
+    /**
+     * Set the overall time allowed to the lookups of a list, in milliseconds
+     */
+    public void setTimeout(long timeoutInMs) {
+        this.timeoutInMs = timeoutInMs;
+    }
+
     @Override
     public void init(Configuration config) throws ConfigurationException {
         boolean validConfig = false;
@@ -65,6 +94,12 @@ public class DNSRBLHandler extends org.apache.james.protocols.smtp.core.fastfail
         }
 
         setGetDetail(handlerConfiguration.getBoolean("getDetail", false));
+
+        long timeout = handlerConfiguration.getLong("timeout", DEFAULT_TIMEOUT_IN_MS);
+        if (timeout <= 0) {
+            throw new ConfigurationException("timeout should be strictly positive");
+        }
+        setTimeout(timeout);
     }
 
     @Override
@@ -72,6 +107,23 @@ public class DNSRBLHandler extends org.apache.james.protocols.smtp.core.fastfail
         // Do nothing
     }
 
+    @Override
+    protected String findListingRBL(SMTPSession session, String reversedOctets, String[] rblList) {
+        List<DNSListLookup.Query> queries = new ArrayList<DNSListLookup.Query>(rblList.length);
+        for (String rbl : rblList) {
+            queries.add(new DNSListLookup.Query(reversedOctets + rbl, rbl));
+        }
+        Optional<DNSListLookup.Query> listing = new DNSListLookup(BlockingAsyncDNSService.of(dns), metricFactory, timeoutInMs)
+            .firstListed(queries);
+        if (listing.isPresent()) {
+            return listing.get().getZone();
+        }
+        if (session.getLogger().isDebugEnabled()) {
+            session.getLogger().debug("IpAddress " + session.getRemoteAddress().getAddress() + " not listed on " + Arrays.toString(rblList));
+        }
+        return null;
+    }
+
     @Override
     protected boolean resolve(String ip) {
         try {
@@ -19,11 +19,12 @@
 package org.apache.james.smtpserver.fastfail;
 
 import java.io.IOException;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.mail.MessagingException;
@@ -35,6 +36,9 @@ import javax.mail.internet.MimePart;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.james.dnsservice.api.DNSService;
+import org.apache.james.dnsservice.library.BlockingAsyncDNSService;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.NoopMetricFactory;
 import org.apache.james.protocols.api.ProtocolSession.State;
 import org.apache.james.protocols.api.handler.ProtocolHandler;
 import org.apache.james.protocols.smtp.SMTPSession;
@@ -46,9 +50,14 @@ import org.apache.mailet.Mail;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.base.Optional;
+
 /**
  * Extract domains from message and check against URIRBLServer. For more
  * informations see <a href="http://www.surbl.org">www.surbl.org</a>
+ * 
+ * All the (domain, server) pairs are queried at once, waiting at most
+ * <code>timeout</code> milliseconds (default 5000) for them to answer.
  */
 public class URIRBLHandler implements JamesMessageHook, ProtocolHandler {
 
@@ -65,12 +74,18 @@ public class URIRBLHandler implements JamesMessageHook, ProtocolHandler {
 
     private final static String URBLSERVER = "URBL_SERVER";
 
+    public static final long DEFAULT_TIMEOUT_IN_MS = 5000;
+
     private DNSService dnsService;
 
     private Collection<String> uriRbl;
 
     private boolean getDetail = false;
 
+    private MetricFactory metricFactory = new NoopMetricFactory();
+
+    private long timeoutInMs = DEFAULT_TIMEOUT_IN_MS;
+
     /**
      * Gets the DNS service.
      * 
@@ -91,6 +106,19 @@ public class URIRBLHandler implements JamesMessageHook, ProtocolHandler {
         this.dnsService = dnsService;
     }
 
+    @Inject
+    public void setMetricFactory(MetricFactory metricFactory) {
+        this.metricFactory = metricFactory;
+    }
+
+    /**
+     * Set the overall time allowed to the lookups of a message, in
+     * milliseconds
+     */
+    public void setTimeout(long timeoutInMs) {
+        this.timeoutInMs = timeoutInMs;
+    }
+
     /**
      * Set the UriRBL Servers
      * 
@@ -197,31 +225,30 @@ public class URIRBLHandler implements JamesMessageHook, ProtocolHandler {
 
             HashSet<String> domains = scanMailForDomains(message, session);
 
-            for (String domain : domains) {
-                Iterator<String> uRbl = uriRbl.iterator();
-                String target = domain;
-
-                while (uRbl.hasNext()) {
-                    try {
-                        String uRblServer = uRbl.next();
-                        String address = target + "." + uRblServer;
-
-                        if (session.getLogger().isDebugEnabled()) {
-                            session.getLogger().debug("Lookup " + address);
-                        }
+            List<DNSListLookup.Query> queries = new ArrayList<DNSListLookup.Query>(domains.size() * uriRbl.size());
+            Map<DNSListLookup.Query, String> targets = new HashMap<DNSListLookup.Query, String>();
+            for (String target : domains) {
+                for (String uRblServer : uriRbl) {
+                    String address = target + "." + uRblServer;
 
-                        dnsService.getByName(address);
+                    if (session.getLogger().isDebugEnabled()) {
+                        session.getLogger().debug("Lookup " + address);
+                    }
 
-                        // store server name for later use
-                        session.setAttachment(URBLSERVER, uRblServer, State.Transaction);
-                        session.setAttachment(LISTED_DOMAIN, target, State.Transaction);
+                    DNSListLookup.Query query = new DNSListLookup.Query(address, uRblServer);
+                    queries.add(query);
+                    targets.put(query, target);
+                }
+            }
 
-                        return true;
+            Optional<DNSListLookup.Query> listing = new DNSListLookup(BlockingAsyncDNSService.of(dnsService), metricFactory, timeoutInMs)
+                .firstListed(queries);
+            if (listing.isPresent()) {
+                // store server name for later use
+                session.setAttachment(URBLSERVER, listing.get().getZone(), State.Transaction);
+                session.setAttachment(LISTED_DOMAIN, targets.get(listing.get()), State.Transaction);
 
-                    } catch (UnknownHostException uhe) {
-                        // domain not found. keep processing
-                    }
-                }
+                return true;
             }
         } catch (MessagingException e) {
             session.getLogger().error(e.getMessage());
@@ -247,7 +274,13 @@ public class URIRBLHandler implements JamesMessageHook, ProtocolHandler {
             throw new ConfigurationException("Please provide at least one server");
         }
 
-        setGetDetail(config.getBoolean("getDetail", false));        
+        setGetDetail(config.getBoolean("getDetail", false));
+
+        long timeout = config.getLong("timeout", DEFAULT_TIMEOUT_IN_MS);
+        if (timeout <= 0) {
+            throw new ConfigurationException("timeout should be strictly positive");
+        }
+        setTimeout(timeout);
     }
 
     @Override
@@ -454,7 +454,7 @@ public class SMTPServerTest {
 
         assertThat(capabilitieslist)
             .as("capabilities")
-            .hasSize(3);
+            .hasSize(4);
         assertThat(capabilitieslist.contains("PIPELINING"))
             .as("capabilities present PIPELINING")
             .isTrue();
@@ -464,6 +464,9 @@ public class SMTPServerTest {
         assertThat(capabilitieslist.contains("8BITMIME"))
             .as("capabilities present 8BITMIME")
             .isTrue();
+        assertThat(capabilitieslist.contains("CHUNKING"))
+            .as("capabilities present CHUNKING")
+            .isTrue();
 
         smtpProtocol.setSender("mail@localhost");
         smtpProtocol.addRecipient("mail@localhost");
@@ -502,10 +505,10 @@ public class SMTPServerTest {
 
         assertThat(capabilitieslist)
             .as("capabilities")
-            .hasSize(4);
+            .hasSize(5);
         assertThat(capabilitieslist)
-            .as("capabilities present PIPELINING ENHANCEDSTATUSCODES 8BITMIME STARTTLS")
-            .containsOnly("PIPELINING", "ENHANCEDSTATUSCODES", "8BITMIME", "STARTTLS");
+            .as("capabilities present PIPELINING ENHANCEDSTATUSCODES 8BITMIME CHUNKING STARTTLS")
+            .containsOnly("PIPELINING", "ENHANCEDSTATUSCODES", "8BITMIME", "CHUNKING", "STARTTLS");
 
         smtpProtocol.quit();
         smtpProtocol.disconnect();
@@ -1726,6 +1729,102 @@ public class SMTPServerTest {
         client.close();
     }
 
+    // See http://www.ietf.org/rfc/rfc3030.txt 4.3: Examples
+    @Test
+    public void testBdat() throws Exception {
+        init(smtpConfiguration);
+        InetSocketAddress bindedAddress = new ProtocolServerUtils(smtpServer).retrieveBindedAddress();
+        Socket client = new Socket(bindedAddress.getAddress().getHostAddress(), bindedAddress.getPort());
+
+        String firstChunk = "Subject: test\r\n\r\nfirst line\r\n.start";
+        String lastChunk = "ing with a dot\r\nlast line\r\n";
+        StringBuilder buf = new StringBuilder();
+        buf.append("HELO TEST\r\n");
+        buf.append("MAIL FROM: <test@localhost>\r\n");
+        buf.append("RCPT TO: <test2@localhost>\r\n");
+        buf.append("BDAT ").append(firstChunk.length()).append("\r\n");
+        buf.append(firstChunk);
+        buf.append("BDAT ").append(lastChunk.length()).append(" LAST\r\n");
+        buf.append(lastChunk);
+        buf.append("QUIT\r\n");
+
+        OutputStream out = client.getOutputStream();
+
+        out.write(buf.toString().getBytes());
+        out.flush();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("Connection made")
+            .isEqualTo(220);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("HELO accepted")
+            .isEqualTo(250);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("MAIL FROM accepted")
+            .isEqualTo(250);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("RCPT TO accepted")
+            .isEqualTo(250);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("First chunk accepted")
+            .isEqualTo(250);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("Message accepted")
+            .isEqualTo(250);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("QUIT accepted")
+            .isEqualTo(221);
+        in.close();
+        out.close();
+        client.close();
+
+        assertThat(queue.getLastMail().getMessage().getContent())
+            .as("message content")
+            .isEqualTo("first line\r\n.starting with a dot\r\nlast line\r\n");
+    }
+
+    @Test
+    public void testRejectedBdatShouldConsumeChunk() throws Exception {
+        init(smtpConfiguration);
+        InetSocketAddress bindedAddress = new ProtocolServerUtils(smtpServer).retrieveBindedAddress();
+        Socket client = new Socket(bindedAddress.getAddress().getHostAddress(), bindedAddress.getPort());
+
+        StringBuilder buf = new StringBuilder();
+        buf.append("HELO TEST\r\n");
+        buf.append("MAIL FROM: <test@localhost>\r\n");
+        buf.append("BDAT 6 LAST\r\n");
+        buf.append("NOOP\r\n");
+        buf.append("QUIT\r\n");
+
+        OutputStream out = client.getOutputStream();
+
+        out.write(buf.toString().getBytes());
+        out.flush();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
+
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("Connection made")
+            .isEqualTo(220);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("HELO accepted")
+            .isEqualTo(250);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("MAIL FROM accepted")
+            .isEqualTo(250);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("BDAT without recipients rejected")
+            .isEqualTo(503);
+        assertThat(Integer.parseInt(in.readLine().split(" ")[0]))
+            .as("QUIT accepted")
+            .isEqualTo(221);
+        in.close();
+        out.close();
+        client.close();
+    }
+
     // See http://www.ietf.org/rfc/rfc2920.txt 4: Examples
     @Test
     public void testRejectAllRCPTPipelining() throws Exception {
@@ -0,0 +1,139 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.smtpserver.fastfail;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.james.dnsservice.api.AsyncDNSService;
+import org.apache.james.metrics.api.Metric;
+import org.apache.james.metrics.api.MetricFactory;
+import org.apache.james.metrics.api.TimeMetric;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class DNSListLookupTest {
+
+    private static final String LISTING_ZONE = "listing.org";
+    private static final String SLOW_ZONE = "slow.org";
+    private static final String NOT_LISTING_ZONE = "notlisting.org";
+
+    private Map<String, SettableFuture<InetAddress>> lookups;
+    private MetricFactory metricFactory;
+    private Metric timeoutMetric;
+    private DNSListLookup testee;
+
+    @Before
+    public void setUp() {
+        lookups = new ConcurrentHashMap<String, SettableFuture<InetAddress>>();
+        AsyncDNSService dnsService = new AsyncDNSService() {
+            @Override
+            public ListenableFuture<InetAddress> getByNameAsync(String host) {
+                SettableFuture<InetAddress> lookup = SettableFuture.create();
+                lookups.put(host, lookup);
+                return lookup;
+            }
+
+            @Override
+            public ListenableFuture<Collection<String>> findTXTRecordsAsync(String hostname) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        metricFactory = mock(MetricFactory.class);
+        timeoutMetric = mock(Metric.class);
+        when(metricFactory.timer(anyString())).thenReturn(mock(TimeMetric.class));
+        when(metricFactory.generate(DNSListLookup.TIMEOUT_METRIC_PREFIX + SLOW_ZONE)).thenReturn(timeoutMetric);
+        testee = new DNSListLookup(dnsService, metricFactory, 200);
+    }
+
+    @Test
+    public void firstListedShouldReturnAbsentWhenNoQuery() {
+        assertThat(testee.firstListed(ImmutableList.<DNSListLookup.Query>of()).isPresent()).isFalse();
+    }
+
+    @Test
+    public void firstListedShouldReturnListingQueryWithoutWaitingForOthers() {
+        DNSListLookup.Query listing = new DNSListLookup.Query("1.0.0.127." + LISTING_ZONE, LISTING_ZONE);
+        DNSListLookup.Query slow = new DNSListLookup.Query("1.0.0.127." + SLOW_ZONE, SLOW_ZONE);
+
+        Optional<DNSListLookup.Query> result = firstListedAnswering(ImmutableList.of(slow, listing), listing.getName(), true);
+
+        assertThat(result.get()).isSameAs(listing);
+        assertThat(lookups.get(slow.getName()).isCancelled()).isTrue();
+        verify(timeoutMetric, never()).increment();
+    }
+
+    @Test
+    public void firstListedShouldReturnAbsentWhenNoListing() {
+        DNSListLookup.Query notListing = new DNSListLookup.Query("1.0.0.127." + NOT_LISTING_ZONE, NOT_LISTING_ZONE);
+
+        Optional<DNSListLookup.Query> result = firstListedAnswering(ImmutableList.of(notListing), notListing.getName(), false);
+
+        assertThat(result.isPresent()).isFalse();
+    }
+
+    @Test
+    public void firstListedShouldGiveUpSlowListsAfterTimeout() {
+        DNSListLookup.Query notListing = new DNSListLookup.Query("1.0.0.127." + NOT_LISTING_ZONE, NOT_LISTING_ZONE);
+        DNSListLookup.Query slow = new DNSListLookup.Query("1.0.0.127." + SLOW_ZONE, SLOW_ZONE);
+
+        Optional<DNSListLookup.Query> result = firstListedAnswering(ImmutableList.of(notListing, slow), notListing.getName(), false);
+
+        assertThat(result.isPresent()).isFalse();
+        assertThat(lookups.get(slow.getName()).isCancelled()).isTrue();
+        verify(timeoutMetric).increment();
+    }
+
+    private Optional<DNSListLookup.Query> firstListedAnswering(final ImmutableList<DNSListLookup.Query> queries, final String answeredName, final boolean listed) {
+        Thread answering = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!lookups.containsKey(answeredName)) {
+                        Thread.sleep(5);
+                    }
+                    if (listed) {
+                        lookups.get(answeredName).set(InetAddress.getByName("127.0.0.2"));
+                    } else {
+                        lookups.get(answeredName).setException(new UnknownHostException(answeredName));
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        answering.start();
+        return testee.firstListed(queries);
+    }
+}
@@ -45,7 +45,11 @@ import org.apache.james.core.MimeMessageInputStream;
 import org.apache.james.core.MimeMessageSource;
 import org.apache.james.metrics.api.MetricFactory;
 import org.apache.james.queue.api.MailQueue;
+import org.apache.james.queue.api.MailQueueCounters;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.MailQueueStatistics;
+import org.apache.james.queue.jms.DequeueConfiguration;
+import org.apache.james.queue.jms.JMSConsumerPool.PooledConsumer;
 import org.apache.james.queue.jms.JMSMailQueue;
 import org.apache.mailet.Mail;
 import org.slf4j.Logger;
@@ -106,10 +110,36 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
      * @param logger
      */
     public ActiveMQMailQueue(ConnectionFactory connectionFactory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, String queuename, boolean useBlob, MetricFactory metricFactory, Logger logger) {
-        super(connectionFactory, mailQueueItemDecoratorFactory, queuename, metricFactory, logger);
+        this(connectionFactory, mailQueueItemDecoratorFactory, queuename, useBlob, metricFactory, logger, DequeueConfiguration.PER_DEQUEUE);
+    }
+
+    /**
+     * Construct a new ActiveMQ based {@link MailQueue} with the given
+     * {@link DequeueConfiguration}. Its prefetch size is applied to the dequeue
+     * consumers as the <code>consumer.prefetchSize</code> destination option.
+     */
+    public ActiveMQMailQueue(ConnectionFactory connectionFactory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, String queuename, boolean useBlob, MetricFactory metricFactory, Logger logger, DequeueConfiguration dequeueConfiguration) {
+        super(connectionFactory, mailQueueItemDecoratorFactory, queuename, metricFactory, logger, dequeueConfiguration);
         this.useBlob = useBlob;
     }
 
+    /**
+     * The size of the queue is read from the ActiveMQ StatisticsPlugin, so its
+     * content is never browsed as a whole
+     */
+    @Override
+    protected boolean reconcilesStatistics() {
+        return false;
+    }
+
+    @Override
+    protected Queue createDequeueQueue(Session session) throws JMSException {
+        if (dequeueConfiguration.getPrefetch() != DequeueConfiguration.DEFAULT_PREFETCH) {
+            return session.createQueue(queueName + "?consumer.prefetchSize=" + dequeueConfiguration.getPrefetch());
+        }
+        return super.createDequeueQueue(session);
+    }
+
     /**
      * @see
      * org.apache.james.queue.jms.JMSMailQueue#populateMailMimeMessage(javax.jms.Message, org.apache.mailet.Mail)
@@ -243,7 +273,14 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
     protected MailQueueItem createMailQueueItem(Connection connection, Session session, MessageConsumer consumer, Message message) throws JMSException, MessagingException {
         Mail mail = createMail(message);
         ActiveMQMailQueueItem activeMQMailQueueItem = new ActiveMQMailQueueItem(mail, connection, session, consumer, message, logger);
-        return mailQueueItemDecoratorFactory.decorate(activeMQMailQueueItem);
+        return decorate(activeMQMailQueueItem, message);
+    }
+
+    @Override
+    protected MailQueueItem createMailQueueItem(Connection connection, PooledConsumer pooledConsumer, Message message) throws JMSException, MessagingException {
+        Mail mail = createMail(message);
+        ActiveMQMailQueueItem activeMQMailQueueItem = new ActiveMQMailQueueItem(mail, connection, pooledConsumer, message, logger);
+        return decorate(activeMQMailQueueItem, message);
     }
 
     @Override
@@ -366,4 +403,23 @@ public class ActiveMQMailQueue extends JMSMailQueue implements ActiveMQSupport {
         return super.getSize();
     }
 
+    /**
+     * Use the size given by {@link #getSize()}, as the {@link MailQueueCounters}
+     * of this queue are not reconciled with its content. Mails already delayed
+     * when the queue was created are accounted as ready.
+     */
+    @Override
+    public MailQueueStatistics getStatistics() throws MailQueueException {
+        MailQueueStatistics counted = counters.getStatistics();
+        long size = getSize();
+        if (size <= 0) {
+            return MailQueueStatistics.EMPTY;
+        }
+        long oldestEnqueueTime = counted.getOldestEnqueueTime();
+        if (oldestEnqueueTime == MailQueueStatistics.NO_ENQUEUE_TIME) {
+            oldestEnqueueTime = resolveOldestEnqueueTime();
+        }
+        return new MailQueueStatistics(size, Math.min(size, counted.getDelayedSize()), oldestEnqueueTime);
+    }
+
 }
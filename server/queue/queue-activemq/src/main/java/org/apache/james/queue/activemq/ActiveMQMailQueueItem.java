@@ -30,6 +30,7 @@ import javax.jms.Session;
 import org.apache.activemq.command.ActiveMQBlobMessage;
 import org.apache.james.queue.api.MailQueue.MailQueueException;
 import org.apache.james.queue.api.MailQueue.MailQueueItem;
+import org.apache.james.queue.jms.JMSConsumerPool.PooledConsumer;
 import org.apache.james.queue.jms.JMSMailQueueItem;
 import org.apache.mailet.Mail;
 import org.slf4j.Logger;
@@ -49,23 +50,30 @@ public class ActiveMQMailQueueItem extends JMSMailQueueItem implements ActiveMQS
         this.logger = logger;
     }
 
+    public ActiveMQMailQueueItem(Mail mail, Connection connection, PooledConsumer pooledConsumer, Message message, Logger logger) {
+        super(mail, connection, pooledConsumer);
+        this.message = message;
+        this.logger = logger;
+    }
+
     /**
      * @see org.apache.james.queue.jms.JMSMailQueueItem#done(boolean)
      */
     public void done(boolean success) throws MailQueueException {
+        boolean deleteBlob = success && message instanceof ActiveMQBlobMessage && getMail().getAttribute(JAMES_REUSE_BLOB_URL) == null;
+        if (deleteBlob && pooledConsumer != null) {
+            // The acknowledgement may be batched: the file is still needed if the message is redelivered
+            pooledConsumer.afterCommit(new Runnable() {
+                @Override
+                public void run() {
+                    deleteBlobFile();
+                }
+            });
+        }
         super.done(success);
         if (success) {
-            if (message instanceof ActiveMQBlobMessage && getMail().getAttribute(JAMES_REUSE_BLOB_URL) == null) {
-
-                // This should get removed once this jira issue was fixed
-                // https://issues.apache.org/activemq/browse/AMQ-1529
-                try {
-                    ((ActiveMQBlobMessage) message).deleteFile();
-                } catch (IOException e) {
-                    logger.info("Unable to delete blob message file for mail " + getMail().getName());
-                } catch (JMSException e) {
-                    logger.info("Unable to delete blob message file for mail " + getMail().getName());
-                }
+            if (deleteBlob && pooledConsumer == null) {
+                deleteBlobFile();
             }
             getMail().removeAttribute(JAMES_REUSE_BLOB_URL);
 
@@ -73,4 +81,16 @@ public class ActiveMQMailQueueItem extends JMSMailQueueItem implements ActiveMQS
 
     }
 
+    private void deleteBlobFile() {
+        // This should get removed once this jira issue was fixed
+        // https://issues.apache.org/activemq/browse/AMQ-1529
+        try {
+            ((ActiveMQBlobMessage) message).deleteFile();
+        } catch (IOException e) {
+            logger.info("Unable to delete blob message file for mail " + getMail().getName());
+        } catch (JMSException e) {
+            logger.info("Unable to delete blob message file for mail " + getMail().getName());
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,215 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.api;
+
+/**
+ * Incrementally maintained {@link MailQueueStatistics}, so that
+ * {@link ManageableMailQueue} implementations do not need to browse their
+ * content to compute them. Only a few counters are kept, whatever the size of
+ * the queue.
+ * <p>
+ * Implementations report each mail entering the queue with
+ * {@link #enqueued(long, long)}, and each mail leaving it, once its dequeue
+ * succeeded or it was removed, with {@link #removed(long, long)}. Both take
+ * the enqueue time of the mail and its next delivery time, or a value lower
+ * or equal to 0 if the mail is not delayed.
+ * </p>
+ * <p>
+ * Delayed mails are accounted as ready once the latest next delivery time of
+ * the delayed mails is reached, or when they leave the queue. Until then the
+ * ready count is a lower bound.
+ * </p>
+ * <p>
+ * The oldest enqueue time is tracked as mails are enqueued. Once the oldest
+ * mail leaves the queue, the next oldest one is looked up through the
+ * {@link OldestEnqueueTimeResolver} of the queue, on the next read of the
+ * statistics only.
+ * </p>
+ * <p>
+ * As the counters may drift, for instance when a dequeued mail is
+ * redelivered after a failure, or when the underlying storage is shared by
+ * several servers, implementations may periodically rebuild a fresh
+ * instance from their content and apply it with
+ * {@link #reconcile(MailQueueCounters)}, or with
+ * {@link #reconcile(MailQueueCounters, long)} when the content is read while
+ * the queue is in use.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class MailQueueCounters {
+
+    /**
+     * Look up the enqueue time of the oldest mail of a queue
+     */
+    public interface OldestEnqueueTimeResolver {
+
+        /**
+         * Return the enqueue time of the oldest mail of the queue, or
+         * {@link MailQueueStatistics#NO_ENQUEUE_TIME} if it is empty or the
+         * time can not be found
+         */
+        long resolveOldestEnqueueTime();
+
+    }
+
+    private static final OldestEnqueueTimeResolver UNRESOLVABLE = new OldestEnqueueTimeResolver() {
+        @Override
+        public long resolveOldestEnqueueTime() {
+            return MailQueueStatistics.NO_ENQUEUE_TIME;
+        }
+    };
+
+    private final OldestEnqueueTimeResolver oldestEnqueueTimeResolver;
+    private long size;
+    private long delayedSize;
+    private long latestNextDelivery;
+    private long oldestEnqueueTime = MailQueueStatistics.NO_ENQUEUE_TIME;
+    private boolean oldestEnqueueTimeKnown = true;
+    private long oldestEnqueueTimeInvalidations;
+    private long modifications;
+
+    /**
+     * Create counters which report {@link MailQueueStatistics#NO_ENQUEUE_TIME}
+     * as oldest enqueue time once the oldest mail left the queue, until the
+     * next reconciliation
+     */
+    public MailQueueCounters() {
+        this(UNRESOLVABLE);
+    }
+
+    public MailQueueCounters(OldestEnqueueTimeResolver oldestEnqueueTimeResolver) {
+        this.oldestEnqueueTimeResolver = oldestEnqueueTimeResolver;
+    }
+
+    public synchronized void enqueued(long enqueueTime, long nextDelivery) {
+        modifications++;
+        size++;
+        if (oldestEnqueueTimeKnown && (oldestEnqueueTime == MailQueueStatistics.NO_ENQUEUE_TIME || enqueueTime < oldestEnqueueTime)) {
+            oldestEnqueueTime = enqueueTime;
+        }
+        if (nextDelivery > System.currentTimeMillis()) {
+            delayedSize++;
+            latestNextDelivery = Math.max(latestNextDelivery, nextDelivery);
+        }
+    }
+
+    public synchronized void removed(long enqueueTime, long nextDelivery) {
+        modifications++;
+        promoteReadyMails();
+        if (size > 0) {
+            size--;
+        }
+        if (nextDelivery > 0 && delayedSize > 0) {
+            delayedSize--;
+        }
+        if (size == 0) {
+            oldestEnqueueTime = MailQueueStatistics.NO_ENQUEUE_TIME;
+            oldestEnqueueTimeKnown = true;
+        } else if (oldestEnqueueTimeKnown && enqueueTime <= oldestEnqueueTime) {
+            oldestEnqueueTimeKnown = false;
+        }
+        oldestEnqueueTimeInvalidations++;
+    }
+
+    /**
+     * Account every delayed mail as ready, as they were all made available
+     * for dequeue
+     */
+    public synchronized void flushed() {
+        modifications++;
+        delayedSize = 0;
+        latestNextDelivery = 0;
+    }
+
+    /**
+     * Replace the counters by the given ones, freshly computed from the content
+     * of the queue. Changes made to the queue while its content was read are
+     * lost, and will be corrected by the next reconciliation.
+     */
+    public void reconcile(MailQueueCounters reconciled) {
+        synchronized (reconciled) {
+            synchronized (this) {
+                size = reconciled.size;
+                delayedSize = reconciled.delayedSize;
+                latestNextDelivery = reconciled.latestNextDelivery;
+                oldestEnqueueTime = reconciled.oldestEnqueueTime;
+                oldestEnqueueTimeKnown = reconciled.oldestEnqueueTimeKnown;
+                oldestEnqueueTimeInvalidations++;
+            }
+        }
+    }
+
+    /**
+     * Return the count of changes reported so far, to be given to
+     * {@link #reconcile(MailQueueCounters, long)}
+     */
+    public synchronized long getModifications() {
+        return modifications;
+    }
+
+    /**
+     * Replace the counters by the given ones, computed from the content of the
+     * queue read after {@link #getModifications()} returned the given count.
+     * Nothing is replaced if changes were reported meanwhile, as they may be
+     * missing from the given counters.
+     *
+     * @return true if the counters were replaced
+     */
+    public boolean reconcile(MailQueueCounters reconciled, long modificationsBeforeRead) {
+        synchronized (reconciled) {
+            synchronized (this) {
+                if (modifications != modificationsBeforeRead) {
+                    return false;
+                }
+                reconcile(reconciled);
+                return true;
+            }
+        }
+    }
+
+    public MailQueueStatistics getStatistics() {
+        long invalidations;
+        synchronized (this) {
+            promoteReadyMails();
+            if (oldestEnqueueTimeKnown) {
+                return new MailQueueStatistics(size, delayedSize, oldestEnqueueTime);
+            }
+            invalidations = oldestEnqueueTimeInvalidations;
+        }
+        // Resolve out of the lock, as this may read the content of the queue
+        long resolved = oldestEnqueueTimeResolver.resolveOldestEnqueueTime();
+        synchronized (this) {
+            if (!oldestEnqueueTimeKnown && invalidations == oldestEnqueueTimeInvalidations
+                    && resolved != MailQueueStatistics.NO_ENQUEUE_TIME) {
+                oldestEnqueueTime = resolved;
+                oldestEnqueueTimeKnown = true;
+            }
+            return new MailQueueStatistics(size, delayedSize, resolved);
+        }
+    }
+
+    private void promoteReadyMails() {
+        if (delayedSize > 0 && latestNextDelivery <= System.currentTimeMillis()) {
+            delayedSize = 0;
+            latestNextDelivery = 0;
+        }
+    }
+}
@@ -31,6 +31,29 @@ public interface MailQueueManagementMBean {
      */
     long getSize() throws Exception;
 
+    /**
+     * Return the count of mails which are delayed, and thus not ready for
+     * dequeue
+     * 
+     * @return delayedSize
+     */
+    long getDelayedSize() throws Exception;
+
+    /**
+     * Return the count of mails ready for dequeue
+     * 
+     * @return readySize
+     */
+    long getReadySize() throws Exception;
+
+    /**
+     * Return the timestamp when the oldest mail of the queue was enqueued, or
+     * -1 if the queue is empty
+     * 
+     * @return oldestEnqueueTime
+     */
+    long getOldestEnqueueTime() throws Exception;
+
     /**
      * Flush queue to make every Mail ready to consume.
      * 
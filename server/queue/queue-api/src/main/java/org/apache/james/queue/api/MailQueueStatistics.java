@@ -0,0 +1,75 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.api;
+
+/**
+ * Immutable snapshot of the statistics of a {@link ManageableMailQueue}
+ */
+public class MailQueueStatistics {
+
+    /** Returned as oldest enqueue time by an empty queue */
+    public static final long NO_ENQUEUE_TIME = -1;
+
+    public static final MailQueueStatistics EMPTY = new MailQueueStatistics(0, 0, NO_ENQUEUE_TIME);
+
+    private final long size;
+    private final long delayedSize;
+    private final long oldestEnqueueTime;
+
+    public MailQueueStatistics(long size, long delayedSize, long oldestEnqueueTime) {
+        this.size = size;
+        this.delayedSize = delayedSize;
+        this.oldestEnqueueTime = oldestEnqueueTime;
+    }
+
+    /**
+     * Return the count of mails in the queue
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Return the count of mails which are not ready for dequeue yet, as their
+     * next delivery time is not reached
+     */
+    public long getDelayedSize() {
+        return delayedSize;
+    }
+
+    /**
+     * Return the count of mails ready for dequeue
+     */
+    public long getReadySize() {
+        return Math.max(0, size - delayedSize);
+    }
+
+    /**
+     * Return the timestamp when the oldest mail of the queue was enqueued, or
+     * {@link #NO_ENQUEUE_TIME} if the queue is empty
+     */
+    public long getOldestEnqueueTime() {
+        return oldestEnqueueTime;
+    }
+
+    @Override
+    public String toString() {
+        return "MailQueueStatistics{size=" + size + ", delayedSize=" + delayedSize + ", oldestEnqueueTime=" + oldestEnqueueTime + "}";
+    }
+}
@@ -39,6 +39,16 @@ public interface ManageableMailQueue extends MailQueue {
      */
     long getSize() throws MailQueueException;
 
+    /**
+     * Return the statistics of the queue. They are maintained incrementally and
+     * do not require to browse the queue, but may slightly drift from its real
+     * content.
+     * 
+     * @return statistics
+     * @throws MailQueueException
+     */
+    MailQueueStatistics getStatistics() throws MailQueueException;
+
     /**
      * Flush the queue, which means it will make all message ready for dequeue
      * 
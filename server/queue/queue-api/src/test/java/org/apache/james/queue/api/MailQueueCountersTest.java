@@ -0,0 +1,218 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MailQueueCountersTest {
+
+    private static final long ENQUEUE_TIME = 1000;
+    private static final long NOT_DELAYED = -1;
+
+    private MailQueueCounters counters;
+
+    @Before
+    public void setUp() {
+        counters = new MailQueueCounters();
+    }
+
+    @Test
+    public void statisticsShouldBeEmptyByDefault() {
+        MailQueueStatistics statistics = counters.getStatistics();
+
+        assertThat(statistics.getSize()).isEqualTo(0);
+        assertThat(statistics.getDelayedSize()).isEqualTo(0);
+        assertThat(statistics.getOldestEnqueueTime()).isEqualTo(MailQueueStatistics.NO_ENQUEUE_TIME);
+    }
+
+    @Test
+    public void enqueuedShouldUpdateStatistics() {
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+        counters.enqueued(ENQUEUE_TIME + 1, farInTheFuture());
+
+        MailQueueStatistics statistics = counters.getStatistics();
+        assertThat(statistics.getSize()).isEqualTo(2);
+        assertThat(statistics.getDelayedSize()).isEqualTo(1);
+        assertThat(statistics.getReadySize()).isEqualTo(1);
+        assertThat(statistics.getOldestEnqueueTime()).isEqualTo(ENQUEUE_TIME);
+    }
+
+    @Test
+    public void removedShouldUpdateStatistics() {
+        long nextDelivery = farInTheFuture();
+        counters = new MailQueueCounters(oldestEnqueueTimeResolver(ENQUEUE_TIME + 1));
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+        counters.enqueued(ENQUEUE_TIME + 1, nextDelivery);
+
+        counters.removed(ENQUEUE_TIME, NOT_DELAYED);
+
+        MailQueueStatistics statistics = counters.getStatistics();
+        assertThat(statistics.getSize()).isEqualTo(1);
+        assertThat(statistics.getDelayedSize()).isEqualTo(1);
+        assertThat(statistics.getOldestEnqueueTime()).isEqualTo(ENQUEUE_TIME + 1);
+
+        counters.removed(ENQUEUE_TIME + 1, nextDelivery);
+
+        assertThat(counters.getStatistics().getSize()).isEqualTo(0);
+        assertThat(counters.getStatistics().getDelayedSize()).isEqualTo(0);
+        assertThat(counters.getStatistics().getOldestEnqueueTime()).isEqualTo(MailQueueStatistics.NO_ENQUEUE_TIME);
+    }
+
+    @Test
+    public void removedShouldKeepTheOldestEnqueueTimeWhenAnotherMailLeaves() {
+        CountingResolver resolver = new CountingResolver();
+        counters = new MailQueueCounters(resolver);
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+        counters.enqueued(ENQUEUE_TIME + 1, NOT_DELAYED);
+
+        counters.removed(ENQUEUE_TIME + 1, NOT_DELAYED);
+
+        assertThat(counters.getStatistics().getOldestEnqueueTime()).isEqualTo(ENQUEUE_TIME);
+        assertThat(resolver.calls).isEqualTo(0);
+    }
+
+    @Test
+    public void getStatisticsShouldResolveTheOldestEnqueueTimeOnlyOnceAfterTheOldestMailLeft() {
+        CountingResolver resolver = new CountingResolver();
+        counters = new MailQueueCounters(resolver);
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+        counters.enqueued(ENQUEUE_TIME + 1, NOT_DELAYED);
+        counters.removed(ENQUEUE_TIME, NOT_DELAYED);
+
+        counters.getStatistics();
+        MailQueueStatistics statistics = counters.getStatistics();
+
+        assertThat(statistics.getOldestEnqueueTime()).isEqualTo(CountingResolver.RESOLVED);
+        assertThat(resolver.calls).isEqualTo(1);
+    }
+
+    @Test
+    public void getStatisticsShouldNotKnowTheOldestEnqueueTimeWithoutResolverOnceTheOldestMailLeft() {
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+        counters.enqueued(ENQUEUE_TIME + 1, NOT_DELAYED);
+
+        counters.removed(ENQUEUE_TIME, NOT_DELAYED);
+
+        assertThat(counters.getStatistics().getSize()).isEqualTo(1);
+        assertThat(counters.getStatistics().getOldestEnqueueTime()).isEqualTo(MailQueueStatistics.NO_ENQUEUE_TIME);
+    }
+
+    @Test
+    public void delayedMailsShouldStayDelayedUntilTheLatestNextDeliveryIsReached() throws Exception {
+        counters.enqueued(ENQUEUE_TIME, System.currentTimeMillis() + 100);
+        counters.enqueued(ENQUEUE_TIME, farInTheFuture());
+
+        Thread.sleep(200);
+
+        assertThat(counters.getStatistics().getDelayedSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void delayedMailsShouldBecomeReadyOnceTheirNextDeliveryIsReached() throws Exception {
+        counters.enqueued(ENQUEUE_TIME, System.currentTimeMillis() + 100);
+
+        assertThat(counters.getStatistics().getDelayedSize()).isEqualTo(1);
+
+        Thread.sleep(200);
+
+        assertThat(counters.getStatistics().getDelayedSize()).isEqualTo(0);
+        assertThat(counters.getStatistics().getReadySize()).isEqualTo(1);
+    }
+
+    @Test
+    public void flushedShouldMakeEveryMailReady() {
+        counters.enqueued(ENQUEUE_TIME, farInTheFuture());
+
+        counters.flushed();
+
+        assertThat(counters.getStatistics().getDelayedSize()).isEqualTo(0);
+        assertThat(counters.getStatistics().getReadySize()).isEqualTo(1);
+    }
+
+    @Test
+    public void reconcileShouldReplaceCounters() {
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+        MailQueueCounters reconciled = new MailQueueCounters();
+        reconciled.enqueued(ENQUEUE_TIME + 1, farInTheFuture());
+
+        counters.reconcile(reconciled);
+
+        MailQueueStatistics statistics = counters.getStatistics();
+        assertThat(statistics.getSize()).isEqualTo(1);
+        assertThat(statistics.getDelayedSize()).isEqualTo(1);
+        assertThat(statistics.getOldestEnqueueTime()).isEqualTo(ENQUEUE_TIME + 1);
+    }
+
+    @Test
+    public void reconcileShouldReplaceCountersWhenUnchangedSinceTheRead() {
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+        long modifications = counters.getModifications();
+        MailQueueCounters reconciled = new MailQueueCounters();
+
+        assertThat(counters.reconcile(reconciled, modifications)).isTrue();
+        assertThat(counters.getStatistics().getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void reconcileShouldNotReplaceCountersChangedSinceTheRead() {
+        long modifications = counters.getModifications();
+        MailQueueCounters reconciled = new MailQueueCounters();
+        counters.enqueued(ENQUEUE_TIME, NOT_DELAYED);
+
+        assertThat(counters.reconcile(reconciled, modifications)).isFalse();
+        assertThat(counters.getStatistics().getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void removedShouldNotMakeSizeNegative() {
+        counters.removed(ENQUEUE_TIME, NOT_DELAYED);
+
+        assertThat(counters.getStatistics().getSize()).isEqualTo(0);
+    }
+
+    private MailQueueCounters.OldestEnqueueTimeResolver oldestEnqueueTimeResolver(final long oldestEnqueueTime) {
+        return new MailQueueCounters.OldestEnqueueTimeResolver() {
+            @Override
+            public long resolveOldestEnqueueTime() {
+                return oldestEnqueueTime;
+            }
+        };
+    }
+
+    private long farInTheFuture() {
+        return System.currentTimeMillis() + 3600 * 1000;
+    }
+
+    private static class CountingResolver implements MailQueueCounters.OldestEnqueueTimeResolver {
+
+        private static final long RESOLVED = 4242;
+
+        private int calls;
+
+        @Override
+        public long resolveOldestEnqueueTime() {
+            calls++;
+            return RESOLVED;
+        }
+    }
+}
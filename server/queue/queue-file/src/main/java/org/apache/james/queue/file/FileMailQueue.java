@@ -47,7 +47,9 @@ import org.apache.james.core.MimeMessageCopyOnWriteProxy;
 import org.apache.james.core.MimeMessageSource;
 import org.apache.james.lifecycle.api.Disposable;
 import org.apache.james.lifecycle.api.LifecycleUtil;
+import org.apache.james.queue.api.MailQueueCounters;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.MailQueueStatistics;
 import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.mailet.Mail;
 import org.slf4j.Logger;
@@ -57,6 +59,9 @@ import org.slf4j.Logger;
  * <p/>
  * On create of the {@link FileMailQueue} the {@link #init()} will get called. This takes care of
  * loading the needed meta-data into memory for fast access.
+ * <p/>
+ * The statistics of the queue are maintained by {@link MailQueueCounters}, which are periodically
+ * reconciled with the in-memory meta-data.
  */
 public class FileMailQueue implements ManageableMailQueue {
 
@@ -74,6 +79,19 @@ public class FileMailQueue implements ManageableMailQueue {
     private final static String OBJECT_EXTENSION = ".obj";
     private final static String NEXT_DELIVERY = "FileQueueNextDelivery";
     private final static int SPLITCOUNT = 10;
+    private final static long STATISTICS_RECONCILIATION_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+    private final MailQueueCounters counters = new MailQueueCounters(new MailQueueCounters.OldestEnqueueTimeResolver() {
+        @Override
+        public long resolveOldestEnqueueTime() {
+            long oldestEnqueueTime = MailQueueStatistics.NO_ENQUEUE_TIME;
+            for (FileItem item : keyMappings.values()) {
+                if (oldestEnqueueTime == MailQueueStatistics.NO_ENQUEUE_TIME || item.getEnqueueTime() < oldestEnqueueTime) {
+                    oldestEnqueueTime = item.getEnqueueTime();
+                }
+            }
+            return oldestEnqueueTime;
+        }
+    });
 
     public FileMailQueue(MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, File parentDir, String queuename, boolean sync, Logger log) throws IOException {
         this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
@@ -82,6 +100,12 @@ public class FileMailQueue implements ManageableMailQueue {
         this.queueDir = new File(parentDir, queuename);
         this.queueDirName = queueDir.getAbsolutePath();
         init();
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reconcileStatistics();
+            }
+        }, STATISTICS_RECONCILIATION_INTERVAL_MS, STATISTICS_RECONCILIATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
     }
 
     private void init() throws IOException {
@@ -105,18 +129,21 @@ public class FileMailQueue implements ManageableMailQueue {
                 try {
 
                     final String msgFileName = name.substring(0, name.length() - OBJECT_EXTENSION.length()) + MSG_EXTENSION;
+                    File objectFile = new File(qDir, name);
 
-                    FileItem item = new FileItem(qDir.getAbsolutePath() + File.separator + name, qDir.getAbsolutePath() + File.separator + msgFileName);
-
-                    oin = new ObjectInputStream(new FileInputStream(item.getObjectFile()));
+                    oin = new ObjectInputStream(new FileInputStream(objectFile));
                     Mail mail = (Mail) oin.readObject();
                     Long next = (Long) mail.getAttribute(NEXT_DELIVERY);
                     if (next == null) {
                         next = 0L;
                     }
 
+                    FileItem item = new FileItem(qDir.getAbsolutePath() + File.separator + name, qDir.getAbsolutePath() + File.separator + msgFileName,
+                        objectFile.lastModified(), next);
+
                     final String key = mail.getName();
                     keyMappings.put(key, item);
+                    counters.enqueued(item.getEnqueueTime(), item.getNextDelivery());
                     if (next <= System.currentTimeMillis()) {
 
                         try {
@@ -173,10 +200,13 @@ public class FileMailQueue implements ManageableMailQueue {
 
             String name = queueDirName + "/" + i + "/" + key;
 
-            final FileItem item = new FileItem(name + OBJECT_EXTENSION, name + MSG_EXTENSION);
+            long enqueueTime = System.currentTimeMillis();
+            long nextDelivery = 0;
             if (delay > 0) {
-                mail.setAttribute(NEXT_DELIVERY, System.currentTimeMillis() + unit.toMillis(delay));
+                nextDelivery = enqueueTime + unit.toMillis(delay);
+                mail.setAttribute(NEXT_DELIVERY, nextDelivery);
             }
+            final FileItem item = new FileItem(name + OBJECT_EXTENSION, name + MSG_EXTENSION, enqueueTime, nextDelivery);
             foout = new FileOutputStream(item.getObjectFile());
             oout = new ObjectOutputStream(foout);
             oout.writeObject(mail);
@@ -189,6 +219,7 @@ public class FileMailQueue implements ManageableMailQueue {
             if (sync) out.getFD().sync();
 
             keyMappings.put(key, item);
+            counters.enqueued(enqueueTime, nextDelivery);
 
             if (delay > 0) {
                 // The message should get delayed so schedule it for later
@@ -290,7 +321,9 @@ public class FileMailQueue implements ManageableMailQueue {
                             }
                         } else {
                             fitem.delete();
-                            keyMappings.remove(key);
+                            if (keyMappings.remove(key) != null) {
+                                counters.removed(fitem.getEnqueueTime(), fitem.getNextDelivery());
+                            }
                         }
 
                         LifecycleUtil.dispose(mail);
@@ -368,10 +401,14 @@ public class FileMailQueue implements ManageableMailQueue {
     private final class FileItem {
         private final String objectfile;
         private final String messagefile;
+        private final long enqueueTime;
+        private final long nextDelivery;
 
-        public FileItem(String objectfile, String messagefile) {
+        public FileItem(String objectfile, String messagefile, long enqueueTime, long nextDelivery) {
             this.objectfile = objectfile;
             this.messagefile = messagefile;
+            this.enqueueTime = enqueueTime;
+            this.nextDelivery = nextDelivery;
         }
 
         public String getObjectFile() {
@@ -382,6 +419,14 @@ public class FileMailQueue implements ManageableMailQueue {
             return messagefile;
         }
 
+        public long getEnqueueTime() {
+            return enqueueTime;
+        }
+
+        public long getNextDelivery() {
+            return nextDelivery;
+        }
+
         public void delete() throws MailQueueException {
             try {
                 FileUtils.forceDelete(new File(getObjectFile()));
@@ -402,6 +447,24 @@ public class FileMailQueue implements ManageableMailQueue {
         return keyMappings.size();
     }
 
+    @Override
+    public MailQueueStatistics getStatistics() throws MailQueueException {
+        return counters.getStatistics();
+    }
+
+    /**
+     * Recompute the {@link MailQueueCounters} from the in-memory meta-data, and
+     * correct the drift of the incrementally maintained ones.
+     */
+    private void reconcileStatistics() {
+        long modifications = counters.getModifications();
+        MailQueueCounters reconciled = new MailQueueCounters();
+        for (FileItem item : keyMappings.values()) {
+            reconciled.enqueued(item.getEnqueueTime(), item.getNextDelivery());
+        }
+        counters.reconcile(reconciled, modifications);
+    }
+
     @Override
     public long flush() throws MailQueueException {
         Iterator<String> keys = keyMappings.keySet().iterator();
@@ -413,6 +476,7 @@ public class FileMailQueue implements ManageableMailQueue {
                 i++;
             }
         }
+        counters.flushed();
         return i;
     }
 
@@ -426,7 +490,9 @@ public class FileMailQueue implements ManageableMailQueue {
             String key = entry.getKey();
 
             item.delete();
-            keyMappings.remove(key);
+            if (keyMappings.remove(key) != null) {
+                counters.removed(item.getEnqueueTime(), item.getNextDelivery());
+            }
             count++;
 
         }
@@ -445,6 +511,7 @@ public class FileMailQueue implements ManageableMailQueue {
                 FileItem item = keyMappings.remove(value);
                 if (item != null) {
                     item.delete();
+                    counters.removed(item.getEnqueueTime(), item.getNextDelivery());
                     return 1;
                 } else {
                     return 0;
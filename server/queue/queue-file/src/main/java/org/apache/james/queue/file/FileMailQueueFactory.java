@@ -32,7 +32,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * {@link MailQueueFactory} implementation which returns {@link FileMailQueue} instances
+ * {@link MailQueueFactory} implementation which returns {@link FileMailQueue} instances, or
+ * {@link SegmentedLogMailQueue} instances if configured to
  */
 public class FileMailQueueFactory implements MailQueueFactory, LogEnabled {
 
@@ -41,6 +42,8 @@ public class FileMailQueueFactory implements MailQueueFactory, LogEnabled {
     private FileSystem fs;
     private Logger log;
     private boolean sync = true;
+    private boolean segmentedLog = false;
+    private int segmentSize = SegmentedLogMailQueue.DEFAULT_SEGMENT_SIZE;
 
     @Inject
     public FileMailQueueFactory(FileSystem fs, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory) {
@@ -60,13 +63,40 @@ public class FileMailQueueFactory implements MailQueueFactory, LogEnabled {
         this.sync = sync;
     }
 
+    /**
+     * If <code>true</code> the later created queues will be {@link SegmentedLogMailQueue}s, which store mails in append-only
+     * segment files instead of two files per mail. Mails enqueued in {@link FileMailQueue}s are not migrated.
+     * <p/>
+     * The default is <code>false</code>
+     *
+     * @param segmentedLog
+     */
+    public void setSegmentedLog(boolean segmentedLog) {
+        this.segmentedLog = segmentedLog;
+    }
+
+    /**
+     * Set the size in bytes of the segment files of the later created {@link SegmentedLogMailQueue}s.
+     * <p/>
+     * The default is 64MB
+     *
+     * @param segmentSize
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
     @Override
     public MailQueue getQueue(String name) {
         MailQueue queue = queues.get(name);
         if (queue == null) {
             synchronized (queues) {
                 try {
-                    queue = new FileMailQueue(mailQueueActionItemDecoratorFactory, fs.getFile("file://var/store/queue"), name, sync, log);
+                    if (segmentedLog) {
+                        queue = new SegmentedLogMailQueue(mailQueueActionItemDecoratorFactory, fs.getFile("file://var/store/queue"), name, sync, segmentSize, log);
+                    } else {
+                        queue = new FileMailQueue(mailQueueActionItemDecoratorFactory, fs.getFile("file://var/store/queue"), name, sync, log);
+                    }
                     queues.put(name, queue);
                 } catch (IOException e) {
                     throw new RuntimeException("Unable to access queue " + name, e);
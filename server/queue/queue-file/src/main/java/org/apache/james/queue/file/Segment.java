@@ -0,0 +1,246 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memory-mapped, append-only segment file of a {@link SegmentedLog}.
+ * <p/>
+ * Segments are preallocated with their full capacity, so the unused part of a segment is
+ * zero-filled. Appends are serialized by the owning {@link SegmentedLog}, while records may
+ * be read concurrently as the mapped buffer itself is never repositioned.
+ * <p/>
+ * Each segment counts its live records, which are the enqueued mails it holds that were neither
+ * acknowledged nor copied to another segment. A segment without live records can be deleted.
+ * <p/>
+ * The mapping of a deleted segment is released explicitly once the readers which retained it
+ * released it, as the garbage collector may keep it, and its disk space, for a long time. It is
+ * left to the garbage collector if the JVM does not allow releasing it.
+ */
+class Segment {
+
+    static final String EXTENSION = ".segment";
+
+    static Segment create(File directory, long sequence, int capacity) throws IOException {
+        return new Segment(sequence, new File(directory, fileName(sequence)), capacity);
+    }
+
+    static Segment open(File file) throws IOException {
+        String name = file.getName();
+        long sequence = Long.parseLong(name.substring(0, name.length() - EXTENSION.length()));
+        return new Segment(sequence, file, -1);
+    }
+
+    private static String fileName(long sequence) {
+        return String.format("%020d", sequence) + EXTENSION;
+    }
+
+    private final long sequence;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer writeBuffer;
+    private final AtomicInteger liveRecords = new AtomicInteger();
+    private final AtomicLong liveBytes = new AtomicLong();
+    private int readers;
+    private boolean deleted;
+
+    private Segment(long sequence, File file, int capacity) throws IOException {
+        this.sequence = sequence;
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            if (capacity > 0) {
+                raf.setLength(capacity);
+            }
+            FileChannel channel = raf.getChannel();
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        } finally {
+            // the mapping stays valid once the file is closed
+            raf.close();
+        }
+        this.writeBuffer = buffer.duplicate();
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getCapacity() {
+        return buffer.capacity();
+    }
+
+    int getWritePosition() {
+        return writeBuffer.position();
+    }
+
+    boolean hasRoomFor(int length) {
+        return writeBuffer.remaining() >= length;
+    }
+
+    /**
+     * Append the given record
+     *
+     * @return the offset of the record in this segment
+     */
+    int append(ByteBuffer record) {
+        int offset = writeBuffer.position();
+        writeBuffer.put(record);
+        return offset;
+    }
+
+    /**
+     * Write the given bytes at the current write position
+     *
+     * @throws java.nio.BufferOverflowException if the segment has not enough room left, in which
+     * case nothing is written
+     */
+    void put(byte[] bytes, int offset, int length) {
+        writeBuffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Write the given int at the given offset, which has already been written
+     */
+    void putInt(int offset, int value) {
+        writeBuffer.putInt(offset, value);
+    }
+
+    /**
+     * Zero the bytes written from the given position, and write again from it
+     */
+    void rewind(int position) {
+        ByteBuffer written = writeBuffer.duplicate();
+        written.flip();
+        written.position(position);
+        byte[] zeros = new byte[8192];
+        while (written.hasRemaining()) {
+            written.put(zeros, 0, Math.min(zeros.length, written.remaining()));
+        }
+        writeBuffer.position(position);
+    }
+
+    /**
+     * Return a read-only view of the given part of this segment
+     */
+    ByteBuffer slice(int offset, int length) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice();
+    }
+
+    /**
+     * Set the position of the next append, and zero the remaining part of the segment if it holds
+     * data. Used on recovery, so that a partially written record is never read again.
+     */
+    void truncate(int position) {
+        writeBuffer.position(position);
+        if (writeBuffer.remaining() >= 4 && buffer.getInt(position) != 0) {
+            ByteBuffer remaining = writeBuffer.duplicate();
+            byte[] zeros = new byte[8192];
+            while (remaining.hasRemaining()) {
+                remaining.put(zeros, 0, Math.min(zeros.length, remaining.remaining()));
+            }
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void recordAdded(int length) {
+        liveRecords.incrementAndGet();
+        liveBytes.addAndGet(length);
+    }
+
+    void recordRemoved(int length) {
+        liveRecords.decrementAndGet();
+        liveBytes.addAndGet(-length);
+    }
+
+    int getLiveRecords() {
+        return liveRecords.get();
+    }
+
+    long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    /**
+     * Prevent the mapping from being released while the content of this segment is read, until
+     * {@link #release()} is called
+     *
+     * @return false if the segment was deleted, and can not be read anymore
+     */
+    synchronized boolean retain() {
+        if (deleted) {
+            return false;
+        }
+        readers++;
+        return true;
+    }
+
+    synchronized void release() {
+        readers--;
+        if (readers == 0 && deleted) {
+            unmap();
+        }
+    }
+
+    /**
+     * Delete the segment file. Its mapping is released once no reader retains it anymore.
+     */
+    synchronized boolean delete() {
+        if (!file.delete()) {
+            return false;
+        }
+        deleted = true;
+        if (readers == 0) {
+            unmap();
+        }
+        return true;
+    }
+
+    private void unmap() {
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // not supported by this JVM: the mapping is released once garbage collected
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file.getAbsolutePath();
+    }
+}
@@ -0,0 +1,463 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Append-only log made of {@link Segment}s, storing the records of a {@link SegmentedLogMailQueue}.
+ * <p/>
+ * Each record is stored as its length, the CRC32 of its body, and its body. The body of an
+ * enqueue record holds the id, enqueue time, next delivery time and name of the mail, followed
+ * by its serialized {@link org.apache.mailet.Mail} and its message. The body of an
+ * acknowledgement record holds the id of the mail leaving the queue.
+ * <p/>
+ * Enqueue records are streamed into the mapped segment, so that the message is not copied in
+ * memory. Their header is written last: a record is only read on recovery once fully written.
+ * <p/>
+ * When sync is enabled, enqueue records are forced to disk before
+ * {@link #appendEnqueue(long, long, long, String, BodyWriter, BodyWriter, long)} returns.
+ * Concurrent enqueuers share the same force: a thread forcing the log makes durable every record
+ * appended so far, and the threads waiting for it return without forcing again if their record
+ * was covered.
+ */
+class SegmentedLog {
+
+    static final byte ENQUEUE = 1;
+    static final byte ACKNOWLEDGE = 2;
+
+    private static final int HEADER_LENGTH = 8;
+    private static final int ENQUEUE_FIXED_LENGTH = HEADER_LENGTH + 1 + 8 + 8 + 8 + 4 + 4 + 4;
+    // serialized mails are usually smaller, their attributes aside
+    private static final int MAIL_LENGTH_ESTIMATE = 4096;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Position of a record in the log
+     */
+    static class Location {
+        final Segment segment;
+        final int offset;
+        final int length;
+
+        Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Decoded enqueue record. The mail and message buffers are views of the mapped segment.
+     */
+    static class EnqueueRecord {
+        final long id;
+        final long enqueueTime;
+        final long nextDelivery;
+        final String name;
+        final ByteBuffer mail;
+        final ByteBuffer message;
+
+        private EnqueueRecord(long id, long enqueueTime, long nextDelivery, String name, ByteBuffer mail, ByteBuffer message) {
+            this.id = id;
+            this.enqueueTime = enqueueTime;
+            this.nextDelivery = nextDelivery;
+            this.name = name;
+            this.mail = mail;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Writes the mail or the message of an enqueue record
+     */
+    interface BodyWriter {
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Notified of the records found on recovery, in the order they were appended
+     */
+    interface RecoveryListener {
+
+        void enqueued(EnqueueRecord record, Location location);
+
+        void acknowledged(long id);
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final boolean sync;
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private final Object syncLock = new Object();
+    private Segment active;
+    private long appendedRecords;
+    private long syncedRecords;
+
+    SegmentedLog(File directory, int segmentSize, boolean sync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        FileUtils.forceMkdir(directory);
+    }
+
+    /**
+     * Open the existing segments and replay their records. Reading a segment stops at the first
+     * incomplete or corrupted record, which was being written when the server stopped.
+     */
+    synchronized void recover(RecoveryListener listener) throws IOException {
+        File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(Segment.EXTENSION);
+            }
+        });
+        Arrays.sort(files);
+
+        for (File file : files) {
+            Segment segment = Segment.open(file);
+            segment.truncate(replay(segment, listener));
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(Segment.create(directory, 0, segmentSize));
+        }
+        active = segments.getLast();
+    }
+
+    private int replay(Segment segment, RecoveryListener listener) {
+        int position = 0;
+        int capacity = segment.getCapacity();
+        while (position + HEADER_LENGTH <= capacity) {
+            ByteBuffer header = segment.slice(position, HEADER_LENGTH);
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length <= 0 || position + HEADER_LENGTH + length > capacity) {
+                break;
+            }
+            ByteBuffer body = segment.slice(position + HEADER_LENGTH, length);
+            if (crc(body) != crc) {
+                break;
+            }
+            Location location = new Location(segment, position, HEADER_LENGTH + length);
+            byte type = body.get(0);
+            if (type == ENQUEUE) {
+                listener.enqueued(decodeEnqueue(body), location);
+            } else if (type == ACKNOWLEDGE) {
+                listener.acknowledged(body.getLong(1));
+            } else {
+                break;
+            }
+            position += HEADER_LENGTH + length;
+        }
+        return position;
+    }
+
+    /**
+     * Append an enqueue record, and wait for it to be on disk if sync is enabled. The mail and the
+     * message are written straight into the active segment; they are only buffered in memory when
+     * the given message size hint was too low for them to fit in it.
+     */
+    Location appendEnqueue(long id, long enqueueTime, long nextDelivery, String name, BodyWriter mail, BodyWriter message, long messageSizeHint) throws IOException {
+        byte[] encodedName = name.getBytes(UTF_8);
+        Location location;
+        long appended;
+        synchronized (this) {
+            int expectedLength = ENQUEUE_FIXED_LENGTH + encodedName.length + MAIL_LENGTH_ESTIMATE + (int) Math.max(0, messageSizeHint);
+            if (!active.hasRoomFor(expectedLength)) {
+                roll(expectedLength);
+            }
+            int offset = active.getWritePosition();
+            try {
+                location = writeEnqueue(id, enqueueTime, nextDelivery, encodedName, mail, message);
+            } catch (BufferOverflowException e) {
+                active.rewind(offset);
+                location = appendBufferedEnqueue(id, enqueueTime, nextDelivery, encodedName, mail, message);
+            } catch (IOException e) {
+                active.rewind(offset);
+                throw e;
+            } catch (RuntimeException e) {
+                active.rewind(offset);
+                throw e;
+            }
+            appended = appendedRecords;
+        }
+        if (sync) {
+            awaitSync(appended);
+        }
+        return location;
+    }
+
+    private Location appendBufferedEnqueue(long id, long enqueueTime, long nextDelivery, byte[] encodedName, BodyWriter mail, BodyWriter message) throws IOException {
+        final byte[] bufferedMail = buffer(mail);
+        final byte[] bufferedMessage = buffer(message);
+        roll(ENQUEUE_FIXED_LENGTH + encodedName.length + bufferedMail.length + bufferedMessage.length);
+        return writeEnqueue(id, enqueueTime, nextDelivery, encodedName,
+            new BodyWriter() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    out.write(bufferedMail);
+                }
+            },
+            new BodyWriter() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    out.write(bufferedMessage);
+                }
+            });
+    }
+
+    private byte[] buffer(BodyWriter writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private Location writeEnqueue(long id, long enqueueTime, long nextDelivery, byte[] encodedName, BodyWriter mail, BodyWriter message) throws IOException {
+        Segment segment = active;
+        int offset = segment.getWritePosition();
+        DataOutputStream out = new DataOutputStream(new SegmentOutputStream(segment));
+        // header, written once the record is complete
+        out.writeLong(0);
+        out.writeByte(ENQUEUE);
+        out.writeLong(id);
+        out.writeLong(enqueueTime);
+        out.writeLong(nextDelivery);
+        out.writeInt(encodedName.length);
+        out.write(encodedName);
+        writeSized(segment, out, mail);
+        writeSized(segment, out, message);
+
+        int length = segment.getWritePosition() - offset - HEADER_LENGTH;
+        segment.putInt(offset + 4, crc(segment.slice(offset + HEADER_LENGTH, length)));
+        segment.putInt(offset, length);
+        appendedRecords++;
+        return new Location(segment, offset, HEADER_LENGTH + length);
+    }
+
+    private void writeSized(Segment segment, DataOutputStream out, BodyWriter writer) throws IOException {
+        int lengthOffset = segment.getWritePosition();
+        out.writeInt(0);
+        writer.writeTo(out);
+        out.flush();
+        segment.putInt(lengthOffset, segment.getWritePosition() - lengthOffset - 4);
+    }
+
+    /**
+     * Append an acknowledgement record. It is not forced to disk: when lost, the mail is dequeued
+     * again after a restart.
+     */
+    synchronized void appendAcknowledge(long id) throws IOException {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8);
+        body.put(ACKNOWLEDGE).putLong(id);
+        body.flip();
+        append(encode(body));
+    }
+
+    /**
+     * Copy the given record at the end of the log
+     *
+     * @return the location of the copy
+     */
+    synchronized Location copy(Location location) throws IOException {
+        return append(location.segment.slice(location.offset, location.length));
+    }
+
+    EnqueueRecord readEnqueue(Location location) {
+        return decodeEnqueue(location.segment.slice(location.offset + HEADER_LENGTH, location.length - HEADER_LENGTH));
+    }
+
+    /**
+     * Return the oldest segment, unless it is the one currently appended to
+     */
+    synchronized Segment getOldestClosedSegment() {
+        Segment oldest = segments.getFirst();
+        if (oldest == active) {
+            return null;
+        }
+        return oldest;
+    }
+
+    /**
+     * Return the count of bytes used by records which are not live anymore, in the segments which
+     * are not appended to anymore
+     */
+    synchronized long getDeadBytes() {
+        long deadBytes = 0;
+        for (Segment segment : segments) {
+            if (segment != active) {
+                deadBytes += segment.getWritePosition() - segment.getLiveBytes();
+            }
+        }
+        return deadBytes;
+    }
+
+    /**
+     * Delete the oldest segments, as long as they have no live records. Segments are deleted in
+     * order, so that acknowledgement records are never deleted before the records they refer to.
+     *
+     * @return the count of deleted segments
+     */
+    synchronized int deleteDeadSegments() {
+        int deleted = 0;
+        while (segments.getFirst() != active && segments.getFirst().getLiveRecords() == 0) {
+            Segment segment = segments.removeFirst();
+            if (!segment.delete()) {
+                segments.addFirst(segment);
+                break;
+            }
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * Force every appended record to disk
+     */
+    void force() {
+        Segment segment;
+        synchronized (this) {
+            segment = active;
+        }
+        segment.force();
+    }
+
+    void close() {
+        force();
+    }
+
+    private Location append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (!active.hasRoomFor(length)) {
+            roll(length);
+        }
+        int offset = active.append(record);
+        appendedRecords++;
+        return new Location(active, offset, length);
+    }
+
+    /**
+     * Start appending to a new segment, able to hold a record of the given length
+     */
+    private void roll(int length) throws IOException {
+        // records need to be on disk before being covered by the sync of a later segment
+        active.force();
+        active = Segment.create(directory, active.getSequence() + 1, Math.max(segmentSize, length));
+        segments.add(active);
+    }
+
+    private void awaitSync(long appended) {
+        synchronized (syncLock) {
+            if (syncedRecords >= appended) {
+                // a concurrent force already made the record durable
+                return;
+            }
+            long target;
+            Segment segment;
+            synchronized (this) {
+                target = appendedRecords;
+                segment = active;
+            }
+            segment.force();
+            syncedRecords = target;
+        }
+    }
+
+    private ByteBuffer encode(ByteBuffer body) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + body.remaining());
+        record.putInt(body.remaining());
+        record.putInt(crc(body));
+        record.put(body);
+        record.flip();
+        return record;
+    }
+
+    private int crc(ByteBuffer body) {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = body.duplicate();
+        byte[] chunk = new byte[Math.min(8192, Math.max(1, view.remaining()))];
+        while (view.hasRemaining()) {
+            int length = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue();
+    }
+
+    private EnqueueRecord decodeEnqueue(ByteBuffer body) {
+        ByteBuffer view = body.duplicate();
+        view.get();
+        long id = view.getLong();
+        long enqueueTime = view.getLong();
+        long nextDelivery = view.getLong();
+        byte[] encodedName = new byte[view.getInt()];
+        view.get(encodedName);
+        ByteBuffer mail = sliceNext(view);
+        ByteBuffer message = sliceNext(view);
+        return new EnqueueRecord(id, enqueueTime, nextDelivery, new String(encodedName, UTF_8), mail, message);
+    }
+
+    private ByteBuffer sliceNext(ByteBuffer view) {
+        int length = view.getInt();
+        ByteBuffer slice = view.slice();
+        slice.limit(length);
+        view.position(view.position() + length);
+        return slice;
+    }
+
+    /**
+     * Writes at the current position of a segment. Closing it has no effect, so that the
+     * {@link BodyWriter}s can close the streams they wrap it with.
+     */
+    private static class SegmentOutputStream extends OutputStream {
+
+        private final Segment segment;
+        private final byte[] singleByte = new byte[1];
+
+        private SegmentOutputStream(Segment segment) {
+            this.segment = segment;
+        }
+
+        @Override
+        public void write(int b) {
+            singleByte[0] = (byte) b;
+            segment.put(singleByte, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            segment.put(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,622 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+
+import org.apache.james.core.MimeMessageCopyOnWriteProxy;
+import org.apache.james.core.MimeMessageSource;
+import org.apache.james.lifecycle.api.Disposable;
+import org.apache.james.lifecycle.api.LifecycleUtil;
+import org.apache.james.queue.api.MailQueueCounters;
+import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.MailQueueStatistics;
+import org.apache.james.queue.api.ManageableMailQueue;
+import org.apache.james.queue.file.SegmentedLog.BodyWriter;
+import org.apache.james.queue.file.SegmentedLog.EnqueueRecord;
+import org.apache.james.queue.file.SegmentedLog.Location;
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.slf4j.Logger;
+
+/**
+ * {@link ManageableMailQueue} implementation which stores its {@link Mail}'s in a {@link SegmentedLog}
+ * of memory-mapped, append-only segment files.
+ * <p/>
+ * Unlike {@link FileMailQueue}, which writes and deletes two files per mail, an enqueue appends a
+ * single record to the current segment, and a successful dequeue appends an acknowledgement
+ * record. When sync is enabled, the fsyncs of concurrent enqueues are grouped. Only the delay and
+ * location of each mail are kept in memory.
+ * <p/>
+ * Segments without any mail left are deleted by a dedicated compaction thread, so that it never
+ * delays the delivery of delayed mails. The mails of the oldest segment are copied at the end of
+ * the log once this frees more space than they use, so that a few long delayed mails do not
+ * prevent the deletion of the following segments. The segments a dequeued mail is read from are
+ * retained until the mail is disposed.
+ * <p/>
+ * On creation, the existing segments are replayed to rebuild the queue after a restart or a crash.
+ * Mails which were dequeued but not acknowledged are dequeued again.
+ */
+public class SegmentedLogMailQueue implements ManageableMailQueue, Disposable {
+
+    public final static int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private final static long COMPACTION_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+    private final static long STATISTICS_RECONCILIATION_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private enum State {
+        DELAYED, READY, IN_FLIGHT, REMOVED
+    }
+
+    /**
+     * In-memory index entry of a mail
+     */
+    private static final class Entry {
+        private final long id;
+        private final String name;
+        private final long enqueueTime;
+        private final long nextDelivery;
+        private Location location;
+        private State state;
+
+        private Entry(long id, String name, long enqueueTime, long nextDelivery, Location location) {
+            this.id = id;
+            this.name = name;
+            this.enqueueTime = enqueueTime;
+            this.nextDelivery = nextDelivery;
+            this.location = location;
+        }
+    }
+
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+    private final BlockingQueue<Entry> readyQueue = new LinkedBlockingQueue<Entry>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ScheduledExecutorService compactionScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong idGenerator = new AtomicLong();
+    private final MailQueueCounters counters = new MailQueueCounters(new MailQueueCounters.OldestEnqueueTimeResolver() {
+        @Override
+        public long resolveOldestEnqueueTime() {
+            long oldestEnqueueTime = MailQueueStatistics.NO_ENQUEUE_TIME;
+            for (Entry entry : entries.values()) {
+                if (oldestEnqueueTime == MailQueueStatistics.NO_ENQUEUE_TIME || entry.enqueueTime < oldestEnqueueTime) {
+                    oldestEnqueueTime = entry.enqueueTime;
+                }
+            }
+            return oldestEnqueueTime;
+        }
+    });
+    private final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
+    private final SegmentedLog segmentedLog;
+    private final String queueName;
+    private final Logger log;
+
+    public SegmentedLogMailQueue(MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, File parentDir, String queuename, boolean sync, Logger log) throws IOException {
+        this(mailQueueItemDecoratorFactory, parentDir, queuename, sync, DEFAULT_SEGMENT_SIZE, log);
+    }
+
+    public SegmentedLogMailQueue(MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, File parentDir, String queuename, boolean sync, int segmentSize, Logger log) throws IOException {
+        this.mailQueueItemDecoratorFactory = mailQueueItemDecoratorFactory;
+        this.log = log;
+        this.queueName = queuename;
+        this.segmentedLog = new SegmentedLog(new File(new File(parentDir, queuename), "log"), segmentSize, sync);
+        recover();
+        compactionScheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        }, COMPACTION_INTERVAL_MS, COMPACTION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reconcileStatistics();
+            }
+        }, STATISTICS_RECONCILIATION_INTERVAL_MS, STATISTICS_RECONCILIATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void recover() throws IOException {
+        segmentedLog.recover(new SegmentedLog.RecoveryListener() {
+            @Override
+            public void enqueued(EnqueueRecord record, Location location) {
+                Entry entry = entries.get(record.id);
+                if (entry != null) {
+                    // the record was copied by a compaction
+                    entry.location.segment.recordRemoved(entry.location.length);
+                    entry.location = location;
+                } else {
+                    entries.put(record.id, new Entry(record.id, record.name, record.enqueueTime, record.nextDelivery, location));
+                }
+                location.segment.recordAdded(location.length);
+                if (record.id > idGenerator.get()) {
+                    idGenerator.set(record.id);
+                }
+            }
+
+            @Override
+            public void acknowledged(long id) {
+                Entry entry = entries.remove(id);
+                if (entry != null) {
+                    entry.location.segment.recordRemoved(entry.location.length);
+                }
+            }
+        });
+
+        List<Entry> recovered = new ArrayList<Entry>(entries.values());
+        Collections.sort(recovered, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry o1, Entry o2) {
+                return Long.valueOf(o1.id).compareTo(o2.id);
+            }
+        });
+        for (Entry entry : recovered) {
+            counters.enqueued(entry.enqueueTime, entry.nextDelivery);
+            schedule(entry);
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Recovered " + recovered.size() + " mails from " + this);
+        }
+    }
+
+    @Override
+    public void enQueue(final Mail mail, long delay, TimeUnit unit) throws MailQueueException {
+        long enqueueTime = System.currentTimeMillis();
+        long nextDelivery = 0;
+        if (delay > 0) {
+            nextDelivery = enqueueTime + unit.toMillis(delay);
+        }
+        try {
+            BodyWriter mailWriter = new BodyWriter() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    ObjectOutputStream oout = new ObjectOutputStream(out);
+                    oout.writeObject(mail);
+                    oout.flush();
+                }
+            };
+            BodyWriter messageWriter = new BodyWriter() {
+                @Override
+                public void writeTo(OutputStream out) throws IOException {
+                    try {
+                        mail.getMessage().writeTo(out);
+                    } catch (MessagingException e) {
+                        throw new IOException("Unable to write the message of mail " + mail.getName(), e);
+                    }
+                }
+            };
+
+            long id = idGenerator.incrementAndGet();
+            Location location = segmentedLog.appendEnqueue(id, enqueueTime, nextDelivery, mail.getName(), mailWriter, messageWriter, mail.getMessageSize());
+            location.segment.recordAdded(location.length);
+
+            Entry entry = new Entry(id, mail.getName(), enqueueTime, nextDelivery, location);
+            entries.put(id, entry);
+            counters.enqueued(enqueueTime, nextDelivery);
+            schedule(entry);
+        } catch (IOException e) {
+            throw new MailQueueException("Unable to enqueue mail", e);
+        } catch (MessagingException e) {
+            throw new MailQueueException("Unable to enqueue mail", e);
+        }
+    }
+
+    @Override
+    public void enQueue(Mail mail) throws MailQueueException {
+        enQueue(mail, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private void schedule(final Entry entry) {
+        long delay = entry.nextDelivery - System.currentTimeMillis();
+        if (delay > 0) {
+            synchronized (entry) {
+                entry.state = State.DELAYED;
+            }
+            // Schedule a task which will put the mail in the queue
+            // for processing after a given delay
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    makeReady(entry);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } else {
+            synchronized (entry) {
+                entry.state = State.READY;
+            }
+            readyQueue.add(entry);
+        }
+    }
+
+    private boolean makeReady(Entry entry) {
+        synchronized (entry) {
+            if (entry.state != State.DELAYED) {
+                return false;
+            }
+            entry.state = State.READY;
+        }
+        readyQueue.add(entry);
+        return true;
+    }
+
+    @Override
+    public MailQueueItem deQueue() throws MailQueueException {
+        try {
+            while (true) {
+                final Entry entry = readyQueue.take();
+                Location location;
+                synchronized (entry) {
+                    if (entry.state != State.READY) {
+                        // removed, or already made ready by a flush
+                        continue;
+                    }
+                    entry.state = State.IN_FLIGHT;
+                    location = entry.location;
+                    // the segment of a mail in the queue is never deleted
+                    location.segment.retain();
+                }
+
+                final Mail mail = readMail(segmentedLog.readEnqueue(location), location.segment);
+                MailQueueItem item = new MailQueueItem() {
+
+                    @Override
+                    public Mail getMail() {
+                        return mail;
+                    }
+
+                    @Override
+                    public void done(boolean success) throws MailQueueException {
+                        try {
+                            if (success) {
+                                remove(entry);
+                            } else {
+                                boolean rollback;
+                                synchronized (entry) {
+                                    rollback = entry.state == State.IN_FLIGHT;
+                                    if (rollback) {
+                                        entry.state = State.READY;
+                                    }
+                                }
+                                if (rollback) {
+                                    readyQueue.add(entry);
+                                }
+                            }
+                        } finally {
+                            LifecycleUtil.dispose(mail);
+                        }
+                    }
+                };
+                return mailQueueItemDecoratorFactory.decorate(item);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailQueueException("Unable to dequeue", e);
+        }
+    }
+
+    /**
+     * Read the mail of the given record, from the given retained segment. The message of the mail
+     * releases the segment once disposed.
+     */
+    private Mail readMail(EnqueueRecord record, Segment segment) throws MailQueueException {
+        ObjectInputStream oin = null;
+        try {
+            oin = new ObjectInputStream(new ByteBufferInputStream(record.mail));
+            Mail mail = (Mail) oin.readObject();
+            mail.setMessage(new MimeMessageCopyOnWriteProxy(new SegmentMimeMessageSource(record.id, record.message, segment)));
+            return mail;
+        } catch (IOException e) {
+            segment.release();
+            throw new MailQueueException("Unable to read mail " + record.name, e);
+        } catch (ClassNotFoundException e) {
+            segment.release();
+            throw new MailQueueException("Unable to read mail " + record.name, e);
+        } catch (MessagingException e) {
+            segment.release();
+            throw new MailQueueException("Unable to read mail " + record.name, e);
+        } finally {
+            if (oin != null) {
+                try {
+                    oin.close();
+                } catch (IOException e) {
+                    // ignore on close
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the given mail from the queue
+     *
+     * @return true if the mail was still in the queue
+     */
+    private boolean remove(Entry entry) throws MailQueueException {
+        synchronized (entry) {
+            if (entry.state == State.REMOVED) {
+                return false;
+            }
+            try {
+                segmentedLog.appendAcknowledge(entry.id);
+            } catch (IOException e) {
+                throw new MailQueueException("Unable to remove mail " + entry.name, e);
+            }
+            entry.state = State.REMOVED;
+            entries.remove(entry.id);
+            entry.location.segment.recordRemoved(entry.location.length);
+        }
+        counters.removed(entry.enqueueTime, entry.nextDelivery);
+        return true;
+    }
+
+    private final static class SegmentMimeMessageSource extends MimeMessageSource implements Disposable {
+
+        private final long id;
+        private final ByteBuffer message;
+        private final Segment segment;
+        private final AtomicBoolean disposed = new AtomicBoolean();
+
+        private SegmentMimeMessageSource(long id, ByteBuffer message, Segment segment) {
+            this.id = id;
+            this.message = message;
+            this.segment = segment;
+        }
+
+        @Override
+        public String getSourceId() {
+            return "segmented-log:" + id;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (disposed.get()) {
+                throw new IOException("The message of " + getSourceId() + " was disposed");
+            }
+            return new ByteBufferInputStream(message.duplicate());
+        }
+
+        @Override
+        public void dispose() {
+            if (disposed.compareAndSet(false, true)) {
+                segment.release();
+            }
+        }
+
+        @Override
+        public long getMessageSize() throws IOException {
+            return message.remaining();
+        }
+    }
+
+    /**
+     * Copy the mails of the oldest segment at the end of the log if this frees more space than
+     * they use, then delete the segments without mails left.
+     */
+    void compact() {
+        try {
+            Segment oldest = segmentedLog.getOldestClosedSegment();
+            if (oldest != null && oldest.getLiveRecords() > 0 && oldest.getLiveBytes() < segmentedLog.getDeadBytes()) {
+                for (Entry entry : entries.values()) {
+                    synchronized (entry) {
+                        if (entry.state != State.REMOVED && entry.location.segment == oldest) {
+                            Location copy = segmentedLog.copy(entry.location);
+                            copy.segment.recordAdded(copy.length);
+                            oldest.recordRemoved(entry.location.length);
+                            entry.location = copy;
+                        }
+                    }
+                }
+                // the copies need to be on disk before the oldest segment gets deleted
+                segmentedLog.force();
+            }
+            int deleted = segmentedLog.deleteDeadSegments();
+            if (deleted > 0) {
+                log.debug("Deleted " + deleted + " segments of " + this);
+            }
+        } catch (Exception e) {
+            log.error("Unable to compact " + this, e);
+        }
+    }
+
+    private void reconcileStatistics() {
+        long modifications = counters.getModifications();
+        MailQueueCounters reconciled = new MailQueueCounters();
+        for (Entry entry : entries.values()) {
+            reconciled.enqueued(entry.enqueueTime, entry.nextDelivery);
+        }
+        counters.reconcile(reconciled, modifications);
+    }
+
+    @Override
+    public long getSize() throws MailQueueException {
+        return entries.size();
+    }
+
+    @Override
+    public MailQueueStatistics getStatistics() throws MailQueueException {
+        return counters.getStatistics();
+    }
+
+    @Override
+    public long flush() throws MailQueueException {
+        long count = 0;
+        for (Entry entry : entries.values()) {
+            if (makeReady(entry)) {
+                count++;
+            }
+        }
+        counters.flushed();
+        return count;
+    }
+
+    @Override
+    public long clear() throws MailQueueException {
+        long count = 0;
+        for (Entry entry : entries.values()) {
+            if (remove(entry)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long remove(Type type, String value) throws MailQueueException {
+        long count = 0;
+        for (Entry entry : entries.values()) {
+            if (matches(entry, type, value) && remove(entry)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean matches(Entry entry, Type type, String value) throws MailQueueException {
+        if (type == Type.Name) {
+            return entry.name.equals(value);
+        }
+        if (type != Type.Sender && type != Type.Recipient) {
+            throw new MailQueueException("Not supported yet");
+        }
+        Mail mail = readMail(entry);
+        if (mail == null) {
+            return false;
+        }
+        try {
+            if (type == Type.Sender) {
+                MailAddress sender = mail.getSender();
+                return sender != null && sender.toString().equals(value);
+            }
+            for (MailAddress recipient : mail.getRecipients()) {
+                if (recipient.toString().equals(value)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            LifecycleUtil.dispose(mail);
+        }
+    }
+
+    /**
+     * Read the mail of the given entry
+     *
+     * @return the mail, or null if it was removed
+     */
+    private Mail readMail(Entry entry) throws MailQueueException {
+        Location location;
+        synchronized (entry) {
+            if (entry.state == State.REMOVED || !entry.location.segment.retain()) {
+                return null;
+            }
+            location = entry.location;
+        }
+        return readMail(segmentedLog.readEnqueue(location), location.segment);
+    }
+
+    @Override
+    public MailQueueIterator browse() throws MailQueueException {
+        final Iterator<Entry> items = entries.values().iterator();
+        return new MailQueueIterator() {
+            private MailQueueItemView item = null;
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("Read-only");
+            }
+
+            @Override
+            public MailQueueItemView next() {
+                if (hasNext()) {
+                    MailQueueItemView vitem = item;
+                    item = null;
+                    return vitem;
+                } else {
+                    throw new NoSuchElementException();
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (item == null && items.hasNext()) {
+                    final Entry entry = items.next();
+                    try {
+                        final Mail mail = readMail(entry);
+                        if (mail == null) {
+                            continue;
+                        }
+                        item = new MailQueueItemView() {
+
+                            @Override
+                            public long getNextDelivery() {
+                                if (entry.nextDelivery > 0) {
+                                    return entry.nextDelivery;
+                                }
+                                return -1;
+                            }
+
+                            @Override
+                            public Mail getMail() {
+                                return mail;
+                            }
+                        };
+                    } catch (MailQueueException e) {
+                        log.info("Unable to load mail", e);
+                    }
+                }
+                return item != null;
+            }
+
+            @Override
+            public void close() {
+                // do nothing
+            }
+        };
+    }
+
+    @Override
+    public void dispose() {
+        compactionScheduler.shutdownNow();
+        scheduler.shutdownNow();
+        segmentedLog.close();
+    }
+
+    @Override
+    public String toString() {
+        return "MailQueue:" + queueName;
+    }
+}
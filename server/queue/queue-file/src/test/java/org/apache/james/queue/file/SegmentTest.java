@@ -0,0 +1,171 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentTest {
+
+    private static final int CAPACITY = 64;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private Segment segment;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder();
+        segment = Segment.create(directory, 42, CAPACITY);
+    }
+
+    @Test
+    public void createShouldPreallocateTheSegment() {
+        assertEquals(CAPACITY, segment.getCapacity());
+        assertEquals(0, segment.getWritePosition());
+        assertEquals(CAPACITY, directory.listFiles()[0].length());
+    }
+
+    @Test
+    public void openShouldReadTheSequenceFromTheFileName() throws Exception {
+        Segment opened = Segment.open(directory.listFiles()[0]);
+
+        assertEquals(42, opened.getSequence());
+        assertEquals(CAPACITY, opened.getCapacity());
+    }
+
+    @Test
+    public void appendShouldReturnTheOffsetOfTheRecord() {
+        assertEquals(0, segment.append(ByteBuffer.wrap(new byte[] {1, 2, 3})));
+        assertEquals(3, segment.append(ByteBuffer.wrap(new byte[] {4, 5})));
+        assertEquals(5, segment.getWritePosition());
+    }
+
+    @Test
+    public void sliceShouldReadAppendedRecords() {
+        segment.append(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        segment.append(ByteBuffer.wrap(new byte[] {4, 5}));
+
+        assertArrayEquals(new byte[] {4, 5}, read(segment.slice(3, 2)));
+    }
+
+    @Test
+    public void hasRoomForShouldCompareWithTheRemainingCapacity() {
+        segment.append(ByteBuffer.wrap(new byte[CAPACITY - 10]));
+
+        assertTrue(segment.hasRoomFor(10));
+        assertFalse(segment.hasRoomFor(11));
+    }
+
+    @Test
+    public void putShouldNotWriteAnythingWhenThereIsNoRoomLeft() {
+        segment.append(ByteBuffer.wrap(new byte[CAPACITY - 2]));
+
+        try {
+            segment.put(new byte[] {1, 2, 3}, 0, 3);
+        } catch (BufferOverflowException e) {
+            // expected
+        }
+
+        assertEquals(CAPACITY - 2, segment.getWritePosition());
+    }
+
+    @Test
+    public void putIntShouldOverwriteWrittenBytes() {
+        segment.put(new byte[8], 0, 8);
+
+        segment.putInt(4, 0x01020304);
+
+        assertArrayEquals(new byte[] {0, 0, 0, 0, 1, 2, 3, 4}, read(segment.slice(0, 8)));
+    }
+
+    @Test
+    public void rewindShouldZeroTheBytesWrittenFromThePosition() {
+        segment.put(new byte[] {1, 2, 3, 4}, 0, 4);
+
+        segment.rewind(1);
+
+        assertEquals(1, segment.getWritePosition());
+        assertArrayEquals(new byte[] {1, 0, 0, 0}, read(segment.slice(0, 4)));
+    }
+
+    @Test
+    public void truncateShouldZeroTheRemainingPartOfTheSegment() {
+        segment.append(ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}));
+
+        segment.truncate(2);
+
+        assertEquals(2, segment.getWritePosition());
+        assertArrayEquals(new byte[] {1, 2, 0, 0, 0, 0, 0, 0}, read(segment.slice(0, 8)));
+    }
+
+    @Test
+    public void liveRecordsShouldBeCounted() {
+        segment.recordAdded(10);
+        segment.recordAdded(20);
+        segment.recordRemoved(10);
+
+        assertEquals(1, segment.getLiveRecords());
+        assertEquals(20, segment.getLiveBytes());
+    }
+
+    @Test
+    public void deleteShouldRemoveTheFile() {
+        assertTrue(segment.delete());
+
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void retainShouldFailOnceTheSegmentIsDeleted() {
+        segment.delete();
+
+        assertFalse(segment.retain());
+    }
+
+    @Test
+    public void deleteShouldKeepTheMappingOfARetainedSegmentReadable() {
+        segment.append(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        assertTrue(segment.retain());
+
+        segment.delete();
+
+        assertArrayEquals(new byte[] {1, 2, 3}, read(segment.slice(0, 3)));
+        segment.release();
+    }
+
+    private byte[] read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,411 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.james.core.MailImpl;
+import org.apache.james.queue.api.MailQueue.MailQueueItem;
+import org.apache.james.queue.api.MailQueueStatistics;
+import org.apache.james.queue.api.ManageableMailQueue;
+import org.apache.james.queue.api.ManageableMailQueue.MailQueueIterator;
+import org.apache.james.queue.api.RawMailQueueItemDecoratorFactory;
+import org.apache.james.queue.file.SegmentedLog.EnqueueRecord;
+import org.apache.james.queue.file.SegmentedLog.Location;
+import org.apache.mailet.Mail;
+import org.apache.mailet.MailAddress;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.LoggerFactory;
+
+public class SegmentedLogMailQueueTest {
+
+    private static final String QUEUE_NAME = "spool";
+    private static final int SEGMENT_SIZE = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File parentDir;
+    private SegmentedLogMailQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        parentDir = temporaryFolder.newFolder();
+        queue = open();
+    }
+
+    @After
+    public void tearDown() {
+        queue.dispose();
+    }
+
+    @Test
+    public void deQueueShouldReturnMailsInEnqueueOrder() throws Exception {
+        queue.enQueue(createMail("first"));
+        queue.enQueue(createMail("second"));
+
+        assertDequeued("first");
+        assertDequeued("second");
+    }
+
+    @Test
+    public void deQueueShouldReturnTheEnqueuedMail() throws Exception {
+        MailImpl mail = createMail("name");
+        mail.setAttribute("attribute", "value");
+        queue.enQueue(mail);
+
+        MailQueueItem item = queue.deQueue();
+
+        Mail dequeued = item.getMail();
+        assertEquals("name", dequeued.getName());
+        assertEquals(mail.getSender(), dequeued.getSender());
+        assertEquals(mail.getRecipients(), dequeued.getRecipients());
+        assertEquals("value", dequeued.getAttribute("attribute"));
+        assertEquals("content of name", dequeued.getMessage().getContent());
+        item.done(true);
+    }
+
+    @Test
+    public void doneWithFailureShouldDeliverTheMailAgain() throws Exception {
+        queue.enQueue(createMail("name"));
+
+        queue.deQueue().done(false);
+
+        assertEquals(1, queue.getSize());
+        assertDequeued("name");
+        assertEquals(0, queue.getSize());
+    }
+
+    @Test
+    public void deQueueShouldWaitForTheDelay() throws Exception {
+        long start = System.currentTimeMillis();
+        queue.enQueue(createMail("name"), 500, TimeUnit.MILLISECONDS);
+
+        assertDequeued("name");
+
+        assertTrue(System.currentTimeMillis() - start >= 500);
+    }
+
+    @Test
+    public void flushShouldMakeDelayedMailsReady() throws Exception {
+        queue.enQueue(createMail("name"), 1, TimeUnit.HOURS);
+
+        assertEquals(1, queue.flush());
+
+        assertDequeued("name");
+    }
+
+    @Test
+    public void getStatisticsShouldCountReadyAndDelayedMails() throws Exception {
+        long enqueueTime = System.currentTimeMillis();
+        queue.enQueue(createMail("ready"));
+        queue.enQueue(createMail("delayed"), 1, TimeUnit.HOURS);
+
+        MailQueueStatistics statistics = queue.getStatistics();
+
+        assertEquals(2, queue.getSize());
+        assertEquals(2, statistics.getSize());
+        assertEquals(1, statistics.getDelayedSize());
+        assertEquals(1, statistics.getReadySize());
+        assertTrue(statistics.getOldestEnqueueTime() >= enqueueTime);
+    }
+
+    @Test
+    public void clearShouldRemoveEveryMail() throws Exception {
+        queue.enQueue(createMail("ready"));
+        queue.enQueue(createMail("delayed"), 1, TimeUnit.HOURS);
+
+        assertEquals(2, queue.clear());
+
+        assertEquals(0, queue.getSize());
+        assertEquals(0, queue.getStatistics().getSize());
+    }
+
+    @Test
+    public void removeShouldRemoveMailsByName() throws Exception {
+        queue.enQueue(createMail("remove"));
+        queue.enQueue(createMail("keep"));
+
+        assertEquals(1, queue.remove(ManageableMailQueue.Type.Name, "remove"));
+
+        assertEquals(1, queue.getSize());
+        assertDequeued("keep");
+    }
+
+    @Test
+    public void removeShouldRemoveMailsBySender() throws Exception {
+        MailImpl mail = createMail("remove");
+        mail.setSender(new MailAddress("other@domain"));
+        queue.enQueue(mail);
+        queue.enQueue(createMail("keep"));
+
+        assertEquals(1, queue.remove(ManageableMailQueue.Type.Sender, "other@domain"));
+
+        assertDequeued("keep");
+    }
+
+    @Test
+    public void removeShouldRemoveMailsByRecipient() throws Exception {
+        MailImpl mail = createMail("remove");
+        mail.setRecipients(Arrays.asList(new MailAddress("other@domain")));
+        queue.enQueue(mail);
+        queue.enQueue(createMail("keep"));
+
+        assertEquals(1, queue.remove(ManageableMailQueue.Type.Recipient, "other@domain"));
+
+        assertDequeued("keep");
+    }
+
+    @Test
+    public void removedMailsShouldNotBeDequeued() throws Exception {
+        queue.enQueue(createMail("remove"));
+        queue.enQueue(createMail("keep"));
+        queue.remove(ManageableMailQueue.Type.Name, "remove");
+
+        assertDequeued("keep");
+    }
+
+    @Test
+    public void browseShouldListTheMailsOfTheQueue() throws Exception {
+        queue.enQueue(createMail("ready"));
+        queue.enQueue(createMail("delayed"), 1, TimeUnit.HOURS);
+
+        Set<String> names = new HashSet<String>();
+        MailQueueIterator iterator = queue.browse();
+        while (iterator.hasNext()) {
+            ManageableMailQueue.MailQueueItemView view = iterator.next();
+            names.add(view.getMail().getName());
+            assertEquals(view.getMail().getName().equals("delayed"), view.getNextDelivery() > 0);
+        }
+        iterator.close();
+
+        assertEquals(new HashSet<String>(Arrays.asList("ready", "delayed")), names);
+    }
+
+    @Test
+    public void reopenedQueueShouldContainTheMailsWhichWereNotAcknowledged() throws Exception {
+        queue.enQueue(createMail("acknowledged"));
+        queue.enQueue(createMail("inFlight"));
+        queue.enQueue(createMail("waiting"));
+        queue.deQueue().done(true);
+        queue.deQueue();
+
+        reopen();
+
+        assertEquals(2, queue.getSize());
+        assertDequeued("inFlight");
+        assertDequeued("waiting");
+    }
+
+    @Test
+    public void reopenedQueueShouldKeepTheDelayOfMails() throws Exception {
+        queue.enQueue(createMail("delayed"), 1, TimeUnit.HOURS);
+
+        reopen();
+
+        assertEquals(1, queue.getStatistics().getDelayedSize());
+        assertEquals(1, queue.flush());
+        assertDequeued("delayed");
+    }
+
+    @Test
+    public void recoveryShouldDeduplicateCopiedMails() throws Exception {
+        queue.enQueue(createMail("copied"));
+        queue.dispose();
+        copyEveryRecord();
+
+        queue = open();
+
+        assertEquals(1, queue.getSize());
+        assertDequeued("copied");
+    }
+
+    @Test
+    public void recoveryShouldApplyAcknowledgementsToCopiedMails() throws Exception {
+        queue.enQueue(createMail("copied"));
+        queue.dispose();
+        copyEveryRecord();
+        queue = open();
+        queue.deQueue().done(true);
+
+        reopen();
+
+        assertEquals(0, queue.getSize());
+    }
+
+    @Test
+    public void compactShouldDeleteSegmentsWithoutMailsLeft() throws Exception {
+        enqueueAndAcknowledge(30);
+
+        queue.compact();
+
+        assertEquals(1, segmentFiles().length);
+    }
+
+    @Test
+    public void compactShouldCopyTheMailsOfTheOldestSegment() throws Exception {
+        queue.enQueue(createMail("delayed"), 1, TimeUnit.HOURS);
+        enqueueAndAcknowledge(30);
+        assertTrue(segmentFiles().length > 1);
+
+        queue.compact();
+
+        assertEquals(1, segmentFiles().length);
+        assertEquals(1, queue.getSize());
+        assertEquals(1, queue.flush());
+        assertDequeued("delayed");
+    }
+
+    @Test
+    public void reopenedQueueShouldContainTheMailsCopiedByACompaction() throws Exception {
+        queue.enQueue(createMail("delayed"), 1, TimeUnit.HOURS);
+        enqueueAndAcknowledge(30);
+        queue.compact();
+
+        reopen();
+
+        assertEquals(1, queue.getSize());
+        assertEquals(1, queue.flush());
+        assertDequeued("delayed");
+    }
+
+    @Test
+    public void syncedQueueShouldDeliverEnqueuedMails() throws Exception {
+        queue.dispose();
+        queue = new SegmentedLogMailQueue(new RawMailQueueItemDecoratorFactory(), parentDir, QUEUE_NAME, true, SEGMENT_SIZE,
+            LoggerFactory.getLogger(SegmentedLogMailQueueTest.class));
+        queue.enQueue(createMail("name"));
+
+        reopen();
+
+        assertDequeued("name");
+    }
+
+    @Test
+    public void enQueueShouldSupportMessagesLargerThanTheSegmentSize() throws Exception {
+        MailImpl mail = createMail("large");
+        StringBuilder content = new StringBuilder();
+        while (content.length() < SEGMENT_SIZE * 2) {
+            content.append("0123456789abcdef\r\n");
+        }
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setText(content.toString());
+        message.saveChanges();
+        mail.setMessage(message);
+        queue.enQueue(mail);
+
+        MailQueueItem item = queue.deQueue();
+
+        assertEquals("large", item.getMail().getName());
+        assertTrue(item.getMail().getMessageSize() >= SEGMENT_SIZE * 2);
+        item.done(true);
+    }
+
+    private SegmentedLogMailQueue open() throws Exception {
+        return new SegmentedLogMailQueue(new RawMailQueueItemDecoratorFactory(), parentDir, QUEUE_NAME, false, SEGMENT_SIZE,
+            LoggerFactory.getLogger(SegmentedLogMailQueueTest.class));
+    }
+
+    private void reopen() throws Exception {
+        queue.dispose();
+        queue = open();
+    }
+
+    private void enqueueAndAcknowledge(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            queue.enQueue(createMail("mail" + i));
+        }
+        for (int i = 0; i < count; i++) {
+            queue.deQueue().done(true);
+        }
+    }
+
+    /**
+     * Copy every enqueue record at the end of the log, as an interrupted compaction would
+     */
+    private void copyEveryRecord() throws Exception {
+        SegmentedLog log = new SegmentedLog(logDirectory(), SEGMENT_SIZE, false);
+        final List<Location> locations = new ArrayList<Location>();
+        log.recover(new SegmentedLog.RecoveryListener() {
+            @Override
+            public void enqueued(EnqueueRecord record, Location location) {
+                locations.add(location);
+            }
+
+            @Override
+            public void acknowledged(long id) {
+            }
+        });
+        for (Location location : locations) {
+            log.copy(location);
+        }
+        log.close();
+    }
+
+    private File logDirectory() {
+        return new File(new File(parentDir, QUEUE_NAME), "log");
+    }
+
+    private File[] segmentFiles() {
+        return logDirectory().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(Segment.EXTENSION);
+            }
+        });
+    }
+
+    private void assertDequeued(String name) throws Exception {
+        MailQueueItem item = queue.deQueue();
+        assertEquals(name, item.getMail().getName());
+        item.done(true);
+    }
+
+    private MailImpl createMail(String name) throws MessagingException {
+        MailImpl mail = new MailImpl();
+        mail.setName(name);
+        mail.setSender(new MailAddress("sender@domain"));
+        mail.setRecipients(Arrays.asList(new MailAddress("recipient@domain")));
+
+        MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setText("content of " + name);
+        message.saveChanges();
+        mail.setMessage(message);
+        return mail;
+    }
+}
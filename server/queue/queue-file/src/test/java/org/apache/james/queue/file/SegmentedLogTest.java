@@ -0,0 +1,387 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.file;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.james.queue.file.SegmentedLog.BodyWriter;
+import org.apache.james.queue.file.SegmentedLog.EnqueueRecord;
+import org.apache.james.queue.file.SegmentedLog.Location;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentedLogTest {
+
+    private static final int SEGMENT_SIZE = 16 * 1024;
+    private static final byte[] MAIL = "mail".getBytes();
+    private static final byte[] MESSAGE = "message".getBytes();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = temporaryFolder.newFolder();
+    }
+
+    @Test
+    public void recoverShouldReplayEnqueueRecords() throws Exception {
+        SegmentedLog log = open(false);
+        log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+
+        RecordingListener listener = recover();
+
+        assertEquals(1, listener.enqueued.size());
+        EnqueueRecord record = listener.enqueued.get(0);
+        assertEquals(1, record.id);
+        assertEquals(10, record.enqueueTime);
+        assertEquals(20, record.nextDelivery);
+        assertEquals("name", record.name);
+        assertArrayEquals(MAIL, read(record.mail));
+        assertArrayEquals(MESSAGE, read(record.message));
+    }
+
+    @Test
+    public void readEnqueueShouldReadTheRecordAtTheGivenLocation() throws Exception {
+        SegmentedLog log = open(false);
+        log.appendEnqueue(1, 10, 20, "first", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        Location location = log.appendEnqueue(2, 10, 20, "second", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+
+        EnqueueRecord record = log.readEnqueue(location);
+
+        assertEquals(2, record.id);
+        assertEquals("second", record.name);
+        assertArrayEquals(MESSAGE, read(record.message));
+    }
+
+    @Test
+    public void recoverShouldReplayAcknowledgements() throws Exception {
+        SegmentedLog log = open(false);
+        log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.appendAcknowledge(1);
+
+        RecordingListener listener = recover();
+
+        assertEquals(Arrays.asList(1L), listener.acknowledged);
+    }
+
+    @Test
+    public void recoverShouldReplayCopiesAfterTheirOriginal() throws Exception {
+        SegmentedLog log = open(false);
+        Location location = log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.copy(location);
+
+        RecordingListener listener = recover();
+
+        assertEquals(2, listener.enqueued.size());
+        assertEquals(1, listener.enqueued.get(1).id);
+        assertArrayEquals(MESSAGE, read(listener.enqueued.get(1).message));
+    }
+
+    @Test
+    public void recoverShouldStopAtACorruptedRecord() throws Exception {
+        SegmentedLog log = open(false);
+        log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        Location corrupted = log.appendEnqueue(2, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.appendEnqueue(3, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.close();
+
+        flipLastByte(corrupted);
+
+        assertEquals(Arrays.asList(1L), recover().enqueuedIds());
+    }
+
+    @Test
+    public void recoverShouldIgnoreATornRecord() throws Exception {
+        SegmentedLog log = open(false);
+        log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        Location torn = log.appendEnqueue(2, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.close();
+
+        // only the header and the start of the body reached the disk
+        zero(torn.segment, torn.offset + torn.length / 2, torn.length - torn.length / 2);
+
+        assertEquals(Arrays.asList(1L), recover().enqueuedIds());
+    }
+
+    @Test
+    public void recoverShouldIgnoreARecordLongerThanItsSegment() throws Exception {
+        SegmentedLog log = open(false);
+        log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        Location location = log.appendEnqueue(2, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.close();
+
+        writeInt(location.segment, location.offset, SEGMENT_SIZE);
+
+        assertEquals(Arrays.asList(1L), recover().enqueuedIds());
+    }
+
+    @Test
+    public void appendAfterRecoveryShouldOverwriteTheCorruptedRecord() throws Exception {
+        SegmentedLog log = open(false);
+        log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        Location corrupted = log.appendEnqueue(2, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.appendEnqueue(3, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.close();
+        flipLastByte(corrupted);
+
+        SegmentedLog recovered = open(false);
+        recovered.appendEnqueue(4, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        recovered.close();
+
+        assertEquals(Arrays.asList(1L, 4L), recover().enqueuedIds());
+    }
+
+    @Test
+    public void appendEnqueueShouldStartANewSegmentWhenTheActiveOneIsFull() throws Exception {
+        SegmentedLog log = open(false);
+        byte[] message = new byte[SEGMENT_SIZE / 2];
+        Location first = log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(message), message.length);
+
+        Location second = log.appendEnqueue(2, 10, 20, "name", writer(MAIL), writer(message), message.length);
+
+        assertNotSame(first.segment, second.segment);
+        assertSame(first.segment, log.getOldestClosedSegment());
+    }
+
+    @Test
+    public void appendEnqueueShouldSupportMessagesLargerThanTheSegmentSize() throws Exception {
+        SegmentedLog log = open(false);
+        byte[] message = new byte[SEGMENT_SIZE * 2];
+        message[message.length - 1] = 42;
+
+        Location location = log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(message), message.length);
+
+        assertArrayEquals(message, read(log.readEnqueue(location).message));
+    }
+
+    @Test
+    public void appendEnqueueShouldSupportAnUnderestimatedMessageSize() throws Exception {
+        SegmentedLog log = open(false);
+        byte[] message = new byte[SEGMENT_SIZE * 2];
+        message[message.length - 1] = 42;
+        log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+
+        log.appendEnqueue(2, 10, 20, "name", writer(MAIL), writer(message), 0);
+        log.appendEnqueue(3, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.close();
+
+        RecordingListener listener = recover();
+        assertEquals(Arrays.asList(1L, 2L, 3L), listener.enqueuedIds());
+        assertArrayEquals(message, read(listener.enqueued.get(1).message));
+    }
+
+    @Test
+    public void appendEnqueueShouldNotLeaveAPartialRecordWhenTheWriterFails() throws Exception {
+        SegmentedLog log = open(false);
+        log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        try {
+            log.appendEnqueue(2, 10, 20, "name", writer(MAIL), failingWriter(), MESSAGE.length);
+        } catch (IOException e) {
+            // expected
+        }
+        log.appendEnqueue(3, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+        log.close();
+
+        assertEquals(Arrays.asList(1L, 3L), recover().enqueuedIds());
+    }
+
+    @Test
+    public void deleteDeadSegmentsShouldOnlyDeleteClosedSegmentsWithoutLiveRecords() throws Exception {
+        SegmentedLog log = open(false);
+        byte[] message = new byte[SEGMENT_SIZE / 2];
+        Location first = log.appendEnqueue(1, 10, 20, "name", writer(MAIL), writer(message), message.length);
+        first.segment.recordAdded(first.length);
+        Location second = log.appendEnqueue(2, 10, 20, "name", writer(MAIL), writer(message), message.length);
+        second.segment.recordAdded(second.length);
+
+        assertEquals(0, log.deleteDeadSegments());
+
+        first.segment.recordRemoved(first.length);
+        second.segment.recordRemoved(second.length);
+
+        assertEquals(1, log.deleteDeadSegments());
+        assertNull(log.getOldestClosedSegment());
+        assertEquals(1, segmentFiles().length);
+    }
+
+    @Test
+    public void concurrentSyncedAppendsShouldAllBeDurable() throws Exception {
+        final SegmentedLog log = open(true);
+        int threads = 8;
+        final int appendsPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        for (int thread = 0; thread < threads; thread++) {
+            final int firstId = thread * appendsPerThread;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < appendsPerThread; i++) {
+                        log.appendEnqueue(firstId + i, 10, 20, "name", writer(MAIL), writer(MESSAGE), MESSAGE.length);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // not closed: every record was forced by the appends themselves
+        Set<Long> ids = new HashSet<Long>(recover().enqueuedIds());
+
+        assertEquals(threads * appendsPerThread, ids.size());
+    }
+
+    private SegmentedLog open(boolean sync) throws IOException {
+        SegmentedLog log = new SegmentedLog(directory, SEGMENT_SIZE, sync);
+        log.recover(new RecordingListener());
+        return log;
+    }
+
+    private RecordingListener recover() throws IOException {
+        RecordingListener listener = new RecordingListener();
+        new SegmentedLog(directory, SEGMENT_SIZE, false).recover(listener);
+        return listener;
+    }
+
+    private File[] segmentFiles() {
+        return directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(Segment.EXTENSION);
+            }
+        });
+    }
+
+    private File fileOf(Segment segment) {
+        return new File(segment.toString());
+    }
+
+    private void flipLastByte(Location location) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileOf(location.segment), "rw");
+        try {
+            long position = location.offset + location.length - 1;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void zero(Segment segment, int offset, int length) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileOf(segment), "rw");
+        try {
+            file.seek(offset);
+            file.write(new byte[length]);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void writeInt(Segment segment, int offset, int value) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(fileOf(segment), "rw");
+        try {
+            file.seek(offset);
+            file.writeInt(value);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static BodyWriter writer(final byte[] content) {
+        return new BodyWriter() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(content);
+            }
+        };
+    }
+
+    private static BodyWriter failingWriter() {
+        return new BodyWriter() {
+            @Override
+            public void writeTo(OutputStream out) throws IOException {
+                out.write(MESSAGE);
+                throw new IOException("failure");
+            }
+        };
+    }
+
+    private static byte[] read(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    private static class RecordingListener implements SegmentedLog.RecoveryListener {
+
+        private final List<EnqueueRecord> enqueued = new ArrayList<EnqueueRecord>();
+        private final List<Long> acknowledged = new ArrayList<Long>();
+
+        @Override
+        public void enqueued(EnqueueRecord record, Location location) {
+            assertNotNull(location);
+            enqueued.add(record);
+        }
+
+        @Override
+        public void acknowledged(long id) {
+            acknowledged.add(id);
+        }
+
+        private List<Long> enqueuedIds() {
+            List<Long> ids = new ArrayList<Long>();
+            for (EnqueueRecord record : enqueued) {
+                ids.add(record.id);
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.jms;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.ConversionException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Describes how a {@link JMSMailQueue} dequeues its mails.
+ * <p>
+ * By default a new transacted session and consumer are created for each
+ * dequeue operation, and closed once the mail was processed. In pooled mode,
+ * sessions and consumers are kept open and reused by the following dequeue
+ * operations, see {@link JMSConsumerPool}.
+ * </p>
+ */
+public class DequeueConfiguration {
+
+    /** Let the JMS provider use its default prefetch size */
+    public static final int DEFAULT_PREFETCH = -1;
+
+    public static final long DEFAULT_SELECTOR_REFRESH_INTERVAL_MS = 1000;
+
+    public static final DequeueConfiguration PER_DEQUEUE = new DequeueConfiguration(false, DEFAULT_PREFETCH, 1, DEFAULT_SELECTOR_REFRESH_INTERVAL_MS);
+
+    /**
+     * Pooled consumers with the provider default prefetch, acknowledging each mail
+     * as soon as it is processed
+     */
+    public static DequeueConfiguration pooled() {
+        return pooled(DEFAULT_PREFETCH, 1);
+    }
+
+    /**
+     * Pooled consumers
+     *
+     * @param prefetch
+     *            the number of messages the provider may push to each consumer
+     *            in advance, or {@link #DEFAULT_PREFETCH}. Only applied by
+     *            providers supporting it.
+     * @param ackBatchSize
+     *            the number of successfully processed mails acknowledged by a
+     *            single commit. Values greater than 1 reduce the number of commits,
+     *            but a failure then also redelivers the uncommitted mails of the
+     *            same consumer, which may thus be processed twice.
+     */
+    public static DequeueConfiguration pooled(int prefetch, int ackBatchSize) {
+        return new DequeueConfiguration(true, prefetch, ackBatchSize, DEFAULT_SELECTOR_REFRESH_INTERVAL_MS);
+    }
+
+    /**
+     * Read the configuration of a dequeue element, for instance
+     *
+     * <pre>
+     * &lt;dequeue pooled="true" prefetch="100" ackBatchSize="1" selectorRefreshInterval="1000"/&gt;
+     * </pre>
+     *
+     * Without the pooled attribute set to true, {@link #PER_DEQUEUE} is returned.
+     */
+    public static DequeueConfiguration from(HierarchicalConfiguration config) throws ConfigurationException {
+        if (!config.getBoolean("[@pooled]", false)) {
+            return PER_DEQUEUE;
+        }
+        try {
+            return pooled(config.getInt("[@prefetch]", DEFAULT_PREFETCH), config.getInt("[@ackBatchSize]", 1))
+                .withSelectorRefreshInterval(config.getLong("[@selectorRefreshInterval]", DEFAULT_SELECTOR_REFRESH_INTERVAL_MS));
+        } catch (ConversionException e) {
+            throw new ConfigurationException("Invalid dequeue configuration", e);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationException("Invalid dequeue configuration", e);
+        }
+    }
+
+    private final boolean pooled;
+    private final int prefetch;
+    private final int ackBatchSize;
+    private final long selectorRefreshIntervalMs;
+
+    private DequeueConfiguration(boolean pooled, int prefetch, int ackBatchSize, long selectorRefreshIntervalMs) {
+        Preconditions.checkArgument(ackBatchSize > 0, "ackBatchSize should be strictly positive");
+        Preconditions.checkArgument(selectorRefreshIntervalMs > 0, "selectorRefreshIntervalMs should be strictly positive");
+        this.pooled = pooled;
+        this.prefetch = prefetch;
+        this.ackBatchSize = ackBatchSize;
+        this.selectorRefreshIntervalMs = selectorRefreshIntervalMs;
+    }
+
+    /**
+     * Return a copy of this configuration with the given selector refresh interval.
+     * <p>
+     * As the message selector of a pooled consumer contains the time it was
+     * created at, delayed mails become visible to it only once it is recreated.
+     * This interval thus bounds the additional delay of delayed mails.
+     * </p>
+     */
+    public DequeueConfiguration withSelectorRefreshInterval(long selectorRefreshIntervalMs) {
+        return new DequeueConfiguration(pooled, prefetch, ackBatchSize, selectorRefreshIntervalMs);
+    }
+
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    public int getAckBatchSize() {
+        return ackBatchSize;
+    }
+
+    public long getSelectorRefreshIntervalMs() {
+        return selectorRefreshIntervalMs;
+    }
+
+    @Override
+    public String toString() {
+        return "DequeueConfiguration{pooled=" + pooled + ", prefetch=" + prefetch + ", ackBatchSize=" + ackBatchSize
+            + ", selectorRefreshIntervalMs=" + selectorRefreshIntervalMs + "}";
+    }
+}
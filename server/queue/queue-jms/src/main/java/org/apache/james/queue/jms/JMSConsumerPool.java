@@ -0,0 +1,255 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.jms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.james.metrics.api.Metric;
+
+/**
+ * Pool of long-lived transacted {@link Session}s, each with its
+ * {@link MessageConsumer}, used by {@link JMSMailQueue#deQueue()} in pooled
+ * mode.
+ * <p>
+ * A {@link PooledConsumer} is borrowed by a dequeue operation, and given back
+ * once the dequeued mail was processed. As JMS sessions are single threaded
+ * and their transaction covers every message received through them, each
+ * consumer has at most one mail being processed at any time. Idle consumers
+ * are reused in FIFO order, so that the messages prefetched by each of them
+ * are consumed and their pending acknowledgements committed in a timely
+ * manner.
+ * </p>
+ */
+public class JMSConsumerPool {
+
+    /**
+     * Creates the consumers of the pool
+     */
+    public interface ConsumerFactory {
+
+        MessageConsumer createConsumer(Session session) throws JMSException;
+
+    }
+
+    /**
+     * A pooled session and its consumer
+     */
+    public class PooledConsumer {
+
+        private final Session session;
+        private MessageConsumer consumer;
+        private long consumerCreation;
+        private int pendingAcks;
+        private final List<Runnable> afterCommitActions;
+
+        private PooledConsumer(Session session) throws JMSException {
+            this.session = session;
+            this.afterCommitActions = new ArrayList<Runnable>();
+            this.consumer = consumerFactory.createConsumer(session);
+            this.consumerCreation = System.currentTimeMillis();
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public MessageConsumer getConsumer() {
+            return consumer;
+        }
+
+        /**
+         * Run the given action once the acknowledgement of the last received
+         * message is committed. As acknowledgements may be batched, this can
+         * happen after this consumer was given back to the pool. The action is
+         * dropped if the acknowledgement is rolled back instead.
+         */
+        public void afterCommit(Runnable action) {
+            afterCommitActions.add(action);
+        }
+
+        /**
+         * Receive the next message, waiting at most for the selector refresh
+         * interval. The consumer is recreated first if its message selector is
+         * outdated. Pending acknowledgements are committed when no message is
+         * available.
+         */
+        private Message receive() throws JMSException {
+            if (System.currentTimeMillis() - consumerCreation > configuration.getSelectorRefreshIntervalMs()) {
+                commitPendingAcks();
+                consumer.close();
+                consumer = consumerFactory.createConsumer(session);
+                consumerCreation = System.currentTimeMillis();
+            }
+            Message message = consumer.receive(configuration.getSelectorRefreshIntervalMs());
+            if (message == null) {
+                commitPendingAcks();
+            }
+            return message;
+        }
+
+        /**
+         * Acknowledge or roll back the last received message, and give this
+         * consumer back to the pool
+         */
+        public void done(boolean success) throws JMSException {
+            try {
+                if (success) {
+                    pendingAcks++;
+                    if (pendingAcks >= configuration.getAckBatchSize()) {
+                        commitPendingAcks();
+                    }
+                } else {
+                    pendingAcks = 0;
+                    afterCommitActions.clear();
+                    session.rollback();
+                }
+            } catch (JMSException e) {
+                discard(this);
+                throw e;
+            }
+            giveBack(this);
+        }
+
+        private void commitPendingAcks() throws JMSException {
+            if (pendingAcks > 0) {
+                session.commit();
+                pendingAcks = 0;
+                commitsMetric.increment();
+            }
+            for (Runnable action : afterCommitActions) {
+                action.run();
+            }
+            afterCommitActions.clear();
+        }
+
+        private void rollbackQuietly() {
+            afterCommitActions.clear();
+            try {
+                session.rollback();
+            } catch (JMSException e) {
+                // ignore on rollback
+            }
+        }
+
+        private void close() {
+            try {
+                consumer.close();
+            } catch (JMSException e) {
+                // ignore here
+            }
+            try {
+                session.close();
+            } catch (JMSException e) {
+                // ignore here
+            }
+        }
+    }
+
+    private final Connection connection;
+    private final DequeueConfiguration configuration;
+    private final ConsumerFactory consumerFactory;
+    private final Metric consumersCreatedMetric;
+    private final Metric commitsMetric;
+    private final LinkedBlockingDeque<PooledConsumer> idleConsumers;
+
+    public JMSConsumerPool(Connection connection, DequeueConfiguration configuration, ConsumerFactory consumerFactory,
+                           Metric consumersCreatedMetric, Metric commitsMetric) {
+        this.connection = connection;
+        this.configuration = configuration;
+        this.consumerFactory = consumerFactory;
+        this.consumersCreatedMetric = consumersCreatedMetric;
+        this.commitsMetric = commitsMetric;
+        this.idleConsumers = new LinkedBlockingDeque<PooledConsumer>();
+    }
+
+    /**
+     * Borrow an idle consumer, or create one if none is available
+     */
+    public PooledConsumer borrow() throws JMSException {
+        PooledConsumer pooledConsumer = idleConsumers.poll();
+        if (pooledConsumer != null) {
+            return pooledConsumer;
+        }
+        Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        try {
+            pooledConsumer = new PooledConsumer(session);
+        } catch (JMSException e) {
+            try {
+                session.close();
+            } catch (JMSException e1) {
+                // ignore here
+            }
+            throw e;
+        }
+        consumersCreatedMetric.increment();
+        return pooledConsumer;
+    }
+
+    /**
+     * Receive the next message with the given borrowed consumer. If no message
+     * is available, the consumer is given back to the pool and null is
+     * returned.
+     */
+    public Message receive(PooledConsumer pooledConsumer) throws JMSException {
+        Message message = pooledConsumer.receive();
+        if (message == null) {
+            giveBack(pooledConsumer);
+        }
+        return message;
+    }
+
+    /**
+     * Roll back and close a borrowed consumer which can not be reused
+     */
+    public void discard(PooledConsumer pooledConsumer) {
+        pooledConsumer.rollbackQuietly();
+        pooledConsumer.close();
+    }
+
+    /**
+     * Commit the pending acknowledgements of the idle consumers and close them,
+     * so that the messages they prefetched get available again to the other
+     * consumers of the queue.
+     */
+    public void closeIdleConsumers() {
+        PooledConsumer pooledConsumer = idleConsumers.poll();
+        while (pooledConsumer != null) {
+            try {
+                pooledConsumer.commitPendingAcks();
+            } catch (JMSException e) {
+                pooledConsumer.rollbackQuietly();
+            }
+            pooledConsumer.close();
+            pooledConsumer = idleConsumers.poll();
+        }
+    }
+
+    private void giveBack(PooledConsumer pooledConsumer) {
+        idleConsumers.offer(pooledConsumer);
+    }
+
+}
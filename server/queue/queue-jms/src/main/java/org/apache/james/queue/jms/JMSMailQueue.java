@@ -30,6 +30,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javax.jms.BytesMessage;
@@ -55,13 +57,17 @@ import org.apache.james.metrics.api.MetricFactory;
 import org.apache.james.metrics.api.TimeMetric;
 import org.apache.james.queue.api.MailPrioritySupport;
 import org.apache.james.queue.api.MailQueue;
+import org.apache.james.queue.api.MailQueueCounters;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.MailQueueStatistics;
 import org.apache.james.queue.api.ManageableMailQueue;
+import org.apache.james.queue.jms.JMSConsumerPool.PooledConsumer;
 import org.apache.mailet.Mail;
 import org.apache.mailet.MailAddress;
 import org.slf4j.Logger;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * <p>
@@ -73,6 +79,18 @@ import com.google.common.base.Throwables;
  * It use {@link ObjectMessage} with a byte array as payload to store the
  * {@link Mail} objects.
  * </p>
+ * <p>
+ * Depending on its {@link DequeueConfiguration}, mails are dequeued with a
+ * session and consumer created for each of them, or with the long-lived
+ * consumers of a {@link JMSConsumerPool}.
+ * </p>
+ * <p>
+ * The size and statistics of the queue are maintained by
+ * {@link MailQueueCounters}. Unless {@link #reconcilesStatistics()} is
+ * overridden, they are reconciled in the background with the content of the
+ * queue after its creation and then every
+ * {@link #STATISTICS_RECONCILIATION_INTERVAL_MS} milliseconds.
+ * </p>
  */
 public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPrioritySupport, Disposable {
 
@@ -80,11 +98,21 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
     protected final Connection connection;
     protected final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
     protected final Metric enqueuedMailsMetric;
+    protected final Metric dequeuedMailsMetric;
     protected final MetricFactory metricFactory;
     protected final Logger logger;
+    protected final DequeueConfiguration dequeueConfiguration;
+    private final JMSConsumerPool consumerPool;
+    protected final MailQueueCounters counters;
+    private final ScheduledExecutorService reconciliationScheduler;
     public final static String FORCE_DELIVERY = "FORCE_DELIVERY";
+    public final static long STATISTICS_RECONCILIATION_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
 
     public JMSMailQueue(ConnectionFactory connectionFactory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, String queueName, MetricFactory metricFactory, Logger logger) {
+        this(connectionFactory, mailQueueItemDecoratorFactory, queueName, metricFactory, logger, DequeueConfiguration.PER_DEQUEUE);
+    }
+
+    public JMSMailQueue(ConnectionFactory connectionFactory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, String queueName, MetricFactory metricFactory, Logger logger, DequeueConfiguration dequeueConfiguration) {
         try {
             connection = connectionFactory.createConnection();
             connection.start();
@@ -95,7 +123,54 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         this.queueName = queueName;
         this.metricFactory = metricFactory;
         this.enqueuedMailsMetric = metricFactory.generate("enqueuedMail:" + queueName);
+        this.dequeuedMailsMetric = metricFactory.generate("dequeuedMail:" + queueName);
         this.logger = logger;
+        this.dequeueConfiguration = dequeueConfiguration;
+        if (dequeueConfiguration.isPooled()) {
+            this.consumerPool = new JMSConsumerPool(connection, dequeueConfiguration,
+                new JMSConsumerPool.ConsumerFactory() {
+                    @Override
+                    public MessageConsumer createConsumer(Session session) throws JMSException {
+                        return session.createConsumer(createDequeueQueue(session), getMessageSelector());
+                    }
+                },
+                metricFactory.generate("dequeueConsumersCreated:" + queueName),
+                metricFactory.generate("dequeueCommits:" + queueName));
+        } else {
+            this.consumerPool = null;
+        }
+        this.counters = new MailQueueCounters(new MailQueueCounters.OldestEnqueueTimeResolver() {
+            @Override
+            public long resolveOldestEnqueueTime() {
+                return JMSMailQueue.this.resolveOldestEnqueueTime();
+            }
+        });
+        if (reconcilesStatistics()) {
+            this.reconciliationScheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("statistics-reconciliation-" + queueName).build());
+            this.reconciliationScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    reconcileStatistics();
+                }
+            }, 0, STATISTICS_RECONCILIATION_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } else {
+            this.reconciliationScheduler = null;
+        }
+    }
+
+    /**
+     * Return true if the {@link MailQueueCounters} of this queue need to be
+     * periodically reconciled by browsing its whole content. Implementations
+     * which can get the size of the queue from their provider should return
+     * false.
+     * <p>
+     * This is called from the constructor and must not depend on the state of
+     * the implementation.
+     * </p>
+     */
+    protected boolean reconcilesStatistics() {
+        return true;
     }
 
     /**
@@ -109,9 +184,16 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
      * Many JMS implementations support better solutions for this, so this
      * should get overridden by these implementations
      * </p>
+     * <p>
+     * In pooled mode the consumers are reused, and recreated with an up to
+     * date message selector once their selector refresh interval elapsed.
+     * </p>
      */
     @Override
     public MailQueueItem deQueue() throws MailQueueException {
+        if (consumerPool != null) {
+            return deQueueWithPooledConsumer();
+        }
         Session session = null;
         Message message;
         MessageConsumer consumer = null;
@@ -126,6 +208,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                 message = consumer.receive(10000);
 
                 if (message != null) {
+                    dequeuedMailsMetric.increment();
                     return createMailQueueItem(connection, session, consumer, message);
                 } else {
                     session.commit();
@@ -178,6 +261,42 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
 
     }
 
+    private MailQueueItem deQueueWithPooledConsumer() throws MailQueueException {
+        while (true) {
+            TimeMetric timeMetric = metricFactory.timer("dequeueTime:" + queueName);
+            PooledConsumer pooledConsumer = null;
+            try {
+                pooledConsumer = consumerPool.borrow();
+                Message message = consumerPool.receive(pooledConsumer);
+
+                if (message != null) {
+                    dequeuedMailsMetric.increment();
+                    return createMailQueueItem(connection, pooledConsumer, message);
+                }
+            } catch (Exception e) {
+                if (pooledConsumer != null) {
+                    consumerPool.discard(pooledConsumer);
+                }
+                throw new MailQueueException("Unable to dequeue next message", e);
+            } finally {
+                timeMetric.stopAndPublish();
+            }
+        }
+    }
+
+    /**
+     * Return the {@link Queue} the dequeue consumers are created for. This
+     * allows implementations to add provider specific consumer options, like
+     * the {@link DequeueConfiguration#getPrefetch()} size.
+     *
+     * @param session
+     * @return queue
+     * @throws JMSException
+     */
+    protected Queue createDequeueQueue(Session session) throws JMSException {
+        return session.createQueue(queueName);
+    }
+
     @Override
     public void enQueue(Mail mail, long delay, TimeUnit unit) throws MailQueueException {
         TimeMetric timeMetric = metricFactory.timer("enqueueMailTime:" + queueName);
@@ -204,6 +323,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
             produceMail(session, props, msgPrio, mail);
 
             enqueuedMailsMetric.increment();
+            counters.enqueued((Long) props.get(JAMES_MAIL_ENQUEUE_TIME), (Long) props.get(JAMES_NEXT_DELIVERY));
         } catch (Exception e) {
             if (session != null) {
                 try {
@@ -290,6 +410,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
 
         }
         props.put(JAMES_NEXT_DELIVERY, nextDelivery);
+        props.put(JAMES_MAIL_ENQUEUE_TIME, System.currentTimeMillis());
         props.put(JAMES_MAIL_ERROR_MESSAGE, mail.getErrorMessage());
         props.put(JAMES_MAIL_LAST_UPDATED, mail.getLastUpdated().getTime());
         props.put(JAMES_MAIL_MESSAGE_SIZE, mail.getMessageSize());
@@ -471,35 +592,142 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
     protected MailQueueItem createMailQueueItem(Connection connection, Session session, MessageConsumer consumer, Message message) throws JMSException, MessagingException {
         final Mail mail = createMail(message);
         JMSMailQueueItem jmsMailQueueItem = new JMSMailQueueItem(mail, connection, session, consumer);
+        return decorate(jmsMailQueueItem, message);
+    }
+
+    /**
+     * Create a {@link org.apache.james.queue.api.MailQueue.MailQueueItem} for a message received by a pooled consumer
+     *
+     * @param connection
+     * @param pooledConsumer
+     * @param message
+     * @return item
+     * @throws JMSException
+     * @throws MessagingException
+     */
+    protected MailQueueItem createMailQueueItem(Connection connection, PooledConsumer pooledConsumer, Message message) throws JMSException, MessagingException {
+        final Mail mail = createMail(message);
+        JMSMailQueueItem jmsMailQueueItem = new JMSMailQueueItem(mail, connection, pooledConsumer);
+        return decorate(jmsMailQueueItem, message);
+    }
+
+    /**
+     * Decorate the given item with the {@link MailQueueItemDecoratorFactory},
+     * once it was set up to update the {@link MailQueueCounters} when its
+     * dequeue succeeds
+     *
+     * @param jmsMailQueueItem
+     * @param message
+     * @return item
+     * @throws JMSException
+     */
+    protected MailQueueItem decorate(JMSMailQueueItem jmsMailQueueItem, Message message) throws JMSException {
+        final long enqueueTime = getEnqueueTime(message);
+        final long nextDelivery = getNextDelivery(message);
+        jmsMailQueueItem.onSuccess(new Runnable() {
+            @Override
+            public void run() {
+                counters.removed(enqueueTime, nextDelivery);
+            }
+        });
         return mailQueueItemDecoratorFactory.decorate(jmsMailQueueItem);
     }
 
+    /**
+     * Close the idle pooled consumers, if any, so that the messages they
+     * prefetched are seen by management operations.
+     */
+    protected void releasePrefetchedMessages() {
+        if (consumerPool != null) {
+            consumerPool.closeIdleConsumers();
+        }
+    }
+
     protected String getMessageSelector() {
         return JAMES_NEXT_DELIVERY + " <= " + System.currentTimeMillis() + " OR " + FORCE_DELIVERY + " = true";
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Return the size of the queue, as maintained by its {@link MailQueueCounters}
+     */
     @Override
     public long getSize() throws MailQueueException {
+        return counters.getStatistics().getSize();
+    }
+
+    @Override
+    public MailQueueStatistics getStatistics() throws MailQueueException {
+        return counters.getStatistics();
+    }
+
+    /**
+     * Browse the queue to recompute its {@link MailQueueCounters}, and correct
+     * the drift of the incrementally maintained ones. This is skipped if the
+     * queue is used meanwhile, and retried on the next run.
+     */
+    @SuppressWarnings("unchecked")
+    private void reconcileStatistics() {
         Session session = null;
         QueueBrowser browser = null;
-        int size = 0;
         try {
             session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
             Queue queue = session.createQueue(queueName);
 
             browser = session.createBrowser(queue);
 
+            long modifications = counters.getModifications();
             Enumeration<Message> messages = browser.getEnumeration();
+            MailQueueCounters reconciled = new MailQueueCounters();
 
             while (messages.hasMoreElements()) {
-                messages.nextElement();
-                size++;
+                Message message = messages.nextElement();
+                reconciled.enqueued(getEnqueueTime(message), getNextDelivery(message));
+            }
+            if (!counters.reconcile(reconciled, modifications)) {
+                logger.debug("Statistics of queue " + queueName + " changed while being reconciled, skipping");
             }
-            return size;
         } catch (Exception e) {
-            logger.error("Unable to get size of queue " + queueName, e);
-            throw new MailQueueException("Unable to get size of queue " + queueName, e);
+            logger.error("Unable to reconcile statistics of queue " + queueName, e);
+        } finally {
+            try {
+                if (browser != null)
+                    browser.close();
+            } catch (JMSException e1) {
+                // ignore here
+            }
+
+            try {
+                if (session != null)
+                    session.close();
+            } catch (JMSException e1) {
+                // ignore here
+            }
+
+        }
+    }
+
+    /**
+     * Return the enqueue time of the message at the head of the queue. Only the
+     * first message is browsed: as messages are ordered by priority, this is
+     * the oldest one unless mails were enqueued with several priorities.
+     */
+    protected long resolveOldestEnqueueTime() {
+        Session session = null;
+        QueueBrowser browser = null;
+        try {
+            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Queue queue = session.createQueue(queueName);
+
+            browser = session.createBrowser(queue);
+
+            Enumeration<?> messages = browser.getEnumeration();
+            if (messages.hasMoreElements()) {
+                return getEnqueueTime((Message) messages.nextElement());
+            }
+            return MailQueueStatistics.NO_ENQUEUE_TIME;
+        } catch (JMSException e) {
+            logger.error("Unable to get the oldest enqueue time of queue " + queueName, e);
+            return MailQueueStatistics.NO_ENQUEUE_TIME;
         } finally {
             try {
                 if (browser != null)
@@ -518,6 +746,33 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         }
     }
 
+    /**
+     * Return the enqueue time of the given message, falling back to its JMS
+     * timestamp for messages enqueued without it
+     */
+    protected long getEnqueueTime(Message message) throws JMSException {
+        Object enqueueTime = message.getObjectProperty(JAMES_MAIL_ENQUEUE_TIME);
+        if (enqueueTime instanceof Long) {
+            return (Long) enqueueTime;
+        }
+        return message.getJMSTimestamp();
+    }
+
+    /**
+     * Return the next delivery time of the given message, or -1 if it is ready
+     * for dequeue regardless of time
+     */
+    protected long getNextDelivery(Message message) throws JMSException {
+        if (message.propertyExists(FORCE_DELIVERY) && message.getBooleanProperty(FORCE_DELIVERY)) {
+            return -1;
+        }
+        Object nextDelivery = message.getObjectProperty(JAMES_NEXT_DELIVERY);
+        if (nextDelivery instanceof Long) {
+            return (Long) nextDelivery;
+        }
+        return -1;
+    }
+
     @Override
     public long flush() throws MailQueueException {
         Session session = null;
@@ -526,6 +781,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         MessageProducer producer = null;
         boolean first = true;
         long count = 0;
+        releasePrefetchedMessages();
         try {
 
             session = connection.createSession(true, Session.SESSION_TRANSACTED);
@@ -550,6 +806,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                 }
             }
             session.commit();
+            counters.flushed();
             return count;
         } catch (Exception e) {
             logger.error("Unable to flush mail", e);
@@ -612,6 +869,7 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
         MessageConsumer consumer = null;
         boolean first = true;
         List<Message> messages = new ArrayList<Message>();
+        releasePrefetchedMessages();
 
         try {
             session = connection.createSession(true, Session.SESSION_TRANSACTED);
@@ -630,6 +888,9 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
                 }
             }
             session.commit();
+            for (Message removed : messages) {
+                counters.removed(getEnqueueTime(removed), getNextDelivery(removed));
+            }
             return messages;
         } catch (Exception e) {
             try {
@@ -797,6 +1058,10 @@ public class JMSMailQueue implements ManageableMailQueue, JMSSupport, MailPriori
 
     @Override
     public void dispose() {
+        if (reconciliationScheduler != null) {
+            reconciliationScheduler.shutdownNow();
+        }
+        releasePrefetchedMessages();
         try {
             connection.close();
         } catch (JMSException e) {
@@ -35,6 +35,7 @@ public class JMSMailQueueFactory extends AbstractMailQueueFactory {
     protected final ConnectionFactory connectionFactory;
     protected final MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory;
     protected final MetricFactory metricFactory;
+    protected DequeueConfiguration dequeueConfiguration = DequeueConfiguration.PER_DEQUEUE;
     
     @Inject
     public JMSMailQueueFactory(ConnectionFactory connectionFactory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, MetricFactory metricFactory) {
@@ -43,9 +44,13 @@ public class JMSMailQueueFactory extends AbstractMailQueueFactory {
         this.metricFactory = metricFactory;
     }
 
+    public void setDequeueConfiguration(DequeueConfiguration dequeueConfiguration) {
+        this.dequeueConfiguration = dequeueConfiguration;
+    }
+
     @Override
     protected MailQueue createMailQueue(String name) {
-        return new JMSMailQueue(connectionFactory, mailQueueItemDecoratorFactory, name, metricFactory, log);
+        return new JMSMailQueue(connectionFactory, mailQueueItemDecoratorFactory, name, metricFactory, log, dequeueConfiguration);
     }
     
 }
@@ -25,6 +25,7 @@ import javax.jms.MessageConsumer;
 import javax.jms.Session;
 
 import org.apache.james.queue.api.MailQueue.MailQueueException;
+import org.apache.james.queue.jms.JMSConsumerPool.PooledConsumer;
 import org.apache.james.queue.api.MailQueue.MailQueueItem;
 import org.apache.mailet.Mail;
 
@@ -37,19 +38,53 @@ public class JMSMailQueueItem implements MailQueueItem {
     protected final Connection connection;
     protected final Session session;
     protected final MessageConsumer consumer;
+    protected final PooledConsumer pooledConsumer;
+    private Runnable onSuccess;
 
     public JMSMailQueueItem(Mail mail, Connection connection, Session session, MessageConsumer consumer) {
         this.mail = mail;
         this.connection = connection;
         this.session = session;
         this.consumer = consumer;
+        this.pooledConsumer = null;
+    }
+
+    /**
+     * Create an item dequeued with a consumer of a {@link JMSConsumerPool}. The
+     * consumer is given back to its pool once the item is done.
+     */
+    public JMSMailQueueItem(Mail mail, Connection connection, PooledConsumer pooledConsumer) {
+        this.mail = mail;
+        this.connection = connection;
+        this.session = pooledConsumer.getSession();
+        this.consumer = pooledConsumer.getConsumer();
+        this.pooledConsumer = pooledConsumer;
+    }
+
+    /**
+     * Run the given action once the dequeue of this item succeeded
+     */
+    public void onSuccess(Runnable action) {
+        this.onSuccess = action;
     }
 
     @Override
     public void done(boolean success) throws MailQueueException {
+        if (pooledConsumer != null) {
+            try {
+                pooledConsumer.done(success);
+            } catch (JMSException ex) {
+                throw new MailQueueException("Unable to commit dequeue operation for mail " + mail.getName(), ex);
+            }
+            if (success) {
+                runOnSuccess();
+            }
+            return;
+        }
         try {
             if (success) {
                 session.commit();
+                runOnSuccess();
             } else {
                 try {
                     session.rollback();
@@ -77,6 +112,12 @@ public class JMSMailQueueItem implements MailQueueItem {
         }
     }
 
+    private void runOnSuccess() {
+        if (onSuccess != null) {
+            onSuccess.run();
+        }
+    }
+
     @Override
     public Mail getMail() {
         return mail;
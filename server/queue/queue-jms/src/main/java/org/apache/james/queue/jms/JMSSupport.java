@@ -62,4 +62,7 @@ public interface JMSSupport {
     /** JMS Property which holds next delivery time as long (ms) */
     String JAMES_NEXT_DELIVERY = "JAMES_NEXT_DELIVERY";
 
+    /** JMS Property which holds the enqueue time as long (ms) */
+    String JAMES_MAIL_ENQUEUE_TIME = "JAMES_MAIL_ENQUEUE_TIME";
+
 }
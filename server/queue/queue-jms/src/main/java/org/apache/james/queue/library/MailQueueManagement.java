@@ -20,6 +20,7 @@ package org.apache.james.queue.library;
 
 import org.apache.james.queue.api.MailQueue.MailQueueException;
 import org.apache.james.queue.api.MailQueueManagementMBean;
+import org.apache.james.queue.api.MailQueueStatistics;
 import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.james.queue.api.ManageableMailQueue.MailQueueItemView;
 import org.apache.james.queue.api.ManageableMailQueue.MailQueueIterator;
@@ -82,6 +83,29 @@ public class MailQueueManagement extends StandardMBean implements MailQueueManag
         }
     }
 
+    @Override
+    public long getDelayedSize() throws Exception {
+        return getStatistics().getDelayedSize();
+    }
+
+    @Override
+    public long getReadySize() throws Exception {
+        return getStatistics().getReadySize();
+    }
+
+    @Override
+    public long getOldestEnqueueTime() throws Exception {
+        return getStatistics().getOldestEnqueueTime();
+    }
+
+    private MailQueueStatistics getStatistics() throws Exception {
+        try {
+            return queue.getStatistics();
+        } catch (MailQueueException e) {
+            throw new Exception(e.getMessage());
+        }
+    }
+
     @Override
     public long removeWithName(String name) throws Exception {
         try {
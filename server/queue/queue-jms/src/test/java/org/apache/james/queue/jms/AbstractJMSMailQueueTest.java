@@ -43,8 +43,10 @@ import org.apache.james.metrics.api.NoopMetricFactory;
 import org.apache.james.protocols.smtp.MailAddressException;
 import org.apache.james.queue.api.MailQueue.MailQueueItem;
 import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.james.queue.api.MailQueueStatistics;
 import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.james.queue.api.ManageableMailQueue.MailQueueIterator;
+import org.apache.james.queue.api.RawMailQueueItem;
 import org.apache.james.queue.api.RawMailQueueItemDecoratorFactory;
 import org.apache.mailet.Mail;
 import org.apache.mailet.MailAddress;
@@ -157,6 +159,46 @@ public abstract class AbstractJMSMailQueueTest {
         assertEquals(0, queue.getSize());
     }
 
+    @Test
+    public void testStatistics() throws MessagingException, InterruptedException, IOException, MailAddressException {
+        final JMSMailQueue queue = getQueue();
+        long enqueueTime = System.currentTimeMillis();
+
+        Mail mail = createMail();
+        Mail mail2 = createMail();
+        queue.enQueue(mail);
+        queue.enQueue(mail2, 30, TimeUnit.SECONDS);
+
+        MailQueueStatistics statistics = queue.getStatistics();
+        assertEquals(2, statistics.getSize());
+        assertEquals(1, statistics.getDelayedSize());
+        assertEquals(1, statistics.getReadySize());
+        assertTrue(statistics.getOldestEnqueueTime() >= enqueueTime);
+
+        MailQueueItem item = queue.deQueue();
+        checkMail(mail, item.getMail());
+        item.done(true);
+
+        assertEquals(1, queue.getStatistics().getSize());
+        assertEquals(1, queue.getStatistics().getDelayedSize());
+
+        assertEquals(1, queue.clear());
+        assertEquals(0, queue.getStatistics().getSize());
+        assertEquals(MailQueueStatistics.NO_ENQUEUE_TIME, queue.getStatistics().getOldestEnqueueTime());
+    }
+
+    @Test
+    public void deQueueShouldReturnTheItemOfTheDecoratorFactory() throws MessagingException, IOException, MailAddressException {
+        final JMSMailQueue queue = getQueue();
+        queue.enQueue(createMail());
+
+        MailQueueItem item = queue.deQueue();
+        item.done(true);
+
+        assertTrue(item instanceof RawMailQueueItem);
+        assertEquals(0, queue.getStatistics().getSize());
+    }
+
     @Test
     public void testFlush() throws MessagingException, InterruptedException, IOException, MailAddressException {
         final JMSMailQueue queue = getQueue();
@@ -0,0 +1,82 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.junit.Test;
+
+public class DequeueConfigurationTest {
+
+    @Test
+    public void fromShouldReturnPerDequeueByDefault() throws Exception {
+        assertSame(DequeueConfiguration.PER_DEQUEUE, DequeueConfiguration.from(configuration("<dequeue/>")));
+    }
+
+    @Test
+    public void fromShouldReturnPerDequeueWhenNotPooled() throws Exception {
+        DequeueConfiguration configuration = DequeueConfiguration.from(configuration("<dequeue pooled=\"false\" ackBatchSize=\"10\"/>"));
+
+        assertFalse(configuration.isPooled());
+        assertEquals(1, configuration.getAckBatchSize());
+    }
+
+    @Test
+    public void fromShouldReadPooledConfiguration() throws Exception {
+        DequeueConfiguration configuration = DequeueConfiguration.from(
+            configuration("<dequeue pooled=\"true\" prefetch=\"100\" ackBatchSize=\"10\" selectorRefreshInterval=\"500\"/>"));
+
+        assertTrue(configuration.isPooled());
+        assertEquals(100, configuration.getPrefetch());
+        assertEquals(10, configuration.getAckBatchSize());
+        assertEquals(500, configuration.getSelectorRefreshIntervalMs());
+    }
+
+    @Test
+    public void fromShouldUseDefaultsForMissingPooledAttributes() throws Exception {
+        DequeueConfiguration configuration = DequeueConfiguration.from(configuration("<dequeue pooled=\"true\"/>"));
+
+        assertEquals(DequeueConfiguration.DEFAULT_PREFETCH, configuration.getPrefetch());
+        assertEquals(1, configuration.getAckBatchSize());
+        assertEquals(DequeueConfiguration.DEFAULT_SELECTOR_REFRESH_INTERVAL_MS, configuration.getSelectorRefreshIntervalMs());
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void fromShouldRejectInvalidAckBatchSize() throws Exception {
+        DequeueConfiguration.from(configuration("<dequeue pooled=\"true\" ackBatchSize=\"0\"/>"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void fromShouldRejectNonNumericPrefetch() throws Exception {
+        DequeueConfiguration.from(configuration("<dequeue pooled=\"true\" prefetch=\"many\"/>"));
+    }
+
+    private XMLConfiguration configuration(String xml) throws ConfigurationException {
+        XMLConfiguration configuration = new XMLConfiguration();
+        configuration.load(new StringReader(xml));
+        return configuration;
+    }
+}
@@ -0,0 +1,162 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.apache.james.queue.jms.JMSConsumerPool.PooledConsumer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JMSConsumerPoolTest {
+
+    private Session session;
+    private JMSConsumerPool pool;
+    private AtomicInteger actionsRun;
+
+    @Before
+    public void setUp() throws Exception {
+        session = mock(Session.class);
+        Connection connection = mock(Connection.class);
+        when(connection.createSession(anyBoolean(), anyInt())).thenReturn(session);
+        JMSConsumerPool.ConsumerFactory consumerFactory = mock(JMSConsumerPool.ConsumerFactory.class);
+        when(consumerFactory.createConsumer(any(Session.class))).thenReturn(mock(MessageConsumer.class));
+        pool = new JMSConsumerPool(connection, DequeueConfiguration.pooled(DequeueConfiguration.DEFAULT_PREFETCH, 2),
+            consumerFactory, new NoopMetricFactory.NoopMetric(), new NoopMetricFactory.NoopMetric());
+        actionsRun = new AtomicInteger();
+    }
+
+    @Test
+    public void borrowShouldReuseIdleConsumer() throws Exception {
+        PooledConsumer consumer = pool.borrow();
+        consumer.done(true);
+
+        assertSame(consumer, pool.borrow());
+    }
+
+    @Test
+    public void doneShouldNotCommitBeforeTheBatchIsComplete() throws Exception {
+        pool.borrow().done(true);
+
+        verify(session, never()).commit();
+    }
+
+    @Test
+    public void doneShouldCommitOnceTheBatchIsComplete() throws Exception {
+        pool.borrow().done(true);
+        pool.borrow().done(true);
+
+        verify(session).commit();
+    }
+
+    @Test
+    public void afterCommitActionShouldNotRunBeforeCommit() throws Exception {
+        PooledConsumer consumer = pool.borrow();
+        consumer.afterCommit(countingAction());
+        consumer.done(true);
+
+        assertEquals(0, actionsRun.get());
+    }
+
+    @Test
+    public void afterCommitActionsShouldRunOnceTheBatchIsCommitted() throws Exception {
+        PooledConsumer consumer = pool.borrow();
+        consumer.afterCommit(countingAction());
+        consumer.done(true);
+        consumer = pool.borrow();
+        consumer.afterCommit(countingAction());
+        consumer.done(true);
+
+        assertEquals(2, actionsRun.get());
+    }
+
+    @Test
+    public void afterCommitActionsShouldBeDroppedOnRollback() throws Exception {
+        PooledConsumer consumer = pool.borrow();
+        consumer.afterCommit(countingAction());
+        consumer.done(true);
+        pool.borrow().done(false);
+
+        pool.borrow().done(true);
+        pool.borrow().done(true);
+
+        verify(session).rollback();
+        assertEquals(0, actionsRun.get());
+    }
+
+    @Test
+    public void afterCommitActionsShouldBeDroppedWhenCommitFails() throws Exception {
+        doThrowOnCommit();
+        PooledConsumer consumer = pool.borrow();
+        consumer.afterCommit(countingAction());
+        consumer.done(true);
+        consumer = pool.borrow();
+        consumer.afterCommit(countingAction());
+
+        try {
+            consumer.done(true);
+        } catch (JMSException e) {
+            // expected
+        }
+
+        assertEquals(0, actionsRun.get());
+    }
+
+    @Test
+    public void closeIdleConsumersShouldRunPendingAfterCommitActions() throws Exception {
+        PooledConsumer consumer = pool.borrow();
+        consumer.afterCommit(countingAction());
+        consumer.done(true);
+
+        pool.closeIdleConsumers();
+
+        verify(session).commit();
+        assertEquals(1, actionsRun.get());
+    }
+
+    private void doThrowOnCommit() throws JMSException {
+        doThrow(new JMSException("commit failure")).when(session).commit();
+    }
+
+    private Runnable countingAction() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                actionsRun.incrementAndGet();
+            }
+        };
+    }
+}
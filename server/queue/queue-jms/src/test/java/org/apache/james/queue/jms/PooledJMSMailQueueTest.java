@@ -0,0 +1,90 @@
+/****************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one   *
+ * or more contributor license agreements.  See the NOTICE file *
+ * distributed with this work for additional information        *
+ * regarding copyright ownership.  The ASF licenses this file   *
+ * to you under the Apache License, Version 2.0 (the            *
+ * "License"); you may not use this file except in compliance   *
+ * with the License.  You may obtain a copy of the License at   *
+ *                                                              *
+ *   http://www.apache.org/licenses/LICENSE-2.0                 *
+ *                                                              *
+ * Unless required by applicable law or agreed to in writing,   *
+ * software distributed under the License is distributed on an  *
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY       *
+ * KIND, either express or implied.  See the License for the    *
+ * specific language governing permissions and limitations      *
+ * under the License.                                           *
+ ****************************************************************/
+package org.apache.james.queue.jms;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+import javax.mail.MessagingException;
+
+import org.apache.james.metrics.api.NoopMetricFactory;
+import org.apache.james.protocols.smtp.MailAddressException;
+import org.apache.james.queue.api.MailQueue.MailQueueItem;
+import org.apache.james.queue.api.MailQueueItemDecoratorFactory;
+import org.apache.mailet.Mail;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PooledJMSMailQueueTest extends JMSMailQueueTest {
+
+    @Override
+    protected JMSMailQueue createQueue(ConnectionFactory factory, MailQueueItemDecoratorFactory mailQueueItemDecoratorFactory, String queueName) {
+        Logger log = LoggerFactory.getLogger(PooledJMSMailQueueTest.class);
+        return new JMSMailQueue(factory, mailQueueItemDecoratorFactory, queueName, new NoopMetricFactory(), log,
+            DequeueConfiguration.pooled(DequeueConfiguration.DEFAULT_PREFETCH, 2));
+    }
+
+    @After
+    public void tearDown() {
+        getQueue().dispose();
+    }
+
+    @Test
+    public void batchedAcknowledgementsShouldBeCommittedOnceBatchIsComplete() throws MessagingException, InterruptedException, IOException, MailAddressException {
+        JMSMailQueue queue = getQueue();
+
+        Mail mail = createMail();
+        queue.enQueue(mail);
+
+        MailQueueItem item = queue.deQueue();
+        checkMail(mail, item.getMail());
+        item.done(true);
+
+        Mail mail2 = createMail();
+        queue.enQueue(mail2);
+
+        MailQueueItem item2 = queue.deQueue();
+        checkMail(mail2, item2.getMail());
+        item2.done(true);
+
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        assertEquals(0, queue.getSize());
+    }
+
+    @Test
+    public void failedMailShouldBeRedeliveredByPooledConsumer() throws MessagingException, InterruptedException, IOException, MailAddressException {
+        JMSMailQueue queue = getQueue();
+
+        Mail mail = createMail();
+        queue.enQueue(mail);
+
+        MailQueueItem item = queue.deQueue();
+        item.done(false);
+
+        MailQueueItem redelivered = queue.deQueue();
+        checkMail(mail, redelivered.getMail());
+        redelivered.done(true);
+    }
+}
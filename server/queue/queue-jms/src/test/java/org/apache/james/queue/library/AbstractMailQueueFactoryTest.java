@@ -26,6 +26,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
 import org.apache.james.queue.api.MailQueue;
+import org.apache.james.queue.api.MailQueueStatistics;
 import org.apache.james.queue.api.ManageableMailQueue;
 import org.apache.mailet.Mail;
 import org.junit.Before;
@@ -76,6 +77,11 @@ public class AbstractMailQueueFactoryTest {
                         return 0;
                     }
 
+                    @Override
+                    public MailQueueStatistics getStatistics() throws MailQueueException {
+                        return MailQueueStatistics.EMPTY;
+                    }
+
                     @Override
                     public long flush() throws MailQueueException {
                         return 0;